@@ -73,6 +73,12 @@ public class AnnouncementsBullhornHandler extends AbstractBullhornHandler {
         return Arrays.asList(AnnouncementService.SECURE_ANNC_ADD, AnnouncementService.EVENT_ANNC_UPDATE_AVAILABILITY, AnnouncementService.SECURE_ANNC_REMOVE_OWN, AnnouncementService.SECURE_ANNC_REMOVE_ANY);
     }
 
+    @Override
+    public boolean usesStoredAlerts(Event e) {
+        // Only new announcements leave the stored alerts alone
+        return !AnnouncementService.SECURE_ANNC_ADD.equals(e.getEvent());
+    }
+
     @Override
     public Optional<List<BullhornData>> handleEvent(Event e) {
 
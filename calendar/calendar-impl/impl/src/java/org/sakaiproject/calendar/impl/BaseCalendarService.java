@@ -134,6 +134,9 @@ public abstract class BaseCalendarService implements CalendarService, DoubleStor
 	public static final String SAKAI = "Sakai";
 	
 	private Cache<String, Calendar> cache = null;
+
+	/** The expanded occurrences of each calendar's events around today, null when disabled. */
+	private CalendarOccurrenceIndex occurrenceIndex = null;
 	
 	/**
 	 * Access this service from the inner classes.
@@ -340,7 +343,7 @@ public abstract class BaseCalendarService implements CalendarService, DoubleStor
 
 		if (references != null && range != null)
 		{
-			List allEvents = new ArrayList();
+			List<List<CalendarEvent>> calendarsEvents = new ArrayList<>();
 
 			Iterator it = references.iterator();
 
@@ -367,11 +370,11 @@ public abstract class BaseCalendarService implements CalendarService, DoubleStor
 
 				if (calendarObj != null)
 				{
-					Iterator calEvent = null;
+					List<CalendarEvent> calEvents = null;
 
 					try
 					{
-						calEvent = calendarObj.getEvents(range, null).iterator();
+						calEvents = new ArrayList<>(calendarObj.getEvents(range, null));
 					}
 
 					catch (PermissionException e1)
@@ -379,12 +382,17 @@ public abstract class BaseCalendarService implements CalendarService, DoubleStor
 						continue;
 					}
 
-					allEvents.addAll(new CalendarEventVector(calEvent));
+					// our calendars return their events in start order, subscribed ones may not
+					if (!(calendarObj instanceof BaseCalendarEdit))
+					{
+						Collections.sort(calEvents);
+					}
+					calendarsEvents.add(calEvents);
 				}
 			}
 
-			// Do a sort since each of the events implements the Comparable interface.
-			Collections.sort(allEvents);
+			// a single pass merge of the calendars' sorted events
+			List allEvents = CalendarOccurrenceIndex.merge(calendarsEvents);
 			if (reverseOrder) {
 				Collections.reverse(allEvents);
 			}
@@ -712,6 +720,17 @@ public abstract class BaseCalendarService implements CalendarService, DoubleStor
 		SimpleConfiguration cacheConfig = new SimpleConfiguration(0);
 		cacheConfig.setStatisticsEnabled(true);
 		cache = this.m_memoryService.createCache("org.sakaiproject.calendar.cache", cacheConfig);
+		if (m_serverConfigurationService.getBoolean("calendar.occurrenceIndex.enabled", true)) {
+			SimpleConfiguration<String, CalendarOccurrenceIndex.Occurrences> indexConfig =
+					new SimpleConfiguration<>(m_serverConfigurationService.getInt("calendar.occurrenceIndex.cacheEntries", 5000));
+			indexConfig.setStatisticsEnabled(true);
+			occurrenceIndex = new CalendarOccurrenceIndex(
+					m_memoryService.createCache("org.sakaiproject.calendar.impl.CalendarOccurrenceIndex", indexConfig),
+					java.time.Clock.systemDefaultZone(),
+					m_serverConfigurationService.getInt("calendar.occurrenceIndex.daysBefore", 400),
+					m_serverConfigurationService.getInt("calendar.occurrenceIndex.daysAfter", 400),
+					m_serverConfigurationService.getInt("calendar.occurrenceIndex.maxOccurrences", 10000));
+		}
 		System.setProperty("net.fortuna.ical4j.timezone.cache.impl", MapTimeZoneCache.class.getName());
 
 		m_eventTrackingService.addObserver(this);
@@ -2189,9 +2208,25 @@ public abstract class BaseCalendarService implements CalendarService, DoubleStor
 			if (EVENT_MODIFY_CALENDAR.equals(event.getEvent())) {
 				cache.remove(event.getResource());
 			}
+			if (occurrenceIndex != null && event.getEvent() != null && event.getEvent().startsWith("calendar.")) {
+				String calendarReference = calendarReferenceOf(event.getResource());
+				if (calendarReference != null) {
+					occurrenceIndex.invalidate(calendarReference);
+				}
+			}
 		}
 	}
 
+	/**
+	 * @return the reference of the calendar a calendar or calendar event reference belongs to, or null for anything else
+	 */
+	protected String calendarReferenceOf(String reference) {
+		if (reference == null || !reference.startsWith(REFERENCE_ROOT + Entity.SEPARATOR)) return null;
+		String[] parts = reference.substring(REFERENCE_ROOT.length() + 1).split(Entity.SEPARATOR);
+		if (parts.length < 3 || !(REF_TYPE_CALENDAR.equals(parts[0]) || REF_TYPE_EVENT.equals(parts[0]))) return null;
+		return calendarReference(parts[1], parts[2]);
+	}
+
 	/**********************************************************************************************************************************************************************************************************************************************************
 	 * Calendar implementation
 	 *********************************************************************************************************************************************************************************************************************************************************/
@@ -2457,19 +2492,26 @@ public abstract class BaseCalendarService implements CalendarService, DoubleStor
 			// check security (throws if not permitted)
 			unlock(AUTH_READ_CALENDAR, getReference());
 
-			List events;
-			if (range != null) {
-				events = m_storage.getEvents(this, range.firstTime().getTime(), range.lastTime().getTime());
-			} else {
-				events = m_storage.getEvents(this);
+			List events = null;
+			if (range != null && occurrenceIndex != null) {
+				events = occurrenceIndex.getOccurrences(getReference(), range,
+						(from, to) -> filterEvents(m_storage.getEvents(this, from, to), m_timeService.newTimeRange(from, to - from)));
 			}
 
-			// now filter out the events to just those in the range
-			// Note: if no range, we won't filter, which means we don't expand recurring events, but just
-			// return it as a single event. This is very good for an archive... -ggolden
-			if (range != null)
-			{
-				events = filterEvents(events, range);
+			if (events == null) {
+				if (range != null) {
+					events = m_storage.getEvents(this, range.firstTime().getTime(), range.lastTime().getTime());
+				} else {
+					events = m_storage.getEvents(this);
+				}
+
+				// now filter out the events to just those in the range
+				// Note: if no range, we won't filter, which means we don't expand recurring events, but just
+				// return it as a single event. This is very good for an archive... -ggolden
+				if (range != null)
+				{
+					events = filterEvents(events, range);
+				}
 			}
 
 			if (events.size() == 0) return events;
@@ -2903,6 +2945,8 @@ public abstract class BaseCalendarService implements CalendarService, DoubleStor
 				m_eventTrackingService.post(m_eventTrackingService.newEvent(EVENT_REMOVE_CALENDAR_EVENT, edit.getReference(), true));
 			}
 
+			if (occurrenceIndex != null) occurrenceIndex.invalidate(getReference());
+
 			// track event
 			Event event = m_eventTrackingService.newEvent(EVENT_MODIFY_CALENDAR, edit.getReference(), true);
 			m_eventTrackingService.post(event);
@@ -3136,6 +3180,7 @@ public abstract class BaseCalendarService implements CalendarService, DoubleStor
 			
 			// complete the edit
 			m_storage.commitEvent(this, edit);
+			if (occurrenceIndex != null) occurrenceIndex.invalidate(getReference());
 
 			// track event
 			Event event = m_eventTrackingService.newEvent(bedit.getEvent(), edit.getReference(), true);
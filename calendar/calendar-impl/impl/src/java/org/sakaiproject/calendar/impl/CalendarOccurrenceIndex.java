@@ -0,0 +1,267 @@
+/**
+ * Copyright (c) 2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.calendar.impl;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.sakaiproject.calendar.api.CalendarEvent;
+import org.sakaiproject.memory.api.Cache;
+import org.sakaiproject.time.api.TimeRange;
+
+/**
+ * Index of the occurrences of every event of a calendar, with recurring events already expanded, over a
+ * window of days around today. Range queries that fall inside the window are answered from it without
+ * going to storage or running the recurrence rules again.
+ * <p>
+ * The occurrences are kept sorted by start time and split into weekly buckets, so a query only looks at
+ * the buckets it overlaps. A calendar's entry is dropped whenever one of its events is added, changed or
+ * removed and is rebuilt by the next query. Calendars with more occurrences in the window than the
+ * configured maximum are not indexed and keep being expanded per request.
+ * <p>
+ * The indexed events are shared between all the users reading the calendar and must not be modified.
+ */
+@Slf4j
+public class CalendarOccurrenceIndex {
+
+	private static final long DAY = 24L * 60L * 60L * 1000L;
+	private static final long BUCKET = 7L * DAY;
+
+	/**
+	 * Loads the events of one calendar expanded into their occurrences between two times.
+	 */
+	interface Loader {
+		List<CalendarEvent> load(long from, long to);
+	}
+
+	private final Cache<String, Occurrences> cache;
+	private final Clock clock;
+	private final long before;
+	private final long after;
+	private final int maxOccurrences;
+
+	// bumped on every invalidation so a build that raced with one is not cached
+	private final AtomicLong invalidations = new AtomicLong();
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder builds = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+
+	CalendarOccurrenceIndex(Cache<String, Occurrences> cache, Clock clock, int daysBefore, int daysAfter, int maxOccurrences) {
+		this.cache = cache;
+		this.clock = clock;
+		this.before = daysBefore * DAY;
+		this.after = daysAfter * DAY;
+		this.maxOccurrences = maxOccurrences;
+	}
+
+	/**
+	 * @param calendarReference the calendar
+	 * @param range the time range to return occurrences for
+	 * @param loader expands the calendar's events when it isn't indexed yet
+	 * @return the occurrences overlapping the range in start order, or null if the range reaches outside the
+	 *         indexed window or the calendar is too big to index, in which case the caller expands the events itself
+	 */
+	public List<CalendarEvent> getOccurrences(String calendarReference, TimeRange range, Loader loader) {
+		long start = range.firstTime().getTime();
+		long end = range.lastTime().getTime();
+
+		Occurrences occurrences = cache.get(calendarReference);
+		if (occurrences != null && occurrences.covers(start, end)) {
+			hits.increment();
+		} else {
+			long now = clock.millis();
+			long from = now - (now % DAY) - before;
+			long to = now - (now % DAY) + DAY + after;
+			if (start < from || end > to) {
+				misses.increment();
+				return null;
+			}
+
+			long generation = invalidations.get();
+			occurrences = new Occurrences(from, to, loader.load(from, to), maxOccurrences);
+			builds.increment();
+			if (generation == invalidations.get()) {
+				cache.put(calendarReference, occurrences);
+			}
+			log.debug("Indexed {} occurrences of {}", occurrences.size(), calendarReference);
+		}
+
+		if (occurrences.events == null) {
+			misses.increment();
+			return null;
+		}
+		return occurrences.find(range, start, end);
+	}
+
+	public void invalidate(String calendarReference) {
+		invalidations.incrementAndGet();
+		cache.remove(calendarReference);
+	}
+
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	public long getBuildCount() {
+		return builds.sum();
+	}
+
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	/**
+	 * Merges lists of events that are each in start order into one list in start order, in a single pass.
+	 *
+	 * @param sortedLists the lists to merge
+	 * @return a new list holding all the events
+	 */
+	public static List<CalendarEvent> merge(List<List<CalendarEvent>> sortedLists) {
+		int total = 0;
+		PriorityQueue<Cursor> heads = new PriorityQueue<>(Math.max(1, sortedLists.size()));
+		for (List<CalendarEvent> list : sortedLists) {
+			total += list.size();
+			if (!list.isEmpty()) heads.add(new Cursor(list, heads.size()));
+		}
+
+		List<CalendarEvent> merged = new ArrayList<>(total);
+		while (!heads.isEmpty()) {
+			Cursor head = heads.poll();
+			merged.add(head.current());
+			if (head.advance()) heads.add(head);
+		}
+		return merged;
+	}
+
+	/**
+	 * The position reached in one of the lists being merged.
+	 */
+	private static class Cursor implements Comparable<Cursor> {
+
+		private final List<CalendarEvent> list;
+		// keeps events starting at the same time in the order of their lists
+		private final int order;
+		private int index;
+		private long start;
+
+		Cursor(List<CalendarEvent> list, int order) {
+			this.list = list;
+			this.order = order;
+			this.start = list.get(0).getRange().firstTime().getTime();
+		}
+
+		CalendarEvent current() {
+			return list.get(index);
+		}
+
+		boolean advance() {
+			if (++index >= list.size()) return false;
+			start = list.get(index).getRange().firstTime().getTime();
+			return true;
+		}
+
+		@Override
+		public int compareTo(Cursor other) {
+			int c = Long.compare(start, other.start);
+			return c != 0 ? c : Integer.compare(order, other.order);
+		}
+	}
+
+	/**
+	 * The occurrences of one calendar between two times, sorted by start, with the index of the first
+	 * occurrence of each weekly bucket.
+	 */
+	static class Occurrences {
+
+		private final long from;
+		private final long to;
+		private final CalendarEvent[] events;
+		private final long[] starts;
+		private final long[] ends;
+		private final int[] buckets;
+		// the longest occurrence, to know how far back an occurrence still overlapping a range may start
+		private final long longest;
+
+		Occurrences(long from, long to, List<CalendarEvent> occurrences, int maxOccurrences) {
+			this.from = from;
+			this.to = to;
+			if (occurrences.size() > maxOccurrences) {
+				events = null;
+				starts = null;
+				ends = null;
+				buckets = null;
+				longest = 0;
+				return;
+			}
+
+			List<CalendarEvent> sorted = new ArrayList<>(occurrences);
+			Collections.sort(sorted);
+			events = sorted.toArray(new CalendarEvent[0]);
+			starts = new long[events.length];
+			ends = new long[events.length];
+			long max = 0;
+			for (int i = 0; i < events.length; i++) {
+				TimeRange range = events[i].getRange();
+				starts[i] = range.firstTime().getTime();
+				ends[i] = range.lastTime().getTime();
+				max = Math.max(max, ends[i] - starts[i]);
+			}
+			longest = max;
+
+			int count = bucket(to) + 1;
+			buckets = new int[count + 1];
+			int i = 0;
+			// the first bucket also holds the occurrences that started before the window and run into it
+			for (int b = 1; b <= count; b++) {
+				long bucketStart = from + b * BUCKET;
+				while (i < starts.length && starts[i] < bucketStart) i++;
+				buckets[b] = i;
+			}
+		}
+
+		boolean covers(long start, long end) {
+			return start >= from && end <= to;
+		}
+
+		int size() {
+			return events == null ? 0 : events.length;
+		}
+
+		private int bucket(long time) {
+			return (int) (Math.max(0, time - from) / BUCKET);
+		}
+
+		List<CalendarEvent> find(TimeRange range, long start, long end) {
+			// occurrences before the range's first bucket may still be running when it starts
+			int first = buckets[bucket(start - longest)];
+			int last = buckets[Math.min(buckets.length - 1, bucket(end) + 1)];
+			List<CalendarEvent> found = new ArrayList<>();
+			for (int i = first; i < last; i++) {
+				if (starts[i] <= end && ends[i] >= start && range.overlaps(events[i].getRange())) {
+					found.add(events[i]);
+				}
+			}
+			return found;
+		}
+	}
+}
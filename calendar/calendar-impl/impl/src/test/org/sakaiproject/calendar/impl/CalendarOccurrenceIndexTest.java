@@ -0,0 +1,183 @@
+/**
+ * Copyright (c) 2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.calendar.impl;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+import org.sakaiproject.calendar.api.CalendarEvent;
+import org.sakaiproject.memory.api.Cache;
+import org.sakaiproject.time.api.TimeRange;
+import org.sakaiproject.time.impl.BasicTimeService;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+public class CalendarOccurrenceIndexTest {
+
+    private static final long HOUR = 60L * 60L * 1000L;
+    private static final long DAY = 24L * HOUR;
+
+    @Rule
+    public MockitoRule rule = MockitoJUnit.rule();
+
+    @Mock(lenient = true)
+    private Cache<String, CalendarOccurrenceIndex.Occurrences> cache;
+
+    private BasicTimeService timeService;
+    private Clock clock;
+    private long now;
+    private CalendarOccurrenceIndex index;
+
+    @Before
+    public void setUp() {
+        Map<String, CalendarOccurrenceIndex.Occurrences> entries = new HashMap<>();
+        when(cache.get(anyString())).thenAnswer(i -> entries.get(i.<String>getArgument(0)));
+        doAnswer(i -> entries.put(i.getArgument(0), i.getArgument(1))).when(cache).put(anyString(), any());
+        doAnswer(i -> entries.remove(i.<String>getArgument(0)) != null).when(cache).remove(anyString());
+
+        timeService = new BasicTimeService();
+        clock = Clock.fixed(Instant.parse("2026-03-11T10:15:00Z"), ZoneId.of("UTC"));
+        now = clock.millis();
+        index = new CalendarOccurrenceIndex(cache, clock, 30, 30, 1000);
+    }
+
+    @Test
+    public void testRangesMatchFullScan() {
+        Random random = new Random(42);
+        List<CalendarEvent> occurrences = randomOccurrences(random, 500, now - 40 * DAY, 80 * DAY);
+        AtomicInteger loads = new AtomicInteger();
+        CalendarOccurrenceIndex.Loader loader = (from, to) -> {
+            loads.incrementAndGet();
+            return inRange(occurrences, timeService.newTimeRange(from, to - from));
+        };
+
+        for (int i = 0; i < 200; i++) {
+            long start = now - 29 * DAY + (long) (random.nextDouble() * 50 * DAY);
+            TimeRange range = timeService.newTimeRange(start, (long) (random.nextDouble() * 8 * DAY));
+            List<CalendarEvent> found = index.getOccurrences("/calendar/calendar/site/main", range, loader);
+            assertEquals(sorted(inRange(occurrences, range)), found);
+        }
+        assertEquals(1, loads.get());
+        assertEquals(199, index.getHitCount());
+    }
+
+    @Test
+    public void testInvalidateRebuilds() {
+        List<CalendarEvent> occurrences = new ArrayList<>();
+        occurrences.add(event(now, HOUR));
+        CalendarOccurrenceIndex.Loader loader = (from, to) -> new ArrayList<>(occurrences);
+        TimeRange today = timeService.newTimeRange(now - HOUR, 2 * DAY);
+
+        assertEquals(1, index.getOccurrences("/calendar/calendar/site/main", today, loader).size());
+        occurrences.add(event(now + 2 * HOUR, HOUR));
+        assertEquals(1, index.getOccurrences("/calendar/calendar/site/main", today, loader).size());
+
+        index.invalidate("/calendar/calendar/site/main");
+        assertEquals(2, index.getOccurrences("/calendar/calendar/site/main", today, loader).size());
+        assertEquals(2, index.getBuildCount());
+    }
+
+    @Test
+    public void testOutsideWindowFallsBack() {
+        CalendarOccurrenceIndex.Loader loader = (from, to) -> Collections.singletonList(event(now, HOUR));
+        assertNull(index.getOccurrences("/calendar/calendar/site/main", timeService.newTimeRange(now - 60 * DAY, DAY), loader));
+        assertNull(index.getOccurrences("/calendar/calendar/site/main", timeService.newTimeRange(now, 60 * DAY), loader));
+        assertEquals(0, index.getBuildCount());
+        assertEquals(2, index.getMissCount());
+    }
+
+    @Test
+    public void testOversizedCalendarFallsBack() {
+        List<CalendarEvent> occurrences = randomOccurrences(new Random(7), 1001, now - 10 * DAY, 20 * DAY);
+        CalendarOccurrenceIndex.Loader loader = (from, to) -> occurrences;
+        TimeRange range = timeService.newTimeRange(now, DAY);
+
+        assertNull(index.getOccurrences("/calendar/calendar/site/main", range, loader));
+        assertNull(index.getOccurrences("/calendar/calendar/site/main", range, loader));
+        // the oversized calendar is remembered rather than expanded again on every request
+        assertEquals(1, index.getBuildCount());
+    }
+
+    @Test
+    public void testMergeFiftyCalendars() {
+        Random random = new Random(11);
+        List<List<CalendarEvent>> calendars = new ArrayList<>();
+        List<CalendarEvent> all = new ArrayList<>();
+        for (int c = 0; c < 50; c++) {
+            List<CalendarEvent> calendar = sorted(randomOccurrences(random, 100, now, 30 * DAY));
+            calendars.add(calendar);
+            all.addAll(calendar);
+        }
+
+        List<CalendarEvent> merged = CalendarOccurrenceIndex.merge(calendars);
+        assertEquals(5000, merged.size());
+        assertEquals(sorted(all), merged);
+        assertNotNull(CalendarOccurrenceIndex.merge(Collections.emptyList()));
+    }
+
+    private List<CalendarEvent> randomOccurrences(Random random, int count, long from, long span) {
+        List<CalendarEvent> occurrences = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            long start = from + (long) (random.nextDouble() * span);
+            // mostly short events, with the odd one running over several days
+            long duration = random.nextInt(20) == 0 ? random.nextInt(5) * DAY : random.nextInt(4) * HOUR;
+            occurrences.add(event(start, duration));
+        }
+        return occurrences;
+    }
+
+    private CalendarEvent event(long start, long duration) {
+        TimeRange range = timeService.newTimeRange(start, duration);
+        CalendarEvent event = mock(CalendarEvent.class, withSettings().lenient());
+        when(event.getRange()).thenReturn(range);
+        when(event.compareTo(any())).thenAnswer(i -> Long.compare(start,
+                ((CalendarEvent) i.getArgument(0)).getRange().firstTime().getTime()));
+        return event;
+    }
+
+    private static List<CalendarEvent> inRange(List<CalendarEvent> events, TimeRange range) {
+        return events.stream().filter(e -> range.overlaps(e.getRange())).collect(Collectors.toList());
+    }
+
+    private static List<CalendarEvent> sorted(List<CalendarEvent> events) {
+        List<CalendarEvent> sorted = new ArrayList<>(events);
+        Collections.sort(sorted);
+        return sorted;
+    }
+}
@@ -38,6 +38,7 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.TimeZone;
+import java.util.function.Consumer;
 
 import junit.framework.TestCase;
 
@@ -167,6 +168,11 @@ public class DbCalendarServiceSerializationTest extends TestCase
 				return null;
 			}
 
+			public int dbStream(String sql, Object[] fields, int fetchSize, SqlReader reader, Consumer consumer)
+			{
+				return 0;
+			}
+
 			public void dbReadBinary(String sql, Object[] fields, byte[] value)
 			{
 				// TODO Auto-generated method stub
@@ -54,6 +54,11 @@ public class CommonsCommentBullhornHandler extends AbstractBullhornHandler {
         return Arrays.asList(CommonsEvents.COMMENT_CREATED);
     }
 
+    @Override
+    public boolean usesStoredAlerts(Event e) {
+        return false;
+    }
+
     @Override
     public Optional<List<BullhornData>> handleEvent(Event e) {
 
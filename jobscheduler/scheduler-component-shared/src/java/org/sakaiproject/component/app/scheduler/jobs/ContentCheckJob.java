@@ -19,15 +19,13 @@ import java.io.IOException;
 import java.security.DigestOutputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.Collection;
-import java.util.Iterator;
-import java.util.NoSuchElementException;
+import java.util.ArrayList;
+import java.util.List;
 
 import javax.xml.bind.DatatypeConverter;
 
 import lombok.extern.slf4j.Slf4j;
 
-import org.apache.commons.collections4.iterators.IteratorChain;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.input.CountingInputStream;
 import org.apache.commons.io.output.NullOutputStream;
@@ -36,9 +34,9 @@ import org.quartz.Job;
 import org.quartz.JobExecutionContext;
 import org.quartz.JobExecutionException;
 
-import org.sakaiproject.content.api.ContentEntity;
 import org.sakaiproject.content.api.ContentHostingService;
 import org.sakaiproject.content.api.ContentResource;
+import org.sakaiproject.content.api.ResourcePage;
 import org.sakaiproject.content.api.ResourceType;
 import org.sakaiproject.exception.ServerOverloadException;
 
@@ -65,6 +63,9 @@ public class ContentCheckJob implements Job {
 
 	public static final String ALGORITHM = "MD5";
 
+	/** The number of resources read at a time, before their bodies are checked. */
+	public static final int PAGE_SIZE = 100;
+
 	private ContentHostingService chs;
 
 	public void setChs(ContentHostingService chs) {
@@ -81,14 +82,30 @@ public class ContentCheckJob implements Job {
 		String[] types = {
 				ResourceType.TYPE_HTML, ResourceType.MIME_TYPE_TEXT, ResourceType.TYPE_UPLOAD
 		};
-		IteratorChain allFiles = new IteratorChain();
+		ContentResourceChecker checker = new ContentResourceChecker(digest);
+		log.info("Checking resources DB/filesystem are in sync.");
 		for (String type : types) {
-			Iterator<ContentResource> resourceIterator = new ContentHostingIterator<ContentResource>(type);
-			allFiles.addIterator(resourceIterator);
+			// Read a page of resources and then check their bodies, so no query is held open while the files are read.
+			// Rows which can't be parsed aren't passed on, so a short page isn't the last one; only an empty page is.
+			List<ContentResource> page = new ArrayList<>(PAGE_SIZE);
+			String afterId = null;
+			while (true) {
+				page.clear();
+				ResourcePage read = chs.forEachResourceOfType(type, afterId, PAGE_SIZE, page::add);
+				if (read.getRows() < 0 || (read.getRows() > 0 && read.getLastId() == null)) {
+					log.warn("Failed to read all resources of type: "+ type);
+					break;
+				}
+				if (read.getRows() == 0) {
+					break;
+				}
+				for (ContentResource resource : page) {
+					checker.check(resource);
+				}
+				afterId = read.getLastId();
+			}
 		}
-		// Now check all the files.
-		ContentResourceChecker checker = new ContentResourceChecker(allFiles, digest);
-		checker.check();
+		checker.report();
 	}
 
 	/**
@@ -96,131 +113,71 @@ public class ContentCheckJob implements Job {
 	 */
 	class ContentResourceChecker {
 
-		private Iterator<ContentResource> resourceIterator;
 		private MessageDigest digest;
+		private long count = 0;
+		private long bad = 0;
+		private long overload = 0;
+		private long io = 0;
 
-		public ContentResourceChecker(Iterator<ContentResource> resourceIterator, MessageDigest digest) {
-			this.resourceIterator = resourceIterator;
+		public ContentResourceChecker(MessageDigest digest) {
 			this.digest = digest;
 		}
 
-		public void check() {
-			long count = 0;
-			long bad = 0;
-			long overload = 0;
-			long io = 0;
-			log.info("Checking resources DB/filesystem are in sync.");
-			while(resourceIterator.hasNext()) {
-				ContentResource resource = resourceIterator.next();
-				// This should be redundant but it's a long running job that I don't want to fail.
-				if (resource == null) {
-					log.warn("Got null resource, skipping.");
-					continue;
-				}
-				count++;
-				if (log.isDebugEnabled()) {
-					log.debug("Starting to look at: "+ resource.getId());
+		public void check(ContentResource resource) {
+			// This should be redundant but it's a long running job that I don't want to fail.
+			if (resource == null) {
+				log.warn("Got null resource, skipping.");
+				return;
+			}
+			count++;
+			if (log.isDebugEnabled()) {
+				log.debug("Starting to look at: "+ resource.getId());
+			}
+			long reportedLength = resource.getContentLength();
+			CountingInputStream is = null;
+			DigestOutputStream os = null;
+			try {
+				digest.reset();
+				is =  new CountingInputStream(resource.streamContent());
+				os = new DigestOutputStream(new NullOutputStream(), digest);
+				IOUtils.copy(is, os);
+				long readLength = is.getByteCount();
+				// Check if it's good.
+				if (reportedLength != readLength) {
+					bad++;
+					byte[] digestBytes = digest.digest();
+					String digestString = DatatypeConverter.printHexBinary(digestBytes);
+					log.warn(String.format(
+							"Length mismatch for: %s stored length: %d read length %d %s digest: %s",
+							resource.getId(), reportedLength, readLength, ALGORITHM, digestString));
 				}
-				long reportedLength = resource.getContentLength();
-				CountingInputStream is = null;
-				DigestOutputStream os = null;
-				try {
-					digest.reset();
-					is =  new CountingInputStream(resource.streamContent());
-					os = new DigestOutputStream(new NullOutputStream(), digest);
-					IOUtils.copy(is, os);
-					long readLength = is.getByteCount();
-					// Check if it's good.
-					if (reportedLength != readLength) {
-						bad++;
-						byte[] digestBytes = digest.digest();
-						String digestString = DatatypeConverter.printHexBinary(digestBytes);
-						log.warn(String.format(
-								"Length mismatch for: %s stored length: %d read length %d %s digest: %s",
-								resource.getId(), reportedLength, readLength, ALGORITHM, digestString));
-					}
-				} catch (ServerOverloadException e) {
-					log.error(String.format("Failed to read: %s because %s", resource.getId(), e.getMessage()));
-					overload++;
-				} catch (IOException e) {
-					log.error(String.format("IO problem with: %s because %s", resource.getId(), e.getMessage()));
-					io++;
-				} finally {
-					if (is != null) {
-						try {
-							is.close();
-						} catch (IOException e) {
-							log.warn("Failed to close inputstream for: "+ resource.getId());
-						}
-					}
-					if (os != null) {
-						try {
-							os.close();
-						} catch (IOException e) {
-							log.warn("Failed to close outputstream for: "+ resource.getId());
-						}
+			} catch (ServerOverloadException e) {
+				log.error(String.format("Failed to read: %s because %s", resource.getId(), e.getMessage()));
+				overload++;
+			} catch (IOException e) {
+				log.error(String.format("IO problem with: %s because %s", resource.getId(), e.getMessage()));
+				io++;
+			} finally {
+				if (is != null) {
+					try {
+						is.close();
+					} catch (IOException e) {
+						log.warn("Failed to close inputstream for: "+ resource.getId());
 					}
 				}
-			}
-			log.info(String.format("Looked at %d resources (%d bad, %d overloads, %d io problems).",
-					count,  bad, overload, io));
-		}
-	}
-
-	/**
-	 * This iterator works it's way through content hosting. It does this using methods that don't
-	 * use the thread local caches so we don't have to worry about clearing them.
-	 * @param <T> The type we get back from ContentHostingService.
-	 */
-	class ContentHostingIterator<T extends ContentEntity> implements Iterator<T> {
-
-		private int page = 0;
-		private int pageSize = 256;
-		private String type;
-		// The iterator on the paged list we got back from the CHS.
-		private Iterator<T> it;
-		// The next element to return.
-		private T next;
-
-		public ContentHostingIterator(String type, int pageSize) {
-			this.type = type;
-			this.pageSize = pageSize;
-			loadNext();
-		}
-
-		public ContentHostingIterator(String type) {
-			this(type, 256);
-		}
-
-		@SuppressWarnings("unchecked")
-		private void loadNext() {
-			next = null;
-			if (it == null || !it.hasNext()) {
-				Collection resources = chs.getResourcesOfType(type, pageSize, page++);
-				if (resources != null) {
-					it = (Iterator<T>)resources.iterator();
+				if (os != null) {
+					try {
+						os.close();
+					} catch (IOException e) {
+						log.warn("Failed to close outputstream for: "+ resource.getId());
+					}
 				}
 			}
-			if (it != null && it.hasNext()) {
-				next = it.next();
-			}
 		}
 
-		public boolean hasNext() {
-			return next != null;
-		}
-
-		public T next() {
-			if (next == null) {
-				throw new NoSuchElementException();
-			}
-			T toReturn = next;
-			loadNext();
-			return toReturn;
-		}
-
-		public void remove() {
-			throw new UnsupportedOperationException("We don't support remove.");
+		public void report() {
+			log.info(String.format("Looked at %d resources (%d bad, %d overloads, %d io problems).",
+					count,  bad, overload, io));
 		}
 	}
 }
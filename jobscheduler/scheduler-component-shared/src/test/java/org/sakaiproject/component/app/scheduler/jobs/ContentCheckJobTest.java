@@ -0,0 +1,74 @@
+/**
+ * Copyright (c) 2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.component.app.scheduler.jobs;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.util.function.Consumer;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.sakaiproject.content.api.ContentHostingService;
+import org.sakaiproject.content.api.ContentResource;
+import org.sakaiproject.content.api.ResourcePage;
+import org.sakaiproject.content.api.ResourceType;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ContentCheckJobTest {
+
+	@Mock
+	private ContentHostingService chs;
+	@Mock
+	private ContentResource resource;
+
+	private ContentCheckJob job;
+
+	@Before
+	public void setUp() throws Exception {
+		when(resource.getContentLength()).thenReturn(1L);
+		when(resource.streamContent()).thenReturn(new ByteArrayInputStream(new byte[1]));
+		when(chs.forEachResourceOfType(anyString(), any(), anyInt(), any())).thenReturn(new ResourcePage(0, null));
+		job = new ContentCheckJob();
+		job.setChs(chs);
+	}
+
+	@Test
+	public void testShortPageIsNotTheLast() throws Exception {
+		// a full page where only one of the rows could be parsed
+		when(chs.forEachResourceOfType(eq(ResourceType.TYPE_UPLOAD), isNull(), anyInt(), any())).thenAnswer(invocation -> {
+			Consumer<ContentResource> consumer = invocation.getArgument(3);
+			consumer.accept(resource);
+			return new ResourcePage(ContentCheckJob.PAGE_SIZE, "/b");
+		});
+		// the next page has nothing parseable at all
+		when(chs.forEachResourceOfType(eq(ResourceType.TYPE_UPLOAD), eq("/b"), anyInt(), any())).thenReturn(new ResourcePage(3, "/c"));
+
+		job.execute(null);
+
+		verify(chs).forEachResourceOfType(eq(ResourceType.TYPE_UPLOAD), eq("/c"), anyInt(), any());
+		verify(resource).streamContent();
+	}
+}
@@ -338,6 +338,21 @@ public interface AuthzGroupService extends EntityProducer
 	 * @return true if this user is allowed to perform the function in the named AuthzGroups, false if not.
 	 */
 	boolean isAllowed(String userId, String function, Collection<String> azGroups);
+
+	/**
+	 * Test if this user is allowed to perform the function in each of a number of AuthzGroup collections, in one go.
+	 * This gives the same answers as calling {@link #isAllowed(String, String, Collection)} for each entry, but
+	 * resolves them together rather than with a query per entry.
+	 *
+	 * @param userId
+	 *        The user id.
+	 * @param function
+	 *        The function to open.
+	 * @param azGroups
+	 *        The AuthzGroup ids to consult, keyed by a caller chosen key (usually the entity reference).
+	 * @return a map from each key of azGroups to true if this user is allowed to perform the function in those AuthzGroups, false if not.
+	 */
+	Map<String, Boolean> isAllowed(String userId, String function, Map<String, Collection<String>> azGroups);
 	
 	/**
 	 * Encode the role id to form the dummy user id that will be used to perform role checks.
@@ -372,6 +387,21 @@ public interface AuthzGroupService extends EntityProducer
 	 */
 	Set<String> getUsersIsAllowed(String function, Collection<String> azGroups);
 
+	/**
+	 * Find which of the given users are allowed to perform the function in the named AuthzGroups.
+	 * This gives the same answers as calling {@link #isAllowed(String, String, Collection)} for each user, but
+	 * resolves them together rather than with a query per user.
+	 *
+	 * @param userIds
+	 *        The user ids to check.
+	 * @param function
+	 *        The function to check.
+	 * @param azGroups
+	 *        A collection of the ids of AuthzGroups to consult.
+	 * @return the Set of those user ids which are allowed to perform the function in the named AuthzGroups.
+	 */
+	Set<String> getUsersIsAllowed(Collection<String> userIds, String function, Collection<String> azGroups);
+
 	/**
 	 * Get the set of user ids per group of users who are allowed to perform the function in the named AuthzGroups.
 	 * Use this method to get permission-related membership information from a set of groups efficiently, 
@@ -84,4 +84,22 @@ public interface FunctionManager
 	 */
 	List<String> getRegisteredUserMutableFunctions(String prefix);
 
+	/**
+	 * Access a compact int key for a function, for use in bit sets of granted functions.
+	 * Keys are assigned when a function is registered, or on first request for functions that are not registered,
+	 * and are only stable for the life of this JVM.
+	 * 
+	 * @param function
+	 *        The function name.
+	 * @return The key for the function, or -1 if the function is null.
+	 */
+	int getFunctionKey(String function);
+
+	/**
+	 * Access the identifier of the key space that {@link #getFunctionKey(String)} keys belong to,
+	 * so that keys assigned by another JVM can be recognised.
+	 * 
+	 * @return The key space identifier.
+	 */
+	String getFunctionKeySpace();
 }
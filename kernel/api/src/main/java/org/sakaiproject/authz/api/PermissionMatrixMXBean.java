@@ -0,0 +1,55 @@
+/**
+ * Copyright (c) 2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.authz.api;
+
+import java.util.Map;
+
+/**
+ * Interface for exporting the compiled permission matrix statistics to JMX.
+ * This needs to be in the API so that it is accessible to the correct classloaders.
+ * Latency histograms are keyed by the upper bound of each bucket.
+ */
+public interface PermissionMatrixMXBean {
+
+    boolean isEnabled();
+
+    /**
+     * @return the number of checks answered from realms that were already compiled
+     */
+    long getHits();
+
+    /**
+     * @return the number of checks that had to compile at least one realm
+     */
+    long getMisses();
+
+    /**
+     * @return the number of checks that could not use the matrix and went to the database
+     */
+    long getFallbacks();
+
+    long getCompiles();
+
+    double getHitRatio();
+
+    Map<String, Long> getCheckLatencyHistogram();
+
+    Map<String, Long> getCompileLatencyHistogram();
+
+    Map<String, Long> getFallbackLatencyHistogram();
+
+    void resetStatistics();
+}
@@ -23,6 +23,8 @@ package org.sakaiproject.authz.api;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.sakaiproject.exception.IdUnusedException;
 import org.sakaiproject.user.api.User;
@@ -89,6 +91,21 @@ public interface SecurityService
 	 */
 	boolean unlock(String userId, String lock, String reference, Collection<String> authzGroupIds);
 
+	/**
+	 * Can the specified user id unlock the lock for use with each of these resources?
+	 * This gives the same answers as calling {@link #unlock(String, String, String)} for each reference, but the
+	 * checks which are not already cached are resolved together.
+	 * 
+	 * @param userId
+	 *        The user id.
+	 * @param lock
+	 *        The lock id string.
+	 * @param references
+	 *        The resource reference strings.
+	 * @return a map from each reference to true if the user can unlock the lock for it, false otherwise.
+	 */
+	Map<String, Boolean> unlock(String userId, String lock, Collection<String> references);
+
 	/**
 	 * Access the List of Users who can unlock the lock for use with this resource.
 	 * 
@@ -100,6 +117,21 @@ public interface SecurityService
 	 */
 	List<User> unlockUsers(String lock, String reference);
 
+	/**
+	 * Which of these user ids can unlock the lock for use with this resource?
+	 * This gives the same answers as calling {@link #unlock(String, String, String)} for each user id, but the
+	 * checks which are not already cached are resolved together.
+	 * 
+	 * @param userIds
+	 *        The user ids to check.
+	 * @param lock
+	 *        The lock id string.
+	 * @param reference
+	 *        The resource reference string.
+	 * @return the Set of those user ids which can unlock the lock (may be empty).
+	 */
+	Set<String> unlockUsers(Collection<String> userIds, String lock, String reference);
+
 	/**
 	 * Is this a super special super (admin) user?
 	 * 
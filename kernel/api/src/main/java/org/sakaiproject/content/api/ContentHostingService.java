@@ -31,6 +31,7 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.Stack;
 import java.util.TreeSet;
+import java.util.function.Consumer;
 
 import org.sakaiproject.antivirus.api.VirusFoundException;
 import org.sakaiproject.authz.api.AuthzPermissionException;
@@ -2041,6 +2042,32 @@ public interface ContentHostingService extends EntityProducer
 	 */
 	public Collection<ContentResource> getResourcesOfType(String resourceType, int pageSize, int page);
 
+	/**
+	 * Pass every ContentResource of a particular resource-type to the consumer, in no particular order. The resources are
+	 * read from the database as they are consumed rather than collected first, so this is the method for jobs which work
+	 * through all the resources of a type; unlike getResourcesOfType() nothing is kept in thread local caches.
+	 * The consumer should not do lengthy work with each resource as the query is held open until it completes; jobs which
+	 * read the bodies should page through the resources with {@link #forEachResourceOfType(String, String, int, Consumer)}.
+	 *
+	 * @param resourceType select resources where CONTENT_RESOURCE.RESOURCE_TYPE_ID equals resourceType
+	 * @param consumer called with each resource
+	 * @return the number of resources passed to the consumer, or -1 if they couldn't be read
+	 */
+	public int forEachResourceOfType(String resourceType, Consumer<ContentResource> consumer);
+
+	/**
+	 * Pass a page of the ContentResources of a particular resource-type to the consumer, in order of id, starting after the
+	 * last id of the previous page. Each page is a query of its own, so the caller can collect a page and then do lengthy work
+	 * with it, such as reading the bodies, without holding a query open. Nothing is kept in thread local caches.
+	 *
+	 * @param resourceType select resources where CONTENT_RESOURCE.RESOURCE_TYPE_ID equals resourceType
+	 * @param afterId the last id of the previous page, or null for the first page
+	 * @param pageSize the most rows to read
+	 * @param consumer called with each resource
+	 * @return the number of rows read and the last id, the caller has read them all once a page reads no rows
+	 */
+	public ResourcePage forEachResourceOfType(String resourceType, String afterId, int pageSize, Consumer<ContentResource> consumer);
+
 	/**
 	 * Retrieve a collection of ContentResource objects of a particular resource-type in a set of contexts
 	 *
@@ -15,6 +15,7 @@
  */
 package org.sakaiproject.content.api;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
@@ -36,6 +37,18 @@ public interface FileSystemHandler {
      */
     public URI getAssetDirectLink(String id, String root, String filePath) throws IOException;
 
+    /**
+     * Retrieve the local file holding the asset, so that it can be sent without being streamed through the heap.
+     * 
+     * @param id The id of the resource. Will not be null or empty.
+     * @param root The root of the storage. Could be null or empty.
+     * @param filePath The path to the file. Will not be null or empty.
+     * @return The readable file, or null if the asset is not held in a local file.
+     */
+    default File getAssetFile(String id, String root, String filePath) {
+        return null;
+    }
+
     /**
      * Retrieves an input stream from the file.
      * 
@@ -0,0 +1,49 @@
+/**
+ * Copyright (c) 2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.content.api;
+
+/**
+ * What one page of {@link ContentHostingService#forEachResourceOfType(String, String, int, java.util.function.Consumer)} read.
+ * Rows which couldn't be parsed into a resource are counted too, so a page with some of them is not mistaken for the last one.
+ */
+public class ResourcePage
+{
+	private final int rows;
+
+	private final String lastId;
+
+	public ResourcePage(int rows, String lastId)
+	{
+		this.rows = rows;
+		this.lastId = lastId;
+	}
+
+	/**
+	 * @return the number of rows read, whether or not they could be passed to the consumer, or -1 if they couldn't be read
+	 */
+	public int getRows()
+	{
+		return rows;
+	}
+
+	/**
+	 * @return the RESOURCE_ID of the last row read, to pass as the afterId of the next page, or null if no rows were read
+	 */
+	public String getLastId()
+	{
+		return lastId;
+	}
+}
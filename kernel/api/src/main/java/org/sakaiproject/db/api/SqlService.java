@@ -26,6 +26,7 @@ import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.GregorianCalendar;
 import java.util.List;
+import java.util.function.Consumer;
 
 import org.sakaiproject.exception.ServerOverloadException;
 
@@ -121,6 +122,29 @@ public interface SqlService
 	 */
 	<T> List<T> dbRead(Connection conn, String sql, Object[] fields, SqlReader<T> reader);
 
+	/**
+	 * Process a query, filling in with fields, and pass the results to the consumer one at a time as they are read, without collecting them into a
+	 * List. If a reader is provided, it will be called for each record to prepare the Object passed to the consumer. Otherwise, the first field of
+	 * each record, as a String, will be passed. The reader may throw SqlReaderFinishedException to stop reading early.<br />
+	 * The query runs on a connection of its own which is returned once the last record has been read, so the consumer is free to make other calls
+	 * on this service, but it should not do lengthy work as the query is held open on the database until it completes.
+	 * 
+	 * @param sql
+	 *        The sql statement.
+	 * @param fields
+	 *        The array of fields for parameters.
+	 * @param fetchSize
+	 *        The number of records to fetch from the database at a time, or 0 to use the configured default.
+	 * @param reader
+	 *        The reader object to read each record.
+	 * @param consumer
+	 *        The consumer of each thing read.
+	 * @param <T>
+	 *        The type of objects being returned by the SqlReader.
+	 * @return The number of things passed to the consumer, or -1 if the query failed.
+	 */
+	<T> int dbStream(String sql, Object[] fields, int fetchSize, SqlReader<T> reader, Consumer<? super T> consumer);
+
 	/**
 	 * Read a single field from the db, from multiple record - concatenating the binary values into value.
 	 * 
@@ -0,0 +1,52 @@
+/**
+ * Copyright (c) 2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.event.api;
+
+import java.util.Map;
+
+/**
+ * Interface for exporting the event dispatch statistics to JMX.
+ * This needs to be in the API so that it is accessible to the correct classloaders.
+ * All maps are keyed by the observer name.
+ */
+public interface EventDispatcherMXBean {
+
+    boolean isAsyncEnabled();
+
+    int getObserverCount();
+
+    Map<String, String> getPolicies();
+
+    Map<String, Integer> getQueueDepths();
+
+    Map<String, Long> getDeliveredCounts();
+
+    Map<String, Long> getDroppedCounts();
+
+    /**
+     * @return the time in ms between queueing and delivery of the last event seen by each observer
+     */
+    Map<String, Long> getLastLagMillis();
+
+    /**
+     * @return the largest time in ms between queueing and delivery since the last reset
+     */
+    Map<String, Long> getMaxLagMillis();
+
+    long getTotalDropped();
+
+    void resetStatistics();
+}
@@ -36,4 +36,15 @@ public interface BullhornHandler {
 
     public List<String> getHandledEvents();
     public Optional<List<BullhornData>> handleEvent(Event e);
+
+    /**
+     * Whether handling this event reads or deletes stored alerts. Alerts produced for earlier events are stored
+     * before such an event is handled; otherwise they are stored in batches and may not be there yet.
+     *
+     * @param e the event about to be handled
+     * @return false if the handler only ever produces new alerts for this event
+     */
+    public default boolean usesStoredAlerts(Event e) {
+        return true;
+    }
 }
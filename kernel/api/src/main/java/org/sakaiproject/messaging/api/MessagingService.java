@@ -13,6 +13,12 @@ public interface MessagingService {
      */
     public List<BullhornAlert> getAlerts(String userId);
 
+    /**
+     * @param userId The user to count alerts for
+     * @return the number of current alerts for the specified user, usually from a cache
+     */
+    public long getAlertCount(String userId);
+
     /**
      * @param userId The user to clear the alert for
      * @param alertId The alert to clear
@@ -21,7 +21,10 @@
 
 package org.sakaiproject.user.api;
 
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.Locale;
+import java.util.Map;
 
 import org.sakaiproject.entity.api.EntityProducer;
 import org.sakaiproject.exception.IdUnusedException;
@@ -75,6 +78,23 @@ public interface PreferencesService extends EntityProducer
 	 */
 	Preferences getPreferences(String id);
 
+	/**
+	 * Access the sets of preferences associated with many ids at once, such as the recipients of a notification.
+	 * 
+	 * @param ids
+	 *        The preferences ids.
+	 * @return The Preferences object for each id, in the order given.
+	 */
+	default Map<String, Preferences> getPreferences(Collection<String> ids)
+	{
+		Map<String, Preferences> rv = new LinkedHashMap<>();
+		for (String id : ids)
+		{
+			if (id != null) rv.put(id, getPreferences(id));
+		}
+		return rv;
+	}
+
 	/**
 	 * Check to see if the current user can add or modify permissions with this id.
 	 * 
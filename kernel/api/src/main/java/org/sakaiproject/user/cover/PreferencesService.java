@@ -83,6 +83,14 @@ public class PreferencesService
 		return service.getPreferences(param0);
 	}
 
+	public static java.util.Map<java.lang.String, org.sakaiproject.user.api.Preferences> getPreferences(java.util.Collection<java.lang.String> param0)
+	{
+		org.sakaiproject.user.api.PreferencesService service = getInstance();
+		if (service == null) return null;
+
+		return service.getPreferences(param0);
+	}
+
 	public static boolean allowUpdate(java.lang.String param0)
 	{
 		org.sakaiproject.user.api.PreferencesService service = getInstance();
@@ -25,10 +25,12 @@ import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.Stack;
 import java.util.UUID;
@@ -47,6 +49,7 @@ import org.sakaiproject.authz.api.GroupFullException;
 import org.sakaiproject.authz.api.GroupIdInvalidException;
 import org.sakaiproject.authz.api.GroupNotDefinedException;
 import org.sakaiproject.authz.api.GroupProvider;
+import org.sakaiproject.authz.api.Member;
 import org.sakaiproject.authz.api.Role;
 import org.sakaiproject.authz.api.RoleAlreadyDefinedException;
 import org.sakaiproject.authz.api.RoleProvider;
@@ -663,10 +666,19 @@ public abstract class BaseAuthzGroupService implements AuthzGroupService
 		Set<String> existingUsers = existingAuthzGroup.getUsers();
 		Set<String> updatedUsers = updatedAuthzGroup.getUsers();
 
-		Set<String> removedUsers
+		// users that were removed, added or had their role or status changed
+		Set<String> changedUsers
 			= existingUsers.stream().filter(eu -> !updatedUsers.contains(eu)).collect(Collectors.toSet());
+		for (String userId : updatedUsers) {
+			Member existing = existingAuthzGroup.getMember(userId);
+			Member updated = updatedAuthzGroup.getMember(userId);
+			if (existing == null || updated == null || existing.isActive() != updated.isActive()
+					|| !Objects.equals(existing.getRole(), updated.getRole())) {
+				changedUsers.add(userId);
+			}
+		}
 		try {
-			((SakaiSecurity) securityService()).notifyMembersRemovedFromRealm(removedUsers, existingAuthzGroup.getReference());
+			((SakaiSecurity) securityService()).notifyMembersChangedInRealm(changedUsers, existingAuthzGroup.getReference());
 		} catch (Exception e) {
 			log.warn("Failure while trying to notify SS about realm removal for AZG("
 						+ existingAuthzGroup.getId() + "): " + e, e);
@@ -1020,6 +1032,21 @@ public abstract class BaseAuthzGroupService implements AuthzGroupService
 		return m_storage.isAllowed(user, function, azGroups);
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	public Map<String, Boolean> isAllowed(String user, String function, Map<String, Collection<String>> azGroups)
+	{
+		Map<String, Set<String>> allowed = m_storage.getUsersIsAllowed(Collections.singleton(user), function, azGroups);
+		Map<String, Boolean> rv = new HashMap<>();
+		for (String key : azGroups.keySet())
+		{
+			Set<String> users = allowed.get(key);
+			rv.put(key, users != null && users.contains(user));
+		}
+		return rv;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -1027,6 +1054,16 @@ public abstract class BaseAuthzGroupService implements AuthzGroupService
 	{
 		return m_storage.getUsersIsAllowed(function, azGroups);
 	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Set<String> getUsersIsAllowed(Collection<String> userIds, String function, Collection<String> azGroups)
+	{
+		Map<String, Set<String>> allowed = m_storage.getUsersIsAllowed(userIds, function, Collections.singletonMap("", azGroups));
+		Set<String> rv = allowed.get("");
+		return (rv == null) ? new HashSet<>() : rv;
+	}
 	
 	/**
 	 * {@inheritDoc}
@@ -1547,6 +1584,20 @@ public abstract class BaseAuthzGroupService implements AuthzGroupService
 		 */
 		Set<String> getUsersIsAllowed(String function, Collection<String> azGroups);
 
+		/**
+		 * Test a number of users against a number of AuthzGroup collections, with the same semantics as
+		 * {@link #isAllowed(String, String, Collection)} for each (user, collection) pair.
+		 * 
+		 * @param userIds
+		 *        The user ids to check.
+		 * @param function
+		 *        The function to check.
+		 * @param azGroups
+		 *        The AuthzGroup ids to consult, keyed by a caller chosen key.
+		 * @return a map from each key of azGroups to the Set of those user ids which are allowed to perform the function there.
+		 */
+		Map<String, Set<String>> getUsersIsAllowed(Collection<String> userIds, String function, Map<String, Collection<String>> azGroups);
+
 		/**
 		 * Get the set of user ids per group of users who are allowed to perform the function in the named AuthzGroups.
 		 * 
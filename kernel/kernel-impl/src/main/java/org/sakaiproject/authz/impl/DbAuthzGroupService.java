@@ -42,6 +42,8 @@ import java.util.Vector;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.StringUtils;
 import org.sakaiproject.authz.api.AuthzGroup;
@@ -135,6 +137,9 @@ public abstract class DbAuthzGroupService extends BaseAuthzGroupService implemen
 
     private Cache realmLocksCache;
 
+	/** Answers regular permission checks from compiled realms, if set. */
+	protected PermissionMatrixCache permissionMatrixCache;
+
 	/** KNL-1325 provide a more efficent refreshAuthzGroup */
     public static final String REFRESH_MAX_TIME_PROPKEY = "authzgroup.refresh.max.time";
     public static final String REFRESH_INTERVAL_PROPKEY = "authzgroup.refresh.interval";
@@ -186,6 +191,10 @@ public abstract class DbAuthzGroupService extends BaseAuthzGroupService implemen
 		this.m_memoryService = memoryService;
 	}
 
+	public void setPermissionMatrixCache(PermissionMatrixCache permissionMatrixCache) {
+		this.permissionMatrixCache = permissionMatrixCache;
+	}
+
 	/**
 	 * @return the ServerConfigurationService collaborator.
 	 */
@@ -655,6 +664,9 @@ public abstract class DbAuthzGroupService extends BaseAuthzGroupService implemen
 
 				m_realmRoleGRCache.remove(realmId);
 				realmLocksCache.remove(realmId);
+				if (permissionMatrixCache != null) {
+					permissionMatrixCache.invalidate(realmId);
+				}
 			} else {
 				// This should never happen as the events we generate should always have
 				// a /realm/ prefix on the resource.
@@ -2263,6 +2275,12 @@ public abstract class DbAuthzGroupService extends BaseAuthzGroupService implemen
 
 			// Regular lookup (not roleswap)
 
+			if (permissionMatrixCache != null) {
+				Boolean allowed = permissionMatrixCache.isAllowed(userId, lock, realms, roles, this::compilePermissionMatrix);
+				if (allowed != null) return allowed;
+			}
+
+			long start = System.nanoTime();
 			results = m_sql.dbRead(statement, fields, new SqlReader()
 			{
 				public Object readSqlResultRecord(ResultSet result)
@@ -2287,9 +2305,215 @@ public abstract class DbAuthzGroupService extends BaseAuthzGroupService implemen
 				rv = count > 0;
 			}
 
+			if (permissionMatrixCache != null) {
+				permissionMatrixCache.recordFallback(System.nanoTime() - start);
+			}
+			return rv;
+		}
+
+		/**
+		 * Compile the role functions and active user grants of a realm for the permission matrix.
+		 *
+		 * @param realmId the realm id
+		 * @return the compiled realm, or null if it couldn't be read
+		 */
+		protected PermissionMatrix compilePermissionMatrix(String realmId)
+		{
+			PermissionMatrix matrix = new PermissionMatrix(realmId, functionManager().getFunctionKeySpace());
+			Object[] fields = new Object[] {realmId};
+			AtomicBoolean failed = new AtomicBoolean(false);
+
+			m_sql.dbRead(dbAuthzGroupSql.getSelectRealmRoleFunctionSql(), fields, result -> {
+				try {
+					matrix.allow(result.getString(1), functionManager().getFunctionKey(result.getString(2)));
+				} catch (SQLException e) {
+					log.warn("compilePermissionMatrix: role functions of {}: {}", realmId, e.toString());
+					failed.set(true);
+				}
+				return null;
+			});
+			m_sql.dbRead(dbAuthzGroupSql.getSelectRealmRoleGroup1Sql(), fields, result -> {
+				try {
+					if ("1".equals(result.getString(3))) {
+						matrix.grant(result.getString(2), result.getString(1));
+					}
+				} catch (SQLException e) {
+					log.warn("compilePermissionMatrix: grants of {}: {}", realmId, e.toString());
+					failed.set(true);
+				}
+				return null;
+			});
+
+			// don't cache a partial realm
+			if (failed.get()) return null;
+
+			log.debug("compilePermissionMatrix: {} roles={} users={}", realmId, matrix.getRoleCount(), matrix.getUserCount());
+			return matrix;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public Map<String, Set<String>> getUsersIsAllowed(Collection<String> userIds, String lock, Map<String, Collection<String>> azGroups)
+		{
+			Map<String, Set<String>> rv = new HashMap<>();
+			if ((lock == null) || (userIds == null) || (azGroups == null)) return rv;
+
+			String currentUserId = sessionManager().getCurrentSessionUserId();
+			Map<String, Boolean> swapped = new HashMap<>();
+			Map<String, Set<String>> emptyRoles = new HashMap<>();
+
+			// the checks the permission matrix couldn't answer, and the users and realms they involve
+			Map<String, Set<String>> pending = new HashMap<>();
+			Set<String> pendingUsers = new HashSet<>();
+			Set<String> pendingRealms = new HashSet<>();
+
+			for (Map.Entry<String, Collection<String>> check : azGroups.entrySet())
+			{
+				Set<String> allowed = new HashSet<>();
+				rv.put(check.getKey(), allowed);
+				Collection<String> realms = check.getValue();
+				if (realms == null || realms.isEmpty()) continue;
+
+				for (String userId : userIds)
+				{
+					Boolean known = null;
+					if (userId != null && userId.equals(currentUserId)
+							&& swapped.computeIfAbsent(getRoleSwapSiteRef(userId, realms), this::isRoleSwapped))
+					{
+						// roleswap and delegated access only apply to the current session, leave them to the single check
+						known = isAllowed(userId, lock, realms);
+					}
+					else if (permissionMatrixCache != null)
+					{
+						Set<String> roles = emptyRoles.computeIfAbsent(userId, u -> getEmptyRoles(u));
+						known = permissionMatrixCache.isAllowed(userId, lock, realms, roles, this::compilePermissionMatrix);
+					}
+
+					if (known == null)
+					{
+						pending.computeIfAbsent(check.getKey(), k -> new HashSet<>()).add(userId);
+						if (userId != null) pendingUsers.add(userId);
+						pendingRealms.addAll(realms);
+					}
+					else if (known)
+					{
+						allowed.add(userId);
+					}
+				}
+			}
+
+			if (pending.isEmpty()) return rv;
+
+			// one query for the roles holding the function and the users' grants across all the realms involved
+			long start = System.nanoTime();
+			String realmInClause = orInClause(pendingRealms.size(), "SR.REALM_ID");
+			String userInClause = pendingUsers.isEmpty() ? "1 = 0" : orInClause(pendingUsers.size(), "SRRG.USER_ID");
+			String sql = dbAuthzGroupSql.getSelectRealmRoleFunctionsAndGrantsSql(realmInClause, userInClause);
+			Object[] fields = new Object[1 + (2 * pendingRealms.size()) + pendingUsers.size()];
+			int pos = 0;
+			fields[pos++] = lock;
+			for (String realmId : pendingRealms)
+			{
+				fields[pos++] = realmId;
+			}
+			for (String userId : pendingUsers)
+			{
+				fields[pos++] = userId;
+			}
+			for (String realmId : pendingRealms)
+			{
+				fields[pos++] = realmId;
+			}
+
+			// realm id -> role keys with the function, user id -> realm id -> granted role keys
+			Map<String, Set<String>> functionRoles = new HashMap<>();
+			Map<String, Map<String, Set<String>>> grants = new HashMap<>();
+			m_sql.dbRead(sql, fields, result -> {
+				try {
+					String realmId = result.getString(2);
+					String roleKey = result.getString(3);
+					if ("F".equals(StringUtils.trim(result.getString(1)))) {
+						functionRoles.computeIfAbsent(realmId, r -> new HashSet<>()).add(roleKey);
+					} else {
+						grants.computeIfAbsent(result.getString(4), u -> new HashMap<>()).computeIfAbsent(realmId, r -> new HashSet<>()).add(roleKey);
+					}
+				} catch (SQLException e) {
+					log.warn("getUsersIsAllowed: {}", e.toString());
+				}
+				return null;
+			});
+
+			// as in isAllowed(), the user's roles are those granted in any of the realms plus the empty roles,
+			// and any of those roles holding the function in any of the realms is enough
+			Map<String, Set<String>> emptyRoleKeys = new HashMap<>();
+			for (Map.Entry<String, Set<String>> check : pending.entrySet())
+			{
+				Collection<String> realms = azGroups.get(check.getKey());
+				for (String userId : check.getValue())
+				{
+					Set<String> roleKeys = new HashSet<>(emptyRoleKeys.computeIfAbsent(userId,
+							u -> getRealmRoleKeys(emptyRoles.computeIfAbsent(u, e -> getEmptyRoles(e))).stream().map(String::valueOf).collect(Collectors.toSet())));
+					Map<String, Set<String>> userGrants = grants.getOrDefault(userId, Collections.emptyMap());
+					for (String realmId : realms)
+					{
+						Set<String> granted = userGrants.get(realmId);
+						if (granted != null) roleKeys.addAll(granted);
+					}
+					for (String realmId : realms)
+					{
+						Set<String> functionRoleKeys = functionRoles.get(realmId);
+						if (functionRoleKeys != null && !Collections.disjoint(functionRoleKeys, roleKeys))
+						{
+							rv.get(check.getKey()).add(userId);
+							break;
+						}
+					}
+				}
+			}
+
+			if (permissionMatrixCache != null) {
+				permissionMatrixCache.recordFallback(System.nanoTime() - start);
+			}
+			log.debug("getUsersIsAllowed: lock={} checks={} resolved from the database={}", lock, azGroups.size(), pending.size());
 			return rv;
 		}
 
+		/**
+		 * Find the site realm a roleswap or delegated access would apply to, the same way isAllowed() does.
+		 *
+		 * @return the site realm id, or null if there is none other than the user's own site
+		 */
+		private String getRoleSwapSiteRef(String userId, Collection<String> realms)
+		{
+			String siteRef = null;
+			for (String realmId : realms)
+			{
+				if (realmId.startsWith(SiteService.REFERENCE_ROOT + Entity.SEPARATOR) && !userId.equals(siteService.getSiteUserId(realmId)))
+				{
+					siteRef = realmId;
+				}
+			}
+			return siteRef;
+		}
+
+		/**
+		 * @return true if the current user has a roleswap or delegated access in this site realm
+		 */
+		private boolean isRoleSwapped(String siteRef)
+		{
+			if (siteRef == null) return false;
+
+			String[] delegatedAccessGroupAndRole = getDelegatedAccessRealmRole(siteRef);
+			if (delegatedAccessGroupAndRole != null && delegatedAccessGroupAndRole.length == 2) return true;
+
+			Reference ref = entityManager().newReference(siteRef);
+			if (SiteService.GROUP_SUBTYPE.equals(ref.getSubType())) {
+				return securityService().getUserEffectiveRole(siteService.siteReference(ref.getContainer())) != null;
+			}
+			return securityService().getUserEffectiveRole(siteRef) != null;
+		}
+
 		/**
 		 * Delegated access essentially behaves like roleswap except instead of just specifying which role, you can also specify
 		 * the realm as well.  The access map is populated by an Event Listener that listens for dac.checkaccess and is stored in the session
@@ -162,4 +162,11 @@ public interface DbAuthzGroupSql
     String getDeleteRealmLocksForRealmWithReferenceSql();
 
     String getDeleteRealmLocksForRealmSql();
+
+	/**
+	 * Rows of (kind, realm id, role key, user id) for the bulk permission check: kind 'F' rows are the roles with the
+	 * function in the realms, kind 'G' rows are the active grants of the users in the realms.
+	 * Parameters are the function, the realm ids, the user ids and the realm ids again.
+	 */
+	String getSelectRealmRoleFunctionsAndGrantsSql(String realmInClause, String userInClause);
 }
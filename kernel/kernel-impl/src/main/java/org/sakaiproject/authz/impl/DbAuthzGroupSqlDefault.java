@@ -552,6 +552,20 @@ public class DbAuthzGroupSqlDefault implements DbAuthzGroupSql
 		return "DELETE FROM SAKAI_REALM_LOCKS WHERE REALM_KEY = (SELECT REALM_KEY FROM SAKAI_REALM WHERE REALM_ID = ?)";
 	}
 
+	@Override
+	public String getSelectRealmRoleFunctionsAndGrantsSql(String realmInClause, String userInClause) {
+		StringBuilder sqlBuf = new StringBuilder();
+		sqlBuf.append("SELECT 'F', SR.REALM_ID, SRRF.ROLE_KEY, SR.REALM_ID FROM SAKAI_REALM_RL_FN SRRF ");
+		sqlBuf.append("INNER JOIN SAKAI_REALM SR ON SR.REALM_KEY = SRRF.REALM_KEY ");
+		sqlBuf.append("INNER JOIN SAKAI_REALM_FUNCTION SRF ON SRF.FUNCTION_KEY = SRRF.FUNCTION_KEY ");
+		sqlBuf.append("WHERE SRF.FUNCTION_NAME = ? AND (" + realmInClause + ") ");
+		sqlBuf.append("UNION ALL ");
+		sqlBuf.append("SELECT 'G', SR.REALM_ID, SRRG.ROLE_KEY, SRRG.USER_ID FROM SAKAI_REALM_RL_GR SRRG ");
+		sqlBuf.append("INNER JOIN SAKAI_REALM SR ON SR.REALM_KEY = SRRG.REALM_KEY ");
+		sqlBuf.append("WHERE SRRG.ACTIVE = '1' AND (" + userInClause + ") AND (" + realmInClause + ")");
+		return sqlBuf.toString();
+	}
+
 	@Override
 	public String getDeleteRealmLocksForRealmWithReferenceSql() {
 		return "DELETE FROM SAKAI_REALM_LOCKS WHERE REALM_KEY = (SELECT REALM_KEY FROM SAKAI_REALM WHERE REALM_ID = ?) AND REFERENCE = ?";
@@ -22,7 +22,11 @@
 package org.sakaiproject.authz.impl;
 
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -44,6 +48,15 @@ public class FunctionManagerComponent implements FunctionManager
 	/** List of user-mutable security functions. */
 	protected List<String> m_registeredUserMutableFunctions = new Vector<String>();
 
+	/** Compact keys for security functions, assigned in order of first use. */
+	protected Map<String, Integer> m_functionKeys = new ConcurrentHashMap<String, Integer>();
+
+	/** The next function key to assign. */
+	protected AtomicInteger m_nextFunctionKey = new AtomicInteger();
+
+	/** Identifies the keys assigned by this component. */
+	protected final String m_functionKeySpace = UUID.randomUUID().toString();
+
 
 	/**********************************************************************************************************************************************************************************************************************************************************
 	 * Dependencies and their setter methods
@@ -88,6 +101,7 @@ public class FunctionManagerComponent implements FunctionManager
 		if (function == null) return;
 
 		m_registeredFunctions.add(function);
+		getFunctionKey(function);
 		
 		if (userMutable) {
 			m_registeredUserMutableFunctions.add(function);
@@ -144,4 +158,27 @@ public class FunctionManagerComponent implements FunctionManager
 
 		return rv;
 	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public int getFunctionKey(String function)
+	{
+		if (function == null) return -1;
+
+		Integer key = m_functionKeys.get(function);
+		if (key == null)
+		{
+			key = m_functionKeys.computeIfAbsent(function, f -> m_nextFunctionKey.getAndIncrement());
+		}
+		return key;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public String getFunctionKeySpace()
+	{
+		return m_functionKeySpace;
+	}
 }
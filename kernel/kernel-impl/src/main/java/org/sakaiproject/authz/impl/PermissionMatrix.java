@@ -0,0 +1,103 @@
+/**
+ * Copyright (c) 2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.authz.impl;
+
+import java.io.Serializable;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ * PermissionMatrix is the compiled form of the permissions in a single realm: a bit set of granted function keys for each
+ * role and the role of each user with an active grant. Function keys come from {@link FunctionManagerComponent} so a
+ * matrix is only meaningful in the JVM that compiled it, which is recorded as its key space.
+ * </p>
+ * <p>
+ * Matrices are built with {@link #allow(String, int)} and {@link #grant(String, String)} and must not be changed once
+ * they are shared.
+ * </p>
+ */
+public class PermissionMatrix implements Serializable
+{
+	private static final long serialVersionUID = 1L;
+
+	private final String realmId;
+
+	private final String keySpace;
+
+	/** Function keys granted to each role. */
+	private final Map<String, BitSet> roleFunctions = new HashMap<>();
+
+	/** The role of each user with an active grant. */
+	private final Map<String, String> userRoles = new HashMap<>();
+
+	public PermissionMatrix(String realmId, String keySpace)
+	{
+		this.realmId = realmId;
+		this.keySpace = keySpace;
+	}
+
+	public String getRealmId()
+	{
+		return realmId;
+	}
+
+	public String getKeySpace()
+	{
+		return keySpace;
+	}
+
+	void allow(String role, int functionKey)
+	{
+		if (role == null || functionKey < 0) return;
+		roleFunctions.computeIfAbsent(role, r -> new BitSet()).set(functionKey);
+	}
+
+	void grant(String userId, String role)
+	{
+		if (userId == null || role == null) return;
+		userRoles.put(userId, role);
+	}
+
+	/**
+	 * @return the role of the user's active grant in this realm, or null if they don't have one.
+	 */
+	public String getUserRole(String userId)
+	{
+		return userId == null ? null : userRoles.get(userId);
+	}
+
+	/**
+	 * @return true if the role is granted the function in this realm.
+	 */
+	public boolean isAllowed(String role, int functionKey)
+	{
+		if (functionKey < 0) return false;
+		BitSet functions = roleFunctions.get(role);
+		return functions != null && functions.get(functionKey);
+	}
+
+	public int getRoleCount()
+	{
+		return roleFunctions.size();
+	}
+
+	public int getUserCount()
+	{
+		return userRoles.size();
+	}
+}
@@ -0,0 +1,299 @@
+/**
+ * Copyright (c) 2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.authz.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+import org.sakaiproject.authz.api.FunctionManager;
+import org.sakaiproject.authz.api.PermissionMatrixMXBean;
+import org.sakaiproject.component.api.ServerConfigurationService;
+import org.sakaiproject.memory.api.Cache;
+import org.sakaiproject.memory.api.MemoryService;
+
+/**
+ * <p>
+ * PermissionMatrixCache answers the regular (no roleswap, no delegated access) realm permission checks from compiled
+ * {@link PermissionMatrix}es instead of counting rows in SAKAI_REALM_RL_FN for every check.
+ * </p>
+ * <p>
+ * A realm is compiled the first time it is checked and kept in a local cache. The DbAuthzGroupService removes a realm's
+ * matrix when it sees an authz group event for it, and those events arrive from every server in the cluster. The cache
+ * must not be made a cluster cache as the function keys in a matrix are only valid in the JVM that compiled it.
+ * </p>
+ * <p>
+ * Configuration (sakai.properties):
+ * <ul>
+ * <li>authz.matrix.enabled - answer permission checks from compiled realms (default true)</li>
+ * </ul>
+ * </p>
+ */
+@Slf4j
+public class PermissionMatrixCache implements PermissionMatrixMXBean
+{
+	public static final String CACHE_NAME = "org.sakaiproject.authz.impl.DbAuthzGroupService.permissionMatrixCache";
+	public static final String PROP_ENABLED = "authz.matrix.enabled";
+
+	@Setter private ServerConfigurationService serverConfigurationService;
+	@Setter private MemoryService memoryService;
+	@Setter private FunctionManager functionManager;
+
+	private boolean enabled = true;
+
+	private Cache<String, PermissionMatrix> cache;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong fallbacks = new AtomicLong();
+	private final AtomicLong compiles = new AtomicLong();
+	private final LatencyHistogram checkLatency = new LatencyHistogram();
+	private final LatencyHistogram compileLatency = new LatencyHistogram();
+	private final LatencyHistogram fallbackLatency = new LatencyHistogram();
+
+	public void init()
+	{
+		enabled = serverConfigurationService.getBoolean(PROP_ENABLED, enabled);
+		if (enabled)
+		{
+			cache = memoryService.getCache(CACHE_NAME);
+		}
+
+		log.info("init: enabled={}", enabled);
+	}
+
+	public void destroy()
+	{
+		if (cache != null)
+		{
+			cache.close();
+			cache = null;
+		}
+	}
+
+	/**
+	 * Check if the user is allowed the function in any of the realms, using the compiled realms. The user has their
+	 * roles from the active grants in all of the realms as well as the roles passed in, and is allowed the function
+	 * if any of those roles has it in any of the realms. This is the same rule the database check applies.
+	 *
+	 * @param userId
+	 *        The user, may be null.
+	 * @param lock
+	 *        The function.
+	 * @param realms
+	 *        The realm ids.
+	 * @param roles
+	 *        Roles the user has without a grant (.anon, .auth, provided roles).
+	 * @param compiler
+	 *        Compiles a realm that is not cached, returning null if it can't.
+	 * @return whether the user is allowed, or null if the check must go to the database.
+	 */
+	public Boolean isAllowed(String userId, String lock, Collection<String> realms, Set<String> roles, Function<String, PermissionMatrix> compiler)
+	{
+		if (!enabled || cache == null || lock == null || realms == null) return null;
+
+		long start = System.nanoTime();
+		boolean compiled = false;
+		int functionKey = functionManager.getFunctionKey(lock);
+
+		List<PermissionMatrix> matrices = new ArrayList<>(realms.size());
+		Set<String> userRoles = new HashSet<>(roles);
+		for (String realmId : realms)
+		{
+			PermissionMatrix matrix = cache.get(realmId);
+			if (matrix == null || !functionManager.getFunctionKeySpace().equals(matrix.getKeySpace()))
+			{
+				matrix = compile(realmId, compiler);
+				if (matrix == null) return null;
+				compiled = true;
+			}
+			matrices.add(matrix);
+
+			String role = matrix.getUserRole(userId);
+			if (role != null) userRoles.add(role);
+		}
+
+		boolean rv = false;
+		for (PermissionMatrix matrix : matrices)
+		{
+			for (String role : userRoles)
+			{
+				if (matrix.isAllowed(role, functionKey))
+				{
+					rv = true;
+					break;
+				}
+			}
+			if (rv) break;
+		}
+
+		(compiled ? misses : hits).incrementAndGet();
+		checkLatency.record(System.nanoTime() - start);
+		return rv;
+	}
+
+	private PermissionMatrix compile(String realmId, Function<String, PermissionMatrix> compiler)
+	{
+		long start = System.nanoTime();
+		PermissionMatrix matrix = compiler.apply(realmId);
+		if (matrix == null) return null;
+
+		compiles.incrementAndGet();
+		compileLatency.record(System.nanoTime() - start);
+		cache.put(realmId, matrix);
+		return matrix;
+	}
+
+	/**
+	 * Drop the compiled form of a realm, it will be compiled again on its next check.
+	 */
+	public void invalidate(String realmId)
+	{
+		if (cache != null && realmId != null)
+		{
+			cache.remove(realmId);
+		}
+	}
+
+	/**
+	 * Record a check that was answered by the database.
+	 *
+	 * @param nanos
+	 *        how long the database check took.
+	 */
+	public void recordFallback(long nanos)
+	{
+		fallbacks.incrementAndGet();
+		fallbackLatency.record(nanos);
+	}
+
+	@Override
+	public boolean isEnabled()
+	{
+		return enabled;
+	}
+
+	@Override
+	public long getHits()
+	{
+		return hits.get();
+	}
+
+	@Override
+	public long getMisses()
+	{
+		return misses.get();
+	}
+
+	@Override
+	public long getFallbacks()
+	{
+		return fallbacks.get();
+	}
+
+	@Override
+	public long getCompiles()
+	{
+		return compiles.get();
+	}
+
+	@Override
+	public double getHitRatio()
+	{
+		long h = hits.get();
+		long total = h + misses.get() + fallbacks.get();
+		return total == 0 ? 0.0d : (double) h / total;
+	}
+
+	@Override
+	public Map<String, Long> getCheckLatencyHistogram()
+	{
+		return checkLatency.toMap();
+	}
+
+	@Override
+	public Map<String, Long> getCompileLatencyHistogram()
+	{
+		return compileLatency.toMap();
+	}
+
+	@Override
+	public Map<String, Long> getFallbackLatencyHistogram()
+	{
+		return fallbackLatency.toMap();
+	}
+
+	@Override
+	public void resetStatistics()
+	{
+		hits.set(0);
+		misses.set(0);
+		fallbacks.set(0);
+		compiles.set(0);
+		checkLatency.reset();
+		compileLatency.reset();
+		fallbackLatency.reset();
+	}
+
+	/**
+	 * Counts of latencies in fixed buckets, cheap enough to record on every check.
+	 */
+	static class LatencyHistogram
+	{
+		private static final long[] BOUNDS_MICROS = {10, 50, 100, 500, 1000, 5000, 10000, 50000, 100000};
+
+		private final AtomicLongArray counts = new AtomicLongArray(BOUNDS_MICROS.length + 1);
+
+		void record(long nanos)
+		{
+			long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+			int i = 0;
+			while (i < BOUNDS_MICROS.length && micros > BOUNDS_MICROS[i]) i++;
+			counts.incrementAndGet(i);
+		}
+
+		void reset()
+		{
+			for (int i = 0; i < counts.length(); i++)
+			{
+				counts.set(i, 0);
+			}
+		}
+
+		Map<String, Long> toMap()
+		{
+			Map<String, Long> rv = new LinkedHashMap<>();
+			for (int i = 0; i < BOUNDS_MICROS.length; i++)
+			{
+				long bound = BOUNDS_MICROS[i];
+				rv.put(bound < 1000 ? bound + "us" : (bound / 1000) + "ms", counts.get(i));
+			}
+			rv.put("more", counts.get(BOUNDS_MICROS.length));
+			return rv;
+		}
+	}
+}
@@ -179,6 +179,14 @@ public abstract class SakaiSecurity implements SecurityService, Observer
 			m_callCache = memoryService().getCache("org.sakaiproject.authz.api.SecurityService.cache");
 			m_superCache = memoryService().getCache("org.sakaiproject.authz.api.SecurityService.superCache");
 			m_contentCache = memoryService().getCache("org.sakaiproject.authz.api.SecurityService.contentCache");
+
+			// the index only sees the entries added on this server so it can't be used with distributed caches
+			if (m_contentCache != null && !m_callCache.isDistributed() && !m_contentCache.isDistributed()
+					&& serverConfigurationService.getBoolean("memory.SecurityService.index", true)) {
+				m_cacheIndex = new SecurityCacheIndex();
+				m_callCache.registerCacheEventListener(m_cacheIndex);
+				m_contentCache.registerCacheEventListener(m_cacheIndex);
+			}
 		}
         eventTrackingService().addObserver(this);
 	}
@@ -193,6 +201,11 @@ public abstract class SakaiSecurity implements SecurityService, Observer
      * Only used in the new caching system
      */
     Cache<String, Boolean> m_contentCache;
+    /**
+     * Index of the call and content cache entries by realm and user, used to only invalidate the affected entries
+     * Only set when the caches are local
+     */
+    SecurityCacheIndex m_cacheIndex;
 
     /**
      * KNL-1230
@@ -255,11 +268,66 @@ public abstract class SakaiSecurity implements SecurityService, Observer
         }
     }
 
+    /**
+     * Add a permission check to the cache, indexing it by the realms it consulted and the user
+     *
+     * @param key the cache key (generated using makeCacheKey)
+     * @param payload true if the permission is granted, false if not
+     * @param userId the user the check was for
+     * @param function the permission
+     * @param azgs the realms the check consulted
+     */
+    void addToCache(String key, Boolean payload, String userId, String function, Collection<String> azgs) {
+        addToCache(key, payload, false);
+        if (m_cacheIndex != null && key != null && azgs != null) {
+            m_cacheIndex.add(key, userId, function, azgs);
+        }
+    }
+
+    /**
+     * Add a number of permission checks to the cache in one pass
+     * Callers index the entries themselves (as {@link #addToCache(String, Boolean, String, String, Collection)} does)
+     *
+     * @param entries the cache keys (generated using makeCacheKey) and whether the permission is granted
+     */
+    void addAllToCache(Map<String, Boolean> entries) {
+        if (m_callCache == null || entries.isEmpty()) return;
+        Map<String, Boolean> contentEntries = new HashMap<>();
+        Map<String, Boolean> callEntries = new HashMap<>();
+        for (Map.Entry<String, Boolean> entry : entries.entrySet()) {
+            if (entry.getKey().contains("@/content")) {
+                contentEntries.put(entry.getKey(), entry.getValue());
+            } else {
+                callEntries.put(entry.getKey(), entry.getValue());
+            }
+        }
+        if (!contentEntries.isEmpty()) m_contentCache.putAll(contentEntries);
+        if (!callEntries.isEmpty()) m_callCache.putAll(callEntries);
+        if (cacheDebugDetailed) log.info("SScache:ADD->bulk: content="+contentEntries.size()+", call="+callEntries.size());
+    }
+
+    /**
+     * Remove entries found with the index from the call and content caches
+     * @param keys the cache keys
+     */
+    void removeIndexed(Set<String> keys) {
+        if (keys.isEmpty()) return;
+        Set<String> contentKeys = keys.stream().filter(k -> k.contains("@/content")).collect(Collectors.toSet());
+        Set<String> callKeys = keys.stream().filter(k -> !k.contains("@/content")).collect(Collectors.toSet());
+        if (!contentKeys.isEmpty()) m_contentCache.removeAll(contentKeys);
+        if (!callKeys.isEmpty()) m_callCache.removeAll(callKeys);
+        m_cacheIndex.removeAll(keys);
+        if (cacheDebug) log.info("SScache:removed indexed keys:"+keys.size());
+    }
+
     /* KNL-1230: expiration happens based on the following plan:
     if (user.template, site.helper, etc. change) then clear entire security cache
     else if the perms in a site changes we loop through all possible site users and the changed permissions and remove all those entries from the cache (including the entry for the anon user - e.g. unlock@@...)
     else if the perms for a user change, same as site perms but all the user sites and the changed permissions
     else if a user is added/removed from super user status then update the cache entry (easiest to simply make sure we update the cache when this happens rather than invalidating)
+    When the caches are local the entries are also indexed by the realms they consulted and by user (SecurityCacheIndex),
+    then realm changes only remove the entries that consulted the realm and membership changes only remove the entries
+    for the changed users in the realm, instead of clearing or computing keys
     NOTES:
     Cache keys are: unlock@{userId}@{perm}@{realm} AND super@{userId}
     This strategy eliminates the need to store the invalidation keys and is much simpler to code
@@ -286,6 +354,12 @@ public abstract class SakaiSecurity implements SecurityService, Observer
                 //|| "/site/!site".equals(ref) // we might not need this one
             ) {
                 if (permissions != null && !permissions.isEmpty()) {
+                    if (m_cacheIndex != null) {
+                        // only the checks that consulted the template realm are affected
+                        removeIndexed(m_cacheIndex.getRealmKeys(ref, permissions));
+                        if (cacheDebug) log.info("SScache:changed template:INDEXED:"+ref);
+                        return true;
+                    }
                     // when the !site.helper or !user.template change then we need to just wipe the entire cache, this is a rare event
                     m_callCache.clear();
                     if (cacheDebug) log.info("SScache:changed template:CLEAR:"+ref);
@@ -302,8 +376,7 @@ public abstract class SakaiSecurity implements SecurityService, Observer
 
             } else if (ref.startsWith("/content")) {
                 // content realms require special handling
-                // WARNING: this is handled in a simple but not very efficient way, should be improved later
-                m_contentCache.clear();
+                clearContentRealm(ref);
                 if (cacheDebug) log.info("SScache:changed content:CLEAR CONTENT:"+ref);
                 return true;
 
@@ -330,8 +403,7 @@ public abstract class SakaiSecurity implements SecurityService, Observer
             String ref = convertRealmRefToRef(azgReference); // strip off /realm/ from start
             if (ref.startsWith("/content")) {
                 // content realms require special handling
-                // WARNING: this is handled in a simple but not very efficient way, should be improved later
-                m_contentCache.clear();
+                clearContentRealm(ref);
                 if (cacheDebug) log.info("SScache:removed content:CLEAR CONTENT:"+ref);
                 return true;
 
@@ -344,13 +416,42 @@ public abstract class SakaiSecurity implements SecurityService, Observer
         return false;
     }
 
+    /**
+     * Content realms are checked for everything below them so without the index the whole content cache goes
+     * @param ref the content realm reference
+     */
+    void clearContentRealm(String ref) {
+        if (m_cacheIndex != null) {
+            removeIndexed(m_cacheIndex.getRealmKeys(ref, null));
+        } else {
+            m_contentCache.clear();
+        }
+    }
+
     /**
      * Removes the specified users site visit permission from the call cache
      */
     protected void notifyMembersRemovedFromRealm(Set<String> userIds, String azgRef) {
+        notifyMembersChangedInRealm(userIds, azgRef);
+    }
+
+    /**
+     * Called when users are added to, removed from or change role in a realm.
+     * With the index all the entries for these users that consulted the realm are removed,
+     * otherwise only their site visit permission is removed from the call cache
+     * @param userIds the users whose membership changed
+     * @param azgRef the realm reference
+     */
+    protected void notifyMembersChangedInRealm(Set<String> userIds, String azgRef) {
+        if (m_callCache == null || userIds == null || userIds.isEmpty()) return; // do nothing no cache in use
+        String ref = convertRealmRefToRef(azgRef);
+        if (m_cacheIndex != null) {
+            removeIndexed(m_cacheIndex.getUserKeys(userIds, ref));
+            return;
+        }
 
         m_callCache.removeAll(userIds.stream().map(
-            uid -> makeCacheKey(uid, null, SiteService.SITE_VISIT, azgRef, false)).collect(Collectors.toSet()));
+            uid -> makeCacheKey(uid, null, SiteService.SITE_VISIT, ref, false)).collect(Collectors.toSet()));
     }
 
     /* Don't think we need this right now but leaving it for future ref just in case -AZ
@@ -387,6 +488,12 @@ public abstract class SakaiSecurity implements SecurityService, Observer
     void cacheRealmPermsChanged(String realmRef, Set<String> roles, Set<String> permissions) {
         if (m_callCache == null) return; // do nothing if no cache in use
         String azgRef = convertRealmRefToRef(realmRef);
+        if (m_cacheIndex != null) {
+            // only the checks that consulted this realm for the changed permissions are affected (whatever the role, even .auth)
+            removeIndexed(m_cacheIndex.getRealmKeys(azgRef, permissions));
+            if (cacheDebug) logCacheState("cacheRealmPermsChanged("+realmRef+", roles="+roles+", perms="+permissions+"):indexed");
+            return;
+        }
         if (permissions == null || permissions.isEmpty()) {
             List<String> allPerms = functionManager().getRegisteredFunctions();
             permissions = new HashSet<String>(allPerms);
@@ -730,30 +837,16 @@ public abstract class SakaiSecurity implements SecurityService, Observer
 	}
 
 	/**
-	 * Check the appropriate AuthzGroups for the answer - this may be cached
+	 * Find the roleswap in effect for a permission check, to keep the cache entries of swapped sessions apart
 	 * 
 	 * @param userId
 	 *        The user id.
-	 * @param function
-	 *        The security function.
-	 * @param entityRef
-	 *        The entity reference string.
-	 * @return true if allowed, false if not.
+	 * @param azgs
+	 *        The AuthzGroups the check consults.
+	 * @return the swapped role, or null if there is none.
 	 */
-	protected boolean checkAuthzGroups(String userId, String function, String entityRef, Collection<String> azgs)
+	protected String getCacheRoleSwap(String userId, Collection<String> azgs)
 	{
-		// get this entity's AuthzGroups if needed
-		if (azgs == null)
-		{
-			// make a reference for the entity
-			Reference ref = entityManager().newReference(entityRef);
-
-			azgs = ref.getAuthzGroups(userId);
-		}
-
-		// need to know whether role swap is in effect, since we can't share the cache entry between sessions
-		// that are swapped and not swapped
-
 		String siteRef = null;
 		String roleswap = null;
 
@@ -787,6 +880,35 @@ public abstract class SakaiSecurity implements SecurityService, Observer
 
 		}
 
+		return roleswap;
+	}
+
+	/**
+	 * Check the appropriate AuthzGroups for the answer - this may be cached
+	 * 
+	 * @param userId
+	 *        The user id.
+	 * @param function
+	 *        The security function.
+	 * @param entityRef
+	 *        The entity reference string.
+	 * @return true if allowed, false if not.
+	 */
+	protected boolean checkAuthzGroups(String userId, String function, String entityRef, Collection<String> azgs)
+	{
+		// get this entity's AuthzGroups if needed
+		if (azgs == null)
+		{
+			// make a reference for the entity
+			Reference ref = entityManager().newReference(entityRef);
+
+			azgs = ref.getAuthzGroups(userId);
+		}
+
+		// need to know whether role swap is in effect, since we can't share the cache entry between sessions
+		// that are swapped and not swapped
+		String roleswap = getCacheRoleSwap(userId, azgs);
+
 		// check the cache
 		String command = makeCacheKey(userId, roleswap, function, entityRef, false);
 		
@@ -800,7 +922,155 @@ public abstract class SakaiSecurity implements SecurityService, Observer
 		boolean rv = authzGroupService().isAllowed(userId, function, azgs);
 
 		// cache
-		addToCache(command, rv, false);
+		addToCache(command, rv, userId, function, azgs);
+
+		return rv;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Map<String, Boolean> unlock(String userId, String function, Collection<String> entityRefs)
+	{
+		Map<String, Boolean> rv = new HashMap<>();
+		if (entityRefs == null) return rv;
+
+		// make sure we have complete parameters
+		if (userId == null || function == null)
+		{
+			log.warn("unlock(): null: " + userId + " " + function + " for " + entityRefs.size() + " references");
+			entityRefs.stream().filter(Objects::nonNull).forEach(r -> rv.put(r, false));
+			return rv;
+		}
+
+		boolean isSuper = isSuperUser(userId);
+		boolean advisors = !isSuper && hasAdvisors();
+
+		// the checks not answered by the advisors or the cache, by reference
+		Map<String, Collection<String>> misses = new HashMap<>();
+		Map<String, String> missKeys = new HashMap<>();
+		for (String entityRef : entityRefs)
+		{
+			if (entityRef == null) continue;
+
+			if (isSuper)
+			{
+				rv.put(entityRef, true);
+				continue;
+			}
+
+			if (advisors)
+			{
+				SecurityAdvisor.SecurityAdvice advice = adviseIsAllowed(userId, function, entityRef);
+				if (advice != SecurityAdvisor.SecurityAdvice.PASS)
+				{
+					rv.put(entityRef, advice == SecurityAdvisor.SecurityAdvice.ALLOWED);
+					continue;
+				}
+			}
+
+			Collection<String> azgs = entityManager().newReference(entityRef).getAuthzGroups(userId);
+			String command = makeCacheKey(userId, getCacheRoleSwap(userId, azgs), function, entityRef, false);
+			final Boolean value = (m_callCache != null) ? getFromCache(command, false) : null;
+			if (value != null)
+			{
+				rv.put(entityRef, value);
+				continue;
+			}
+			misses.put(entityRef, azgs);
+			missKeys.put(entityRef, command);
+		}
+
+		if (misses.isEmpty()) return rv;
+
+		// resolve all the misses together and cache them in one pass
+		Map<String, Boolean> allowed = authzGroupService().isAllowed(userId, function, misses);
+		Map<String, Boolean> entries = new HashMap<>();
+		for (Map.Entry<String, Collection<String>> miss : misses.entrySet())
+		{
+			boolean value = Boolean.TRUE.equals(allowed.get(miss.getKey()));
+			rv.put(miss.getKey(), value);
+			entries.put(missKeys.get(miss.getKey()), value);
+		}
+		addAllToCache(entries);
+		if (m_cacheIndex != null)
+		{
+			misses.forEach((entityRef, azgs) -> m_cacheIndex.add(missKeys.get(entityRef), userId, function, azgs));
+		}
+
+		return rv;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Set<String> unlockUsers(Collection<String> userIds, String function, String entityRef)
+	{
+		Set<String> rv = new HashSet<>();
+		if (userIds == null || userIds.isEmpty()) return rv;
+
+		// make sure we have complete parameters
+		if (function == null || entityRef == null)
+		{
+			log.warn("unlockUsers(): null: " + function + " " + entityRef + " for " + userIds.size() + " users");
+			return rv;
+		}
+
+		Reference ref = entityManager().newReference(entityRef);
+		boolean advisors = hasAdvisors();
+
+		// the users not answered by the advisors or the cache, grouped by the AuthzGroups to consult (these can depend on the user)
+		Map<Set<String>, Set<String>> misses = new HashMap<>();
+		Map<String, String> missKeys = new HashMap<>();
+		for (String userId : userIds)
+		{
+			if (userId == null) continue;
+
+			if (isSuperUser(userId))
+			{
+				rv.add(userId);
+				continue;
+			}
+
+			if (advisors)
+			{
+				SecurityAdvisor.SecurityAdvice advice = adviseIsAllowed(userId, function, entityRef);
+				if (advice != SecurityAdvisor.SecurityAdvice.PASS)
+				{
+					if (advice == SecurityAdvisor.SecurityAdvice.ALLOWED) rv.add(userId);
+					continue;
+				}
+			}
+
+			Collection<String> azgs = ref.getAuthzGroups(userId);
+			String command = makeCacheKey(userId, getCacheRoleSwap(userId, azgs), function, entityRef, false);
+			final Boolean value = (m_callCache != null) ? getFromCache(command, false) : null;
+			if (value != null)
+			{
+				if (value) rv.add(userId);
+				continue;
+			}
+			misses.computeIfAbsent(new HashSet<>(azgs), a -> new HashSet<>()).add(userId);
+			missKeys.put(userId, command);
+		}
+
+		// resolve the misses with a lookup per distinct set of AuthzGroups (usually one) and cache them in one pass
+		Map<String, Boolean> entries = new HashMap<>();
+		for (Map.Entry<Set<String>, Set<String>> miss : misses.entrySet())
+		{
+			Set<String> allowed = authzGroupService().getUsersIsAllowed(miss.getValue(), function, miss.getKey());
+			for (String userId : miss.getValue())
+			{
+				boolean value = allowed.contains(userId);
+				if (value) rv.add(userId);
+				entries.put(missKeys.get(userId), value);
+			}
+		}
+		addAllToCache(entries);
+		if (m_cacheIndex != null)
+		{
+			misses.forEach((azgs, users) -> users.forEach(u -> m_cacheIndex.add(missKeys.get(u), u, function, azgs)));
+		}
 
 		return rv;
 	}
@@ -0,0 +1,230 @@
+/**
+ * Copyright (c) 2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.authz.impl;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+import org.sakaiproject.memory.api.CacheEventListener;
+
+/**
+ * <p>
+ * SecurityCacheIndex tracks which security cache entries depend on which realms and users, so that a change to a realm
+ * or to some of its members only removes the affected entries instead of clearing the whole cache.
+ * </p>
+ * <p>
+ * Entries are indexed under every realm the permission check consulted and under the user it was for. The index is fed
+ * by SakaiSecurity when it caches a result and is told about entries that the cache expires or evicts by listening to
+ * the cache, so it only knows about the entries of local caches.
+ * </p>
+ */
+public class SecurityCacheIndex implements CacheEventListener<String, Boolean>
+{
+	/** What a cache entry was computed from. */
+	private static class Entry
+	{
+		final String userId;
+		final String function;
+		final Collection<String> realms;
+
+		Entry(String userId, String function, Collection<String> realms)
+		{
+			this.userId = userId;
+			this.function = function;
+			this.realms = realms;
+		}
+	}
+
+	private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+	private final Map<String, Set<String>> realmKeys = new ConcurrentHashMap<>();
+	private final Map<String, Set<String>> userKeys = new ConcurrentHashMap<>();
+
+	/**
+	 * Index a cache entry.
+	 *
+	 * @param key
+	 *        the cache key
+	 * @param userId
+	 *        the user the check was for, may be null for the anonymous user
+	 * @param function
+	 *        the function that was checked
+	 * @param realms
+	 *        the realm references the check consulted
+	 */
+	public void add(String key, String userId, String function, Collection<String> realms)
+	{
+		if (key == null || realms == null) return;
+
+		Collection<String> copy = Collections.unmodifiableSet(new HashSet<>(realms));
+		Entry previous = entries.put(key, new Entry(userId, function, copy));
+		if (previous != null) unlink(key, previous);
+
+		for (String realm : copy)
+		{
+			realmKeys.computeIfAbsent(realm, r -> ConcurrentHashMap.newKeySet()).add(key);
+		}
+		userKeys.computeIfAbsent(userKey(userId), u -> ConcurrentHashMap.newKeySet()).add(key);
+	}
+
+	/**
+	 * Stop tracking a cache entry.
+	 */
+	public void remove(String key)
+	{
+		if (key == null) return;
+
+		Entry entry = entries.remove(key);
+		if (entry != null) unlink(key, entry);
+	}
+
+	public void removeAll(Collection<String> keys)
+	{
+		for (String key : keys)
+		{
+			remove(key);
+		}
+	}
+
+	public void clear()
+	{
+		entries.clear();
+		realmKeys.clear();
+		userKeys.clear();
+	}
+
+	/**
+	 * @param realm
+	 *        a realm reference
+	 * @param functions
+	 *        only entries for these functions, or all entries if null or empty
+	 * @return the keys of the entries that consulted the realm
+	 */
+	public Set<String> getRealmKeys(String realm, Collection<String> functions)
+	{
+		Set<String> keys = realmKeys.get(realm);
+		if (keys == null) return Collections.emptySet();
+
+		return select(keys, entry -> functions == null || functions.isEmpty() || functions.contains(entry.function));
+	}
+
+	/**
+	 * @param userIds
+	 *        user ids
+	 * @param realm
+	 *        a realm reference
+	 * @return the keys of the entries for these users that consulted the realm
+	 */
+	public Set<String> getUserKeys(Collection<String> userIds, String realm)
+	{
+		Set<String> rv = new HashSet<>();
+		for (String userId : userIds)
+		{
+			Set<String> keys = userKeys.get(userKey(userId));
+			if (keys != null)
+			{
+				rv.addAll(select(keys, entry -> entry.realms.contains(realm)));
+			}
+		}
+		return rv;
+	}
+
+	public int size()
+	{
+		return entries.size();
+	}
+
+	public int getRealmCount()
+	{
+		return realmKeys.size();
+	}
+
+	private Set<String> select(Set<String> keys, Predicate<Entry> predicate)
+	{
+		Set<String> rv = new HashSet<>();
+		for (String key : keys)
+		{
+			Entry entry = entries.get(key);
+			if (entry != null && predicate.test(entry))
+			{
+				rv.add(key);
+			}
+		}
+		return rv;
+	}
+
+	private void unlink(String key, Entry entry)
+	{
+		for (String realm : entry.realms)
+		{
+			unlink(realmKeys, realm, key);
+		}
+		unlink(userKeys, userKey(entry.userId), key);
+	}
+
+	private static void unlink(Map<String, Set<String>> index, String name, String key)
+	{
+		index.computeIfPresent(name, (n, keys) -> {
+			keys.remove(key);
+			return keys.isEmpty() ? null : keys;
+		});
+	}
+
+	/** The anonymous user has a null id, which a ConcurrentHashMap can't hold. */
+	private static String userKey(String userId)
+	{
+		return userId == null ? "" : userId;
+	}
+
+	/***************************************************************************************************************
+	 * CacheEventListener implementation, keeps the index in step with the entries the cache drops by itself
+	 */
+
+	@Override
+	public boolean evaluate(CacheEntryEvent<? extends String, ? extends Boolean> event)
+	{
+		return true;
+	}
+
+	@Override
+	public void onCreated(Iterable<CacheEntryEvent<? extends String, ? extends Boolean>> events)
+	{
+	}
+
+	@Override
+	public void onUpdated(Iterable<CacheEntryEvent<? extends String, ? extends Boolean>> events)
+	{
+	}
+
+	@Override
+	public void onExpired(Iterable<CacheEntryEvent<? extends String, ? extends Boolean>> events)
+	{
+		onRemoved(events);
+	}
+
+	@Override
+	public void onRemoved(Iterable<CacheEntryEvent<? extends String, ? extends Boolean>> events)
+	{
+		for (CacheEntryEvent<? extends String, ? extends Boolean> event : events)
+		{
+			remove(event.getKey());
+		}
+	}
+}
@@ -26,6 +26,8 @@ import static org.sakaiproject.content.util.IdUtil.isolateName;
 
 import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -36,14 +38,20 @@ import java.io.UnsupportedEncodingException;
 import java.net.SocketException;
 import java.net.URI;
 import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
 import java.text.SimpleDateFormat;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -62,6 +70,7 @@ import java.util.TimerTask;
 import java.util.TreeSet;
 import java.util.Vector;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -112,6 +121,7 @@ import org.sakaiproject.content.api.ContentTypeImageService;
 import org.sakaiproject.content.api.GroupAwareEdit;
 import org.sakaiproject.content.api.GroupAwareEntity;
 import org.sakaiproject.content.api.GroupAwareEntity.AccessMode;
+import org.sakaiproject.content.api.ResourcePage;
 import org.sakaiproject.content.api.ResourceType;
 import org.sakaiproject.content.api.ResourceTypeRegistry;
 import org.sakaiproject.content.api.providers.SiteContentAdvisor;
@@ -1784,6 +1794,61 @@ SiteContentAdvisorProvider, SiteContentAdvisorTypeRegistry, HardDeleteAware
 
 	} // unlockCheck
 
+	/**
+	 * Check security permission for a number of resources at once.
+	 * 
+	 * @param lock
+	 *        The lock id string.
+	 * @param ids
+	 *        The resource id strings.
+	 * @return the Set of the ids which are permitted.
+	 */
+	protected Set<String> unlockCheck(String lock, Collection<String> ids)
+	{
+		if (m_securityService.isSuperUser())
+		{
+			return new HashSet<String>(ids);
+		}
+
+		//SAK-11647 - the lock depends on the resource being in a dropbox, so group the references by lock
+		Map<String, Map<String, String>> idsByLock = new HashMap<String, Map<String, String>>();
+		for (String id : ids)
+		{
+			if (id == null) continue;
+			idsByLock.computeIfAbsent(convertLockIfDropbox(lock, id), l -> new HashMap<String, String>()).put(getReference(id), id);
+		}
+
+		Set<String> rv = new HashSet<String>();
+		String userId = userDirectoryService.getCurrentUser().getId();
+		for (Entry<String, Map<String, String>> lockIds : idsByLock.entrySet())
+		{
+			String thisLock = lockIds.getKey();
+			Map<String, Boolean> allowed = m_securityService.unlock(userId, thisLock, lockIds.getValue().keySet());
+			for (Entry<String, String> refId : lockIds.getValue().entrySet())
+			{
+				if (!Boolean.TRUE.equals(allowed.get(refId.getKey()))) continue;
+
+				String id = refId.getValue();
+				if (thisLock != null && (thisLock.startsWith("content.") || thisLock.startsWith("dropbox.")) && m_availabilityChecksEnabled)
+				{
+					try
+					{
+						if (!availabilityCheck(id)) continue;
+					}
+					catch (IdUnusedException e)
+					{
+						// ignore because we would have caught this earlier.
+						log.debug("BaseContentService.unlockCheck(" + thisLock + "," + id + ") IdUnusedException " + e);
+					}
+				}
+				rv.add(id);
+			}
+		}
+
+		return rv;
+
+	} // unlockCheck
+
 	/**
 	 * Throws a PermissionException if the resource with the given Id is explicitly locked
 	 * 
@@ -2552,6 +2617,18 @@ SiteContentAdvisorProvider, SiteContentAdvisorTypeRegistry, HardDeleteAware
 
 		List members = collection.getMemberResources();
 
+		// check the read permission of all the member resources together
+		List<String> resourceIds = new ArrayList<String>();
+		for (Iterator iMbrs = members.iterator(); iMbrs.hasNext();)
+		{
+			ContentEntity next = (ContentEntity) iMbrs.next();
+			if (next instanceof ContentResource)
+			{
+				resourceIds.add(next.getId());
+			}
+		}
+		Set<String> readable = resourceIds.isEmpty() ? Collections.<String>emptySet() : unlockCheck(AUTH_RESOURCE_READ, resourceIds);
+
 		// process members
 		for (Iterator iMbrs = members.iterator(); iMbrs.hasNext();)
 		{
@@ -2561,7 +2638,7 @@ SiteContentAdvisorProvider, SiteContentAdvisorTypeRegistry, HardDeleteAware
 
 			if (next instanceof ContentResource)
 			{
-				if (unlockCheck(AUTH_RESOURCE_READ, next.getId()))
+				if (readable.contains(next.getId()))
 				{
 					rv.add(next);
 				}
@@ -6965,6 +7042,12 @@ SiteContentAdvisorProvider, SiteContentAdvisorTypeRegistry, HardDeleteAware
 	/** The chunk size used when streaming (100K). */
 	protected static final int STREAM_BUFFER_SIZE = 102400;
 
+	/** Request attributes of the Tomcat sendfile support, which sends a file to the client without reading it into the JVM. */
+	protected static final String SENDFILE_SUPPORT_ATTR = "org.apache.tomcat.sendfile.support";
+	protected static final String SENDFILE_FILENAME_ATTR = "org.apache.tomcat.sendfile.filename";
+	protected static final String SENDFILE_START_ATTR = "org.apache.tomcat.sendfile.start";
+	protected static final String SENDFILE_END_ATTR = "org.apache.tomcat.sendfile.end";
+
 	/**
 	 * Process the access request for a resource.
 	 * 
@@ -7126,19 +7209,34 @@ SiteContentAdvisorProvider, SiteContentAdvisorTypeRegistry, HardDeleteAware
 					contentType = contentType + "; charset=" + encoding;
 				}
 
+				// filtered resources can be sent differently each time, so only the others get a strong validator
+				String eTag = (resource instanceof WrappedContentResource) ? null : getETag(resource, len, lastModTime);
+				if (eTag != null) {
+					res.addHeader("ETag", eTag);
+				}
+
 				// KNL-1316 let's see if the user already has a cached copy. Code copied and modified from Tomcat DefaultServlet.java
-				long headerValue = req.getDateHeader("If-Modified-Since");
-				if (headerValue != -1 && (lastModTime < headerValue + 1000)) {
-					// The entity has not been modified since the date specified by the client. This is not an error case.
-					res.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
-					return; 
+				// If-None-Match takes precedence over If-Modified-Since
+				String ifNoneMatch = req.getHeader("If-None-Match");
+				if (ifNoneMatch != null) {
+					if (eTag != null && matchesETag(ifNoneMatch, eTag)) {
+						res.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+						return;
+					}
+				} else {
+					long headerValue = req.getDateHeader("If-Modified-Since");
+					if (headerValue != -1 && (lastModTime < headerValue + 1000)) {
+						// The entity has not been modified since the date specified by the client. This is not an error case.
+						res.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+						return; 
+					}
 				}
 
 				// If there is a direct link to the asset, no sense streaming it.
 				// Send the asset directly to the load-balancer or to the client
 				URI directLinkUri = m_storage.getDirectLink(resource);
 
-				ArrayList<Range> ranges = parseRange(req, res, len);
+				ArrayList<Range> ranges = parseRange(req, res, len, eTag, lastModTime);
 				if (directLinkUri != null || req.getHeader("Range") == null || (ranges == null) || (ranges.isEmpty())) {
 					res.addHeader("Accept-Ranges", "none");
 					res.setContentType(contentType);
@@ -7173,6 +7271,14 @@ SiteContentAdvisorProvider, SiteContentAdvisorTypeRegistry, HardDeleteAware
 						}
 					}
 
+					// send a body held in a local file without copying it through the heap
+					File bodyFile = m_storage.getBodyFile(resource);
+					if (bodyFile != null && bodyFile.length() == len)
+					{
+						sendBodyFile(req, res, bodyFile, 0, len - 1);
+						return;
+					}
+
 					// stream the content using a small buffer to keep memory managed
 					InputStream content = null;
 					OutputStream out = null;
@@ -7256,6 +7362,13 @@ SiteContentAdvisorProvider, SiteContentAdvisorTypeRegistry, HardDeleteAware
 		                    res.setContentType(contentType);
 		                }
 
+						File bodyFile = m_storage.getBodyFile(resource);
+						if (bodyFile != null && bodyFile.length() == len)
+						{
+							sendBodyFile(req, res, bodyFile, range.start, range.end);
+							return;
+						}
+
 						// stream the content using a small buffer to keep memory managed
 						InputStream content = null;
 						OutputStream out = null;
@@ -7342,7 +7455,15 @@ SiteContentAdvisorProvider, SiteContentAdvisorTypeRegistry, HardDeleteAware
 		
 							out = res.getOutputStream();
 
-			            	copyRanges(resource, out, ranges.iterator(), contentType);
+							File bodyFile = m_storage.getBodyFile(resource);
+							if (bodyFile != null && bodyFile.length() == len)
+							{
+								copyRanges(bodyFile, out, ranges.iterator(), contentType);
+							}
+							else
+							{
+								copyRanges(resource, out, ranges.iterator(), contentType);
+							}
 
 						}
 						catch (SocketException e)
@@ -13582,6 +13703,13 @@ SiteContentAdvisorProvider, SiteContentAdvisorTypeRegistry, HardDeleteAware
 		 */
 		public URI getDirectLink(ContentResource resource);
 
+		/**
+		 * Get the local file holding the body of a resource, so it can be sent without being streamed through the heap.
+		 * @param resource
+		 * @return the file or null if the body isn't held in a local file
+		 */
+		public File getBodyFile(ContentResource resource);
+
 		/**
 		 * Get a count of all members of a collection, where 'member' means the collection
 		 * is the immediate parent of the item.  The count is not recursive and it will 
@@ -13767,6 +13895,26 @@ SiteContentAdvisorProvider, SiteContentAdvisorTypeRegistry, HardDeleteAware
 		 * @return collection of ContentResource
 		 */
 		public Collection<ContentResource> getResourcesOfType(String resourceType, int pageSize, int page);
+
+		/**
+		 * Pass each ContentResource of a particular resource-type to the consumer as it is read.
+		 *
+		 * @param resourceType select resources where CONTENT_RESOURCE.RESOURCE_TYPE_ID equals resourceType
+		 * @param consumer called with each resource
+		 * @return the number of resources passed to the consumer, or -1 if they couldn't be read
+		 */
+		public int forEachResourceOfType(String resourceType, Consumer<ContentResource> consumer);
+
+		/**
+		 * Pass a page of the ContentResources of a particular resource-type, in order of id, to the consumer.
+		 *
+		 * @param resourceType select resources where CONTENT_RESOURCE.RESOURCE_TYPE_ID equals resourceType
+		 * @param afterId the last id of the previous page, or null for the first page
+		 * @param pageSize the most rows to read
+		 * @param consumer called with each resource
+		 * @return the number of rows read, including those which couldn't be parsed, and the last id
+		 */
+		public ResourcePage forEachResourceOfType(String resourceType, String afterId, int pageSize, Consumer<ContentResource> consumer);
       
 		/**
 		 * Retrieve a collection of ContentResource objects of a particular resource-type in a set of contexts.
@@ -14005,57 +14153,67 @@ SiteContentAdvisorProvider, SiteContentAdvisorTypeRegistry, HardDeleteAware
     }
 
     /**
-     * Parse the range header.
+     * Parse the range header, if the client's copy is still current according to the If-Range header.
      *
      * @param request The servlet request we are processing
      * @param response The servlet response we are creating
-     * @return Vector of ranges
+     * @param eTag The strong entity tag of the resource, or null if it has none
+     * @param lastModified The last modification time of the resource, 0 if unknown
+     * @return Vector of ranges, or null if the whole entity is to be sent
      */
     protected ArrayList<Range> parseRange(HttpServletRequest request,
                                 HttpServletResponse response,
-                                long fileLength)
+                                long fileLength, String eTag, long lastModified)
         throws IOException {
 
-    	/* Commented out pending implementation of last-modified / if-modified.
-    	 * See http://jira.sakaiproject.org/jira/browse/SAK-3916
-    	
         // Checking If-Range
-
-    	String headerValue = request.getHeader("If-Range");
+        String headerValue = request.getHeader("If-Range");
 
         if (headerValue != null) {
 
-            long headerValueTime = (-1L);
-            try {
-                headerValueTime = request.getDateHeader("If-Range");
-            } catch (Exception e) {
-                ;
-            }
-
-            String eTag = getETag(resourceAttributes);
-            long lastModified = resourceAttributes.getLastModified();
-
-            if (headerValueTime == (-1L)) {
+            headerValue = headerValue.trim();
+            if (headerValue.startsWith("\"") || headerValue.startsWith("W/")) {
 
                 // If the ETag the client gave does not match the entity
-                // etag, then the entire entity is returned.
-                if (!eTag.equals(headerValue.trim()))
-                    return FULL;
+                // etag, then the entire entity is returned. Only strong
+                // validators can be used to combine ranges.
+                if (eTag == null || !eTag.equals(headerValue))
+                    return null;
 
             } else {
 
+                long headerValueTime = (-1L);
+                try {
+                    headerValueTime = request.getDateHeader("If-Range");
+                } catch (IllegalArgumentException e) {
+                    // not a date either
+                }
+
                 // If the timestamp of the entity the client got is older than
                 // the last modification date of the entity, the entire entity
                 // is returned.
-                if (lastModified > (headerValueTime + 1000))
-                    return FULL;
+                if (headerValueTime == (-1L) || lastModified <= 0 || lastModified > (headerValueTime + 1000))
+                    return null;
 
             }
 
         }
-        
-    	*/
-    	
+
+        return parseRange(request, response, fileLength);
+    }
+
+    /**
+     * Parse the range header.
+     *
+     * @param request The servlet request we are processing
+     * @param response The servlet response we are creating
+     * @return Vector of ranges
+     */
+    protected ArrayList<Range> parseRange(HttpServletRequest request,
+                                HttpServletResponse response,
+                                long fileLength)
+        throws IOException {
+
         if (fileLength == 0)
             return null;
 
@@ -14213,14 +14371,7 @@ SiteContentAdvisorProvider, SiteContentAdvisorTypeRegistry, HardDeleteAware
 
             Range currentRange = (Range) ranges.next();
                   
-            // Writing MIME header.
-            IOUtils.write("\r\n--" + MIME_SEPARATOR + "\r\n", out);
-            if (contentType != null)
-                IOUtils.write("Content-Type: " + contentType + "\r\n", out);
-            IOUtils.write("Content-Range: bytes " + currentRange.start
-                           + "-" + currentRange.end + "/"
-                           + currentRange.length + "\r\n", out);
-            IOUtils.write("\r\n", out);
+            writeRangeHeader(out, currentRange, contentType);
 
             // Printing content
 			InputStream in = null;
@@ -14251,6 +14402,168 @@ SiteContentAdvisorProvider, SiteContentAdvisorTypeRegistry, HardDeleteAware
         }
     }
 
+    /**
+     * Copy the ranges of a body held in a local file, reading each range from
+     * its position in the file rather than skipping through a stream.
+     *
+     * @param file The file holding the body
+     * @param out The output stream to write to
+     * @param ranges Enumeration of the ranges the client wanted to retrieve
+     * @param contentType Content type of the resource
+     * @exception IOException if an input/output error occurs
+     */
+    protected void copyRanges(File file, OutputStream out,
+                      Iterator<Range> ranges, String contentType)
+        throws IOException {
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            while (ranges.hasNext()) {
+                Range currentRange = ranges.next();
+                writeRangeHeader(out, currentRange, contentType);
+                transferRange(channel, out, currentRange.start, currentRange.end);
+            }
+        }
+
+        IOUtils.write("\r\n--" + MIME_SEPARATOR + "--\r\n", out);
+    }
+
+    /**
+     * Write the MIME header of a range in a multipart response.
+     */
+    protected void writeRangeHeader(OutputStream out, Range range, String contentType)
+        throws IOException {
+
+        IOUtils.write("\r\n--" + MIME_SEPARATOR + "\r\n", out);
+        if (contentType != null)
+            IOUtils.write("Content-Type: " + contentType + "\r\n", out);
+        IOUtils.write("Content-Range: bytes " + range.start
+                       + "-" + range.end + "/"
+                       + range.length + "\r\n", out);
+        IOUtils.write("\r\n", out);
+    }
+
+    /**
+     * Transfer a range of a file to the output stream, reading from the
+     * start of the range so nothing before it is read. When the output is
+     * itself a channel the kernel copies the range, otherwise it is copied
+     * through one buffer.
+     *
+     * @param channel The channel of the file to read from
+     * @param out The output stream to write to
+     * @param start Start of the range which will be copied
+     * @param end End of the range which will be copied
+     * @exception IOException if an input/output error occurs
+     */
+    protected void transferRange(FileChannel channel, OutputStream out,
+                      long start, long end)
+        throws IOException {
+
+        if (end >= channel.size()) {
+            throw new EOFException("The file ends at " + channel.size() + " before the end of the range " + end);
+        }
+        long position = start;
+        long remaining = end - start + 1;
+        if (out instanceof WritableByteChannel) {
+            WritableByteChannel target = (WritableByteChannel) out;
+            while (remaining > 0) {
+                long sent = channel.transferTo(position, remaining, target);
+                position += sent;
+                remaining -= sent;
+            }
+            return;
+        }
+
+        byte[] buffer = new byte[(int) Math.min(remaining, STREAM_BUFFER_SIZE)];
+        ByteBuffer wrapped = ByteBuffer.wrap(buffer);
+        while (remaining > 0) {
+            wrapped.clear();
+            wrapped.limit((int) Math.min(remaining, buffer.length));
+            int read = channel.read(wrapped, position);
+            if (read < 0) {
+                throw new EOFException("The file ended at " + position + " before the end of the range " + end);
+            }
+            out.write(buffer, 0, read);
+            position += read;
+            remaining -= read;
+        }
+    }
+
+    /**
+     * Send a range of a body held in a local file. When the container
+     * supports sendfile the file is handed to it, to be sent without being
+     * read into the JVM at all, otherwise it is copied from the file.
+     *
+     * @param req The servlet request we are processing
+     * @param res The servlet response we are creating, with its headers set
+     * @param file The file holding the body
+     * @param start Start of the range which will be sent
+     * @param end End of the range which will be sent
+     */
+    protected void sendBodyFile(HttpServletRequest req, HttpServletResponse res,
+                      File file, long start, long end) {
+
+        try {
+            if (Boolean.TRUE.equals(req.getAttribute(SENDFILE_SUPPORT_ATTR))
+                    && m_serverConfigurationService.getBoolean("content.sendfile", true)) {
+                req.setAttribute(SENDFILE_FILENAME_ATTR, file.getCanonicalPath());
+                req.setAttribute(SENDFILE_START_ATTR, Long.valueOf(start));
+                // the end is exclusive
+                req.setAttribute(SENDFILE_END_ATTR, Long.valueOf(end + 1));
+                return;
+            }
+
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                OutputStream out = res.getOutputStream();
+                transferRange(channel, out, start, end);
+                out.flush();
+            }
+        } catch (IOException e) {
+            // usually the client went away
+            if (log.isDebugEnabled()) {
+                log.debug("Failed to send " + file + ": " + e);
+            }
+        }
+    }
+
+    /**
+     * Build a strong entity tag for the body of a resource from its metadata.
+     * Every change to the body updates the modification time and may change
+     * the length.
+     *
+     * @param resource The resource
+     * @param length The length of the body
+     * @param lastModified The last modification time of the resource, 0 if unknown
+     * @return The entity tag, or null if the modification time is unknown
+     */
+    protected String getETag(ContentResource resource, long length, long lastModified) {
+        if (lastModified <= 0) {
+            return null;
+        }
+        return "\"" + Long.toHexString(lastModified) + "-" + Long.toHexString(length)
+            + "-" + Integer.toHexString(resource.getId().hashCode()) + "\"";
+    }
+
+    /**
+     * Check an If-None-Match header against the entity tag of a resource,
+     * using the weak comparison.
+     *
+     * @param headerValue The list of entity tags the client has, or *
+     * @param eTag The entity tag of the resource
+     * @return true if the client has the current entity
+     */
+    protected boolean matchesETag(String headerValue, String eTag) {
+        for (String candidate : headerValue.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if ("*".equals(candidate) || eTag.equals(candidate)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
 	/**
 	 * Establish a security advisor to allow the "embedded" azg work to occur with no need for additional security permissions.
 	 */
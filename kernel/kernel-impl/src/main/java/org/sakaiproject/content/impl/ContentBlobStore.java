@@ -0,0 +1,292 @@
+/**
+ * Copyright (c) 2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.content.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.UUID;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.apache.commons.codec.binary.Hex;
+
+import org.sakaiproject.content.api.FileSystemHandler;
+import org.sakaiproject.db.api.SqlService;
+
+/**
+ * Stores resource bodies by their content, so that the same body uploaded into many sites is only kept once.
+ * <p>
+ * Each distinct body (by SHA-256, computed while it is streamed to the {@link FileSystemHandler}) is a blob in the
+ * CONTENT_BLOB table with a count of the file paths referencing it. The file paths of resources, live or deleted, are
+ * unchanged and point at their blob through the CONTENT_BLOB_REF table, so the stored resources never need rewriting.
+ * All blobs are kept under the one root, the body path, and are passed to the handler with their path as the id so that
+ * handlers which address files by id find them too. Bodies written before blobs were used are still read from and
+ * deleted at their own file path.
+ * </p>
+ */
+@Slf4j
+public class ContentBlobStore
+{
+	/** How many times to retry counting a blob when racing with other writers of the same body. */
+	private static final int MAX_CLAIM_ATTEMPTS = 3;
+
+	private final SqlService sqlService;
+
+	private final ContentServiceSql contentServiceSql;
+
+	private final FileSystemHandler fileSystemHandler;
+
+	private final String root;
+
+	public ContentBlobStore(SqlService sqlService, ContentServiceSql contentServiceSql, FileSystemHandler fileSystemHandler, String root)
+	{
+		this.sqlService = sqlService;
+		this.contentServiceSql = contentServiceSql;
+		this.fileSystemHandler = fileSystemHandler;
+		this.root = root;
+	}
+
+	/**
+	 * Compute the SHA-256 of a body.
+	 * 
+	 * @return the digest, ready to be updated with the body.
+	 */
+	public static MessageDigest newDigest()
+	{
+		try
+		{
+			return MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			// every java platform has SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Access the blob holding the body stored at a file path.
+	 * 
+	 * @param filePath
+	 *        The file path of the resource.
+	 * @return the file path of the blob, or null if the body isn't stored as a blob.
+	 */
+	public String getBlobPath(String filePath)
+	{
+		return first(sqlService.dbRead(contentServiceSql.getBlobPathSql(), new Object[] {filePath}, null));
+	}
+
+	/**
+	 * Save a body, sharing the blob of an identical body if there is one.
+	 * 
+	 * @param id
+	 *        The id of the resource.
+	 * @param rootFolder
+	 *        The root the body was stored in before blobs were used.
+	 * @param filePath
+	 *        The file path of the resource.
+	 * @param stream
+	 *        The body.
+	 * @return the content size.
+	 * @see FileSystemHandler#saveInputStream(String, String, String, InputStream)
+	 */
+	public long saveInputStream(String id, String rootFolder, String filePath, InputStream stream) throws IOException
+	{
+		if (stream == null) return 0L;
+
+		// write to a new file, the body at this path may be shared
+		String candidate = filePath.substring(0, filePath.lastIndexOf('/') + 1) + UUID.randomUUID().toString();
+		MessageDigest digest = newDigest();
+		long size;
+		try
+		{
+			size = fileSystemHandler.saveInputStream(candidate, root, candidate, new DigestInputStream(stream, digest));
+		}
+		catch (IOException | RuntimeException e)
+		{
+			fileSystemHandler.delete(candidate, root, candidate);
+			throw e;
+		}
+		String sha256 = Hex.encodeHexString(digest.digest());
+
+		String blobPath = claim(sha256, candidate, size);
+		if (!candidate.equals(blobPath))
+		{
+			fileSystemHandler.delete(candidate, root, candidate);
+		}
+		if (blobPath == null)
+		{
+			throw new IOException("Failed to record the blob " + sha256 + " for " + id);
+		}
+
+		String previous = link(filePath, sha256);
+		if (previous != null)
+		{
+			release(previous);
+		}
+		else if (isStored(id, rootFolder, filePath))
+		{
+			// replacing a body stored before blobs were used
+			fileSystemHandler.delete(id, rootFolder, filePath);
+		}
+		if (log.isDebugEnabled()) log.debug("saveInputStream: {} stored as blob {} at {}", id, sha256, blobPath);
+		return size;
+	}
+
+	/**
+	 * @see FileSystemHandler#getInputStream(String, String, String)
+	 */
+	public InputStream getInputStream(String id, String rootFolder, String filePath) throws IOException
+	{
+		String blobPath = getBlobPath(filePath);
+		if (blobPath == null)
+		{
+			return fileSystemHandler.getInputStream(id, rootFolder, filePath);
+		}
+		return fileSystemHandler.getInputStream(blobPath, root, blobPath);
+	}
+
+	/**
+	 * @see FileSystemHandler#getAssetDirectLink(String, String, String)
+	 */
+	public URI getAssetDirectLink(String id, String rootFolder, String filePath) throws IOException
+	{
+		String blobPath = getBlobPath(filePath);
+		if (blobPath == null)
+		{
+			return fileSystemHandler.getAssetDirectLink(id, rootFolder, filePath);
+		}
+		return fileSystemHandler.getAssetDirectLink(blobPath, root, blobPath);
+	}
+
+	/**
+	 * @see FileSystemHandler#getAssetFile(String, String, String)
+	 */
+	public File getAssetFile(String id, String rootFolder, String filePath)
+	{
+		String blobPath = getBlobPath(filePath);
+		if (blobPath == null)
+		{
+			return fileSystemHandler.getAssetFile(id, rootFolder, filePath);
+		}
+		return fileSystemHandler.getAssetFile(blobPath, root, blobPath);
+	}
+
+	/**
+	 * Drop the body at a file path, deleting its blob when nothing else references it.
+	 * 
+	 * @see FileSystemHandler#delete(String, String, String)
+	 */
+	public boolean delete(String id, String rootFolder, String filePath)
+	{
+		String sha256 = first(sqlService.dbRead(contentServiceSql.getBlobRefSql(), new Object[] {filePath}, null));
+		if (sha256 == null)
+		{
+			return fileSystemHandler.delete(id, rootFolder, filePath);
+		}
+		sqlService.dbWrite(contentServiceSql.getDeleteBlobRefSql(), new Object[] {filePath});
+		release(sha256);
+		return true;
+	}
+
+	/**
+	 * Count a new reference to the blob of a body, or record a new blob.
+	 * 
+	 * @param sha256
+	 *        The SHA-256 of the body.
+	 * @param candidate
+	 *        The file path the body was written to, which becomes the blob if it is new.
+	 * @param size
+	 *        The size of the body.
+	 * @return the file path of the blob, or null if it couldn't be recorded.
+	 */
+	protected String claim(String sha256, String candidate, long size)
+	{
+		for (int attempt = 0; attempt < MAX_CLAIM_ATTEMPTS; attempt++)
+		{
+			// counted before the path is read so that the blob can't be released in between
+			if (sqlService.dbWriteCount(contentServiceSql.getAdjustBlobRefCountSql(), new Object[] {Integer.valueOf(1), sha256}, null, null, false) > 0)
+			{
+				String blobPath = first(sqlService.dbRead(contentServiceSql.getBlobFilePathSql(), new Object[] {sha256}, null));
+				if (blobPath != null) return blobPath;
+			}
+			// if another node recorded the same body first count that one instead
+			if (sqlService.dbWriteFailQuiet(null, contentServiceSql.getInsertBlobSql(), new Object[] {sha256, candidate, Long.valueOf(size)}))
+			{
+				return candidate;
+			}
+		}
+		log.warn("claim(): failed to record the blob {}", sha256);
+		return null;
+	}
+
+	/**
+	 * Point a file path at a blob.
+	 * 
+	 * @return the SHA-256 of the blob the file path pointed at before, or null if it didn't.
+	 */
+	protected String link(String filePath, String sha256)
+	{
+		String previous = first(sqlService.dbRead(contentServiceSql.getBlobRefSql(), new Object[] {filePath}, null));
+		if (previous != null)
+		{
+			sqlService.dbWrite(contentServiceSql.getDeleteBlobRefSql(), new Object[] {filePath});
+		}
+		sqlService.dbWrite(contentServiceSql.getInsertBlobRefSql(), new Object[] {filePath, sha256});
+		return previous;
+	}
+
+	/**
+	 * Drop a reference to a blob, deleting the blob if it was the last one.
+	 */
+	protected void release(String sha256)
+	{
+		String blobPath = first(sqlService.dbRead(contentServiceSql.getBlobFilePathSql(), new Object[] {sha256}, null));
+		sqlService.dbWrite(contentServiceSql.getAdjustBlobRefCountSql(), new Object[] {Integer.valueOf(-1), sha256});
+
+		// only one of the releasing nodes gets to delete it, and not if it has been claimed again meanwhile
+		if (blobPath != null && sqlService.dbWriteCount(contentServiceSql.getDeleteUnreferencedBlobSql(), new Object[] {sha256}, null, null, false) > 0)
+		{
+			if (log.isDebugEnabled()) log.debug("release: deleting blob {} at {}", sha256, blobPath);
+			fileSystemHandler.delete(blobPath, root, blobPath);
+		}
+	}
+
+	/**
+	 * Check if a resource was stored with a file path, so a body written before blobs were used may be there.
+	 * 
+	 * @param rootFolder
+	 *        The root of the body, the body path for live resources or another for deleted ones.
+	 * @return true if the live (or deleted) resource has that file path.
+	 */
+	protected boolean isStored(String id, String rootFolder, String filePath)
+	{
+		String sql = root.equals(rootFolder) ? contentServiceSql.getResourceFilePathCountSql() : contentServiceSql.getDeletedResourceFilePathCountSql();
+		String count = first(sqlService.dbRead(sql, new Object[] {id, filePath}, null));
+		return count != null && Integer.parseInt(count.trim()) > 0;
+	}
+
+	private String first(List<String> values)
+	{
+		return (values == null || values.isEmpty()) ? null : values.get(0);
+	}
+}
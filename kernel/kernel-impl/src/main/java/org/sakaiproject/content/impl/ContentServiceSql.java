@@ -92,6 +92,12 @@ public interface ContentServiceSql
 	 */
 	public String getResourceIdAndFilePath();
 
+	/**
+	 * returns the sql statement which retrieves all id's and file paths of the deleted resources where the file path is not null.
+	 * This is used for deduplicating the stored files.
+	 */
+	public String getDeletedResourceIdAndFilePath();
+
 	/**
 	 * returns the sql statement which retrieves resource uuid from the content_resource table.
 	 */
@@ -206,4 +212,96 @@ public interface ContentServiceSql
 	 */
 	String getSelectByResourceTypeQuerySql();
 
+	/**
+	 * returns the sql statement which retrieves the BINARY_ENTITY and XML values for all entries in the CONTENT_RESOURCE table
+	 * of a particular RESOURCE_TYPE_ID, unpaged and unordered.
+	 */
+	String getSelectAllByResourceTypeSql();
+
+	/**
+	 * returns the sql statement which retrieves the BINARY_ENTITY, XML and RESOURCE_ID values for up to a number of entries in the
+	 * CONTENT_RESOURCE table of a particular RESOURCE_TYPE_ID with a RESOURCE_ID after a given one, in ascending order by RESOURCE_ID.
+	 */
+	String getSelectByResourceTypeAfterIdSql();
+
+	/**
+	 * returns the sql statement which retrieves the CONTEXT and FILE_SIZE values of a resource in the specified table.
+	 */
+	String getContextAndFilesizeSql(String table);
+
+	/**
+	 * returns the sql statement which retrieves the counted number of bytes of a context from the CONTENT_CONTEXT_USAGE table.
+	 */
+	String getContextUsageSql();
+
+	/**
+	 * returns the sql statement which seeds the count of a context in the CONTENT_CONTEXT_USAGE table from the resources in the context, in one statement.
+	 */
+	String getSeedContextUsageSql();
+
+	/**
+	 * returns the sql statement which adds a (possibly negative) number of bytes to the count of a context in the CONTENT_CONTEXT_USAGE table.
+	 */
+	String getAdjustContextUsageSql();
+
+	/**
+	 * returns the sql statement which retrieves the CONTEXT, counted bytes and actual bytes of every context in the CONTENT_CONTEXT_USAGE table.
+	 */
+	String getContextUsageDriftSql();
+
+	/**
+	 * returns the sql statement which resets the count of a context in the CONTENT_CONTEXT_USAGE table to the actual number of bytes.
+	 */
+	String getResetContextUsageSql();
+
+	/**
+	 * returns the sql statement which retrieves the FILE_PATH of the blob holding the body stored at a file path.
+	 */
+	String getBlobPathSql();
+
+	/**
+	 * returns the sql statement which retrieves the SHA256 of the blob referenced by a file path from the CONTENT_BLOB_REF table.
+	 */
+	String getBlobRefSql();
+
+	/**
+	 * returns the sql statement which counts the resources with an id and file path in the CONTENT_RESOURCE table.
+	 */
+	String getResourceFilePathCountSql();
+
+	/**
+	 * returns the sql statement which counts the deleted resources with an id and file path in the CONTENT_RESOURCE_DELETE table.
+	 */
+	String getDeletedResourceFilePathCountSql();
+
+	/**
+	 * returns the sql statement which inserts a blob with a single reference into the CONTENT_BLOB table.
+	 */
+	String getInsertBlobSql();
+
+	/**
+	 * returns the sql statement which adds a (possibly negative) number of references to a blob in the CONTENT_BLOB table.
+	 */
+	String getAdjustBlobRefCountSql();
+
+	/**
+	 * returns the sql statement which retrieves the FILE_PATH of a blob in the CONTENT_BLOB table.
+	 */
+	String getBlobFilePathSql();
+
+	/**
+	 * returns the sql statement which deletes a blob from the CONTENT_BLOB table once it is no longer referenced.
+	 */
+	String getDeleteUnreferencedBlobSql();
+
+	/**
+	 * returns the sql statement which points a file path at a blob in the CONTENT_BLOB_REF table.
+	 */
+	String getInsertBlobRefSql();
+
+	/**
+	 * returns the sql statement which removes the blob reference of a file path from the CONTENT_BLOB_REF table.
+	 */
+	String getDeleteBlobRefSql();
+
 }
@@ -131,6 +131,14 @@ public class ContentServiceSqlDefault implements ContentServiceSql
 		return "select RESOURCE_ID, FILE_PATH from CONTENT_RESOURCE where FILE_PATH IS NOT NULL";
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	public String getDeletedResourceIdAndFilePath()
+	{
+		return "select RESOURCE_ID, FILE_PATH from CONTENT_RESOURCE_DELETE where FILE_PATH IS NOT NULL";
+	}
+
 	/**
 	 * returns the sql statement which retrieves the resource uuid from the content_resource table.
 	 */
@@ -312,8 +320,26 @@ public class ContentServiceSqlDefault implements ContentServiceSql
 	{
 		return "select BINARY_ENTITY, XML from CONTENT_RESOURCE where RESOURCE_TYPE_ID = ? ORDER BY RESOURCE_ID LIMIT ?, ? ";
 	}
+
+	/**
+	 * returns the sql statement which retrieves the BINARY_ENTITY and XML values for all entries in the CONTENT_RESOURCE table
+	 * of a particular RESOURCE_TYPE_ID, unpaged and unordered.
+	 */
+	public String getSelectAllByResourceTypeSql()
+	{
+		return "select BINARY_ENTITY, XML from CONTENT_RESOURCE where RESOURCE_TYPE_ID = ?";
+	}
 
 	/**
+	 * returns the sql statement which retrieves the BINARY_ENTITY, XML and RESOURCE_ID values for up to a number of entries in the
+	 * CONTENT_RESOURCE table of a particular RESOURCE_TYPE_ID with a RESOURCE_ID after a given one, in ascending order by RESOURCE_ID.
+	 */
+	public String getSelectByResourceTypeAfterIdSql()
+	{
+		return "select BINARY_ENTITY, XML, RESOURCE_ID from CONTENT_RESOURCE where RESOURCE_TYPE_ID = ? and RESOURCE_ID > ? ORDER BY RESOURCE_ID LIMIT ?";
+	}
+
+	/**
 	 * returns the sql statement which retrieves the total number of bytes within a site-level collection skiping user folders.
 	 * KNL-1084, SAK-22169
 	 */
@@ -321,4 +347,132 @@ public class ContentServiceSqlDefault implements ContentServiceSql
 	    return "select SUM(FILE_SIZE) from CONTENT_RESOURCE where IN_COLLECTION LIKE ? and not exists (select 1 from SAKAI_USER_ID_MAP where USER_ID = substr(in_collection,length(?)+1,instr(substr(in_collection,length(?)+1),'/')-1))";
 	}
 
+	/**
+	 * returns the sql statement which retrieves the CONTEXT and FILE_SIZE values of a resource in the specified table.
+	 */
+	public String getContextAndFilesizeSql(String table)
+	{
+		return "select CONTEXT, FILE_SIZE from " + table + " where RESOURCE_ID = ?";
+	}
+
+	/**
+	 * returns the sql statement which retrieves the counted number of bytes of a context from the CONTENT_CONTEXT_USAGE table.
+	 */
+	public String getContextUsageSql()
+	{
+		return "select FILE_SIZE from CONTENT_CONTEXT_USAGE where CONTEXT = ?";
+	}
+
+	/**
+	 * returns the sql statement which seeds the count of a context in the CONTENT_CONTEXT_USAGE table from the resources in the context, in one statement.
+	 */
+	public String getSeedContextUsageSql()
+	{
+		return "insert into CONTENT_CONTEXT_USAGE (CONTEXT, FILE_SIZE) select CONTEXT, SUM(FILE_SIZE) from CONTENT_RESOURCE where CONTEXT = ? group by CONTEXT";
+	}
+
+	/**
+	 * returns the sql statement which adds a (possibly negative) number of bytes to the count of a context in the CONTENT_CONTEXT_USAGE table.
+	 */
+	public String getAdjustContextUsageSql()
+	{
+		return "update CONTENT_CONTEXT_USAGE set FILE_SIZE = FILE_SIZE + ? where CONTEXT = ?";
+	}
+
+	/**
+	 * returns the sql statement which retrieves the CONTEXT, counted bytes and actual bytes of every context in the CONTENT_CONTEXT_USAGE table.
+	 */
+	public String getContextUsageDriftSql()
+	{
+		return "select U.CONTEXT, U.FILE_SIZE, (select SUM(R.FILE_SIZE) from CONTENT_RESOURCE R where R.CONTEXT = U.CONTEXT) from CONTENT_CONTEXT_USAGE U";
+	}
+
+	/**
+	 * returns the sql statement which resets the count of a context in the CONTENT_CONTEXT_USAGE table to the actual number of bytes.
+	 */
+	public String getResetContextUsageSql()
+	{
+		return "update CONTENT_CONTEXT_USAGE set FILE_SIZE = (select COALESCE(SUM(FILE_SIZE), 0) from CONTENT_RESOURCE where CONTEXT = ?) where CONTEXT = ?";
+	}
+
+	/**
+	 * returns the sql statement which retrieves the FILE_PATH of the blob holding the body stored at a file path.
+	 */
+	public String getBlobPathSql()
+	{
+		return "select B.FILE_PATH from CONTENT_BLOB_REF R, CONTENT_BLOB B where R.SHA256 = B.SHA256 and R.FILE_PATH = ?";
+	}
+
+	/**
+	 * returns the sql statement which retrieves the SHA256 of the blob referenced by a file path from the CONTENT_BLOB_REF table.
+	 */
+	public String getBlobRefSql()
+	{
+		return "select SHA256 from CONTENT_BLOB_REF where FILE_PATH = ?";
+	}
+
+	/**
+	 * returns the sql statement which counts the resources with an id and file path in the CONTENT_RESOURCE table.
+	 */
+	public String getResourceFilePathCountSql()
+	{
+		return "select count(*) from CONTENT_RESOURCE where RESOURCE_ID = ? and FILE_PATH = ?";
+	}
+
+	/**
+	 * returns the sql statement which counts the deleted resources with an id and file path in the CONTENT_RESOURCE_DELETE table.
+	 */
+	public String getDeletedResourceFilePathCountSql()
+	{
+		return "select count(*) from CONTENT_RESOURCE_DELETE where RESOURCE_ID = ? and FILE_PATH = ?";
+	}
+
+	/**
+	 * returns the sql statement which inserts a blob with a single reference into the CONTENT_BLOB table.
+	 */
+	public String getInsertBlobSql()
+	{
+		return "insert into CONTENT_BLOB (SHA256, FILE_PATH, FILE_SIZE, REF_COUNT) values (?, ?, ?, 1)";
+	}
+
+	/**
+	 * returns the sql statement which adds a (possibly negative) number of references to a blob in the CONTENT_BLOB table.
+	 */
+	public String getAdjustBlobRefCountSql()
+	{
+		return "update CONTENT_BLOB set REF_COUNT = REF_COUNT + ? where SHA256 = ?";
+	}
+
+	/**
+	 * returns the sql statement which retrieves the FILE_PATH of a blob in the CONTENT_BLOB table.
+	 */
+	public String getBlobFilePathSql()
+	{
+		return "select FILE_PATH from CONTENT_BLOB where SHA256 = ?";
+	}
+
+	/**
+	 * returns the sql statement which deletes a blob from the CONTENT_BLOB table once it is no longer referenced.
+	 */
+	public String getDeleteUnreferencedBlobSql()
+	{
+		return "delete from CONTENT_BLOB where SHA256 = ? and REF_COUNT <= 0";
+	}
+
+	/**
+	 * returns the sql statement which points a file path at a blob in the CONTENT_BLOB_REF table.
+	 */
+	public String getInsertBlobRefSql()
+	{
+		return "insert into CONTENT_BLOB_REF (FILE_PATH, SHA256) values (?, ?)";
+	}
+
+	/**
+	 * returns the sql statement which removes the blob reference of a file path from the CONTENT_BLOB_REF table.
+	 */
+	public String getDeleteBlobRefSql()
+	{
+		return "delete from CONTENT_BLOB_REF where FILE_PATH = ?";
+	}
+
 }
@@ -50,6 +50,15 @@ public class ContentServiceSqlOracle extends ContentServiceSqlDefault
 		return "alter table " + table + " add RESOURCE_TYPE_ID VARCHAR2(255) default null"; 
 	}
 	
+	/**
+	 * returns the sql statement which retrieves the BINARY_ENTITY, XML and RESOURCE_ID values for up to a number of entries in the
+	 * CONTENT_RESOURCE table of a particular RESOURCE_TYPE_ID with a RESOURCE_ID after a given one, in ascending order by RESOURCE_ID.
+	 */
+	public String getSelectByResourceTypeAfterIdSql()
+	{
+		return "select BINARY_ENTITY, XML, RESOURCE_ID from (select BINARY_ENTITY, XML, RESOURCE_ID from CONTENT_RESOURCE where RESOURCE_TYPE_ID = ? and RESOURCE_ID > ? ORDER BY RESOURCE_ID) where ROWNUM <= ?";
+	}
+
 	/**
 	 * returns the sql statement to add an index of the CONTENT column to the CONTENT_RESOURCE table.
 	 */
@@ -0,0 +1,155 @@
+/**
+ * Copyright (c) 2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.content.impl;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.sakaiproject.db.api.SqlService;
+
+/**
+ * Keeps a running count of the bytes of the resources in each context (site) in the CONTENT_CONTEXT_USAGE table, so that
+ * quota checks don't have to add up the sizes of every resource in the site on each upload.
+ * <p>
+ * The counts are changed with a single relative update as resources are committed and removed, in the transaction of the
+ * resource write. A context is counted from the first time its size is asked for or its resources change, when its count
+ * is seeded from the resources table by a single insert, so no change can fall between adding up the resources and storing
+ * the count. {@link #reconcile()} corrects the counts which have drifted, e.g. because of writes made outside the content
+ * service.
+ * </p>
+ */
+@Slf4j
+public class ContextUsageCounter
+{
+	private final SqlService sqlService;
+
+	private final ContentServiceSql contentServiceSql;
+
+	public ContextUsageCounter(SqlService sqlService, ContentServiceSql contentServiceSql)
+	{
+		this.sqlService = sqlService;
+		this.contentServiceSql = contentServiceSql;
+	}
+
+	/**
+	 * Access the number of bytes of the resources in a context, seeding its count if it isn't counted yet.
+	 * 
+	 * @param context
+	 *        The context.
+	 * @return the number of bytes.
+	 */
+	public long getSize(String context)
+	{
+		List<String> counted = sqlService.dbRead(contentServiceSql.getContextUsageSql(), new Object[] {context}, null);
+		if (counted != null && !counted.isEmpty() && counted.get(0) != null)
+		{
+			return parse(counted.get(0), context);
+		}
+
+		// not counted yet, seed the count from the resources - if another node seeded it first its count stands
+		sqlService.dbWriteFailQuiet(null, contentServiceSql.getSeedContextUsageSql(), new Object[] {context});
+		counted = sqlService.dbRead(contentServiceSql.getContextUsageSql(), new Object[] {context}, null);
+		if (counted != null && !counted.isEmpty() && counted.get(0) != null)
+		{
+			return parse(counted.get(0), context);
+		}
+
+		// a context with no resources isn't counted
+		return 0L;
+	}
+
+	/**
+	 * Add to (or subtract from) the count of a context, seeding the count if it isn't counted yet. This should be run in the
+	 * transaction of the resource write, so that a seed sees the change and a seed by another node doesn't.
+	 * 
+	 * @param context
+	 *        The context.
+	 * @param delta
+	 *        The change in bytes.
+	 */
+	public void adjust(String context, long delta)
+	{
+		if (context == null || delta == 0L) return;
+
+		Object[] fields = new Object[] {Long.valueOf(delta), context};
+		int updated = sqlService.dbWriteCount(contentServiceSql.getAdjustContextUsageSql(), fields, null, null, false);
+		if (updated == 0)
+		{
+			// not counted yet, the seed includes this change - unless another node seeded it first, then add to its count
+			if (!sqlService.dbWriteFailQuiet(null, contentServiceSql.getSeedContextUsageSql(), new Object[] {context}))
+			{
+				updated = sqlService.dbWriteCount(contentServiceSql.getAdjustContextUsageSql(), fields, null, null, false);
+			}
+		}
+		if (updated < 0)
+		{
+			log.warn("adjust(): failed to update the usage of context {} by {}", context, delta);
+		}
+	}
+
+	/**
+	 * Reset the counts which don't match the sizes of the resources in their contexts.
+	 * 
+	 * @return the number of contexts corrected.
+	 */
+	public int reconcile()
+	{
+		List<String> drifted = new ArrayList<>();
+		sqlService.dbRead(contentServiceSql.getContextUsageDriftSql(), null, result -> {
+			try
+			{
+				// a SUM over no resources is null, which reads as 0
+				if (result.getLong(2) != result.getLong(3))
+				{
+					drifted.add(result.getString(1));
+				}
+			}
+			catch (SQLException e)
+			{
+				log.warn("reconcile(): {}", e.toString());
+			}
+			return null;
+		});
+
+		for (String context : drifted)
+		{
+			sqlService.dbWrite(contentServiceSql.getResetContextUsageSql(), new Object[] {context, context});
+		}
+
+		if (!drifted.isEmpty())
+		{
+			log.info("reconcile(): corrected the usage of {} contexts", drifted.size());
+		}
+		return drifted.size();
+	}
+
+	private long parse(String value, String context)
+	{
+		try
+		{
+			return new BigDecimal(value.trim()).longValue();
+		}
+		catch (NumberFormatException e)
+		{
+			log.warn("unable to parse a size from \"{}\" for context \"{}\"", value, context);
+			return 0L;
+		}
+	}
+}
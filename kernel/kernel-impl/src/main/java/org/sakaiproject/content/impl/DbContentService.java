@@ -24,6 +24,7 @@ package org.sakaiproject.content.impl;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
@@ -42,11 +43,17 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import lombok.extern.slf4j.Slf4j;
 
+import org.apache.commons.lang3.tuple.Pair;
+
 import org.slf4j.Marker;
 import org.slf4j.MarkerFactory;
 
@@ -61,6 +68,7 @@ import org.sakaiproject.content.api.ContentResourceEdit;
 import org.sakaiproject.content.api.FileSystemHandler;
 import org.sakaiproject.content.api.Lock;
 import org.sakaiproject.content.api.LockManager;
+import org.sakaiproject.content.api.ResourcePage;
 import org.sakaiproject.content.impl.serialize.impl.conversion.Type1BlobCollectionConversionHandler;
 import org.sakaiproject.db.api.SqlReader;
 import org.sakaiproject.db.api.SqlService;
@@ -310,6 +318,15 @@ public class DbContentService extends BaseContentService
     /** Configuration: to run the ddl on init or not. */
     protected boolean m_autoDdl = false;
 
+    /** The running per context counts of resource bytes used for the quota checks, or null if not counted. */
+    protected ContextUsageCounter contextUsageCounter = null;
+
+    /** Periodically corrects the per context counts. */
+    private ScheduledExecutorService usageReconciler = null;
+
+    /** Stores the file system bodies by their content, or null if each resource has its own copy. */
+    protected ContentBlobStore contentBlobStore = null;
+
     /** Virtual Content Hosting Handler -- handler which resolves virtual entities to real ones. */
     private ContentHostingHandlerResolverImpl contentHostingHandlerResolver = null;
 
@@ -410,6 +427,24 @@ public class DbContentService extends BaseContentService
             	throw new Error("The filesize column doesn't exit. Please make sure you ran the 2.4-2.5 DB Conversion");
             }
 
+            if (m_serverConfigurationService.getBoolean("content.quota.usage.counters", true))
+            {
+                contextUsageCounter = new ContextUsageCounter(m_sqlService, contentServiceSql);
+
+                int reconcileMinutes = m_serverConfigurationService.getInt("content.quota.usage.reconcile.minutes", 1440);
+                if (reconcileMinutes > 0)
+                {
+                    usageReconciler = Executors.newSingleThreadScheduledExecutor();
+                    usageReconciler.scheduleWithFixedDelay(this::reconcileContextUsage, reconcileMinutes, reconcileMinutes, TimeUnit.MINUTES);
+                }
+            }
+
+            if (m_bodyPath != null && fileSystemHandler != null && m_serverConfigurationService.getBoolean("content.body.dedup", false))
+            {
+                contentBlobStore = new ContentBlobStore(m_sqlService, contentServiceSql, fileSystemHandler, m_bodyPath);
+                log.info("Resource bodies are stored by content in: " + m_bodyPath);
+            }
+
             if (filesizeColumnExists && !readyToUseFilesizeColumn())
             {
                 // if the convert flag is set to add CONTEXT and FILE_SIZE columns
@@ -485,6 +520,38 @@ public class DbContentService extends BaseContentService
         //testResourceByTypePaging();
     }
 
+    /**
+     * Returns to uninitialized state.
+     */
+    public void destroy()
+    {
+        if (usageReconciler != null)
+        {
+            usageReconciler.shutdownNow();
+        }
+        super.destroy();
+    }
+
+    /**
+     * Correct the per context usage counts which no longer match the resources.
+     * 
+     * @return the number of contexts corrected.
+     */
+    public int reconcileContextUsage()
+    {
+        if (contextUsageCounter == null) return 0;
+
+        try
+        {
+            return contextUsageCounter.reconcile();
+        }
+        catch (Exception e)
+        {
+            log.warn("reconcileContextUsage(): {}", e.toString());
+            return 0;
+        }
+    }
+
     /**
      * Runs tests of the getResourcesOfType() method. Steps are:<br/>
      * 1) Add 26 site-level resource collections ("/group/site_A/" through "/group/site_Z/")
@@ -1861,7 +1928,11 @@ public class DbContentService extends BaseContentService
                     {
                         insertIndividualDropboxRecord(getIndividualDropboxId(edit.getId()));
                     }
-                    m_resourceStore.commitResource(edit);
+                    writeCountingUsage(() -> {
+                        Pair<String, Long> counted = getCountedUsage(edit.getId());
+                        m_resourceStore.commitResource(edit);
+                        countUsage(counted, ((BasicGroupAwareEdit) edit).getContext(), edit.getContentLength());
+                    }, "commitResource: " + edit.getId());
                 }
 
             }
@@ -1872,6 +1943,75 @@ public class DbContentService extends BaseContentService
         }
 
        
+        /**
+         * Read the context and size a stored resource is counted with, before it changes.
+         * 
+         * @param id
+         *        The resource id.
+         * @return the context and size, or null if the resource isn't stored yet or the usage isn't counted.
+         */
+        protected Pair<String, Long> getCountedUsage(String id)
+        {
+            if (contextUsageCounter == null) return null;
+
+            List<Pair<String, Long>> rows = m_sqlService.dbRead(contentServiceSql.getContextAndFilesizeSql(m_resourceTableName), new Object[] {id}, result -> {
+                try
+                {
+                    return Pair.of(result.getString(1), result.getLong(2));
+                }
+                catch (SQLException e)
+                {
+                    log.warn("getCountedUsage(): " + id + " " + e);
+                    return null;
+                }
+            });
+            return rows.isEmpty() ? null : rows.get(0);
+        }
+
+        /**
+         * Run a resource write, in one transaction with the update of its usage count if the usage is counted.
+         * 
+         * @param write
+         *        The resource write and count update.
+         * @param tag
+         *        Identifies the write when the transaction fails.
+         */
+        protected void writeCountingUsage(Runnable write, String tag)
+        {
+            if (contextUsageCounter == null)
+            {
+                write.run();
+                return;
+            }
+            m_sqlService.transact(write, tag);
+        }
+
+        /**
+         * Move a resource's bytes in the per context usage counts.
+         * 
+         * @param before
+         *        The context and size it was counted with, or null if it is new.
+         * @param context
+         *        The context it is now in, or null if it has been removed.
+         * @param size
+         *        The size it now has.
+         */
+        protected void countUsage(Pair<String, Long> before, String context, long size)
+        {
+            if (contextUsageCounter == null) return;
+
+            if (before != null && before.getLeft() != null && before.getLeft().equals(context))
+            {
+                contextUsageCounter.adjust(context, size - before.getRight());
+                return;
+            }
+            if (before != null)
+            {
+                contextUsageCounter.adjust(before.getLeft(), -before.getRight());
+            }
+            contextUsageCounter.adjust(context, size);
+        }
+
        /** return deleted resource for the given  id */ 
        public ContentResourceEdit editDeletedResource(String id)
        {
@@ -2147,7 +2287,11 @@ public class DbContentService extends BaseContentService
 				   {
 					   insertIndividualDropboxRecord(getIndividualDropboxId(edit.getId()));
 				   }
-				   m_resourceStore.removeResource(edit);
+				   writeCountingUsage(() -> {
+					   Pair<String, Long> counted = getCountedUsage(edit.getId());
+					   m_resourceStore.removeResource(edit);
+					   countUsage(counted, null, 0L);
+				   }, "removeResource: " + edit.getId());
 
 			   }
 		   }
@@ -2329,6 +2473,9 @@ public class DbContentService extends BaseContentService
         		if (resource instanceof WrappedContentResource || !(resource instanceof BaseResourceEdit)) {
         			return null;
         		}
+        		if (contentBlobStore != null) {
+        			return contentBlobStore.getAssetDirectLink(((BaseResourceEdit) resource).m_id, m_bodyPath, ((BaseResourceEdit) resource).m_filePath);
+        		}
         		return fileSystemHandler.getAssetDirectLink(((BaseResourceEdit) resource).m_id, m_bodyPath, ((BaseResourceEdit) resource).m_filePath);
         	}
         	catch (IOException e) {
@@ -2338,6 +2485,22 @@ public class DbContentService extends BaseContentService
         	return null;
         }
 
+        public File getBodyFile(ContentResource resource)
+        {
+            // only plain resources have their bodies in the file as they are to be sent
+            if (m_bodyPath == null || fileSystemHandler == null || resource instanceof WrappedContentResource
+                    || !(resource instanceof BaseResourceEdit) || resource.getContentHandler() != null
+                    || ((BaseResourceEdit) resource).m_contentLength <= 0)
+            {
+                return null;
+            }
+            if (contentBlobStore != null)
+            {
+                return contentBlobStore.getAssetFile(((BaseResourceEdit) resource).m_id, m_bodyPath, ((BaseResourceEdit) resource).m_filePath);
+            }
+            return fileSystemHandler.getAssetFile(((BaseResourceEdit) resource).m_id, m_bodyPath, ((BaseResourceEdit) resource).m_filePath);
+        }
+
         /**
          * Return an input stream.
          * 
@@ -2357,6 +2520,10 @@ public class DbContentService extends BaseContentService
 
             try
             {
+                if (contentBlobStore != null)
+                {
+                    return contentBlobStore.getInputStream(((BaseResourceEdit) resource).m_id, rootFolder, ((BaseResourceEdit) resource).m_filePath);
+                }
                 return fileSystemHandler.getInputStream(((BaseResourceEdit) resource).m_id, rootFolder, ((BaseResourceEdit) resource).m_filePath);
             }
             catch (IOException e)
@@ -2500,7 +2667,9 @@ public class DbContentService extends BaseContentService
         {
             try
             {
-                long byteCount = fileSystemHandler.saveInputStream(((BaseResourceEdit) resource).m_id, rootFolder, ((BaseResourceEdit) resource).m_filePath, stream);
+                long byteCount = (contentBlobStore != null)
+                        ? contentBlobStore.saveInputStream(((BaseResourceEdit) resource).m_id, rootFolder, ((BaseResourceEdit) resource).m_filePath, stream)
+                        : fileSystemHandler.saveInputStream(((BaseResourceEdit) resource).m_id, rootFolder, ((BaseResourceEdit) resource).m_filePath, stream);
                 resource.setContentLength(byteCount);
                 ResourcePropertiesEdit props = resource.getPropertiesEdit();
                 props.addProperty(ResourceProperties.PROP_CONTENT_LENGTH, Long.toString(byteCount));
@@ -2564,6 +2733,11 @@ public class DbContentService extends BaseContentService
          */
         protected void delResourceBodyFilesystem(String rootFolder, ContentResourceEdit resource)
         {
+            if (contentBlobStore != null)
+            {
+                contentBlobStore.delete(((BaseResourceEdit) resource).m_id, rootFolder, ((BaseResourceEdit) resource).m_filePath);
+                return;
+            }
             fileSystemHandler.delete(((BaseResourceEdit) resource).m_id, rootFolder, ((BaseResourceEdit) resource).m_filePath);
         }
 
@@ -2653,6 +2827,35 @@ public class DbContentService extends BaseContentService
             return resources;
         }
 
+        public int forEachResourceOfType(String resourceType, Consumer<ContentResource> consumer)
+        {
+            String sql = contentServiceSql.getSelectAllByResourceTypeSql();
+            Object[] fields = new Object[1];
+            fields[0] = resourceType;
+
+            return m_sqlService.dbStream(sql, fields, 0, new EntityReader(), consumer);
+        }
+
+        public ResourcePage forEachResourceOfType(String resourceType, String afterId, int pageSize, Consumer<ContentResource> consumer)
+        {
+            if (pageSize > MAXIMUM_PAGE_SIZE)
+                pageSize = MAXIMUM_PAGE_SIZE;
+
+            String sql = contentServiceSql.getSelectByResourceTypeAfterIdSql();
+            Object[] fields = new Object[3];
+            fields[0] = resourceType;
+            // every resource id starts with the root collection id and is longer, so the first page starts after it
+            fields[1] = (afterId == null) ? "/" : afterId;
+            fields[2] = Integer.valueOf(pageSize);
+
+            PagedEntityReader reader = new PagedEntityReader();
+            if (m_sqlService.dbStream(sql, fields, pageSize, reader, consumer) < 0)
+            {
+                return new ResourcePage(-1, afterId);
+            }
+            return new ResourcePage(reader.rows, reader.lastId);
+        }
+
         public Collection<ContentResource> getContextResourcesOfType(String resourceType, Set<String> contextIds) 
         {
             if ( resourceType == null || contextIds == null || contextIds.size() == 0 )
@@ -2748,6 +2951,30 @@ public class DbContentService extends BaseContentService
 
         }
 
+        /**
+         * Reads the resource of each row like EntityReader, also counting the rows and keeping the RESOURCE_ID of the last one,
+         * so rows which can't be parsed still move the page on.
+         */
+        public class PagedEntityReader extends EntityReader
+        {
+            private int rows = 0;
+            private String lastId = null;
+
+            public Object readSqlResultRecord(ResultSet result)
+            {
+                rows++;
+                try
+                {
+                    lastId = result.getString(3);
+                }
+                catch (SQLException e)
+                {
+                    log.warn("PagedEntityReader: unable to read the resource id", e);
+                }
+                return super.readSqlResultRecord(result);
+            }
+        }
+
         /**
          * @return the m_collectionStorageFields
          */
@@ -3343,6 +3570,12 @@ public class DbContentService extends BaseContentService
 
     protected long getSizeForContext(String context) 
     {
+        // the dropbox is sized by collection rather than context, so isn't counted
+        if (contextUsageCounter != null && !context.startsWith(COLLECTION_DROPBOX))
+        {
+            return contextUsageCounter.getSize(context);
+        }
+
         long size = 0L;
 
 	String sql = contentServiceSql.getQuotaQuerySql();
@@ -3561,4 +3794,20 @@ public class DbContentService extends BaseContentService
         return  m_storage.getResourcesOfType(resourceType, pageSize, page);
     }
 
+    /**
+     *	 {@inheritDoc}
+     */
+    public int forEachResourceOfType(String resourceType, Consumer<ContentResource> consumer)
+    {
+        return m_storage.forEachResourceOfType(resourceType, consumer);
+    }
+
+    /**
+     *	 {@inheritDoc}
+     */
+    public ResourcePage forEachResourceOfType(String resourceType, String afterId, int pageSize, Consumer<ContentResource> consumer)
+    {
+        return m_storage.forEachResourceOfType(resourceType, afterId, pageSize, consumer);
+    }
+
 }
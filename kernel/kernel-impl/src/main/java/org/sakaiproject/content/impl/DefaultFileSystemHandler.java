@@ -111,4 +111,10 @@ public class DefaultFileSystemHandler implements FileSystemHandler {
 	public URI getAssetDirectLink(String id, String root, String filePath) throws IOException {
 		return null;
 	}
+
+    @Override
+    public File getAssetFile(String id, String root, String filePath) {
+        File file = getFile(id, root, filePath);
+        return file.isFile() && file.canRead() ? file : null;
+    }
 }
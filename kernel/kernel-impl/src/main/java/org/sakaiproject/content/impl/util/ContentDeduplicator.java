@@ -0,0 +1,401 @@
+/**
+ * Copyright (c) 2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.content.impl.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+import javax.sql.DataSource;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SimpleDriverDataSource;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import org.sakaiproject.content.api.FileSystemHandler;
+import org.sakaiproject.content.impl.ContentBlobStore;
+import org.sakaiproject.content.impl.ContentServiceSql;
+import org.sakaiproject.content.impl.ContentServiceSqlDefault;
+
+/**
+ * This is a utility class to deduplicate the files of resources and deleted
+ * resources stored with a FileSystemHandler, so that they can be used with
+ * content.body.dedup=true.
+ * <p>
+ * Every file not yet stored as a blob is hashed. The first file with a given
+ * content becomes the blob for it, and the files with the same content are
+ * deleted and pointed at that blob. Blobs are kept under the body path, so the
+ * first copy of a file only found among the deleted resources is moved there.
+ * Files which are already blobs are skipped, so the conversion can be run again
+ * if it is interrupted. Sakai should not be running while it converts.
+ * </p>
+ */
+@Slf4j
+public class ContentDeduplicator {
+    /**
+     * The datasource for the database connections.
+     */
+    private DataSource dataSource;
+
+    /**
+     * The connection to the database.
+     */
+    private Connection connection;
+
+    /**
+     * The database connection driver.
+     */
+    private String connectionDriver;
+
+    /**
+     * The database connection URL.
+     */
+    private String connectionURL;
+
+    /**
+     * The database connection username.
+     */
+    private String connectionUsername;
+
+    /**
+     * The database connection password.
+     */
+    private String connectionPassword;
+
+    /**
+     * The sql statements for the content tables.
+     */
+    private ContentServiceSql contentServiceSql = new ContentServiceSqlDefault();
+
+    /**
+     * The path the resource files are stored in, where the blobs are kept.
+     */
+    private String bodyPath;
+
+    /**
+     * The path the deleted resource files are stored in, null to leave them.
+     */
+    private String bodyPathDeleted;
+
+    /**
+     * The FileSystemHandler the files are stored with.
+     */
+    private FileSystemHandler fileSystemHandler;
+
+    /**
+     * Whether the FileSystemHandler stores files by resource id rather than by
+     * path, in which case the first copy of every file has to be rewritten.
+     */
+    private boolean copyBlobs = false;
+
+    /**
+     * Whether to only report what would be deduplicated.
+     */
+    private boolean dryRun = false;
+
+    private JdbcTemplate template;
+    private long files;
+    private long duplicates;
+    private long duplicateBytes;
+
+    /**
+     * The hashes of the files seen in a dry run, which records no blobs.
+     */
+    private Set<String> seen = new HashSet<>();
+
+    /**
+     * Set the datasource.
+     */
+    public void setDataSource(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Set the connection.
+     */
+    public void setConnection(Connection connection) {
+        this.connection = connection;
+    }
+
+    /**
+     * Set the connection driver.
+     */
+    public void setConnectionDriver(String connectionDriver) {
+        this.connectionDriver = connectionDriver;
+    }
+
+    /**
+     * Set the connection URL.
+     */
+    public void setConnectionURL(String connectionURL) {
+        this.connectionURL = connectionURL;
+    }
+
+    /**
+     * Set the connection username.
+     */
+    public void setConnectionUsername(String connectionUsername) {
+        this.connectionUsername = connectionUsername;
+    }
+
+    /**
+     * Set the connection password.
+     */
+    public void setConnectionPassword(String connectionPassword) {
+        this.connectionPassword = connectionPassword;
+    }
+
+    /**
+     * Set the sql statements for the content tables.
+     */
+    public void setContentServiceSql(ContentServiceSql contentServiceSql) {
+        this.contentServiceSql = contentServiceSql;
+    }
+
+    /**
+     * Set the path the resource files are stored in.
+     */
+    public void setBodyPath(String bodyPath) {
+        this.bodyPath = bodyPath;
+    }
+
+    /**
+     * Set the path the deleted resource files are stored in.
+     */
+    public void setBodyPathDeleted(String bodyPathDeleted) {
+        this.bodyPathDeleted = bodyPathDeleted;
+    }
+
+    /**
+     * Set the FileSystemHandler.
+     */
+    public void setFileSystemHandler(FileSystemHandler fileSystemHandler) {
+        this.fileSystemHandler = fileSystemHandler;
+    }
+
+    /**
+     * Set whether to rewrite the first copy of every file.
+     */
+    public void setCopyBlobs(boolean copyBlobs) {
+        this.copyBlobs = copyBlobs;
+    }
+
+    /**
+     * Set whether to only report what would be deduplicated.
+     */
+    public void setDryRun(boolean dryRun) {
+        this.dryRun = dryRun;
+    }
+
+    /**
+     * @return the number of files which had the same content as another.
+     */
+    public long getDuplicates() {
+        return duplicates;
+    }
+
+    /**
+     * @return the number of bytes in the files which had the same content as another.
+     */
+    public long getDuplicateBytes() {
+        return duplicateBytes;
+    }
+
+    /**
+     * Setup the datasource. This method first look for a valid datasource,
+     * then a connection and lastly will create a datasource from the
+     * connection details.
+     */
+    private void setupDataSource() throws IllegalStateException {
+        if (dataSource != null) {
+            return;
+        }
+        if (connection != null) {
+            dataSource = new SingleConnectionDataSource(connection, false);
+            return;
+        }
+        try {
+            Class.forName(connectionDriver);
+            dataSource = new SimpleDriverDataSource(DriverManager.getDriver(connectionURL), connectionURL, connectionUsername, connectionPassword);
+        } catch (Exception e) {
+            throw new IllegalStateException("Either a valid datasource, connection or the connection details must be set!", e);
+        }
+    }
+
+    /**
+     * Deduplicate the files of the resources and then the deleted resources.
+     */
+    public void deduplicate() {
+        log.info("Start deduplicating storage....");
+        setupDataSource();
+        if (fileSystemHandler == null) {
+            throw new IllegalStateException("The FileSystemHandler must be set!");
+        }
+        if (bodyPath == null) {
+            throw new IllegalStateException("The body path must be set!");
+        }
+        template = new JdbcTemplate(dataSource);
+        files = 0;
+        duplicates = 0;
+        duplicateBytes = 0;
+        seen.clear();
+
+        // the resources first so that their files become the blobs rather than the deleted ones
+        deduplicate(contentServiceSql.getResourceIdAndFilePath(), bodyPath);
+        if (bodyPathDeleted != null) {
+            deduplicate(contentServiceSql.getDeletedResourceIdAndFilePath(), bodyPathDeleted);
+        }
+        log.info("Hashed " + files + " files, " + duplicates + " duplicates using " + duplicateBytes + " bytes" + (dryRun ? " (dry run)" : " removed"));
+        log.info("Finished deduplicating storage....");
+    }
+
+    private void deduplicate(String sql, String root) {
+        // read the rows up front, the same connection is used to record the blobs
+        List<String[]> rows = new ArrayList<>();
+        template.query(sql, resultSet -> {
+            rows.add(new String[] {resultSet.getString(1), resultSet.getString(2)});
+        });
+        log.info("Deduplicating " + rows.size() + " files in " + root + "....");
+
+        for (String[] row : rows) {
+            String id = row[0];
+            String path = row[1];
+            if (!template.queryForList(contentServiceSql.getBlobRefSql(), String.class, path).isEmpty()) {
+                continue;
+            }
+            try {
+                deduplicate(id, path, root);
+            } catch (IOException e) {
+                log.info("Missing file: " + id + " " + e);
+            }
+            if (++files % 1000 == 0) {
+                log.info("Hashed " + files + " files, " + duplicates + " duplicates so far....");
+            }
+        }
+    }
+
+    private void deduplicate(String id, String path, String root) throws IOException {
+        MessageDigest digest = ContentBlobStore.newDigest();
+        long size;
+        try (InputStream input = new DigestInputStream(fileSystemHandler.getInputStream(id, root, path), digest)) {
+            size = IOUtils.copyLarge(input, NullOutputStream.NULL_OUTPUT_STREAM);
+        }
+        String sha256 = Hex.encodeHexString(digest.digest());
+
+        if (dryRun) {
+            if (!seen.add(sha256)) {
+                duplicates++;
+                duplicateBytes += size;
+            }
+            return;
+        }
+
+        List<String> blobPaths = template.queryForList(contentServiceSql.getBlobFilePathSql(), String.class, sha256);
+        if (!blobPaths.isEmpty()) {
+            duplicates++;
+            duplicateBytes += size;
+            if (log.isDebugEnabled()) log.debug("{} is a duplicate of {}", id, blobPaths.get(0));
+            template.update(contentServiceSql.getAdjustBlobRefCountSql(), 1, sha256);
+            template.update(contentServiceSql.getInsertBlobRefSql(), path, sha256);
+            fileSystemHandler.delete(id, root, path);
+            return;
+        }
+
+        boolean moved = !root.equals(bodyPath) || copyBlobs;
+        if (moved) {
+            try (InputStream input = fileSystemHandler.getInputStream(id, root, path)) {
+                fileSystemHandler.saveInputStream(path, bodyPath, path, input);
+            }
+        }
+        template.update(contentServiceSql.getInsertBlobSql(), sha256, path, size);
+        template.update(contentServiceSql.getInsertBlobRefSql(), path, sha256);
+        if (moved && !(root.equals(bodyPath) && id.equals(path))) {
+            fileSystemHandler.delete(id, root, path);
+        }
+    }
+
+    public static void main(String[] args) throws IOException, ClassNotFoundException, IllegalAccessException, IllegalArgumentException, InvocationTargetException, InstantiationException{
+        log.info("Checking arguments...");
+        if (args == null || args.length == 0 || args[0].contains("help")) {
+            printHelp();
+            return;
+        }
+
+        Properties p = StorageConverter.readProperties(args);
+        log.info("Properties: " + p);
+        ContentDeduplicator cd = new ContentDeduplicator();
+        FileSystemHandler fsh = null;
+
+        try {
+            log.info("Database connection...");
+            cd.setConnectionDriver(p.getProperty("connectionDriver"));
+            cd.setConnectionURL(p.getProperty("connectionURL"));
+            cd.setConnectionUsername(p.getProperty("connectionUsername"));
+            cd.setConnectionPassword(p.getProperty("connectionPassword"));
+            log.info("FileSystemHandler...");
+            fsh = StorageConverter.getFileSystemHandler(p, "fileSystemHandler");
+            cd.setFileSystemHandler(fsh);
+            cd.setBodyPath(p.getProperty("bodyPath"));
+            cd.setBodyPathDeleted(p.getProperty("bodyPathDeleted"));
+            cd.setCopyBlobs(Boolean.parseBoolean(p.getProperty("copyBlobs")));
+            cd.setDryRun(Boolean.parseBoolean(p.getProperty("dryRun")));
+
+            log.info("Running deduplicate...");
+            cd.deduplicate();
+            log.info("Done...");
+        } finally {
+            StorageConverter.destroy(fsh);
+        }
+    }
+
+    private static void printHelp(){
+        log.info("----------------------------------------------------------------------");
+        log.info("ContentDeduplicator Help");
+        log.info("The ContentDeduplicator needs properties to complete the conversion.");
+        log.info("These properties can either be loaded in a properties file indicated with '-p' followed by the location of the properties file");
+        log.info("or the properties specified in the arguments with a leading '-' followed by the values.");
+        log.info("");
+        log.info("Properties (mandatory):");
+        log.info("- connectionDriver: The database connection driver class.");
+        log.info("- connectionURL: The database connection URL.");
+        log.info("- connectionUsername: The database connection username.");
+        log.info("- connectionPassword: The database connection password.");
+        log.info("- fileSystemHandler: This is the full class name of the FileSystemHandler.");
+        log.info("- fileSystemHandler.<some property>: You can set any property on the FileSystemHandler by referensing their property names.");
+        log.info("- bodyPath: The bodyPath set in sakai.properties.");
+        log.info("");
+        log.info("Properties (optional):");
+        log.info("- bodyPathDeleted: The bodyPathDeleted set in sakai.properties, to also deduplicate the deleted resources.");
+        log.info("- copyBlobs: Set to true when the FileSystemHandler stores files by resource id (useIdForFilePath), never otherwise. Default false.");
+        log.info("- dryRun: Only count the duplicates, without changing anything. Default false.");
+        log.info("----------------------------------------------------------------------");
+    }
+}
@@ -325,7 +325,7 @@ public class StorageConverter {
     /**
      * Calls the objects destroy method is it exists.
      */
-    private static void destroy(Object o) throws IllegalAccessException, InvocationTargetException {
+    static void destroy(Object o) throws IllegalAccessException, InvocationTargetException {
         if (o == null) return;
         log.info("Destroying " + o + "...");
         try {
@@ -341,7 +341,7 @@ public class StorageConverter {
      * Creates the FileSystemHandler and set all its properties.
      * Will also call the init method if it exists.
      */
-    private static FileSystemHandler getFileSystemHandler(Properties p, String fileSystemHandlerName) throws ClassNotFoundException, IllegalAccessException, IllegalArgumentException, InvocationTargetException, InstantiationException{
+    static FileSystemHandler getFileSystemHandler(Properties p, String fileSystemHandlerName) throws ClassNotFoundException, IllegalAccessException, IllegalArgumentException, InvocationTargetException, InstantiationException{
         String clazz = p.getProperty(fileSystemHandlerName);
         log.info("Building FileSystemHandler: " + clazz);
         Class<? extends FileSystemHandler> fshClass = Class.forName(clazz).asSubclass(FileSystemHandler.class);
@@ -371,7 +371,7 @@ public class StorageConverter {
     /**
      * Read the properties file. Return null of the file is not found.
      */
-    private static Properties readProperties(String[] args) throws IOException {
+    static Properties readProperties(String[] args) throws IOException {
         Properties p = new Properties(){
 
             @Override
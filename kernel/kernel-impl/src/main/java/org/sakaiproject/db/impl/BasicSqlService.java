@@ -47,6 +47,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.TimeZone;
 import java.util.Vector;
+import java.util.function.Consumer;
 
 import javax.sql.DataSource;
 
@@ -173,6 +174,20 @@ public abstract class BasicSqlService implements SqlService
 		m_deadlockRetries = Integer.parseInt(value);
 	}
 
+	/** Configuration: number of records fetched at a time by a streamed read, unless the caller asks for another. */
+	protected int m_streamFetchSize = 500;
+
+	/**
+	 * Configuration: number of records fetched at a time by a streamed read.
+	 * 
+	 * @param value
+	 *        the number of records fetched at a time.
+	 */
+	public void setStreamFetchSize(String value)
+	{
+		m_streamFetchSize = Integer.parseInt(value);
+	}
+
 	/** Configuration: to run the ddl on init or not. */
 	protected boolean m_autoDdl = false;
 
@@ -635,6 +650,124 @@ public abstract class BasicSqlService implements SqlService
 		return rv;
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	public <T> int dbStream(String sql, Object[] fields, int fetchSize, SqlReader<T> reader, Consumer<? super T> consumer)
+	{
+		if (log.isDebugEnabled())
+		{
+			log.debug("dbStream(String " + sql + ", Object[] " + Arrays.toString(fields) + ", int " + fetchSize + ", SqlReader " + reader + ")");
+		}
+
+		long start = System.currentTimeMillis();
+		int count = 0;
+
+		Connection conn = null;
+		PreparedStatement pstmt = null;
+		ResultSet result = null;
+		boolean failed = false;
+
+		try
+		{
+			// always a connection of our own, never the transaction connection: while streaming the
+			// connection can't be used for anything else, and the consumer may well want to
+			conn = borrowConnection();
+			pstmt = sqlServiceSql.prepareStreamingStatement(conn, sql, (fetchSize > 0) ? fetchSize : m_streamFetchSize);
+			prepareStatement(pstmt, fields);
+
+			result = pstmt.executeQuery();
+			while (result.next())
+			{
+				Object obj;
+				if (reader == null)
+				{
+					ResultSetMetaData metadataResult = result.getMetaData();
+					if (metadataResult != null && Types.CLOB == metadataResult.getColumnType(1))
+					{
+						Clob clobResult = result.getClob(1);
+						obj = clobResult.getSubString(1, (int) clobResult.length());
+					}
+					else
+					{
+						obj = result.getString(1);
+					}
+				}
+				else
+				{
+					try
+					{
+						obj = reader.readSqlResultRecord(result);
+					}
+					catch (SqlReaderFinishedException e)
+					{
+						break;
+					}
+				}
+
+				if (obj != null)
+				{
+					consumer.accept((T) obj);
+					count++;
+				}
+			}
+		}
+		catch (SQLException e)
+		{
+			log.warn("Sql.dbStream: sql: " + sql + debugFields(fields), e);
+			failed = true;
+		}
+		catch (UnsupportedEncodingException e)
+		{
+			log.warn("Sql.dbStream: sql: " + sql + debugFields(fields), e);
+			failed = true;
+		}
+		finally
+		{
+			if (null != result)
+			{
+				try
+				{
+					result.close();
+				}
+				catch (SQLException e)
+				{
+					log.warn("Sql.dbStream: sql: " + sql + debugFields(fields), e);
+				}
+			}
+			if (null != pstmt)
+			{
+				try
+				{
+					pstmt.close();
+				}
+				catch (SQLException e)
+				{
+					log.warn("Sql.dbStream: sql: " + sql + debugFields(fields), e);
+				}
+			}
+			if (null != conn)
+			{
+				if (m_commitAfterRead)
+				{
+					try
+					{
+						conn.commit();
+					}
+					catch (SQLException e)
+					{
+						log.warn("Sql.dbStream: sql: " + sql + debugFields(fields), e);
+					}
+				}
+				returnConnection(conn);
+			}
+		}
+
+		if (m_showSql) debug("Sql.dbStream: time: " + (System.currentTimeMillis() - start) + " #: " + count, sql, fields);
+
+		return failed ? -1 : count;
+	}
+
 	/**
 	 * Read a single field from the db, from multiple record - concatenating the binary values into value.
 	 * 
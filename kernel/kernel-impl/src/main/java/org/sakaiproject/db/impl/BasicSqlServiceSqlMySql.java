@@ -22,7 +22,9 @@
 package org.sakaiproject.db.impl;
 
 import java.io.UnsupportedEncodingException;
+import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 
 /**
@@ -77,6 +79,25 @@ public class BasicSqlServiceSqlMySql extends BasicSqlServiceSqlDefault
 		return pstmt;
 	}
 
+	/**
+	 * Connector/J reads the whole result set into memory whatever the fetch size, unless the fetch size is Integer.MIN_VALUE
+	 * when it streams the records one at a time. Drivers which refuse that (newer MariaDB drivers) stream with a positive fetch size.
+	 */
+	@Override
+	public PreparedStatement prepareStreamingStatement(Connection conn, String sql, int fetchSize) throws SQLException
+	{
+		PreparedStatement pstmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+		try
+		{
+			pstmt.setFetchSize(Integer.MIN_VALUE);
+		}
+		catch (SQLException e)
+		{
+			pstmt.setFetchSize(fetchSize);
+		}
+		return pstmt;
+	}
+
 	@Override
     public boolean isDeadLockError(int errorCode){        
         // perhaps due to a mysql deadlock?
@@ -131,4 +131,16 @@ public interface SqlServiceSql
 	 */
 	public Long getGeneratedKey(PreparedStatement pstmt, String sql) throws SQLException;
 
+	/**
+	 * Prepare a forward only, read only query whose results are fetched from the database a few records at a time rather than all at once.
+	 * 
+	 * @param conn
+	 *      The connection to use
+	 * @param sql
+	 *      The SQL statement to prepare
+	 * @param fetchSize
+	 *      The number of records to fetch at a time
+	 */
+	public PreparedStatement prepareStreamingStatement(Connection conn, String sql, int fetchSize) throws SQLException;
+
 }
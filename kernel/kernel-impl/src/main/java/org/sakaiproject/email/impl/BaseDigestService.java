@@ -91,6 +91,12 @@ public abstract class BaseDigestService implements DigestService, SingleStorageU
 	/** Storage manager for this service. */
 	protected Storage m_storage = null;
 
+	/** The append only log of digested messages, null to keep them in the digest records. */
+	protected EntryStorage m_entryStorage = null;
+
+	/** Set once the digest records left from before the log have been moved into it. */
+	protected boolean m_migrated = false;
+
 	/** The initial portion of a relative access point URL. */
 	protected String m_relativeAccessPoint = null;
 
@@ -146,6 +152,12 @@ public abstract class BaseDigestService implements DigestService, SingleStorageU
 
 	public static final String BY_PASS_FOR_DEBUG = "digest.email.bypass.for.debug";
 
+	/**
+	 * This is the name of the sakai.properties property to keep digested messages in an append only log, one row per
+	 * message, rather than rewriting each user's digest record for every message, default=true
+	 */
+	public static final String EMAIL_DIGEST_LOG_PROPERTY = "email.digest.log.enabled";
+
 	/**********************************************************************************************************************************************************************************************************************************************************
 	 * Runnable
 	 *********************************************************************************************************************************************************************************************************************************************************/
@@ -231,6 +243,22 @@ public abstract class BaseDigestService implements DigestService, SingleStorageU
 			m_digestQueue.clear();
 		}
 
+		// append them all to the log, in the current period
+		if (m_entryStorage != null)
+		{
+			if (queue.isEmpty()) return;
+			String period = computeRange(timeService.newTime()).toString();
+			if (!m_entryStorage.append(period, queue))
+			{
+				log.warn("digest messages not logged, will try again at next digest attempt: " + queue.size());
+				synchronized (m_digestQueue)
+				{
+					m_digestQueue.addAll(queue);
+				}
+			}
+			return;
+		}
+
 		for (Iterator iQueue = queue.iterator(); iQueue.hasNext();)
 		{
 			DigestMessage message = (DigestMessage) iQueue.next();
@@ -286,7 +314,13 @@ public abstract class BaseDigestService implements DigestService, SingleStorageU
 		// count send candidate digests
 		int count = 0;
 
-		// process each digest
+		// the logged messages
+		if (m_entryStorage != null)
+		{
+			count += sendLoggedDigests(curPeriod);
+		}
+
+		// process each digest (only those left from before the log once it is in use)
 		List digests = getDigests();
 		for (Iterator iDigests = digests.iterator(); iDigests.hasNext();)
 		{
@@ -389,6 +423,59 @@ public abstract class BaseDigestService implements DigestService, SingleStorageU
 		}
 	}
 
+	/**
+	 * Send the logged messages of every period before the current one, a recipient at a time, so only one recipient's
+	 * messages are held at once. Each recipient's messages are taken out of the log before they are sent, so when more
+	 * than one server is sending only one of them gets to send each digest.
+	 * 
+	 * @param curPeriod
+	 *        The current period.
+	 * @return The number of digests sent.
+	 */
+	protected int sendLoggedDigests(String curPeriod)
+	{
+		int count = 0;
+		for (String period : m_entryStorage.getPeriods())
+		{
+			if (curPeriod.equals(period) && !m_debugBypass) continue;
+
+			TimeRange periodRange = timeService.newTimeRange(period);
+			for (String id : m_entryStorage.getRecipients(period))
+			{
+				List<DigestMessage> msgs = m_entryStorage.claim(id, period);
+				if (msgs.isEmpty()) continue;
+
+				count++;
+				send(id, msgs, periodRange);
+			}
+		}
+
+		return count;
+	}
+
+	/**
+	 * Move the messages of the digest records into the log, removing the records. Every server does this when it starts,
+	 * each record is moved by whichever server removes it first.
+	 */
+	protected void migrateDigests()
+	{
+		if (m_entryStorage == null || m_migrated) return;
+		m_migrated = true;
+
+		int count = 0;
+		for (Iterator iDigests = getDigests().iterator(); iDigests.hasNext();)
+		{
+			BaseDigest digest = (BaseDigest) iDigests.next();
+			if (m_entryStorage.moveDigest(digest.getId(), digest.m_ranges))
+			{
+				eventTrackingService.post(eventTrackingService.newEvent(SECURE_REMOVE_DIGEST, digest.getReference(), true));
+				count++;
+			}
+		}
+
+		if (count > 0) log.info("moved " + count + " digests to the digest log");
+	}
+
 	/**
 	 * Send a single digest message
 	 * 
@@ -475,6 +562,16 @@ public abstract class BaseDigestService implements DigestService, SingleStorageU
 	 */
 	protected abstract Storage newStorage();
 
+	/**
+	 * Construct the log of digested messages for this service.
+	 * 
+	 * @return The log, or null if messages are kept in the digest records.
+	 */
+	protected EntryStorage newEntryStorage()
+	{
+		return null;
+	}
+
 	/**
 	 * Access the partial URL that forms the root of resource URLs.
 	 * 
@@ -634,6 +731,10 @@ public abstract class BaseDigestService implements DigestService, SingleStorageU
 		// construct storage and read
 		m_storage = newStorage();
 		m_storage.open();
+		if (serverConfigurationService.getBoolean(EMAIL_DIGEST_LOG_PROPERTY, true))
+		{
+			m_entryStorage = newEntryStorage();
+		}
 
 		// setup the queue
 		m_digestQueue.clear();
@@ -665,6 +766,8 @@ public abstract class BaseDigestService implements DigestService, SingleStorageU
 		public void run() {
 			try {
 				log.debug("running timer task");
+				// move any digest records into the log, the first time round
+				migrateDigests();
 				// process the queue of digest requests
 				processQueue();
 				// check for a digest mailing time
@@ -1470,6 +1573,54 @@ public abstract class BaseDigestService implements DigestService, SingleStorageU
 		public void remove(DigestEdit edit);
 	}
 
+	protected interface EntryStorage
+	{
+		/**
+		 * Add messages to the log, all in one transaction.
+		 * 
+		 * @param period
+		 *        The period the messages were digested in.
+		 * @param messages
+		 *        The List (DigestMessage) of messages, each to be sent to its recipient.
+		 * @return true if the messages were logged, false if none were.
+		 */
+		public boolean append(String period, List messages);
+
+		/**
+		 * @return The periods that have messages logged.
+		 */
+		public List<String> getPeriods();
+
+		/**
+		 * @param period
+		 *        The period.
+		 * @return The ids of the users with messages logged in the period.
+		 */
+		public List<String> getRecipients(String period);
+
+		/**
+		 * Take a user's messages for a period out of the log.
+		 * 
+		 * @param id
+		 *        The user id.
+		 * @param period
+		 *        The period.
+		 * @return The messages in the order they were logged, empty if there are none or another server took them first.
+		 */
+		public List<DigestMessage> claim(String id, String period);
+
+		/**
+		 * Remove a digest record and log its messages, all in one transaction.
+		 * 
+		 * @param id
+		 *        The user id.
+		 * @param ranges
+		 *        The record's messages, a List (DigestMessage) for each period they were digested in.
+		 * @return true if the messages were logged, false if another server moved the record first or it failed.
+		 */
+		public boolean moveDigest(String id, Map ranges);
+	}
+
 	/**********************************************************************************************************************************************************************************************************************************************************
 	 * StorageUser implementation (no container)
 	 *********************************************************************************************************************************************************************************************************************************************************/
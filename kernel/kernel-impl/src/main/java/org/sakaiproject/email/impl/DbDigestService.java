@@ -21,13 +21,20 @@
 
 package org.sakaiproject.email.impl;
 
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import lombok.extern.slf4j.Slf4j;
 
 import org.sakaiproject.db.api.SqlService;
 import org.sakaiproject.email.api.Digest;
 import org.sakaiproject.email.api.DigestEdit;
+import org.sakaiproject.email.api.DigestMessage;
 import org.sakaiproject.util.BaseDbSingleStorage;
 import org.sakaiproject.util.SingleStorageUser;
 
@@ -42,6 +49,12 @@ public class DbDigestService extends BaseDigestService
 	/** Table name for realms. */
 	protected String m_tableName = "SAKAI_DIGEST";
 
+	/** Table name for the digested messages. */
+	protected String m_entryTableName = "SAKAI_DIGEST_ENTRY";
+
+	/** How many messages to insert per batch. */
+	protected int m_batchSize = 500;
+
 	/** If true, we do our locks in the remote database, otherwise we do them here. */
 	protected boolean m_locksInDb = true;
 
@@ -74,6 +87,28 @@ public class DbDigestService extends BaseDigestService
 		m_tableName = name;
 	}
 
+	/**
+	 * Configuration: set the digested messages table name
+	 * 
+	 * @param name
+	 *        The table name.
+	 */
+	public void setEntryTableName(String name)
+	{
+		m_entryTableName = name;
+	}
+
+	/**
+	 * Configuration: set how many messages to insert per batch
+	 * 
+	 * @param size
+	 *        The batch size.
+	 */
+	public void setBatchSize(int size)
+	{
+		m_batchSize = Math.max(1, size);
+	}
+
 	/**
 	 * Configuration: set the locks-in-db
 	 * 
@@ -118,7 +153,7 @@ public class DbDigestService extends BaseDigestService
 
 			super.init();
 
-			log.info("init(): table: " + m_tableName + " locks-in-db: " + m_locksInDb);
+			log.info("init(): table: " + m_tableName + " entry table: " + m_entryTableName + " locks-in-db: " + m_locksInDb);
 		}
 		catch (Exception t)
 		{
@@ -140,6 +175,70 @@ public class DbDigestService extends BaseDigestService
 		return new DbStorage(this);
 	}
 
+	/**
+	 * Construct an EntryStorage object.
+	 * 
+	 * @return The new entry storage object, or null if its table is missing.
+	 */
+	protected EntryStorage newEntryStorage()
+	{
+		// the table is only created by auto.ddl, without it every message would fail to log and stay queued
+		if (!entryTableExists())
+		{
+			log.error("newEntryStorage(): table " + m_entryTableName + " is missing, keeping digested messages in the digest records."
+					+ " Create it, or set " + EMAIL_DIGEST_LOG_PROPERTY + "=false");
+			return null;
+		}
+		return new DbEntryStorage();
+	}
+
+	private void rollback(Connection conn)
+	{
+		if (conn == null) return;
+		try
+		{
+			if (!conn.getAutoCommit())
+			{
+				conn.rollback();
+			}
+		}
+		catch (Exception e)
+		{
+			log.warn("while rolling back: " + e);
+		}
+	}
+
+	/**
+	 * @return true if the digested messages table can be read.
+	 */
+	protected boolean entryTableExists()
+	{
+		Connection conn = null;
+		try
+		{
+			conn = sqlService.borrowConnection();
+			try (Statement stmt = conn.createStatement())
+			{
+				stmt.executeQuery("SELECT DIGEST_ID FROM " + m_entryTableName + " WHERE 1 = 0").close();
+			}
+			return true;
+		}
+		catch (SQLException e)
+		{
+			log.debug("entryTableExists(): " + e);
+			return false;
+		}
+		finally
+		{
+			if (conn != null)
+			{
+				// some databases won't run anything more in a transaction where a statement failed
+				rollback(conn);
+				sqlService.returnConnection(conn);
+			}
+		}
+	}
+
 	/**********************************************************************************************************************************************************************************************************************************************************
 	 * Storage implementation
 	 *********************************************************************************************************************************************************************************************************************************************************/
@@ -200,4 +299,176 @@ public class DbDigestService extends BaseDigestService
 			super.removeResource(edit);
 		}
 	}
+
+	/**
+	 * The digested messages, a row each, only ever inserted and then deleted once sent.
+	 */
+	protected class DbEntryStorage implements EntryStorage
+	{
+		public boolean append(String period, List messages)
+		{
+			Connection conn = null;
+			boolean wasCommit = true;
+			try
+			{
+				conn = sqlService.borrowConnection();
+				wasCommit = conn.getAutoCommit();
+				conn.setAutoCommit(false);
+
+				insert(conn, period, messages);
+
+				conn.commit();
+				return true;
+			}
+			catch (Exception e)
+			{
+				rollback(conn);
+				log.warn("append(): " + messages.size() + " messages: " + e);
+				return false;
+			}
+			finally
+			{
+				release(conn, wasCommit);
+			}
+		}
+
+		public boolean moveDigest(String id, Map ranges)
+		{
+			Connection conn = null;
+			boolean wasCommit = true;
+			try
+			{
+				conn = sqlService.borrowConnection();
+				wasCommit = conn.getAutoCommit();
+				conn.setAutoCommit(false);
+
+				// the delete waits for any other server moving the same record, and then finds it gone
+				int deleted = sqlService.dbWriteCount("DELETE FROM " + m_tableName + " WHERE DIGEST_ID = ?", new Object[] { id }, null, conn,
+						false);
+				if (deleted != 1)
+				{
+					conn.rollback();
+					return false;
+				}
+
+				for (Iterator it = ranges.entrySet().iterator(); it.hasNext();)
+				{
+					Map.Entry entry = (Map.Entry) it.next();
+					insert(conn, (String) entry.getKey(), (List) entry.getValue());
+				}
+
+				conn.commit();
+				return true;
+			}
+			catch (Exception e)
+			{
+				rollback(conn);
+				log.warn("moveDigest(): " + id + ": " + e);
+				return false;
+			}
+			finally
+			{
+				release(conn, wasCommit);
+			}
+		}
+
+		public List<String> getPeriods()
+		{
+			return sqlService.dbRead("SELECT DISTINCT DIGEST_PERIOD FROM " + m_entryTableName);
+		}
+
+		public List<String> getRecipients(String period)
+		{
+			return sqlService.dbRead("SELECT DISTINCT DIGEST_ID FROM " + m_entryTableName + " WHERE DIGEST_PERIOD = ?", new Object[] { period }, null);
+		}
+
+		public List<DigestMessage> claim(String id, String period)
+		{
+			Object[] fields = new Object[] { id, period };
+
+			Connection conn = null;
+			boolean wasCommit = true;
+			try
+			{
+				conn = sqlService.borrowConnection();
+				wasCommit = conn.getAutoCommit();
+				conn.setAutoCommit(false);
+
+				List<DigestMessage> msgs = sqlService.dbRead(conn,
+						"SELECT SUBJECT, BODY FROM " + m_entryTableName + " WHERE DIGEST_ID = ? AND DIGEST_PERIOD = ? ORDER BY CREATED, SEQ", fields,
+						result -> {
+							try
+							{
+								return new org.sakaiproject.email.impl.DigestMessage(id, result.getString(1), result.getString(2));
+							}
+							catch (SQLException e)
+							{
+								log.warn("claim(): " + e);
+								return null;
+							}
+						});
+
+				// the delete waits for any other server deleting the same rows, and then finds them gone
+				int deleted = sqlService.dbWriteCount("DELETE FROM " + m_entryTableName + " WHERE DIGEST_ID = ? AND DIGEST_PERIOD = ?", fields, null,
+						conn, false);
+				if (deleted != msgs.size() || msgs.contains(null))
+				{
+					conn.rollback();
+					return new ArrayList<>();
+				}
+
+				conn.commit();
+				return msgs;
+			}
+			catch (Exception e)
+			{
+				rollback(conn);
+				log.warn("claim(): " + id + " " + period + ": " + e);
+				return new ArrayList<>();
+			}
+			finally
+			{
+				release(conn, wasCommit);
+			}
+		}
+
+		private void insert(Connection conn, String period, List messages) throws SQLException
+		{
+			String sql = "INSERT INTO " + m_entryTableName + " (DIGEST_ID, DIGEST_PERIOD, CREATED, SEQ, SUBJECT, BODY) VALUES (?, ?, ?, ?, ?, ?)";
+			long created = System.currentTimeMillis();
+
+			List<Object[]> batch = new ArrayList<>();
+			int seq = 0;
+			for (Iterator it = messages.iterator(); it.hasNext();)
+			{
+				DigestMessage msg = (DigestMessage) it.next();
+				batch.add(new Object[] { msg.getTo(), period, created, seq++, msg.getSubject(), msg.getBody() });
+				if (batch.size() == m_batchSize || !it.hasNext())
+				{
+					if (!sqlService.dbWriteBatch(conn, sql, batch))
+					{
+						throw new SQLException("batch insert failed");
+					}
+					batch.clear();
+				}
+			}
+		}
+
+		private void release(Connection conn, boolean wasCommit)
+		{
+			if (conn == null) return;
+			try
+			{
+				if (!conn.isClosed() && conn.getAutoCommit() != wasCommit)
+				{
+					conn.setAutoCommit(wasCommit);
+				}
+			}
+			catch (Exception e)
+			{
+				log.warn("while resetting auto commit: " + e);
+			}
+			sqlService.returnConnection(conn);
+		}
+	}
 }
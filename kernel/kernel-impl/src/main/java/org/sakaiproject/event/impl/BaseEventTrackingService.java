@@ -67,6 +67,9 @@ public abstract class BaseEventTrackingService implements EventTrackingService
 
 	protected EventDelayHandler delayHandler;
 
+	/** Delivers events to normal and local observers off the posting thread, if enabled. */
+	protected EventDispatcher eventDispatcher;
+
 	/**********************************************************************************************************************************************************************************************************************************************************
 	 * Observable implementation
 	 *********************************************************************************************************************************************************************************************************************************************************/
@@ -84,7 +87,8 @@ public abstract class BaseEventTrackingService implements EventTrackingService
 	 *********************************************************************************************************************************************************************************************************************************************************/
 
 	/**
-	 * Send notification about a new event to observers.
+	 * Send notification about a new event to observers. Priority observers are always notified on the calling thread,
+	 * normal and local observers may be notified asynchronously by the {@link EventDispatcher}.
 	 *
 	 * @param event
 	 *        The event to send notification about.
@@ -93,8 +97,6 @@ public abstract class BaseEventTrackingService implements EventTrackingService
 	 */
 	protected void notifyObservers(Event event, boolean local)
 	{
-		// %%% inline like this, or on a new thread?
-
 		if (log.isDebugEnabled()) log.debug(this + " Notification - Event: " + event);
 
 		// first, notify all priority observers
@@ -175,6 +177,11 @@ public abstract class BaseEventTrackingService implements EventTrackingService
 	 * EventTracking implementation
 	 *********************************************************************************************************************************************************************************************************************************************************/
 
+	public void setEventDispatcher(EventDispatcher eventDispatcher)
+	{
+		this.eventDispatcher = eventDispatcher;
+	}
+
 	public void setEventDelayHandler(EventDelayHandler handler)
 	{
 		log.info("Setting the event delay handler to " + handler + " [was: " + delayHandler + "]");
@@ -449,11 +456,13 @@ public abstract class BaseEventTrackingService implements EventTrackingService
 	 */
 	public void addObserver(Observer observer)
 	{
+		Observer target = dispatchTarget(observer);
+
 		// keep this observer in one list only
 		m_priorityObservableHelper.deleteObserver(observer);
-		m_localObservableHelper.deleteObserver(observer);
+		m_localObservableHelper.deleteObserver(target);
 
-		m_observableHelper.addObserver(observer);
+		m_observableHelper.addObserver(target);
 	}
 
 	/**
@@ -464,9 +473,12 @@ public abstract class BaseEventTrackingService implements EventTrackingService
 	 */
 	public void addPriorityObserver(Observer observer)
 	{
+		// priority observers are always notified inline
+		Observer target = releaseTarget(observer);
+
 		// keep this observer in one list only
-		m_observableHelper.deleteObserver(observer);
-		m_localObservableHelper.deleteObserver(observer);
+		m_observableHelper.deleteObserver(target);
+		m_localObservableHelper.deleteObserver(target);
 
 		m_priorityObservableHelper.addObserver(observer);
 	}
@@ -479,11 +491,13 @@ public abstract class BaseEventTrackingService implements EventTrackingService
 	 */
 	public void addLocalObserver(Observer observer)
 	{
+		Observer target = dispatchTarget(observer);
+
 		// keep this observer in one list only
-		m_observableHelper.deleteObserver(observer);
+		m_observableHelper.deleteObserver(target);
 		m_priorityObservableHelper.deleteObserver(observer);
 
-		m_localObservableHelper.addObserver(observer);
+		m_localObservableHelper.addObserver(target);
 	}
 
 	/**
@@ -494,9 +508,27 @@ public abstract class BaseEventTrackingService implements EventTrackingService
 	 */
 	public void deleteObserver(Observer observer)
 	{
-		m_observableHelper.deleteObserver(observer);
+		Observer target = releaseTarget(observer);
+
+		m_observableHelper.deleteObserver(target);
 		m_priorityObservableHelper.deleteObserver(observer);
-		m_localObservableHelper.deleteObserver(observer);
+		m_localObservableHelper.deleteObserver(target);
+	}
+
+	/**
+	 * @return the observer to register with the normal and local helpers, the observer itself if there is no dispatcher.
+	 */
+	protected Observer dispatchTarget(Observer observer)
+	{
+		return eventDispatcher == null ? observer : eventDispatcher.register(observer);
+	}
+
+	/**
+	 * @return the observer that was registered with the normal and local helpers, no longer dispatched asynchronously.
+	 */
+	protected Observer releaseTarget(Observer observer)
+	{
+		return eventDispatcher == null ? observer : eventDispatcher.release(observer);
 	}
 
 	/**
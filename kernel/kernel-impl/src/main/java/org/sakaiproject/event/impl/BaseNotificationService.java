@@ -67,6 +67,18 @@ public abstract class BaseNotificationService implements NotificationService, Ob
 	/** Configuration: make the email notifications To: reply-able. */
 	protected boolean m_emailsToReplyable = false;
 
+	/** Configuration: match events against an in memory index of the stored notifications. */
+	protected boolean m_indexEnabled = true;
+
+	/** The index of the stored notifications of each event function, null until built. Replaced, never changed. */
+	protected volatile Map<String, NotificationIndex> m_index = null;
+
+	/** Held to build the index, or to apply a notification change to it, one at a time. */
+	protected final Object m_indexLock = new Object();
+
+	/** Updates the index when a notification changes on any server. */
+	protected Observer m_indexObserver = null;
+
 	/**********************************************************************************************************************************************************************************************************************************************************
 	 * Abstractions, etc.
 	 *********************************************************************************************************************************************************************************************************************************************************/
@@ -226,6 +238,14 @@ public abstract class BaseNotificationService implements NotificationService, Ob
 			m_emailsFromReplyable = serverConfigurationService().getBoolean("notify.email.from.replyable", false);
             m_emailsToReplyable = serverConfigurationService().getBoolean("notify.email.to.replyable", false);
 
+			// the index has to hear about notification changes made on the other servers too
+			m_indexEnabled = serverConfigurationService().getBoolean("notification.index.enabled", true);
+			if (m_indexEnabled)
+			{
+				m_indexObserver = new NotificationIndexObserver();
+				eventTrackingService().addObserver(m_indexObserver);
+			}
+
 			log.info(this + ".init() complete");
 		}
 		catch (Exception t)
@@ -243,7 +263,9 @@ public abstract class BaseNotificationService implements NotificationService, Ob
 		if (!getComponentManager().hasBeenClosed())
 		{
 			eventTrackingService().deleteObserver(this);
+			if (m_indexObserver != null) eventTrackingService().deleteObserver(m_indexObserver);
 		}
+		m_index = null;
 
 		// clean up storage
 		m_storage.close();
@@ -368,6 +390,7 @@ public abstract class BaseNotificationService implements NotificationService, Ob
 
 		// complete the edit
 		m_storage.commit(notification);
+		invalidateIndex(notification.getId());
 
 		// track it
 		eventTrackingService().post(
@@ -428,6 +451,7 @@ public abstract class BaseNotificationService implements NotificationService, Ob
 
 		// complete the edit
 		m_storage.remove(notification);
+		invalidateIndex(notification.getId());
 
 		// track it
 		eventTrackingService().post(eventTrackingService().newEvent(SECURE_REMOVE_NOTIFICATION, notification.getReference(), true));
@@ -538,6 +562,27 @@ public abstract class BaseNotificationService implements NotificationService, Ob
 		// check the event function against the functions we have notifications watching for
 		String function = event.getEvent();
 
+		if (m_indexEnabled)
+		{
+			// the index finds the stored notifications whose filter matches, the transients are few enough to check
+			NotificationIndex index = getIndex(function);
+			List<Notification> matched = index == null ? Collections.emptyList() : index.match(event.getResource());
+			for (Notification notification : matched)
+			{
+				// run a copy, as each notification used to be read fresh from storage for every event
+				new BaseNotification(notification).notify(event);
+			}
+			for (Iterator it = m_transients.iterator(); it.hasNext();)
+			{
+				Notification notification = (Notification) it.next();
+				if (notification.containsFunction(function) && match(notification.getResourceFilter(), event.getResource()))
+				{
+					notification.notify(event);
+				}
+			}
+			return;
+		}
+
 		// for each notification watching for this event
 		List notifications = getNotifications(function);
 		for (Iterator it = notifications.iterator(); it.hasNext();)
@@ -554,6 +599,110 @@ public abstract class BaseNotificationService implements NotificationService, Ob
 
 	} // update
 
+	/**
+	 * Access the index of the stored notifications watching a function, building the index from storage if needed.
+	 *
+	 * @param function
+	 *        The event function.
+	 * @return The index of the notifications watching the function, or null if there are none.
+	 */
+	protected NotificationIndex getIndex(String function)
+	{
+		Map<String, NotificationIndex> index = m_index;
+		if (index == null)
+		{
+			// one thread reads storage, the others wait for it rather than each reading it again
+			synchronized (m_indexLock)
+			{
+				index = m_index;
+				if (index == null)
+				{
+					List all = m_storage.getAll();
+					index = NotificationIndex.byFunction(all == null ? Collections.emptyList() : all);
+					m_index = index;
+					log.debug("Indexed the notifications of {} functions", index.size());
+				}
+			}
+		}
+		return function == null ? null : index.get(function);
+	}
+
+	/**
+	 * Bring the index up to date with a notification that was added, changed or removed. Only the indexes of the
+	 * functions it watched before and watches now are replaced.
+	 *
+	 * @param id
+	 *        The notification id.
+	 */
+	protected void invalidateIndex(String id)
+	{
+		synchronized (m_indexLock)
+		{
+			Map<String, NotificationIndex> index = m_index;
+			if (index == null) return;
+
+			// null once removed
+			Notification current = m_storage.get(id);
+			Set<String> functions = new HashSet<>();
+			for (Map.Entry<String, NotificationIndex> entry : index.entrySet())
+			{
+				if (entry.getValue().contains(id)) functions.add(entry.getKey());
+			}
+			if (current != null)
+			{
+				for (Object function : current.getFunctions())
+				{
+					if (function != null) functions.add((String) function);
+				}
+			}
+			if (functions.isEmpty()) return;
+
+			Map<String, NotificationIndex> updated = new HashMap<>(index);
+			for (String function : functions)
+			{
+				List<Notification> notifications = new ArrayList<>();
+				NotificationIndex old = index.get(function);
+				if (old != null)
+				{
+					for (Notification notification : old.getNotifications())
+					{
+						if (!id.equals(notification.getId())) notifications.add(notification);
+					}
+				}
+				if (current != null && current.containsFunction(function)) notifications.add(current);
+
+				if (notifications.isEmpty())
+				{
+					updated.remove(function);
+				}
+				else
+				{
+					updated.put(function, new NotificationIndex(notifications));
+				}
+			}
+			m_index = updated;
+			log.debug("Updated the notification index of {} for notification {}", functions, id);
+		}
+	}
+
+	/**
+	 * Watches the events from all the servers for notification changes, to update the index.
+	 */
+	protected class NotificationIndexObserver implements Observer
+	{
+		@Override
+		public void update(Observable o, Object arg)
+		{
+			if (!(arg instanceof Event)) return;
+			String function = ((Event) arg).getEvent();
+			if (SECURE_ADD_NOTIFICATION.equals(function) || SECURE_UPDATE_NOTIFICATION.equals(function)
+					|| SECURE_REMOVE_NOTIFICATION.equals(function))
+			{
+				invalidateIndex(notificationId(((Event) arg).getResource()));
+			}
+		}
+	}
+
 	/**
 	 * Construct a new rsource given just an id.
 	 *
@@ -0,0 +1,191 @@
+/**
+ * Copyright (c) 2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.event.impl;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.apache.ignite.Ignite;
+import org.apache.ignite.IgniteException;
+import org.apache.ignite.lang.IgniteBiPredicate;
+import org.sakaiproject.event.api.Event;
+import org.sakaiproject.event.api.SimpleEvent;
+
+/**
+ * <p>
+ * ClusterEventBus pushes events posted on this server to the other cluster members over Ignite messaging, so they don't
+ * have to wait for the next poll of the SAKAI_EVENT table to see them.
+ * </p>
+ * <p>
+ * Each message carries the sending server's sequence number. Receivers track the last sequence number seen from each
+ * sender and report a gap when one is skipped, the caller is then expected to catch up from the database.
+ * </p>
+ */
+@Slf4j
+public class ClusterEventBus
+{
+	/** The Ignite messaging topic events are published on. */
+	public static final String TOPIC = "org.sakaiproject.event.impl.ClusterEventBus";
+
+	/**
+	 * Receives the events published by the other servers.
+	 */
+	public interface Receiver
+	{
+		void receive(Event event);
+
+		/**
+		 * Some events from this sender were not received.
+		 */
+		void gap(String sender, long expected, long received);
+	}
+
+	private final Ignite ignite;
+	private final String serverIdInstance;
+	private final Receiver receiver;
+
+	/** Identifies this run of the server, so a restarted sender isn't mistaken for a duplicate. */
+	private final long epoch = System.currentTimeMillis();
+	private final AtomicLong sequence = new AtomicLong();
+
+	/** The last sequence number seen, keyed by sender and epoch. */
+	private final Map<String, Long> lastSeen = new HashMap<>();
+
+	private final AtomicLong sent = new AtomicLong();
+	private final AtomicLong received = new AtomicLong();
+	private final AtomicLong gaps = new AtomicLong();
+
+	private IgniteBiPredicate<UUID, Object> listener;
+
+	public ClusterEventBus(Ignite ignite, String serverIdInstance, Receiver receiver)
+	{
+		this.ignite = ignite;
+		this.serverIdInstance = serverIdInstance;
+		this.receiver = receiver;
+	}
+
+	public void start()
+	{
+		listener = (nodeId, message) -> {
+			if (message instanceof ClusterEventMessage)
+			{
+				onMessage((ClusterEventMessage) message);
+			}
+			return true;
+		};
+		ignite.message().localListen(TOPIC, listener);
+		log.info("Publishing events to the cluster on topic {} as {}", TOPIC, serverIdInstance);
+	}
+
+	public void stop()
+	{
+		if (listener != null)
+		{
+			ignite.message().stopLocalListen(TOPIC, listener);
+			listener = null;
+		}
+	}
+
+	/**
+	 * Send this event to the other cluster members.
+	 *
+	 * @param event
+	 *        The event posted on this server.
+	 */
+	public void publish(Event event)
+	{
+		SimpleEvent simpleEvent = new SimpleEvent(event, serverIdInstance);
+		// statements are only sent from the server where the event happened
+		simpleEvent.setLRSStatement(null);
+		ClusterEventMessage message = new ClusterEventMessage(serverIdInstance, epoch, sequence.incrementAndGet(), simpleEvent);
+		try
+		{
+			ignite.message(ignite.cluster().forRemotes()).sendOrdered(TOPIC, message, 0);
+			sent.incrementAndGet();
+		}
+		catch (IgniteException e)
+		{
+			// no remote nodes, or they will see the gap and catch up from the db
+			log.debug("Could not publish event {}: {}", event, e.toString());
+		}
+	}
+
+	protected synchronized void onMessage(ClusterEventMessage message)
+	{
+		if (serverIdInstance.equals(message.server)) return;
+
+		String sender = message.server + ":" + message.epoch;
+		Long last = lastSeen.get(sender);
+		if (last != null && message.seq <= last)
+		{
+			log.debug("Ignoring duplicate event {} from {}", message.seq, sender);
+			return;
+		}
+
+		long expected = last == null ? 1 : last + 1;
+		lastSeen.put(sender, message.seq);
+		if (message.seq != expected)
+		{
+			gaps.incrementAndGet();
+			log.debug("Missed events {} to {} from {}", expected, message.seq - 1, sender);
+			receiver.gap(sender, expected, message.seq);
+		}
+
+		received.incrementAndGet();
+		receiver.receive(message.event);
+	}
+
+	public long getSentCount()
+	{
+		return sent.get();
+	}
+
+	public long getReceivedCount()
+	{
+		return received.get();
+	}
+
+	public long getGapCount()
+	{
+		return gaps.get();
+	}
+
+	/**
+	 * The message published for each event.
+	 */
+	protected static class ClusterEventMessage implements Serializable
+	{
+		private static final long serialVersionUID = 1L;
+
+		final String server;
+		final long epoch;
+		final long seq;
+		final SimpleEvent event;
+
+		ClusterEventMessage(String server, long epoch, long seq, SimpleEvent event)
+		{
+			this.server = server;
+			this.epoch = epoch;
+			this.seq = seq;
+			this.event = event;
+		}
+	}
+}
@@ -33,6 +33,7 @@ import lombok.extern.slf4j.Slf4j;
 
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.ignite.Ignite;
 
 import org.sakaiproject.component.api.ServerConfigurationService;
 import org.sakaiproject.component.cover.ComponentManager;
@@ -49,6 +50,10 @@ import org.sakaiproject.memory.api.MemoryService;
  * ClusterEventTracking is the implmentation for the EventTracking service for use in a clustered multi-app server configuration.<br />
  * Events are backed in the cluster database, and this database is polled to read and process locally events posted by the other cluster members.
  * </p>
+ * <p>
+ * When events.cluster.push is enabled, events are also pushed to the other cluster members over Ignite as they are posted and the database
+ * is only read to catch up when a gap is detected in the pushed events, or every events.cluster.push.catchup seconds.
+ * </p>
  */
 @Slf4j
 public abstract class ClusterEventTracking extends BaseEventTrackingService implements Runnable
@@ -70,12 +75,14 @@ public abstract class ClusterEventTracking extends BaseEventTrackingService impl
 
 	protected long m_totalEventsCount = 0;
 
-	/** Queue of events to write if we are batching. */
-	protected Collection<Event> m_eventQueue = null;
+	/** Writes events in batches, if we are batching. */
+	protected EventBatchWriter m_batchWriter = null;
 	/** Unless false, check the db for events from the other cluster servers. */
 	protected boolean m_checkDb = true;
 	/** If true, batch events for bulk write. */
 	protected boolean m_batchWrite = true;
+	/** The most events written in one batch, more than this waiting causes a write. */
+	protected int m_batchSize = 500;
 	/** Configuration: to run the ddl on init or not. */
 	protected boolean m_autoDdl = false;
 
@@ -83,6 +90,22 @@ public abstract class ClusterEventTracking extends BaseEventTrackingService impl
 	private String serverId;
 	private ScheduledExecutorService scheduler;
 
+	/** Pushes events to the other cluster members, if enabled. */
+	protected ClusterEventBus m_eventBus = null;
+	/** The most seconds between database catch ups when events are pushed. */
+	protected int m_catchUpPeriod = 60;
+	/** Set when a gap is detected in the pushed events. */
+	protected volatile boolean m_catchUpRequested = false;
+	protected long m_lastCatchUp = 0;
+	/** Events received from the event bus, so they are not notified again when read back from the database. */
+	protected final Map<String, Integer> m_pushedEvents = new LinkedHashMap<String, Integer>(1024, 0.75f, false)
+	{
+		protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest)
+		{
+			return size() > 100000;
+		}
+	};
+
 	/*************************************************************************************************************************************************
 	 * Dependencies
 	 ************************************************************************************************************************************************/
@@ -117,6 +140,14 @@ public abstract class ClusterEventTracking extends BaseEventTrackingService impl
 	 */
 	protected abstract MemoryService memoryService();
 
+	/**
+	 * @return the Ignite instance used to push events, only looked up when pushing is enabled.
+	 */
+	protected Ignite ignite()
+	{
+		return null;
+	}
+
 	/**
 	 * Configuration: set the check-db.
 	 *
@@ -151,6 +182,17 @@ public abstract class ClusterEventTracking extends BaseEventTrackingService impl
 		}
 	}
 
+	/**
+	 * Configuration: set the most events written in one batch.
+	 *
+	 * @param value
+	 *        The batch size.
+	 */
+	public void setBatchSize(String value)
+	{
+		m_batchSize = Integer.parseInt(value);
+	}
+
 	/**
 	 * Configuration: to run the ddl on init or not.
 	 *
@@ -217,7 +259,9 @@ public abstract class ClusterEventTracking extends BaseEventTrackingService impl
 
 			if (m_batchWrite)
 			{
-				m_eventQueue = new Vector<Event>();
+				// write a batch as soon as it is full, and at least every period
+				m_batchWriter = new EventBatchWriter(this::writeBatchEvents, m_batchSize, TimeUnit.SECONDS.toMillis(m_period));
+				m_batchWriter.start();
 			}
 
 			// startup the event checking
@@ -252,7 +296,7 @@ public abstract class ClusterEventTracking extends BaseEventTrackingService impl
     			}
 			}
 
-			log.info("period: {}, batch: {}, checkDb: {}", m_period, m_batchWrite, m_checkDb);
+			log.info("period: {}, batch: {}, batchSize: {}, checkDb: {}", m_period, m_batchWrite, m_batchSize, m_checkDb);
 
             String sakaiVersion = serverConfigurationService().getString("version.sakai", "unknown") + "/" + serverConfigurationService().getString("version.service", "unknown");
             log.info("Server Start: serverId={}, serverInstance={}, serverIdInstance={}, version={}",
@@ -263,6 +307,9 @@ public abstract class ClusterEventTracking extends BaseEventTrackingService impl
 
             // initialize the caching server, if enabled
             initCacheServer();
+
+            // push events to the other cluster members, if enabled
+            initEventBus();
 		}
 		catch (Exception e)
 		{
@@ -304,7 +351,19 @@ public abstract class ClusterEventTracking extends BaseEventTrackingService impl
 	 */
 	public void destroy()
 	{
-		scheduler.shutdown();
+		if (m_eventBus != null)
+		{
+			m_eventBus.stop();
+		}
+		if (scheduler != null)
+		{
+			scheduler.shutdown();
+		}
+		if (m_batchWriter != null)
+		{
+			// write out anything still waiting
+			m_batchWriter.stop();
+		}
 		super.destroy();
 	}
 
@@ -335,13 +394,16 @@ public abstract class ClusterEventTracking extends BaseEventTrackingService impl
 		}
 
 		if (!event.isTransient()) {
+			// let the other cluster members know right away
+			if (m_eventBus != null)
+			{
+				m_eventBus.publish(event);
+			}
+
 			// batch the event if we are batching
 			if (m_batchWrite)
 			{
-				synchronized (m_eventQueue)
-				{
-					m_eventQueue.add(event);
-				}
+				m_batchWriter.add(event);
 			}
 
 			// if not batching, write out the individual event
@@ -535,16 +597,10 @@ public abstract class ClusterEventTracking extends BaseEventTrackingService impl
 			// wait for sakai's ComponentManager to finish starting before processing events
 			ComponentManager.waitTillConfigured();
 
-			// write any events we have
-			if (m_batchWrite)
+			// when events are pushed, only go to the db to catch up
+			if (m_eventBus != null && !isCatchUpDue())
 			{
-				Collection<Event> batchEvents;
-				synchronized (m_eventQueue)
-				{
-					batchEvents = new ArrayList<>(m_eventQueue);
-					m_eventQueue.clear();
-				}
-				writeBatchEvents(batchEvents);
+				return;
 			}
 
 			log.debug("checking for events > {}", m_lastEventSeq);
@@ -651,6 +707,9 @@ public abstract class ClusterEventTracking extends BaseEventTrackingService impl
 			}
 			// for each new event found, notify observers
 			for (Event event : events) {
+				if (m_eventBus != null && wasPushed(event)) {
+					continue;
+				}
 				notifyObservers(event, false);
 			}
 		}
@@ -660,6 +719,108 @@ public abstract class ClusterEventTracking extends BaseEventTrackingService impl
 		}
 	}
 
+	/**
+	 * Start pushing events to, and receiving events from, the other cluster members if configured to.
+	 */
+	protected void initEventBus()
+	{
+		if (!serverConfigurationService().getBoolean("events.cluster.push", false)) return;
+
+		Ignite ignite = ignite();
+		if (ignite == null)
+		{
+			log.warn("events.cluster.push is enabled but Ignite is not available, events will only be read from the db");
+			return;
+		}
+
+		m_catchUpPeriod = serverConfigurationService().getInt("events.cluster.push.catchup", m_catchUpPeriod);
+		m_lastCatchUp = System.currentTimeMillis();
+		m_eventBus = new ClusterEventBus(ignite, serverInstance, new ClusterEventBus.Receiver()
+		{
+			public void receive(Event event)
+			{
+				synchronized (m_pushedEvents)
+				{
+					m_pushedEvents.merge(pushedEventKey(event, event.getEventTime().getTime() / 1000), 1, Integer::sum);
+				}
+				try
+				{
+					notifyObservers(event, false);
+				}
+				catch (Exception e)
+				{
+					log.warn("notifyObservers(), pushed event: {}", event, e);
+				}
+			}
+
+			public void gap(String sender, long expected, long received)
+			{
+				log.debug("Missed pushed events {} to {} from {}, catching up from the db", expected, received - 1, sender);
+				m_catchUpRequested = true;
+				if (scheduler != null)
+				{
+					scheduler.execute(ClusterEventTracking.this);
+				}
+			}
+		});
+		m_eventBus.start();
+		log.info("Pushing events to the cluster, catching up from the db at least every {} seconds", m_catchUpPeriod);
+	}
+
+	/**
+	 * @return true if the db should be read for events, either because a gap was seen or the catch up period has passed.
+	 */
+	protected boolean isCatchUpDue()
+	{
+		long now = System.currentTimeMillis();
+		if (m_catchUpRequested || now - m_lastCatchUp >= m_catchUpPeriod * 1000L)
+		{
+			m_catchUpRequested = false;
+			m_lastCatchUp = now;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Check if an event read from the db has already been received from the event bus, forgetting it if so.
+	 */
+	protected boolean wasPushed(Event event)
+	{
+		long seconds = event.getEventTime().getTime() / 1000;
+		synchronized (m_pushedEvents)
+		{
+			// the db may have rounded the time up to the next second
+			for (long s = seconds; s >= seconds - 1; s--)
+			{
+				String key = pushedEventKey(event, s);
+				Integer count = m_pushedEvents.get(key);
+				if (count != null)
+				{
+					if (count > 1)
+					{
+						m_pushedEvents.put(key, count - 1);
+					}
+					else
+					{
+						m_pushedEvents.remove(key);
+					}
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * The values that survive the round trip through the db, used to match pushed events with those read back.
+	 */
+	protected String pushedEventKey(Event event, long seconds)
+	{
+		return StringUtils.left(event.getEvent(), 32) + "@" + StringUtils.left(event.getResource(), 255) + "@"
+				+ (event.getSessionId() != null ? event.getSessionId() : event.getUserId()) + "@" + seconds;
+	}
+
 	/**
 	 * Check the db for the largest event seq number, and set this as the one after which we will next get event.
 	 */
@@ -0,0 +1,183 @@
+/**
+ * Copyright (c) 2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.event.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.sakaiproject.event.api.Event;
+
+/**
+ * <p>
+ * EventBatchWriter collects events posted on any thread and hands them to a writer in batches, on its own thread.
+ * </p>
+ * <p>
+ * A batch is written as soon as batchSize events are waiting, or once maxDelay ms have passed since the last write,
+ * so under load each transaction carries a full batch of rows and when quiet events still reach the database promptly.
+ * Adding an event never takes a lock.
+ * </p>
+ */
+@Slf4j
+public class EventBatchWriter implements Runnable
+{
+	private final Queue<Event> queue = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger pending = new AtomicInteger();
+
+	private final Consumer<List<Event>> writer;
+	private final int batchSize;
+	private final long maxDelay;
+
+	private final AtomicLong batches = new AtomicLong();
+	private final AtomicLong rows = new AtomicLong();
+
+	private volatile boolean stopped = false;
+	private volatile Thread thread;
+
+	/**
+	 * @param writer
+	 *        Writes a batch of events, in a single transaction.
+	 * @param batchSize
+	 *        The most events to hand to the writer at once, and the number waiting that triggers a write.
+	 * @param maxDelay
+	 *        The most ms an event waits before being written.
+	 */
+	public EventBatchWriter(Consumer<List<Event>> writer, int batchSize, long maxDelay)
+	{
+		this.writer = writer;
+		this.batchSize = Math.max(1, batchSize);
+		this.maxDelay = Math.max(1, maxDelay);
+	}
+
+	public void start()
+	{
+		Thread t = new Thread(this, getClass().getName());
+		t.setDaemon(true);
+		thread = t;
+		t.start();
+	}
+
+	/**
+	 * Stop the writer thread, writing any events still waiting.
+	 */
+	public void stop()
+	{
+		stopped = true;
+		Thread t = thread;
+		if (t != null)
+		{
+			LockSupport.unpark(t);
+			try
+			{
+				t.join(TimeUnit.SECONDS.toMillis(30));
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+		flush();
+	}
+
+	/**
+	 * Queue an event for writing.
+	 *
+	 * @param event
+	 *        The event.
+	 */
+	public void add(Event event)
+	{
+		queue.offer(event);
+		if (pending.incrementAndGet() == batchSize)
+		{
+			Thread t = thread;
+			if (t != null) LockSupport.unpark(t);
+		}
+	}
+
+	public void run()
+	{
+		long lastWrite = System.currentTimeMillis();
+		while (!stopped)
+		{
+			long wait = lastWrite + maxDelay - System.currentTimeMillis();
+			if (pending.get() < batchSize && wait > 0)
+			{
+				LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(wait));
+				continue;
+			}
+
+			try
+			{
+				flush();
+			}
+			catch (Exception e)
+			{
+				log.warn("Failed to write events: {}", e.toString(), e);
+			}
+			lastWrite = System.currentTimeMillis();
+		}
+	}
+
+	/**
+	 * Write everything that is waiting, batchSize events at a time.
+	 */
+	protected synchronized void flush()
+	{
+		List<Event> batch;
+		while (!(batch = drain()).isEmpty())
+		{
+			writer.accept(batch);
+			batches.incrementAndGet();
+			rows.addAndGet(batch.size());
+		}
+	}
+
+	private List<Event> drain()
+	{
+		List<Event> batch = new ArrayList<>(Math.min(batchSize, Math.max(pending.get(), 0)));
+		Event event;
+		while (batch.size() < batchSize && (event = queue.poll()) != null)
+		{
+			batch.add(event);
+		}
+		pending.addAndGet(-batch.size());
+		return batch;
+	}
+
+	public int getPending()
+	{
+		return pending.get();
+	}
+
+	public long getBatchCount()
+	{
+		return batches.get();
+	}
+
+	public long getRowCount()
+	{
+		return rows.get();
+	}
+}
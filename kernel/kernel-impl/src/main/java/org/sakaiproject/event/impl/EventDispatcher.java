@@ -0,0 +1,424 @@
+/**
+ * Copyright (c) 2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.event.impl;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+import org.sakaiproject.component.api.ServerConfigurationService;
+import org.sakaiproject.event.api.EventDispatcherMXBean;
+import org.sakaiproject.thread_local.api.ThreadLocalManager;
+
+/**
+ * <p>
+ * EventDispatcher decouples the delivery of events to (non priority) observers from the thread that posted the event.
+ * </p>
+ * <p>
+ * When enabled, each observer gets its own bounded queue drained by a dedicated worker thread (a virtual thread when the
+ * JVM supports them), so a slow observer only delays itself. What happens when an observer's queue is full is controlled
+ * by its {@link Policy}. The worker's thread locals are cleared after each event, so an observer never sees the state of
+ * the thread that posted the event (current session, security advisors) or what it cached while handling an earlier
+ * event. Observers that depend on the posting thread's state should be configured with {@link Policy#SYNC} which keeps
+ * the old inline behaviour.
+ * </p>
+ * <p>
+ * Configuration (sakai.properties):
+ * <ul>
+ * <li>event.dispatch.async - enable asynchronous dispatch (default false)</li>
+ * <li>event.dispatch.queue.size - per observer queue capacity (default 10000)</li>
+ * <li>event.dispatch.policy - default policy for observers (default CALLER_RUNS)</li>
+ * <li>event.dispatch.policy.&lt;observer class name&gt; - policy for a specific observer</li>
+ * <li>event.dispatch.block.timeout - ms to wait for space with the BLOCK policy before dropping (default 1000)</li>
+ * </ul>
+ * </p>
+ */
+@Slf4j
+public class EventDispatcher implements EventDispatcherMXBean
+{
+	/** What to do with an event when the observer's queue is full. */
+	public enum Policy
+	{
+		/** Don't queue at all, deliver on the posting thread. */
+		SYNC,
+		/** Deliver on the posting thread when the queue is full. */
+		CALLER_RUNS,
+		/** Wait for space in the queue, then drop the event. */
+		BLOCK,
+		/** Drop the event being posted. */
+		DROP_NEWEST,
+		/** Drop the oldest queued event to make room. */
+		DROP_OLDEST
+	}
+
+	public static final String PROP_ASYNC = "event.dispatch.async";
+	public static final String PROP_QUEUE_SIZE = "event.dispatch.queue.size";
+	public static final String PROP_POLICY = "event.dispatch.policy";
+	public static final String PROP_BLOCK_TIMEOUT = "event.dispatch.block.timeout";
+
+	@Setter private ServerConfigurationService serverConfigurationService;
+	@Setter private ThreadLocalManager threadLocalManager;
+
+	private boolean asyncEnabled = false;
+	private int queueSize = 10000;
+	private Policy defaultPolicy = Policy.CALLER_RUNS;
+	private long blockTimeout = 1000L;
+
+	private ThreadFactory threadFactory;
+
+	/** The channels, keyed by the observer they deliver to. */
+	private final Map<Observer, ObserverChannel> channels = new ConcurrentHashMap<>();
+
+	public void init()
+	{
+		asyncEnabled = serverConfigurationService.getBoolean(PROP_ASYNC, asyncEnabled);
+		queueSize = Math.max(1, serverConfigurationService.getInt(PROP_QUEUE_SIZE, queueSize));
+		defaultPolicy = parsePolicy(serverConfigurationService.getString(PROP_POLICY, defaultPolicy.name()), defaultPolicy);
+		blockTimeout = serverConfigurationService.getLong(PROP_BLOCK_TIMEOUT, blockTimeout);
+		threadFactory = newThreadFactory();
+
+		log.info("init: async={}, queueSize={}, policy={}, blockTimeout={}", asyncEnabled, queueSize, defaultPolicy, blockTimeout);
+	}
+
+	public void destroy()
+	{
+		for (ObserverChannel channel : channels.values())
+		{
+			channel.stop();
+		}
+		channels.clear();
+	}
+
+	/**
+	 * Find the Observer that should be registered with the observable helpers for this observer. When dispatch is
+	 * asynchronous this is the channel delivering to the observer, otherwise it is the observer itself.
+	 *
+	 * @param observer
+	 *        The observer being registered.
+	 * @return The observer to register.
+	 */
+	public Observer register(Observer observer)
+	{
+		if (!asyncEnabled || observer instanceof ObserverChannel) return observer;
+
+		Policy policy = policyFor(observer);
+		if (policy == Policy.SYNC) return observer;
+
+		return channels.computeIfAbsent(observer, o -> {
+			ObserverChannel channel = new ObserverChannel(o, policy, queueSize);
+			channel.start();
+			return channel;
+		});
+	}
+
+	/**
+	 * Stop delivering events asynchronously to this observer.
+	 *
+	 * @param observer
+	 *        The observer being removed.
+	 * @return The observer that was registered with the observable helpers for this observer.
+	 */
+	public Observer release(Observer observer)
+	{
+		ObserverChannel channel = channels.remove(observer);
+		if (channel == null) return observer;
+
+		channel.stop();
+		return channel;
+	}
+
+	protected Policy policyFor(Observer observer)
+	{
+		String value = serverConfigurationService.getString(PROP_POLICY + "." + observer.getClass().getName(), null);
+		return parsePolicy(value, defaultPolicy);
+	}
+
+	protected Policy parsePolicy(String value, Policy dflt)
+	{
+		if (value == null || value.trim().isEmpty()) return dflt;
+		try
+		{
+			return Policy.valueOf(value.trim().toUpperCase());
+		}
+		catch (IllegalArgumentException iae)
+		{
+			log.warn("Unknown event dispatch policy [{}], using {}", value, dflt);
+			return dflt;
+		}
+	}
+
+	/**
+	 * Use virtual threads when running on a JVM that has them, otherwise fall back to daemon platform threads.
+	 */
+	protected ThreadFactory newThreadFactory()
+	{
+		try
+		{
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "event-dispatch-", 0L);
+			Method factory = builderClass.getMethod("factory");
+			log.debug("Using virtual threads for event dispatch");
+			return (ThreadFactory) factory.invoke(builder);
+		}
+		catch (ReflectiveOperationException | RuntimeException e)
+		{
+			AtomicLong count = new AtomicLong();
+			return r -> {
+				Thread thread = new Thread(r, "event-dispatch-" + count.getAndIncrement());
+				thread.setDaemon(true);
+				return thread;
+			};
+		}
+	}
+
+	/**********************************************************************************************************************************************************************************************************************************************************
+	 * EventDispatcherMXBean implementation
+	 *********************************************************************************************************************************************************************************************************************************************************/
+
+	@Override
+	public boolean isAsyncEnabled()
+	{
+		return asyncEnabled;
+	}
+
+	@Override
+	public int getObserverCount()
+	{
+		return channels.size();
+	}
+
+	@Override
+	public Map<String, String> getPolicies()
+	{
+		return collect(c -> c.policy.name());
+	}
+
+	@Override
+	public Map<String, Integer> getQueueDepths()
+	{
+		return collect(c -> c.queue.size());
+	}
+
+	@Override
+	public Map<String, Long> getDeliveredCounts()
+	{
+		return collect(c -> c.delivered.get());
+	}
+
+	@Override
+	public Map<String, Long> getDroppedCounts()
+	{
+		return collect(c -> c.dropped.get());
+	}
+
+	@Override
+	public Map<String, Long> getLastLagMillis()
+	{
+		return collect(c -> c.lastLag);
+	}
+
+	@Override
+	public Map<String, Long> getMaxLagMillis()
+	{
+		return collect(c -> c.maxLag.get());
+	}
+
+	@Override
+	public long getTotalDropped()
+	{
+		long total = 0;
+		for (ObserverChannel channel : channels.values())
+		{
+			total += channel.dropped.get();
+		}
+		return total;
+	}
+
+	@Override
+	public void resetStatistics()
+	{
+		for (ObserverChannel channel : channels.values())
+		{
+			channel.delivered.set(0);
+			channel.dropped.set(0);
+			channel.maxLag.set(0);
+			channel.lastLag = 0;
+		}
+	}
+
+	private <T> Map<String, T> collect(Function<ObserverChannel, T> value)
+	{
+		Map<String, T> rv = new TreeMap<>();
+		for (ObserverChannel channel : channels.values())
+		{
+			rv.put(channel.name, value.apply(channel));
+		}
+		return rv;
+	}
+
+	/**
+	 * An event waiting in an observer's queue.
+	 */
+	private static class Envelope
+	{
+		final Observable source;
+		final Object event;
+		final long queued = System.currentTimeMillis();
+
+		Envelope(Observable source, Object event)
+		{
+			this.source = source;
+			this.event = event;
+		}
+	}
+
+	/**
+	 * The observer registered with the observable helpers in place of the real observer, queueing events for the worker
+	 * thread to deliver.
+	 */
+	protected class ObserverChannel implements Observer, Runnable
+	{
+		final Observer observer;
+		final Policy policy;
+		final String name;
+		final BlockingQueue<Envelope> queue;
+
+		final AtomicLong delivered = new AtomicLong();
+		final AtomicLong dropped = new AtomicLong();
+		final AtomicLong maxLag = new AtomicLong();
+		volatile long lastLag = 0;
+
+		private volatile boolean stopped = false;
+		private Thread worker;
+
+		ObserverChannel(Observer observer, Policy policy, int capacity)
+		{
+			this.observer = observer;
+			this.policy = policy;
+			this.name = observer.getClass().getName() + "@" + Integer.toHexString(System.identityHashCode(observer));
+			this.queue = new ArrayBlockingQueue<>(capacity);
+		}
+
+		void start()
+		{
+			worker = threadFactory.newThread(this);
+			worker.start();
+		}
+
+		void stop()
+		{
+			stopped = true;
+			if (worker != null) worker.interrupt();
+			if (!queue.isEmpty())
+			{
+				log.warn("Discarding {} undelivered events for {}", queue.size(), name);
+				queue.clear();
+			}
+		}
+
+		@Override
+		public void update(Observable o, Object arg)
+		{
+			Envelope envelope = new Envelope(o, arg);
+			if (queue.offer(envelope)) return;
+
+			switch (policy)
+			{
+				case BLOCK:
+					try
+					{
+						if (queue.offer(envelope, blockTimeout, TimeUnit.MILLISECONDS)) return;
+					}
+					catch (InterruptedException ie)
+					{
+						Thread.currentThread().interrupt();
+					}
+					drop(arg);
+					break;
+				case DROP_NEWEST:
+					drop(arg);
+					break;
+				case DROP_OLDEST:
+					while (!queue.offer(envelope))
+					{
+						Envelope oldest = queue.poll();
+						if (oldest != null) drop(oldest.event);
+					}
+					break;
+				default:
+					deliver(envelope);
+			}
+		}
+
+		@Override
+		public void run()
+		{
+			while (!stopped)
+			{
+				try
+				{
+					deliver(queue.take());
+				}
+				catch (InterruptedException ie)
+				{
+					// stop() was called
+				}
+				finally
+				{
+					// observers cache entities in thread locals, which would otherwise go stale on this thread
+					threadLocalManager.clear();
+				}
+			}
+		}
+
+		private void deliver(Envelope envelope)
+		{
+			long lag = System.currentTimeMillis() - envelope.queued;
+			lastLag = lag;
+			maxLag.accumulateAndGet(lag, Math::max);
+			try
+			{
+				observer.update(envelope.source, envelope.event);
+			}
+			catch (Exception e)
+			{
+				log.warn("Observer {} failed on event {}", name, envelope.event, e);
+			}
+			delivered.incrementAndGet();
+		}
+
+		private void drop(Object event)
+		{
+			if (dropped.getAndIncrement() % 1000 == 0)
+			{
+				log.warn("Event queue for {} is full, dropping event {} ({} dropped so far)", name, event, dropped.get());
+			}
+		}
+	}
+}
@@ -0,0 +1,241 @@
+/**
+ * Copyright (c) 2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.event.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.sakaiproject.event.api.Notification;
+
+/**
+ * <p>
+ * NotificationIndex holds the stored notifications watching one event function, with their resource filters in a prefix
+ * trie, so finding the notifications interested in an event is a walk down the event's resource reference rather than a
+ * scan of every notification.
+ * </p>
+ * <p>
+ * An index is never changed once built; when a notification is added, changed or removed anywhere in the cluster the
+ * service replaces the indexes of the functions it watched and now watches.
+ * </p>
+ */
+class NotificationIndex
+{
+	/** The notifications, in storage order. */
+	private final Notification[] m_notifications;
+
+	/** The ids of the notifications. */
+	private final Set<String> m_ids = new HashSet<>();
+
+	/** The root of the filter trie. */
+	private final Node m_root = new Node("");
+
+	/**
+	 * Construct.
+	 *
+	 * @param notifications
+	 *        The notifications watching the function.
+	 */
+	NotificationIndex(List<Notification> notifications)
+	{
+		m_notifications = notifications.toArray(new Notification[0]);
+		for (int i = 0; i < m_notifications.length; i++)
+		{
+			String filter = m_notifications[i].getResourceFilter();
+			m_root.insert(filter == null ? "" : filter, 0, i);
+			m_ids.add(m_notifications[i].getId());
+		}
+	}
+
+	/**
+	 * Index the notifications by the functions they watch.
+	 *
+	 * @param notifications
+	 *        All the stored notifications.
+	 * @return The index of each function some notification watches.
+	 */
+	static Map<String, NotificationIndex> byFunction(List<Notification> notifications)
+	{
+		Map<String, List<Notification>> functions = new LinkedHashMap<>();
+		for (Notification notification : notifications)
+		{
+			// a notification listed for a function twice still runs once
+			for (Object function : new LinkedHashSet<Object>(notification.getFunctions()))
+			{
+				if (function == null) continue;
+				functions.computeIfAbsent((String) function, f -> new ArrayList<>()).add(notification);
+			}
+		}
+
+		Map<String, NotificationIndex> rv = new HashMap<>();
+		for (Map.Entry<String, List<Notification>> entry : functions.entrySet())
+		{
+			rv.put(entry.getKey(), new NotificationIndex(entry.getValue()));
+		}
+		return rv;
+	}
+
+	/**
+	 * Find the notifications whose resource filter is a prefix of the resource.
+	 *
+	 * @param resource
+	 *        The event resource reference.
+	 * @return The matching notifications, in storage order.
+	 */
+	List<Notification> match(String resource)
+	{
+		Node node = m_root;
+		int[] found = new int[4];
+		int count = 0;
+		int pos = 0;
+		int length = resource == null ? 0 : resource.length();
+		while (node != null)
+		{
+			for (int n = 0; n < node.m_count; n++)
+			{
+				if (count == found.length) found = Arrays.copyOf(found, count * 2);
+				found[count++] = node.m_entries[n];
+			}
+			if (pos == length) break;
+
+			Node child = node.child(resource.charAt(pos));
+			if (child == null || !resource.startsWith(child.m_label, pos)) break;
+			pos += child.m_label.length();
+			node = child;
+		}
+
+		if (count == 0) return Collections.emptyList();
+		Arrays.sort(found, 0, count);
+		List<Notification> rv = new ArrayList<>(count);
+		for (int n = 0; n < count; n++)
+		{
+			rv.add(m_notifications[found[n]]);
+		}
+		return rv;
+	}
+
+	/**
+	 * @param id
+	 *        The notification id.
+	 * @return true if the notification is indexed.
+	 */
+	boolean contains(String id)
+	{
+		return m_ids.contains(id);
+	}
+
+	/**
+	 * @return The notifications indexed, in storage order.
+	 */
+	List<Notification> getNotifications()
+	{
+		return Collections.unmodifiableList(Arrays.asList(m_notifications));
+	}
+
+	/**
+	 * @return The number of notifications indexed.
+	 */
+	int size()
+	{
+		return m_notifications.length;
+	}
+
+	/**
+	 * A node of a radix trie: the edge leading to it is labelled with a run of characters, and its children are kept
+	 * sorted by the first character of their label.
+	 */
+	private static class Node
+	{
+		private static final char[] NO_KEYS = new char[0];
+		private static final Node[] NO_CHILDREN = new Node[0];
+		private static final int[] NO_ENTRIES = new int[0];
+
+		private String m_label;
+		private char[] m_keys = NO_KEYS;
+		private Node[] m_children = NO_CHILDREN;
+		private int[] m_entries = NO_ENTRIES;
+		private int m_count = 0;
+
+		Node(String label)
+		{
+			m_label = label;
+		}
+
+		Node child(char c)
+		{
+			int i = Arrays.binarySearch(m_keys, c);
+			return i < 0 ? null : m_children[i];
+		}
+
+		void insert(String filter, int pos, int entry)
+		{
+			Node node = this;
+			while (pos < filter.length())
+			{
+				char c = filter.charAt(pos);
+				int i = Arrays.binarySearch(node.m_keys, c);
+				if (i < 0)
+				{
+					node.addChild(-i - 1, new Node(filter.substring(pos)));
+					node = node.m_children[-i - 1];
+					pos = filter.length();
+					break;
+				}
+
+				Node child = node.m_children[i];
+				int common = 0;
+				int max = Math.min(child.m_label.length(), filter.length() - pos);
+				while (common < max && child.m_label.charAt(common) == filter.charAt(pos + common)) common++;
+
+				if (common < child.m_label.length())
+				{
+					// split the edge where the filter leaves it
+					Node middle = new Node(child.m_label.substring(0, common));
+					child.m_label = child.m_label.substring(common);
+					middle.addChild(0, child);
+					node.m_children[i] = middle;
+					child = middle;
+				}
+				node = child;
+				pos += common;
+			}
+
+			if (node.m_count == node.m_entries.length) node.m_entries = Arrays.copyOf(node.m_entries, Math.max(1, node.m_count * 2));
+			node.m_entries[node.m_count++] = entry;
+		}
+
+		private void addChild(int at, Node child)
+		{
+			char[] keys = new char[m_keys.length + 1];
+			Node[] children = new Node[m_children.length + 1];
+			System.arraycopy(m_keys, 0, keys, 0, at);
+			System.arraycopy(m_children, 0, children, 0, at);
+			keys[at] = child.m_label.charAt(0);
+			children[at] = child;
+			System.arraycopy(m_keys, at, keys, at + 1, m_keys.length - at);
+			System.arraycopy(m_children, at, children, at + 1, m_children.length - at);
+			m_keys = keys;
+			m_children = children;
+		}
+	}
+}
@@ -16,13 +16,18 @@
 package org.sakaiproject.messaging.impl;
 
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Observable;
 import java.util.Observer;
 import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import javax.annotation.Resource;
@@ -37,6 +42,7 @@ import org.sakaiproject.event.api.Event;
 import org.sakaiproject.event.api.EventTrackingService;
 import org.sakaiproject.exception.IdUnusedException;
 import org.sakaiproject.ignite.EagerIgniteSpringBean;
+import org.sakaiproject.memory.api.Cache;
 import org.sakaiproject.memory.api.MemoryService;
 import org.sakaiproject.messaging.api.BullhornAlert;
 import org.sakaiproject.messaging.api.BullhornData;
@@ -44,7 +50,10 @@ import org.sakaiproject.messaging.api.BullhornHandler;
 import org.sakaiproject.messaging.api.MessageListener;
 import org.sakaiproject.messaging.api.MessagingService;
 import org.sakaiproject.site.api.SiteService;
+import org.sakaiproject.thread_local.api.ThreadLocalManager;
 import org.sakaiproject.time.api.UserTimeService;
+import org.sakaiproject.tool.api.Session;
+import org.sakaiproject.tool.api.SessionManager;
 import org.sakaiproject.user.api.User;
 import org.sakaiproject.user.api.UserDirectoryService;
 import org.sakaiproject.user.api.UserNotDefinedException;
@@ -61,6 +70,7 @@ import lombok.extern.slf4j.Slf4j;
 public class MessagingServiceImpl implements MessagingService, Observer {
 
     private static final List<String> HANDLED_EVENTS = new ArrayList<>();
+    private static final String ALERT_COUNT_CACHE = "org.sakaiproject.messaging.api.MessagingService.alertCountCache";
 
     @Resource
     private EagerIgniteSpringBean ignite;
@@ -84,8 +94,21 @@ public class MessagingServiceImpl implements MessagingService, Observer {
     @Resource(name = "org.sakaiproject.time.api.UserTimeService")
     UserTimeService userTimeService;
 
+    @Resource
+    private SessionManager sessionManager;
+    @Resource
+    private ThreadLocalManager threadLocalManager;
+
     private IgniteMessaging messaging;
 
+    /** Unread alert counts, keyed by user id */
+    private Cache<String, Long> alertCountCache;
+
+    private int batchSize = 100;
+    private BlockingQueue<Event> deliveryQueue;
+    private Thread deliveryThread;
+    private volatile boolean stopped = false;
+
     @Autowired
     private List<BullhornHandler> handlers;
 
@@ -93,6 +116,8 @@ public class MessagingServiceImpl implements MessagingService, Observer {
 
     public void init() {
 
+        alertCountCache = memoryService.getCache(ALERT_COUNT_CACHE);
+
         if (serverConfigurationService.getBoolean("portal.bullhorns.enabled", true)) {
             HANDLED_EVENTS.add(SiteService.EVENT_SITE_PUBLISH);
 
@@ -108,65 +133,196 @@ public class MessagingServiceImpl implements MessagingService, Observer {
                 HANDLED_EVENTS.forEach(e -> log.debug("BH EVENT: {}", e));
             }
 
+            batchSize = Math.max(1, serverConfigurationService.getInt("portal.bullhorns.batch.size", batchSize));
+            if (serverConfigurationService.getBoolean("portal.bullhorns.async", true)) {
+                deliveryQueue = new ArrayBlockingQueue<>(Math.max(1, serverConfigurationService.getInt("portal.bullhorns.queue.size", 10000)));
+                deliveryThread = new Thread(this::deliver, "bullhorn-delivery");
+                deliveryThread.setDaemon(true);
+                deliveryThread.start();
+            }
+
             eventTrackingService.addLocalObserver(this);
         }
 
         messaging = ignite.message(ignite.cluster().forLocal());
     }
 
+    public void destroy() {
+
+        eventTrackingService.deleteObserver(this);
+
+        stopped = true;
+        Thread t = deliveryThread;
+        if (t != null) {
+            t.interrupt();
+            try {
+                t.join(TimeUnit.SECONDS.toMillis(30));
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if (deliveryQueue != null) {
+            // Don't lose the alerts for events that were still waiting
+            List<Event> remaining = new ArrayList<>();
+            deliveryQueue.drainTo(remaining);
+            handleEvents(remaining, true);
+        }
+    }
+
     public void update(Observable o, final Object arg) {
 
         if (arg instanceof Event) {
             Event e = (Event) arg;
-            String event = e.getEvent();
             // We add this comparation with UNKNOWN_USER because implementation of BaseEventTrackingService
             // UNKNOWN_USER is an user in a server without session. 
-            if (HANDLED_EVENTS.contains(event) && !EventTrackingService.UNKNOWN_USER.equals(e.getUserId()) ) {
-                String ref = e.getResource();
-                String context = e.getContext();
-                String[] pathParts = ref.split("/");
-                String from = e.getUserId();
-                long at = e.getEventTime().getTime();
-                try {
-                    BullhornHandler handler = handlerMap.get(event);
-                    if (handler != null) {
-                        Optional<List<BullhornData>> result = handler.handleEvent(e);
-                        if (result.isPresent()) {
-                            result.get().forEach(bd -> {
-                                doInsert(from, bd.getTo(), event, ref, bd.getTitle(),
-                                                bd.getSiteId(), e.getEventTime(), bd.getUrl());
-                            });
-                        }
-                    } else if (SiteService.EVENT_SITE_PUBLISH.equals(event)) {
-                        final String siteId = pathParts[2];
-
-                        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
-
-                        transactionTemplate.execute(new TransactionCallbackWithoutResult() {
-
-                            protected void doInTransactionWithoutResult(TransactionStatus status) {
-
-                                final List<BullhornAlert> deferredAlerts
-                                    = sessionFactory.getCurrentSession().createCriteria(BullhornAlert.class)
-                                        .add(Restrictions.eq("deferred", true))
-                                        .add(Restrictions.eq("siteId", siteId)).list();
-
-                                for (BullhornAlert da : deferredAlerts) {
-                                    da.setDeferred(false);
-                                    sessionFactory.getCurrentSession().update(da);
-                                }
-                            }
-                        });
+            if (HANDLED_EVENTS.contains(e.getEvent()) && !EventTrackingService.UNKNOWN_USER.equals(e.getUserId()) ) {
+                if (deliveryQueue == null || !deliveryQueue.offer(e)) {
+                    // Delivery is synchronous or the queue is full, so deliver on the posting thread
+                    log.debug("Delivering bullhorn alerts for {} on the posting thread", e.getEvent());
+                    handleEvents(Collections.singletonList(e), false);
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs on the delivery thread, handling the queued events up to batchSize at a time.
+     */
+    private void deliver() {
+
+        List<Event> events = new ArrayList<>(batchSize);
+        while (!stopped) {
+            try {
+                events.add(deliveryQueue.take());
+                deliveryQueue.drainTo(events, batchSize - 1);
+                handleEvents(events, true);
+            } catch (InterruptedException ie) {
+                break;
+            } catch (Exception ex) {
+                log.error("Caught exception whilst delivering bullhorn alerts", ex);
+            } finally {
+                events.clear();
+                // Handlers cache channels and messages in thread locals, which would otherwise go stale on this thread
+                threadLocalManager.clear();
+            }
+        }
+    }
+
+    /**
+     * Turns a batch of events into alerts. Alerts for the same user, event and ref within the batch are coalesced into
+     * the latest one, and all of them are stored in a single transaction unless a handler needs them stored earlier.
+     *
+     * @param switchUser true when the events were not posted on this thread, so each handler has to run as the
+     *                   event's user. The thread's own session user is put back afterwards.
+     */
+    private void handleEvents(List<Event> events, boolean switchUser) {
+
+        Map<String, BullhornAlert> pending = new LinkedHashMap<>();
+        Map<String, Boolean> published = new HashMap<>();
+
+        Session session = switchUser ? sessionManager.getCurrentSession() : null;
+        String userId = session != null ? session.getUserId() : null;
+        String userEid = session != null ? session.getUserEid() : null;
+
+        try {
+            for (Event e : events) {
+                handleEvent(e, pending, published, session);
+            }
+        } finally {
+            if (session != null) {
+                session.setUserId(userId);
+                session.setUserEid(userEid);
+            }
+        }
+
+        try {
+            insertAlerts(pending.values());
+        } catch (Exception ex) {
+            log.error("Failed to store {} bullhorn alerts", pending.size(), ex);
+        }
+    }
+
+    private void handleEvent(Event e, Map<String, BullhornAlert> pending, Map<String, Boolean> published, Session session) {
+
+        String event = e.getEvent();
+        String ref = e.getResource();
+        try {
+            BullhornHandler handler = handlerMap.get(event);
+            if (handler != null) {
+                if (session != null) {
+                    setSessionUser(session, e.getUserId());
+                }
+                if (handler.usesStoredAlerts(e)) {
+                    // The handler may read or delete alerts, so those from earlier events have to be there first
+                    insertAlerts(pending.values());
+                    pending.clear();
+                }
+                Optional<List<BullhornData>> result = handler.handleEvent(e);
+                if (result != null && result.isPresent()) {
+                    for (BullhornData bd : result.get()) {
+                        BullhornAlert ba = new BullhornAlert();
+                        ba.setFromUser(e.getUserId());
+                        ba.setToUser(bd.getTo());
+                        ba.setEvent(event);
+                        ba.setRef(ref);
+                        ba.setTitle(bd.getTitle());
+                        ba.setSiteId(bd.getSiteId());
+                        ba.setEventDate(e.getEventTime().toInstant());
+                        ba.setUrl(bd.getUrl());
+                        ba.setDeferred(!published.computeIfAbsent(bd.getSiteId(), this::isSitePublished));
+
+                        String key = bd.getTo() + "/" + event + "/" + ref;
+                        pending.remove(key);
+                        pending.put(key, ba);
                     }
-                } catch (Exception ex) {
-                    log.error("Caught exception whilst handling events", ex);
                 }
+            } else if (SiteService.EVENT_SITE_PUBLISH.equals(event)) {
+                final String siteId = ref.split("/")[2];
+
+                // Alerts already waiting for this site have to be stored before they can be released
+                insertAlerts(pending.values());
+                pending.clear();
+                published.remove(siteId);
+                releaseDeferredAlerts(siteId);
+            }
+        } catch (Exception ex) {
+            log.error("Caught exception whilst handling events", ex);
+        }
+    }
+
+    /**
+     * Handlers run away from the posting thread, so give them the session user the posting thread had.
+     */
+    private void setSessionUser(Session session, String userId) {
+
+        if (!StringUtils.equals(userId, session.getUserId())) {
+            session.setUserId(userId);
+            try {
+                session.setUserEid(userDirectoryService.getUserEid(userId));
+            } catch (UserNotDefinedException unde) {
+                session.setUserEid(userId);
             }
         }
     }
 
-    private void doInsert(String from, String to, String event, String ref
-                                            , String title, String siteId, Date eventDate, String url) {
+    private boolean isSitePublished(String siteId) {
+
+        try {
+            return siteService.getSite(siteId).isPublished();
+        } catch (IdUnusedException iue) {
+            log.warn("Failed to find site with id {} while setting deferred to published", siteId);
+            return true;
+        }
+    }
+
+    private void insertAlerts(Collection<BullhornAlert> alerts) {
+
+        if (alerts.isEmpty()) {
+            return;
+        }
+
+        final List<BullhornAlert> batch = new ArrayList<>(alerts);
 
         TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
 
@@ -174,33 +330,85 @@ public class MessagingServiceImpl implements MessagingService, Observer {
 
             protected void doInTransactionWithoutResult(TransactionStatus status) {
 
-                BullhornAlert ba = new BullhornAlert();
-                ba.setFromUser(from);
-                ba.setToUser(to);
-                ba.setEvent(event);
-                ba.setRef(ref);
-                ba.setTitle(title);
-                ba.setSiteId(siteId);
-                ba.setEventDate(eventDate.toInstant());
-                ba.setUrl(url);
-                try {
-                    ba.setDeferred(!siteService.getSite(siteId).isPublished());
-                } catch (IdUnusedException iue) {
-                    log.warn("Failed to find site with id {} while setting deferred to published", siteId);
+                org.hibernate.Session session = sessionFactory.getCurrentSession();
+                session.setJdbcBatchSize(batchSize);
+                for (int i = 0; i < batch.size(); i++) {
+                    session.persist(batch.get(i));
+                    if ((i + 1) % batchSize == 0) {
+                        session.flush();
+                        session.clear();
+                    }
                 }
+            }
+        });
 
-                sessionFactory.getCurrentSession().persist(ba);
-                send("USER#" + to, ba);
+        batch.stream().filter(ba -> !ba.getDeferred())
+            .collect(Collectors.groupingBy(BullhornAlert::getToUser, Collectors.counting()))
+            .forEach(this::adjustAlertCount);
+
+        batch.forEach(ba -> send("USER#" + ba.getToUser(), ba));
+    }
+
+    private void releaseDeferredAlerts(final String siteId) {
+
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+
+        transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+
+                final List<BullhornAlert> deferredAlerts
+                    = sessionFactory.getCurrentSession().createCriteria(BullhornAlert.class)
+                        .add(Restrictions.eq("deferred", true))
+                        .add(Restrictions.eq("siteId", siteId)).list();
+
+                for (BullhornAlert da : deferredAlerts) {
+                    da.setDeferred(false);
+                    sessionFactory.getCurrentSession().update(da);
+                }
+
+                deferredAlerts.stream()
+                    .collect(Collectors.groupingBy(BullhornAlert::getToUser, Collectors.counting()))
+                    .forEach(MessagingServiceImpl.this::adjustAlertCount);
             }
         });
     }
 
+    /**
+     * Apply a change to a user's cached alert count. Counts that aren't cached are left to be counted when next asked for.
+     */
+    private void adjustAlertCount(String userId, long delta) {
+
+        synchronized (alertCountCache) {
+            Long count = alertCountCache.get(userId);
+            if (count != null) {
+                alertCountCache.put(userId, Math.max(0L, count + delta));
+            }
+        }
+    }
+
+    public long getAlertCount(String userId) {
+
+        Long count = alertCountCache.get(userId);
+        if (count == null) {
+            TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+            count = transactionTemplate.execute(status ->
+                (Long) sessionFactory.getCurrentSession()
+                    .createQuery("select count(*) from BullhornAlert where toUser = :toUser and deferred = :deferred")
+                    .setParameter("toUser", userId).setParameter("deferred", false)
+                    .uniqueResult());
+            alertCountCache.put(userId, count);
+        }
+        return count;
+    }
+
     @Transactional  
     public boolean clearAlert(String userId, long alertId) {
 
-        sessionFactory.getCurrentSession().createQuery("delete BullhornAlert where id = :id and toUser = :toUser")
+        int deleted = sessionFactory.getCurrentSession().createQuery("delete BullhornAlert where id = :id and toUser = :toUser")
                     .setParameter("id", alertId).setParameter("toUser", userId)
                     .executeUpdate();
+        adjustAlertCount(userId, -deleted);
         return true;
     }
 
@@ -210,6 +418,7 @@ public class MessagingServiceImpl implements MessagingService, Observer {
         List<BullhornAlert> alerts = sessionFactory.getCurrentSession().createCriteria(BullhornAlert.class)
                 .add(Restrictions.eq("deferred", false))
                 .add(Restrictions.eq("toUser", userId)).list();
+        alertCountCache.put(userId, (long) alerts.size());
 
         return alerts.stream().map(this::decorateAlert).collect(Collectors.toList());
     }
@@ -221,6 +430,7 @@ public class MessagingServiceImpl implements MessagingService, Observer {
                 "delete BullhornAlert where toUser = :toUser and deferred = :deferred")
                 .setParameter("toUser", userId).setParameter("deferred", false)
                 .executeUpdate();
+        alertCountCache.put(userId, 0L);
         return true;
     }
 
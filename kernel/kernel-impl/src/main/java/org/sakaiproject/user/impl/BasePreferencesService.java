@@ -22,6 +22,7 @@
 package org.sakaiproject.user.impl;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -35,6 +36,7 @@ import org.sakaiproject.authz.api.FunctionManager;
 import org.sakaiproject.authz.api.SecurityService;
 import org.sakaiproject.component.api.ServerConfigurationService;
 import org.sakaiproject.entity.api.*;
+import org.sakaiproject.event.api.Event;
 import org.sakaiproject.event.api.EventTrackingService;
 import org.sakaiproject.event.api.NotificationService;
 import org.sakaiproject.exception.IdUnusedException;
@@ -54,6 +56,7 @@ import org.sakaiproject.user.api.UserDirectoryService;
 import org.sakaiproject.util.BaseResourceProperties;
 import org.sakaiproject.util.BaseResourcePropertiesEdit;
 import org.sakaiproject.util.SingleStorageUser;
+import org.sakaiproject.util.StorageUtils;
 import org.sakaiproject.util.StringUtil;
 
 /**
@@ -68,12 +71,18 @@ public abstract class BasePreferencesService implements PreferencesService, Sing
 	 * Key used to store the locale preferences
 	 */
 	private static final String LOCALE_PREFERENCE_KEY = "sakai:resourceloader";
+	/**
+	 * Key of the key/value storage row holding the unkeyed properties; every stored preferences has one.
+	 */
+	protected static final String ROOT_ROW_KEY = "-";
 	/** Storage manager for this service. */
 	protected Storage m_storage = null;
 	/** The initial portion of a relative access point URL. */
 	protected String m_relativeAccessPoint = null;
 	/** the cache for Preference objects **/
 	private Cache<String, BasePreferences> m_cache;
+	/** Drops cached preferences when any server reports a change to them. */
+	protected Observer m_cacheObserver = null;
 	/**********************************************************************************************************************************************************************************************************************************************************
 	 * Abstractions, etc.
 	 *********************************************************************************************************************************************************************************************************************************************************/
@@ -228,6 +237,10 @@ public abstract class BasePreferencesService implements PreferencesService, Sing
 			
 			//register a cache
 			m_cache = memoryService().getCache(BasePreferencesService.class.getName() +".preferences");
+
+			// the cache is local to this server, so watch for changes made on the others
+			m_cacheObserver = new PreferencesCacheObserver();
+			eventTrackingService().addObserver(m_cacheObserver);
 			
 			log.info("init()");
 		}
@@ -242,6 +255,12 @@ public abstract class BasePreferencesService implements PreferencesService, Sing
 	 */
 	public void destroy()
 	{
+		if (m_cacheObserver != null)
+		{
+			eventTrackingService().deleteObserver(m_cacheObserver);
+			m_cacheObserver = null;
+		}
+
 		m_storage.close();
 		m_storage = null;
 
@@ -269,6 +288,45 @@ public abstract class BasePreferencesService implements PreferencesService, Sing
 		return prefs;
 	}
 
+	/**
+	 * @inheritDoc
+	 */
+	public Map<String, Preferences> getPreferences(Collection<String> ids)
+	{
+		Map<String, Preferences> rv = new LinkedHashMap<>();
+		List<String> misses = new ArrayList<>();
+		for (String id : ids)
+		{
+			if (id == null || rv.containsKey(id)) continue;
+
+			BasePreferences prefs = m_cache.get(id);
+			if (prefs == null) misses.add(id);
+			rv.put(id, prefs);
+		}
+
+		// read everything the cache could not supply together
+		if (!misses.isEmpty())
+		{
+			for (Preferences found : m_storage.getMany(misses))
+			{
+				if (!rv.containsKey(found.getId())) continue;
+				m_cache.put(found.getId(), (BasePreferences) found);
+				rv.put(found.getId(), found);
+			}
+		}
+
+		for (Map.Entry<String, Preferences> entry : rv.entrySet())
+		{
+			if (entry.getValue() == null)
+			{
+				// throwaway empty preferences, as in getPreferences(id)
+				entry.setValue(new BasePreferences(entry.getKey()));
+			}
+		}
+
+		return rv;
+	}
+
 	/**
 	 * @inheritDoc
 	 */
@@ -697,6 +755,92 @@ public abstract class BasePreferencesService implements PreferencesService, Sing
 		return null;
 	}
 
+	/**
+	 * Write one set of keyed properties as a key/value storage row.
+	 * 
+	 * @param key
+	 *        The preferences key.
+	 * @param props
+	 *        The properties stored under the key.
+	 * @return The row's XML.
+	 */
+	protected static String writeRow(String key, ResourceProperties props)
+	{
+		Document doc = StorageUtils.createDocument();
+		Element prefs = doc.createElement("prefs");
+		doc.appendChild(prefs);
+		prefs.setAttribute("key", key);
+
+		Stack<Element> stack = new Stack<>();
+		stack.push(prefs);
+		props.toXml(doc, stack);
+
+		return StorageUtils.writeDocumentToString(doc);
+	}
+
+	/**
+	 * Read the properties from a key/value storage row.
+	 * 
+	 * @param xml
+	 *        The row's XML.
+	 * @return The properties, empty if the row cannot be read.
+	 */
+	protected static BaseResourcePropertiesEdit readRow(String xml)
+	{
+		Document doc = StorageUtils.readDocumentFromString(xml);
+		if (doc != null)
+		{
+			NodeList kids = doc.getDocumentElement().getChildNodes();
+			for (int i = 0; i < kids.getLength(); i++)
+			{
+				Node kid = kids.item(i);
+				if (kid.getNodeType() == Node.ELEMENT_NODE && ((Element) kid).getTagName().equals("properties"))
+				{
+					return new BaseResourcePropertiesEdit((Element) kid);
+				}
+			}
+		}
+
+		return new BaseResourcePropertiesEdit();
+	}
+
+	/**
+	 * Compare two sets of properties by their names and values, ignoring order.
+	 */
+	protected static boolean sameProperties(ResourceProperties a, ResourceProperties b)
+	{
+		return propertyValues(a).equals(propertyValues(b));
+	}
+
+	private static Map<String, Object> propertyValues(ResourceProperties props)
+	{
+		Map<String, Object> rv = new HashMap<>();
+		for (Iterator<String> names = props.getPropertyNames(); names.hasNext();)
+		{
+			String name = names.next();
+			rv.put(name, props.get(name));
+		}
+		return rv;
+	}
+
+	/**
+	 * Removes cached preferences named by preferences events, including those posted on other servers.
+	 */
+	protected class PreferencesCacheObserver implements Observer
+	{
+		public void update(Observable o, Object arg)
+		{
+			if (!(arg instanceof Event)) return;
+			Event event = (Event) arg;
+
+			String function = event.getEvent();
+			if (!SECURE_ADD_PREFS.equals(function) && !SECURE_EDIT_PREFS.equals(function) && !SECURE_REMOVE_PREFS.equals(function)) return;
+			if (event.getResource() == null) return;
+
+			m_cache.remove(preferencesId(event.getResource()));
+		}
+	}
+
 	/**********************************************************************************************************************************************************************************************************************************************************
 	 * Storage
 	 *********************************************************************************************************************************************************************************************************************************************************/
@@ -731,6 +875,24 @@ public abstract class BasePreferencesService implements PreferencesService, Sing
 		 */
 		public Preferences get(String id);
 
+		/**
+		 * Get the preferences with any of these ids. Ids with no preferences are left out.
+		 * 
+		 * @param ids
+		 *        The preferences ids.
+		 * @return The preferences found, in no particular order.
+		 */
+		default public List<Preferences> getMany(Collection<String> ids)
+		{
+			List<Preferences> rv = new ArrayList<>();
+			for (String id : ids)
+			{
+				Preferences prefs = get(id);
+				if (prefs != null) rv.add(prefs);
+			}
+			return rv;
+		}
+
 		/**
 		 * Add a new preferences with this id.
 		 *
@@ -788,6 +950,10 @@ public abstract class BasePreferencesService implements PreferencesService, Sing
 
 		/** The sets of keyed ResourceProperties. */
 		protected Map<String, ResourcePropertiesEdit> m_props = null;
+		/** Rows read from key/value storage and not yet parsed into m_props, by key. */
+		protected Map<String, String> m_rows = null;
+		/** Rows as read from key/value storage, to find what an edit changed. */
+		protected Map<String, String> m_stored = null;
 		/** The event code for this edit. */
 		protected String m_event = null;
 		/** Active flag. */
@@ -943,7 +1109,103 @@ public abstract class BasePreferencesService implements PreferencesService, Sing
 
 			// %%% is this deep enough? -ggolden
 			m_props = new Hashtable<>();
-			m_props.putAll(((BasePreferences) prefs).m_props);
+			BasePreferences other = (BasePreferences) prefs;
+			synchronized (other.m_props)
+			{
+				m_props.putAll(other.m_props);
+				m_rows = (other.m_rows == null) ? null : new ConcurrentHashMap<>(other.m_rows);
+			}
+			m_stored = other.m_stored;
+		}
+
+		/**
+		 * Take all values from key/value storage rows. Keyed properties are parsed when first used.
+		 * 
+		 * @param rows
+		 *        The row XML, by preferences key.
+		 */
+		protected void setRows(Map<String, String> rows)
+		{
+			m_stored = new HashMap<>(rows);
+			m_rows = new ConcurrentHashMap<>(rows);
+			m_props = new Hashtable<>();
+
+			String root = m_rows.remove(ROOT_ROW_KEY);
+			m_properties = (root == null) ? new BaseResourcePropertiesEdit() : readRow(root);
+		}
+
+		/**
+		 * Find the rows to write to key/value storage for the changes made since setRows(). Keys never read are left alone.
+		 * 
+		 * @return The new row XML by key, or null for a row to delete.
+		 */
+		protected Map<String, String> getRowChanges()
+		{
+			Map<String, ResourceProperties> current = new HashMap<>();
+			synchronized (m_props)
+			{
+				current.putAll(m_props);
+			}
+			current.put(ROOT_ROW_KEY, m_properties);
+
+			Map<String, String> rv = new HashMap<>();
+			for (Map.Entry<String, ResourceProperties> entry : current.entrySet())
+			{
+				String key = entry.getKey();
+				String stored = (m_stored == null) ? null : m_stored.get(key);
+
+				// the root row is kept even when empty: it marks the preferences as stored by key
+				if (!entry.getValue().getPropertyNames().hasNext() && !ROOT_ROW_KEY.equals(key))
+				{
+					if (stored != null) rv.put(key, null);
+				}
+				else if (stored == null || !sameProperties(readRow(stored), entry.getValue()))
+				{
+					rv.put(key, writeRow(key, entry.getValue()));
+				}
+			}
+
+			// keys dropped from the map since they were read
+			if (m_stored != null)
+			{
+				for (String key : m_stored.keySet())
+				{
+					if (!current.containsKey(key) && !m_rows.containsKey(key)) rv.put(key, null);
+				}
+			}
+
+			return rv;
+		}
+
+		/**
+		 * Parse the keyed properties from a key/value storage row, if not yet done.
+		 */
+		protected void decode(String key)
+		{
+			if (m_rows == null || !m_rows.containsKey(key)) return;
+
+			synchronized (m_props)
+			{
+				String xml = m_rows.get(key);
+				if (xml == null) return;
+
+				// in the map before leaving m_rows, so readers never find it in neither
+				if (!m_props.containsKey(key)) m_props.put(key, readRow(xml));
+				m_rows.remove(key);
+			}
+		}
+
+		/**
+		 * Parse all the keyed properties not yet parsed.
+		 */
+		protected void decodeAll()
+		{
+			if (m_rows == null) return;
+
+			for (String key : new ArrayList<>(m_rows.keySet()))
+			{
+				decode(key);
+			}
 		}
 
 		/**
@@ -966,6 +1228,8 @@ public abstract class BasePreferencesService implements PreferencesService, Sing
 
 			prefs.setAttribute("id", getId());
 
+			decodeAll();
+
 			// properties
 			m_properties.toXml(doc, stack);
 
@@ -1045,6 +1309,8 @@ public abstract class BasePreferencesService implements PreferencesService, Sing
 		 */
 		public ResourceProperties getProperties(String key)
 		{
+			decode(key);
+
 			ResourceProperties rv = m_props.get(key);
 			if (rv == null)
 			{
@@ -1060,6 +1326,8 @@ public abstract class BasePreferencesService implements PreferencesService, Sing
 		 */
 		public Collection<String> getKeys()
 		{
+			decodeAll();
+
 			return m_props.keySet();
 		}
 
@@ -1105,6 +1373,8 @@ public abstract class BasePreferencesService implements PreferencesService, Sing
 		 */
 		public ResourcePropertiesEdit getPropertiesEdit(String key)
 		{
+			decode(key);
+
 			synchronized (m_props)
 			{
 				ResourcePropertiesEdit rv = m_props.get(key);
@@ -141,6 +141,12 @@ public abstract class BaseUserDirectoryService implements UserDirectoryService,
 	/** Component ID used to find the password policy provider */
 	protected String m_passwordPolicyProviderName = PasswordPolicyProvider.class.getName();
 
+	/** Shares provider calls between concurrent lookups. */
+	protected ProviderLookup m_providerLookup = new ProviderLookup(() -> m_provider, (id, eid) -> new BaseUserEdit(id, eid), user -> {
+		user.setEid(cleanEid(user.getEid()));
+		ensureMappedIdForProvidedUser(user);
+	});
+
 	/**********************************************************************************************************************************************************************************************************************************************************
 	 * Abstractions, etc.
 	 *********************************************************************************************************************************************************************************************************************************************************/
@@ -474,6 +480,28 @@ public abstract class BaseUserDirectoryService implements UserDirectoryService,
 		m_cacheCleanerSeconds = Integer.parseInt(time) * 60;
 	}
 
+	/**
+	 * Configuration: how long a provider lookup waits for others to send with it, in milliseconds. 0 sends each alone.
+	 *
+	 * @param time
+	 *        The window (as an integer string).
+	 */
+	public void setProviderBatchWindow(String time)
+	{
+		m_providerLookup.setWindow(Long.parseLong(time));
+	}
+
+	/**
+	 * Configuration: the most users sent to the provider in one combined lookup.
+	 *
+	 * @param size
+	 *        The batch size (as an integer string).
+	 */
+	public void setProviderBatchSize(String size)
+	{
+		m_providerLookup.setBatchSize(Integer.parseInt(size));
+	}
+
 	/** Configuration: use a different id and eid for each record (otherwise make them the same value). */
 	protected boolean m_separateIdEid = false;
 
@@ -639,6 +667,11 @@ public abstract class BaseUserDirectoryService implements UserDirectoryService,
 			}
 			log.info("init(): PasswordPolicyProvider ("+m_passwordPolicyProviderName+"): " + ((m_passwordPolicyProvider == null) ? "none" : m_passwordPolicyProvider.getClass().getName()));
 
+			if (m_provider != null)
+			{
+				m_providerLookup.register();
+			}
+
 			log.info("init(): provider: " + ((m_provider == null) ? "none" : m_provider.getClass().getName())
 					+ " separateIdEid: " + m_separateIdEid);
 		}
@@ -683,6 +716,7 @@ public abstract class BaseUserDirectoryService implements UserDirectoryService,
 	 */
 	public void destroy()
 	{
+		m_providerLookup.unregister();
 		m_storage.close();
 		m_storage = null;
 		m_provider = null;
@@ -745,22 +779,10 @@ public abstract class BaseUserDirectoryService implements UserDirectoryService,
 				return null;
 			}
 			
-			// make a new edit to hold the provider's info, hoping it will be filled in
+			// the provider fills in a new edit, possibly alongside other threads' lookups.
 			// Since the provider may actually want to fill in the user ID itself,
 			// there's no point in us allocating a new user ID until after it returns.
-			BaseUserEdit user = new BaseUserEdit(id, eid);
-
-			// check with the provider
-			if (m_provider.getUser(user))
-			{
-				user.setEid(cleanEid(user.getEid()));
-				ensureMappedIdForProvidedUser(user);
-				return user;
-			}
-			else
-			{
-				return null;
-			}
+			return m_providerLookup.getUser(id, eid);
 		}
 
 		return null;
@@ -957,7 +979,7 @@ public abstract class BaseUserDirectoryService implements UserDirectoryService,
 		// check the provider, all at once
 		if (!fromProvider.isEmpty())
 		{
-			m_provider.getUsers(fromProvider);
+			m_providerLookup.getUsers(fromProvider);
 
 			// for each User in the collection that was filled in (and not removed) by the provider, cache and return it
 			for (Iterator i = fromProvider.iterator(); i.hasNext();)
@@ -21,8 +21,21 @@
 
 package org.sakaiproject.user.impl;
 
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 import lombok.extern.slf4j.Slf4j;
 
+import org.apache.commons.lang3.StringUtils;
+
 import org.sakaiproject.db.api.SqlService;
 import org.sakaiproject.user.api.Preferences;
 import org.sakaiproject.user.api.PreferencesEdit;
@@ -43,6 +56,15 @@ public abstract class DbPreferencesService extends BasePreferencesService
 	/** If true, we do our locks in the remote database, otherwise we do them here. */
 	protected boolean m_locksInDb = true;
 
+	/** If true, preferences are stored one row per key rather than as one XML document. */
+	protected boolean m_keyValueStorage = false;
+
+	/** Table name for preferences stored by key. */
+	protected String m_keyValueTableName = "SAKAI_PREFERENCES_KV";
+
+	/** How many preferences ids to read with one statement. */
+	protected int m_batchSize = 100;
+
 	/**********************************************************************************************************************************************************************************************************************************************************
 	 * Dependencies
 	 *********************************************************************************************************************************************************************************************************************************************************/
@@ -78,6 +100,39 @@ public abstract class DbPreferencesService extends BasePreferencesService
 		m_locksInDb = Boolean.valueOf(value).booleanValue();
 	}
 
+	/**
+	 * Configuration: store preferences one row per key.
+	 * 
+	 * @param value
+	 *        The key/value storage value.
+	 */
+	public void setKeyValueStorage(String value)
+	{
+		m_keyValueStorage = Boolean.valueOf(value).booleanValue();
+	}
+
+	/**
+	 * Configuration: set the key/value table name
+	 * 
+	 * @param name
+	 *        The table name.
+	 */
+	public void setKeyValueTableName(String name)
+	{
+		m_keyValueTableName = name;
+	}
+
+	/**
+	 * Configuration: set the number of ids read with one statement
+	 * 
+	 * @param value
+	 *        The batch size.
+	 */
+	public void setBatchSize(int value)
+	{
+		m_batchSize = value;
+	}
+
 	/** Configuration: to run the ddl on init or not. */
 	protected boolean m_autoDdl = false;
 
@@ -111,7 +166,8 @@ public abstract class DbPreferencesService extends BasePreferencesService
 
 			super.init();
 
-			log.info("init(): table: " + m_tableName + " locks-in-db: " + m_locksInDb);
+			log.info("init(): table: " + m_tableName + " locks-in-db: " + m_locksInDb + " key/value storage: "
+					+ (m_keyValueStorage ? m_keyValueTableName : "off"));
 		}
 		catch (Exception t)
 		{
@@ -130,6 +186,10 @@ public abstract class DbPreferencesService extends BasePreferencesService
 	 */
 	protected Storage newStorage()
 	{
+		if (m_keyValueStorage)
+		{
+			return new DbKeyValueStorage(this);
+		}
 		return new DbStorage(this);
 	}
 
@@ -163,6 +223,22 @@ public abstract class DbPreferencesService extends BasePreferencesService
 			return (Preferences) super.getResource(id);
 		}
 
+		public List<Preferences> getMany(Collection<String> ids)
+		{
+			List<Preferences> rv = new ArrayList<>();
+			for (List<String> chunk : chunks(ids))
+			{
+				String sql = "select XML from " + m_tableName + " where PREFERENCES_ID in (" + placeholders(chunk.size()) + ")";
+				List<String> xml = sqlService().dbRead(sql, chunk.toArray(), null);
+				for (String one : xml)
+				{
+					Preferences prefs = (Preferences) readResource(one);
+					if (prefs != null) rv.add(prefs);
+				}
+			}
+			return rv;
+		}
+
 		public PreferencesEdit put(String id)
 		{
 			return (PreferencesEdit) super.putResource(id, null);
@@ -188,4 +264,242 @@ public abstract class DbPreferencesService extends BasePreferencesService
 			super.removeResource(edit);
 		}
 	}
+
+	/**
+	 * Splits ids into groups of at most m_batchSize, for IN lists.
+	 */
+	protected List<List<String>> chunks(Collection<String> ids)
+	{
+		List<List<String>> rv = new ArrayList<>();
+		List<String> chunk = new ArrayList<>();
+		for (String id : ids)
+		{
+			chunk.add(id);
+			if (chunk.size() == m_batchSize)
+			{
+				rv.add(chunk);
+				chunk = new ArrayList<>();
+			}
+		}
+		if (!chunk.isEmpty()) rv.add(chunk);
+		return rv;
+	}
+
+	protected String placeholders(int count)
+	{
+		return StringUtils.repeat("?", ",", count);
+	}
+
+	/**
+	 * Stores each key of a preferences in its own row, so a change to one key writes only that row, and a read parses only the keys used.
+	 * <p>
+	 * The SAKAI_PREFERENCES row still records that the preferences exist and carries the edit lock. Until a preferences is first committed
+	 * here it has no key rows, and is read from that row's XML instead; the commit then replaces the XML with an empty document.
+	 * </p>
+	 */
+	protected class DbKeyValueStorage extends DbStorage
+	{
+		/** References of edits whose SAKAI_PREFERENCES row already holds the empty document. */
+		protected Set<String> m_converted = Collections.synchronizedSet(new HashSet<>());
+
+		public DbKeyValueStorage(SingleStorageUser user)
+		{
+			super(user);
+		}
+
+		public Preferences get(String id)
+		{
+			Map<String, String> rows = readRows(Collections.singletonList(id)).get(id);
+			if (rows == null)
+			{
+				return super.get(id);
+			}
+
+			BasePreferences prefs = new BasePreferences(id);
+			prefs.setRows(rows);
+			return prefs;
+		}
+
+		public List<Preferences> getMany(Collection<String> ids)
+		{
+			List<Preferences> rv = new ArrayList<>();
+			Map<String, Map<String, String>> found = readRows(ids);
+			List<String> legacy = new ArrayList<>();
+			for (String id : ids)
+			{
+				Map<String, String> rows = found.get(id);
+				if (rows == null)
+				{
+					legacy.add(id);
+					continue;
+				}
+
+				BasePreferences prefs = new BasePreferences(id);
+				prefs.setRows(rows);
+				rv.add(prefs);
+			}
+
+			if (!legacy.isEmpty())
+			{
+				rv.addAll(super.getMany(legacy));
+			}
+			return rv;
+		}
+
+		public PreferencesEdit edit(String id)
+		{
+			PreferencesEdit edit = super.edit(id);
+			if (edit == null) return null;
+
+			Map<String, String> rows = readRows(Collections.singletonList(id)).get(id);
+			if (rows != null)
+			{
+				((BasePreferences) edit).setRows(rows);
+				m_converted.add(edit.getReference());
+			}
+			return edit;
+		}
+
+		public void commit(PreferencesEdit edit)
+		{
+			boolean converted = m_converted.remove(edit.getReference());
+
+			if (!writeRows(edit.getId(), ((BasePreferences) edit).getRowChanges()))
+			{
+				super.cancel(edit);
+				return;
+			}
+
+			if (converted)
+			{
+				// nothing to write in the main table, just release the lock
+				super.cancel(edit);
+			}
+			else
+			{
+				super.commit(new BasePreferences(edit.getId()));
+			}
+		}
+
+		public void cancel(PreferencesEdit edit)
+		{
+			m_converted.remove(edit.getReference());
+			super.cancel(edit);
+		}
+
+		public void remove(PreferencesEdit edit)
+		{
+			m_converted.remove(edit.getReference());
+			sqlService().dbWrite("delete from " + m_keyValueTableName + " where PREFERENCES_ID = ?", new Object[] { edit.getId() });
+			super.remove(edit);
+		}
+
+		/**
+		 * Read the key rows of these preferences.
+		 * 
+		 * @return The row XML by key, by preferences id. Ids with no rows are left out.
+		 */
+		protected Map<String, Map<String, String>> readRows(Collection<String> ids)
+		{
+			Map<String, Map<String, String>> rv = new HashMap<>();
+			for (List<String> chunk : chunks(ids))
+			{
+				String sql = "select PREFERENCES_ID, PREFS_KEY, XML from " + m_keyValueTableName + " where PREFERENCES_ID in ("
+						+ placeholders(chunk.size()) + ")";
+				List<String[]> rows = sqlService().dbRead(sql, chunk.toArray(), result -> {
+					try
+					{
+						return new String[] { result.getString(1), result.getString(2), result.getString(3) };
+					}
+					catch (SQLException e)
+					{
+						log.warn("readRows(): " + e);
+						return null;
+					}
+				});
+
+				for (String[] row : rows)
+				{
+					if (row == null) continue;
+					rv.computeIfAbsent(row[0], k -> new HashMap<>()).put(row[1], row[2]);
+				}
+			}
+			return rv;
+		}
+
+		/**
+		 * Replace or delete the changed key rows of one preferences, in one transaction.
+		 * 
+		 * @param changes
+		 *        The new row XML by key, or null for a row to delete.
+		 * @return true if written, false if not.
+		 */
+		protected boolean writeRows(String id, Map<String, String> changes)
+		{
+			if (changes.isEmpty()) return true;
+
+			List<Object[]> deletes = new ArrayList<>();
+			List<Object[]> inserts = new ArrayList<>();
+			for (Map.Entry<String, String> change : changes.entrySet())
+			{
+				deletes.add(new Object[] { id, change.getKey() });
+				if (change.getValue() != null)
+				{
+					inserts.add(new Object[] { id, change.getKey(), change.getValue() });
+				}
+			}
+
+			Connection conn = null;
+			boolean wasCommit = true;
+			try
+			{
+				conn = sqlService().borrowConnection();
+				wasCommit = conn.getAutoCommit();
+				conn.setAutoCommit(false);
+
+				if (!sqlService().dbWriteBatch(conn, "delete from " + m_keyValueTableName + " where PREFERENCES_ID = ? and PREFS_KEY = ?", deletes))
+				{
+					throw new SQLException("batch delete failed");
+				}
+				if (!inserts.isEmpty() && !sqlService().dbWriteBatch(conn,
+						"insert into " + m_keyValueTableName + " (PREFERENCES_ID, PREFS_KEY, XML) values (?, ?, ?)", inserts))
+				{
+					throw new SQLException("batch insert failed");
+				}
+
+				conn.commit();
+				return true;
+			}
+			catch (Exception e)
+			{
+				if (conn != null)
+				{
+					try
+					{
+						conn.rollback();
+					}
+					catch (Exception ignore)
+					{
+					}
+				}
+				log.warn("writeRows(): " + id + ": " + e);
+				return false;
+			}
+			finally
+			{
+				if (conn != null)
+				{
+					try
+					{
+						conn.setAutoCommit(wasCommit);
+					}
+					catch (Exception e)
+					{
+						log.warn("while resetting auto commit: " + e);
+					}
+					sqlService().returnConnection(conn);
+				}
+			}
+		}
+	}
 }
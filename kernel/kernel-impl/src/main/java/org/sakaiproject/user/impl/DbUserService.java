@@ -687,7 +687,7 @@ public abstract class DbUserService extends BaseUserDirectoryService
 			List<UserEdit> usersToQueryProvider = userWithEidReader.getUsersToQueryProvider();
 			if ((m_provider != null) && !usersToQueryProvider.isEmpty())
 			{
-				m_provider.getUsers(usersToQueryProvider);
+				m_providerLookup.getUsers(usersToQueryProvider);
 
 				// Make sure that returned users are mapped and cached correctly.
 				for (UserEdit user : usersToQueryProvider)
@@ -745,7 +745,7 @@ public abstract class DbUserService extends BaseUserDirectoryService
 			// Finally, fill in the provided user records.
 			if ((m_provider != null) && !usersToQueryProvider.isEmpty())
 			{
-				m_provider.getUsers(usersToQueryProvider);
+				m_providerLookup.getUsers(usersToQueryProvider);
 
 				// Make sure that returned users are mapped and cached correctly.
 				for (UserEdit user : usersToQueryProvider)
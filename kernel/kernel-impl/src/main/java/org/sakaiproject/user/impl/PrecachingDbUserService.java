@@ -21,17 +21,36 @@
 
 package org.sakaiproject.user.impl;
 
+import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import lombok.extern.slf4j.Slf4j;
 
-import org.sakaiproject.user.api.UserNotDefinedException;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.dao.DataAccessException;
+
+import org.sakaiproject.authz.api.AuthzGroupService;
+import org.sakaiproject.event.api.Event;
+import org.sakaiproject.event.api.UsageSessionService;
+import org.sakaiproject.site.api.SiteService;
+import org.sakaiproject.user.api.User;
 
 /**
  * This will refresh the user cache based on configuration options,
@@ -49,6 +68,10 @@ import org.sakaiproject.user.api.UserNotDefinedException;
  * I also added a second timer and changed the scheduling so that the 2 timers provide both
  * an immediate boot-time pre-caching of users and followup pre-cache runs daily.
  *
+ * Users are refreshed in batches by {@link UserPrecacher}, several batches at a time, most recently active users first.
+ * An optional incremental run also loads, every few minutes, users who have logged in or whose site membership has changed
+ * and who are not already cached.
+ *
  * created in UVa SAK-1382 (wdn5e 2010.09.22)
  *
  * @author Aaron Zeckoski (azeckoski @ gmail.com) (aaronz @ vt.edu)
@@ -66,8 +89,30 @@ public abstract class PrecachingDbUserService extends DbUserService
      */
     protected String siteUserIdsQuery = "SELECT distinct(USER_ID) FROM SAKAI_SITE_USER where PERMISSION = 1 order by USER_ID";
 
+    /**
+     * Query to retrieve when users were last active, used to refresh the most active users first.
+     * A ? is bound to the start of the activity window so the query only reads recent sessions.
+     */
+    protected String lastActivityQuery = "SELECT SESSION_USER AS USER_ID, MAX(SESSION_START) AS LAST_ACTIVE FROM SAKAI_SESSION WHERE SESSION_START > ? GROUP BY SESSION_USER";
+
+    /**
+     * How many days of sessions the activity query looks back over, users not seen in that time are refreshed last
+     */
+    protected int activityDays = 30;
+
+    /**
+     * Query to retrieve the active members of one realm, by realm id
+     */
+    protected String realmUserIdsQuery = "SELECT distinct(RRG.USER_ID) FROM SAKAI_REALM_RL_GR RRG INNER JOIN SAKAI_REALM R ON RRG.REALM_KEY = R.REALM_KEY WHERE R.REALM_ID = ? AND RRG.ACTIVE = '1'";
+
+    /**
+     * The most users a full refresh loads, the most recently active first, 0 for all of them
+     */
+    protected int maxUsers = 0;
+
     public Timer bootTimer = new Timer("boot precache users", true);
     public Timer dailyTimer = new Timer("daily precache users", true);
+    public Timer incrementalTimer = new Timer("incremental precache users", true);
 
     /**
      * followup scheduled run, repeated daily at a given time
@@ -80,6 +125,26 @@ public abstract class PrecachingDbUserService extends DbUserService
      */
     protected TimerTask onetimeTask;
 
+    /**
+     * 3rd task loading the users queued by events, repeated every few minutes
+     */
+    protected TimerTask incrementalTask;
+
+    /**
+     * Loads the users in parallel batches and reports the progress over JMX
+     */
+    protected UserPrecacher precacher = new UserPrecacher();
+
+    /**
+     * Queues users as they log in or their realms change, for the incremental run
+     */
+    protected Observer precacheObserver;
+
+    /**
+     * Realms changed since the last incremental run
+     */
+    protected Set<String> changedRealms = ConcurrentHashMap.newKeySet();
+
     private DirectDbAccess directDbAccess;
     public void setDirectDbAccess (DirectDbAccess directDbAccess) {
         this.directDbAccess = directDbAccess;
@@ -100,6 +165,14 @@ public abstract class PrecachingDbUserService extends DbUserService
         Boolean runDaily = serverConfigurationService().getBoolean("precache.users.run.daily", false);
         String cacheTimeString = serverConfigurationService().getString("precache.users.refresh.time", "04:00");
         this.siteUserIdsQuery = serverConfigurationService().getString("precache.users.userlist.query", this.siteUserIdsQuery);
+        this.lastActivityQuery = serverConfigurationService().getString("precache.users.activity.query", this.lastActivityQuery);
+        this.activityDays = serverConfigurationService().getInt("precache.users.activity.days", this.activityDays);
+        this.realmUserIdsQuery = serverConfigurationService().getString("precache.users.realm.query", this.realmUserIdsQuery);
+        this.maxUsers = serverConfigurationService().getInt("precache.users.max", this.maxUsers);
+        Boolean runIncremental = serverConfigurationService().getBoolean("precache.users.run.incremental", false);
+        int incrementalSeconds = serverConfigurationService().getInt("precache.users.incremental.interval", 300);
+        precacher.setThreads(serverConfigurationService().getInt("precache.users.threads", 4));
+        precacher.setBatchSize(serverConfigurationService().getInt("precache.users.batch.size", 500));
 
         this.logUsersRemoved = serverConfigurationService().getBoolean("precache.users.log.usersRemoved", this.logUsersRemoved);
         this.logUsersNotRemoved = serverConfigurationService().getBoolean("precache.users.log.usersNotRemoved", this.logUsersNotRemoved);
@@ -148,6 +221,33 @@ public abstract class PrecachingDbUserService extends DbUserService
         } else {
             log.info("User precache not scheduled for daily run");
         }
+
+        if (runIncremental) {
+            precacheObserver = new PrecacheObserver();
+            eventTrackingService().addObserver(precacheObserver);
+            long incrementalPeriod = Math.max(1, incrementalSeconds) * 1000l;
+            incrementalTask = new IncrementalCacheTimerTask();
+            incrementalTimer.schedule(incrementalTask, incrementalPeriod, incrementalPeriod);
+            log.info("User precache scheduled for incremental runs every " + incrementalSeconds + " seconds");
+        } else {
+            log.info("User precache not scheduled for incremental runs");
+        }
+
+        if (runOnStartup || runDaily || runIncremental) {
+            precacher.register();
+        }
+    }
+
+    public void destroy() {
+        bootTimer.cancel();
+        dailyTimer.cancel();
+        incrementalTimer.cancel();
+        if (precacheObserver != null) {
+            eventTrackingService().deleteObserver(precacheObserver);
+            precacheObserver = null;
+        }
+        precacher.unregister();
+        super.destroy();
     }
 
     public void doCacheRefresh(String siteUserIdsQuery) {
@@ -155,78 +255,28 @@ public abstract class PrecachingDbUserService extends DbUserService
             log.debug("USER PRECACHE BEGINNING");
             log.debug("doCacheRefresh(): using siteUserIdsQuery==" + siteUserIdsQuery);
         }
-        //@SuppressWarnings("unchecked")
-        List<Map<String, Object>> results = directDbAccess.getJdbcTemplate().queryForList(siteUserIdsQuery);
-        List<String> userIds = new ArrayList<String>();
-        for (Map<String, Object> row : results) {
-            Object userId = row.get("USER_ID");
-            if (userId != null) {
-                userIds.add(userId.toString());
-            }
-        }
+        List<String> userIds = queryUserIds(siteUserIdsQuery);
 
         if (userIds.isEmpty()) {
             log.warn("doCacheRefresh(): No userIds found as participants while trying to refresh all cache users, cannot refresh");
         } else {
+            userIds = rankByActivity(userIds);
             log.info("doCacheRefresh(): Found " + userIds.size() + " users to refresh, initiating user cache refreshing...");
 
-            int removedCount = 0;
-            int notRemovedCount = 0;
-            int accessedCount = 0;
-            int notAccessedCount = 0;
+            final RefreshTally tally = new RefreshTally();
+            long before = System.currentTimeMillis();
+            precacher.load(userIds, batch -> refreshUsers(batch, true, tally));
+            long totalTime = System.currentTimeMillis() - before;
 
-            List<String> removedUsers = new ArrayList<String>();
-            List<String> notRemovedUsers = new ArrayList<String>();
-            List<String> accessedUsers = new ArrayList<String>();
-            List<String> notAccessedUsers = new ArrayList<String>();
-
-            long totalTime = 0;
-            for (String userId : userIds) {
-
-                // clear existing cache entry
-                String key = makeUserRef(userId);
-                if (log.isDebugEnabled()) {
-                    log.debug("doCacheRefresh(): NEW key==[" + key + "] in cache? before removing:  " + m_callCache.containsKey(key));
-                }
-                if (m_callCache.containsKey(key)) {
-                    m_callCache.remove(key);
-                    removedCount++;
-                    if (logUsersRemoved) {
-                        removedUsers.add(userId);
-                    }
-                } else {
-                    notRemovedCount++;
-                    if (logUsersNotRemoved) {
-                        notRemovedUsers.add(userId);
-                    }
-                }
-                if (log.isDebugEnabled()) {
-                    log.debug("doCacheRefresh(): NEW key==[" + key + "] in cache? after removing:  " + m_callCache.containsKey(key));
-                }
+            int removedCount = tally.removedCount.get();
+            int notRemovedCount = tally.notRemovedCount.get();
+            int accessedCount = tally.accessedCount.get();
+            int notAccessedCount = tally.notAccessedCount.get();
 
-                // redo the lookup of this user which will reload the cache
-                try {
-                    long before = System.currentTimeMillis();
-                    if (log.isDebugEnabled()) {
-                        log.debug("doCacheRefresh(): key==[" + key + "] in cache? before accessing:  " + m_callCache.containsKey(key));
-                    }
-                    getUser(userId);
-                    if (log.isDebugEnabled()) {
-                        log.debug("doCacheRefresh(): key==[" + key + "] in cache? after accessing:  " + m_callCache.containsKey(key));
-                    }
-                    long after = System.currentTimeMillis();
-                    totalTime += after - before;
-                    accessedCount++;
-                    if (logUsersAccessed) {
-                        accessedUsers.add(userId);
-                    }
-                } catch (UserNotDefinedException e) {
-                    notAccessedCount++;
-                    if (logUsersNotAccessed) {
-                        notAccessedUsers.add(userId);
-                    }
-                }
-            }
+            List<String> removedUsers = tally.removedUsers;
+            List<String> notRemovedUsers = tally.notRemovedUsers;
+            List<String> accessedUsers = tally.accessedUsers;
+            List<String> notAccessedUsers = tally.notAccessedUsers;
 
             // now output the results of cache reset in the logs as configured
             String delimiter = "";
@@ -277,16 +327,221 @@ public abstract class PrecachingDbUserService extends DbUserService
 
             if (log.isInfoEnabled()) {
                 log.info("doCacheRefresh(): " + totalTime + " milliseconds to cache " + userIds.size() + " users, " 
-                        + (totalTime / userIds.size()) + " milliseconds per user, while filling the cache");
+                        + String.format("%.2f", precacher.getUsersPerSecond()) + " users per second, while filling the cache");
             }
         }
         log.info("USER PRECACHE COMPLETED");
     }
 
+    /**
+     * Load the users queued since the last incremental run, and the members of the realms changed since then,
+     * that are not already cached
+     */
+    public void doIncrementalRefresh() {
+        Set<String> userIds = new LinkedHashSet<String>(precacher.takePending());
+        List<String> realmIds = new ArrayList<String>(changedRealms);
+        changedRealms.removeAll(realmIds);
+        for (String realmId : realmIds) {
+            try {
+                userIds.addAll(queryUserIds(realmUserIdsQuery, realmId));
+            } catch (DataAccessException e) {
+                log.warn("doIncrementalRefresh(): could not find the members of realm " + realmId + ": " + e);
+            }
+        }
+        if (userIds.isEmpty()) {
+            return;
+        }
+
+        long before = System.currentTimeMillis();
+        int cached = precacher.load(new ArrayList<String>(userIds), batch -> refreshUsers(batch, false, null));
+        if (log.isDebugEnabled()) {
+            log.debug("doIncrementalRefresh(): " + cached + " of " + userIds.size() + " users from " + realmIds.size()
+                    + " changed realms and recent logins cached in " + (System.currentTimeMillis() - before) + " milliseconds");
+        }
+    }
+
+    /**
+     * Load one batch of users into the cache with a single getUsers call, so that the provider is asked about them all at once
+     *
+     * @param userIds the users to load
+     * @param force true to reload users who are already cached, false to leave them be
+     * @param tally counts and lists the users for the logs, may be null
+     * @return the ids of the users now cached
+     */
+    protected Collection<String> refreshUsers(List<String> userIds, boolean force, RefreshTally tally) {
+        Set<String> cached = new HashSet<String>();
+        List<String> toLoad = new ArrayList<String>(userIds.size());
+        for (String userId : userIds) {
+            // clear existing cache entry
+            String key = makeUserRef(userId);
+            if (m_callCache.containsKey(key)) {
+                if (!force) {
+                    cached.add(userId);
+                    continue;
+                }
+                m_callCache.remove(key);
+                if (tally != null) {
+                    tally.removed(userId);
+                }
+            } else if (tally != null) {
+                tally.notRemoved(userId);
+            }
+            toLoad.add(userId);
+        }
+
+        // redo the lookup of these users which will reload the cache
+        if (!toLoad.isEmpty()) {
+            Set<String> found = new HashSet<String>();
+            List<User> users = getUsers(toLoad);
+            for (User user : users) {
+                found.add(user.getId());
+            }
+            for (String userId : toLoad) {
+                if (found.contains(userId)) {
+                    cached.add(userId);
+                    if (tally != null) {
+                        tally.accessed(userId);
+                    }
+                } else if (tally != null) {
+                    tally.notAccessed(userId);
+                }
+            }
+        }
+        return cached;
+    }
+
+    /**
+     * Order the users so that the most recently active are refreshed first, and keep no more than the configured maximum
+     */
+    protected List<String> rankByActivity(List<String> userIds) {
+        Map<String, Long> lastActive = new HashMap<String, Long>();
+        if (StringUtils.isNotBlank(lastActivityQuery)) {
+            try {
+                Object[] args = lastActivityQuery.indexOf('?') == -1 ? new Object[0]
+                        : new Object[] { new Timestamp(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(activityDays)) };
+                List<Map<String, Object>> results = directDbAccess.getJdbcTemplate().queryForList(lastActivityQuery, args);
+                for (Map<String, Object> row : results) {
+                    Object userId = row.get("USER_ID");
+                    Object when = row.get("LAST_ACTIVE");
+                    if (userId != null && when instanceof Date) {
+                        lastActive.put(userId.toString(), ((Date) when).getTime());
+                    }
+                }
+            } catch (DataAccessException e) {
+                log.warn("rankByActivity(): could not rank users by activity, refreshing them in query order: " + e);
+            }
+        }
+        return UserPrecacher.rank(userIds, lastActive, maxUsers);
+    }
+
+    private List<String> queryUserIds(String query, Object... args) {
+        List<Map<String, Object>> results = directDbAccess.getJdbcTemplate().queryForList(query, args);
+        List<String> userIds = new ArrayList<String>();
+        for (Map<String, Object> row : results) {
+            Object userId = row.get("USER_ID");
+            if (userId != null) {
+                userIds.add(userId.toString());
+            }
+        }
+        return userIds;
+    }
+
     private String makeUserRef(String userId) {
         return "/user/" + userId;
     }
 
+    /**
+     * The realm id for a realm or site reference, null for anything else
+     */
+    private String realmId(String resource) {
+        if (resource == null) {
+            return null;
+        }
+        if (resource.startsWith(AuthzGroupService.REFERENCE_ROOT + "/")) {
+            return resource.substring(AuthzGroupService.REFERENCE_ROOT.length() + 1);
+        }
+        if (resource.startsWith(SiteService.REFERENCE_ROOT + "/")) {
+            return resource;
+        }
+        return null;
+    }
+
+    /**
+     * Counts and lists the users a refresh run goes through, from several loading threads
+     */
+    protected class RefreshTally {
+        final AtomicInteger removedCount = new AtomicInteger();
+        final AtomicInteger notRemovedCount = new AtomicInteger();
+        final AtomicInteger accessedCount = new AtomicInteger();
+        final AtomicInteger notAccessedCount = new AtomicInteger();
+
+        final List<String> removedUsers = Collections.synchronizedList(new ArrayList<String>());
+        final List<String> notRemovedUsers = Collections.synchronizedList(new ArrayList<String>());
+        final List<String> accessedUsers = Collections.synchronizedList(new ArrayList<String>());
+        final List<String> notAccessedUsers = Collections.synchronizedList(new ArrayList<String>());
+
+        void removed(String userId) {
+            removedCount.incrementAndGet();
+            if (logUsersRemoved) {
+                removedUsers.add(userId);
+            }
+        }
+
+        void notRemoved(String userId) {
+            notRemovedCount.incrementAndGet();
+            if (logUsersNotRemoved) {
+                notRemovedUsers.add(userId);
+            }
+        }
+
+        void accessed(String userId) {
+            accessedCount.incrementAndGet();
+            if (logUsersAccessed) {
+                accessedUsers.add(userId);
+            }
+        }
+
+        void notAccessed(String userId) {
+            notAccessedCount.incrementAndGet();
+            if (logUsersNotAccessed) {
+                notAccessedUsers.add(userId);
+            }
+        }
+    }
+
+    /**
+     * Queues users who log in, and realms whose membership changes, for the incremental run
+     */
+    protected class PrecacheObserver implements Observer {
+        public void update(Observable o, Object arg) {
+            if (!(arg instanceof Event)) {
+                return;
+            }
+            Event event = (Event) arg;
+            String function = event.getEvent();
+            if (UsageSessionService.EVENT_LOGIN.equals(function)) {
+                precacher.queue(event.getUserId());
+            } else if (AuthzGroupService.SECURE_UPDATE_AUTHZ_GROUP.equals(function)
+                    || SiteService.SECURE_UPDATE_SITE_MEMBERSHIP.equals(function)) {
+                String realmId = realmId(event.getResource());
+                if (realmId != null) {
+                    changedRealms.add(realmId);
+                }
+            }
+        }
+    }
+
+    protected class IncrementalCacheTimerTask extends TimerTask {
+        @Override
+        public void run() {
+            try {
+                doIncrementalRefresh();
+            } catch (Exception e) {
+                log.error("run(): Failure attempting the incremental user cache refresh: " + e.getMessage(), e);
+            }
+        }
+    }
+
     protected class UserCacheTimerTask extends TimerTask {
         @Override
         public void run() {
@@ -0,0 +1,390 @@
+/**
+ * Copyright (c) 2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.user.impl;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.sakaiproject.user.api.UserDirectoryProvider;
+import org.sakaiproject.user.api.UserEdit;
+
+/**
+ * Sends user lookups to the {@link UserDirectoryProvider}, so that concurrent misses share provider calls.
+ * <p>
+ * A getUser miss for an eid that is already being looked up waits for that lookup instead of making its own. While other lookups are
+ * running, further misses are sent to the provider together as one getUsers call: the first thread to miss waits out a short window, or
+ * until the batch is full, and then makes the call for everyone who joined. A miss with no other lookup running goes straight to the
+ * provider, so a single thread looking up users one at a time is not slowed down.
+ * </p>
+ */
+@Slf4j
+class ProviderLookup implements ProviderLookupMBean
+{
+	/** The name the statistics are registered under. */
+	static final String OBJECT_NAME = "org.sakaiproject:type=UserDirectoryProvider,name=lookups";
+
+	private final Supplier<UserDirectoryProvider> provider;
+
+	/** Makes the edit the provider fills in, from the id (possibly null) and eid. */
+	private final BiFunction<String, String, UserEdit> newEdit;
+
+	/** Finishes a user the provider found, once, before any waiting thread sees it. */
+	private final Consumer<UserEdit> found;
+
+	/** How long the first miss waits for others to join its batch; 0 sends each miss alone. */
+	private volatile long window = 0;
+
+	/** The most users sent in one batch. */
+	private volatile int batchSize = 100;
+
+	/** Lookups in progress, by id and eid. */
+	private final Map<String, CompletableFuture<UserEdit>> inFlight = new ConcurrentHashMap<>();
+
+	/** The batch still taking members, if any; guarded by itself. */
+	private final Object lock = new Object();
+	private Batch open = null;
+
+	private final LongAdder lookups = new LongAdder();
+	private final LongAdder providerCalls = new LongAdder();
+	private final LongAdder usersRequested = new LongAdder();
+	private final LongAdder coalesced = new LongAdder();
+	private final LongAdder combinedBatches = new LongAdder();
+
+	ProviderLookup(Supplier<UserDirectoryProvider> provider, BiFunction<String, String, UserEdit> newEdit, Consumer<UserEdit> found)
+	{
+		this.provider = provider;
+		this.newEdit = newEdit;
+		this.found = found;
+	}
+
+	void setWindow(long millis)
+	{
+		window = Math.max(0, millis);
+	}
+
+	void setBatchSize(int size)
+	{
+		batchSize = Math.max(1, size);
+	}
+
+	/**
+	 * Look up one user by eid.
+	 * 
+	 * @param id
+	 *        The user id, if known.
+	 * @param eid
+	 *        The user eid.
+	 * @return The user as filled in by the provider, possibly shared with other callers, or null if the provider does not know the eid.
+	 */
+	UserEdit getUser(String id, String eid)
+	{
+		// a caller that knows the id only shares with callers passing the same id
+		String key = ((id == null) ? "" : id) + "/" + eid;
+
+		CompletableFuture<UserEdit> mine = new CompletableFuture<>();
+		CompletableFuture<UserEdit> running = inFlight.putIfAbsent(key, mine);
+		if (running != null)
+		{
+			coalesced.increment();
+			return await(running);
+		}
+
+		lookups.increment();
+		try
+		{
+			// with no other lookup running there is nobody to wait for
+			if (window == 0 || inFlight.size() == 1)
+			{
+				Batch batch = new Batch();
+				batch.add(id, eid, mine);
+				run(batch);
+			}
+			else
+			{
+				join(id, eid, mine);
+			}
+			return await(mine);
+		}
+		finally
+		{
+			inFlight.remove(key, mine);
+		}
+	}
+
+	/**
+	 * Look up many users in one provider call, which removes the users it does not know from the collection.
+	 */
+	void getUsers(Collection<UserEdit> users)
+	{
+		lookups.increment();
+		providerCalls.increment();
+		usersRequested.add(users.size());
+		provider.get().getUsers(users);
+	}
+
+	private void join(String id, String eid, CompletableFuture<UserEdit> future)
+	{
+		Batch batch;
+		boolean leader = false;
+		synchronized (lock)
+		{
+			if (open == null || open.members.size() >= batchSize)
+			{
+				open = new Batch();
+				leader = true;
+			}
+			batch = open;
+			batch.add(id, eid, future);
+
+			// a full batch need not wait out the window
+			if (batch.members.size() >= batchSize) lock.notifyAll();
+
+			if (leader)
+			{
+				long deadline = System.currentTimeMillis() + window;
+				long remaining = window;
+				try
+				{
+					while (batch.members.size() < batchSize && remaining > 0)
+					{
+						lock.wait(remaining);
+						remaining = deadline - System.currentTimeMillis();
+					}
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+				}
+				if (open == batch) open = null;
+			}
+		}
+
+		if (leader) run(batch);
+	}
+
+	private void run(Batch batch)
+	{
+		List<Member> members = batch.members;
+		try
+		{
+			List<UserEdit> edits = new ArrayList<>(members.size());
+			for (Member member : members)
+			{
+				member.edit = newEdit.apply(member.id, member.eid);
+				edits.add(member.edit);
+			}
+
+			providerCalls.increment();
+			usersRequested.add(members.size());
+
+			Set<UserEdit> known = Collections.newSetFromMap(new IdentityHashMap<>());
+			Map<String, UserEdit> others = new HashMap<>();
+			if (members.size() == 1)
+			{
+				if (provider.get().getUser(edits.get(0))) known.add(edits.get(0));
+			}
+			else
+			{
+				combinedBatches.increment();
+				Collection<UserEdit> result = new ArrayList<>(edits);
+				provider.get().getUsers(result);
+
+				Set<UserEdit> asked = Collections.newSetFromMap(new IdentityHashMap<>());
+				asked.addAll(edits);
+				for (UserEdit user : result)
+				{
+					if (asked.contains(user))
+					{
+						known.add(user);
+					}
+					else if (user.getEid() != null)
+					{
+						// a provider that answers with its own objects
+						others.put(user.getEid().toLowerCase(), user);
+					}
+				}
+			}
+
+			for (Member member : members)
+			{
+				UserEdit user = known.contains(member.edit) ? member.edit : others.get(member.eid.toLowerCase());
+				try
+				{
+					if (user != null) found.accept(user);
+					member.future.complete(user);
+				}
+				catch (RuntimeException e)
+				{
+					member.future.completeExceptionally(e);
+				}
+			}
+		}
+		catch (RuntimeException e)
+		{
+			for (Member member : members)
+			{
+				member.future.completeExceptionally(e);
+			}
+		}
+		finally
+		{
+			// never leave a waiting thread behind
+			for (Member member : members)
+			{
+				if (!member.future.isDone()) member.future.completeExceptionally(new IllegalStateException("provider lookup failed"));
+			}
+		}
+	}
+
+	private UserEdit await(CompletableFuture<UserEdit> future)
+	{
+		boolean interrupted = false;
+		try
+		{
+			while (true)
+			{
+				try
+				{
+					return future.get();
+				}
+				catch (InterruptedException e)
+				{
+					// the lookup is shared, so finish waiting for it
+					interrupted = true;
+				}
+				catch (ExecutionException e)
+				{
+					if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+					throw new IllegalStateException(e.getCause());
+				}
+			}
+		}
+		finally
+		{
+			if (interrupted) Thread.currentThread().interrupt();
+		}
+	}
+
+	void register()
+	{
+		try
+		{
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (!server.isRegistered(name))
+			{
+				server.registerMBean(new StandardMBean(this, ProviderLookupMBean.class), name);
+			}
+		}
+		catch (Exception e)
+		{
+			log.warn("register(): " + e);
+		}
+	}
+
+	void unregister()
+	{
+		try
+		{
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (server.isRegistered(name))
+			{
+				server.unregisterMBean(name);
+			}
+		}
+		catch (Exception e)
+		{
+			log.warn("unregister(): " + e);
+		}
+	}
+
+	public long getLookups()
+	{
+		return lookups.sum();
+	}
+
+	public long getProviderCalls()
+	{
+		return providerCalls.sum();
+	}
+
+	public long getUsersRequested()
+	{
+		return usersRequested.sum();
+	}
+
+	public long getCoalesced()
+	{
+		return coalesced.sum();
+	}
+
+	public long getCombinedBatches()
+	{
+		return combinedBatches.sum();
+	}
+
+	public double getProviderCallsPerLookup()
+	{
+		long count = lookups.sum();
+		return (count == 0) ? 0 : (double) providerCalls.sum() / count;
+	}
+
+	private static class Batch
+	{
+		final List<Member> members = new ArrayList<>();
+
+		void add(String id, String eid, CompletableFuture<UserEdit> future)
+		{
+			members.add(new Member(id, eid, future));
+		}
+	}
+
+	private static class Member
+	{
+		final String id;
+		final String eid;
+		final CompletableFuture<UserEdit> future;
+		UserEdit edit;
+
+		Member(String id, String eid, CompletableFuture<UserEdit> future)
+		{
+			this.id = id;
+			this.eid = eid;
+			this.future = future;
+		}
+	}
+}
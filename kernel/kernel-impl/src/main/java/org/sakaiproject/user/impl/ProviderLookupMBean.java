@@ -0,0 +1,40 @@
+/**
+ * Copyright (c) 2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.user.impl;
+
+/**
+ * JMX view of the user directory provider lookups made by {@link ProviderLookup}.
+ */
+public interface ProviderLookupMBean
+{
+	/** @return the number of user lookups that had to go to the provider, one per getUser miss or getUsers call. */
+	long getLookups();
+
+	/** @return the number of calls made to the provider. */
+	long getProviderCalls();
+
+	/** @return the number of users asked of the provider. */
+	long getUsersRequested();
+
+	/** @return the number of getUser misses that waited on a lookup already running for the same eid. */
+	long getCoalesced();
+
+	/** @return the number of provider calls that combined getUser misses from more than one thread. */
+	long getCombinedBatches();
+
+	/** @return the average number of provider calls for each lookup. */
+	double getProviderCallsPerLookup();
+}
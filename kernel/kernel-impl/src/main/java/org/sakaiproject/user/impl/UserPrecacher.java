@@ -0,0 +1,325 @@
+/**
+ * Copyright (c) 2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.user.impl;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Loads users into the user cache for {@link PrecachingDbUserService}.
+ * <p>
+ * Users are loaded in batches, so that each batch costs one database query and one provider getUsers call, and a few batches are loaded
+ * at once on a small pool of threads that lasts only as long as the run. Users can also be queued as they become interesting, by login
+ * or enrolment, and loaded together by the next incremental run.
+ * </p>
+ */
+@Slf4j
+class UserPrecacher implements UserPrecacherMBean
+{
+	/** The name the progress is registered under. */
+	static final String OBJECT_NAME = "org.sakaiproject:type=UserDirectoryProvider,name=precache";
+
+	/** How many batches are loaded at once. */
+	private volatile int threads = 4;
+
+	/** The most users loaded in one batch. */
+	private volatile int batchSize = 500;
+
+	/** Users waiting for the next incremental run. */
+	private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+	/** Held for the whole of a run, so that runs do not overlap. */
+	private final Object runLock = new Object();
+
+	private volatile boolean running = false;
+	private volatile long runUsers = 0;
+	private final AtomicLong runDone = new AtomicLong();
+	private volatile long runStart = 0;
+	private volatile long runEnd = 0;
+	private volatile long lastRunMillis = 0;
+
+	private final LongAdder loaded = new LongAdder();
+	private final LongAdder notFound = new LongAdder();
+	private final LongAdder batches = new LongAdder();
+	private final LongAdder failedBatches = new LongAdder();
+
+	void setThreads(int count)
+	{
+		threads = Math.max(1, count);
+	}
+
+	void setBatchSize(int size)
+	{
+		batchSize = Math.max(1, size);
+	}
+
+	/**
+	 * Queue a user for the next incremental run.
+	 */
+	void queue(String userId)
+	{
+		if (userId != null) pending.add(userId);
+	}
+
+	/**
+	 * @return The users queued for the incremental run, which are no longer queued.
+	 */
+	List<String> takePending()
+	{
+		List<String> userIds = new ArrayList<>(pending);
+		pending.removeAll(userIds);
+		return userIds;
+	}
+
+	/**
+	 * Load users in batches, several batches at a time, returning once all of them are done. A batch that fails is logged and skipped.
+	 * 
+	 * @param userIds
+	 *        The users to load, in the order to start loading them.
+	 * @param loader
+	 *        Loads one batch of user ids, returning the ids it found.
+	 * @return The number of users found.
+	 */
+	int load(List<String> userIds, Function<List<String>, Collection<String>> loader)
+	{
+		synchronized (runLock)
+		{
+			int size = batchSize;
+			int count = threads;
+			runUsers = userIds.size();
+			runDone.set(0);
+			runStart = System.currentTimeMillis();
+			runEnd = 0;
+			running = true;
+
+			ExecutorService executor = Executors.newFixedThreadPool(count, r -> {
+				Thread thread = new Thread(r, "user precache");
+				thread.setDaemon(true);
+				return thread;
+			});
+			CompletionService<Integer> done = new ExecutorCompletionService<>(executor);
+			int found = 0;
+			try
+			{
+				int outstanding = 0;
+				for (int i = 0; i < userIds.size(); i += size)
+				{
+					List<String> batch = new ArrayList<>(userIds.subList(i, Math.min(i + size, userIds.size())));
+
+					// queue no more batches than there are threads to take them, so a long list is not copied up front
+					if (outstanding >= count)
+					{
+						found += take(done);
+						outstanding--;
+					}
+					done.submit(() -> loadBatch(batch, loader));
+					outstanding++;
+				}
+				while (outstanding > 0)
+				{
+					found += take(done);
+					outstanding--;
+				}
+			}
+			finally
+			{
+				executor.shutdownNow();
+				runEnd = System.currentTimeMillis();
+				lastRunMillis = runEnd - runStart;
+				running = false;
+			}
+			return found;
+		}
+	}
+
+	private int loadBatch(List<String> batch, Function<List<String>, Collection<String>> loader)
+	{
+		try
+		{
+			Collection<String> found = loader.apply(batch);
+			int count = (found == null) ? 0 : found.size();
+			batches.increment();
+			loaded.add(count);
+			notFound.add(batch.size() - count);
+			return count;
+		}
+		catch (RuntimeException e)
+		{
+			failedBatches.increment();
+			log.warn("loadBatch(): failed to load " + batch.size() + " users starting with " + batch.get(0) + ": " + e, e);
+			return 0;
+		}
+		finally
+		{
+			runDone.addAndGet(batch.size());
+		}
+	}
+
+	private int take(CompletionService<Integer> done)
+	{
+		try
+		{
+			return done.take().get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("user precache interrupted");
+		}
+		catch (ExecutionException e)
+		{
+			log.warn("take(): " + e.getCause(), e.getCause());
+			return 0;
+		}
+	}
+
+	/**
+	 * Order users by when they were last active, most recent first. Users with no activity follow, in their original order.
+	 * 
+	 * @param userIds
+	 *        The users to order.
+	 * @param lastActive
+	 *        When each user was last active, for those known to have been.
+	 * @param max
+	 *        The most users to keep, or 0 to keep them all.
+	 * @return The users in order.
+	 */
+	static List<String> rank(List<String> userIds, Map<String, Long> lastActive, int max)
+	{
+		List<String> ranked = new ArrayList<>(userIds);
+		// the sort is stable, so users with no activity keep their order
+		ranked.sort(Comparator.comparingLong((String id) -> lastActive.getOrDefault(id, Long.MIN_VALUE)).reversed());
+		if (max > 0 && ranked.size() > max)
+		{
+			return new ArrayList<>(ranked.subList(0, max));
+		}
+		return ranked;
+	}
+
+	void register()
+	{
+		try
+		{
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (!server.isRegistered(name))
+			{
+				server.registerMBean(new StandardMBean(this, UserPrecacherMBean.class), name);
+			}
+		}
+		catch (Exception e)
+		{
+			log.warn("register(): " + e);
+		}
+	}
+
+	void unregister()
+	{
+		try
+		{
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (server.isRegistered(name))
+			{
+				server.unregisterMBean(name);
+			}
+		}
+		catch (Exception e)
+		{
+			log.warn("unregister(): " + e);
+		}
+	}
+
+	public boolean isRunning()
+	{
+		return running;
+	}
+
+	public long getRunUsers()
+	{
+		return runUsers;
+	}
+
+	public long getRunDone()
+	{
+		return runDone.get();
+	}
+
+	public double getRunPercent()
+	{
+		long users = runUsers;
+		return (users == 0) ? 0 : 100.0 * runDone.get() / users;
+	}
+
+	public double getUsersPerSecond()
+	{
+		long start = runStart;
+		if (start == 0) return 0;
+		long end = running ? System.currentTimeMillis() : runEnd;
+		long millis = Math.max(1, end - start);
+		return 1000.0 * runDone.get() / millis;
+	}
+
+	public long getLastRunMillis()
+	{
+		return lastRunMillis;
+	}
+
+	public long getPending()
+	{
+		return pending.size();
+	}
+
+	public long getLoaded()
+	{
+		return loaded.sum();
+	}
+
+	public long getNotFound()
+	{
+		return notFound.sum();
+	}
+
+	public long getBatches()
+	{
+		return batches.sum();
+	}
+
+	public long getFailedBatches()
+	{
+		return failedBatches.sum();
+	}
+}
@@ -0,0 +1,55 @@
+/**
+ * Copyright (c) 2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.user.impl;
+
+/**
+ * JMX view of the user cache precaching done by {@link UserPrecacher}.
+ */
+public interface UserPrecacherMBean
+{
+	/** @return true while a precache run is loading users. */
+	boolean isRunning();
+
+	/** @return the number of users in the current run, or the last one if none is running. */
+	long getRunUsers();
+
+	/** @return the number of users the current run, or the last one, has been through so far. */
+	long getRunDone();
+
+	/** @return how far through the current run, or the last one, the loading is, from 0 to 100. */
+	double getRunPercent();
+
+	/** @return the users per second loaded by the current run, or the last one. */
+	double getUsersPerSecond();
+
+	/** @return the time the last finished run took, in milliseconds. */
+	long getLastRunMillis();
+
+	/** @return the number of users waiting for the next incremental run. */
+	long getPending();
+
+	/** @return the number of users found and cached since startup. */
+	long getLoaded();
+
+	/** @return the number of users asked for since startup that could not be found. */
+	long getNotFound();
+
+	/** @return the number of batches loaded since startup. */
+	long getBatches();
+
+	/** @return the number of batches since startup that failed to load. */
+	long getFailedBatches();
+}
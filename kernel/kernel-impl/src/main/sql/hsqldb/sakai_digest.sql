@@ -9,3 +9,23 @@ CREATE TABLE SAKAI_DIGEST
     CONSTRAINT SAKAI_DIGEST_INDEX UNIQUE (DIGEST_ID)
 );
 
+
+-----------------------------------------------------------------------------
+-- SAKAI_DIGEST_ENTRY
+-----------------------------------------------------------------------------
+
+CREATE TABLE SAKAI_DIGEST_ENTRY
+(
+    DIGEST_ID VARCHAR (99) NOT NULL,
+    DIGEST_PERIOD VARCHAR (99) NOT NULL,
+    CREATED BIGINT NOT NULL,
+    SEQ INTEGER NOT NULL,
+    SUBJECT LONGVARCHAR,
+    BODY LONGVARCHAR
+);
+
+CREATE INDEX SAKAI_DIGEST_ENTRY_INDEX ON SAKAI_DIGEST_ENTRY
+(
+	DIGEST_PERIOD,
+	DIGEST_ID
+);
@@ -8,3 +8,15 @@ CREATE TABLE SAKAI_PREFERENCES
     XML LONGVARCHAR,
     CONSTRAINT SAKAI_PREFERENCES_INDEX UNIQUE (PREFERENCES_ID)
 );
+
+-----------------------------------------------------------------------------
+-- SAKAI_PREFERENCES_KV
+-----------------------------------------------------------------------------
+
+CREATE TABLE SAKAI_PREFERENCES_KV
+(
+    PREFERENCES_ID VARCHAR (99) NOT NULL,
+    PREFS_KEY VARCHAR (255) NOT NULL,
+    XML LONGVARCHAR,
+    CONSTRAINT SAKAI_PREFERENCES_KV_INDEX UNIQUE (PREFERENCES_ID, PREFS_KEY)
+);
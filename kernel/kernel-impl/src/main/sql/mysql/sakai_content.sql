@@ -197,3 +197,50 @@ CREATE INDEX CONTENT_DROPBOX_II ON CONTENT_DROPBOX_CHANGES
 (
 	IN_COLLECTION
 );
+
+-----------------------------------------------------------------------------
+-- CONTENT_CONTEXT_USAGE
+-----------------------------------------------------------------------------
+
+CREATE TABLE CONTENT_CONTEXT_USAGE
+(
+    CONTEXT VARCHAR (99) NOT NULL,
+    FILE_SIZE BIGINT NOT NULL
+);
+
+CREATE UNIQUE INDEX CONTENT_CONTEXT_USAGE_CI ON CONTENT_CONTEXT_USAGE
+(
+	CONTEXT
+);
+
+-----------------------------------------------------------------------------
+-- CONTENT_BLOB
+-----------------------------------------------------------------------------
+
+CREATE TABLE CONTENT_BLOB
+(
+    SHA256 VARCHAR (64) NOT NULL,
+    FILE_PATH VARCHAR (128) NOT NULL,
+    FILE_SIZE BIGINT NOT NULL,
+    REF_COUNT INT NOT NULL
+);
+
+CREATE UNIQUE INDEX CONTENT_BLOB_SI ON CONTENT_BLOB
+(
+	SHA256
+);
+
+-----------------------------------------------------------------------------
+-- CONTENT_BLOB_REF
+-----------------------------------------------------------------------------
+
+CREATE TABLE CONTENT_BLOB_REF
+(
+    FILE_PATH VARCHAR (128) NOT NULL,
+    SHA256 VARCHAR (64) NOT NULL
+);
+
+CREATE UNIQUE INDEX CONTENT_BLOB_REF_PI ON CONTENT_BLOB_REF
+(
+	FILE_PATH
+);
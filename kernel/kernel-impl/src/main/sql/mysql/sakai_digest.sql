@@ -12,3 +12,23 @@ CREATE UNIQUE INDEX SAKAI_DIGEST_INDEX ON SAKAI_DIGEST
 (
 	DIGEST_ID
 );
+
+-----------------------------------------------------------------------------
+-- SAKAI_DIGEST_ENTRY
+-----------------------------------------------------------------------------
+
+CREATE TABLE SAKAI_DIGEST_ENTRY
+(
+    DIGEST_ID VARCHAR (99) NOT NULL,
+    DIGEST_PERIOD VARCHAR (99) NOT NULL,
+    CREATED BIGINT NOT NULL,
+    SEQ INTEGER NOT NULL,
+    SUBJECT TEXT,
+    BODY LONGTEXT
+);
+
+CREATE INDEX SAKAI_DIGEST_ENTRY_INDEX ON SAKAI_DIGEST_ENTRY
+(
+	DIGEST_PERIOD,
+	DIGEST_ID
+);
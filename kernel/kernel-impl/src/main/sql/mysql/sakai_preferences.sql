@@ -12,3 +12,20 @@ CREATE UNIQUE INDEX SAKAI_PREFERENCES_INDEX ON SAKAI_PREFERENCES
 (
 	PREFERENCES_ID
 );
+
+-----------------------------------------------------------------------------
+-- SAKAI_PREFERENCES_KV
+-----------------------------------------------------------------------------
+
+CREATE TABLE SAKAI_PREFERENCES_KV
+(
+    PREFERENCES_ID VARCHAR (99) NOT NULL,
+    PREFS_KEY VARCHAR (255) NOT NULL,
+    XML LONGTEXT
+);
+
+CREATE UNIQUE INDEX SAKAI_PREFERENCES_KV_INDEX ON SAKAI_PREFERENCES_KV
+(
+	PREFERENCES_ID,
+	PREFS_KEY
+);
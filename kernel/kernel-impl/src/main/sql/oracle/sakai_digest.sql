@@ -12,3 +12,23 @@ CREATE UNIQUE INDEX SAKAI_DIGEST_INDEX ON SAKAI_DIGEST
 (
 	DIGEST_ID
 );
+
+-----------------------------------------------------------------------------
+-- SAKAI_DIGEST_ENTRY
+-----------------------------------------------------------------------------
+
+CREATE TABLE SAKAI_DIGEST_ENTRY
+(
+    DIGEST_ID VARCHAR2 (99) NOT NULL,
+    DIGEST_PERIOD VARCHAR2 (99) NOT NULL,
+    CREATED NUMBER (19) NOT NULL,
+    SEQ NUMBER (10) NOT NULL,
+    SUBJECT CLOB,
+    BODY CLOB
+);
+
+CREATE INDEX SAKAI_DIGEST_ENTRY_INDEX ON SAKAI_DIGEST_ENTRY
+(
+	DIGEST_PERIOD,
+	DIGEST_ID
+);
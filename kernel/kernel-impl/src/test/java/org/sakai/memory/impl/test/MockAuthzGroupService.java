@@ -153,6 +153,14 @@ public class MockAuthzGroupService implements AuthzGroupService {
 		// TODO Auto-generated method stub
 		return false;
 	}
+
+	public Map<String, Boolean> isAllowed(String userId, String function, Map<String, Collection<String>> azGroups) {
+		return null;
+	}
+
+	public Set<String> getUsersIsAllowed(Collection<String> userIds, String function, Collection<String> azGroups) {
+		return null;
+	}
 	
 	public String encodeDummyUserForRole(String roleId) throws IllegalArgumentException {
 		return roleId;
@@ -23,6 +23,8 @@ package org.sakai.memory.impl.test;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.sakaiproject.authz.api.SecurityAdvisor;
 import org.sakaiproject.authz.api.SecurityService;
@@ -118,6 +120,16 @@ public class MockSecurityService implements SecurityService
 		return false;
 	}
 
+	public Map<String, Boolean> unlock(String userId, String lock, Collection<String> references)
+	{
+		return null;
+	}
+
+	public Set<String> unlockUsers(Collection<String> userIds, String lock, String reference)
+	{
+		return null;
+	}
+
 	/* (non-Javadoc)
 	 * @see org.sakaiproject.authz.api.SecurityService#unlockUsers(java.lang.String, java.lang.String)
 	 */
@@ -0,0 +1,183 @@
+/**
+ * Copyright (c) 2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.authz.impl;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.sakaiproject.component.api.ServerConfigurationService;
+import org.sakaiproject.memory.api.MemoryService;
+import org.sakaiproject.memory.impl.BasicMapCache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class PermissionMatrixCacheTest {
+
+	private static final String SITE = "/site/a";
+	private static final String GROUP = "/site/a/group/g";
+
+	private ServerConfigurationService serverConfigurationService;
+	private MemoryService memoryService;
+	private FunctionManagerComponent functionManager;
+	private PermissionMatrixCache matrixCache;
+	private BasicMapCache<String, PermissionMatrix> cache;
+
+	private Map<String, PermissionMatrix> realms;
+	private AtomicInteger compiles;
+	private Function<String, PermissionMatrix> compiler;
+
+	@Before
+	public void setUp() {
+		serverConfigurationService = mock(ServerConfigurationService.class);
+		when(serverConfigurationService.getBoolean(PermissionMatrixCache.PROP_ENABLED, true)).thenReturn(true);
+		memoryService = mock(MemoryService.class);
+		cache = new BasicMapCache<>(PermissionMatrixCache.CACHE_NAME);
+		when(memoryService.<String, PermissionMatrix>getCache(PermissionMatrixCache.CACHE_NAME)).thenReturn(cache);
+		functionManager = new FunctionManagerComponent();
+
+		matrixCache = new PermissionMatrixCache();
+		matrixCache.setServerConfigurationService(serverConfigurationService);
+		matrixCache.setMemoryService(memoryService);
+		matrixCache.setFunctionManager(functionManager);
+		matrixCache.init();
+
+		realms = new HashMap<>();
+		PermissionMatrix site = matrix(SITE);
+		site.allow("access", functionManager.getFunctionKey("site.visit"));
+		site.allow("maintain", functionManager.getFunctionKey("site.visit"));
+		site.allow("maintain", functionManager.getFunctionKey("site.upd"));
+		site.allow(".auth", functionManager.getFunctionKey("content.read"));
+		site.grant("student", "access");
+		site.grant("teacher", "maintain");
+		PermissionMatrix group = matrix(GROUP);
+		group.allow("access", functionManager.getFunctionKey("section.role.student"));
+
+		compiles = new AtomicInteger();
+		compiler = realmId -> {
+			compiles.incrementAndGet();
+			PermissionMatrix matrix = realms.get(realmId);
+			return matrix != null ? matrix : matrix(realmId);
+		};
+	}
+
+	private PermissionMatrix matrix(String realmId) {
+		PermissionMatrix matrix = new PermissionMatrix(realmId, functionManager.getFunctionKeySpace());
+		realms.put(realmId, matrix);
+		return matrix;
+	}
+
+	private Boolean check(String userId, String lock, String... realmIds) {
+		Set<String> roles = userId == null ? Collections.singleton(".anon") : Collections.singleton(".auth");
+		return matrixCache.isAllowed(userId, lock, Arrays.asList(realmIds), roles, compiler);
+	}
+
+	@Test
+	public void testUserRole() {
+		assertTrue(check("student", "site.visit", SITE));
+		assertFalse(check("student", "site.upd", SITE));
+		assertTrue(check("teacher", "site.upd", SITE));
+		assertFalse(check("nobody", "site.visit", SITE));
+		assertFalse(check("student", "not.a.function", SITE));
+	}
+
+	@Test
+	public void testEmptyRoles() {
+		assertTrue(check("nobody", "content.read", SITE));
+		assertFalse(check(null, "content.read", SITE));
+	}
+
+	@Test
+	public void testRoleFromAnotherRealm() {
+		// the student has no grant in the group, but their site role is granted the function there
+		assertTrue(check("student", "section.role.student", GROUP, SITE));
+		assertFalse(check("student", "section.role.student", GROUP));
+		assertFalse(check("teacher", "section.role.student", GROUP, SITE));
+	}
+
+	@Test
+	public void testCompiledOnceUntilInvalidated() {
+		check("student", "site.visit", SITE);
+		check("teacher", "site.upd", SITE);
+		assertEquals(1, compiles.get());
+		assertEquals(1, matrixCache.getHits());
+		assertEquals(1, matrixCache.getMisses());
+		assertEquals(0.5d, matrixCache.getHitRatio(), 0.0d);
+
+		matrixCache.invalidate(SITE);
+		check("student", "site.visit", SITE);
+		assertEquals(2, compiles.get());
+		assertEquals(2, matrixCache.getCompiles());
+	}
+
+	@Test
+	public void testForeignKeySpaceIsRecompiled() {
+		// a matrix compiled by another server has keys from a different function manager
+		FunctionManagerComponent other = new FunctionManagerComponent();
+		other.getFunctionKey("site.upd");
+		PermissionMatrix foreign = new PermissionMatrix(SITE, other.getFunctionKeySpace());
+		foreign.allow("access", other.getFunctionKey("site.visit"));
+		cache.put(SITE, foreign);
+
+		assertTrue(check("student", "site.visit", SITE));
+		assertEquals(1, compiles.get());
+		assertEquals(functionManager.getFunctionKeySpace(), cache.get(SITE).getKeySpace());
+	}
+
+	@Test
+	public void testCompileFailureFallsBack() {
+		assertNull(matrixCache.isAllowed("student", "site.visit", Collections.singleton(SITE), Collections.emptySet(), realmId -> null));
+		matrixCache.recordFallback(2000000L);
+		assertEquals(1, matrixCache.getFallbacks());
+		assertEquals(Long.valueOf(1), matrixCache.getFallbackLatencyHistogram().get("5ms"));
+	}
+
+	@Test
+	public void testDisabled() {
+		when(serverConfigurationService.getBoolean(PermissionMatrixCache.PROP_ENABLED, true)).thenReturn(false);
+		PermissionMatrixCache disabled = new PermissionMatrixCache();
+		disabled.setServerConfigurationService(serverConfigurationService);
+		disabled.setMemoryService(memoryService);
+		disabled.setFunctionManager(functionManager);
+		disabled.init();
+		assertNull(disabled.isAllowed("student", "site.visit", Collections.singleton(SITE), Collections.emptySet(), compiler));
+	}
+
+	@Test
+	public void testLatencyHistogram() {
+		PermissionMatrixCache.LatencyHistogram histogram = new PermissionMatrixCache.LatencyHistogram();
+		histogram.record(5000L);
+		histogram.record(10000L);
+		histogram.record(11000L);
+		histogram.record(1000000000L);
+		Map<String, Long> buckets = histogram.toMap();
+		assertEquals(Long.valueOf(2), buckets.get("10us"));
+		assertEquals(Long.valueOf(1), buckets.get("50us"));
+		assertEquals(Long.valueOf(1), buckets.get("more"));
+		assertEquals(10, buckets.size());
+	}
+}
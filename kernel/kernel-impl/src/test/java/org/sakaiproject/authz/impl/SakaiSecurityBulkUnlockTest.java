@@ -0,0 +1,180 @@
+/**
+ * Copyright (c) 2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.authz.impl;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Stack;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.sakaiproject.authz.api.AuthzGroupService;
+import org.sakaiproject.authz.api.FunctionManager;
+import org.sakaiproject.authz.api.SecurityAdvisor;
+import org.sakaiproject.component.api.ServerConfigurationService;
+import org.sakaiproject.entity.api.EntityManager;
+import org.sakaiproject.entity.api.Reference;
+import org.sakaiproject.event.api.EventTrackingService;
+import org.sakaiproject.memory.api.MemoryService;
+import org.sakaiproject.memory.impl.BasicMapCache;
+import org.sakaiproject.thread_local.api.ThreadLocalManager;
+import org.sakaiproject.tool.api.SessionManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SakaiSecurityBulkUnlockTest {
+
+	private static final String SITE = "/site/s1";
+	private static final List<String> FILES = Arrays.asList("/content/group/s1/a.txt", "/content/group/s1/b.txt", "/content/group/s1/c.txt");
+
+	private SakaiSecurityConcrete security;
+	private AuthzGroupService authzGroupService;
+	private ThreadLocalManager threadLocalManager;
+	private BasicMapCache<String, Boolean> callCache;
+	private BasicMapCache<String, Boolean> contentCache;
+
+	/** user@reference pairs that are allowed, what the mocked authz group service answers from */
+	private final Set<String> allowed = new HashSet<>();
+
+	@Before
+	public void setUp() {
+		ServerConfigurationService serverConfigurationService = mock(ServerConfigurationService.class);
+		when(serverConfigurationService.getString(anyString(), anyString())).thenAnswer(invocation -> invocation.getArgument(1));
+		when(serverConfigurationService.getBoolean(anyString(), anyBoolean())).thenAnswer(invocation -> invocation.getArgument(1));
+
+		callCache = new BasicMapCache<>("org.sakaiproject.authz.api.SecurityService.cache");
+		contentCache = new BasicMapCache<>("org.sakaiproject.authz.api.SecurityService.contentCache");
+		MemoryService memoryService = mock(MemoryService.class);
+		when(memoryService.<String, Boolean>getCache("org.sakaiproject.authz.api.SecurityService.cache")).thenReturn(callCache);
+		when(memoryService.<String, Boolean>getCache("org.sakaiproject.authz.api.SecurityService.superCache")).thenReturn(new BasicMapCache<>("superCache"));
+		when(memoryService.<String, Boolean>getCache("org.sakaiproject.authz.api.SecurityService.contentCache")).thenReturn(contentCache);
+
+		// each file is in its folder's and the site's realms
+		EntityManager entityManager = mock(EntityManager.class);
+		when(entityManager.newReference(anyString())).thenAnswer(invocation -> {
+			String ref = invocation.getArgument(0);
+			Reference reference = mock(Reference.class);
+			List<String> azgs = Arrays.asList(ref, "/content/group/s1/", SITE);
+			when(reference.getAuthzGroups(anyString())).thenReturn(azgs);
+			return reference;
+		});
+
+		authzGroupService = mock(AuthzGroupService.class);
+		when(authzGroupService.isAllowed(anyString(), anyString(), anyMap())).thenAnswer(invocation -> {
+			String userId = invocation.getArgument(0);
+			Map<String, Collection<String>> azgs = invocation.getArgument(2);
+			Map<String, Boolean> rv = new HashMap<>();
+			azgs.keySet().forEach(ref -> rv.put(ref, allowed.contains(userId + "@" + ref)));
+			return rv;
+		});
+		when(authzGroupService.getUsersIsAllowed(anyCollection(), anyString(), anyCollection())).thenAnswer(invocation -> {
+			Collection<String> userIds = invocation.getArgument(0);
+			Collection<String> azgs = invocation.getArgument(2);
+			Set<String> rv = new HashSet<>();
+			userIds.stream().filter(u -> azgs.stream().anyMatch(azg -> allowed.contains(u + "@" + azg))).forEach(rv::add);
+			return rv;
+		});
+
+		threadLocalManager = mock(ThreadLocalManager.class);
+
+		security = new SakaiSecurityConcrete();
+		security.setServerConfigurationService(serverConfigurationService);
+		security.setMemoryService(memoryService);
+		security.setAuthzGroupService(authzGroupService);
+		security.setEntityManager(entityManager);
+		security.setFunctionManager(mock(FunctionManager.class));
+		security.setThreadLocalManager(threadLocalManager);
+		security.setSessionManager(mock(SessionManager.class));
+		security.setEventTrackingService(mock(EventTrackingService.class));
+		security.init();
+	}
+
+	@Test
+	public void testUnlockReferences() {
+		allowed.add("u1@" + FILES.get(0));
+		allowed.add("u1@" + FILES.get(2));
+
+		Map<String, Boolean> rv = security.unlock("u1", "content.read", FILES);
+		assertEquals(3, rv.size());
+		assertTrue(rv.get(FILES.get(0)));
+		assertFalse(rv.get(FILES.get(1)));
+		assertTrue(rv.get(FILES.get(2)));
+
+		// all the misses were resolved with one lookup and cached
+		verify(authzGroupService, times(1)).isAllowed(eq("u1"), eq("content.read"), anyMap());
+		assertEquals(3, contentCache.getAll(new HashSet<>(Arrays.asList(
+				"unlock@u1@@content.read@" + FILES.get(0),
+				"unlock@u1@@content.read@" + FILES.get(1),
+				"unlock@u1@@content.read@" + FILES.get(2)))).size());
+
+		// the single check and a repeated bulk check are answered by the cache
+		assertTrue(security.unlock("u1", "content.read", FILES.get(0)));
+		assertEquals(rv, security.unlock("u1", "content.read", FILES));
+		verify(authzGroupService, times(1)).isAllowed(eq("u1"), eq("content.read"), anyMap());
+		verify(authzGroupService, never()).isAllowed(anyString(), anyString(), anyCollection());
+	}
+
+	@Test
+	public void testUnlockReferencesWithAdvisor() {
+		Stack<SecurityAdvisor> advisors = new Stack<>();
+		advisors.push((userId, function, reference) -> FILES.get(1).equals(reference)
+				? SecurityAdvisor.SecurityAdvice.ALLOWED : SecurityAdvisor.SecurityAdvice.PASS);
+		when(threadLocalManager.get(SakaiSecurity.ADVISOR_STACK)).thenReturn(advisors);
+
+		Map<String, Boolean> rv = security.unlock("u1", "content.read", FILES);
+		assertFalse(rv.get(FILES.get(0)));
+		assertTrue(rv.get(FILES.get(1)));
+		assertFalse(rv.get(FILES.get(2)));
+
+		// the advised answer isn't cached
+		assertEquals(2, contentCache.getAll(new HashSet<>(Arrays.asList(
+				"unlock@u1@@content.read@" + FILES.get(0),
+				"unlock@u1@@content.read@" + FILES.get(1),
+				"unlock@u1@@content.read@" + FILES.get(2)))).size());
+	}
+
+	@Test
+	public void testUnlockUsers() {
+		allowed.add("u1@" + SITE);
+		allowed.add("u3@" + SITE);
+
+		assertEquals(new HashSet<>(Arrays.asList("u1", "u3")), security.unlockUsers(Arrays.asList("u1", "u2", "u3"), "site.visit", SITE));
+		verify(authzGroupService, times(1)).getUsersIsAllowed(anyCollection(), eq("site.visit"), anyCollection());
+
+		// cached for both the single and the bulk checks
+		assertFalse(security.unlock("u2", "site.visit", SITE));
+		assertEquals(new HashSet<>(Arrays.asList("u1", "u3")), security.unlockUsers(Arrays.asList("u1", "u2", "u3"), "site.visit", SITE));
+		verify(authzGroupService, times(1)).getUsersIsAllowed(anyCollection(), eq("site.visit"), anyCollection());
+		verify(authzGroupService, never()).isAllowed(anyString(), anyString(), anyCollection());
+	}
+}
@@ -0,0 +1,258 @@
+/**
+ * Copyright (c) 2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.authz.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.sakaiproject.authz.api.AuthzGroupService;
+import org.sakaiproject.authz.api.FunctionManager;
+import org.sakaiproject.component.api.ServerConfigurationService;
+import org.sakaiproject.event.api.EventTrackingService;
+import org.sakaiproject.memory.api.MemoryService;
+import org.sakaiproject.memory.impl.BasicMapCache;
+import org.sakaiproject.thread_local.api.ThreadLocalManager;
+import org.sakaiproject.tool.api.SessionManager;
+
+import lombok.extern.slf4j.Slf4j;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@Slf4j
+public class SecurityCacheIndexTest {
+
+	private static final int SITES = 200;
+	private static final int USERS_PER_SITE = 50;
+	private static final List<String> FUNCTIONS = Arrays.asList("site.visit", "content.read", "asn.submit");
+
+	private SakaiSecurityConcrete security;
+	private BasicMapCache<String, Boolean> callCache;
+	private BasicMapCache<String, Boolean> contentCache;
+
+	/** user@realm pairs that are enrolled, what the mocked authz group service answers from */
+	private final Set<String> enrolled = ConcurrentHashMap.newKeySet();
+	private final AtomicLong authzChecks = new AtomicLong();
+
+	@Before
+	public void setUp() {
+		ServerConfigurationService serverConfigurationService = mock(ServerConfigurationService.class);
+		when(serverConfigurationService.getString(anyString(), anyString())).thenAnswer(invocation -> invocation.getArgument(1));
+		when(serverConfigurationService.getBoolean(anyString(), anyBoolean())).thenAnswer(invocation -> invocation.getArgument(1));
+
+		callCache = new BasicMapCache<>("org.sakaiproject.authz.api.SecurityService.cache");
+		contentCache = new BasicMapCache<>("org.sakaiproject.authz.api.SecurityService.contentCache");
+		MemoryService memoryService = mock(MemoryService.class);
+		when(memoryService.<String, Boolean>getCache("org.sakaiproject.authz.api.SecurityService.cache")).thenReturn(callCache);
+		when(memoryService.<String, Boolean>getCache("org.sakaiproject.authz.api.SecurityService.superCache")).thenReturn(new BasicMapCache<>("superCache"));
+		when(memoryService.<String, Boolean>getCache("org.sakaiproject.authz.api.SecurityService.contentCache")).thenReturn(contentCache);
+
+		AuthzGroupService authzGroupService = mock(AuthzGroupService.class);
+		when(authzGroupService.isAllowed(anyString(), anyString(), anyCollection())).thenAnswer(invocation -> {
+			authzChecks.incrementAndGet();
+			String userId = invocation.getArgument(0);
+			Collection<String> azgs = invocation.getArgument(2);
+			return azgs.stream().anyMatch(azg -> enrolled.contains(userId + "@" + azg));
+		});
+
+		security = new SakaiSecurityConcrete();
+		security.setServerConfigurationService(serverConfigurationService);
+		security.setMemoryService(memoryService);
+		security.setAuthzGroupService(authzGroupService);
+		security.setFunctionManager(mock(FunctionManager.class));
+		security.setThreadLocalManager(mock(ThreadLocalManager.class));
+		security.setSessionManager(mock(SessionManager.class));
+		security.setEventTrackingService(mock(EventTrackingService.class));
+		security.init();
+	}
+
+	private static String site(int i) {
+		return "/site/s" + i;
+	}
+
+	private static String user(int site, int i) {
+		return "u" + site + "-" + i;
+	}
+
+	private boolean check(int site, int user, String function) {
+		return security.unlock(user(site, user), function, site(site), Collections.singleton(site(site)));
+	}
+
+	@Test
+	public void testIndexLookups() {
+		SecurityCacheIndex index = new SecurityCacheIndex();
+		index.add("k1", "u1", "site.visit", Arrays.asList("/site/a", "!site.helper"));
+		index.add("k2", "u2", "site.visit", Collections.singleton("/site/a"));
+		index.add("k3", "u1", "content.read", Collections.singleton("/site/b"));
+		index.add("k4", null, "site.visit", Collections.singleton("/site/a"));
+
+		assertEquals(new HashSet<>(Arrays.asList("k1", "k2", "k4")), index.getRealmKeys("/site/a", null));
+		assertEquals(Collections.singleton("k1"), index.getRealmKeys("!site.helper", Collections.singleton("site.visit")));
+		assertEquals(Collections.emptySet(), index.getRealmKeys("/site/b", Collections.singleton("site.visit")));
+		assertEquals(Collections.singleton("k1"), index.getUserKeys(Collections.singleton("u1"), "/site/a"));
+		assertEquals(Collections.singleton("k4"), index.getUserKeys(Collections.singleton(null), "/site/a"));
+
+		index.removeAll(Arrays.asList("k1", "k3"));
+		assertEquals(2, index.size());
+		assertEquals(Collections.emptySet(), index.getRealmKeys("!site.helper", null));
+		assertEquals(1, index.getRealmCount());
+	}
+
+	@Test
+	public void testTargetedInvalidation() {
+		enrolled.add(user(1, 1) + "@" + site(1));
+		enrolled.add(user(2, 1) + "@" + site(2));
+		assertTrue(check(1, 1, "site.visit"));
+		assertTrue(check(2, 1, "site.visit"));
+		assertFalse(check(1, 2, "site.visit"));
+		assertEquals(3, callCache.getAll(new HashSet<>(Arrays.asList(
+				"unlock@u1-1@@site.visit@/site/s1", "unlock@u2-1@@site.visit@/site/s2", "unlock@u1-2@@site.visit@/site/s1"))).size());
+
+		// a .auth permission change used to clear the whole cache, now only site 1 goes
+		security.cacheRealmPermsChanged("/realm//site/s1", Collections.singleton(AuthzGroupService.AUTH_ROLE), Collections.singleton("site.visit"));
+		assertEquals(1, security.m_cacheIndex.size());
+		assertNotNull(callCache.get("unlock@u2-1@@site.visit@/site/s2"));
+
+		// enrolling a user only removes their entries in that realm
+		check(1, 1, "site.visit");
+		check(1, 2, "site.visit");
+		enrolled.add(user(1, 2) + "@" + site(1));
+		security.notifyMembersChangedInRealm(Collections.singleton(user(1, 2)), "/realm//site/s1");
+		assertNotNull(callCache.get("unlock@u1-1@@site.visit@/site/s1"));
+		assertTrue(check(1, 2, "site.visit"));
+	}
+
+	/**
+	 * Readers keep checking permissions in every site while a writer changes the enrolment in all of them. Only the
+	 * changed users' entries should be recomputed and every reader must see the new enrolment once it is notified.
+	 */
+	@Test
+	public void testCacheStaysWarmDuringBulkEnrolment() throws Exception {
+		for (int s = 0; s < SITES; s++) {
+			for (int u = 0; u < USERS_PER_SITE; u++) {
+				enrolled.add(user(s, u) + "@" + site(s));
+			}
+		}
+		for (int s = 0; s < SITES; s++) {
+			for (int u = 0; u < USERS_PER_SITE; u++) {
+				for (String function : FUNCTIONS) {
+					assertTrue(check(s, u, function));
+				}
+			}
+		}
+		int entries = SITES * USERS_PER_SITE * FUNCTIONS.size();
+		assertEquals(entries, authzChecks.get());
+		assertEquals(entries, security.m_cacheIndex.size());
+		authzChecks.set(0);
+
+		int readers = 4;
+		int changedPerSite = 2;
+		ExecutorService executor = Executors.newFixedThreadPool(readers + 1);
+		AtomicBoolean writing = new AtomicBoolean(true);
+		AtomicLong reads = new AtomicLong();
+		CountDownLatch started = new CountDownLatch(readers);
+		List<Future<?>> futures = new ArrayList<>();
+		long start = System.nanoTime();
+		for (int r = 0; r < readers; r++) {
+			final int offset = r;
+			futures.add(executor.submit(() -> {
+				started.countDown();
+				int passes = 0;
+				do {
+					for (int s = 0; s < SITES; s++) {
+						for (int u = 0; u < USERS_PER_SITE; u++) {
+							check((s + offset) % SITES, u, FUNCTIONS.get(u % FUNCTIONS.size()));
+							reads.incrementAndGet();
+						}
+					}
+				} while (writing.get() || ++passes < 3);
+			}));
+		}
+		futures.add(executor.submit(() -> {
+			started.await();
+			for (int s = 0; s < SITES; s++) {
+				Set<String> changed = new HashSet<>();
+				for (int u = 0; u < changedPerSite; u++) {
+					enrolled.remove(user(s, u) + "@" + site(s));
+					changed.add(user(s, u));
+				}
+				security.notifyMembersChangedInRealm(changed, "/realm/" + site(s));
+			}
+			writing.set(false);
+			return null;
+		}));
+		for (Future<?> future : futures) {
+			future.get(2, TimeUnit.MINUTES);
+		}
+		executor.shutdown();
+		long elapsed = System.nanoTime() - start;
+
+		// every removed user is now denied and everybody else still allowed
+		for (int s = 0; s < SITES; s++) {
+			for (int u = 0; u < USERS_PER_SITE; u++) {
+				for (String function : FUNCTIONS) {
+					assertEquals(user(s, u) + " " + function, u >= changedPerSite, check(s, u, function));
+				}
+			}
+		}
+
+		long invalidated = SITES * changedPerSite * FUNCTIONS.size();
+		long misses = authzChecks.get();
+		double hitRatio = 1.0d - (double) misses / (reads.get() + entries);
+		log.info("{} reads by {} threads in {}ms during {} enrolment changes: {} misses for {} invalidated entries, hit ratio {}",
+				reads.get(), readers, TimeUnit.NANOSECONDS.toMillis(elapsed), SITES * changedPerSite, misses, invalidated, hitRatio);
+
+		// each invalidated entry is recomputed at most once by each reader and by the final check
+		assertTrue("misses " + misses, misses <= invalidated * (readers + 1));
+		assertTrue("hit ratio " + hitRatio, hitRatio > 0.9d);
+		assertEquals(entries, callCache.getAll(allKeys()).size());
+	}
+
+	private Set<String> allKeys() {
+		Set<String> keys = new HashSet<>();
+		for (int s = 0; s < SITES; s++) {
+			for (int u = 0; u < USERS_PER_SITE; u++) {
+				for (String function : FUNCTIONS) {
+					keys.add("unlock@" + user(s, u) + "@@" + function + "@" + site(s));
+				}
+			}
+		}
+		return keys;
+	}
+}
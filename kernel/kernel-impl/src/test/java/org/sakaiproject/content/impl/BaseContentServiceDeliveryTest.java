@@ -0,0 +1,224 @@
+/**
+ * Copyright (c) 2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.content.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sakaiproject.component.api.ServerConfigurationService;
+import org.sakaiproject.content.api.ContentResource;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests the delivery of resource bodies held in local files.
+ */
+public class BaseContentServiceDeliveryTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private BaseContentService contentHostingService;
+	private File file;
+	private byte[] body;
+
+	@Before
+	public void setUp() throws IOException {
+		contentHostingService = new DbContentService();
+		ServerConfigurationService serverConfigurationService = mock(ServerConfigurationService.class);
+		when(serverConfigurationService.getBoolean(anyString(), anyBoolean())).thenAnswer(invocation -> invocation.getArgument(1));
+		contentHostingService.setServerConfigurationService(serverConfigurationService);
+
+		body = new byte[300 * 1024 + 17];
+		new Random(42).nextBytes(body);
+		file = folder.newFile("body");
+		Files.write(file.toPath(), body);
+	}
+
+	@Test
+	public void testETags() {
+		ContentResource resource = mock(ContentResource.class);
+		when(resource.getId()).thenReturn("/group/site/lecture.mp4");
+		String eTag = contentHostingService.getETag(resource, body.length, 1700000000000L);
+		assertTrue(eTag.startsWith("\"") && eTag.endsWith("\""));
+		assertEquals(eTag, contentHostingService.getETag(resource, body.length, 1700000000000L));
+		assertFalse(eTag.equals(contentHostingService.getETag(resource, body.length, 1700000000001L)));
+		assertFalse(eTag.equals(contentHostingService.getETag(resource, body.length + 1, 1700000000000L)));
+		assertNull(contentHostingService.getETag(resource, body.length, 0L));
+
+		assertTrue(contentHostingService.matchesETag(eTag, eTag));
+		assertTrue(contentHostingService.matchesETag("\"other\", W/" + eTag, eTag));
+		assertTrue(contentHostingService.matchesETag("*", eTag));
+		assertFalse(contentHostingService.matchesETag("\"other\"", eTag));
+	}
+
+	@Test
+	public void testIfRange() throws IOException {
+		String eTag = "\"abc\"";
+		HttpServletResponse response = mock(HttpServletResponse.class);
+
+		HttpServletRequest request = mock(HttpServletRequest.class);
+		when(request.getHeader("Range")).thenReturn("bytes=0-99");
+		assertEquals(1, contentHostingService.parseRange(request, response, body.length, eTag, 1000000L).size());
+
+		// the client's copy is current
+		when(request.getHeader("If-Range")).thenReturn(eTag);
+		assertEquals(1, contentHostingService.parseRange(request, response, body.length, eTag, 1000000L).size());
+		when(request.getHeader("If-Range")).thenReturn("Thu, 01 Jan 1970 00:16:40 GMT");
+		when(request.getDateHeader("If-Range")).thenReturn(1000000L);
+		assertEquals(1, contentHostingService.parseRange(request, response, body.length, eTag, 1000000L).size());
+
+		// the whole entity is sent if it has changed since
+		assertNull(contentHostingService.parseRange(request, response, body.length, eTag, 2000000L));
+		when(request.getHeader("If-Range")).thenReturn("\"old\"");
+		assertNull(contentHostingService.parseRange(request, response, body.length, eTag, 1000000L));
+		when(request.getHeader("If-Range")).thenReturn("W/" + eTag);
+		assertNull(contentHostingService.parseRange(request, response, body.length, eTag, 1000000L));
+	}
+
+	@Test
+	public void testSendBodyFile() throws IOException {
+		HttpServletRequest request = mock(HttpServletRequest.class);
+		HttpServletResponse response = mock(HttpServletResponse.class);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		when(response.getOutputStream()).thenReturn(servletOutputStream(out));
+
+		contentHostingService.sendBodyFile(request, response, file, 1000, 200999);
+		assertArrayEquals(Arrays.copyOfRange(body, 1000, 201000), out.toByteArray());
+
+		// handed to the container when it can send files itself
+		HttpServletRequest sendfileRequest = mock(HttpServletRequest.class);
+		when(sendfileRequest.getAttribute(BaseContentService.SENDFILE_SUPPORT_ATTR)).thenReturn(Boolean.TRUE);
+		HttpServletResponse sendfileResponse = mock(HttpServletResponse.class);
+		contentHostingService.sendBodyFile(sendfileRequest, sendfileResponse, file, 0, body.length - 1);
+		verify(sendfileRequest).setAttribute(BaseContentService.SENDFILE_FILENAME_ATTR, file.getCanonicalPath());
+		verify(sendfileRequest).setAttribute(BaseContentService.SENDFILE_START_ATTR, 0L);
+		verify(sendfileRequest).setAttribute(BaseContentService.SENDFILE_END_ATTR, (long) body.length);
+		verify(sendfileResponse, never()).getOutputStream();
+	}
+
+	@Test
+	public void testMultipartRanges() throws Exception {
+		ContentResource resource = mock(ContentResource.class);
+		when(resource.streamContent()).thenAnswer(invocation -> new FileInputStream(file));
+
+		ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+		contentHostingService.copyRanges(resource, streamed, ranges().iterator(), "video/mp4");
+		ByteArrayOutputStream transferred = new ByteArrayOutputStream();
+		contentHostingService.copyRanges(file, transferred, ranges().iterator(), "video/mp4");
+
+		assertArrayEquals(streamed.toByteArray(), transferred.toByteArray());
+	}
+
+	@Test
+	public void testTransferToChannel() throws IOException {
+		ChannelOutputStream out = new ChannelOutputStream();
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			contentHostingService.transferRange(channel, out, 150000, body.length - 1);
+		}
+		assertTrue(out.channelWrites > 0);
+		assertArrayEquals(Arrays.copyOfRange(body, 150000, body.length), out.toByteArray());
+	}
+
+	private List<BaseContentService.Range> ranges() {
+		List<BaseContentService.Range> ranges = new ArrayList<>();
+		long[][] bounds = {{0, 99}, {150000, 250000}, {body.length - 10, body.length - 1}};
+		for (long[] bound : bounds) {
+			BaseContentService.Range range = contentHostingService.new Range();
+			range.start = bound[0];
+			range.end = bound[1];
+			range.length = body.length;
+			ranges.add(range);
+		}
+		return ranges;
+	}
+
+	private static ServletOutputStream servletOutputStream(OutputStream out) {
+		assertNotNull(out);
+		return new ServletOutputStream() {
+			@Override
+			public void write(int b) throws IOException {
+				out.write(b);
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				out.write(b, off, len);
+			}
+
+			@Override
+			public boolean isReady() {
+				return true;
+			}
+
+			@Override
+			public void setWriteListener(WriteListener writeListener) {
+			}
+		};
+	}
+
+	/** An output stream that can also be written as a channel, as the kernel can transfer a file to. */
+	private static class ChannelOutputStream extends ByteArrayOutputStream implements WritableByteChannel {
+		int channelWrites = 0;
+
+		@Override
+		public int write(ByteBuffer src) {
+			channelWrites++;
+			int count = src.remaining();
+			byte[] bytes = new byte[count];
+			src.get(bytes);
+			write(bytes, 0, count);
+			return count;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return true;
+		}
+	}
+}
@@ -0,0 +1,253 @@
+/**
+ * Copyright (c) 2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.content.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sakaiproject.content.impl.util.ContentDeduplicator;
+import org.sakaiproject.db.api.SqlService;
+
+import lombok.extern.slf4j.Slf4j;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@Slf4j
+public class ContentBlobStoreTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Connection connection;
+	private ContentServiceSql contentServiceSql = new ContentServiceSqlHSql();
+	private DefaultFileSystemHandler fileSystemHandler = new DefaultFileSystemHandler();
+	private String root;
+	private String deletedRoot;
+	private ContentBlobStore store;
+
+	@Before
+	public void setUp() throws Exception {
+		connection = DriverManager.getConnection("jdbc:hsqldb:mem:blobs", "sa", "");
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("create table CONTENT_BLOB (SHA256 VARCHAR(64) NOT NULL, FILE_PATH VARCHAR(128) NOT NULL, FILE_SIZE BIGINT NOT NULL, REF_COUNT INT NOT NULL)");
+			statement.execute("create unique index CONTENT_BLOB_SI on CONTENT_BLOB (SHA256)");
+			statement.execute("create table CONTENT_BLOB_REF (FILE_PATH VARCHAR(128) NOT NULL, SHA256 VARCHAR(64) NOT NULL)");
+			statement.execute("create unique index CONTENT_BLOB_REF_PI on CONTENT_BLOB_REF (FILE_PATH)");
+			statement.execute("create table CONTENT_RESOURCE (RESOURCE_ID VARCHAR(255) NOT NULL, FILE_PATH VARCHAR(128))");
+			statement.execute("create table CONTENT_RESOURCE_DELETE (RESOURCE_ID VARCHAR(255) NOT NULL, FILE_PATH VARCHAR(128))");
+		}
+		root = folder.newFolder("body").getPath();
+		deletedRoot = folder.newFolder("deleted").getPath();
+
+		// just enough of the sql service, on the in memory database
+		SqlService sqlService = mock(SqlService.class);
+		when(sqlService.dbRead(anyString(), any(), isNull())).thenAnswer(invocation -> query(invocation.getArgument(0), invocation.getArgument(1)));
+		when(sqlService.dbWrite(anyString(), any(Object[].class))).thenAnswer(invocation -> write(invocation.getArgument(0), invocation.getArgument(1)) >= 0);
+		when(sqlService.dbWriteFailQuiet(any(), anyString(), any(Object[].class))).thenAnswer(invocation -> write(invocation.getArgument(1), invocation.getArgument(2)) >= 0);
+		when(sqlService.dbWriteCount(anyString(), any(Object[].class), isNull(), isNull(), anyBoolean())).thenAnswer(invocation -> write(invocation.getArgument(0), invocation.getArgument(1)));
+
+		store = new ContentBlobStore(sqlService, contentServiceSql, fileSystemHandler, root);
+	}
+
+	@After
+	public void tearDown() throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("shutdown");
+		}
+		connection.close();
+	}
+
+	@Test
+	public void testSharedBodies() throws IOException {
+		assertEquals(5L, save("/a", "/2026/290/13/a", "hello"));
+		assertEquals(5L, save("/b", "/2026/290/13/b", "hello"));
+		assertEquals(5L, store.saveInputStream("/c", deletedRoot, "/2026/290/13/c", body("hello")));
+		assertEquals(5L, save("/d", "/2026/290/13/d", "world"));
+
+		// one file for each distinct body, in the body root
+		assertEquals(2, files(root));
+		assertEquals(0, files(deletedRoot));
+		assertEquals("hello", read("/a", "/2026/290/13/a"));
+		assertEquals("hello", IOUtils.toString(store.getInputStream("/c", deletedRoot, "/2026/290/13/c"), StandardCharsets.UTF_8));
+		assertEquals("world", read("/d", "/2026/290/13/d"));
+
+		// replacing a shared body leaves the others alone
+		save("/a", "/2026/290/13/a", "changed");
+		assertEquals("changed", read("/a", "/2026/290/13/a"));
+		assertEquals("hello", read("/b", "/2026/290/13/b"));
+		assertEquals(3, files(root));
+
+		// the blob goes with its last reference
+		assertTrue(store.delete("/b", root, "/2026/290/13/b"));
+		assertEquals(3, files(root));
+		assertTrue(store.delete("/c", deletedRoot, "/2026/290/13/c"));
+		assertEquals(2, files(root));
+		store.delete("/a", root, "/2026/290/13/a");
+		store.delete("/d", root, "/2026/290/13/d");
+		assertEquals(0, files(root));
+		assertEquals(0, write("delete from CONTENT_BLOB", new Object[0]));
+		assertEquals(0, write("delete from CONTENT_BLOB_REF", new Object[0]));
+	}
+
+	@Test
+	public void testBodiesStoredBeforeBlobs() throws IOException {
+		fileSystemHandler.saveInputStream("/a", root, "/2026/290/13/a", body("legacy"));
+		write("insert into CONTENT_RESOURCE values (?, ?)", new Object[] {"/a", "/2026/290/13/a"});
+		fileSystemHandler.saveInputStream("/b", deletedRoot, "/2026/290/13/b", body("deleted"));
+
+		assertNull(store.getBlobPath("/2026/290/13/a"));
+		assertEquals("legacy", read("/a", "/2026/290/13/a"));
+		assertEquals("deleted", IOUtils.toString(store.getInputStream("/b", deletedRoot, "/2026/290/13/b"), StandardCharsets.UTF_8));
+
+		// replaced by a blob
+		save("/a", "/2026/290/13/a", "new");
+		assertFalse(new File(root, "/2026/290/13/a").exists());
+		assertEquals("new", read("/a", "/2026/290/13/a"));
+
+		assertTrue(store.delete("/b", deletedRoot, "/2026/290/13/b"));
+		assertEquals(0, files(deletedRoot));
+
+		// a new resource has no body of its own to replace, what is at its path isn't touched
+		fileSystemHandler.saveInputStream("/c", root, "/2026/290/13/c", body("not mine"));
+		save("/n", "/2026/290/13/c", "new");
+		assertTrue(new File(root, "/2026/290/13/c").exists());
+	}
+
+	/**
+	 * Converts a body store where the same files were uploaded into many sites, logging the space saved.
+	 */
+	@Test
+	public void testDeduplicator() throws Exception {
+		int sites = 50;
+		int handouts = 20;
+		byte[] handout = new byte[64 * 1024];
+		for (int s = 0; s < sites; s++) {
+			for (int h = 0; h < handouts; h++) {
+				handout[0] = (byte) h;
+				String id = "/group/site" + s + "/handout" + h + ".pdf";
+				String path = "/2026/290/" + s + "/" + h;
+				fileSystemHandler.saveInputStream(id, root, path, new ByteArrayInputStream(handout));
+				write("insert into CONTENT_RESOURCE values (?, ?)", new Object[] {id, path});
+			}
+		}
+		// a deleted copy and a deleted file of its own
+		handout[0] = 0;
+		fileSystemHandler.saveInputStream("/group/site0/old.pdf", deletedRoot, "/2026/289/0/old", new ByteArrayInputStream(handout));
+		write("insert into CONTENT_RESOURCE_DELETE values (?, ?)", new Object[] {"/group/site0/old.pdf", "/2026/289/0/old"});
+		fileSystemHandler.saveInputStream("/group/site0/gone.pdf", deletedRoot, "/2026/289/0/gone", body("gone"));
+		write("insert into CONTENT_RESOURCE_DELETE values (?, ?)", new Object[] {"/group/site0/gone.pdf", "/2026/289/0/gone"});
+		long before = FileUtils.sizeOfDirectory(new File(root)) + FileUtils.sizeOfDirectory(new File(deletedRoot));
+
+		ContentDeduplicator deduplicator = new ContentDeduplicator();
+		deduplicator.setConnection(connection);
+		deduplicator.setContentServiceSql(contentServiceSql);
+		deduplicator.setFileSystemHandler(fileSystemHandler);
+		deduplicator.setBodyPath(root);
+		deduplicator.setBodyPathDeleted(deletedRoot);
+		deduplicator.setDryRun(true);
+		deduplicator.deduplicate();
+		assertEquals(sites * handouts - handouts + 1, deduplicator.getDuplicates());
+		assertEquals(sites * handouts + 2, files(root) + files(deletedRoot));
+
+		deduplicator.setDryRun(false);
+		deduplicator.deduplicate();
+		long after = FileUtils.sizeOfDirectory(new File(root)) + FileUtils.sizeOfDirectory(new File(deletedRoot));
+		log.info("deduplicated {} files: {} bytes stored before, {} after", sites * handouts + 2, before, after);
+		assertEquals(sites * handouts - handouts + 1, deduplicator.getDuplicates());
+		assertEquals(handouts + 1, files(root));
+		assertEquals(0, files(deletedRoot));
+		assertEquals(before - deduplicator.getDuplicateBytes(), after);
+
+		// everything still reads, and running it again changes nothing
+		handout[0] = 7;
+		assertTrue(IOUtils.contentEquals(new ByteArrayInputStream(handout), store.getInputStream("/group/site9/handout7.pdf", root, "/2026/290/9/7")));
+		assertEquals("gone", IOUtils.toString(store.getInputStream("/group/site0/gone.pdf", deletedRoot, "/2026/289/0/gone"), StandardCharsets.UTF_8));
+		deduplicator.deduplicate();
+		assertEquals(0, deduplicator.getDuplicates());
+		assertEquals(handouts + 1, files(root));
+	}
+
+	private long save(String id, String filePath, String body) throws IOException {
+		return store.saveInputStream(id, root, filePath, body(body));
+	}
+
+	private String read(String id, String filePath) throws IOException {
+		try (InputStream in = store.getInputStream(id, root, filePath)) {
+			return IOUtils.toString(in, StandardCharsets.UTF_8);
+		}
+	}
+
+	private static InputStream body(String body) {
+		return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static int files(String folder) {
+		return FileUtils.listFiles(new File(folder), null, true).size();
+	}
+
+	private List<String> query(String sql, Object[] fields) throws SQLException {
+		List<String> rv = new ArrayList<>();
+		try (PreparedStatement statement = connection.prepareStatement(sql)) {
+			for (int i = 0; fields != null && i < fields.length; i++) {
+				statement.setObject(i + 1, fields[i]);
+			}
+			try (ResultSet result = statement.executeQuery()) {
+				while (result.next()) {
+					rv.add(result.getString(1));
+				}
+			}
+		}
+		return rv;
+	}
+
+	private int write(String sql, Object[] fields) {
+		try (PreparedStatement statement = connection.prepareStatement(sql)) {
+			for (int i = 0; i < fields.length; i++) {
+				statement.setObject(i + 1, fields[i]);
+			}
+			return statement.executeUpdate();
+		} catch (SQLException e) {
+			return -1;
+		}
+	}
+}
@@ -0,0 +1,181 @@
+/**
+ * Copyright (c) 2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.content.impl;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sakaiproject.db.api.SqlReader;
+import org.sakaiproject.db.api.SqlReaderFinishedException;
+import org.sakaiproject.db.api.SqlService;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ContextUsageCounterTest {
+
+	protected static final String SITE = "site1";
+
+	protected Connection connection;
+	protected ContentServiceSql contentServiceSql = new ContentServiceSqlHSql();
+	protected ContextUsageCounter counter;
+
+	// runs before a seed is inserted, as if another node got there first
+	private Runnable beforeSeed;
+
+	@Before
+	public void setUp() throws SQLException {
+		connection = DriverManager.getConnection("jdbc:hsqldb:mem:usage", "sa", "");
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("create table CONTENT_RESOURCE (RESOURCE_ID VARCHAR(255) NOT NULL, CONTEXT VARCHAR(99), FILE_SIZE BIGINT)");
+			statement.execute("create unique index CONTENT_RESOURCE_INDEX on CONTENT_RESOURCE (RESOURCE_ID)");
+			statement.execute("create index CONTENT_RESOURCE_CONTEXT_INDEX on CONTENT_RESOURCE (CONTEXT)");
+			statement.execute("create table CONTENT_CONTEXT_USAGE (CONTEXT VARCHAR(99) NOT NULL, FILE_SIZE BIGINT NOT NULL)");
+			statement.execute("create unique index CONTENT_CONTEXT_USAGE_CI on CONTENT_CONTEXT_USAGE (CONTEXT)");
+		}
+
+		// just enough of the sql service, on the in memory database
+		SqlService sqlService = mock(SqlService.class);
+		when(sqlService.dbRead(anyString(), any(), any())).thenAnswer(invocation -> read(invocation.getArgument(0), invocation.getArgument(1), invocation.getArgument(2)));
+		when(sqlService.dbWrite(anyString(), any(Object[].class))).thenAnswer(invocation -> write(invocation.getArgument(0), invocation.getArgument(1)));
+		when(sqlService.dbWriteCount(anyString(), any(Object[].class), any(), any(), anyBoolean())).thenAnswer(invocation -> writeCount(invocation.getArgument(0), invocation.getArgument(1)));
+		when(sqlService.dbWriteFailQuiet(any(), anyString(), any(Object[].class))).thenAnswer(invocation -> {
+			if (beforeSeed != null) {
+				beforeSeed.run();
+				beforeSeed = null;
+			}
+			return write(invocation.getArgument(1), invocation.getArgument(2));
+		});
+
+		counter = new ContextUsageCounter(sqlService, contentServiceSql);
+	}
+
+	@After
+	public void tearDown() throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("shutdown");
+		}
+		connection.close();
+	}
+
+	@Test
+	public void testSeedAdjustAndReconcile() throws SQLException {
+		insertResource("/group/site1/a", SITE, 1000L);
+		insertResource("/group/site1/b", SITE, 2000L);
+		insertResource("/group/site2/c", "site2", 5000L);
+
+		// seeded from the resources, then counted
+		assertEquals(3000L, counter.getSize(SITE));
+		insertResource("/group/site1/d", SITE, 500L);
+		counter.adjust(SITE, 500L);
+		assertEquals(3500L, counter.getSize(SITE));
+		counter.adjust(SITE, -1000L);
+		assertEquals(2500L, counter.getSize(SITE));
+
+		// only the drifted count is corrected
+		assertEquals(1, counter.reconcile());
+		assertEquals(3500L, counter.getSize(SITE));
+		assertEquals(5000L, counter.getSize("site2"));
+		assertEquals(0, counter.reconcile());
+
+		// a context with no resources isn't counted
+		assertEquals(0L, counter.getSize("site3"));
+	}
+
+	@Test
+	public void testAdjustSeedsUncountedContext() throws Exception {
+		insertResource("/group/site1/a", SITE, 1000L);
+
+		// the change is already in the resources the seed adds up
+		insertResource("/group/site1/b", SITE, 2000L);
+		counter.adjust(SITE, 2000L);
+		assertEquals(3000L, count(SITE));
+
+		counter.adjust(SITE, 500L);
+		assertEquals(3500L, count(SITE));
+	}
+
+	@Test
+	public void testAdjustAddsToAnotherNodesSeed() throws Exception {
+		insertResource("/group/site1/a", SITE, 1000L);
+
+		// another node seeds the count before this change is committed, so without it
+		beforeSeed = () -> write("insert into CONTENT_CONTEXT_USAGE values (?, ?)", new Object[] {SITE, 1000L});
+		insertResource("/group/site1/b", SITE, 2000L);
+		counter.adjust(SITE, 2000L);
+		assertEquals(3000L, count(SITE));
+		assertEquals(0, counter.reconcile());
+	}
+
+	private void insertResource(String id, String context, long size) throws SQLException {
+		write("insert into CONTENT_RESOURCE values (?, ?, ?)", new Object[] {id, context, size});
+	}
+
+	private long count(String context) throws SQLException, SqlReaderFinishedException {
+		List<String> rows = read(contentServiceSql.getContextUsageSql(), new Object[] {context}, null);
+		return Long.parseLong(rows.get(0));
+	}
+
+	protected long sum(String context) throws SQLException, SqlReaderFinishedException {
+		List<String> rows = read(contentServiceSql.getQuotaQuerySql(), new Object[] {context}, null);
+		return Long.parseLong(rows.get(0));
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T> List<T> read(String sql, Object[] fields, SqlReader<T> reader) throws SQLException, SqlReaderFinishedException {
+		List<T> rv = new ArrayList<>();
+		try (PreparedStatement statement = connection.prepareStatement(sql)) {
+			for (int i = 0; fields != null && i < fields.length; i++) {
+				statement.setObject(i + 1, fields[i]);
+			}
+			try (ResultSet result = statement.executeQuery()) {
+				while (result.next()) {
+					T row = (reader == null) ? (T) result.getString(1) : reader.readSqlResultRecord(result);
+					if (row != null) rv.add(row);
+				}
+			}
+		}
+		return rv;
+	}
+
+	private boolean write(String sql, Object[] fields) {
+		return writeCount(sql, fields) >= 0;
+	}
+
+	private int writeCount(String sql, Object[] fields) {
+		try (PreparedStatement statement = connection.prepareStatement(sql)) {
+			for (int i = 0; i < fields.length; i++) {
+				statement.setObject(i + 1, fields[i]);
+			}
+			return statement.executeUpdate();
+		} catch (SQLException e) {
+			return -1;
+		}
+	}
+}
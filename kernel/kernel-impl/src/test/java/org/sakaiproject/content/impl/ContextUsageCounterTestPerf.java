@@ -0,0 +1,70 @@
+/**
+ * Copyright (c) 2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.content.impl;
+
+import java.sql.PreparedStatement;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Times the quota lookup for an upload to a site with 100k files, adding up the resource sizes against the count. Not run
+ * by the build, run it by hand with -Dtest=ContextUsageCounterTestPerf.
+ */
+@Slf4j
+public class ContextUsageCounterTestPerf extends ContextUsageCounterTest {
+
+	@Test
+	public void testUploadQuotaLatency() throws Exception {
+		int files = 100000;
+		try (PreparedStatement statement = connection.prepareStatement("insert into CONTENT_RESOURCE values (?, ?, ?)")) {
+			for (int i = 0; i < files; i++) {
+				statement.setString(1, "/group/" + SITE + "/file" + i);
+				statement.setString(2, SITE);
+				statement.setLong(3, 1024L);
+				statement.addBatch();
+				if (i % 5000 == 4999) statement.executeBatch();
+			}
+		}
+
+		int uploads = 200;
+		long start = System.nanoTime();
+		long summed = 0;
+		for (int i = 0; i < uploads; i++) {
+			summed = sum(SITE);
+		}
+		long sumNanos = (System.nanoTime() - start) / uploads;
+
+		counter.getSize(SITE);
+		start = System.nanoTime();
+		long counted = 0;
+		for (int i = 0; i < uploads; i++) {
+			// the quota check, then the count update of the commit
+			counted = counter.getSize(SITE);
+			counter.adjust(SITE, 0L);
+		}
+		long countNanos = (System.nanoTime() - start) / uploads;
+
+		log.info("quota check for an upload to a site with {} files: summed {} us, counted {} us", files, sumNanos / 1000, countNanos / 1000);
+		assertEquals(summed, counted);
+		assertEquals(files * 1024L, counted);
+		assertTrue("the count should be quicker than the sum", countNanos < sumNanos);
+	}
+}
@@ -0,0 +1,178 @@
+/**
+ * Copyright (c) 2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.db.impl;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sakaiproject.db.api.SqlReaderFinishedException;
+import org.sakaiproject.event.api.UsageSessionService;
+import org.sakaiproject.thread_local.api.ThreadLocalManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class BasicSqlServiceStreamTest {
+
+	private static final String URL = "jdbc:hsqldb:mem:stream";
+
+	private Connection connection;
+	private AtomicInteger open = new AtomicInteger();
+	private BasicSqlService sqlService;
+
+	@Before
+	public void setUp() throws SQLException {
+		connection = DriverManager.getConnection(URL, "sa", "");
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("create table STREAM_TEST (ID INT NOT NULL, NAME VARCHAR(99))");
+			for (int i = 0; i < 2000; i++) {
+				statement.execute("insert into STREAM_TEST values (" + i + ", 'name" + i + "')");
+			}
+		}
+
+		// count the connections borrowed and not yet returned
+		DataSource dataSource = mock(DataSource.class);
+		when(dataSource.getConnection()).thenAnswer(invocation -> {
+			open.incrementAndGet();
+			return DriverManager.getConnection(URL, "sa", "");
+		});
+		ThreadLocalManager threadLocalManager = mock(ThreadLocalManager.class);
+		UsageSessionService usageSessionService = mock(UsageSessionService.class);
+		sqlService = new BasicSqlService() {
+			protected UsageSessionService usageSessionService() {
+				return usageSessionService;
+			}
+
+			protected ThreadLocalManager threadLocalManager() {
+				return threadLocalManager;
+			}
+
+			public void returnConnection(Connection conn) {
+				open.decrementAndGet();
+				super.returnConnection(conn);
+			}
+		};
+		sqlService.setDefaultDataSource(dataSource);
+		sqlService.setDatabaseBeans(Collections.singletonMap("hsqldb", new BasicSqlServiceSqlHSql()));
+		sqlService.init();
+	}
+
+	@After
+	public void tearDown() throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("shutdown");
+		}
+		connection.close();
+	}
+
+	private Integer readId(ResultSet result) {
+		try {
+			return result.getInt(1);
+		} catch (SQLException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	@Test
+	public void testStreamsEveryRecord() {
+		List<Integer> ids = new ArrayList<>();
+		int count = sqlService.dbStream("select ID from STREAM_TEST where ID >= ? order by ID", new Object[] {500}, 100,
+				this::readId, ids::add);
+
+		assertEquals(1500, count);
+		assertEquals(1500, ids.size());
+		assertEquals(Integer.valueOf(500), ids.get(0));
+		assertEquals(Integer.valueOf(1999), ids.get(1499));
+		assertEquals(0, open.get());
+	}
+
+	@Test
+	public void testStreamsFirstFieldWithoutReader() {
+		List<String> names = new ArrayList<>();
+		int count = sqlService.<String>dbStream("select NAME from STREAM_TEST where ID < 3 order by ID", null, 0, null, names::add);
+
+		assertEquals(3, count);
+		assertEquals("name2", names.get(2));
+	}
+
+	@Test
+	public void testReaderCanFinishEarly() {
+		List<Integer> ids = new ArrayList<>();
+		int count = sqlService.dbStream("select ID from STREAM_TEST order by ID", null, 10, result -> {
+			int id = readId(result);
+			if (id == 25) {
+				throw new SqlReaderFinishedException();
+			}
+			return id;
+		}, ids::add);
+
+		assertEquals(25, count);
+		assertEquals(0, open.get());
+	}
+
+	@Test
+	public void testConsumerCanUseTheService() {
+		// each record is looked up again on another connection while the stream is still open
+		List<String> names = new ArrayList<>();
+		sqlService.dbStream("select ID from STREAM_TEST where ID < 50", null, 10, this::readId,
+				id -> names.addAll(sqlService.dbRead("select NAME from STREAM_TEST where ID = ?", new Object[] {id}, null)));
+
+		assertEquals(50, names.size());
+		assertEquals(0, open.get());
+	}
+
+	@Test
+	public void testFailedQuery() {
+		int count = sqlService.dbStream("select MISSING from STREAM_TEST", null, 0, null, name -> {});
+
+		assertEquals(-1, count);
+		assertEquals(0, open.get());
+	}
+
+	@Test
+	public void testMySqlStreamsRecordByRecord() throws SQLException {
+		Connection conn = mock(Connection.class);
+		PreparedStatement pstmt = mock(PreparedStatement.class);
+		when(conn.prepareStatement(anyString(), anyInt(), anyInt())).thenReturn(pstmt);
+
+		new BasicSqlServiceSqlMySql().prepareStreamingStatement(conn, "select 1", 100);
+		verify(conn).prepareStatement("select 1", ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+		verify(pstmt).setFetchSize(Integer.MIN_VALUE);
+
+		// drivers which refuse it get the positive fetch size
+		doThrow(new SQLException("invalid fetch size")).when(pstmt).setFetchSize(Integer.MIN_VALUE);
+		new BasicSqlServiceSqlMySql().prepareStreamingStatement(conn, "select 1", 100);
+		verify(pstmt).setFetchSize(100);
+	}
+}
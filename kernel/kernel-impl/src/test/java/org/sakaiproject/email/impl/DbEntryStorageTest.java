@@ -0,0 +1,213 @@
+/**
+ * Copyright (c) 2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.email.impl;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import javax.sql.DataSource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sakaiproject.db.impl.BasicSqlService;
+import org.sakaiproject.db.impl.BasicSqlServiceSqlHSql;
+import org.sakaiproject.email.api.DigestMessage;
+import org.sakaiproject.event.api.UsageSessionService;
+import org.sakaiproject.thread_local.api.ThreadLocalManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Runs the digest log SQL against HSQLDB.
+ */
+public class DbEntryStorageTest {
+
+	private static final String URL = "jdbc:hsqldb:mem:digest";
+
+	private Connection connection;
+	private BasicSqlService sqlService;
+	private DbDigestService service;
+	private BaseDigestService.EntryStorage entries;
+	// run by the next delete, standing in for another server
+	private Runnable beforeDelete;
+
+	@Before
+	public void setUp() throws SQLException {
+		connection = DriverManager.getConnection(URL, "sa", "");
+
+		DataSource dataSource = mock(DataSource.class);
+		when(dataSource.getConnection()).thenAnswer(invocation -> DriverManager.getConnection(URL, "sa", ""));
+		ThreadLocalManager threadLocalManager = mock(ThreadLocalManager.class);
+		UsageSessionService usageSessionService = mock(UsageSessionService.class);
+		sqlService = new BasicSqlService() {
+			protected UsageSessionService usageSessionService() {
+				return usageSessionService;
+			}
+
+			protected ThreadLocalManager threadLocalManager() {
+				return threadLocalManager;
+			}
+
+			public int dbWriteCount(String sql, Object[] fields, String lastField, Connection callerConnection, boolean failQuiet) {
+				if (beforeDelete != null && sql.startsWith("DELETE")) {
+					beforeDelete.run();
+					beforeDelete = null;
+				}
+				return super.dbWriteCount(sql, fields, lastField, callerConnection, failQuiet);
+			}
+		};
+		sqlService.setDefaultDataSource(dataSource);
+		sqlService.setDatabaseBeans(Collections.singletonMap("hsqldb", new BasicSqlServiceSqlHSql()));
+		sqlService.init();
+		sqlService.ddl(getClass().getClassLoader(), "sakai_digest");
+
+		service = new DbDigestService();
+		service.setSqlService(sqlService);
+		entries = service.newEntryStorage();
+	}
+
+	@After
+	public void tearDown() throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("shutdown");
+		}
+		connection.close();
+	}
+
+	@Test
+	public void testMissingTableFallsBackToRecords() throws SQLException {
+		assertNotNull(entries);
+		execute("DROP TABLE SAKAI_DIGEST_ENTRY");
+		assertNull(service.newEntryStorage());
+	}
+
+	@Test
+	public void testAppendAndClaim() {
+		assertTrue(entries.append("p1", Arrays.asList(message("u1", "one"), message("u2", "two"), message("u1", "three"))));
+
+		assertEquals(Arrays.asList("p1"), entries.getPeriods());
+		assertEquals(Arrays.asList("u1", "u2"), sorted(entries.getRecipients("p1")));
+		assertEquals(Arrays.asList("one", "three"), subjects(entries.claim("u1", "p1")));
+
+		// claimed rows are gone, so nobody else sends them
+		assertTrue(entries.claim("u1", "p1").isEmpty());
+		assertEquals(Arrays.asList("u2"), entries.getRecipients("p1"));
+	}
+
+	@Test
+	public void testBatchedInsert() throws SQLException {
+		service.setBatchSize(2);
+		List<DigestMessage> messages = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			messages.add(message("u1", "m" + i));
+		}
+		assertTrue(entries.append("p1", messages));
+
+		assertEquals(5, count("SAKAI_DIGEST_ENTRY"));
+		assertEquals(Arrays.asList("m0", "m1", "m2", "m3", "m4"), subjects(entries.claim("u1", "p1")));
+	}
+
+	@Test
+	public void testFailedBatchRollsBackTheAppend() throws SQLException {
+		service.setBatchSize(2);
+		// the second batch fails on the missing recipient, after the first was inserted
+		assertFalse(entries.append("p1", Arrays.asList(message("u1", "one"), message("u1", "two"), message(null, "three"))));
+
+		assertEquals(0, count("SAKAI_DIGEST_ENTRY"));
+	}
+
+	@Test
+	public void testClaimRollsBackWhenRowsChange() throws SQLException {
+		assertTrue(entries.append("p1", Arrays.asList(message("u1", "one"), message("u1", "two"))));
+
+		// another message arrives between the read and the delete
+		beforeDelete = () -> assertTrue(entries.append("p1", Arrays.asList(message("u1", "late"))));
+		assertTrue(entries.claim("u1", "p1").isEmpty());
+
+		// nothing was deleted, so all three still go out in the next claim
+		assertEquals(3, count("SAKAI_DIGEST_ENTRY"));
+		assertEquals(Arrays.asList("one", "two", "late"), subjects(entries.claim("u1", "p1")));
+	}
+
+	@Test
+	public void testMoveDigestOnce() throws SQLException {
+		execute("INSERT INTO SAKAI_DIGEST (DIGEST_ID, XML) VALUES ('u1', '<digest/>')");
+		Map<String, List<DigestMessage>> ranges = new LinkedHashMap<>();
+		ranges.put("p1", Arrays.asList(message("u1", "one")));
+		ranges.put("p2", Arrays.asList(message("u1", "two"), message("u1", "three")));
+
+		assertTrue(entries.moveDigest("u1", ranges));
+		assertEquals(0, count("SAKAI_DIGEST"));
+		assertEquals(3, count("SAKAI_DIGEST_ENTRY"));
+
+		// a second server finds the record already moved and adds nothing
+		assertFalse(entries.moveDigest("u1", ranges));
+		assertEquals(3, count("SAKAI_DIGEST_ENTRY"));
+	}
+
+	@Test
+	public void testFailedMoveKeepsTheRecord() throws SQLException {
+		execute("INSERT INTO SAKAI_DIGEST (DIGEST_ID, XML) VALUES ('u1', '<digest/>')");
+		Map<String, List<DigestMessage>> ranges = new LinkedHashMap<>();
+		ranges.put("p1", Arrays.asList(message("u1", "one"), message(null, "two")));
+
+		assertFalse(entries.moveDigest("u1", ranges));
+		assertEquals(1, count("SAKAI_DIGEST"));
+		assertEquals(0, count("SAKAI_DIGEST_ENTRY"));
+	}
+
+	private DigestMessage message(String to, String subject) {
+		return new org.sakaiproject.email.impl.DigestMessage(to, subject, subject + " body");
+	}
+
+	private List<String> subjects(List<DigestMessage> messages) {
+		return messages.stream().map(DigestMessage::getSubject).collect(Collectors.toList());
+	}
+
+	private List<String> sorted(List<String> values) {
+		return values.stream().sorted().collect(Collectors.toList());
+	}
+
+	private void execute(String sql) throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			statement.execute(sql);
+		}
+	}
+
+	private int count(String table) throws SQLException {
+		try (Statement statement = connection.createStatement(); ResultSet result = statement.executeQuery("SELECT COUNT(*) FROM " + table)) {
+			result.next();
+			return result.getInt(1);
+		}
+	}
+}
@@ -0,0 +1,206 @@
+/**
+ * Copyright (c) 2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.email.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.sakaiproject.email.api.DigestMessage;
+import org.sakaiproject.event.api.EventTrackingService;
+import org.sakaiproject.time.api.Time;
+import org.sakaiproject.time.api.TimeRange;
+import org.sakaiproject.time.api.UserTimeService;
+import org.sakaiproject.time.impl.BasicTimeService;
+import org.sakaiproject.time.impl.UserLocaleServiceImpl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DigestLogTest {
+
+	private static final long DAY = 24L * 60L * 60L * 1000L;
+
+	private TestDigestService service;
+	private MemoryEntryStorage entries;
+	private BaseDigestService.Storage storage;
+
+	@Before
+	public void setUp() {
+		service = new TestDigestService();
+		BasicTimeService timeService = new BasicTimeService();
+		timeService.setUserLocaleService(mock(UserLocaleServiceImpl.class));
+		timeService.setUserTimeService(mock(UserTimeService.class));
+		timeService.init();
+		service.setTimeService(timeService);
+		service.setEventTrackingService(mock(EventTrackingService.class));
+		entries = new MemoryEntryStorage();
+		storage = mock(BaseDigestService.Storage.class);
+		when(storage.getAll()).thenReturn(new ArrayList());
+		service.m_storage = storage;
+		service.m_entryStorage = entries;
+	}
+
+	@Test
+	public void testMessagesAreLoggedAndSentPerRecipient() {
+		service.digest("u1", "first", "one");
+		service.digest("u2", "second", "two");
+		service.digest("u1", "third", "three");
+		service.processQueue();
+
+		String period = service.computeRange(null).toString();
+		assertEquals(Arrays.asList(period), entries.getPeriods());
+		assertEquals(Arrays.asList("u1", "u2"), entries.getRecipients(period));
+		assertTrue(service.m_digestQueue.isEmpty());
+
+		// nothing goes out during the period itself
+		service.sendDigests();
+		assertTrue(service.sent.isEmpty());
+
+		service.day++;
+		service.sendDigests();
+		assertEquals(2, service.sent.size());
+		assertEquals(Arrays.asList("first", "third"), service.sent.get("u1"));
+		assertEquals(Arrays.asList("second"), service.sent.get("u2"));
+		assertTrue(entries.getPeriods().isEmpty());
+	}
+
+	@Test
+	public void testFailedAppendIsRetried() {
+		entries.failing = true;
+		service.digest("u1", "first", "one");
+		service.processQueue();
+		assertEquals(1, service.m_digestQueue.size());
+
+		entries.failing = false;
+		service.processQueue();
+		assertTrue(service.m_digestQueue.isEmpty());
+		assertEquals(1, entries.appends);
+	}
+
+	@Test
+	public void testDigestClaimedElsewhereIsNotSent() {
+		service.digest("u1", "first", "one");
+		service.processQueue();
+		service.day++;
+
+		// another server takes the messages between listing the recipients and claiming them
+		entries.stolen = true;
+		service.sendDigests();
+		assertTrue(service.sent.isEmpty());
+	}
+
+	@Test
+	public void testDigestRecordsAreMigrated() throws Exception {
+		BaseDigestService.BaseDigest digest = service.new BaseDigest("u1");
+		digest.activate();
+		digest.add(new org.sakaiproject.email.impl.DigestMessage("u1", "old", "message"));
+		String period = service.computeRange(null).toString();
+		when(storage.getAll()).thenReturn(new ArrayList(Arrays.asList(digest)));
+		entries.records.add("u1");
+
+		// another server starting at the same time reads the same record
+		TestDigestService other = new TestDigestService();
+		other.setTimeService(service.timeService);
+		other.setEventTrackingService(mock(EventTrackingService.class));
+		other.m_storage = storage;
+		other.m_entryStorage = entries;
+
+		service.migrateDigests();
+		other.migrateDigests();
+		assertEquals(Arrays.asList("u1"), entries.getRecipients(period));
+		assertEquals(1, entries.appends);
+		assertTrue(entries.records.isEmpty());
+
+		// only once per start up
+		service.migrateDigests();
+		verify(storage, times(2)).getAll();
+	}
+
+	private static class TestDigestService extends BaseDigestService {
+
+		private long day = 20000;
+		private final Map<String, List<String>> sent = new LinkedHashMap<>();
+
+		@Override
+		protected Storage newStorage() {
+			return null;
+		}
+
+		@Override
+		protected TimeRange computeRange(Time time) {
+			return timeService.newTimeRange(timeService.newTime(day * DAY), timeService.newTime((day + 1) * DAY), true, false);
+		}
+
+		@Override
+		protected void send(String id, List msgs, TimeRange period) {
+			sent.put(id, ((List<DigestMessage>) msgs).stream().map(DigestMessage::getSubject).collect(Collectors.toList()));
+		}
+	}
+
+	private static class MemoryEntryStorage implements BaseDigestService.EntryStorage {
+
+		private final Map<String, Map<String, List<DigestMessage>>> periods = new LinkedHashMap<>();
+		private boolean failing = false;
+		private boolean stolen = false;
+		private int appends = 0;
+		private final Set<String> records = new HashSet<>();
+
+		public boolean append(String period, List messages) {
+			if (failing) return false;
+			appends++;
+			for (Object message : messages) {
+				DigestMessage msg = (DigestMessage) message;
+				periods.computeIfAbsent(period, p -> new LinkedHashMap<>()).computeIfAbsent(msg.getTo(), t -> new ArrayList<>()).add(msg);
+			}
+			return true;
+		}
+
+		public List<String> getPeriods() {
+			return new ArrayList<>(periods.keySet());
+		}
+
+		public List<String> getRecipients(String period) {
+			return new ArrayList<>(periods.getOrDefault(period, new LinkedHashMap<>()).keySet());
+		}
+
+		public List<DigestMessage> claim(String id, String period) {
+			Map<String, List<DigestMessage>> recipients = periods.get(period);
+			List<DigestMessage> msgs = recipients.remove(id);
+			if (recipients.isEmpty()) periods.remove(period);
+			return stolen ? new ArrayList<>() : msgs;
+		}
+
+		public boolean moveDigest(String id, Map ranges) {
+			if (!records.remove(id)) return false;
+			for (Object entry : ranges.entrySet()) {
+				append((String) ((Map.Entry) entry).getKey(), (List) ((Map.Entry) entry).getValue());
+			}
+			return true;
+		}
+	}
+}
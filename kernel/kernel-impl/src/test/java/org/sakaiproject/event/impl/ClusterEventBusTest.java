@@ -0,0 +1,153 @@
+/**
+ * Copyright (c) 2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.event.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+
+import org.apache.ignite.Ignite;
+import org.apache.ignite.Ignition;
+import org.apache.ignite.configuration.IgniteConfiguration;
+import org.apache.ignite.spi.discovery.tcp.TcpDiscoverySpi;
+import org.apache.ignite.spi.discovery.tcp.ipfinder.vm.TcpDiscoveryVmIpFinder;
+import org.junit.After;
+import org.junit.Test;
+import org.sakaiproject.event.api.Event;
+import org.sakaiproject.event.api.SimpleEvent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Runs Ignite nodes in this JVM, each with its own event bus, to check events reach every other node.
+ */
+public class ClusterEventBusTest {
+
+	protected List<Ignite> nodes = new ArrayList<>();
+	protected List<ClusterEventBus> buses = new ArrayList<>();
+
+	@After
+	public void tearDown() {
+		buses.forEach(ClusterEventBus::stop);
+		nodes.forEach(Ignite::close);
+	}
+
+	@Test
+	public void testGapDetection() {
+		List<Long> gaps = new ArrayList<>();
+		AtomicLong received = new AtomicLong();
+		ClusterEventBus bus = new ClusterEventBus(null, "local", new ClusterEventBus.Receiver() {
+			public void receive(Event event) {
+				received.incrementAndGet();
+			}
+
+			public void gap(String sender, long expected, long seq) {
+				gaps.add(expected);
+			}
+		});
+
+		SimpleEvent event = new SimpleEvent(newEvent("/gap"), "remote");
+		bus.onMessage(new ClusterEventBus.ClusterEventMessage("remote", 1L, 1, event));
+		bus.onMessage(new ClusterEventBus.ClusterEventMessage("remote", 1L, 2, event));
+		// duplicate
+		bus.onMessage(new ClusterEventBus.ClusterEventMessage("remote", 1L, 2, event));
+		// skips 3 and 4
+		bus.onMessage(new ClusterEventBus.ClusterEventMessage("remote", 1L, 5, event));
+		// our own events are ignored
+		bus.onMessage(new ClusterEventBus.ClusterEventMessage("local", 1L, 1, event));
+		// a restarted sender starts again from 1
+		bus.onMessage(new ClusterEventBus.ClusterEventMessage("remote", 2L, 1, event));
+
+		assertEquals(4, received.get());
+		assertEquals(Collections.singletonList(3L), gaps);
+	}
+
+	@Test
+	public void testPropagation() throws Exception {
+		List<List<String>> received = new ArrayList<>();
+		AtomicLong gaps = new AtomicLong();
+		CountDownLatch latch = new CountDownLatch(10);
+		startBuses(2, i -> {
+			List<String> resources = Collections.synchronizedList(new ArrayList<>());
+			received.add(resources);
+			return new ClusterEventBus.Receiver() {
+				public void receive(Event event) {
+					resources.add(event.getResource());
+					latch.countDown();
+				}
+
+				public void gap(String sender, long expected, long seq) {
+					gaps.incrementAndGet();
+				}
+			};
+		});
+
+		List<String> sent = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			Event event = newEvent("/content/group/site/file" + i);
+			sent.add(event.getResource());
+			buses.get(0).publish(event);
+		}
+
+		assertTrue("Events did not reach the other node", latch.await(30, TimeUnit.SECONDS));
+		assertEquals(sent, received.get(1));
+		assertTrue("A node should not receive its own events", received.get(0).isEmpty());
+		assertEquals(0, gaps.get());
+		assertEquals(10, buses.get(0).getSentCount());
+	}
+
+	/**
+	 * Start Ignite nodes in this JVM, each with an event bus.
+	 * 
+	 * @param count
+	 *        The number of nodes.
+	 * @param receivers
+	 *        Makes the receiver of each node, from its index.
+	 */
+	protected void startBuses(int count, IntFunction<ClusterEventBus.Receiver> receivers) {
+		TcpDiscoveryVmIpFinder ipFinder = new TcpDiscoveryVmIpFinder(true);
+		ipFinder.setAddresses(Collections.singletonList("127.0.0.1:47500..47509"));
+
+		for (int i = 0; i < count; i++) {
+			IgniteConfiguration configuration = new IgniteConfiguration()
+					.setIgniteInstanceName("event-bus-" + i)
+					.setLocalHost("127.0.0.1")
+					.setDiscoverySpi(new TcpDiscoverySpi().setIpFinder(ipFinder));
+			nodes.add(Ignition.start(configuration));
+
+			ClusterEventBus bus = new ClusterEventBus(nodes.get(i), "server-" + i, receivers.apply(i));
+			bus.start();
+			buses.add(bus);
+		}
+	}
+
+	protected Event newEvent(String resource) {
+		Event event = mock(Event.class);
+		when(event.getEvent()).thenReturn("content.read");
+		when(event.getResource()).thenReturn(resource);
+		when(event.getSessionId()).thenReturn("session");
+		when(event.getEventTime()).thenReturn(new Date());
+		return event;
+	}
+}
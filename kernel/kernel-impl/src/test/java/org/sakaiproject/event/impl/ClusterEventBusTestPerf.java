@@ -0,0 +1,77 @@
+/**
+ * Copyright (c) 2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.event.impl;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+import org.sakaiproject.event.api.Event;
+
+import lombok.extern.slf4j.Slf4j;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures how long events take to reach the other nodes of a three node cluster. Not run by the build, run it by hand
+ * with -Dtest=ClusterEventBusTestPerf.
+ */
+@Slf4j
+public class ClusterEventBusTestPerf extends ClusterEventBusTest {
+
+	private static final int NODES = 3;
+	private static final int EVENTS = 1000;
+
+	@Test
+	public void testPropagationLatency() throws Exception {
+		Map<String, Long> sentAt = new ConcurrentHashMap<>();
+		AtomicLong totalLatency = new AtomicLong();
+		AtomicLong maxLatency = new AtomicLong();
+		AtomicLong gaps = new AtomicLong();
+		CountDownLatch latch = new CountDownLatch(EVENTS * (NODES - 1));
+
+		startBuses(NODES, i -> new ClusterEventBus.Receiver() {
+			public void receive(Event event) {
+				long latency = System.nanoTime() - sentAt.get(event.getResource());
+				totalLatency.addAndGet(latency);
+				maxLatency.accumulateAndGet(latency, Math::max);
+				latch.countDown();
+			}
+
+			public void gap(String sender, long expected, long received) {
+				gaps.incrementAndGet();
+			}
+		});
+
+		for (int i = 0; i < EVENTS; i++) {
+			Event event = newEvent("/content/group/site/file" + i);
+			sentAt.put(event.getResource(), System.nanoTime());
+			buses.get(0).publish(event);
+		}
+
+		assertTrue("Events did not reach all nodes", latch.await(60, TimeUnit.SECONDS));
+		assertEquals(0, gaps.get());
+		assertEquals(EVENTS, buses.get(0).getSentCount());
+
+		long received = (long) EVENTS * (NODES - 1);
+		log.info("{} events to {} nodes, average latency {} us, max latency {} us", EVENTS, NODES - 1,
+				TimeUnit.NANOSECONDS.toMicros(totalLatency.get() / received), TimeUnit.NANOSECONDS.toMicros(maxLatency.get()));
+	}
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright (c) 2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.event.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.sakaiproject.event.api.Event;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class EventBatchWriterTest {
+
+	@Test
+	public void testFullBatchIsWrittenWithoutWaiting() throws InterruptedException {
+		List<Integer> sizes = Collections.synchronizedList(new ArrayList<>());
+		CountDownLatch written = new CountDownLatch(1);
+		EventBatchWriter writer = new EventBatchWriter(batch -> {
+			sizes.add(batch.size());
+			written.countDown();
+		}, 10, TimeUnit.HOURS.toMillis(1));
+		writer.start();
+		for (int i = 0; i < 10; i++) {
+			writer.add(newEvent(i));
+		}
+		assertTrue(written.await(5, TimeUnit.SECONDS));
+		assertEquals(Collections.singletonList(10), sizes);
+		writer.stop();
+	}
+
+	@Test
+	public void testPartialBatchIsWrittenAfterDelay() throws InterruptedException {
+		CountDownLatch written = new CountDownLatch(3);
+		EventBatchWriter writer = new EventBatchWriter(batch -> batch.forEach(e -> written.countDown()), 100, 50);
+		writer.start();
+		for (int i = 0; i < 3; i++) {
+			writer.add(newEvent(i));
+		}
+		assertTrue(written.await(5, TimeUnit.SECONDS));
+		assertEquals(0, writer.getPending());
+		writer.stop();
+	}
+
+	@Test
+	public void testStopWritesWaitingEvents() {
+		List<Event> events = new ArrayList<>();
+		EventBatchWriter writer = new EventBatchWriter(events::addAll, 4, TimeUnit.HOURS.toMillis(1));
+		// not started, so nothing is written until stop
+		for (int i = 0; i < 10; i++) {
+			writer.add(newEvent(i));
+		}
+		writer.stop();
+		assertEquals(10, events.size());
+		assertEquals(3, writer.getBatchCount());
+	}
+
+	protected Event newEvent(int i) {
+		Event event = mock(Event.class);
+		when(event.getEvent()).thenReturn("content.read");
+		when(event.getResource()).thenReturn("/content/group/site/file" + i);
+		when(event.getContext()).thenReturn("site");
+		when(event.getSessionId()).thenReturn("session");
+		return event;
+	}
+}
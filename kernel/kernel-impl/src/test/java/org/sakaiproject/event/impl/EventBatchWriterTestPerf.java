@@ -0,0 +1,145 @@
+/**
+ * Copyright (c) 2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.event.impl;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sakaiproject.event.api.Event;
+
+import lombok.extern.slf4j.Slf4j;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares writing each event in its own transaction with the group committed batches, on an in memory database. Not run
+ * by the build, run it by hand with -Dtest=EventBatchWriterTestPerf.
+ */
+@Slf4j
+public class EventBatchWriterTestPerf extends EventBatchWriterTest {
+
+	private static final String INSERT = "insert into SAKAI_EVENT (EVENT_ID,EVENT_DATE,EVENT,REF,SESSION_ID,EVENT_CODE,CONTEXT) "
+			+ "values (NEXT VALUE FOR SAKAI_EVENT_SEQ, ?, ?, ?, ?, ?, ?)";
+
+	private Connection connection;
+
+	@Before
+	public void setUp() throws SQLException {
+		connection = DriverManager.getConnection("jdbc:hsqldb:mem:events", "sa", "");
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("create table SAKAI_EVENT (EVENT_ID BIGINT, EVENT_DATE TIMESTAMP, EVENT VARCHAR(32), REF VARCHAR(255), "
+					+ "CONTEXT VARCHAR(255), SESSION_ID VARCHAR(163), EVENT_CODE VARCHAR(1))");
+			statement.execute("create sequence SAKAI_EVENT_SEQ");
+		}
+		connection.setAutoCommit(false);
+	}
+
+	@After
+	public void tearDown() throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("shutdown");
+		}
+		connection.close();
+	}
+
+	@Test
+	public void testThroughput() throws Exception {
+		int threads = 8;
+		int perThread = 2500;
+
+		long start = System.nanoTime();
+		post(threads, perThread, event -> {
+			synchronized (connection) {
+				insert(Collections.singletonList(event));
+			}
+		});
+		long single = System.nanoTime() - start;
+		assertEquals(threads * perThread, count());
+
+		EventBatchWriter writer = new EventBatchWriter(this::insert, 500, 1000);
+		writer.start();
+		start = System.nanoTime();
+		post(threads, perThread, writer::add);
+		writer.stop();
+		long batched = System.nanoTime() - start;
+		assertEquals(2 * threads * perThread, count());
+
+		log.info("{} events, single: {} rows/s, batched: {} rows/s in {} batches", threads * perThread,
+				rate(threads * perThread, single), rate(threads * perThread, batched), writer.getBatchCount());
+	}
+
+	private void post(int threads, int perThread, Consumer<Event> poster) throws InterruptedException {
+		// mocks are slow to create, so reuse a few
+		Event[] events = new Event[100];
+		for (int i = 0; i < events.length; i++) {
+			events[i] = newEvent(i);
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		for (int t = 0; t < threads; t++) {
+			executor.execute(() -> {
+				for (int i = 0; i < perThread; i++) {
+					poster.accept(events[i % events.length]);
+				}
+			});
+		}
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(2, TimeUnit.MINUTES));
+	}
+
+	private void insert(List<Event> events) {
+		try (PreparedStatement statement = connection.prepareStatement(INSERT)) {
+			for (Event event : events) {
+				statement.setTimestamp(1, new Timestamp(System.currentTimeMillis()));
+				statement.setString(2, event.getEvent());
+				statement.setString(3, event.getResource());
+				statement.setString(4, event.getSessionId());
+				statement.setString(5, "a");
+				statement.setString(6, event.getContext());
+				statement.addBatch();
+			}
+			statement.executeBatch();
+			connection.commit();
+		} catch (SQLException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private int count() throws SQLException {
+		try (Statement statement = connection.createStatement(); ResultSet rs = statement.executeQuery("select count(*) from SAKAI_EVENT")) {
+			rs.next();
+			return rs.getInt(1);
+		}
+	}
+
+	private long rate(int rows, long nanos) {
+		return rows * TimeUnit.SECONDS.toNanos(1) / Math.max(nanos, 1);
+	}
+}
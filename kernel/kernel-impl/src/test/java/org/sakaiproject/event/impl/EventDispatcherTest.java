@@ -0,0 +1,193 @@
+/**
+ * Copyright (c) 2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.event.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sakaiproject.component.api.ServerConfigurationService;
+import org.sakaiproject.thread_local.api.ThreadLocalManager;
+import org.sakaiproject.thread_local.impl.ThreadLocalComponent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class EventDispatcherTest {
+
+	private ServerConfigurationService serverConfigurationService;
+	private ThreadLocalManager threadLocalManager = new ThreadLocalComponent();
+	private EventDispatcher dispatcher;
+	private Observable observable;
+
+	@Before
+	public void setUp() {
+		serverConfigurationService = mock(ServerConfigurationService.class);
+		when(serverConfigurationService.getBoolean(EventDispatcher.PROP_ASYNC, false)).thenReturn(true);
+		when(serverConfigurationService.getInt(EventDispatcher.PROP_QUEUE_SIZE, 10000)).thenReturn(2);
+		when(serverConfigurationService.getString(EventDispatcher.PROP_POLICY, "CALLER_RUNS")).thenReturn("CALLER_RUNS");
+		when(serverConfigurationService.getLong(EventDispatcher.PROP_BLOCK_TIMEOUT, 1000L)).thenReturn(10L);
+		dispatcher = new EventDispatcher();
+		dispatcher.setServerConfigurationService(serverConfigurationService);
+		dispatcher.setThreadLocalManager(threadLocalManager);
+		dispatcher.init();
+		observable = new Observable();
+	}
+
+	@After
+	public void tearDown() {
+		dispatcher.destroy();
+	}
+
+	@Test
+	public void testDisabledReturnsObserver() {
+		when(serverConfigurationService.getBoolean(EventDispatcher.PROP_ASYNC, false)).thenReturn(false);
+		dispatcher.init();
+		Observer observer = (o, arg) -> {};
+		assertSame(observer, dispatcher.register(observer));
+		assertSame(observer, dispatcher.release(observer));
+	}
+
+	@Test
+	public void testSyncPolicyReturnsObserver() {
+		Observer observer = (o, arg) -> {};
+		when(serverConfigurationService.getString(EventDispatcher.PROP_POLICY + "." + observer.getClass().getName(), null)).thenReturn("sync");
+		assertSame(observer, dispatcher.register(observer));
+		assertEquals(0, dispatcher.getObserverCount());
+	}
+
+	@Test
+	public void testRegisterIsStable() {
+		Observer observer = (o, arg) -> {};
+		Observer channel = dispatcher.register(observer);
+		assertNotSame(observer, channel);
+		assertSame(channel, dispatcher.register(observer));
+		assertSame(channel, dispatcher.release(observer));
+		assertSame(observer, dispatcher.release(observer));
+	}
+
+	@Test
+	public void testDeliveredOffPostingThread() throws InterruptedException {
+		CountDownLatch latch = new CountDownLatch(3);
+		Thread poster = Thread.currentThread();
+		AtomicInteger onPoster = new AtomicInteger();
+		Observer observer = (o, arg) -> {
+			if (Thread.currentThread() == poster) onPoster.incrementAndGet();
+			latch.countDown();
+		};
+		Observer channel = dispatcher.register(observer);
+		for (int i = 0; i < 3; i++) {
+			channel.update(observable, "event" + i);
+			// give the worker a chance so we don't fill the tiny queue
+			Thread.sleep(20);
+		}
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		assertEquals(0, onPoster.get());
+		assertEquals(3L, (long) dispatcher.getDeliveredCounts().values().iterator().next());
+	}
+
+	@Test
+	public void testThreadLocalsClearedAfterEachEvent() throws InterruptedException {
+		CountDownLatch latch = new CountDownLatch(2);
+		List<Object> seen = Collections.synchronizedList(new ArrayList<>());
+		Observer observer = (o, arg) -> {
+			// like BaseMessage.findMessage, cache what was read in a thread local
+			seen.add(threadLocalManager.get("cached"));
+			threadLocalManager.set("cached", arg);
+			latch.countDown();
+		};
+		threadLocalManager.set("cached", "poster");
+		Observer channel = dispatcher.register(observer);
+		channel.update(observable, "event0");
+		Thread.sleep(20);
+		channel.update(observable, "event1");
+
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		assertEquals(Arrays.asList(null, null), seen);
+		assertEquals("poster", threadLocalManager.get("cached"));
+	}
+
+	@Test
+	public void testDropNewestWhenFull() throws InterruptedException {
+		CountDownLatch blocked = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		Observer observer = (o, arg) -> {
+			blocked.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		};
+		when(serverConfigurationService.getString(EventDispatcher.PROP_POLICY + "." + observer.getClass().getName(), null)).thenReturn("DROP_NEWEST");
+		Observer channel = dispatcher.register(observer);
+
+		// the first event occupies the worker, the next two fill the queue, the last is dropped
+		channel.update(observable, "event0");
+		assertTrue(blocked.await(5, TimeUnit.SECONDS));
+		channel.update(observable, "event1");
+		channel.update(observable, "event2");
+		channel.update(observable, "event3");
+
+		assertEquals(1L, dispatcher.getTotalDropped());
+		assertEquals(2, (int) dispatcher.getQueueDepths().values().iterator().next());
+		release.countDown();
+	}
+
+	@Test
+	public void testCallerRunsWhenFull() throws InterruptedException {
+		CountDownLatch blocked = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		Thread poster = Thread.currentThread();
+		AtomicInteger onPoster = new AtomicInteger();
+		Observer observer = (o, arg) -> {
+			if (Thread.currentThread() == poster) {
+				onPoster.incrementAndGet();
+				return;
+			}
+			blocked.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		};
+		Observer channel = dispatcher.register(observer);
+
+		channel.update(observable, "event0");
+		assertTrue(blocked.await(5, TimeUnit.SECONDS));
+		channel.update(observable, "event1");
+		channel.update(observable, "event2");
+		channel.update(observable, "event3");
+
+		assertEquals(1, onPoster.get());
+		assertEquals(0L, dispatcher.getTotalDropped());
+		release.countDown();
+	}
+}
@@ -0,0 +1,236 @@
+/**
+ * Copyright (c) 2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.event.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Vector;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.sakaiproject.event.api.Event;
+import org.sakaiproject.event.api.Notification;
+import org.sakaiproject.event.api.NotificationAction;
+import org.sakaiproject.event.api.NotificationService;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class NotificationIndexTest {
+
+	static final String[] FUNCTIONS = { "content.new", "content.revise", "annc.new", "asn.new.assignment", "forums.new" };
+
+	private NotificationServiceTest service;
+	private BaseNotificationService.Storage storage;
+
+	@Before
+	public void setUp() {
+		service = new NotificationServiceTest();
+		storage = mock(BaseNotificationService.Storage.class);
+		service.m_storage = storage;
+		service.m_transients = new Vector();
+		service.m_relativeAccessPoint = NotificationService.REFERENCE_ROOT;
+	}
+
+	@Test
+	public void testMatchesFullScan() {
+		Random random = new Random(42);
+		List<Notification> notifications = randomNotifications(service, random, 2000);
+		Map<String, NotificationIndex> index = NotificationIndex.byFunction(notifications);
+
+		for (int i = 0; i < 500; i++) {
+			String function = FUNCTIONS[random.nextInt(FUNCTIONS.length)];
+			String resource = randomResource(random);
+			assertEquals(scan(service, notifications, function, resource), index.get(function).match(resource));
+		}
+	}
+
+	@Test
+	public void testSplitFilters() {
+		Notification site = notification("site", "content.new", "/content/group/abc");
+		Notification longer = notification("longer", "content.new", "/content/group/abcdef/");
+		Notification other = notification("other", "content.new", "/content/group/abd");
+		Notification twice = notification("twice", "content.new", "/content/");
+		((BaseNotificationService.BaseNotificationEdit) twice).addFunction("content.new");
+		Map<String, NotificationIndex> index = NotificationIndex.byFunction(Arrays.asList(site, longer, other, twice));
+		NotificationIndex content = index.get("content.new");
+
+		assertEquals(Arrays.asList(site, longer, twice), content.match("/content/group/abcdef/file.txt"));
+		assertEquals(Arrays.asList(site, twice), content.match("/content/group/abc"));
+		assertEquals(Collections.singletonList(twice), content.match("/content/group/ab"));
+		assertEquals(Collections.emptyList(), content.match(null));
+		assertNull(index.get("content.revise"));
+	}
+
+	@Test
+	public void testUpdateKeepsTheIndexUpToDate() {
+		AtomicInteger notified = new AtomicInteger();
+		List<Notification> stored = new ArrayList<>();
+		stored.add(notification("site", "content.new", "/content/group/abc/", counting(notified)));
+		stored.add(notification("annc", "annc.new", "/announcement/msg/abc/", counting(notified)));
+		when(storage.getAll()).thenAnswer(i -> new ArrayList<>(stored));
+
+		Event event = event("content.new", "/content/group/abc/file.txt");
+		service.update(null, event);
+		service.update(null, event);
+		assertEquals(2, notified.get());
+		verify(storage, times(1)).getAll();
+		NotificationIndex annc = service.getIndex("annc.new");
+
+		// a notification added on another server only replaces the index of its function
+		Notification other = notification("other", "content.new", "/content/", counting(notified));
+		when(storage.get("other")).thenReturn(other);
+		service.new NotificationIndexObserver().update(null, event(NotificationService.SECURE_ADD_NOTIFICATION, "/notification/other"));
+		service.update(null, event);
+		assertEquals(4, notified.get());
+		assertSame(annc, service.getIndex("annc.new"));
+
+		// moved to another function, it leaves the old one
+		BaseNotificationService.BaseNotificationEdit moved = service.new BaseNotificationEdit("other");
+		moved.setFunction("annc.new");
+		moved.setResourceFilter("/announcement/");
+		when(storage.get("other")).thenReturn(moved);
+		service.new NotificationIndexObserver().update(null, event(NotificationService.SECURE_UPDATE_NOTIFICATION, "/notification/other"));
+		service.update(null, event);
+		assertEquals(5, notified.get());
+		assertNotSame(annc, service.getIndex("annc.new"));
+		assertEquals(2, service.getIndex("annc.new").size());
+
+		// and once removed it goes from every function
+		when(storage.get("other")).thenReturn(null);
+		service.new NotificationIndexObserver().update(null, event(NotificationService.SECURE_REMOVE_NOTIFICATION, "/notification/other"));
+		assertEquals(1, service.getIndex("annc.new").size());
+
+		// other events leave it alone
+		service.new NotificationIndexObserver().update(null, event("content.read", "/content/group/abc/file.txt"));
+		service.update(null, event);
+		assertEquals(6, notified.get());
+		verify(storage, times(1)).getAll();
+	}
+
+	@Test
+	public void testConcurrentEventsBuildTheIndexOnce() throws Exception {
+		CountDownLatch reading = new CountDownLatch(1);
+		when(storage.getAll()).thenAnswer(i -> {
+			reading.countDown();
+			Thread.sleep(200);
+			return new ArrayList<>(Collections.singletonList(notification("site", "content.new", "/content/")));
+		});
+
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<NotificationIndex>> futures = new ArrayList<>();
+			for (int i = 0; i < 8; i++) {
+				futures.add(executor.submit(() -> service.getIndex("content.new")));
+			}
+			reading.await(5, TimeUnit.SECONDS);
+			NotificationIndex first = futures.get(0).get(5, TimeUnit.SECONDS);
+			for (Future<NotificationIndex> future : futures) {
+				assertSame(first, future.get(5, TimeUnit.SECONDS));
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		verify(storage, times(1)).getAll();
+	}
+
+	private Notification notification(String id, String function, String filter) {
+		return notification(service, id, function, filter, null);
+	}
+
+	private Notification notification(String id, String function, String filter, NotificationAction action) {
+		return notification(service, id, function, filter, action);
+	}
+
+	static Notification notification(BaseNotificationService service, String id, String function, String filter, NotificationAction action) {
+		BaseNotificationService.BaseNotificationEdit notification = service.new BaseNotificationEdit(id);
+		notification.setFunction(function);
+		notification.setResourceFilter(filter);
+		notification.setAction(action);
+		return notification;
+	}
+
+	static List<Notification> randomNotifications(BaseNotificationService service, Random random, int count) {
+		List<Notification> notifications = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			notifications.add(notification(service, "n" + i, FUNCTIONS[random.nextInt(FUNCTIONS.length)], randomFilter(random), null));
+		}
+		for (String function : FUNCTIONS) {
+			notifications.add(notification(service, "all " + function, function, null, null));
+		}
+		notifications.add(notification(service, "empty", "content.new", "", null));
+		return notifications;
+	}
+
+	static List<Notification> scan(BaseNotificationService service, List<Notification> notifications, String function, String resource) {
+		List<Notification> matched = new ArrayList<>();
+		for (Notification notification : notifications) {
+			if (notification.containsFunction(function) && service.match(notification.getResourceFilter(), resource)) {
+				matched.add(notification);
+			}
+		}
+		return matched;
+	}
+
+	static String randomResource(Random random) {
+		return randomFilter(random) + (random.nextBoolean() ? "" : "file" + random.nextInt(10) + ".txt");
+	}
+
+	private NotificationAction counting(AtomicInteger notified) {
+		NotificationAction action = mock(NotificationAction.class);
+		when(action.getClone()).thenReturn(action);
+		doAnswer(i -> notified.incrementAndGet()).when(action).notify(any(), any());
+		return action;
+	}
+
+	private Event event(String function, String resource) {
+		Event event = mock(Event.class);
+		when(event.getEvent()).thenReturn(function);
+		when(event.getResource()).thenReturn(resource);
+		return event;
+	}
+
+	private static String randomFilter(Random random) {
+		switch (random.nextInt(4)) {
+			case 0:
+				return "/content/group/site" + random.nextInt(20000) + "/";
+			case 1:
+				return "/content/group/site" + random.nextInt(20000) + "/folder" + random.nextInt(5) + "/";
+			case 2:
+				return "/announcement/msg/site" + random.nextInt(20000) + "/main/";
+			default:
+				return "/assignment/a/site" + random.nextInt(20000);
+		}
+	}
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright (c) 2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.event.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.junit.Test;
+import org.sakaiproject.event.api.Notification;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Times matching events against the notification index and against a scan of every notification, over 100k
+ * notifications. Not run by the build, run it by hand with -Dtest=NotificationIndexTestPerf.
+ */
+@Slf4j
+public class NotificationIndexTestPerf {
+
+	@Test
+	public void testIndexAgainstFullScan() {
+		NotificationServiceTest service = new NotificationServiceTest();
+		Random random = new Random(42);
+		List<Notification> notifications = NotificationIndexTest.randomNotifications(service, random, 100000);
+
+		long start = System.nanoTime();
+		Map<String, NotificationIndex> index = NotificationIndex.byFunction(notifications);
+		log.info("Indexed {} notifications in {}ms", notifications.size(), (System.nanoTime() - start) / 1000000);
+
+		List<String> resources = new ArrayList<>();
+		for (int i = 0; i < 2000; i++) {
+			resources.add(NotificationIndexTest.randomResource(random));
+		}
+
+		long scanned = 0;
+		long indexed = 0;
+		for (String resource : resources) {
+			String function = NotificationIndexTest.FUNCTIONS[random.nextInt(NotificationIndexTest.FUNCTIONS.length)];
+
+			start = System.nanoTime();
+			List<Notification> expected = NotificationIndexTest.scan(service, notifications, function, resource);
+			scanned += System.nanoTime() - start;
+
+			start = System.nanoTime();
+			List<Notification> found = index.get(function).match(resource);
+			indexed += System.nanoTime() - start;
+
+			assertEquals(expected, found);
+		}
+		log.info("Per event matching over {} notifications: scan {}us, index {}us", notifications.size(),
+				scanned / resources.size() / 1000, indexed / resources.size() / 1000);
+		assertTrue(indexed < scanned);
+	}
+}
@@ -0,0 +1,289 @@
+/**
+ * Copyright (c) 2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.messaging.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.query.Query;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Answers;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.sakaiproject.component.api.ServerConfigurationService;
+import org.sakaiproject.event.api.Event;
+import org.sakaiproject.event.api.EventTrackingService;
+import org.sakaiproject.ignite.EagerIgniteSpringBean;
+import org.sakaiproject.memory.api.Cache;
+import org.sakaiproject.memory.api.MemoryService;
+import org.sakaiproject.messaging.api.BullhornAlert;
+import org.sakaiproject.messaging.api.BullhornData;
+import org.sakaiproject.messaging.api.BullhornHandler;
+import org.sakaiproject.site.api.Site;
+import org.sakaiproject.site.api.SiteService;
+import org.sakaiproject.thread_local.api.ThreadLocalManager;
+import org.sakaiproject.thread_local.impl.ThreadLocalComponent;
+import org.sakaiproject.tool.api.Session;
+import org.sakaiproject.tool.api.SessionManager;
+import org.sakaiproject.user.api.UserDirectoryService;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+@RunWith(MockitoJUnitRunner.Silent.class)
+public class MessagingServiceImplTest {
+
+    private static final String EVENT = "test.alert";
+    private static final String REMOVE_EVENT = "test.remove";
+    private static final String SITE_ID = "site1";
+    private static final int RECIPIENTS = 2000;
+
+    @Mock(answer = Answers.RETURNS_DEEP_STUBS)
+    private EagerIgniteSpringBean ignite;
+    @Mock
+    private EventTrackingService eventTrackingService;
+    @Mock
+    private MemoryService memoryService;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+    @Mock
+    private UserDirectoryService userDirectoryService;
+    @Mock
+    private ServerConfigurationService serverConfigurationService;
+    @Mock
+    private SiteService siteService;
+    @Mock
+    private SessionFactory sessionFactory;
+    @Mock
+    private SessionManager sessionManager;
+    @Mock
+    private org.hibernate.Session hibernateSession;
+    @Mock
+    private Cache<String, Long> alertCountCache;
+    @Mock
+    private BullhornHandler handler;
+    @Mock
+    private BullhornHandler removeHandler;
+    @Mock
+    private Session session;
+    @Spy
+    private ThreadLocalManager threadLocalManager = new ThreadLocalComponent();
+
+    @InjectMocks
+    private MessagingServiceImpl messagingService;
+
+    private Map<String, Long> counts = new HashMap<>();
+    private boolean async = false;
+
+    @Before
+    public void setUp() throws Exception {
+
+        when(serverConfigurationService.getBoolean(anyString(), anyBoolean())).then(a -> a.getArgument(1));
+        when(serverConfigurationService.getBoolean(eq("portal.bullhorns.async"), anyBoolean())).then(a -> async);
+        when(serverConfigurationService.getInt(anyString(), anyInt())).then(a -> a.getArgument(1));
+
+        when(memoryService.<String, Long>getCache(anyString())).thenReturn(alertCountCache);
+        when(alertCountCache.get(anyString())).then(a -> counts.get(a.getArgument(0)));
+        when(alertCountCache.containsKey(anyString())).then(a -> counts.containsKey(a.getArgument(0)));
+        doAnswer(a -> counts.put(a.getArgument(0), a.getArgument(1))).when(alertCountCache).put(anyString(), any());
+
+        when(sessionFactory.getCurrentSession()).thenReturn(hibernateSession);
+        when(sessionManager.getCurrentSession()).thenReturn(session);
+        Site site = mock(Site.class);
+        when(site.isPublished()).thenReturn(true);
+        when(siteService.getSite(SITE_ID)).thenReturn(site);
+
+        List<BullhornData> data = new ArrayList<>();
+        for (int i = 0; i < RECIPIENTS; i++) {
+            data.add(new BullhornData("from", "user" + i, SITE_ID, "title", "url"));
+        }
+        // A second alert for the same user and ref only ever shows once
+        data.add(new BullhornData("from", "user0", SITE_ID, "new title", "url"));
+        when(handler.getHandledEvents()).thenReturn(Collections.singletonList(EVENT));
+        when(handler.handleEvent(any())).thenReturn(Optional.of(data));
+        when(removeHandler.getHandledEvents()).thenReturn(Collections.singletonList(REMOVE_EVENT));
+        when(removeHandler.usesStoredAlerts(any())).thenReturn(true);
+        when(removeHandler.handleEvent(any())).thenReturn(Optional.empty());
+        ReflectionTestUtils.setField(messagingService, "handlers", Arrays.asList(handler, removeHandler));
+    }
+
+    @After
+    public void tearDown() {
+        messagingService.destroy();
+    }
+
+    private Event newEvent() {
+        return newEvent(EVENT, "from");
+    }
+
+    private Event newEvent(String name, String userId) {
+
+        Event event = mock(Event.class);
+        when(event.getEvent()).thenReturn(name);
+        when(event.getResource()).thenReturn("/test/" + SITE_ID + "/item");
+        when(event.getUserId()).thenReturn(userId);
+        when(event.getEventTime()).thenReturn(new Date());
+        return event;
+    }
+
+    @Test
+    public void testAlertsStoredInOneTransaction() {
+
+        messagingService.init();
+        counts.put("user0", 5L);
+
+        messagingService.update(null, newEvent());
+
+        verify(transactionManager, times(1)).getTransaction(any());
+        verify(hibernateSession).setJdbcBatchSize(100);
+        ArgumentCaptor<BullhornAlert> alerts = ArgumentCaptor.forClass(BullhornAlert.class);
+        verify(hibernateSession, times(RECIPIENTS)).persist(alerts.capture());
+        verify(hibernateSession, times(RECIPIENTS / 100)).flush();
+
+        BullhornAlert last = alerts.getAllValues().get(RECIPIENTS - 1);
+        assertEquals("user0", last.getToUser());
+        assertEquals("new title", last.getTitle());
+        assertFalse(last.getDeferred());
+
+        // Cached counts move on, counts that weren't cached are left to be counted
+        assertEquals(Long.valueOf(6L), counts.get("user0"));
+        assertFalse(counts.containsKey("user1"));
+    }
+
+    @Test
+    public void testAlertsDeliveredAsynchronously() {
+
+        async = true;
+        messagingService.init();
+
+        messagingService.update(null, newEvent());
+
+        verify(hibernateSession, timeout(5000).times(RECIPIENTS)).persist(any(BullhornAlert.class));
+    }
+
+    @Test
+    public void testDeliveryThreadSeesRevisedMessage() {
+
+        // Like BaseMessage.findMessage, the handler caches what it reads in a thread local
+        Map<String, String> titles = new HashMap<>();
+        titles.put("/test/" + SITE_ID + "/item", "first");
+        when(handler.handleEvent(any())).then(a -> {
+            String ref = ((Event) a.getArgument(0)).getResource();
+            String title = (String) threadLocalManager.get(ref);
+            if (title == null) {
+                title = titles.get(ref);
+                threadLocalManager.set(ref, title);
+            }
+            return Optional.of(Collections.singletonList(new BullhornData("from", "user0", SITE_ID, title, "url")));
+        });
+        async = true;
+        messagingService.init();
+
+        messagingService.update(null, newEvent());
+        verify(hibernateSession, timeout(5000).times(1)).persist(any(BullhornAlert.class));
+        verify(threadLocalManager, timeout(5000).times(1)).clear();
+
+        titles.put("/test/" + SITE_ID + "/item", "revised");
+        messagingService.update(null, newEvent());
+        ArgumentCaptor<BullhornAlert> alerts = ArgumentCaptor.forClass(BullhornAlert.class);
+        verify(hibernateSession, timeout(5000).times(2)).persist(alerts.capture());
+        assertEquals(Arrays.asList("first", "revised"), alerts.getAllValues().stream().map(BullhornAlert::getTitle).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testAlertsStoredBeforeHandlerUsesThem() {
+
+        messagingService.init();
+
+        ReflectionTestUtils.invokeMethod(messagingService, "handleEvents",
+            Arrays.asList(newEvent(), newEvent(REMOVE_EVENT, "from")), true);
+
+        // The alerts of the first event are there for the second event's handler to delete
+        InOrder inOrder = inOrder(hibernateSession, removeHandler);
+        inOrder.verify(hibernateSession, times(RECIPIENTS)).persist(any(BullhornAlert.class));
+        inOrder.verify(removeHandler).handleEvent(any());
+        verify(transactionManager, times(1)).getTransaction(any());
+    }
+
+    @Test
+    public void testSessionUserOnlySwitchedAwayFromPostingThread() throws Exception {
+
+        messagingService.init();
+        when(session.getUserId()).thenReturn("admin");
+        when(session.getUserEid()).thenReturn("admin-eid");
+        when(userDirectoryService.getUserEid("other")).thenReturn("other-eid");
+
+        messagingService.update(null, newEvent(EVENT, "other"));
+        verify(session, never()).setUserId(anyString());
+        verify(session, never()).setUserEid(anyString());
+
+        ReflectionTestUtils.invokeMethod(messagingService, "handleEvents",
+            Collections.singletonList(newEvent(EVENT, "other")), true);
+        InOrder inOrder = inOrder(session, handler);
+        inOrder.verify(session).setUserId("other");
+        inOrder.verify(session).setUserEid("other-eid");
+        inOrder.verify(handler).handleEvent(any());
+        inOrder.verify(session).setUserId("admin");
+        inOrder.verify(session).setUserEid("admin-eid");
+    }
+
+    @Test
+    public void testAlertCountCached() {
+
+        messagingService.init();
+        Query query = mock(Query.class, Answers.RETURNS_SELF);
+        when(query.uniqueResult()).thenReturn(3L);
+        when(hibernateSession.createQuery(anyString())).thenReturn(query);
+
+        assertEquals(3L, messagingService.getAlertCount("user0"));
+        assertEquals(3L, messagingService.getAlertCount("user0"));
+        verify(hibernateSession, times(1)).createQuery(anyString());
+
+        messagingService.clearAllAlerts("user0");
+        assertEquals(0L, messagingService.getAlertCount("user0"));
+        verify(hibernateSession, never()).persist(any());
+    }
+}
@@ -0,0 +1,245 @@
+/**
+ * Copyright (c) 2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.user.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Stack;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+import org.sakaiproject.authz.api.FunctionManager;
+import org.sakaiproject.entity.api.EntityManager;
+import org.sakaiproject.entity.api.ResourcePropertiesEdit;
+import org.sakaiproject.event.api.Event;
+import org.sakaiproject.event.api.EventTrackingService;
+import org.sakaiproject.event.api.NotificationService;
+import org.sakaiproject.memory.api.Cache;
+import org.sakaiproject.memory.api.MemoryService;
+import org.sakaiproject.user.api.Preferences;
+import org.sakaiproject.user.api.PreferencesService;
+import org.sakaiproject.util.StorageUtils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PreferencesKeyValueTest {
+
+	protected static final String LOCALE_KEY = "sakai:resourceloader";
+
+	private Map<String, BasePreferencesService.BasePreferences> cached;
+	private BasePreferencesService.Storage storage;
+	private EventTrackingService eventTrackingService;
+	protected BasePreferencesService service;
+
+	@Before
+	public void setUp() {
+		cached = new HashMap<>();
+		Cache cache = mock(Cache.class);
+		when(cache.get(anyString())).thenAnswer(i -> cached.get(i.getArgument(0)));
+		doAnswer(i -> cached.put(i.getArgument(0), i.getArgument(1))).when(cache).put(anyString(), any());
+		when(cache.remove(anyString())).thenAnswer(i -> cached.remove(i.getArgument(0)) != null);
+
+		MemoryService memoryService = mock(MemoryService.class);
+		when(memoryService.getCache(anyString())).thenReturn(cache);
+		EntityManager entityManager = mock(EntityManager.class);
+		FunctionManager functionManager = mock(FunctionManager.class);
+		eventTrackingService = mock(EventTrackingService.class);
+		storage = mock(BasePreferencesService.Storage.class);
+
+		service = new ConcretePreferencesService() {
+			@Override
+			protected MemoryService memoryService() {
+				return memoryService;
+			}
+
+			@Override
+			protected EntityManager entityManager() {
+				return entityManager;
+			}
+
+			@Override
+			protected FunctionManager functionManager() {
+				return functionManager;
+			}
+
+			@Override
+			protected EventTrackingService eventTrackingService() {
+				return eventTrackingService;
+			}
+
+			@Override
+			protected Storage newStorage() {
+				return storage;
+			}
+		};
+		service.init();
+	}
+
+	@Test
+	public void testRowsMatchXml() {
+		BasePreferencesService.BasePreferences original = preferences("user1", 20);
+		BasePreferencesService.BasePreferences fromXml = service.new BasePreferences(StorageUtils.readDocumentFromString(toXml(original)).getDocumentElement());
+		BasePreferencesService.BasePreferences fromRows = service.new BasePreferences("user1");
+		fromRows.setRows(rows(original));
+
+		assertEquals(fromXml.getKeys().size(), fromRows.getKeys().size());
+		for (String key : fromXml.getKeys()) {
+			assertTrue(key, BasePreferencesService.sameProperties(fromXml.getProperties(key), fromRows.getProperties(key)));
+		}
+		assertTrue(BasePreferencesService.sameProperties(fromXml.getProperties(), fromRows.getProperties()));
+		assertEquals("en_GB", fromRows.getProperties(LOCALE_KEY).getProperty(Preferences.FIELD_LOCALE));
+	}
+
+	@Test
+	public void testKeysParsedOnUse() {
+		BasePreferencesService.BasePreferences prefs = service.new BasePreferences("user1");
+		prefs.setRows(rows(preferences("user1", 20)));
+		int keys = prefs.m_rows.size();
+
+		assertEquals("en_GB", prefs.getProperties(LOCALE_KEY).getProperty(Preferences.FIELD_LOCALE));
+		assertEquals(keys - 1, prefs.m_rows.size());
+		assertEquals(1, prefs.m_props.size());
+
+		// a copy, as made for an edit, keeps the unparsed rows
+		BasePreferencesService.BasePreferences copy = service.new BasePreferences(prefs);
+		assertEquals(keys - 1, copy.m_rows.size());
+
+		assertEquals(keys, prefs.getKeys().size());
+		assertTrue(prefs.m_rows.isEmpty());
+		assertEquals(keys, copy.getKeys().size());
+	}
+
+	@Test
+	public void testOnlyChangedRowsWritten() {
+		BasePreferencesService.BasePreferences prefs = service.new BasePreferences("user1");
+		prefs.setRows(rows(preferences("user1", 20)));
+		prefs.activate();
+
+		prefs.getPropertiesEdit(NotificationService.PREFS_SITE + "site1").addProperty("1", "3");
+		prefs.getPropertiesEdit(NotificationService.PREFS_SITE + "site2").clear();
+		prefs.getPropertiesEdit("sakai:new").addProperty("added", "yes");
+		// read and edited back to the same value
+		prefs.getProperties(LOCALE_KEY);
+		prefs.getPropertiesEdit("sakai:time").addProperty("timezone", "Europe/London");
+
+		Map<String, String> changes = prefs.getRowChanges();
+		assertEquals(3, changes.size());
+		assertTrue(changes.get(NotificationService.PREFS_SITE + "site1").contains("site1"));
+		assertTrue(changes.containsKey(NotificationService.PREFS_SITE + "site2"));
+		assertNull(changes.get(NotificationService.PREFS_SITE + "site2"));
+		assertEquals("yes", BasePreferencesService.readRow(changes.get("sakai:new")).getProperty("added"));
+	}
+
+	@Test
+	public void testNewPreferencesWriteRootRow() {
+		BasePreferencesService.BasePreferences prefs = service.new BasePreferences("user1");
+		prefs.getPropertiesEdit(LOCALE_KEY).addProperty(Preferences.FIELD_LOCALE, "fr_FR");
+		prefs.getPropertiesEdit("sakai:empty");
+
+		Map<String, String> changes = prefs.getRowChanges();
+		assertEquals(2, changes.size());
+		assertTrue(changes.containsKey(BasePreferencesService.ROOT_ROW_KEY));
+		assertEquals("fr_FR", BasePreferencesService.readRow(changes.get(LOCALE_KEY)).getProperty(Preferences.FIELD_LOCALE));
+
+		// once stored, an untouched copy has nothing to write
+		BasePreferencesService.BasePreferences stored = service.new BasePreferences("user1");
+		stored.setRows(changes);
+		assertTrue(stored.getRowChanges().isEmpty());
+	}
+
+	@Test
+	public void testBatchReadsMissesTogether() {
+		cached.put("user0", preferences("user0", 1));
+		List<Preferences> found = Arrays.asList(preferences("user1", 1), preferences("user2", 1));
+		when(storage.getMany(any())).thenReturn(found);
+
+		Map<String, Preferences> prefs = service.getPreferences(Arrays.asList("user0", "user1", "user2", "user3", "user1", null));
+
+		assertEquals(Arrays.asList("user0", "user1", "user2", "user3"), new ArrayList<>(prefs.keySet()));
+		assertEquals("en_GB", prefs.get("user1").getProperties(LOCALE_KEY).getProperty(Preferences.FIELD_LOCALE));
+		assertEquals("user3", prefs.get("user3").getId());
+		assertFalse(prefs.get("user3").getKeys().iterator().hasNext());
+		verify(storage, times(1)).getMany(Arrays.asList("user1", "user2", "user3"));
+		assertTrue(cached.containsKey("user1"));
+		assertTrue(cached.containsKey("user2"));
+		assertFalse(cached.containsKey("user3"));
+	}
+
+	@Test
+	public void testEventsDropCachedPreferences() {
+		cached.put("user1", preferences("user1", 1));
+		cached.put("user2", preferences("user2", 1));
+
+		service.m_cacheObserver.update(null, event("user.upd", "/user/user1"));
+		service.m_cacheObserver.update(null, event(PreferencesService.SECURE_EDIT_PREFS, "/prefs/user2"));
+
+		assertTrue(cached.containsKey("user1"));
+		assertFalse(cached.containsKey("user2"));
+		verify(eventTrackingService).addObserver(service.m_cacheObserver);
+	}
+
+	protected BasePreferencesService.BasePreferences preferences(String id, int sites) {
+		BasePreferencesService.BasePreferences prefs = service.new BasePreferences(id);
+		prefs.getPropertiesEdit().addProperty("created", "20260101000000000");
+		prefs.getPropertiesEdit(LOCALE_KEY).addProperty(Preferences.FIELD_LOCALE, "en_GB");
+		prefs.getPropertiesEdit("sakai:time").addProperty("timezone", "Europe/London");
+		ResourcePropertiesEdit sitenav = prefs.getPropertiesEdit(PreferencesService.SITENAV_PREFS_KEY);
+		for (int i = 0; i < sites; i++) {
+			sitenav.addPropertyToList("order", "site" + i);
+			ResourcePropertiesEdit site = prefs.getPropertiesEdit(NotificationService.PREFS_SITE + "site" + i);
+			site.addProperty("1", "2");
+			site.addProperty("2", "2");
+		}
+		return prefs;
+	}
+
+	protected Map<String, String> rows(BasePreferencesService.BasePreferences prefs) {
+		Map<String, String> rows = new HashMap<>();
+		rows.put(BasePreferencesService.ROOT_ROW_KEY, BasePreferencesService.writeRow(BasePreferencesService.ROOT_ROW_KEY, prefs.getProperties()));
+		for (String key : prefs.getKeys()) {
+			rows.put(key, BasePreferencesService.writeRow(key, prefs.getProperties(key)));
+		}
+		return rows;
+	}
+
+	protected String toXml(Preferences prefs) {
+		Document doc = StorageUtils.createDocument();
+		prefs.toXml(doc, new Stack());
+		return StorageUtils.writeDocumentToString(doc);
+	}
+
+	private Event event(String function, String resource) {
+		Event event = mock(Event.class);
+		when(event.getEvent()).thenReturn(function);
+		when(event.getResource()).thenReturn(resource);
+		return event;
+	}
+}
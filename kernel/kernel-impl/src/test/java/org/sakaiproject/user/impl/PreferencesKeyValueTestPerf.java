@@ -0,0 +1,83 @@
+/**
+ * Copyright (c) 2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.user.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.junit.Test;
+
+import org.sakaiproject.user.api.Preferences;
+import org.sakaiproject.util.StorageUtils;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Times looking up the locale of 400 users with 60 sites each, read from the XML and from the key/value rows. Not run
+ * by the build, run it by hand with -Dtest=PreferencesKeyValueTestPerf.
+ */
+@Slf4j
+public class PreferencesKeyValueTestPerf extends PreferencesKeyValueTest {
+
+	@Test
+	public void testKeyValueReadAgainstXml() {
+		List<String> xml = new ArrayList<>();
+		List<Map<String, String>> rows = new ArrayList<>();
+		for (int i = 0; i < 400; i++) {
+			BasePreferencesService.BasePreferences prefs = preferences("user" + i, 60);
+			xml.add(toXml(prefs));
+			rows.add(rows(prefs));
+		}
+
+		// warm up both paths before timing
+		readXml(xml.subList(0, 100));
+		readRows(rows.subList(0, 100));
+
+		long start = System.nanoTime();
+		int fromXml = readXml(xml);
+		long xmlTime = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		int fromRows = readRows(rows);
+		long rowTime = System.nanoTime() - start;
+
+		log.info("Locale lookup for {} users: XML {}ms, key/value {}ms", xml.size(), xmlTime / 1000000, rowTime / 1000000);
+		assertEquals(xml.size(), fromXml);
+		assertEquals(fromXml, fromRows);
+	}
+
+	private int readXml(List<String> xml) {
+		int found = 0;
+		for (String one : xml) {
+			Preferences prefs = service.new BasePreferences(StorageUtils.readDocumentFromString(one).getDocumentElement());
+			if ("en_GB".equals(prefs.getProperties(LOCALE_KEY).getProperty(Preferences.FIELD_LOCALE))) found++;
+		}
+		return found;
+	}
+
+	private int readRows(List<Map<String, String>> rows) {
+		int found = 0;
+		for (Map<String, String> one : rows) {
+			BasePreferencesService.BasePreferences prefs = service.new BasePreferences("user");
+			prefs.setRows(one);
+			if ("en_GB".equals(prefs.getProperties(LOCALE_KEY).getProperty(Preferences.FIELD_LOCALE))) found++;
+		}
+		return found;
+	}
+}
@@ -0,0 +1,237 @@
+/**
+ * Copyright (c) 2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.user.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import org.sakaiproject.time.api.Time;
+import org.sakaiproject.time.api.TimeService;
+import org.sakaiproject.user.api.UserDirectoryProvider;
+import org.sakaiproject.user.api.UserEdit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ProviderLookupTest {
+
+	private UserDirectoryProvider provider;
+	private ProviderLookup lookup;
+	private AtomicInteger mapped;
+	private List<Integer> batchSizes;
+	private CountDownLatch release;
+	private ExecutorService executor;
+
+	@Before
+	public void setUp() {
+		final TimeService timeService = mock(TimeService.class);
+		when(timeService.newTime()).thenReturn(Mockito.<Time>mock(Time.class));
+		BaseUserDirectoryService service = new ConcreteUserDirectoryService() {
+			protected TimeService timeService() {
+				return timeService;
+			}
+		};
+
+		provider = mock(UserDirectoryProvider.class);
+		batchSizes = new CopyOnWriteArrayList<>();
+		release = new CountDownLatch(0);
+		// knows every eid except those starting "unknown", and blocks on "slow" ones until released
+		when(provider.getUser(any())).thenAnswer(i -> {
+			UserEdit user = i.getArgument(0);
+			if (user.getEid().startsWith("slow")) release.await(10, TimeUnit.SECONDS);
+			return fill(user);
+		});
+		doAnswer(i -> {
+			Collection<UserEdit> users = i.getArgument(0);
+			batchSizes.add(users.size());
+			for (Iterator<UserEdit> it = users.iterator(); it.hasNext();) {
+				if (!fill(it.next())) it.remove();
+			}
+			return null;
+		}).when(provider).getUsers(any());
+
+		mapped = new AtomicInteger();
+		lookup = new ProviderLookup(() -> provider, (id, eid) -> service.new BaseUserEdit(id, eid), user -> {
+			mapped.incrementAndGet();
+			if (user.getId() == null) user.setId("id-" + user.getEid());
+		});
+		lookup.setWindow(200);
+		executor = Executors.newFixedThreadPool(32);
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	private boolean fill(UserEdit user) {
+		if (user.getEid().startsWith("unknown")) return false;
+		user.setEmail(user.getEid() + "@example.com");
+		return true;
+	}
+
+	@Test
+	public void testLoneMissGoesStraightToProvider() {
+		long start = System.currentTimeMillis();
+		UserEdit user = lookup.getUser(null, "alone");
+
+		assertEquals("alone@example.com", user.getEmail());
+		assertEquals("id-alone", user.getId());
+		assertNull(lookup.getUser(null, "unknown1"));
+		// no waiting out the window with nobody to wait for
+		assertTrue(System.currentTimeMillis() - start < 200);
+		verify(provider, times(2)).getUser(any());
+		verify(provider, never()).getUsers(any());
+		assertEquals(1, mapped.get());
+	}
+
+	@Test
+	public void testConcurrentMissesForOneEidShareALookup() throws Exception {
+		release = new CountDownLatch(1);
+		List<Future<UserEdit>> results = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			results.add(executor.submit(() -> lookup.getUser(null, "slow1")));
+		}
+		waitFor(() -> lookup.getCoalesced() == 9);
+		release.countDown();
+
+		UserEdit first = results.get(0).get(10, TimeUnit.SECONDS);
+		for (Future<UserEdit> result : results) {
+			assertSame(first, result.get(10, TimeUnit.SECONDS));
+		}
+		verify(provider, times(1)).getUser(any());
+		assertEquals(1, mapped.get());
+		assertEquals(1, lookup.getProviderCalls());
+	}
+
+	@Test
+	public void testConcurrentMissesSentTogether() throws Exception {
+		// one slow lookup in progress, so the others batch up behind the window
+		release = new CountDownLatch(1);
+		Future<UserEdit> slow = executor.submit(() -> lookup.getUser(null, "slow1"));
+		waitFor(() -> lookup.getLookups() == 1);
+
+		List<Future<UserEdit>> results = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			String eid = (i % 5 == 0) ? "unknown" + i : "user" + i;
+			results.add(executor.submit(() -> lookup.getUser(null, eid)));
+		}
+		for (int i = 0; i < 20; i++) {
+			UserEdit user = results.get(i).get(10, TimeUnit.SECONDS);
+			if (i % 5 == 0) {
+				assertNull(user);
+			} else {
+				assertEquals("user" + i + "@example.com", user.getEmail());
+			}
+		}
+		release.countDown();
+		assertNotNull(slow.get(10, TimeUnit.SECONDS));
+
+		int asked = 0;
+		for (int size : batchSizes) {
+			asked += size;
+		}
+		assertEquals(20, asked);
+		assertTrue("batches: " + batchSizes, batchSizes.size() <= 3);
+		assertTrue(lookup.getCombinedBatches() >= 1);
+		assertEquals(21, lookup.getLookups());
+		assertTrue(lookup.getProviderCallsPerLookup() < 0.25);
+		assertEquals(17, mapped.get());
+	}
+
+	@Test
+	public void testBatchSizeLimit() throws Exception {
+		lookup.setBatchSize(5);
+		release = new CountDownLatch(1);
+		Future<UserEdit> slow = executor.submit(() -> lookup.getUser(null, "slow1"));
+		waitFor(() -> lookup.getLookups() == 1);
+
+		List<Future<UserEdit>> results = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			String eid = "user" + i;
+			results.add(executor.submit(() -> lookup.getUser(null, eid)));
+		}
+		for (Future<UserEdit> result : results) {
+			assertNotNull(result.get(10, TimeUnit.SECONDS));
+		}
+		release.countDown();
+		slow.get(10, TimeUnit.SECONDS);
+
+		for (int size : batchSizes) {
+			assertTrue(size <= 5);
+		}
+	}
+
+	@Test
+	public void testProviderFailureReachesEveryWaiter() throws Exception {
+		doAnswer(i -> {
+			throw new IllegalStateException("directory down");
+		}).when(provider).getUsers(any());
+		release = new CountDownLatch(1);
+		Future<UserEdit> slow = executor.submit(() -> lookup.getUser(null, "slow1"));
+		waitFor(() -> lookup.getLookups() == 1);
+
+		List<Future<UserEdit>> results = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			String eid = "user" + i;
+			results.add(executor.submit(() -> lookup.getUser(null, eid)));
+		}
+		for (Future<UserEdit> result : results) {
+			try {
+				UserEdit user = result.get(10, TimeUnit.SECONDS);
+				// a thread that ran alone asked getUser, which still works
+				assertNotNull(user);
+			} catch (java.util.concurrent.ExecutionException e) {
+				assertEquals("directory down", e.getCause().getMessage());
+			}
+		}
+		release.countDown();
+		slow.get(10, TimeUnit.SECONDS);
+	}
+
+	private void waitFor(java.util.function.BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (!condition.getAsBoolean()) {
+			if (System.currentTimeMillis() > deadline) fail("timed out");
+			Thread.sleep(5);
+		}
+	}
+}
@@ -0,0 +1,371 @@
+/**
+ * Copyright (c) 2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.user.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import org.sakaiproject.authz.api.AuthzGroupService;
+import org.sakaiproject.authz.api.FunctionManager;
+import org.sakaiproject.authz.api.SecurityService;
+import org.sakaiproject.component.api.ServerConfigurationService;
+import org.sakaiproject.db.api.SqlService;
+import org.sakaiproject.entity.api.EntityManager;
+import org.sakaiproject.event.api.Event;
+import org.sakaiproject.event.api.EventTrackingService;
+import org.sakaiproject.event.api.UsageSessionService;
+import org.sakaiproject.id.api.IdManager;
+import org.sakaiproject.memory.api.Cache;
+import org.sakaiproject.memory.api.MemoryService;
+import org.sakaiproject.time.api.TimeService;
+import org.sakaiproject.tool.api.SessionManager;
+import org.sakaiproject.user.api.UserDirectoryProvider;
+import org.sakaiproject.user.api.UserEdit;
+import org.sakaiproject.util.api.FormattedText;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Precaches a simulated directory of users, served by a stub provider, through {@link PrecachingDbUserService}.
+ */
+@Slf4j
+public class UserPrecacherTest {
+
+	private PrecachingDbUserService service;
+	private Map<String, UserEdit> cached;
+	private List<Map<String, Object>> siteUsers;
+	private List<Map<String, Object>> lastActive;
+	private Object[] lastActivityArgs;
+	private Map<String, List<Map<String, Object>>> realmUsers;
+	private List<List<String>> batches;
+	private AtomicInteger calling;
+	private AtomicInteger mostCalling;
+
+	@Before
+	public void setUp() {
+		service = new TestPrecachingDbUserService();
+		service.precacher.setThreads(4);
+		service.precacher.setBatchSize(500);
+		service.m_relativeAccessPoint = BaseUserDirectoryService.REFERENCE_ROOT;
+
+		// the stubs are called for every user, so keep them from recording the calls
+		cached = new ConcurrentHashMap<>();
+		Cache<String, UserEdit> cache = stub(Cache.class);
+		when(cache.containsKey(anyString())).thenAnswer(i -> cached.containsKey(i.getArgument(0)));
+		when(cache.get(anyString())).thenAnswer(i -> cached.get(i.getArgument(0)));
+		when(cache.remove(anyString())).thenAnswer(i -> cached.remove(i.getArgument(0)) != null);
+		doAnswer(i -> cached.put(i.getArgument(0), i.getArgument(1))).when(cache).put(anyString(), any());
+		service.m_callCache = cache;
+
+		// no user is kept locally, and every id maps to an eid for the provider
+		BaseUserDirectoryService.Storage storage = stub(BaseUserDirectoryService.Storage.class);
+		when(storage.checkMapForEid(anyString())).thenAnswer(i -> "eid-" + i.getArgument(0));
+		service.m_storage = storage;
+
+		// the directory knows every user but those ending 999, and fails a batch holding "broken"
+		batches = Collections.synchronizedList(new ArrayList<>());
+		calling = new AtomicInteger();
+		mostCalling = new AtomicInteger();
+		UserDirectoryProvider provider = stub(UserDirectoryProvider.class);
+		doAnswer(i -> {
+			Collection<UserEdit> users = i.getArgument(0);
+			mostCalling.accumulateAndGet(calling.incrementAndGet(), Math::max);
+			try {
+				List<String> asked = new ArrayList<>();
+				for (Iterator<UserEdit> it = users.iterator(); it.hasNext();) {
+					UserEdit user = it.next();
+					asked.add(user.getId());
+					if (user.getId().equals("broken")) throw new IllegalStateException("directory unavailable");
+					if (user.getId().endsWith("999")) {
+						it.remove();
+					} else {
+						user.setEmail(user.getEid() + "@example.com");
+					}
+				}
+				batches.add(asked);
+				// a directory round trip
+				Thread.sleep(1);
+				return null;
+			} finally {
+				calling.decrementAndGet();
+			}
+		}).when(provider).getUsers(any());
+		service.m_provider = provider;
+
+		siteUsers = new ArrayList<>();
+		lastActive = new ArrayList<>();
+		realmUsers = new HashMap<>();
+		JdbcTemplate jdbcTemplate = new JdbcTemplate() {
+			@Override
+			public List<Map<String, Object>> queryForList(String sql) {
+				return queryForList(sql, new Object[0]);
+			}
+
+			@Override
+			public List<Map<String, Object>> queryForList(String sql, Object... args) {
+				if (sql.equals(service.siteUserIdsQuery)) return siteUsers;
+				if (sql.equals(service.lastActivityQuery)) {
+					lastActivityArgs = args;
+					return lastActive;
+				}
+				if (sql.equals(service.realmUserIdsQuery)) return realmUsers.getOrDefault(args[0], Collections.emptyList());
+				throw new IllegalArgumentException(sql);
+			}
+		};
+		DirectDbAccess directDbAccess = new DirectDbAccess();
+		directDbAccess.setJdbcTemplate(jdbcTemplate);
+		service.setDirectDbAccess(directDbAccess);
+	}
+
+	private static <T> T stub(Class<T> type) {
+		return mock(type, withSettings().stubOnly());
+	}
+
+	private static Map<String, Object> row(String userId, Object lastActive) {
+		Map<String, Object> row = new HashMap<>();
+		row.put("USER_ID", userId);
+		if (lastActive != null) row.put("LAST_ACTIVE", lastActive);
+		return row;
+	}
+
+	@Test
+	public void testRefreshDirectory() {
+		refreshDirectory(5000);
+	}
+
+	/**
+	 * Refreshes a directory of users named user0 to user(size - 1), a multiple of 1000 in size
+	 */
+	protected void refreshDirectory(int size) {
+		for (int i = 0; i < size; i++) {
+			siteUsers.add(row("user" + i, null));
+		}
+		// a couple of users logged in recently, the latest last
+		String older = "user" + (size * 4 / 5);
+		String latest = "user" + (size / 2);
+		lastActive.add(row(older, new java.sql.Timestamp(1000)));
+		lastActive.add(row(latest, new java.sql.Timestamp(2000)));
+		// a stale entry, which the refresh replaces
+		UserEdit stale = service.new BaseUserEdit("user1", "eid-user1");
+		cached.put("/user/user1", stale);
+
+		long start = System.currentTimeMillis();
+		service.doCacheRefresh(service.siteUserIdsQuery);
+		long millis = System.currentTimeMillis() - start;
+		log.info("Precached {} users in {}ms, {} users per second, {} provider calls", size, millis,
+				(long) service.precacher.getUsersPerSecond(), batches.size());
+
+		int unknown = size / 1000;
+		assertEquals(size - unknown, cached.size());
+		assertEquals("eid-user1@example.com", cached.get("/user/user1").getEmail());
+		assertFalse(cached.get("/user/user1") == stale);
+		assertFalse(cached.containsKey("/user/user999"));
+
+		// one provider call per batch, several at once but no more than the threads
+		assertEquals(size / 500, batches.size());
+		assertTrue(mostCalling.get() <= 4);
+		assertTrue(mostCalling.get() > 1);
+
+		// the most recently active users go in the first batch
+		List<String> first = batches.stream().filter(b -> b.contains(latest)).findFirst().get();
+		assertTrue(first.containsAll(Arrays.asList(older, "user0", "user497")));
+		assertFalse(first.contains("user498"));
+
+		UserPrecacherMBean progress = service.precacher;
+		assertFalse(progress.isRunning());
+		assertEquals(size, progress.getRunUsers());
+		assertEquals(100.0, progress.getRunPercent(), 0.001);
+		assertEquals(size - unknown, progress.getLoaded());
+		assertEquals(unknown, progress.getNotFound());
+		assertEquals(size / 500, progress.getBatches());
+		assertTrue(progress.getUsersPerSecond() > 0);
+	}
+
+	@Test
+	public void testMaxUsers() {
+		for (int i = 0; i < 2000; i++) {
+			siteUsers.add(row("user" + i, null));
+		}
+		lastActive.add(row("user1500", new java.sql.Timestamp(1000)));
+		service.maxUsers = 1000;
+
+		service.doCacheRefresh(service.siteUserIdsQuery);
+
+		assertEquals(1000, cached.size());
+		assertTrue(cached.containsKey("/user/user1500"));
+		assertTrue(cached.containsKey("/user/user998"));
+		assertFalse(cached.containsKey("/user/user999"));
+		assertFalse(cached.containsKey("/user/user1000"));
+	}
+
+	@Test
+	public void testActivityQueryOnlyReadsRecentSessions() {
+		siteUsers.add(row("user1", null));
+		service.activityDays = 10;
+		long start = System.currentTimeMillis();
+
+		service.doCacheRefresh(service.siteUserIdsQuery);
+
+		assertEquals(1, lastActivityArgs.length);
+		long since = ((java.sql.Timestamp) lastActivityArgs[0]).getTime();
+		assertTrue(since <= start - java.util.concurrent.TimeUnit.DAYS.toMillis(10) + 1000);
+		assertTrue(since >= start - java.util.concurrent.TimeUnit.DAYS.toMillis(10) - 1000);
+
+		// a configured query without a placeholder is run as it is
+		service.lastActivityQuery = "SELECT SESSION_USER AS USER_ID, MAX(SESSION_START) AS LAST_ACTIVE FROM SAKAI_SESSION GROUP BY SESSION_USER";
+		service.doCacheRefresh(service.siteUserIdsQuery);
+		assertEquals(0, lastActivityArgs.length);
+	}
+
+	@Test
+	public void testFailedBatchSkipped() {
+		service.precacher.setBatchSize(10);
+		for (int i = 0; i < 100; i++) {
+			siteUsers.add(row((i == 55) ? "broken" : "user" + i, null));
+		}
+
+		service.doCacheRefresh(service.siteUserIdsQuery);
+
+		assertEquals(90, cached.size());
+		assertFalse(cached.containsKey("/user/user50"));
+		assertEquals(1, service.precacher.getFailedBatches());
+		assertEquals(9, service.precacher.getBatches());
+		assertEquals(100.0, service.precacher.getRunPercent(), 0.001);
+	}
+
+	@Test
+	public void testIncrementalLoadsOnlyMissingUsers() {
+		UserEdit alreadyCached = service.new BaseUserEdit("present", "eid-present");
+		cached.put("/user/present", alreadyCached);
+		realmUsers.put("/site/course1", Arrays.asList(row("student1", null), row("student2", null), row("present", null)));
+
+		service.precacheObserver = service.new PrecacheObserver();
+		service.precacheObserver.update(null, event(UsageSessionService.EVENT_LOGIN, "/session/abc", "loggedin"));
+		service.precacheObserver.update(null, event(UsageSessionService.EVENT_LOGIN, "/session/def", "present"));
+		service.precacheObserver.update(null, event(AuthzGroupService.SECURE_UPDATE_AUTHZ_GROUP, "/realm//site/course1", "admin"));
+		service.precacheObserver.update(null, event("content.read", "/content/a", "reader"));
+		assertEquals(2, service.precacher.getPending());
+
+		service.doIncrementalRefresh();
+
+		assertEquals(1, batches.size());
+		Set<String> asked = new java.util.HashSet<>(batches.get(0));
+		assertEquals(new java.util.HashSet<>(Arrays.asList("loggedin", "student1", "student2")), asked);
+		assertSame(alreadyCached, cached.get("/user/present"));
+		assertTrue(cached.containsKey("/user/student2"));
+		assertEquals(0, service.precacher.getPending());
+
+		// nothing queued, nothing loaded
+		service.doIncrementalRefresh();
+		assertEquals(1, batches.size());
+	}
+
+	@Test
+	public void testRank() {
+		Map<String, Long> lastActive = new HashMap<>();
+		lastActive.put("c", 10L);
+		lastActive.put("e", 30L);
+
+		assertEquals(Arrays.asList("e", "c", "a", "b", "d"), UserPrecacher.rank(Arrays.asList("a", "b", "c", "d", "e"), lastActive, 0));
+		assertEquals(Arrays.asList("e", "c", "a"), UserPrecacher.rank(Arrays.asList("a", "b", "c", "d", "e"), lastActive, 3));
+	}
+
+	private Event event(String function, String resource, String userId) {
+		Event event = mock(Event.class);
+		when(event.getEvent()).thenReturn(function);
+		when(event.getResource()).thenReturn(resource);
+		when(event.getUserId()).thenReturn(userId);
+		return event;
+	}
+
+	private static class TestPrecachingDbUserService extends PrecachingDbUserService {
+
+		private final SessionManager sessionManager = Mockito.mock(SessionManager.class, withSettings().stubOnly());
+
+		protected SqlService sqlService() {
+			return null;
+		}
+
+		protected ServerConfigurationService serverConfigurationService() {
+			return null;
+		}
+
+		protected EntityManager entityManager() {
+			return null;
+		}
+
+		protected SecurityService securityService() {
+			return null;
+		}
+
+		protected FunctionManager functionManager() {
+			return null;
+		}
+
+		protected SessionManager sessionManager() {
+			return sessionManager;
+		}
+
+		protected MemoryService memoryService() {
+			return null;
+		}
+
+		protected EventTrackingService eventTrackingService() {
+			return null;
+		}
+
+		protected AuthzGroupService authzGroupService() {
+			return null;
+		}
+
+		protected TimeService timeService() {
+			return null;
+		}
+
+		protected IdManager idManager() {
+			return null;
+		}
+
+		protected FormattedText formattedText() {
+			return null;
+		}
+	}
+}
@@ -21,6 +21,7 @@
 
 package org.sakaiproject.util;
 
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Vector;
@@ -458,6 +459,8 @@ public class EmailNotification implements NotificationAction
 			return recipients;
 		}
 
+		prefetchPreferences(recipients);
+
 		List rv = new Vector();
 		for (Iterator iUsers = recipients.iterator(); iUsers.hasNext();)
 		{
@@ -569,6 +572,8 @@ public class EmailNotification implements NotificationAction
 			return rv;
 		}
 
+		prefetchPreferences(recipients);
+
 		for (Iterator iUsers = recipients.iterator(); iUsers.hasNext();)
 		{
 			User user = (User) iUsers.next();
@@ -586,6 +591,22 @@ public class EmailNotification implements NotificationAction
 		return rv;
 	}
 
+	/**
+	 * Read the preferences of all the recipients at once, so that getOption() finds each one already cached.
+	 * 
+	 * @param recipients
+	 *            The List (User) of potential recipients.
+	 */
+	protected void prefetchPreferences(List recipients)
+	{
+		List<String> ids = new ArrayList<>();
+		for (Object recipient : recipients)
+		{
+			ids.add(((User) recipient).getId());
+		}
+		PreferencesService.getPreferences(ids);
+	}
+
 	/**
 	 * Get the user's notification option for this... one of the NotificationService's PREF_ settings
 	 */
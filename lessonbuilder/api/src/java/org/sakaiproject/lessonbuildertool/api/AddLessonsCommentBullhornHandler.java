@@ -46,6 +46,11 @@ public class AddLessonsCommentBullhornHandler extends AbstractBullhornHandler {
         return Arrays.asList(LessonBuilderEvents.COMMENT_CREATE);
     }
 
+    @Override
+    public boolean usesStoredAlerts(Event e) {
+        return false;
+    }
+
     @Override
     public Optional<List<BullhornData>> handleEvent(Event e) {
 
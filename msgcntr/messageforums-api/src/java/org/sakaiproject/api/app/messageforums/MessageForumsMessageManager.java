@@ -215,6 +215,30 @@ public interface MessageForumsMessageManager {
      * or DELETED).    
      */
     public List<Object[]> findReadMessageCountsForMainPage(final Collection<Long> topicIds);
+
+    /**
+     * @param topicId The topic whose messages are counted.
+     * @param userIds The users we want read counts for.
+     * @param viewableOnly Only count messages that are approved or were authored by the reader.
+     *
+     * @return A map of user id to the number of messages in the topic that user has read
+     * (excluding any messages flagged as DRAFT or DELETED).  Users who have read nothing are
+     * absent from the map.
+     */
+    public Map<String, Integer> findReadMessageCountsByTopicIdByUserIds(final Long topicId, final Collection<String> userIds, final boolean viewableOnly);
+
+    /**
+     * @param topicId The topic whose messages are counted.
+     *
+     * @return A map of author id to the number of that author's messages in the topic that
+     * have not been approved (excluding any messages flagged as DRAFT or DELETED).
+     */
+    public Map<String, Integer> findUnapprovedMessageCountsByTopicIdByAuthor(final Long topicId);
+
+    /**
+     * @return The ids of every user who has marked the given message as read.
+     */
+    public List<String> findReaderIdsByMessageId(final Long messageId);
     
     public List findMessagesByTopicId(Long topicId);
   
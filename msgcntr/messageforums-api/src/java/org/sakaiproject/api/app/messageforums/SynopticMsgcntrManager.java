@@ -15,6 +15,7 @@
  */
 package org.sakaiproject.api.app.messageforums;
 
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -95,6 +96,18 @@ public interface SynopticMsgcntrManager {
 	 */
 	public void updateSynopticMessagesForForumComparingOldMessagesCount(String siteId, Long forumId, Long topicId, HashMap<String, Integer> previousCountHM);
 	
+	/**
+	 * Applies a change in who can see one forum message (ie. it was deleted, approved or denied) to the
+	 * synoptic data.  Only the users who gained or lost sight of the message and haven't read it are updated,
+	 * so unlike getUserToNewMessagesForForumMap nothing is recounted for the rest of the site.
+	 * 
+	 * @param siteId
+	 * @param messageId
+	 * @param previousViewers users who could see the message before the change
+	 * @param currentViewers users who can see the message after the change
+	 */
+	public void updateForumSynopticInfoForMessage(String siteId, Long messageId, Collection<String> previousViewers, Collection<String> currentViewers);
+	
 	public void updateAllSiteTitles(String siteId, String siteTitle);
 	
 	public PrivateMessageManager getPvtMessageManager();
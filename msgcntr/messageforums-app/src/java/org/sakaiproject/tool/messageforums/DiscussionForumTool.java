@@ -3766,16 +3766,33 @@ public class DiscussionForumTool {
   }
   
   public Set<String> getRecipients(Message newMessage){
-	    Set<String> usersAbleToReadMessage;
-		
+		return getRecipients(newMessage.getTopic().getId(), Boolean.TRUE.equals(newMessage.getApproved()));
+  }
+
+  private Set<String> getRecipients(Long topicId, boolean approved){
 		// if this message has not been approved, we may only let moderators view it
-		if (newMessage.getApproved() == null || !newMessage.getApproved()) {
-			usersAbleToReadMessage = forumManager.getUsersAllowedForTopic(newMessage.getTopic().getId(), true, true);	
-		} else {
-			usersAbleToReadMessage = forumManager.getUsersAllowedForTopic(newMessage.getTopic().getId(), true, false);	
-		}
-		
-		return usersAbleToReadMessage;
+		return forumManager.getUsersAllowedForTopic(topicId, true, !approved);
+  }
+
+  /**
+   * Moves the message in or out of the synoptic new message counts of the users who gain
+   * or lose sight of it when its approval changes (pending and denied are both unapproved)
+   */
+  private void updateSynopticInfoForApproval(Message msg, Boolean wasApproved, boolean approved){
+	  if (Boolean.TRUE.equals(wasApproved) == approved) {
+		  return;
+	  }
+	  Long topicId = msg.getTopic().getId();
+	  updateSynopticInfoForMessage(msg.getId(), getRecipients(topicId, !approved), getRecipients(topicId, approved));
+  }
+
+  private void updateSynopticInfoForMessage(Long messageId, Set<String> previousViewers, Set<String> currentViewers){
+	  try {
+		  getSynopticMsgcntrManager().updateForumSynopticInfoForMessage(getSiteId(), messageId, previousViewers, currentViewers);
+	  } catch (HibernateOptimisticLockingFailureException holfe) {
+		  // the counts are adjusted in place, so a retry could apply the same change twice
+		  log.error("DiscussionForumTool: updateSynopticInfoForMessage: " + holfe.getMessage(), holfe);
+	  }
   }
 
   public Message constructMessage()
@@ -4750,13 +4767,6 @@ public class DiscussionForumTool {
 	  DiscussionTopic topic = selectedTopic.getTopic();
 	  DiscussionForum forum = selectedForum.getForum();
 	  
-	  //Synoptic Message/Forums tool
-	  HashMap<String, Integer> beforeChangeHM = null;    
-	    Long forumId = selectedTopic.getTopic().getBaseForum().getId();
-	    Long topicId = selectedTopic.getTopic().getId();
-	    beforeChangeHM = SynopticMsgcntrManagerCover.getUserToNewMessagesForForumMap(getSiteId(), forumId, topicId);
-	    
-	    
 	  if(!uiPermissionsManager.isDeleteAny(topic, forum) && !(selectedMessage.getIsOwn() && uiPermissionsManager.isDeleteOwn(topic, forum)))
 	  {
 		  setErrorMessage(getResourceBundleString(INSUFFICIENT_PRIVILEGES_TO_DELETE));
@@ -4773,6 +4783,9 @@ public class DiscussionForumTool {
 	  message.setTopic((DiscussionTopic) forumManager
 			  .getTopicByIdWithMessages(selectedTopic.getTopic().getId()));
 
+	  //Synoptic Message/Forums tool: the users who could see the message before it was deleted
+	  Set<String> previousViewers = getRecipients(message);
+
 	  // does the actual save to 'delete' this message
 	  Message persistedMessage = forumManager.saveMessage(message);
 
@@ -4785,10 +4798,8 @@ public class DiscussionForumTool {
 	  this.deleteMsg = false;
 
 	  //Synoptic Message/Forums tool
-	  //Compare previous new message counts to current new message counts after
-	  //message was deleted for all users:
-	  if(beforeChangeHM != null)
-	    	updateSynopticMessagesForForumComparingOldMessagesCount(getSiteId(), forumId, topicId, beforeChangeHM, SynopticMsgcntrManager.NUM_OF_ATTEMPTS);
+	  //only the users who could see the deleted message (and hadn't read it) lose a new message
+	  updateSynopticInfoForMessage(persistedMessage.getId(), previousViewers, Collections.<String>emptySet());
 	  
 	  // TODO: document it was done for tracking purposes
 	  eventTrackingService.post(eventTrackingService.newEvent(DiscussionForumService.EVENT_FORUMS_REMOVE, getEventReference(persistedMessage), true));
@@ -4994,8 +5005,7 @@ public class DiscussionForumTool {
 				  msg.setTopic(topic);			  			 	  
 			  }
 			  
-			  HashMap<String, Integer> beforeChangeHM = null;	    	  
-			  beforeChangeHM = SynopticMsgcntrManagerCover.getUserToNewMessagesForForumMap(getSiteId(), msg.getTopic().getBaseForum().getId(), msg.getTopic().getId());
+			  Boolean wasApproved = msg.getApproved();
 			  
 			  messageManager.markMessageApproval(msg.getId(), approved);			  
 			  
@@ -5003,8 +5013,7 @@ public class DiscussionForumTool {
 			  numSelected++;
 			  numPendingMessages--;
 
-			  if(beforeChangeHM != null)
-	        		updateSynopticMessagesForForumComparingOldMessagesCount(getSiteId(), msg.getTopic().getBaseForum().getId(), msg.getTopic().getId(), beforeChangeHM, SynopticMsgcntrManager.NUM_OF_ATTEMPTS);
+			  updateSynopticInfoForApproval(msg, wasApproved, approved);
 
 			  if (approved) {
                   // send out email notification to the watchers
@@ -5046,8 +5055,7 @@ public class DiscussionForumTool {
 			  msg.setTopic(topic);			  			 	  
 		  }
 
-		  HashMap<String, Integer> beforeChangeHM = null;	    	  
-		  beforeChangeHM = SynopticMsgcntrManagerCover.getUserToNewMessagesForForumMap(getSiteId(), msg.getTopic().getBaseForum().getId(), msg.getTopic().getId());
+		  Boolean wasApproved = msg.getApproved();
 
 		  messageManager.markMessageApproval(msgId, false);
 		  selectedMessage = new DiscussionMessageBean(messageManager.getMessageByIdWithAttachments(msgId), messageManager);
@@ -5055,8 +5063,7 @@ public class DiscussionForumTool {
 		  setSuccessMessage(getResourceBundleString("cdfm_denied_alert"));
 		  getThreadFromMessage();
 		  
-		  if(beforeChangeHM != null)
-      		updateSynopticMessagesForForumComparingOldMessagesCount(getSiteId(), msg.getTopic().getBaseForum().getId(), msg.getTopic().getId(), beforeChangeHM, SynopticMsgcntrManager.NUM_OF_ATTEMPTS);
+		  updateSynopticInfoForApproval(msg, wasApproved, false);
 	  
 	  }
 	  
@@ -5083,15 +5090,13 @@ public class DiscussionForumTool {
 			  msg.setTopic(topic);			  			 	  
 		  }
 		 
-		  HashMap<String, Integer> beforeChangeHM = null;	    	  
-		  beforeChangeHM = SynopticMsgcntrManagerCover.getUserToNewMessagesForForumMap(getSiteId(), msg.getTopic().getBaseForum().getId(), msg.getTopic().getId());
+		  Boolean wasApproved = msg.getApproved();
 		  
 		  messageManager.markMessageApproval(msgId, false);
 		  selectedMessage = new DiscussionMessageBean(messageManager.getMessageByIdWithAttachments(msgId), messageManager);
 		  displayDeniedMsg = true;
 		  
-		  if(beforeChangeHM != null)
-	      		updateSynopticMessagesForForumComparingOldMessagesCount(getSiteId(), msg.getTopic().getBaseForum().getId(), msg.getTopic().getId(), beforeChangeHM, SynopticMsgcntrManager.NUM_OF_ATTEMPTS);
+		  updateSynopticInfoForApproval(msg, wasApproved, false);
 		  
 	  }
 	  
@@ -5116,8 +5121,7 @@ public class DiscussionForumTool {
 			  msg.setTopic(topic);			  			 	  
 		  }
 		  
-		  HashMap<String, Integer> beforeChangeHM = null;	    	  
-		  beforeChangeHM = SynopticMsgcntrManagerCover.getUserToNewMessagesForForumMap(getSiteId(), msg.getTopic().getBaseForum().getId(), msg.getTopic().getId());
+		  Boolean wasApproved = msg.getApproved();
 		  
 		  messageManager.markMessageApproval(msgId, true);
 		  
@@ -5138,8 +5142,7 @@ public class DiscussionForumTool {
 		      sendEmailNotification(msgWithAttach, getThreadHeadForMessage(msgWithAttach), false);
 		  }
 		  
-		  if(beforeChangeHM != null)
-	      		updateSynopticMessagesForForumComparingOldMessagesCount(getSiteId(), msg.getTopic().getBaseForum().getId(), msg.getTopic().getId(), beforeChangeHM, SynopticMsgcntrManager.NUM_OF_ATTEMPTS);
+		  updateSynopticInfoForApproval(msg, wasApproved, true);
 	  }
 	  
 	  refreshPendingMsgs = true;
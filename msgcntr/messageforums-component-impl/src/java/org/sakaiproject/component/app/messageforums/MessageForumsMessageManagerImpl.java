@@ -95,6 +95,10 @@ public class MessageForumsMessageManagerImpl extends HibernateDaoSupport impleme
     private static final String QUERY_UNDELETED_MSG_BY_TOPIC_ID = "findUndeletedMessagesByTopicId";
     private static final String QUERY_MOVED_MESSAGES_BY_TOPICID = "findMovedMessagesByTopicId";
     private static final String QUERY_MOVED_HISTORY_BY_MESSAGEID = "findMovedHistoryByMessageId";
+    private static final String QUERY_READ_COUNTS_BY_TOPIC_ID_BY_USER_IDS = "findReadMessageCountsByTopicIdByUserIds";
+    private static final String QUERY_READ_VIEWABLE_COUNTS_BY_TOPIC_ID_BY_USER_IDS = "findReadViewableMessageCountsByTopicIdByUserIds";
+    private static final String QUERY_UNAPPROVED_COUNTS_BY_TOPIC_ID_BY_AUTHOR = "findUnapprovedMessageCountsByTopicIdByAuthor";
+    private static final String QUERY_READER_IDS_BY_MESSAGE_ID = "findReaderIdsByMessageId";
     //private static final String ID = "id";
 
     // Oracle's 1000 'in' clause limit
@@ -942,6 +946,80 @@ public class MessageForumsMessageManagerImpl extends HibernateDaoSupport impleme
     	return getHibernateTemplate().execute(hcb);
     }
 
+    /*
+     * (non-Javadoc)
+     * @see org.sakaiproject.api.app.messageforums.MessageForumsMessageManager#findReadMessageCountsByTopicIdByUserIds(java.lang.Long, java.util.Collection, boolean)
+     */
+    public Map<String, Integer> findReadMessageCountsByTopicIdByUserIds(final Long topicId, final Collection<String> userIds, final boolean viewableOnly) {
+        if (topicId == null || userIds == null) {
+            log.error("findReadMessageCountsByTopicIdByUserIds failed with topicId: " + topicId + " and userIds: " + userIds);
+            throw new IllegalArgumentException("Null Argument");
+        }
+        if (userIds.isEmpty()) return new HashMap<>();
+
+        log.debug("findReadMessageCountsByTopicIdByUserIds executing with topicId: {}, users: {}, viewableOnly: {}", topicId, userIds.size(), viewableOnly);
+
+        HibernateCallback<Map<String, Integer>> hcb = session -> {
+            List<String> users = new ArrayList<>(userIds);
+            Map<String, Integer> counts = new HashMap<>(users.size());
+            for (int i = 0; i < users.size(); i += MAX_IN_CLAUSE_SIZE) {
+                Query q = session.getNamedQuery(viewableOnly ? QUERY_READ_VIEWABLE_COUNTS_BY_TOPIC_ID_BY_USER_IDS : QUERY_READ_COUNTS_BY_TOPIC_ID_BY_USER_IDS);
+                q.setParameter("topicId", topicId, LongType.INSTANCE);
+                q.setParameterList("userIds", users.subList(i, Math.min(i + MAX_IN_CLAUSE_SIZE, users.size())));
+                for (Object[] row : (List<Object[]>) q.list()) {
+                    counts.put((String) row[0], ((Number) row[1]).intValue());
+                }
+            }
+            return counts;
+        };
+
+        return getHibernateTemplate().execute(hcb);
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.sakaiproject.api.app.messageforums.MessageForumsMessageManager#findUnapprovedMessageCountsByTopicIdByAuthor(java.lang.Long)
+     */
+    public Map<String, Integer> findUnapprovedMessageCountsByTopicIdByAuthor(final Long topicId) {
+        if (topicId == null) {
+            log.error("findUnapprovedMessageCountsByTopicIdByAuthor failed with topicId: null");
+            throw new IllegalArgumentException("Null Argument");
+        }
+
+        log.debug("findUnapprovedMessageCountsByTopicIdByAuthor executing with topicId: {}", topicId);
+
+        HibernateCallback<List<Object[]>> hcb = session -> {
+            Query q = session.getNamedQuery(QUERY_UNAPPROVED_COUNTS_BY_TOPIC_ID_BY_AUTHOR);
+            q.setParameter("topicId", topicId, LongType.INSTANCE);
+            return q.list();
+        };
+
+        Map<String, Integer> counts = new HashMap<>();
+        for (Object[] row : getHibernateTemplate().execute(hcb)) {
+            counts.put((String) row[0], ((Number) row[1]).intValue());
+        }
+        return counts;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.sakaiproject.api.app.messageforums.MessageForumsMessageManager#findReaderIdsByMessageId(java.lang.Long)
+     */
+    public List<String> findReaderIdsByMessageId(final Long messageId) {
+        if (messageId == null) {
+            log.error("findReaderIdsByMessageId failed with messageId: null");
+            throw new IllegalArgumentException("Null Argument");
+        }
+
+        HibernateCallback<List<String>> hcb = session -> {
+            Query q = session.getNamedQuery(QUERY_READER_IDS_BY_MESSAGE_ID);
+            q.setParameter("messageId", messageId, LongType.INSTANCE);
+            return q.list();
+        };
+
+        return getHibernateTemplate().execute(hcb);
+    }
+
 
 
     public List<Object[]> findMessageCountTotal() {
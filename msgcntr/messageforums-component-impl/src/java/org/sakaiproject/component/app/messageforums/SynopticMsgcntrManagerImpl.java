@@ -23,6 +23,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -639,6 +640,59 @@ public class SynopticMsgcntrManagerImpl extends HibernateDaoSupport implements S
 	}
 	
 	
+	public void updateForumSynopticInfoForMessage(String siteId, Long messageId, Collection<String> previousViewers, Collection<String> currentViewers){
+		Set<String> gained = new HashSet<String>(currentViewers);
+		gained.removeAll(previousViewers);
+		Set<String> lost = new HashSet<String>(previousViewers);
+		lost.removeAll(currentViewers);
+		if(gained.isEmpty() && lost.isEmpty()){
+			return;
+		}
+		
+		//users who already read the message never had it counted as new
+		List<String> readers = getMessageManager().findReaderIdsByMessageId(messageId);
+		gained.removeAll(readers);
+		lost.removeAll(readers);
+		
+		incrementForumSynopticToolInfo(new ArrayList<String>(gained), siteId);
+		decrementForumSynopticToolInfo(new ArrayList<String>(lost), siteId);
+	}
+	
+	/**
+	 * Adds the unread message count of one topic to each user's stats.  Rather than two count queries
+	 * per user, the topic's messages are counted once and the read counts of all users are fetched
+	 * with grouped queries (see SAK-27810 and MessageForumStatisticsBean.getTopicStatistics).
+	 */
+	private void addUnreadTopicCounts(Long topicId, List<String> allMessagesUsers, List<String> viewableMessagesUsers, Map<String, DecoratedCompiledMessageStats> dcms){
+		if(allMessagesUsers.isEmpty() && viewableMessagesUsers.isEmpty()){
+			return;
+		}
+		int messageCount = getMessageManager().findMessageCountByTopicId(topicId);
+		if(messageCount == 0){
+			return;
+		}
+		if(!allMessagesUsers.isEmpty()){
+			Map<String, Integer> readCounts = getMessageManager().findReadMessageCountsByTopicIdByUserIds(topicId, allMessagesUsers, false);
+			for(String userId : allMessagesUsers){
+				DecoratedCompiledMessageStats dcm = dcms.get(userId);
+				dcm.setUnreadForumsAmt(dcm.getUnreadForumsAmt() + messageCount - readCounts.getOrDefault(userId, 0));
+			}
+		}
+		if(!viewableMessagesUsers.isEmpty()){
+			Map<String, Integer> unapprovedCounts = getMessageManager().findUnapprovedMessageCountsByTopicIdByAuthor(topicId);
+			int approvedCount = messageCount;
+			for(Integer unapproved : unapprovedCounts.values()){
+				approvedCount -= unapproved;
+			}
+			Map<String, Integer> readCounts = getMessageManager().findReadMessageCountsByTopicIdByUserIds(topicId, viewableMessagesUsers, true);
+			for(String userId : viewableMessagesUsers){
+				DecoratedCompiledMessageStats dcm = dcms.get(userId);
+				int viewableCount = approvedCount + unapprovedCounts.getOrDefault(userId, 0);
+				dcm.setUnreadForumsAmt(dcm.getUnreadForumsAmt() + viewableCount - readCounts.getOrDefault(userId, 0));
+			}
+		}
+	}
+
 	private Map<String, DecoratedCompiledMessageStats> getDMessageStats(List<String> userIds, String siteId, Site site, HashMap<Long, DecoratedForumInfo> dfHM, Map<String, Integer> unreadMessagesHM){
 		
 		final Map<String, DecoratedCompiledMessageStats> dcms = new HashMap<String, DecoratedCompiledMessageStats>();
@@ -718,6 +772,9 @@ public class SynopticMsgcntrManagerImpl extends HibernateDaoSupport implements S
 						while (topicIter.hasNext()) 
 						{
 							DecoratedTopicsInfo topic = (DecoratedTopicsInfo) topicIter.next();
+							// users who see every message in the topic, and users who only see approved messages and their own
+							List<String> allMessagesUsers = new ArrayList<String>();
+							List<String> viewableMessagesUsers = new ArrayList<String>();
 							for(String userId : userIds){
 								if(overridingPermissionMap.get(userId)
 										|| (area.getAvailability() && ((dForum.getIsDraft().equals(Boolean.FALSE) && dForum.getAvailability()) ||
@@ -738,20 +795,19 @@ public class SynopticMsgcntrManagerImpl extends HibernateDaoSupport implements S
 											if (!isTopicModerated.booleanValue() || (isTopicModerated.booleanValue() && 
 													getUiPermissionsManager().isModeratePostings(topicId, dForum.getIsLocked(), dForum.getIsDraft(), isTopicLocked, isTopicDraft, userId, siteId)))
 											{
-												//TODO: to improve this performance, try using the logic in MessageForumStatisticsBean.getTopicStatistics
-												//essentially, get the number of possible messages for that user and subtract the number read.  See commit for SAK-27810 for more details.
-												dcms.get(userId).setUnreadForumsAmt(dcms.get(userId).getUnreadForumsAmt() + getMessageManager().findUnreadMessageCountByTopicIdByUserId(topicId, userId));
+												allMessagesUsers.add(userId);
 											}
 											else
 											{	
 												// b/c topic is moderated and user does not have mod perm, user may only
 												// see approved msgs or pending/denied msgs authored by user
-												dcms.get(userId).setUnreadForumsAmt(dcms.get(userId).getUnreadForumsAmt() + getMessageManager().findUnreadViewableMessageCountByTopicIdByUserId(topicId, userId));
+												viewableMessagesUsers.add(userId);
 											}
 										}
 									}
 								}
 							}
+							addUnreadTopicCounts(topic.getTopicId(), allMessagesUsers, viewableMessagesUsers, dcms);
 						}
 					}
 				}
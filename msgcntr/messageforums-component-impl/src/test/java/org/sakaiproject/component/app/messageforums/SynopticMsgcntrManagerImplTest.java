@@ -0,0 +1,222 @@
+/**
+ * Copyright (c) 2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.component.app.messageforums;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import org.sakaiproject.api.app.messageforums.Area;
+import org.sakaiproject.api.app.messageforums.MessageForumsMessageManager;
+import org.sakaiproject.api.app.messageforums.ui.DiscussionForumManager;
+import org.sakaiproject.api.app.messageforums.ui.UIPermissionsManager;
+import org.sakaiproject.authz.api.Member;
+import org.sakaiproject.authz.api.SecurityService;
+import org.sakaiproject.db.api.SqlService;
+import org.sakaiproject.site.api.Site;
+import org.sakaiproject.site.api.SiteService;
+import org.sakaiproject.site.api.ToolConfiguration;
+
+/**
+ * Exercises the synoptic forum counts against a 5,000 member site, checking that recounting a topic
+ * and applying a message change cost a fixed number of queries rather than a few per member.
+ */
+@Slf4j
+public class SynopticMsgcntrManagerImplTest {
+
+    private static final String SITE_ID = "big-site";
+    private static final Long FORUM_ID = 1L;
+    private static final Long TOPIC_ID = 2L;
+    private static final int MEMBERS = 5000;
+    private static final int MODERATORS = 10;
+    private static final int MESSAGES = 40;
+
+    private SynopticMsgcntrManagerImpl synopticManager;
+    private MessageForumsMessageManager messageManager;
+    private List<String> members;
+    private Set<String> moderators;
+
+    @Before
+    public void setUp() throws Exception {
+        members = new ArrayList<>(MEMBERS);
+        moderators = new LinkedHashSet<>();
+        Set<Member> siteMembers = new HashSet<>();
+        for (int i = 0; i < MEMBERS; i++) {
+            String userId = (i < MODERATORS ? "moderator-" : "student-") + i;
+            members.add(userId);
+            if (i < MODERATORS) moderators.add(userId);
+            Member member = mock(Member.class);
+            when(member.getUserId()).thenReturn(userId);
+            siteMembers.add(member);
+        }
+
+        Site site = mock(Site.class);
+        when(site.getTitle()).thenReturn("Big Site");
+        when(site.getMembers()).thenReturn(siteMembers);
+        doReturn(Collections.singletonList(mock(ToolConfiguration.class))).when(site).getTools(anyString());
+        SiteService siteService = mock(SiteService.class);
+        when(siteService.getSite(SITE_ID)).thenReturn(site);
+
+        // one moderated topic in one available forum
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.next()).thenReturn(true, false);
+        when(rs.getLong("FORUM_ID")).thenReturn(FORUM_ID);
+        when(rs.getLong("TOPIC_ID")).thenReturn(TOPIC_ID);
+        when(rs.getBoolean("isTopicModerated")).thenReturn(true);
+        when(rs.getBoolean("forumAvailability")).thenReturn(true);
+        when(rs.getBoolean("topicAvailability")).thenReturn(true);
+        PreparedStatement statement = mock(PreparedStatement.class);
+        when(statement.executeQuery()).thenReturn(rs);
+        Connection connection = mock(Connection.class);
+        when(connection.prepareStatement(anyString())).thenReturn(statement);
+        SqlService sqlService = mock(SqlService.class);
+        when(sqlService.borrowConnection()).thenReturn(connection);
+
+        Area area = mock(Area.class);
+        when(area.getAvailability()).thenReturn(true);
+        DiscussionForumManager forumManager = mock(DiscussionForumManager.class);
+        when(forumManager.getDiscussionForumArea(SITE_ID)).thenReturn(area);
+
+        UIPermissionsManager uiPermissionsManager = mock(UIPermissionsManager.class);
+        when(uiPermissionsManager.isRead(any(), any(), any(), anyString(), anyString())).thenReturn(true);
+        when(uiPermissionsManager.isModeratePostings(any(), any(), any(), any(), any(), anyString(), anyString()))
+                .thenAnswer(invocation -> moderators.contains(invocation.getArgument(5)));
+
+        messageManager = mock(MessageForumsMessageManager.class);
+
+        synopticManager = spy(new SynopticMsgcntrManagerImpl());
+        synopticManager.setSiteService(siteService);
+        synopticManager.setSqlService(sqlService);
+        synopticManager.setSecurityService(mock(SecurityService.class));
+        synopticManager.setForumManager(forumManager);
+        synopticManager.setUiPermissionsManager(uiPermissionsManager);
+        synopticManager.setMessageManager(messageManager);
+        doNothing().when(synopticManager).incrementForumSynopticToolInfo(any(), anyString());
+        doNothing().when(synopticManager).decrementForumSynopticToolInfo(any(), anyString());
+    }
+
+    @Test
+    public void testForumRecountQueriesOncePerTopic() {
+        // student-11 has two posts waiting for approval, moderator-0 one
+        Map<String, Integer> unapproved = new HashMap<>();
+        unapproved.put("student-11", 2);
+        unapproved.put("moderator-0", 1);
+        when(messageManager.findMessageCountByTopicId(TOPIC_ID)).thenReturn(MESSAGES);
+        when(messageManager.findUnapprovedMessageCountsByTopicIdByAuthor(TOPIC_ID)).thenReturn(unapproved);
+        when(messageManager.findReadMessageCountsByTopicIdByUserIds(eq(TOPIC_ID), any(), eq(false)))
+                .thenReturn(Collections.singletonMap("moderator-1", 5));
+        when(messageManager.findReadMessageCountsByTopicIdByUserIds(eq(TOPIC_ID), any(), eq(true)))
+                .thenReturn(Collections.singletonMap("student-12", 7));
+
+        long start = System.nanoTime();
+        Map<String, Integer> counts = synopticManager.getUserToNewMessagesForForumMap(SITE_ID, FORUM_ID, TOPIC_ID);
+        log.info("Recounted a topic for {} members in {}ms", MEMBERS, (System.nanoTime() - start) / 1000000);
+
+        Assert.assertEquals(MEMBERS, counts.size());
+        // moderators see every message
+        Assert.assertEquals(MESSAGES, counts.get("moderator-0").intValue());
+        Assert.assertEquals(MESSAGES - 5, counts.get("moderator-1").intValue());
+        // everyone else sees the approved messages plus their own
+        int approved = MESSAGES - 3;
+        Assert.assertEquals(approved + 2, counts.get("student-11").intValue());
+        Assert.assertEquals(approved - 7, counts.get("student-12").intValue());
+        Assert.assertEquals(approved, counts.get("student-4999").intValue());
+
+        verify(messageManager, times(1)).findMessageCountByTopicId(TOPIC_ID);
+        verify(messageManager, times(2)).findReadMessageCountsByTopicIdByUserIds(eq(TOPIC_ID), any(), anyBoolean());
+        verify(messageManager, never()).findUnreadMessageCountByTopicIdByUserId(anyLong(), anyString());
+        verify(messageManager, never()).findUnreadViewableMessageCountByTopicIdByUserId(anyLong(), anyString());
+    }
+
+    @Test
+    public void testApprovalOnlyCountsUsersWhoGainTheMessage() {
+        Set<String> everyone = new HashSet<>(members);
+        // a moderator and the author already read the message
+        when(messageManager.findReaderIdsByMessageId(99L)).thenReturn(Arrays.asList("moderator-0", "student-20"));
+
+        long start = System.nanoTime();
+        synopticManager.updateForumSynopticInfoForMessage(SITE_ID, 99L, moderators, everyone);
+        log.info("Approved a message for {} members in {}ms", MEMBERS, (System.nanoTime() - start) / 1000000);
+
+        List<String> gained = captureUsers(true);
+        Assert.assertEquals(MEMBERS - MODERATORS - 1, gained.size());
+        Assert.assertFalse(gained.contains("student-20"));
+        Assert.assertFalse(gained.contains("moderator-1"));
+        Assert.assertTrue(captureUsers(false).isEmpty());
+        verify(messageManager, never()).findMessageCountByTopicId(anyLong());
+    }
+
+    @Test
+    public void testDeleteOnlyUncountsUnreadViewers() {
+        when(messageManager.findReaderIdsByMessageId(99L)).thenReturn(Collections.singletonList("student-30"));
+
+        synopticManager.updateForumSynopticInfoForMessage(SITE_ID, 99L, new HashSet<>(members), Collections.emptySet());
+
+        List<String> lost = captureUsers(false);
+        Assert.assertEquals(MEMBERS - 1, lost.size());
+        Assert.assertFalse(lost.contains("student-30"));
+        Assert.assertTrue(captureUsers(true).isEmpty());
+    }
+
+    @Test
+    public void testUnchangedVisibilitySkipsUpdate() {
+        // denying a pending message leaves it visible to the moderators only
+        synopticManager.updateForumSynopticInfoForMessage(SITE_ID, 99L, moderators, new HashSet<>(moderators));
+
+        verify(messageManager, never()).findReaderIdsByMessageId(anyLong());
+        verify(synopticManager, never()).incrementForumSynopticToolInfo(any(), anyString());
+        verify(synopticManager, never()).decrementForumSynopticToolInfo(any(), anyString());
+    }
+
+    private List<String> captureUsers(boolean increment) {
+        ArgumentCaptor<List<String>> captor = ArgumentCaptor.forClass(List.class);
+        if (increment) {
+            verify(synopticManager).incrementForumSynopticToolInfo(captor.capture(), eq(SITE_ID));
+        } else {
+            verify(synopticManager).decrementForumSynopticToolInfo(captor.capture(), eq(SITE_ID));
+        }
+        return captor.getValue();
+    }
+}
@@ -159,6 +159,14 @@ public class PortalEntityProvider extends AbstractEntityProvider implements Auto
         return new ActionReturn(data);
 	}
 
+	@EntityCustomAction(action = "bullhornCount", viewKey = EntityView.VIEW_LIST)
+	public ActionReturn getBullhornCount(EntityView view) {
+
+		Map<String, Object> data = new HashMap<>();
+		data.put("count", messagingService.getAlertCount(getCheckedCurrentUser()));
+		return new ActionReturn(data);
+	}
+
 	@EntityCustomAction(action = "clearBullhornAlert", viewKey = EntityView.VIEW_LIST)
 	public boolean clearBullhornAlert(Map<String, Object> params) {
 
@@ -50,6 +50,11 @@ public class FriendMessageBullhornHandler extends AbstractBullhornHandler {
         return Arrays.asList(ProfileConstants.EVENT_MESSAGE_SENT);
     }
 
+    @Override
+    public boolean usesStoredAlerts(Event e) {
+        return false;
+    }
+
     @Override
     public Optional<List<BullhornData>> handleEvent(Event e) {
 
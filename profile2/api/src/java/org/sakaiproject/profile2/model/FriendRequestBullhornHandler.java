@@ -50,6 +50,11 @@ public class FriendRequestBullhornHandler extends AbstractBullhornHandler {
         return Arrays.asList(ProfileConstants.EVENT_FRIEND_REQUEST);
     }
 
+    @Override
+    public boolean usesStoredAlerts(Event e) {
+        return false;
+    }
+
     @Override
     public Optional<List<BullhornData>> handleEvent(Event e) {
 
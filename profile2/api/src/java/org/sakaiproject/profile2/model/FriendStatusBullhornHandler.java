@@ -49,6 +49,11 @@ public class FriendStatusBullhornHandler extends AbstractBullhornHandler {
         return Arrays.asList(ProfileConstants.EVENT_STATUS_UPDATE);
     }
 
+    @Override
+    public boolean usesStoredAlerts(Event e) {
+        return false;
+    }
+
     @Override
     public Optional<List<BullhornData>> handleEvent(Event e) {
 
@@ -1864,7 +1864,7 @@ public class DeliveryBean implements Serializable {
 		    	int timeElapsed  = Math.round((new Date().getTime() - adata.getAttemptDate().getTime())/1000.0f);
 		        adata.setTimeElapsed(timeElapsed);
 		        GradingService gradingService = new GradingService();
-		        gradingService.saveOrUpdateAssessmentGradingOnly(adata);
+		        gradingService.queueTimeElapsed(adata);
 		        setTimeElapse(adata.getTimeElapsed().toString());
 		    }
 	  }
@@ -1970,8 +1970,8 @@ public class DeliveryBean implements Serializable {
 
           TimedAssessmentQueue queue = TimedAssessmentQueue.getInstance();
           TimedAssessmentGradingModel timedAG = queue.get(adata.getAssessmentGradingId());
-          // timedAG might no longer be in the queue; fall back to assessment access control as necessary
-          int timeLimit = timedAG == null ? getPublishedAssessment().getAssessmentAccessControl().getTimeLimit() : timedAG.getTimeLimit();
+          // timedAG might no longer be in the queue; fall back to the time limit of this delivery as necessary
+          int timeLimit = timedAG == null ? getPublishedAssessment().getTimeLimit() : timedAG.getTimeLimit();
           // Convert to milliseconds; value is and remains 0 if no time limit is present
           timeLimit*=1000;
 
@@ -2452,7 +2452,7 @@ public class DeliveryBean implements Serializable {
 	  }	  
 	  
 	  private boolean isTimedAssessment() {
-		  return !this.getPublishedAssessment().getAssessmentAccessControl().getTimeLimit().equals(0);
+		  return !this.getPublishedAssessment().getTimeLimit().equals(0);
 	  }
 	  
 	  public String cleanRadioButton() {
@@ -2471,7 +2471,7 @@ public class DeliveryBean implements Serializable {
             //Just delete the checkbox of the current question
             if (!item.getItemData().getItemId().toString().equals(radioId)) continue;
 
-            String itemSeq = item.getItemData().getSequence().toString();
+            String itemSeq = Integer.toString(item.getNumber());
             redrawAnchorName.append(partSeq);
             redrawAnchorName.append("q");
             redrawAnchorName.append(itemSeq);
@@ -2552,7 +2552,8 @@ public class DeliveryBean implements Serializable {
 	public int evaluateTimeLimit(PublishedAssessmentFacade pubAssessment, Boolean fromBeginAssessment, int extTimeVal) {
 		publishedAssessment = pubAssessment; // synchronize the passed in values
 		Integer timeLimit = 0;
-		Integer originalTimeLimit = publishedAssessment.getAssessmentAccessControl().getTimeLimit();
+		// includes the extended time of this student, the access control is shared by everyone taking the assessment
+		Integer originalTimeLimit = publishedAssessment.getTimeLimit();
 		int extTimeAdjust = 0;
 
 		// Calcuate the adjustment due to extended time if necessary
@@ -571,7 +571,6 @@ public class ItemContentsBean implements Serializable {
 	 */
 	public void setNumber(int number) {
 		this.number = number;
-		this.itemData.setSequence( Integer.valueOf(number));
 	}
 
 	/**
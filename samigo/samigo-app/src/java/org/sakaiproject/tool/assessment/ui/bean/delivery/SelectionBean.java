@@ -46,6 +46,11 @@ public class SelectionBean {
 
 	private String feedback;
 
+	// this student's label and text for the answer, which is shared and so never relabelled itself
+	private String label;
+
+	private String text;
+
 
 	public ItemContentsBean getItemContentsBean() {
 		return parent;
@@ -110,6 +115,24 @@ public class SelectionBean {
 		feedback = newfb;
 	}
 
+	public String getLabel() {
+		if (label == null)
+			return "";
+		return label;
+	}
+
+	public void setLabel(String newLabel) {
+		label = newLabel;
+	}
+
+	public String getText() {
+		return text;
+	}
+
+	public void setText(String newText) {
+		text = newText;
+	}
+
 	public String getAnswerId() {
 		return answer.getId().toString();
 	}
@@ -168,16 +168,6 @@ public class PDFAssessmentBean implements Serializable {
 			// Renumbering
 			for (ItemContentsBean itemContents : items) {
 				itemContents.setNumber(numberQuestion++);
-
-				// Order answers in order (A, B, C, D)
-				List<ItemTextIfc> question = itemContents.getItemData().getItemTextArraySorted();
-				for (ItemTextIfc itemtext : question) {
-					List<AnswerIfc> answers = itemtext.getAnswerArray();
-					for (AnswerIfc answer : answers) {
-						if (answer.getLabel() != null && !answer.getLabel().equals(""))
-							answer.setSequence(Long.valueOf(answer.getLabel().charAt(0) - 64));
-					}
-				}
 			}
 			parts.add(section);
 		}
@@ -636,7 +626,13 @@ public class PDFAssessmentBean implements Serializable {
 		if (item.getItemData().getTypeId().equals(TypeIfc.TRUE_FALSE)) {
 			contentBuffer.append("<td colspan='1'><img src='/samigo-app/images/radiounchecked.gif' /></td>");
 			contentBuffer.append("<td colspan='19'>");
-			contentBuffer.append(convertFormattedText(answer.getText()));
+			// It's saved lower case in the db
+			if ("true".equals(answer.getText()))
+				contentBuffer.append(authorMessages.getString("true_msg"));
+			else if ("false".equals(answer.getText()))
+				contentBuffer.append(authorMessages.getString("false_msg"));
+			else
+				contentBuffer.append(convertFormattedText(answer.getText()));
 			contentBuffer.append("</td>");
 		}
 
@@ -186,7 +186,7 @@ public class BeginDeliveryActionListener implements ActionListener
   {
     PublishedAssessmentFacade pub;
     PublishedAssessmentService assessmentService = new PublishedAssessmentService();
-    pub = assessmentService.getPublishedAssessment(id);
+    pub = assessmentService.getPublishedAssessmentForDelivery(id);
     if (pub.getAssessmentFeedback()==null)
     {
       pub.setAssessmentFeedback(new PublishedFeedback());
@@ -371,11 +371,13 @@ public class BeginDeliveryActionListener implements ActionListener
     AssessmentAccessControlIfc control = pubAssessment.getAssessmentAccessControl();
     // check if we need to time the assessment, i.e.hasTimeassessment="true"
     String hasTimeLimit = pubAssessment.getAssessmentMetaDataByLabel("hasTimeAssessment");
+    // the access control is shared by everyone taking the assessment, the extended time only applies to this student
+    Integer timeLimit = control.getTimeLimit();
 
     //Override time limit settings if there's values in extended time
     if (extTimeService.hasExtendedTime()) {
     	if (extTimeService.getTimeLimit() > 0) {
-    		control.setTimeLimit(extTimeService.getTimeLimit());
+    		timeLimit = extTimeService.getTimeLimit();
     		hasTimeLimit = "true";
     	}
     	else {
@@ -383,15 +385,14 @@ public class BeginDeliveryActionListener implements ActionListener
     	}
     }
     
-    if (hasTimeLimit!=null && hasTimeLimit.equals("true") && control.getTimeLimit() != null){
+    if (hasTimeLimit!=null && hasTimeLimit.equals("true") && timeLimit != null){
 
     	delivery.setHasTimeLimit(true);
     	delivery.setTimerId((new Date()).getTime()+"");
 
     	if (unSubmittedAssessmentGrading == null || unSubmittedAssessmentGrading.getAttemptDate() == null) {
     		try {
-    			if (control.getTimeLimit() != null) {
-    				Integer timeLimit = control.getTimeLimit();
+    			if (timeLimit != null) {
     				if(timeLimit < 1) delivery.setHasTimeLimit(false); //TODO: figure out why I have to do this
     					delivery.setTimeLimit(delivery.updateTimeLimit(timeLimit.toString()));
     				int seconds = timeLimit;
@@ -449,11 +450,8 @@ public class BeginDeliveryActionListener implements ActionListener
     		}
     	}
     	else {
-    		if (extTimeService.hasExtendedTime() && extTimeService.getTimeLimit() > 0) {
-    			control.setTimeLimit(extTimeService.getTimeLimit());
-    		}
     		Date attemptDate = unSubmittedAssessmentGrading.getAttemptDate();
-    		long timeLimitInSetting = control.getTimeLimit();
+    		long timeLimitInSetting = timeLimit;
     		Long now = new Date().getTime();
     		Long start = attemptDate.getTime();
     		if((now - start) > (timeLimitInSetting*1000)) {
@@ -467,7 +465,7 @@ public class BeginDeliveryActionListener implements ActionListener
     			}
     		}
     		delivery.setBeginTime(attemptDate);
-    		String timeBeforeDueRetract = delivery.getTimeBeforeDueRetract(control.getTimeLimit() == null ? "0" : String.valueOf(control.getTimeLimit()));
+    		String timeBeforeDueRetract = delivery.getTimeBeforeDueRetract(String.valueOf(timeLimit));
     		delivery.setTimeLimit(timeBeforeDueRetract);
     		long adjustedTimedAssesmentDueDateLong  = attemptDate.getTime() + Long.parseLong(timeBeforeDueRetract) * 1000;
     		delivery.setAdjustedTimedAssesmentDueDate(new Date(adjustedTimedAssesmentDueDateLong));
@@ -530,7 +528,7 @@ public class BeginDeliveryActionListener implements ActionListener
 
     	}
     	else {
-    		pub = publishedAssessmentService.getPublishedAssessment(assessmentId);
+    		pub = publishedAssessmentService.getPublishedAssessmentForDelivery(assessmentId);
     	}
         break;
 
@@ -1380,6 +1380,9 @@ public class DeliveryActionListener
 
     // Generate the answer key
     String key = "";
+    // The answers belong to the published assessment every student shares, so this student's
+    // labels are kept here by answer id rather than written back onto them
+    Map<Long, String> answerLabels = new HashMap<>();
     Iterator key1 = item.getItemTextArraySorted().iterator();
     int j = 0;
     while (key1.hasNext())
@@ -1460,6 +1463,7 @@ public class DeliveryActionListener
       while (key2.hasNext())
       {
         AnswerIfc answer = (AnswerIfc) key2.next();
+        String answerLabel = answer.getLabel();
 
         // Don't save the answer if it has no text
         if ( (answer.getText() == null || answer.getText().trim().equals(""))
@@ -1481,7 +1485,7 @@ public class DeliveryActionListener
               item.getTypeId().equals(TypeIfc.MATCHING) ||
               item.getTypeId().equals(TypeIfc.IMAGEMAP_QUESTION))
           {
-            answer.setLabel(Character.toString(alphabet.charAt(k++)));
+            answerLabel = Character.toString(alphabet.charAt(k++));
             if (answer.getIsCorrect() != null &&
                 answer.getIsCorrect().booleanValue())
             {
@@ -1493,11 +1497,11 @@ public class DeliveryActionListener
 
               if ("".equals(key))
               {
-                key += addition + answer.getLabel();
+                key += addition + answerLabel;
               }
               else
               {
-                key += ", " + addition + answer.getLabel();
+                key += ", " + addition + answerLabel;
               }
             }
           }
@@ -1505,7 +1509,7 @@ public class DeliveryActionListener
           if (item.getTypeId().equals(TypeIfc.EXTENDED_MATCHING_ITEMS) && text.isEmiQuestionItemText()
         		  && answer.getIsCorrect())
           {
-        	  key += answer.getLabel();
+        	  key += answerLabel;
           }
 
           //multiple choice partial credit:
@@ -1517,9 +1521,9 @@ public class DeliveryActionListener
         	  if(pc > 0){
         		  String correct = rb.getString("alt_correct");
         		  if(("").equals(key)){
-        			  key = answer.getLabel() + "&nbsp;<span style='color: green'>(" + pc + "%&nbsp;" + correct + ")</span>";
+        			  key = answerLabel + "&nbsp;<span style='color: green'>(" + pc + "%&nbsp;" + correct + ")</span>";
         		  }else{
-        			  key += ",&nbsp;" + answer.getLabel() + "&nbsp;<span style='color: green'>(" + pc + "%&nbsp;" + correct + ")</span>";
+        			  key += ",&nbsp;" + answerLabel + "&nbsp;<span style='color: green'>(" + pc + "%&nbsp;" + correct + ")</span>";
         		  }
         	  }
           }
@@ -1559,6 +1563,7 @@ public class DeliveryActionListener
           }
           //myanswers will get the answer even for matrix and multiple choices survey
           myanswers.add(answer);
+          answerLabels.put(answer.getId(), answerLabel);
         }
       }
     }
@@ -1626,31 +1631,29 @@ public class DeliveryActionListener
         selectionBean.setAnswer(answer);
         
         // It's saved lower case in the db -- this is a kludge
+        String answerText = answer.getText();
         if (item.getTypeId().equals(TypeIfc.TRUE_FALSE) && // True/False
-            answer.getText().equals("true"))
+            "true".equals(answerText))
         {
-          answer.setText(rb.getString("true_msg"));
+          answerText = rb.getString("true_msg");
         }
         if (item.getTypeId().equals(TypeIfc.TRUE_FALSE) && // True/False
-            answer.getText().equals("false"))
+            "false".equals(answerText))
         {
-          answer.setText(rb.getString("false_msg"));
+          answerText = rb.getString("false_msg");
 
         }
+        String answerLabel = answerLabels.get(answer.getId());
+        selectionBean.setLabel(answerLabel);
+        selectionBean.setText(answerText);
         String label = "";
-        if (answer.getLabel() == null)
+        if (StringUtils.isNotEmpty(answerLabel))
         {
-          answer.setLabel("");
-
-          // Delete this when everything works.
-        }
-        if (!answer.getLabel().equals(""))
-        {
-          label += answer.getLabel() + ". " + answer.getText();
+          label += answerLabel + ". " + answerText;
         }
         else
         {
-          label = answer.getText();
+          label = answerText;
 
           // Set the response to true or false for each answer
         }
@@ -1970,10 +1973,6 @@ public class DeliveryActionListener
           {
             fbean.setItemGradingData(data);
             fbean.setResponse(ComponentManager.get(FormattedText.class).convertFormattedTextToPlaintext(data.getAnswerText()));
-            if (answer.getText() == null)
-            {
-              answer.setText("");
-            }
             
             if (data.getIsCorrect() == null) {
             	GradingService gs = new GradingService();
@@ -2125,10 +2124,6 @@ public class DeliveryActionListener
         	  
             fbean.setItemGradingData(data);
             fbean.setResponse(ComponentManager.get(FormattedText.class).convertFormattedTextToPlaintext(data.getAnswerText()));
-            if (answer.getText() == null)
-            {
-              answer.setText("");
-            }
             
             if (data.getIsCorrect() == null) {
             	GradingService gs = new GradingService();
@@ -2392,10 +2387,6 @@ public class DeliveryActionListener
                   {
                       fbean.setItemGradingData(data);
                       fbean.setResponse(ComponentManager.get(FormattedText.class).convertFormattedTextToPlaintext(data.getAnswerText()));
-                      if (answer.getText() == null)
-                      {
-                          answer.setText("");
-                      }
                       fbean.setIsCorrect(service.getCalcQResult(data, item, service.getAnswersMap(), i));
                   }
               }
@@ -2556,7 +2547,7 @@ public class DeliveryActionListener
     else {
       try{
         publishedAssessment =
-          (new PublishedAssessmentService()).getPublishedAssessment(id);
+          (new PublishedAssessmentService()).getPublishedAssessmentForDelivery(id);
 	delivery.setPublishedAssessment(publishedAssessment);
       }
       catch(Exception e){
@@ -2674,10 +2665,12 @@ public class DeliveryActionListener
 			publishedAssessment.setRetractDate(extendedTimeDeliveryService.getRetractDate());
 		}
     
-    String timeLimitInSetting = control.getTimeLimit() == null ? "0" : control.getTimeLimit().toString();
+    // the facade holds the extended time limit of this student, the access control is shared
+    Integer timeLimitOverride = publishedAssessment.getTimeLimit();
+    String timeLimitInSetting = timeLimitOverride == null ? "0" : timeLimitOverride.toString();
     String timeBeforeDueRetract = delivery.getTimeBeforeDueRetract(timeLimitInSetting);
     boolean isTimedAssessmentBySetting = delivery.isHasTimeLimit() && 
-    		control.getTimeLimit() != null && control.getTimeLimit().intValue() > 0;
+    		timeLimitOverride != null && timeLimitOverride.intValue() > 0;
     //boolean turnIntoTimedAssessment = false;
     boolean releaseToAnonymouse = control.getReleaseTo() != null && control.getReleaseTo().indexOf("Anonymous Users")> -1;
     
@@ -78,7 +78,7 @@ public class SaCharCountListener implements ActionListener
 									item.setIsInvalidSALengthInput(false);
 								}
 								redrawAnchorName.append("q");
-								String itemSeq = itemData.getSequence().toString();
+								String itemSeq = Integer.toString(item.getNumber());
 								redrawAnchorName.append(itemSeq);
 								delivery.setRedrawAnchorName(redrawAnchorName.toString());
 							}
@@ -89,7 +89,7 @@ public class SaCharCountListener implements ActionListener
 					if (itemId.equals(itemData.getItemIdString())) { 
 						item.setSaCharCount("0");
 						redrawAnchorName.append("q");
-						String itemSeq = itemData.getSequence().toString();
+						String itemSeq = Integer.toString(item.getNumber());
 						redrawAnchorName.append(itemSeq);
 						delivery.setRedrawAnchorName(redrawAnchorName.toString());
 					}
@@ -62,6 +62,7 @@ import org.sakaiproject.tool.assessment.data.ifc.assessment.PublishedAssessmentI
 import org.sakaiproject.tool.assessment.data.ifc.assessment.SectionDataIfc;
 import org.sakaiproject.tool.assessment.data.ifc.shared.TypeIfc;
 import org.sakaiproject.tool.assessment.facade.AgentFacade;
+import org.sakaiproject.tool.assessment.facade.AssessmentStatistics;
 import org.sakaiproject.tool.assessment.services.GradingService;
 import org.sakaiproject.tool.assessment.services.PublishedItemService;
 import org.sakaiproject.tool.assessment.services.assessment.PublishedAssessmentService;
@@ -232,11 +233,6 @@ public class HistogramListener
 		  delegate = new GradingService();
 		  PublishedAssessmentService pubService = new PublishedAssessmentService();
 		  List<AssessmentGradingData> allscores = delegate.getTotalScores(publishedId, which);
-          //set the ItemGradingData manually here. or we cannot
-          //retrieve it later.
-          for(AssessmentGradingData agd: allscores){
-          	agd.setItemGradingSet(delegate.getItemGradingSet(String.valueOf(agd.getAssessmentGradingId())));
-          }
           if (allscores.isEmpty()) {
 			// Similar case in Bug 1537, but clicking Statistics link instead of assignment title.
 			// Therefore, redirect the the same page.
@@ -279,9 +275,6 @@ public class HistogramListener
 			  return false;
 		  }
 		  
-		  // here scores contain AssessmentGradingData 
-		  Map assessmentMap = getAssessmentStatisticsMap(scores);
-
 		  /*
 		   * find students in upper and lower quartiles 
 		   * of assessment scores
@@ -346,6 +339,17 @@ public class HistogramListener
 
 			  List<? extends SectionDataIfc> parts = pub.getSectionArraySorted();
                           histogramScores.setAssesmentParts((List<PublishedSectionData>)parts);
+
+			  // totals, score distributions and who was given which question, in one pass over the item gradings
+			  List<Long> itemIds = new ArrayList<>();
+			  for (SectionDataIfc section : parts) {
+				  for (ItemDataIfc item : section.getItemArraySortedForGrading()) {
+					  itemIds.add(item.getItemId());
+				  }
+			  }
+			  AssessmentStatistics statistics = delegate.getAssessmentStatistics(Long.valueOf(publishedId), scores, itemIds);
+			  Map assessmentMap = getAssessmentStatisticsMap(statistics.getSortedTotals(), scores.size());
+
 			  List info = new ArrayList();
 			  Iterator partsIter = parts.iterator();
 			  int secseq = 1;
@@ -469,7 +473,7 @@ public class HistogramListener
 					  //ArrayList responses = null;
 
 					  //for each question (item) in the published assessment's current part/section
-					  determineResults(pub, questionScores, (List) itemScores.get(item.getItemId()));
+					  determineResults(pub, questionScores, (List) itemScores.get(item.getItemId()), statistics);
 					  questionScores.setTotalScore(item.getScore().toString());
 
 					  questionScores.setN(""+numSubmissions);
@@ -497,7 +501,7 @@ public class HistogramListener
                             if(questionScores.getNumResponses() != 0){
                                 //need to only get gradings for students that answered this question
                                 List<AssessmentGradingData> filteredGradings =
-                            		filterGradingData(submissionsSortedForDiscrim, questionScores.getItemId());
+                            		filterGradingData(submissionsSortedForDiscrim, questionScores.getItemId(), statistics);
                                 
                                 // SAM-2228: loop control issues because of unsynchronized collection access
                                 int filteredGradingsSize = filteredGradings.size();
@@ -757,8 +761,10 @@ public class HistogramListener
    * @param pub
    * @param qbean
    * @param itemScores
+   * @param statistics
    */
-  private void determineResults(PublishedAssessmentIfc pub, HistogramQuestionScoresBean qbean, List<ItemGradingData> itemScores)
+  private void determineResults(PublishedAssessmentIfc pub, HistogramQuestionScoresBean qbean, List<ItemGradingData> itemScores,
+    AssessmentStatistics statistics)
   {
     if (itemScores == null)
       itemScores = new ArrayList<ItemGradingData>();
@@ -804,7 +810,7 @@ public class HistogramListener
     if (qbean.getQuestionType().equals(TypeIfc.ESSAY_QUESTION.toString()) || // essay
         qbean.getQuestionType().equals(TypeIfc.FILE_UPLOAD.toString()) || // file upload
         qbean.getQuestionType().equals(TypeIfc.AUDIO_RECORDING.toString())) // audio recording
-      doScoreStatistics(qbean, itemScores);
+      doScoreStatistics(qbean, statistics.getSortedRowScores(qbean.getItemId()));
 
   }
 
@@ -2158,10 +2164,10 @@ public class HistogramListener
 	  qbean.setNumResponses(numStudentRespondedMap.size());
   }	
 
-  private void doScoreStatistics(HistogramQuestionScoresBean qbean, List scores)
+  private void doScoreStatistics(HistogramQuestionScoresBean qbean, double[] scores)
   {
-    // here scores contain ItemGradingData
-    Map assessmentMap = getAssessmentStatisticsMap(scores);
+    // here scores are the item grading scores, ascending
+    Map assessmentMap = getAssessmentStatisticsMap(scores, scores.length);
 
     // test to see if it gets back empty map
     if (assessmentMap.isEmpty())
@@ -2189,7 +2195,7 @@ public class HistogramListener
 
       // SAK-1933: if there is no response, do not show bars at all 
       // do not check if assessmentMap is empty, because it's never empty.
-      if (scores.size() == 0) {
+      if (scores.length == 0) {
       bars = new HistogramBarBean[0];
     }
     else {
@@ -2213,48 +2219,17 @@ public class HistogramListener
 	}
   }
 
-  private Map getAssessmentStatisticsMap(List scoreList)
+  private Map getAssessmentStatisticsMap(double[] sortedScores, int numResponses)
   {
     // this function is used to calculate stats for an entire assessment
-    // or for a non-autograded question
-    // depending on data's instanceof 
+    // (submission final scores) or for a non-autograded question
+    // (item grading scores), already in ascending order
 
-    Iterator iter = scoreList.iterator();
-    List<Double> doubles = new ArrayList<>();
-    while (iter.hasNext())
-    {
-      Object data = iter.next();
-      if (data instanceof AssessmentGradingData) {
-    	  Double finalScore = ((AssessmentGradingData) data).getFinalScore();
-    	  if (finalScore == null) {
-    		  finalScore = Double.valueOf("0");
-    	  }
-        doubles.add(finalScore);
-      }
-      else
-      {
-        double autoScore = (double) 0.0;
-        if (((ItemGradingData) data).getAutoScore() != null)
-          autoScore = ((ItemGradingData) data).getAutoScore().doubleValue();
-        double overrideScore = (double) 0.0;
-        if (((ItemGradingData) data).getOverrideScore() != null)
-          overrideScore =
-            ((ItemGradingData) data).getOverrideScore().doubleValue();
-        doubles.add(Double.valueOf(autoScore + overrideScore));
-      }
-    }
-
-    if (doubles.isEmpty())
-      doubles.add(new Double(0.0));
-
-    doubles.sort(Comparator.naturalOrder());
-
-    double[] scores = new double[doubles.size()];
-    int i = 0;
-    for (Double d : doubles) {
-        BigDecimal bd = new BigDecimal(d);
+    double[] scores = sortedScores.length == 0 ? new double[] { 0.0 } : new double[sortedScores.length];
+    for (int i = 0; i < sortedScores.length; i++) {
+        BigDecimal bd = new BigDecimal(sortedScores[i]);
         bd = bd.setScale(2, RoundingMode.HALF_UP);
-        scores[i++] = bd.doubleValue();
+        scores[i] = bd.doubleValue();
     }
 
     Map statMap = new HashMap();
@@ -2269,7 +2244,7 @@ public class HistogramListener
    
     statMap.put("maxScore", castingNum(max,2));
     statMap.put("interval", Integer.valueOf(interval));
-    statMap.put("numResponses", Integer.valueOf(scoreList.size()));
+    statMap.put("numResponses", Integer.valueOf(numResponses));
     // statMap.put("numResponses", Integer.valueOf(scores.length));
 
     statMap.put("totalScore",castingNum(total,2));
@@ -2283,7 +2258,7 @@ public class HistogramListener
     statMap.put("standDev", castingNum(calStandDev(scores, mean),2));
     //NEW
     //statMap.put("columnHeight", calColumnHeight(numStudents));
-    statMap.put("columnHeight", calColumnHeight(numStudents,scoreList.size()));
+    statMap.put("columnHeight", calColumnHeight(numStudents,numResponses));
   
     statMap.put("arrayLength", Integer.valueOf(numStudents.length));
     statMap.put(
@@ -3016,15 +2991,12 @@ public class HistogramListener
 		});
 	}
 
-	private List<AssessmentGradingData> filterGradingData(List<AssessmentGradingData> submissionsSortedForDiscrim, Long itemId) {
+	private List<AssessmentGradingData> filterGradingData(List<AssessmentGradingData> submissionsSortedForDiscrim, Long itemId,
+            AssessmentStatistics statistics) {
         List<AssessmentGradingData> submissionsForItemSortedForDiscrim = new ArrayList<AssessmentGradingData>();
         for(AssessmentGradingData agd: submissionsSortedForDiscrim){
-            Set<ItemGradingData> itemGradings = agd.getItemGradingSet();
-            for(ItemGradingData igd: itemGradings){
-                if(igd.getPublishedItemId().equals(itemId)){
-                    submissionsForItemSortedForDiscrim.add(agd);
-                    break;
-                }
+            if(statistics.hasItem(agd.getAssessmentGradingId(), itemId)){
+                submissionsForItemSortedForDiscrim.add(agd);
             }
         }
         return submissionsForItemSortedForDiscrim;
@@ -47,10 +47,10 @@ should be included in file importing DeliveryMessages
         disabled="#{delivery.actionString=='reviewAssessment' || delivery.actionString=='gradeAssessment'}" />
       <h:panelGroup layout="block" styleClass="mcAnswerText">
         <span class="samigo-answer-label strong" aria-hidden="true">
-          <h:outputText value=" #{selection.answer.label}" escape="false" />
-          <h:outputText value="#{deliveryMessages.dot} " rendered="#{selection.answer.label ne ''}" />
+          <h:outputText value=" #{selection.label}" escape="false" />
+          <h:outputText value="#{deliveryMessages.dot} " rendered="#{selection.label ne ''}" />
         </span>
-        <h:outputLabel for="samigo-mc-mc" value="#{selection.answer.text}" escape="false">
+        <h:outputLabel for="samigo-mc-mc" value="#{selection.text}" escape="false">
           <f:converter converterId="org.sakaiproject.tool.assessment.jsf.convert.SecureContentWrapper" />
         </h:outputLabel>
       </h:panelGroup>
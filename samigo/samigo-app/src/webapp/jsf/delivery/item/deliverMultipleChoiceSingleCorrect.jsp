@@ -72,10 +72,10 @@ should be included in file importing DeliveryMessages
     <h:panelGroup layout="block" styleClass="mcscFixUpTarget"></h:panelGroup>
     <h:panelGroup styleClass="mcAnswerText">
       <span class="samigo-answer-label strong" aria-hidden="true">
-        <h:outputText value=" #{selection.answer.label}" escape="false" />
-        <h:outputText value="#{deliveryMessages.dot} " rendered="#{selection.answer.label ne ''}" />
+        <h:outputText value=" #{selection.label}" escape="false" />
+        <h:outputText value="#{deliveryMessages.dot} " rendered="#{selection.label ne ''}" />
       </span>
-      <h:outputText styleClass="samigo-answer-text" value="#{selection.answer.text}" escape="false">
+      <h:outputText styleClass="samigo-answer-text" value="#{selection.text}" escape="false">
         <f:converter converterId="org.sakaiproject.tool.assessment.jsf.convert.AnswerSurveyConverter" />
         <f:converter converterId="org.sakaiproject.tool.assessment.jsf.convert.SecureContentWrapper" />
       </h:outputText>
@@ -40,7 +40,9 @@ should be included in file importing DeliveryMessages
         <h:column>
           	<%-- Show true/false radio buttons --%>
       <h:panelGroup id="image1" styleClass="samigo-inline-radio fa fa-circle-o"></h:panelGroup>
-			<h:outputText escape="false" value=" #{answer.text}" />
+			<h:outputText value=" #{authorMessages.true_msg}" rendered="#{answer.text eq 'true'}" />
+			<h:outputText value=" #{authorMessages.false_msg}" rendered="#{answer.text eq 'false'}" />
+			<h:outputText escape="false" value=" #{answer.text}" rendered="#{answer.text ne 'true' && answer.text ne 'false'}" />
         </h:column>
       </h:dataTable>
     </h:column>
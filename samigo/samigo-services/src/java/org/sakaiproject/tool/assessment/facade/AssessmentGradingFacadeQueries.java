@@ -17,6 +17,7 @@
 package org.sakaiproject.tool.assessment.facade;
 
 import java.io.File;
+import java.sql.PreparedStatement;
 import java.text.Collator;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
@@ -44,6 +45,8 @@ import java.util.stream.Collectors;
 import org.apache.commons.collections4.comparators.NullComparator;
 import org.hibernate.Criteria;
 import org.hibernate.HibernateException;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
 import org.hibernate.criterion.Criterion;
 import org.hibernate.criterion.Disjunction;
@@ -114,6 +117,11 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class AssessmentGradingFacadeQueries extends HibernateDaoSupport implements AssessmentGradingFacadeQueriesAPI {
 
+    // rows sent to the database in one JDBC batch when saving answers or elapsed times
+    private static final int JDBC_BATCH_SIZE = 100;
+    // item grading rows fetched per round trip when streaming them for the statistics page
+    private static final int STATISTICS_FETCH_SIZE = 1000;
+
     /**
      * Default empty Constructor
      */
@@ -343,6 +351,39 @@ public class AssessmentGradingFacadeQueries extends HibernateDaoSupport implemen
         }
     }
 
+    public void streamItemScores(final Long publishedId, final AssessmentStatistics.Accumulator accumulator) {
+        final HibernateCallback<Void> hcb = session -> {
+            Query<Object[]> q = session.createQuery(
+                    "select i.assessmentGradingId, i.publishedItemId, i.autoScore, i.overrideScore " +
+                    "from ItemGradingData i, AssessmentGradingData a " +
+                    "where i.assessmentGradingId = a.assessmentGradingId and a.publishedAssessmentId = :id " +
+                    "and a.forGrade = :forgrade and a.status > :status", Object[].class);
+            q.setParameter("id", publishedId);
+            q.setParameter("forgrade", true);
+            q.setParameter("status", AssessmentGradingData.REMOVED);
+            q.setReadOnly(true);
+            q.setFetchSize(STATISTICS_FETCH_SIZE);
+            try (ScrollableResults rows = q.scroll(ScrollMode.FORWARD_ONLY)) {
+                while (rows.next()) {
+                    accumulator.accept((Long) rows.get(0), (Long) rows.get(1), (Double) rows.get(2), (Double) rows.get(3));
+                }
+            }
+            return null;
+        };
+        getHibernateTemplate().execute(hcb);
+    }
+
+    public String getSubmissionsVersion(final Long publishedId) {
+        final HibernateCallback<Object[]> hcb = session -> session.createQuery(
+                "select count(a), max(a.assessmentGradingId), max(a.submittedDate), max(a.gradedDate), sum(a.status), " +
+                "sum(a.finalScore), sum(a.totalAutoScore), sum(a.totalOverrideScore) " +
+                "from AssessmentGradingData a where a.publishedAssessmentId = :id", Object[].class)
+                .setParameter("id", publishedId)
+                .uniqueResult();
+        Object[] fingerprint = getHibernateTemplate().execute(hcb);
+        return Arrays.stream(fingerprint).map(String::valueOf).collect(Collectors.joining("/"));
+    }
+
     /**
      * This returns a hashmap of all the latest item entries, keyed by
      * item id for easy retrieval.
@@ -1484,9 +1525,33 @@ public class AssessmentGradingFacadeQueries extends HibernateDaoSupport implemen
         c.removeAll(Collections.singleton(null));
         while (retryCount > 0) {
             try {
-                for (ItemGradingData itemGradingData : c) {
-                    getHibernateTemplate().merge(itemGradingData);
-                }
+                getHibernateTemplate().execute(session -> {
+                    session.setJdbcBatchSize(JDBC_BATCH_SIZE);
+                    List<Long> ids = c.stream().map(ItemGradingData::getItemGradingId)
+                            .filter(id -> id != null && id > 0).distinct().collect(Collectors.toList());
+
+                    // a failed batch update leaves the transaction rollback only, so look up which answers are still
+                    // there first and merge the ones removed since they were read, one at a time, like before
+                    Set<Long> existing = new HashSet<>();
+                    for (int i = 0; i < ids.size(); i += 1000) {
+                        Query<Long> q = session.createQuery("select i.itemGradingId from ItemGradingData i where i.itemGradingId in (:ids)", Long.class);
+                        q.setParameterList("ids", ids.subList(i, Math.min(i + 1000, ids.size())));
+                        existing.addAll(q.list());
+                    }
+
+                    List<ItemGradingData> merged = new ArrayList<>();
+                    for (ItemGradingData itemGradingData : c) {
+                        if (existing.remove(itemGradingData.getItemGradingId())) {
+                            // the caller only passes answers it changed, so write them without reading them back first
+                            session.update(itemGradingData);
+                        } else {
+                            merged.add(itemGradingData);
+                        }
+                    }
+                    merged.forEach(session::merge);
+                    session.flush();
+                    return null;
+                });
                 retryCount = 0;
             } catch (Exception e) {
                 log.warn("problem inserting assessmentGrading: " + e.getMessage());
@@ -1495,6 +1560,33 @@ public class AssessmentGradingFacadeQueries extends HibernateDaoSupport implemen
         }
     }
 
+    public void updateTimeElapsed(final Map<Long, Integer> timeElapsedByGradingId) {
+        if (timeElapsedByGradingId == null || timeElapsedByGradingId.isEmpty()) return;
+
+        getHibernateTemplate().execute(session -> {
+            session.doWork(connection -> {
+                try (PreparedStatement statement = connection.prepareStatement(
+                        "UPDATE SAM_ASSESSMENTGRADING_T SET TIMEELAPSED = ? WHERE ASSESSMENTGRADINGID = ? AND FORGRADE = ? AND (TIMEELAPSED IS NULL OR TIMEELAPSED < ?)")) {
+                    int batched = 0;
+                    for (Entry<Long, Integer> entry : timeElapsedByGradingId.entrySet()) {
+                        statement.setInt(1, entry.getValue());
+                        statement.setLong(2, entry.getKey());
+                        statement.setBoolean(3, false);
+                        statement.setInt(4, entry.getValue());
+                        statement.addBatch();
+                        if (++batched % JDBC_BATCH_SIZE == 0) {
+                            statement.executeBatch();
+                        }
+                    }
+                    if (batched % JDBC_BATCH_SIZE != 0) {
+                        statement.executeBatch();
+                    }
+                }
+            });
+            return null;
+        });
+    }
+
     public PublishedAssessmentIfc getPublishedAssessmentByAssessmentGradingId(final Long assessmentGradingId) {
 
         final HibernateCallback<List<PublishedAssessmentData>> hcb = session -> {
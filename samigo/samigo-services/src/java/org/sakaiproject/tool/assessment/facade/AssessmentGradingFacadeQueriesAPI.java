@@ -67,6 +67,18 @@ public interface AssessmentGradingFacadeQueriesAPI
   public Map<Long, List<ItemGradingData>> getItemScores(Long publishedId, Long itemId, String which, boolean loadItemGradingAttachment);
 
   public Map<Long, List<ItemGradingData>> getItemScores(final Long itemId, List<AssessmentGradingData> scores, boolean loadItemGradingAttachment);
+
+  /**
+   * Feeds the scores of every item grading of the submitted gradings of a published
+   * assessment to the accumulator, reading them through a forward only cursor instead of loading entities.
+   */
+  public void streamItemScores(Long publishedId, AssessmentStatistics.Accumulator accumulator);
+
+  /**
+   * @return a value that changes whenever a grading of the published assessment is started, submitted,
+   * regraded or removed
+   */
+  public String getSubmissionsVersion(Long publishedId);
   
   /**
    * This returns a hashmap of all the latest item entries, keyed by
@@ -203,6 +215,14 @@ public interface AssessmentGradingFacadeQueriesAPI
 
   public void saveOrUpdateAll(Collection<ItemGradingData> c);
 
+  /**
+   * Writes the elapsed time of several in progress assessment gradings in JDBC batches. A grading is only
+   * updated while it is not for grade and its stored time is lower, so a late write never undoes a submission.
+   *
+   * @param timeElapsedByGradingId elapsed seconds keyed by assessment grading id
+   */
+  public void updateTimeElapsed(Map<Long, Integer> timeElapsedByGradingId);
+
   public PublishedAssessmentIfc getPublishedAssessmentByAssessmentGradingId(Long assessmentGradingId);
 
   public PublishedAssessmentIfc getPublishedAssessmentByPublishedItemId(Long publishedItemId);
@@ -0,0 +1,194 @@
+/**
+ * Copyright (c) 2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.tool.assessment.facade;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+import org.sakaiproject.component.api.ServerConfigurationService;
+
+/**
+ * Coalesces the elapsed time written by the delivery timer for every student in an exam and writes it in
+ * JDBC batches every few seconds, instead of merging each student's whole assessment grading on every tick.
+ *
+ * Only the elapsed time is deferred. It is derived from the attempt date, so a value lost with a crashed node
+ * is recomputed by the next sync or by the submission itself, and the batched update never overwrites a
+ * grading that has been submitted or that already holds a later time. Answers are still written straight
+ * through, this bean just records how long those writes take.
+ */
+@Slf4j
+public class AssessmentGradingWriteBehind {
+
+	@Setter private AssessmentGradingFacadeQueriesAPI assessmentGradingFacadeQueries;
+	@Setter private ServerConfigurationService serverConfigurationService;
+
+	private final Map<Long, Integer> pendingTimeElapsed = new ConcurrentHashMap<>();
+	private ScheduledExecutorService flusher;
+
+	private final LongAdder timeElapsedQueued = new LongAdder();
+	private final LongAdder timeElapsedFlushes = new LongAdder();
+	private final LongAdder timeElapsedRowsFlushed = new LongAdder();
+	private final LongAdder timeElapsedFlushFailures = new LongAdder();
+	private final LongAdder timeElapsedFlushNanos = new LongAdder();
+	private final LongAdder itemGradingSaves = new LongAdder();
+	private final LongAdder itemGradingRowsSaved = new LongAdder();
+	private final LongAdder itemGradingSaveNanos = new LongAdder();
+	private final AtomicLong itemGradingMaxSaveNanos = new AtomicLong();
+
+	public void init() {
+		int flushSeconds = serverConfigurationService.getInt("samigo.delivery.timeElapsed.flushSeconds", 10);
+		if (flushSeconds > 0) {
+			flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread thread = new Thread(r, "samigo-time-elapsed-flush");
+				thread.setDaemon(true);
+				return thread;
+			});
+			flusher.scheduleWithFixedDelay(this::flush, flushSeconds, flushSeconds, TimeUnit.SECONDS);
+		}
+		if (flusher != null) {
+			log.info("Flushing delivery elapsed times every {} seconds", flushSeconds);
+		} else {
+			log.info("Writing delivery elapsed times straight through");
+		}
+	}
+
+	public void destroy() {
+		if (flusher != null) {
+			flusher.shutdown();
+			try {
+				flusher.awaitTermination(30, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			flusher = null;
+		}
+		// whatever is still pending goes out before the node stops
+		flush();
+	}
+
+	/**
+	 * Queues the elapsed time of an in progress assessment grading. When several ticks arrive before the next
+	 * flush only the highest time is written. Writes straight through when the flush is disabled.
+	 */
+	public void queueTimeElapsed(Long assessmentGradingId, Integer timeElapsed) {
+		if (assessmentGradingId == null || timeElapsed == null) return;
+
+		timeElapsedQueued.increment();
+		if (flusher == null) {
+			Map<Long, Integer> single = new HashMap<>();
+			single.put(assessmentGradingId, timeElapsed);
+			write(single);
+		} else {
+			pendingTimeElapsed.merge(assessmentGradingId, timeElapsed, Math::max);
+		}
+	}
+
+	/**
+	 * Drops the queued time of an assessment grading, called before the whole grading is written.
+	 */
+	public void discard(Long assessmentGradingId) {
+		if (assessmentGradingId != null) {
+			pendingTimeElapsed.remove(assessmentGradingId);
+		}
+	}
+
+	public void flush() {
+		Map<Long, Integer> batch = new HashMap<>();
+		for (Long id : pendingTimeElapsed.keySet()) {
+			Integer timeElapsed = pendingTimeElapsed.remove(id);
+			if (timeElapsed != null) {
+				batch.put(id, timeElapsed);
+			}
+		}
+		if (!batch.isEmpty()) {
+			write(batch);
+		}
+	}
+
+	private void write(Map<Long, Integer> batch) {
+		long start = System.nanoTime();
+		try {
+			assessmentGradingFacadeQueries.updateTimeElapsed(batch);
+			timeElapsedFlushes.increment();
+			timeElapsedRowsFlushed.add(batch.size());
+		} catch (Exception e) {
+			timeElapsedFlushFailures.increment();
+			log.warn("Could not write the elapsed time of {} assessment gradings, will retry: {}", batch.size(), e.toString());
+			if (flusher != null) {
+				batch.forEach((id, timeElapsed) -> pendingTimeElapsed.merge(id, timeElapsed, Math::max));
+			}
+		} finally {
+			timeElapsedFlushNanos.add(System.nanoTime() - start);
+		}
+	}
+
+	public void recordItemGradingSave(int rows, long nanos) {
+		itemGradingSaves.increment();
+		itemGradingRowsSaved.add(rows);
+		itemGradingSaveNanos.add(nanos);
+		itemGradingMaxSaveNanos.accumulateAndGet(nanos, Math::max);
+	}
+
+	public int getPendingTimeElapsedCount() {
+		return pendingTimeElapsed.size();
+	}
+
+	public long getTimeElapsedQueued() {
+		return timeElapsedQueued.sum();
+	}
+
+	public long getTimeElapsedFlushes() {
+		return timeElapsedFlushes.sum();
+	}
+
+	public long getTimeElapsedRowsFlushed() {
+		return timeElapsedRowsFlushed.sum();
+	}
+
+	public long getTimeElapsedFlushFailures() {
+		return timeElapsedFlushFailures.sum();
+	}
+
+	public long getTimeElapsedFlushMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(timeElapsedFlushNanos.sum());
+	}
+
+	public long getItemGradingSaves() {
+		return itemGradingSaves.sum();
+	}
+
+	public long getItemGradingRowsSaved() {
+		return itemGradingRowsSaved.sum();
+	}
+
+	public double getItemGradingAverageSaveMillis() {
+		long saves = itemGradingSaves.sum();
+		return saves == 0 ? 0 : itemGradingSaveNanos.sum() / 1_000_000.0 / saves;
+	}
+
+	public long getItemGradingMaxSaveMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(itemGradingMaxSaveNanos.get());
+	}
+}
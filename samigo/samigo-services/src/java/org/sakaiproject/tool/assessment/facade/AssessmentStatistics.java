@@ -0,0 +1,173 @@
+/**
+ * Copyright (c) 2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.tool.assessment.facade;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+
+import org.sakaiproject.tool.assessment.data.dao.grading.AssessmentGradingData;
+
+/**
+ * The statistics page figures for one published assessment that come from every item grading: the
+ * submission totals, the score distribution of each question and who was given which question.
+ *
+ * An instance is built by an {@link Accumulator} in a single pass over the item gradings, which can come
+ * straight off a database cursor, and keeps everything in primitive arrays so a few thousand submissions
+ * of a hundred questions stay small enough to cache. It is read only once built.
+ */
+public class AssessmentStatistics implements Serializable {
+
+	private static final long serialVersionUID = 2L;
+
+	private final String version;
+
+	// submissions, sorted by assessment grading id
+	private final long[] gradingIds;
+	// submission final scores, ascending
+	private final double[] sortedTotals;
+
+	// questions, sorted by published item id
+	private final long[] itemIds;
+	// per question, the score of every item grading row, ascending
+	private final double[][] rowScores;
+	// bit (item index * submissions + submission index) is set when the submission has a row for the question
+	private final BitSet present;
+
+	private AssessmentStatistics(Accumulator acc, String version) {
+		this.version = version;
+		this.gradingIds = acc.gradingIds;
+		this.itemIds = acc.itemIds;
+		this.present = acc.present;
+
+		sortedTotals = acc.totals.clone();
+		Arrays.sort(sortedTotals);
+
+		rowScores = new double[itemIds.length][];
+		for (int i = 0; i < itemIds.length; i++) {
+			rowScores[i] = Arrays.copyOf(acc.rowScores[i], acc.rowCounts[i]);
+			Arrays.sort(rowScores[i]);
+		}
+	}
+
+	/**
+	 * @return identifies the submissions this was computed from, see {@link AssessmentStatisticsCache}
+	 */
+	public String getVersion() {
+		return version;
+	}
+
+	public int getNumSubmissions() {
+		return gradingIds.length;
+	}
+
+	/**
+	 * @return a copy of the submission final scores, ascending
+	 */
+	public double[] getSortedTotals() {
+		return sortedTotals.clone();
+	}
+
+	/**
+	 * @return a copy of the score of every item grading row of the question, ascending, or an empty array
+	 */
+	public double[] getSortedRowScores(Long itemId) {
+		int i = itemIndex(itemId);
+		return i < 0 ? new double[0] : rowScores[i].clone();
+	}
+
+	/**
+	 * @return true if the submission has an item grading for the question, which is how to tell who
+	 * was given a question drawn at random from a pool
+	 */
+	public boolean hasItem(Long assessmentGradingId, Long itemId) {
+		int i = itemIndex(itemId);
+		int s = assessmentGradingId == null ? -1 : Arrays.binarySearch(gradingIds, assessmentGradingId);
+		return i >= 0 && s >= 0 && present.get(i * gradingIds.length + s);
+	}
+
+	private int itemIndex(Long itemId) {
+		return itemId == null ? -1 : Math.max(-1, Arrays.binarySearch(itemIds, itemId));
+	}
+
+	/**
+	 * Takes the item gradings of one set of submissions one row at a time, in any order. Rows for
+	 * submissions or questions it wasn't set up with are skipped. Not thread safe.
+	 */
+	public static class Accumulator {
+
+		private final long[] gradingIds;
+		private final double[] totals;
+		private final long[] itemIds;
+
+		private final double[][] rowScores;
+		private final int[] rowCounts;
+		private final BitSet present;
+		private long rows;
+
+		/**
+		 * @param submissions the submissions to include
+		 * @param itemIds the published item ids of the questions to include
+		 */
+		public Accumulator(List<AssessmentGradingData> submissions, Collection<Long> itemIds) {
+			int subs = submissions.size();
+			gradingIds = new long[subs];
+			for (int s = 0; s < subs; s++) {
+				gradingIds[s] = submissions.get(s).getAssessmentGradingId();
+			}
+			Arrays.sort(gradingIds);
+
+			totals = new double[subs];
+			for (AssessmentGradingData submission : submissions) {
+				Double finalScore = submission.getFinalScore();
+				totals[Arrays.binarySearch(gradingIds, submission.getAssessmentGradingId())] = finalScore == null ? 0d : finalScore;
+			}
+
+			this.itemIds = itemIds.stream().mapToLong(Long::longValue).distinct().sorted().toArray();
+			int items = this.itemIds.length;
+			rowScores = new double[items][subs];
+			rowCounts = new int[items];
+			present = new BitSet(subs * items);
+		}
+
+		/**
+		 * Adds one item grading row.
+		 */
+		public void accept(Long assessmentGradingId, Long itemId, Double autoScore, Double overrideScore) {
+			if (assessmentGradingId == null || itemId == null) return;
+			int s = Arrays.binarySearch(gradingIds, assessmentGradingId);
+			int i = Arrays.binarySearch(itemIds, itemId);
+			if (s < 0 || i < 0) return;
+			rows++;
+
+			present.set(i * gradingIds.length + s);
+			if (rowCounts[i] == rowScores[i].length) {
+				rowScores[i] = Arrays.copyOf(rowScores[i], rowScores[i].length * 2 + 1);
+			}
+			rowScores[i][rowCounts[i]++] = (autoScore == null ? 0d : autoScore) + (overrideScore == null ? 0d : overrideScore);
+		}
+
+		public long getRowCount() {
+			return rows;
+		}
+
+		public AssessmentStatistics finish(String version) {
+			return new AssessmentStatistics(this, version);
+		}
+	}
+}
@@ -0,0 +1,99 @@
+/**
+ * Copyright (c) 2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.tool.assessment.facade;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+import org.sakaiproject.memory.api.Cache;
+import org.sakaiproject.memory.api.MemoryService;
+
+/**
+ * Keeps the last {@link AssessmentStatistics} computed for each published assessment so that opening the
+ * statistics page again, or exporting it, doesn't read every item grading again.
+ *
+ * Entries are looked up by version, a fingerprint of the submissions taken from the database on each request.
+ * A new submission or a regrade changes the fingerprint, on whichever server it happened, so a stale entry
+ * is never returned and is replaced by the next build.
+ */
+@Slf4j
+public class AssessmentStatisticsCache {
+
+	public static final String CACHE_NAME = "org.sakaiproject.tool.assessment.facade.AssessmentStatisticsCache";
+
+	@Setter private MemoryService memoryService;
+
+	private Cache<Long, AssessmentStatistics> cache;
+	// builds in progress on this server, so instructors opening the page together compute it once
+	private final Map<String, CompletableFuture<AssessmentStatistics>> building = new ConcurrentHashMap<>();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong builds = new AtomicLong();
+
+	public void init() {
+		cache = memoryService.getCache(CACHE_NAME);
+	}
+
+	/**
+	 * @param publishedAssessmentId the published assessment
+	 * @param version the current fingerprint of the submissions the statistics are for
+	 * @param builder computes the statistics when the cached ones are missing or for another version
+	 * @return the statistics for that version
+	 */
+	public AssessmentStatistics get(Long publishedAssessmentId, String version, Supplier<AssessmentStatistics> builder) {
+		AssessmentStatistics statistics = cache.get(publishedAssessmentId);
+		if (statistics != null && statistics.getVersion().equals(version)) {
+			hits.incrementAndGet();
+			return statistics;
+		}
+
+		String key = publishedAssessmentId + "/" + version;
+		CompletableFuture<AssessmentStatistics> ours = new CompletableFuture<>();
+		CompletableFuture<AssessmentStatistics> inFlight = building.putIfAbsent(key, ours);
+		if (inFlight != null) {
+			return inFlight.join();
+		}
+
+		try {
+			long start = System.currentTimeMillis();
+			statistics = builder.get();
+			builds.incrementAndGet();
+			cache.put(publishedAssessmentId, statistics);
+			log.debug("Computed statistics for published assessment {} ({} submissions) in {} ms",
+					publishedAssessmentId, statistics.getNumSubmissions(), System.currentTimeMillis() - start);
+			ours.complete(statistics);
+			return statistics;
+		} catch (RuntimeException e) {
+			ours.completeExceptionally(e);
+			throw e;
+		} finally {
+			building.remove(key);
+		}
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getBuildCount() {
+		return builds.get();
+	}
+}
@@ -469,6 +469,14 @@ public class PublishedAssessmentFacade
     this.data.setAssessmentAccessControl(publishedAccessControl);
   }
 
+  /**
+   * Replaces the access control of this facade only, the data behind it keeps its own. Used when the data is
+   * shared by several deliveries.
+   */
+  void setDeliveryAccessControl(AssessmentAccessControlIfc publishedAccessControl) {
+    this.publishedAccessControl = publishedAccessControl;
+  }
+
   public EvaluationModelIfc getEvaluationModel() {
     return publishedEvaluationModel;
   }
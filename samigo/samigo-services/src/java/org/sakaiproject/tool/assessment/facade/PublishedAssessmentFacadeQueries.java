@@ -88,6 +88,7 @@ public class PublishedAssessmentFacadeQueries extends HibernateDaoSupport implem
 
 	private SecurityService securityService;
 	private SiteService siteService;
+	private PublishedAssessmentSnapshotCache snapshotCache;
 
 	public static final String STARTDATE = "assessmentAccessControl.startDate";
 
@@ -703,6 +704,26 @@ public class PublishedAssessmentFacadeQueries extends HibernateDaoSupport implem
 		PublishedAssessmentFacade f = new PublishedAssessmentFacade(a, releaseToGroups);
 		return f;
 	}
+
+	/**
+	 * Returns the published assessment with its groups for a student taking it. The sections, items and answers
+	 * are loaded once and shared by every student of the assessment until it is republished or its settings are
+	 * edited, so the graph behind the returned facade must not be modified.
+	 */
+	public PublishedAssessmentFacade getPublishedAssessmentForDelivery(Long assessmentId) {
+		if (snapshotCache == null) {
+			return getPublishedAssessment(assessmentId, true);
+		}
+		PublishedAssessmentSnapshotCache.Snapshot snapshot = snapshotCache.get(assessmentId, id -> {
+			PublishedAssessmentFacade f = getPublishedAssessment(id, true);
+			if (f == null || f.getData() == null) {
+				return null;
+			}
+			PublishedAssessmentData a = (PublishedAssessmentData) Hibernate.unproxy(f.getData());
+			return new PublishedAssessmentSnapshotCache.Snapshot(a, f.getReleaseToGroups());
+		});
+		return snapshot != null ? snapshot.newFacade() : null;
+	}
 	
 	public Long getPublishedAssessmentId(Long assessmentId) {
 		List<PublishedAssessmentData> list = (List<PublishedAssessmentData>) getHibernateTemplate()
@@ -1133,6 +1154,9 @@ public class PublishedAssessmentFacadeQueries extends HibernateDaoSupport implem
 		} else {
 			data = (PublishedAssessmentData) assessment;
 		}
+		if (snapshotCache != null && data.getPublishedAssessmentId() != null) {
+			snapshotCache.invalidate(data.getPublishedAssessmentId());
+		}
 
 		int retryCount = PersistenceService.getInstance().getPersistenceHelper().getRetryCount();
 		while (retryCount > 0) {
@@ -2313,6 +2337,10 @@ public class PublishedAssessmentFacadeQueries extends HibernateDaoSupport implem
 	public void setSiteService(SiteService siteService) {
 		this.siteService = siteService;
 	}
+
+	public void setSnapshotCache(PublishedAssessmentSnapshotCache snapshotCache) {
+		this.snapshotCache = snapshotCache;
+	}
 	
 	private List<String> getSiteGroupIdsForSubmittingAgent(String agentId, String siteId) {
 
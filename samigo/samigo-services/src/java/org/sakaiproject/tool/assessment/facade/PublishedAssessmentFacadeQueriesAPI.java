@@ -116,6 +116,8 @@ public interface PublishedAssessmentFacadeQueriesAPI
   public PublishedAssessmentFacade getPublishedAssessment(Long assessmentId);
   
   public PublishedAssessmentFacade getPublishedAssessment(Long assessmentId, boolean withGroupsInfo);
+
+  public PublishedAssessmentFacade getPublishedAssessmentForDelivery(Long assessmentId);
   
   public PublishedAssessmentFacade getPublishedAssessmentQuick(Long assessmentId);
 
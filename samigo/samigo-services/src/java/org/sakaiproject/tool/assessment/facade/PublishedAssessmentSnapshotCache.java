@@ -0,0 +1,191 @@
+/**
+ * Copyright (c) 2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.tool.assessment.facade;
+
+import java.io.Serializable;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+import org.sakaiproject.event.api.Event;
+import org.sakaiproject.event.api.EventTrackingService;
+import org.sakaiproject.memory.api.Cache;
+import org.sakaiproject.memory.api.MemoryService;
+import org.sakaiproject.samigo.util.SamigoConstants;
+import org.sakaiproject.tool.assessment.data.dao.assessment.PublishedAccessControl;
+import org.sakaiproject.tool.assessment.data.dao.assessment.PublishedAssessmentData;
+
+/**
+ * Holds one fully loaded published assessment graph (sections, items, item texts, answers and feedback)
+ * per published assessment so that every student starting or navigating an exam shares it instead of
+ * loading their own copy through Hibernate.
+ *
+ * The shared graph is detached and must be treated as read only. Each caller gets its own
+ * {@link PublishedAssessmentFacade} over it with a copy of the access control, so per-student settings such
+ * as an extended time limit or due date stay with that delivery.
+ *
+ * A snapshot is dropped whenever the published assessment is republished, edited, or removed. Those events
+ * reach the observers on every server in the cluster, so no node keeps serving an old version.
+ */
+@Slf4j
+public class PublishedAssessmentSnapshotCache implements Observer {
+
+	public static final String CACHE_NAME = "org.sakaiproject.tool.assessment.facade.PublishedAssessmentSnapshotCache";
+
+	private static final Pattern PUBLISHED_ASSESSMENT_ID = Pattern.compile("(?:publishedAssessmentId|pubAssessmentId)=(\\d+)");
+
+	@Setter private MemoryService memoryService;
+	@Setter private EventTrackingService eventTrackingService;
+
+	private Cache<Long, Snapshot> cache;
+	// builds in progress on this server, so a burst of students opening the same exam loads it once
+	private final Map<Long, CompletableFuture<Snapshot>> loading = new ConcurrentHashMap<>();
+	// bumped on every invalidation so a build that raced with one is not cached
+	private final AtomicLong invalidations = new AtomicLong();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong builds = new AtomicLong();
+
+	public void init() {
+		cache = memoryService.getCache(CACHE_NAME);
+		eventTrackingService.addObserver(this);
+	}
+
+	public void destroy() {
+		eventTrackingService.deleteObserver(this);
+	}
+
+	/**
+	 * @param publishedAssessmentId the published assessment to return
+	 * @param loader builds the snapshot when it isn't cached yet, may return null if the assessment doesn't exist
+	 * @return the shared snapshot, or null if the loader found nothing
+	 */
+	public Snapshot get(Long publishedAssessmentId, Function<Long, Snapshot> loader) {
+		Snapshot snapshot = cache.get(publishedAssessmentId);
+		if (snapshot != null) {
+			hits.incrementAndGet();
+			return snapshot;
+		}
+
+		CompletableFuture<Snapshot> ours = new CompletableFuture<>();
+		CompletableFuture<Snapshot> inFlight = loading.putIfAbsent(publishedAssessmentId, ours);
+		if (inFlight != null) {
+			// someone else is already building it
+			return inFlight.join();
+		}
+
+		try {
+			long generation = invalidations.get();
+			snapshot = loader.apply(publishedAssessmentId);
+			builds.incrementAndGet();
+			if (snapshot != null && generation == invalidations.get()) {
+				cache.put(publishedAssessmentId, snapshot);
+			}
+			ours.complete(snapshot);
+			return snapshot;
+		} catch (RuntimeException e) {
+			ours.completeExceptionally(e);
+			throw e;
+		} finally {
+			loading.remove(publishedAssessmentId);
+		}
+	}
+
+	public void invalidate(Long publishedAssessmentId) {
+		invalidations.incrementAndGet();
+		cache.remove(publishedAssessmentId);
+		log.debug("Dropped published assessment snapshot {}", publishedAssessmentId);
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getBuildCount() {
+		return builds.get();
+	}
+
+	@Override
+	public void update(Observable observable, Object arg) {
+		if (!(arg instanceof Event)) return;
+		Event event = (Event) arg;
+		String name = event.getEvent();
+		if (SamigoConstants.EVENT_PUBLISHED_ASSESSMENT_REPUBLISH.equals(name)
+				|| SamigoConstants.EVENT_PUBLISHED_ASSESSMENT_CONFIRM_EDIT.equals(name)
+				|| SamigoConstants.EVENT_PUBLISHED_ASSESSMENT_SETTING_EDIT.equals(name)
+				|| SamigoConstants.EVENT_PUBLISHED_ASSESSMENT_REMOVE.equals(name)) {
+			Matcher matcher = PUBLISHED_ASSESSMENT_ID.matcher(String.valueOf(event.getResource()));
+			if (matcher.find()) {
+				invalidate(Long.valueOf(matcher.group(1)));
+			}
+		}
+	}
+
+	/**
+	 * An immutable holder for one version of a published assessment, identified by its last modified date.
+	 */
+	public static class Snapshot implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private final PublishedAssessmentData data;
+		private final Map releaseToGroups;
+		private final Date version;
+
+		public Snapshot(PublishedAssessmentData data, Map releaseToGroups) {
+			this.data = data;
+			this.releaseToGroups = releaseToGroups;
+			this.version = data.getLastModifiedDate();
+		}
+
+		public Date getVersion() {
+			return version;
+		}
+
+		/**
+		 * @return a facade of its own for one delivery, backed by the shared graph and a copy of its access control
+		 */
+		public PublishedAssessmentFacade newFacade() {
+			PublishedAssessmentFacade facade = new PublishedAssessmentFacade(data, new HashMap(releaseToGroups));
+			if (data.getAssessmentAccessControl() instanceof PublishedAccessControl) {
+				facade.setDeliveryAccessControl(copyOf((PublishedAccessControl) data.getAssessmentAccessControl()));
+			}
+			return facade;
+		}
+
+		private static PublishedAccessControl copyOf(PublishedAccessControl control) {
+			try {
+				PublishedAccessControl copy = (PublishedAccessControl) control.clone();
+				copy.setId(control.getId());
+				copy.setAssessmentBase(control.getAssessmentBase());
+				copy.setMarkForReview(control.getMarkForReview());
+				return copy;
+			} catch (CloneNotSupportedException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+}
@@ -45,6 +45,7 @@ import java.util.Random;
 import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.TreeSet;
+import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.time.Instant;
@@ -80,6 +81,10 @@ import org.sakaiproject.tool.assessment.data.ifc.assessment.PublishedAssessmentI
 import org.sakaiproject.tool.assessment.data.ifc.grading.StudentGradingSummaryIfc;
 import org.sakaiproject.tool.assessment.data.ifc.shared.TypeIfc;
 import org.sakaiproject.tool.assessment.facade.AgentFacade;
+import org.sakaiproject.tool.assessment.facade.AssessmentGradingFacadeQueriesAPI;
+import org.sakaiproject.tool.assessment.facade.AssessmentGradingWriteBehind;
+import org.sakaiproject.tool.assessment.facade.AssessmentStatistics;
+import org.sakaiproject.tool.assessment.facade.AssessmentStatisticsCache;
 import org.sakaiproject.tool.assessment.facade.EventLogFacade;
 import org.sakaiproject.tool.assessment.facade.GradebookFacade;
 import org.sakaiproject.tool.assessment.facade.PublishedAssessmentFacade;
@@ -464,6 +469,29 @@ public class GradingService
       return new HashMap();
     }
   }
+
+  /**
+   * Computes, or returns the cached, statistics page figures for the given submissions of a published
+   * assessment in a single pass over their item gradings.
+   * @param publishedAssessmentId the published assessment
+   * @param submissions the submissions to include, e.g. those of the selected sections
+   * @param itemIds the published item ids of the questions to include
+   */
+  public AssessmentStatistics getAssessmentStatistics(Long publishedAssessmentId, List<AssessmentGradingData> submissions, Collection<Long> itemIds)
+  {
+    AssessmentGradingFacadeQueriesAPI queries = PersistenceService.getInstance().getAssessmentGradingFacadeQueries();
+    long[] gradingIds = submissions.stream().mapToLong(AssessmentGradingData::getAssessmentGradingId).sorted().toArray();
+    String version = queries.getSubmissionsVersion(publishedAssessmentId)
+        + "/" + gradingIds.length + "/" + Arrays.hashCode(gradingIds) + "/" + new TreeSet<>(itemIds).hashCode();
+
+    Supplier<AssessmentStatistics> builder = () -> {
+      AssessmentStatistics.Accumulator accumulator = new AssessmentStatistics.Accumulator(submissions, itemIds);
+      queries.streamItemScores(publishedAssessmentId, accumulator);
+      return accumulator.finish(version);
+    };
+    AssessmentStatisticsCache cache = PersistenceService.getInstance().getAssessmentStatisticsCache();
+    return cache == null ? builder.get() : cache.get(publishedAssessmentId, version, builder);
+  }
   
   /**
    * Get the last set of itemgradingdata for a student per assessment
@@ -701,6 +729,7 @@ public class GradingService
       */
       // this will update itemGradingSet and assessmentGrading. May as well, otherwise I would have
       // to reload assessment again
+      discardQueuedTimeElapsed(assessment);
       PersistenceService.getInstance().
         getAssessmentGradingFacadeQueries().saveOrUpdateAssessmentGrading(assessment);
     } catch (Exception e) {
@@ -720,6 +749,7 @@ public class GradingService
       int size = assessment.getItemGradingSet().size();
       log.debug("before persist to db: size = " + size);
       try {
+    	  discardQueuedTimeElapsed(assessment);
     	  PersistenceService.getInstance().getAssessmentGradingFacadeQueries().saveOrUpdateAssessmentGrading(assessment);
       } catch (Exception e) {
           log.error(e.getMessage(), e);
@@ -2438,11 +2468,39 @@ Here are the definition and 12 cases I came up with (lydia, 01/2006):
 
   public void saveOrUpdateAll(Collection<ItemGradingData> c)
   {
+    long start = System.nanoTime();
     try {
       PersistenceService.getInstance().
         getAssessmentGradingFacadeQueries().saveOrUpdateAll(c);
     } catch (Exception e) {
         log.error(e.getMessage(), e);
+    } finally {
+      AssessmentGradingWriteBehind writeBehind = PersistenceService.getInstance().getAssessmentGradingWriteBehind();
+      if (writeBehind != null) {
+        writeBehind.recordItemGradingSave(c == null ? 0 : c.size(), System.nanoTime() - start);
+      }
+    }
+  }
+
+  /**
+   * Saves the elapsed time of an assessment grading still in progress. The time is written in a batch with
+   * the other students' a few seconds later, unless the whole grading is saved first.
+   */
+  public void queueTimeElapsed(AssessmentGradingData assessment)
+  {
+    AssessmentGradingWriteBehind writeBehind = PersistenceService.getInstance().getAssessmentGradingWriteBehind();
+    if (writeBehind == null || assessment.getAssessmentGradingId() == null) {
+      saveOrUpdateAssessmentGradingOnly(assessment);
+      return;
+    }
+    writeBehind.queueTimeElapsed(assessment.getAssessmentGradingId(), assessment.getTimeElapsed());
+  }
+
+  private void discardQueuedTimeElapsed(AssessmentGradingData assessment)
+  {
+    AssessmentGradingWriteBehind writeBehind = PersistenceService.getInstance().getAssessmentGradingWriteBehind();
+    if (writeBehind != null) {
+      writeBehind.discard(assessment.getAssessmentGradingId());
     }
   }
 
@@ -54,6 +54,8 @@ public class PersistenceService{
 	private FavoriteColChoicesFacadeQueriesAPI favoriteColChoicesFacadeQueries;
 	private PersistenceHelper persistenceHelper;
 	private ExtendedTimeFacade extendedTimeFacade;
+	private AssessmentGradingWriteBehind assessmentGradingWriteBehind;
+	private AssessmentStatisticsCache assessmentStatisticsCache;
 	
 	
         private EventLogFacadeQueriesAPI eventLogFacadeQueries;  
@@ -247,6 +249,22 @@ public class PersistenceService{
 	public ExtendedTimeFacade getExtendedTimeFacade() {
 		return extendedTimeFacade;
 	}
+
+	public void setAssessmentGradingWriteBehind(AssessmentGradingWriteBehind assessmentGradingWriteBehind) {
+		this.assessmentGradingWriteBehind = assessmentGradingWriteBehind;
+	}
+
+	public AssessmentGradingWriteBehind getAssessmentGradingWriteBehind() {
+		return assessmentGradingWriteBehind;
+	}
+
+	public void setAssessmentStatisticsCache(AssessmentStatisticsCache assessmentStatisticsCache) {
+		this.assessmentStatisticsCache = assessmentStatisticsCache;
+	}
+
+	public AssessmentStatisticsCache getAssessmentStatisticsCache() {
+		return assessmentStatisticsCache;
+	}
 }
 
 
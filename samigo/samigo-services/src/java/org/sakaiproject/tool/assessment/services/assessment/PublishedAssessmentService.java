@@ -161,6 +161,25 @@ public class PublishedAssessmentService extends AssessmentService{
 		}
 	}
 
+  /**
+   * Returns the published assessment for a student taking it. The sections, items and answers behind the
+   * facade are shared with every other student taking the same assessment and must not be modified.
+   */
+  public PublishedAssessmentFacade getPublishedAssessmentForDelivery(String assessmentId) {
+    if (StringUtils.isBlank(assessmentId)) {
+      throw new IllegalArgumentException("AssesmentId must be specified");
+    }
+    try {
+      return PersistenceService.getInstance().
+          getPublishedAssessmentFacadeQueries().
+          getPublishedAssessmentForDelivery(Long.valueOf(assessmentId));
+    }
+    catch (Exception e) {
+      log.error(e.getMessage(), e);
+      throw new RuntimeException(e);
+    }
+  }
+
   public PublishedAssessmentFacade getPublishedAssessment(String assessmentId, boolean withGroupsInfo) {
 	    try {
 	      return PersistenceService.getInstance().
@@ -22,7 +22,12 @@
 
 package org.sakaiproject.tool.assessment.facade;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.junit.Assert;
@@ -129,6 +134,140 @@ public class AssessmentGradingFacadeQueriesTest extends AbstractJUnit4SpringCont
 		Assert.assertEquals(2, subs.size());
 	}
 
+	@Test
+	public void testSaveOrUpdateAllUpdatesChangedAnswers() {
+		loadData();
+
+		Set<ItemGradingData> answers = queries.getItemGradingSet(savedId);
+		Assert.assertEquals(2, answers.size());
+		for (ItemGradingData answer : answers) {
+			answer.setAnswerText("answer " + answer.getPublishedItemId());
+		}
+
+		ItemGradingData added = new ItemGradingData();
+		added.setAgentId("agent");
+		added.setAssessmentGradingId(savedId);
+		added.setPublishedItemId(3L);
+		added.setPublishedItemTextId(3L);
+		answers.add(added);
+
+		queries.saveOrUpdateAll(answers);
+
+		Set<ItemGradingData> saved = queries.getItemGradingSet(savedId);
+		Assert.assertEquals(3, saved.size());
+		for (ItemGradingData answer : saved) {
+			if (answer.getPublishedItemId() != 3L) {
+				Assert.assertEquals("answer " + answer.getPublishedItemId(), answer.getAnswerText());
+			}
+		}
+	}
+
+	@Test
+	public void testSaveOrUpdateAllMergesWhenAnAnswerWasRemoved() {
+		loadData();
+
+		Set<ItemGradingData> answers = queries.getItemGradingSet(savedId);
+		Assert.assertEquals(2, answers.size());
+		queries.deleteAll(Collections.singleton(answers.iterator().next()));
+		for (ItemGradingData answer : answers) {
+			answer.setAnswerText("answer " + answer.getPublishedItemId());
+		}
+
+		queries.saveOrUpdateAll(answers);
+
+		Set<ItemGradingData> saved = queries.getItemGradingSet(savedId);
+		Assert.assertEquals(2, saved.size());
+		for (ItemGradingData answer : saved) {
+			Assert.assertEquals("answer " + answer.getPublishedItemId(), answer.getAnswerText());
+		}
+	}
+
+	@Test
+	public void testUpdateTimeElapsed() {
+		AssessmentGradingData inProgress = new AssessmentGradingData();
+		inProgress.setPublishedAssessmentId(2L);
+		inProgress.setAgentId("agent");
+		inProgress.setIsLate(false);
+		inProgress.setForGrade(false);
+		inProgress.setStatus(0);
+		inProgress.setTimeElapsed(30);
+		queries.saveOrUpdateAssessmentGrading(inProgress);
+
+		AssessmentGradingData submitted = new AssessmentGradingData();
+		submitted.setPublishedAssessmentId(2L);
+		submitted.setAgentId("agent2");
+		submitted.setIsLate(false);
+		submitted.setForGrade(true);
+		submitted.setStatus(1);
+		submitted.setTimeElapsed(600);
+		queries.saveOrUpdateAssessmentGrading(submitted);
+
+		Map<Long, Integer> times = new HashMap<>();
+		times.put(inProgress.getAssessmentGradingId(), 120);
+		times.put(submitted.getAssessmentGradingId(), 900);
+		queries.updateTimeElapsed(times);
+
+		Assert.assertEquals(Integer.valueOf(120), queries.load(inProgress.getAssessmentGradingId(), false).getTimeElapsed());
+		Assert.assertEquals(Integer.valueOf(600), queries.load(submitted.getAssessmentGradingId(), false).getTimeElapsed());
+
+		// an older tick arriving late does not move the time back
+		queries.updateTimeElapsed(Collections.singletonMap(inProgress.getAssessmentGradingId(), 60));
+		Assert.assertEquals(Integer.valueOf(120), queries.load(inProgress.getAssessmentGradingId(), false).getTimeElapsed());
+	}
+
+	@Test
+	public void testStreamItemScores() {
+		AssessmentGradingData inProgress = new AssessmentGradingData();
+		inProgress.setPublishedAssessmentId(3L);
+		inProgress.setAgentId("agent");
+		inProgress.setIsLate(false);
+		inProgress.setForGrade(false);
+		inProgress.setStatus(0);
+		queries.saveOrUpdateAssessmentGrading(inProgress);
+
+		AssessmentGradingData submitted = new AssessmentGradingData();
+		submitted.setPublishedAssessmentId(3L);
+		submitted.setAgentId("agent2");
+		submitted.setIsLate(false);
+		submitted.setForGrade(true);
+		submitted.setStatus(1);
+		submitted.setFinalScore(3d);
+		queries.saveOrUpdateAssessmentGrading(submitted);
+
+		for (AssessmentGradingData grading : new AssessmentGradingData[] { inProgress, submitted }) {
+			ItemGradingData answer = new ItemGradingData();
+			answer.setAgentId(grading.getAgentId());
+			answer.setAssessmentGradingId(grading.getAssessmentGradingId());
+			answer.setPublishedItemId(31L);
+			answer.setPublishedItemTextId(31L);
+			answer.setPublishedAnswerId(311L);
+			answer.setAutoScore(2d);
+			answer.setOverrideScore(1d);
+			answer.setSubmittedDate(new Date());
+			grading.getItemGradingSet().add(answer);
+			queries.saveOrUpdateAssessmentGrading(grading);
+		}
+
+		AssessmentStatistics.Accumulator accumulator =
+				new AssessmentStatistics.Accumulator(Arrays.asList(inProgress, submitted), Collections.singletonList(31L));
+		queries.streamItemScores(3L, accumulator);
+		AssessmentStatistics statistics = accumulator.finish("v1");
+
+		// only the submitted grading is read
+		Assert.assertEquals(1, accumulator.getRowCount());
+		Assert.assertArrayEquals(new double[] { 3d }, statistics.getSortedRowScores(31L), 0d);
+		Assert.assertTrue(statistics.hasItem(submitted.getAssessmentGradingId(), 31L));
+		Assert.assertFalse(statistics.hasItem(inProgress.getAssessmentGradingId(), 31L));
+
+		String version = queries.getSubmissionsVersion(3L);
+		Assert.assertEquals(version, queries.getSubmissionsVersion(3L));
+		// a regrade
+		AssessmentGradingData regraded = queries.load(submitted.getAssessmentGradingId(), false);
+		regraded.setFinalScore(2d);
+		queries.saveOrUpdateAssessmentGrading(regraded);
+		Assert.assertNotEquals(version, queries.getSubmissionsVersion(3L));
+	}
+
 	/**
 	 * Load some test data
 	 */
@@ -0,0 +1,186 @@
+/**
+ * Copyright (c) 2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.tool.assessment.facade;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.sakaiproject.component.api.ServerConfigurationService;
+
+@Slf4j
+public class AssessmentGradingWriteBehindTest {
+
+	private static final int STUDENTS = 1000;
+	private static final int TICKS = 20;
+
+	private AssessmentGradingWriteBehind writeBehind;
+	private AssessmentGradingFacadeQueriesAPI queries;
+	private ServerConfigurationService serverConfigurationService;
+	private Map<Long, Integer> written;
+	private List<Integer> batchSizes;
+
+	@Before
+	public void setUp() {
+		written = new HashMap<>();
+		batchSizes = new ArrayList<>();
+		queries = mock(AssessmentGradingFacadeQueriesAPI.class);
+		doAnswer(invocation -> {
+			Map<Long, Integer> batch = invocation.getArgument(0);
+			synchronized (written) {
+				batchSizes.add(batch.size());
+				batch.forEach((id, time) -> written.merge(id, time, Math::max));
+			}
+			return null;
+		}).when(queries).updateTimeElapsed(anyMap());
+
+		serverConfigurationService = mock(ServerConfigurationService.class);
+		// flushed by hand in the tests
+		when(serverConfigurationService.getInt(eq("samigo.delivery.timeElapsed.flushSeconds"), anyInt())).thenReturn(3600);
+
+		writeBehind = new AssessmentGradingWriteBehind();
+		writeBehind.setAssessmentGradingFacadeQueries(queries);
+		writeBehind.setServerConfigurationService(serverConfigurationService);
+		writeBehind.init();
+	}
+
+	@After
+	public void tearDown() {
+		writeBehind.destroy();
+	}
+
+	@Test
+	public void concurrentExamTicksAreCoalescedIntoOneBatch() throws Exception {
+		ExecutorService students = Executors.newFixedThreadPool(100);
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<?>> futures = new ArrayList<>();
+		for (int s = 0; s < STUDENTS; s++) {
+			long gradingId = s + 1;
+			futures.add(students.submit(() -> {
+				start.await();
+				for (int tick = 1; tick <= TICKS; tick++) {
+					writeBehind.queueTimeElapsed(gradingId, tick * 5);
+				}
+				return null;
+			}));
+		}
+		start.countDown();
+		for (Future<?> future : futures) {
+			future.get(30, TimeUnit.SECONDS);
+		}
+		students.shutdown();
+
+		Assert.assertEquals(STUDENTS, writeBehind.getPendingTimeElapsedCount());
+		writeBehind.flush();
+
+		Assert.assertEquals(1, batchSizes.size());
+		Assert.assertEquals(STUDENTS, (int) batchSizes.get(0));
+		Assert.assertEquals(STUDENTS * TICKS, writeBehind.getTimeElapsedQueued());
+		Assert.assertEquals(STUDENTS, writeBehind.getTimeElapsedRowsFlushed());
+		for (long id = 1; id <= STUDENTS; id++) {
+			Assert.assertEquals(Integer.valueOf(TICKS * 5), written.get(id));
+		}
+		log.info("{} students x {} ticks: {} elapsed time rows in {} flushes, {} ms",
+				STUDENTS, TICKS, writeBehind.getTimeElapsedRowsFlushed(), writeBehind.getTimeElapsedFlushes(),
+				writeBehind.getTimeElapsedFlushMillis());
+	}
+
+	@Test
+	public void answerSavesAreCounted() {
+		writeBehind.recordItemGradingSave(3, TimeUnit.MILLISECONDS.toNanos(2));
+		writeBehind.recordItemGradingSave(1, TimeUnit.MILLISECONDS.toNanos(6));
+
+		Assert.assertEquals(2, writeBehind.getItemGradingSaves());
+		Assert.assertEquals(4, writeBehind.getItemGradingRowsSaved());
+		Assert.assertEquals(4.0, writeBehind.getItemGradingAverageSaveMillis(), 0.001);
+		Assert.assertEquals(6, writeBehind.getItemGradingMaxSaveMillis());
+	}
+
+	@Test
+	public void fullSaveDiscardsQueuedTime() {
+		writeBehind.queueTimeElapsed(1L, 30);
+		writeBehind.queueTimeElapsed(2L, 40);
+		writeBehind.discard(1L);
+		writeBehind.flush();
+
+		Assert.assertNull(written.get(1L));
+		Assert.assertEquals(Integer.valueOf(40), written.get(2L));
+	}
+
+	@Test
+	public void failedFlushIsRetried() {
+		doThrow(new RuntimeException("database unavailable")).when(queries).updateTimeElapsed(anyMap());
+		writeBehind.queueTimeElapsed(1L, 30);
+		writeBehind.flush();
+
+		Assert.assertEquals(1, writeBehind.getTimeElapsedFlushFailures());
+		Assert.assertEquals(1, writeBehind.getPendingTimeElapsedCount());
+
+		// a later tick while the write was failing is kept
+		writeBehind.queueTimeElapsed(1L, 35);
+		setUpRecording();
+		writeBehind.flush();
+		Assert.assertEquals(Integer.valueOf(35), written.get(1L));
+		Assert.assertEquals(0, writeBehind.getPendingTimeElapsedCount());
+	}
+
+	@Test
+	public void destroyFlushesPendingTimes() {
+		writeBehind.queueTimeElapsed(1L, 30);
+		writeBehind.destroy();
+
+		Assert.assertEquals(Integer.valueOf(30), written.get(1L));
+	}
+
+	@Test
+	public void writesThroughWhenFlushIsDisabled() {
+		writeBehind.destroy();
+		when(serverConfigurationService.getInt(eq("samigo.delivery.timeElapsed.flushSeconds"), anyInt())).thenReturn(0);
+		writeBehind.init();
+
+		writeBehind.queueTimeElapsed(1L, 30);
+		Assert.assertEquals(Integer.valueOf(30), written.get(1L));
+		Assert.assertEquals(0, writeBehind.getPendingTimeElapsedCount());
+	}
+
+	private void setUpRecording() {
+		doAnswer(invocation -> {
+			Map<Long, Integer> batch = invocation.getArgument(0);
+			batch.forEach((id, time) -> written.merge(id, time, Math::max));
+			return null;
+		}).when(queries).updateTimeElapsed(anyMap());
+	}
+}
@@ -0,0 +1,190 @@
+/**
+ * Copyright (c) 2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.tool.assessment.facade;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.sakaiproject.memory.api.Cache;
+import org.sakaiproject.memory.api.MemoryService;
+import org.sakaiproject.tool.assessment.data.dao.grading.AssessmentGradingData;
+
+@Slf4j
+public class AssessmentStatisticsTest {
+
+	private static final int SUBMISSIONS = 3000;
+	private static final int QUESTIONS = 100;
+	// questions 50 to 59 are drawn from a pool, so only some students get each of them
+	private static final int POOL_START = 50;
+	private static final int POOL_END = 60;
+
+	private List<AssessmentGradingData> submissions;
+	private List<Long> itemIds;
+	// assessment grading id, item id, score
+	private List<double[]> rows;
+
+	@Before
+	public void setUp() {
+		Random random = new Random(19);
+		submissions = new ArrayList<>();
+		itemIds = new ArrayList<>();
+		rows = new ArrayList<>();
+		for (int q = 0; q < QUESTIONS; q++) {
+			itemIds.add(itemId(q));
+		}
+
+		for (int s = 0; s < SUBMISSIONS; s++) {
+			long gradingId = 1000 + s * 7;
+			double ability = random.nextDouble();
+			double total = 0;
+			for (int q = 0; q < QUESTIONS; q++) {
+				if (q >= POOL_START && q < POOL_END && random.nextInt(3) != 0) continue;
+				boolean skipped = random.nextInt(20) == 0;
+				double score = skipped || random.nextDouble() >= ability ? 0 : 2;
+				total += score;
+				rows.add(new double[] { gradingId, itemId(q), score });
+			}
+			AssessmentGradingData submission = new AssessmentGradingData();
+			submission.setAssessmentGradingId(gradingId);
+			submission.setAgentId("student" + s);
+			submission.setFinalScore(total);
+			submissions.add(submission);
+		}
+		// a cursor gives no guarantee about the order of the rows
+		Collections.shuffle(rows, random);
+	}
+
+	@Test
+	public void testThreeThousandSubmissionsOfAHundredQuestions() {
+		long start = System.nanoTime();
+		AssessmentStatistics statistics = build("v1");
+		long elapsed = (System.nanoTime() - start) / 1000000;
+		log.info("Computed statistics for {} submissions of {} questions ({} rows) in {} ms",
+				SUBMISSIONS, QUESTIONS, rows.size(), elapsed);
+
+		Assert.assertEquals(SUBMISSIONS, statistics.getNumSubmissions());
+		double[] totals = statistics.getSortedTotals();
+		double[] expectedTotals = submissions.stream().mapToDouble(AssessmentGradingData::getFinalScore).sorted().toArray();
+		Assert.assertArrayEquals(expectedTotals, totals, 0d);
+
+		for (int q = 0; q < QUESTIONS; q++) {
+			Long itemId = itemId(q);
+			List<double[]> itemRows = new ArrayList<>();
+			for (double[] row : rows) {
+				if ((long) row[1] == itemId) itemRows.add(row);
+			}
+
+			double[] scores = itemRows.stream().mapToDouble(row -> row[2]).sorted().toArray();
+			Assert.assertArrayEquals(scores, statistics.getSortedRowScores(itemId), 0d);
+		}
+		Assert.assertEquals(0, statistics.getSortedRowScores(999999L).length);
+	}
+
+	@Test
+	public void testHasItemTellsWhoWasGivenAPoolQuestion() {
+		AssessmentStatistics statistics = build("v1");
+		for (double[] row : rows) {
+			Assert.assertTrue(statistics.hasItem((long) row[0], (long) row[1]));
+		}
+		int given = 0;
+		for (AssessmentGradingData submission : submissions) {
+			if (statistics.hasItem(submission.getAssessmentGradingId(), itemId(POOL_START))) given++;
+		}
+		Assert.assertTrue(given > 0 && given < SUBMISSIONS);
+		Assert.assertFalse(statistics.hasItem(1L, itemId(0)));
+	}
+
+	@Test
+	public void testRowsOutsideTheSubmissionsAreSkipped() {
+		AssessmentStatistics.Accumulator accumulator = new AssessmentStatistics.Accumulator(submissions.subList(0, 1), itemIds);
+		Long gradingId = submissions.get(0).getAssessmentGradingId();
+		accumulator.accept(gradingId, itemId(0), 2d, null);
+		accumulator.accept(gradingId + 1, itemId(0), 2d, null);
+		accumulator.accept(gradingId, 999999L, 2d, null);
+		accumulator.accept(gradingId, itemId(1), null, 1.5d);
+		AssessmentStatistics statistics = accumulator.finish("v1");
+
+		Assert.assertEquals(2, accumulator.getRowCount());
+		Assert.assertArrayEquals(new double[] { 2d }, statistics.getSortedRowScores(itemId(0)), 0d);
+		Assert.assertFalse(statistics.hasItem(gradingId + 1, itemId(0)));
+		Assert.assertArrayEquals(new double[] { 1.5d }, statistics.getSortedRowScores(itemId(1)), 0d);
+	}
+
+	@Test
+	public void testCacheRebuildsOnlyWhenTheVersionChanges() {
+		Map<Long, AssessmentStatistics> store = new HashMap<>();
+		Cache<Long, AssessmentStatistics> cache = mock(Cache.class);
+		when(cache.get(any())).thenAnswer(i -> store.get(i.getArgument(0)));
+		doAnswer(i -> store.put(i.getArgument(0), i.getArgument(1))).when(cache).put(any(), any());
+		MemoryService memoryService = mock(MemoryService.class);
+		when(memoryService.<Long, AssessmentStatistics>getCache(AssessmentStatisticsCache.CACHE_NAME)).thenReturn(cache);
+
+		AssessmentStatisticsCache statisticsCache = new AssessmentStatisticsCache();
+		statisticsCache.setMemoryService(memoryService);
+		statisticsCache.init();
+
+		AtomicInteger builds = new AtomicInteger();
+		for (int i = 0; i < 5; i++) {
+			AssessmentStatistics statistics = statisticsCache.get(1L, "v1", () -> {
+				builds.incrementAndGet();
+				return build("v1");
+			});
+			Assert.assertEquals("v1", statistics.getVersion());
+		}
+		Assert.assertEquals(1, builds.get());
+		Assert.assertEquals(4, statisticsCache.getHitCount());
+
+		// a new submission or a regrade changes the version
+		AssessmentStatistics statistics = statisticsCache.get(1L, "v2", () -> {
+			builds.incrementAndGet();
+			return build("v2");
+		});
+		Assert.assertEquals("v2", statistics.getVersion());
+		Assert.assertEquals(2, builds.get());
+		Assert.assertEquals(2, statisticsCache.getBuildCount());
+
+		// the cached copies can't be changed by callers
+		statistics.getSortedTotals()[0] = -1;
+		Assert.assertNotEquals(-1d, statistics.getSortedTotals()[0], 0d);
+	}
+
+	private AssessmentStatistics build(String version) {
+		AssessmentStatistics.Accumulator accumulator = new AssessmentStatistics.Accumulator(submissions, itemIds);
+		for (double[] row : rows) {
+			accumulator.accept((long) row[0], (long) row[1], row[2], null);
+		}
+		return accumulator.finish(version);
+	}
+
+	private static Long itemId(int question) {
+		return 500L + question;
+	}
+}
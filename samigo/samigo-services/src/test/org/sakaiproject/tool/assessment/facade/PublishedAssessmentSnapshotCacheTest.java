@@ -0,0 +1,206 @@
+/**
+ * Copyright (c) 2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.tool.assessment.facade;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.sakaiproject.event.api.Event;
+import org.sakaiproject.event.api.EventTrackingService;
+import org.sakaiproject.memory.api.Cache;
+import org.sakaiproject.memory.api.MemoryService;
+import org.sakaiproject.samigo.util.SamigoConstants;
+import org.sakaiproject.tool.assessment.data.dao.assessment.PublishedAccessControl;
+import org.sakaiproject.tool.assessment.data.dao.assessment.PublishedAssessmentData;
+import org.sakaiproject.tool.assessment.data.ifc.assessment.AssessmentAccessControlIfc;
+
+public class PublishedAssessmentSnapshotCacheTest {
+
+	private static final int STUDENTS = 500;
+	private static final Long PUBLISHED_ID = 42L;
+
+	private PublishedAssessmentSnapshotCache snapshotCache;
+	private ExecutorService executor;
+	private AtomicInteger loads;
+
+	@Before
+	public void setUp() {
+		Map<Long, PublishedAssessmentSnapshotCache.Snapshot> store = new ConcurrentHashMap<>();
+		Cache<Long, PublishedAssessmentSnapshotCache.Snapshot> cache = mock(Cache.class);
+		when(cache.get(any())).thenAnswer(i -> store.get(i.getArgument(0)));
+		doAnswer(i -> store.put(i.getArgument(0), i.getArgument(1))).when(cache).put(any(), any());
+		when(cache.remove(any())).thenAnswer(i -> store.remove(i.getArgument(0)) != null);
+
+		MemoryService memoryService = mock(MemoryService.class);
+		when(memoryService.<Long, PublishedAssessmentSnapshotCache.Snapshot>getCache(PublishedAssessmentSnapshotCache.CACHE_NAME)).thenReturn(cache);
+
+		snapshotCache = new PublishedAssessmentSnapshotCache();
+		snapshotCache.setMemoryService(memoryService);
+		snapshotCache.setEventTrackingService(mock(EventTrackingService.class));
+		snapshotCache.init();
+
+		executor = Executors.newFixedThreadPool(64);
+		loads = new AtomicInteger();
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	private PublishedAssessmentSnapshotCache.Snapshot load(Long id) {
+		loads.incrementAndGet();
+		try {
+			// stands in for loading sections, items, texts and answers from the database
+			Thread.sleep(50);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		PublishedAssessmentData data = new PublishedAssessmentData();
+		data.setPublishedAssessmentId(id);
+		data.setTitle("Final exam");
+		data.setLastModifiedDate(new Date());
+		data.setSectionSet(Collections.emptySet());
+		PublishedAccessControl control = new PublishedAccessControl();
+		control.setTimeLimit(3600);
+		control.setMarkForReview(1);
+		control.setAssessmentBase(data);
+		data.setAssessmentAccessControl(control);
+		return new PublishedAssessmentSnapshotCache.Snapshot(data, Collections.singletonMap("group1", "Group 1"));
+	}
+
+	private List<PublishedAssessmentFacade> startAll(Function<Long, PublishedAssessmentSnapshotCache.Snapshot> loader) throws Exception {
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<PublishedAssessmentFacade>> futures = new ArrayList<>();
+		for (int i = 0; i < STUDENTS; i++) {
+			futures.add(executor.submit(() -> {
+				start.await();
+				return snapshotCache.get(PUBLISHED_ID, loader).newFacade();
+			}));
+		}
+		start.countDown();
+		List<PublishedAssessmentFacade> facades = new ArrayList<>();
+		for (Future<PublishedAssessmentFacade> future : futures) {
+			facades.add(future.get(30, TimeUnit.SECONDS));
+		}
+		return facades;
+	}
+
+	@Test
+	public void concurrentStartsLoadOnce() throws Exception {
+		List<PublishedAssessmentFacade> facades = startAll(this::load);
+
+		Assert.assertEquals(STUDENTS, facades.size());
+		Assert.assertEquals(1, loads.get());
+		Assert.assertEquals(1, snapshotCache.getBuildCount());
+		PublishedAssessmentData shared = (PublishedAssessmentData) facades.get(0).getData();
+		for (PublishedAssessmentFacade facade : facades) {
+			Assert.assertSame(shared, facade.getData());
+			Assert.assertEquals(PUBLISHED_ID, facade.getPublishedAssessmentId());
+		}
+	}
+
+	@Test
+	public void facadeSettingsStayPerStudent() throws Exception {
+		PublishedAssessmentFacade first = snapshotCache.get(PUBLISHED_ID, this::load).newFacade();
+		PublishedAssessmentFacade second = snapshotCache.get(PUBLISHED_ID, this::load).newFacade();
+
+		first.getReleaseToGroups().clear();
+		first.setTimeLimit(600);
+
+		Assert.assertEquals(1, second.getReleaseToGroups().size());
+		Assert.assertNotEquals(Integer.valueOf(600), second.getTimeLimit());
+		Assert.assertEquals(1, loads.get());
+	}
+
+	@Test
+	public void accessControlIsCopiedPerStudent() {
+		PublishedAssessmentFacade first = snapshotCache.get(PUBLISHED_ID, this::load).newFacade();
+		PublishedAssessmentFacade second = snapshotCache.get(PUBLISHED_ID, this::load).newFacade();
+		AssessmentAccessControlIfc shared = first.getData().getAssessmentAccessControl();
+
+		Assert.assertNotSame(shared, first.getAssessmentAccessControl());
+		Assert.assertNotSame(first.getAssessmentAccessControl(), second.getAssessmentAccessControl());
+		Assert.assertEquals(Integer.valueOf(1), first.getAssessmentAccessControl().getMarkForReview());
+		Assert.assertSame(first.getData(), first.getAssessmentAccessControl().getAssessmentBase());
+
+		first.getAssessmentAccessControl().setTimeLimit(7200);
+
+		Assert.assertEquals(Integer.valueOf(3600), shared.getTimeLimit());
+		Assert.assertEquals(Integer.valueOf(3600), second.getAssessmentAccessControl().getTimeLimit());
+		Assert.assertEquals(Integer.valueOf(3600), second.getTimeLimit());
+	}
+
+	@Test
+	public void republishDropsSnapshot() throws Exception {
+		startAll(this::load);
+		Assert.assertEquals(1, loads.get());
+
+		Event event = mock(Event.class);
+		when(event.getEvent()).thenReturn(SamigoConstants.EVENT_PUBLISHED_ASSESSMENT_REPUBLISH);
+		when(event.getResource()).thenReturn("siteId=site1, publishedAssessmentId=" + PUBLISHED_ID);
+		snapshotCache.update(null, event);
+
+		startAll(this::load);
+		Assert.assertEquals(2, loads.get());
+	}
+
+	@Test
+	public void otherEventsKeepSnapshot() {
+		snapshotCache.get(PUBLISHED_ID, this::load);
+
+		Event event = mock(Event.class);
+		when(event.getEvent()).thenReturn(SamigoConstants.EVENT_ASSESSMENT_SUBMITTED);
+		when(event.getResource()).thenReturn("siteId=site1, publishedAssessmentId=" + PUBLISHED_ID);
+		snapshotCache.update(null, event);
+
+		snapshotCache.get(PUBLISHED_ID, this::load);
+		Assert.assertEquals(1, loads.get());
+		Assert.assertEquals(1, snapshotCache.getHitCount());
+	}
+
+	@Test
+	public void buildRacedByInvalidationIsNotKept() {
+		snapshotCache.get(PUBLISHED_ID, id -> {
+			PublishedAssessmentSnapshotCache.Snapshot snapshot = load(id);
+			snapshotCache.invalidate(id);
+			return snapshot;
+		});
+
+		snapshotCache.get(PUBLISHED_ID, this::load);
+		Assert.assertEquals(2, loads.get());
+	}
+}
@@ -0,0 +1,329 @@
+/**
+ * Copyright (c) 2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.search.elasticsearch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+
+import org.apache.commons.lang3.StringUtils;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkProcessor;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.delete.DeleteResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.common.document.DocumentField;
+import org.elasticsearch.common.text.Text;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.search.SearchHit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.sakaiproject.authz.api.SecurityService;
+import org.sakaiproject.search.api.EntityContentProducer;
+import org.sakaiproject.search.api.SearchService;
+
+/**
+ * Content queue processing without an elasticsearch node, the bulk calls are answered by the test.
+ */
+public class ContentQueueProcessingTest {
+
+    private static final String SITE_ID = "site";
+
+    private TestIndexBuilder indexBuilder;
+    private EntityContentProducer ecp;
+
+    private final Map<String, String> contents = new ConcurrentHashMap<>();
+    private final Set<String> extractionThreads = ConcurrentHashMap.newKeySet();
+    private final List<BulkRequest> bulkCalls = new CopyOnWriteArrayList<>();
+    private final List<String> deletedIds = new CopyOnWriteArrayList<>();
+    private final List<IndexRequest> requeued = new CopyOnWriteArrayList<>();
+    private BiConsumer<BulkRequest, ActionListener<BulkResponse>> bulkHandler = this::succeed;
+
+    @Before
+    public void setUp() {
+        ecp = mock(EntityContentProducer.class);
+        when(ecp.getId(anyString())).thenAnswer(i -> i.getArgument(0));
+        when(ecp.getSiteId(anyString())).thenReturn(SITE_ID);
+        when(ecp.getTitle(anyString())).thenAnswer(i -> "Title of " + i.getArgument(0));
+        when(ecp.getContent(anyString())).thenAnswer(i -> {
+            extractionThreads.add(Thread.currentThread().getName());
+            Thread.sleep(2);
+            return contents.get(i.<String>getArgument(0));
+        });
+
+        indexBuilder = new TestIndexBuilder();
+        indexBuilder.setName("test");
+        indexBuilder.indexName = "test";
+        indexBuilder.setSecurityService(mock(SecurityService.class));
+        indexBuilder.setBulkRequestRetries(0);
+    }
+
+    @After
+    public void tearDown() {
+        if (indexBuilder.contentIndexExecutor != null) {
+            indexBuilder.contentIndexExecutor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testQueueDrainedByConcurrentWorkers() {
+        indexBuilder.setContentIndexThreads(4);
+        indexBuilder.contentIndexExecutor = indexBuilder.initializeContentIndexExecutor();
+        SearchHit[] hits = queue(200, 100);
+
+        assertEquals(0, indexBuilder.processContentQueueBatch(hits));
+
+        assertTrue("content was extracted on " + extractionThreads, extractionThreads.size() > 1);
+        Map<String, Integer> indexed = indexedIds();
+        assertEquals(200, indexed.size());
+        assertTrue("each doc is indexed once " + indexed, indexed.values().stream().allMatch(n -> n == 1));
+        assertEquals(200, deletedIds.size());
+        assertTrue(requeued.isEmpty());
+        assertEquals(200, indexBuilder.indexedDocs.get());
+    }
+
+    @Test
+    public void testBulkSentOnceFull() {
+        indexBuilder.setBulkRequestSize(3);
+        SearchHit[] hits = queue(10, 100);
+
+        assertEquals(0, indexBuilder.processContentQueueBatch(hits));
+
+        List<Integer> sizes = new ArrayList<>();
+        bulkCalls.forEach(r -> sizes.add(r.numberOfActions()));
+        assertEquals("[3, 3, 3, 1]", sizes.toString());
+    }
+
+    @Test
+    public void testBulkSentOnceLarge() {
+        indexBuilder.setBulkRequestSize(1000);
+        indexBuilder.setBulkRequestBytes(10 * 1024);
+        SearchHit[] hits = queue(10, 4 * 1024);
+
+        assertEquals(0, indexBuilder.processContentQueueBatch(hits));
+
+        assertTrue("bulk calls " + bulkCalls.size(), bulkCalls.size() >= 4);
+        for (BulkRequest bulkCall : bulkCalls) {
+            // a call is sent as soon as the doc taking it past the limit is added
+            assertTrue(bulkCall.estimatedSizeInBytes() < 10 * 1024 + 5 * 1024);
+        }
+        assertEquals(10, indexedIds().size());
+    }
+
+    @Test
+    public void testFailedBulkRequeued() {
+        indexBuilder.setBulkRequestSize(4);
+        SearchHit[] hits = queue(10, 100);
+        bulkHandler = (request, listener) -> listener.onFailure(new IOException("connection reset"));
+
+        assertEquals(10, indexBuilder.processContentQueueBatch(hits));
+
+        assertEquals(10, indexBuilder.failedDocs.get());
+        assertEquals(10, requeued.size());
+        for (IndexRequest request : requeued) {
+            Map<String, Object> source = request.sourceAsMap();
+            assertEquals(SITE_ID, request.routing());
+            assertEquals(request.id(), source.get(SearchService.FIELD_REFERENCE));
+            // queued docs have neither content nor the indexed flag
+            assertFalse(source.containsKey(SearchService.FIELD_CONTENTS));
+            assertFalse(source.containsKey(SearchService.FIELD_INDEXED));
+        }
+    }
+
+    @Test
+    public void testOnlyDocsThatMayIndexLaterRequeued() {
+        SearchHit[] hits = queue(3, 100);
+        bulkHandler = (request, listener) -> {
+            BulkItemResponse[] items = new BulkItemResponse[request.numberOfActions()];
+            for (int i = 0; i < items.length; i++) {
+                DocWriteRequest<?> action = request.requests().get(i);
+                RestStatus status = "doc-0".equals(action.id()) ? RestStatus.SERVICE_UNAVAILABLE
+                        : "doc-1".equals(action.id()) ? RestStatus.BAD_REQUEST : null;
+                items[i] = status == null ? indexed(i, action.id())
+                        : new BulkItemResponse(i, action.opType(), new BulkItemResponse.Failure("test", "_doc", action.id(),
+                                new IllegalStateException(status.name()), status));
+            }
+            listener.onResponse(new BulkResponse(items, 1));
+        };
+
+        assertEquals(2, indexBuilder.processContentQueueBatch(hits));
+
+        assertEquals(1, requeued.size());
+        assertEquals("doc-0", requeued.get(0).id());
+        assertEquals(1, indexBuilder.indexedDocs.get());
+        assertEquals(2, indexBuilder.failedDocs.get());
+    }
+
+    @Test
+    public void testDocsWithoutContentDeleted() {
+        SearchHit[] hits = queue(4, 100);
+        contents.put("doc-2", " ");
+
+        assertEquals(0, indexBuilder.processContentQueueBatch(hits));
+
+        List<DocWriteRequest<?>> actions = new ArrayList<>();
+        bulkCalls.forEach(r -> actions.addAll(r.requests()));
+        assertEquals(4, actions.size());
+        for (DocWriteRequest<?> action : actions) {
+            assertEquals("doc-2".equals(action.id()) ? DocWriteRequest.OpType.DELETE : DocWriteRequest.OpType.INDEX, action.opType());
+            assertEquals(SITE_ID, action.routing());
+        }
+        assertTrue(requeued.isEmpty());
+    }
+
+    @Test
+    public void testProcessContentQueueEntry() throws Exception {
+        SearchHit hit = queue(1, 100)[0];
+        BulkProcessor bulkProcessor = mock(BulkProcessor.class);
+
+        indexBuilder.processContentQueueEntry(hit, bulkProcessor);
+
+        assertEquals(Collections.singletonList("doc-0"), deletedIds);
+        ArgumentCaptor<IndexRequest> indexRequest = ArgumentCaptor.forClass(IndexRequest.class);
+        verify(bulkProcessor).add(indexRequest.capture());
+        assertEquals("doc-0", indexRequest.getValue().id());
+        assertEquals(SITE_ID, indexRequest.getValue().routing());
+        Map<String, Object> source = indexRequest.getValue().sourceAsMap();
+        assertEquals(contents.get("doc-0"), source.get(SearchService.FIELD_CONTENTS));
+        assertEquals(Boolean.TRUE, source.get(SearchService.FIELD_INDEXED));
+        assertEquals("Title of doc-0", source.get(SearchService.FIELD_TITLE));
+    }
+
+    @Test
+    public void testProcessContentQueueEntryWithoutContent() throws Exception {
+        SearchHit hit = queue(1, 100)[0];
+        contents.put("doc-0", "");
+        BulkProcessor bulkProcessor = mock(BulkProcessor.class);
+
+        try {
+            indexBuilder.processContentQueueEntry(hit, bulkProcessor);
+            fail("docs without content are not indexed");
+        } catch (NoContentException e) {
+            assertEquals("doc-0", e.getId());
+            assertEquals("doc-0", e.getReference());
+        }
+        verify(bulkProcessor, never()).add(any(IndexRequest.class));
+    }
+
+    @Test
+    public void testProcessContentQueueEntryWithoutProducer() throws Exception {
+        SearchHit hit = queue(1, 100)[0];
+        indexBuilder.producer = null;
+        BulkProcessor bulkProcessor = mock(BulkProcessor.class);
+
+        try {
+            indexBuilder.processContentQueueEntry(hit, bulkProcessor);
+            fail("docs without a content producer are not indexed");
+        } catch (NoContentException e) {
+            assertEquals("doc-0", e.getId());
+            assertEquals(SITE_ID, e.getSiteId());
+        }
+        assertTrue(deletedIds.isEmpty());
+        verify(bulkProcessor, never()).add(any(IndexRequest.class));
+    }
+
+    private SearchHit[] queue(int docs, int contentLength) {
+        SearchHit[] hits = new SearchHit[docs];
+        for (int i = 0; i < docs; i++) {
+            String reference = "doc-" + i;
+            contents.put(reference, StringUtils.repeat('x', contentLength - 1) + i);
+            Map<String, DocumentField> fields = new HashMap<>();
+            fields.put(SearchService.FIELD_REFERENCE, new DocumentField(SearchService.FIELD_REFERENCE, Collections.singletonList(reference)));
+            fields.put(SearchService.FIELD_SITEID, new DocumentField(SearchService.FIELD_SITEID, Collections.singletonList(SITE_ID)));
+            hits[i] = new SearchHit(i, reference, new Text("_doc"), fields);
+        }
+        return hits;
+    }
+
+    private Map<String, Integer> indexedIds() {
+        Map<String, Integer> ids = new HashMap<>();
+        for (BulkRequest bulkCall : bulkCalls) {
+            for (DocWriteRequest<?> action : bulkCall.requests()) {
+                if (action instanceof IndexRequest) {
+                    ids.merge(action.id(), 1, Integer::sum);
+                }
+            }
+        }
+        return ids;
+    }
+
+    private void succeed(BulkRequest request, ActionListener<BulkResponse> listener) {
+        BulkItemResponse[] items = new BulkItemResponse[request.numberOfActions()];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = indexed(i, request.requests().get(i).id());
+        }
+        listener.onResponse(new BulkResponse(items, 1));
+    }
+
+    private BulkItemResponse indexed(int item, String id) {
+        return new BulkItemResponse(item, DocWriteRequest.OpType.INDEX,
+                new IndexResponse(new ShardId("test", "_na_", 0), "_doc", id, 1, 1, 1, true));
+    }
+
+    private class TestIndexBuilder extends SiteElasticSearchIndexBuilder {
+
+        private EntityContentProducer producer = ecp;
+
+        @Override
+        public EntityContentProducer newEntityContentProducer(String ref) {
+            return producer;
+        }
+
+        @Override
+        protected void executeBulkRequestAsync(BulkRequest bulkRequest, ActionListener<BulkResponse> listener) {
+            bulkCalls.add(bulkRequest);
+            bulkHandler.accept(bulkRequest, listener);
+        }
+
+        @Override
+        protected DeleteResponse deleteDocumentWithRequest(DeleteRequest deleteRequest) {
+            deletedIds.add(deleteRequest.id());
+            return mock(DeleteResponse.class);
+        }
+
+        @Override
+        protected IndexResponse indexDocumentWithRequest(IndexRequest indexRequest) {
+            requeued.add(indexRequest);
+            return mock(IndexResponse.class);
+        }
+    }
+}
@@ -40,6 +40,14 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
@@ -48,11 +56,15 @@ import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.DocWriteRequest;
 import org.elasticsearch.action.admin.cluster.health.ClusterHealthRequest;
 import org.elasticsearch.action.admin.cluster.health.ClusterHealthResponse;
 import org.elasticsearch.action.admin.indices.delete.DeleteIndexRequest;
 import org.elasticsearch.action.admin.indices.refresh.RefreshRequest;
+import org.elasticsearch.action.bulk.BackoffPolicy;
 import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkProcessor;
 import org.elasticsearch.action.bulk.BulkRequest;
 import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.delete.DeleteRequest;
@@ -72,6 +84,8 @@ import org.elasticsearch.client.indices.GetIndexRequest;
 import org.elasticsearch.client.indices.GetIndexResponse;
 import org.elasticsearch.cluster.health.ClusterIndexHealth;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.util.set.Sets;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.XContentType;
@@ -100,6 +114,7 @@ import org.springframework.util.Assert;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /**
  *
@@ -183,13 +198,54 @@ public abstract class BaseElasticSearchIndexBuilder implements ElasticSearchInde
     protected int contentIndexBatchSize = 500;
 
     /**
-     * Number of actions to send in one elasticsearch bulk index call
-     * defaults to 10.  Setting this
-     * to too high a number will have memory implications as you'll be keeping
-     * more content in memory until the request is executed.
+     * Most actions to send in one elasticsearch bulk index call, defaults to 10.  When indexing content
+     * a bulk call is usually sent once it reaches {@link #bulkRequestBytes}, setting this too low stops
+     * that from happening.
      */
     protected int bulkRequestSize = 10;
 
+    /**
+     * Size of the content in an elasticsearch bulk index call at which it is sent (defaults to 5MB).
+     * Setting this too high will have memory implications as you'll be keeping more content in
+     * memory until the request is executed.
+     */
+    protected long bulkRequestBytes = 5 * 1024 * 1024;
+
+    /**
+     * Number of bulk index calls that may be in flight while more content is being extracted (defaults to 2).
+     * Zero sends each bulk call on the thread that filled it.
+     */
+    protected int concurrentBulkRequests = 2;
+
+    /**
+     * Number of times a bulk index call rejected by a busy cluster is retried, backing off exponentially
+     * from {@link #bulkRequestRetryDelay} ms (defaults to 5 times from 100 ms).
+     */
+    protected int bulkRequestRetries = 5;
+
+    protected long bulkRequestRetryDelay = 100;
+
+    /**
+     * Number of threads extracting content from the entity content producers (defaults to 4).
+     */
+    protected int contentIndexThreads = 4;
+
+    /**
+     * the pool of threads extracting content, see {@link #contentIndexThreads}
+     */
+    protected ExecutorService contentIndexExecutor = null;
+
+    /**
+     * throughput since startup, see {@link #getStatus(StringBuilder)}
+     */
+    protected final AtomicLong indexedDocs = new AtomicLong();
+    protected final AtomicLong failedDocs = new AtomicLong();
+    protected final AtomicLong bulkRequests = new AtomicLong();
+    protected final AtomicLong bulkBytes = new AtomicLong();
+    protected final AtomicLong bulkTime = new AtomicLong();
+    protected final AtomicLong extractionTime = new AtomicLong();
+    protected final AtomicLong contentQueueTime = new AtomicLong();
+
     /**
      * number seconds of wait after startup before starting the BulkContentIndexerTask (defaults to 3 minutes)
      */
@@ -264,6 +320,10 @@ public abstract class BaseElasticSearchIndexBuilder implements ElasticSearchInde
 
     @Override
     public void destroy() {
+        if (contentIndexExecutor != null) {
+            contentIndexExecutor.shutdownNow();
+            contentIndexExecutor = null;
+        }
         this.client = null;
         this.eventRegistrar = null;
     }
@@ -301,6 +361,7 @@ public abstract class BaseElasticSearchIndexBuilder implements ElasticSearchInde
 
         beforeBackgroundSchedulerInitialization();
 
+        this.contentIndexExecutor = initializeContentIndexExecutor();
         this.backgroundScheduler = initializeBackgroundScheduler();
         backgroundScheduler.schedule(initializeContentQueueProcessingTask(), (delay * 1000), (period * 1000));
 
@@ -394,6 +455,17 @@ public abstract class BaseElasticSearchIndexBuilder implements ElasticSearchInde
         return new Timer("[elasticsearch content indexer " + getName() + "]", true);
     }
 
+    /**
+     * The workers extracting content have a short queue, when it is full the thread handing out the work
+     * extracts the content itself, so only a few documents' content is ever waiting to be sent.
+     */
+    protected ExecutorService initializeContentIndexExecutor() {
+        int threads = Math.max(1, contentIndexThreads);
+        return new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(threads * 2),
+                new ThreadFactoryBuilder().setNameFormat("[elasticsearch content extractor " + getName() + "-%d]").setDaemon(true).build(),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
     protected TimerTask initializeContentQueueProcessingTask() {
         return testMode ? new NoOpTask() : newBulkContentIndexerTask();
     }
@@ -448,7 +520,8 @@ public abstract class BaseElasticSearchIndexBuilder implements ElasticSearchInde
     /**
      * Searches for any docs in the search index that have not been indexed yet,
      * digests the content and loads it into the index.  Any docs with empty content will be removed from
-     * the index.
+     * the index.  Batches of {@link #contentIndexBatchSize} docs are taken from the queue until it is empty,
+     * or a batch has docs that failed, which are put back on the queue for the next run.
      */
     protected void processContentQueue() {
         startTime = System.currentTimeMillis();
@@ -462,50 +535,93 @@ public abstract class BaseElasticSearchIndexBuilder implements ElasticSearchInde
             return;
         }
 
-        SearchResponse response = findContentQueue();
-
-        SearchHit[] hits = response.getHits().getHits();
-        List<NoContentException> noContentExceptions = new ArrayList<>();
-        getLog().debug(getPendingDocuments() + " pending docs for index builder [" + getName() + "]");
-
-        BulkRequest bulkRequest = new BulkRequest();
+        int processed = 0;
+        while (true) {
+            SearchResponse response = findContentQueue();
+            if (response == null) {
+                break;
+            }
 
-        for (SearchHit hit : hits) {
+            SearchHit[] hits = response.getHits().getHits();
+            if (hits.length == 0) {
+                break;
+            }
+            getLog().debug(hits.length + " pending docs being indexed by index builder [" + getName() + "]");
 
-            if (bulkRequest.numberOfActions() < bulkRequestSize) {
-                try {
-                    processContentQueueEntry(hit, bulkRequest);
-                } catch ( NoContentException e ) {
-                    noContentExceptions.add(e);
-                }
-            } else {
-                executeBulkRequest(bulkRequest);
-                bulkRequest = new BulkRequest();
+            int failures = processContentQueueBatch(hits);
+            processed += hits.length;
+            if (failures > 0 || hits.length < contentIndexBatchSize) {
+                break;
             }
+
+            // make the docs just indexed visible, so the next search doesn't find them again
+            refreshIndex();
         }
 
-        // execute any remaining bulks requests not executed yet
-        if (bulkRequest.numberOfActions() > 0) {
-            executeBulkRequest(bulkRequest);
+        lastLoad = System.currentTimeMillis();
+        contentQueueTime.addAndGet(lastLoad - startTime);
+
+        if (processed > 0) {
+            getLog().info("Finished indexing " + processed + " docs in " + (lastLoad - startTime) + " ms ("
+                    + (processed * 1000L / Math.max(1, lastLoad - startTime)) + " docs/s) for index builder " + getName());
         }
 
-        // remove any docs without content, so we don't try to index them again
-        if (!noContentExceptions.isEmpty()) {
-            for (NoContentException noContentException : noContentExceptions) {
-                deleteDocument(noContentException);
+    }
+
+    /**
+     * Extracts the content of a batch of queued docs on the content index workers, and sends it to the index
+     * in bulk calls as it is extracted.  Queued docs are deleted as their content is extracted, so docs whose
+     * bulk call failed for a reason that may pass are queued again once all the bulk calls have completed.
+     *
+     * @return the number of docs that failed to index
+     */
+    protected int processContentQueueBatch(SearchHit[] hits) {
+        AtomicInteger failures = new AtomicInteger();
+        Set<String> retryable = Sets.newConcurrentHashSet();
+        BulkProcessor bulkProcessor = newBulkProcessor(failures, retryable);
+
+        List<Runnable> tasks = new ArrayList<>(hits.length);
+        for (SearchHit hit : hits) {
+            tasks.add(() -> {
+                try {
+                    processContentQueueEntry(hit, bulkProcessor);
+                } catch (NoContentException e) {
+                    // remove docs without content, so we don't try to index them again
+                    bulkProcessor.add(prepareDeleteDocument(extractDeleteDocumentParams(e)));
+                } catch (Exception e) {
+                    failures.incrementAndGet();
+                    getLog().error("Failed to process content queue entry with id [" + hit.getId() + "] in index builder ["
+                            + getName() + "]", e);
+                }
+            });
+        }
+        runContentIndexTasks(tasks);
+        awaitBulkProcessor(bulkProcessor);
+
+        if (!retryable.isEmpty()) {
+            // the bulk listener runs on the client's I/O threads, which must not wait on further calls
+            for (SearchHit hit : hits) {
+                if (retryable.contains(hit.getId())) {
+                    requeueContentQueueEntry(getFieldFromSearchHit(SearchService.FIELD_REFERENCE, hit));
+                }
             }
         }
 
-        lastLoad = System.currentTimeMillis();
+        return failures.get();
+    }
 
-        if (hits.length > 0) {
-            getLog().info("Finished indexing " + hits.length + " docs in " +
-                    ((lastLoad - startTime)) + " ms for index builder " + getName());
+    /**
+     * Adds the doc back to the index without content, which puts it on the content queue again.
+     */
+    protected void requeueContentQueueEntry(String reference) {
+        EntityContentProducer ecp = newEntityContentProducer(reference);
+        if (ecp != null) {
+            getLog().info("Requeueing doc " + reference + " in index builder [" + getName() + "]");
+            indexAdd(reference, ecp);
         }
-
     }
 
-    protected void processContentQueueEntry(SearchHit hit, BulkRequest bulkRequest) throws NoContentException {
+    protected void processContentQueueEntry(SearchHit hit, BulkProcessor bulkProcessor) throws NoContentException {
         String reference = getFieldFromSearchHit(SearchService.FIELD_REFERENCE, hit);
         EntityContentProducer ecp = newEntityContentProducer(reference);
 
@@ -513,18 +629,124 @@ public abstract class BaseElasticSearchIndexBuilder implements ElasticSearchInde
             //updating was causing issues without a _source, so doing delete and re-add
             try {
                 deleteDocument(hit);
-                bulkRequest.add(prepareIndex(reference, ecp, true));
+                long start = System.nanoTime();
+                IndexRequest indexRequest = prepareIndex(reference, ecp, true);
+                extractionTime.addAndGet(System.nanoTime() - start);
+                bulkProcessor.add(indexRequest);
             } catch (NoContentException e) {
                 throw e;
             } catch (Exception e) {
-                getLog().error("Failed to process content queue entry with id [" + hit.getId() + "] in index builder ["
-                        + getName() + "]", e);
+                throw new RuntimeException("Failed to prepare index request for " + reference, e);
             }
         } else {
             noContentProducerForContentQueueEntry(hit, reference);
         }
     }
 
+    /**
+     * Runs the tasks on the content index workers, with the security advisor in place, and waits for them all to finish.
+     */
+    protected void runContentIndexTasks(List<Runnable> tasks) {
+        List<Future<?>> futures = new ArrayList<>(tasks.size());
+        for (Runnable task : tasks) {
+            Runnable advised = () -> {
+                enableAzgSecurityAdvisor();
+                try {
+                    task.run();
+                } finally {
+                    disableAzgSecurityAdvisor();
+                }
+            };
+            if (contentIndexExecutor == null) {
+                advised.run();
+            } else {
+                futures.add(contentIndexExecutor.submit(advised));
+            }
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                getLog().error("Content indexing task failed in index builder [" + getName() + "]", e.getCause());
+            }
+        }
+    }
+
+    /**
+     * A bulk processor sending bulk calls once they reach {@link #bulkRequestSize} actions or {@link #bulkRequestBytes},
+     * with up to {@link #concurrentBulkRequests} in flight, retrying calls rejected by a busy cluster.
+     *
+     * @param failures counts the actions that failed
+     */
+    protected BulkProcessor newBulkProcessor(AtomicInteger failures) {
+        return newBulkProcessor(failures, Sets.newConcurrentHashSet());
+    }
+
+    /**
+     * @param failures counts the actions that failed
+     * @param retryable collects the ids of the docs that failed to index for a reason that may pass,
+     *                  a failed call or a busy or failing node, but not a doc the index won't take
+     */
+    protected BulkProcessor newBulkProcessor(AtomicInteger failures, Set<String> retryable) {
+        BulkProcessor.Listener listener = new BulkProcessor.Listener() {
+            @Override
+            public void beforeBulk(long executionId, BulkRequest request) {
+            }
+
+            @Override
+            public void afterBulk(long executionId, BulkRequest request, BulkResponse response) {
+                int failed = logBulkResponse(request, response);
+                failures.addAndGet(failed);
+                recordBulkRequest(request, response.getTook().getMillis(), failed);
+                for (BulkItemResponse item : response.getItems()) {
+                    if (item.isFailed() && item.getOpType() != DocWriteRequest.OpType.DELETE
+                            && (item.status() == RestStatus.TOO_MANY_REQUESTS || item.status().getStatus() >= 500)) {
+                        retryable.add(item.getId());
+                    }
+                }
+            }
+
+            @Override
+            public void afterBulk(long executionId, BulkRequest request, Throwable failure) {
+                getLog().warn("Error executing bulk operation in index builder: " + getName() + ", " + failure);
+                failures.addAndGet(request.numberOfActions());
+                recordBulkRequest(request, 0, request.numberOfActions());
+                for (DocWriteRequest<?> action : request.requests()) {
+                    if (action instanceof IndexRequest) {
+                        retryable.add(action.id());
+                    }
+                }
+            }
+        };
+
+        return BulkProcessor.builder(this::executeBulkRequestAsync, listener)
+                .setBulkActions(bulkRequestSize)
+                .setBulkSize(new ByteSizeValue(bulkRequestBytes))
+                .setConcurrentRequests(concurrentBulkRequests)
+                .setBackoffPolicy(BackoffPolicy.exponentialBackoff(TimeValue.timeValueMillis(bulkRequestRetryDelay), bulkRequestRetries))
+                .build();
+    }
+
+    /**
+     * Sends whatever is left in the bulk processor and waits for all its bulk calls to complete.
+     */
+    protected void awaitBulkProcessor(BulkProcessor bulkProcessor) {
+        try {
+            if (!bulkProcessor.awaitClose(10, TimeUnit.MINUTES)) {
+                getLog().warn("Timed out waiting for bulk requests to complete in index builder: " + getName());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    protected void executeBulkRequestAsync(BulkRequest bulkRequest, ActionListener<BulkResponse> listener) {
+        client.bulkAsync(bulkRequest, RequestOptions.DEFAULT, listener);
+    }
+
     protected void executeBulkRequest(BulkRequest bulkRequest) {
         BulkResponse bulkResponse = null;
         try {
@@ -534,10 +756,22 @@ public abstract class BaseElasticSearchIndexBuilder implements ElasticSearchInde
             return;
         }
 
+        int failed = logBulkResponse(bulkRequest, bulkResponse);
+        recordBulkRequest(bulkRequest, bulkResponse.getTook().getMillis(), failed);
+    }
+
+    /**
+     * @return the number of actions in the bulk request that failed
+     */
+    protected int logBulkResponse(BulkRequest bulkRequest, BulkResponse bulkResponse) {
         getLog().info("Bulk request of batch size: " + bulkRequest.numberOfActions() + " took "
                 + bulkResponse.getTook().getMillis() + " ms in index builder: " + getName());
 
+        int failed = 0;
         for (BulkItemResponse response : bulkResponse.getItems()) {
+            if (response.isFailed()) {
+                failed++;
+            }
             if (response.getResponse() instanceof DeleteResponse) {
                 DeleteResponse deleteResponse = response.getResponse();
 
@@ -556,8 +790,19 @@ public abstract class BaseElasticSearchIndexBuilder implements ElasticSearchInde
                 } else {
                     getLog().debug("ES indexed content for doc with id: " + indexResponse.getId() + " in index builder: " + getName());
                 }
+            } else if (response.isFailed()) {
+                getLog().error("Problem with doc: " + response.getId() + " in index builder: " + getName() + " error: " + response.getFailureMessage());
             }
         }
+        return failed;
+    }
+
+    protected void recordBulkRequest(BulkRequest bulkRequest, long tookMillis, int failed) {
+        bulkRequests.incrementAndGet();
+        bulkBytes.addAndGet(bulkRequest.estimatedSizeInBytes());
+        bulkTime.addAndGet(tookMillis);
+        indexedDocs.addAndGet(bulkRequest.numberOfActions() - failed);
+        failedDocs.addAndGet(failed);
     }
 
     protected void noContentProducerForContentQueueEntry(SearchHit hit, String reference) throws NoContentException {
@@ -830,7 +1075,7 @@ public abstract class BaseElasticSearchIndexBuilder implements ElasticSearchInde
     protected void prepareIndexAdd(String resourceName, EntityContentProducer ecp, boolean includeContent) throws NoContentException {
         try {
             IndexRequest request = prepareIndex(resourceName, ecp, includeContent);
-            client.index(request, RequestOptions.DEFAULT);
+            indexDocumentWithRequest(request);
         } catch (NoContentException e) {
             throw e;
         } catch (IOException ioe) {
@@ -838,6 +1083,10 @@ public abstract class BaseElasticSearchIndexBuilder implements ElasticSearchInde
         }
     }
 
+    protected IndexResponse indexDocumentWithRequest(IndexRequest indexRequest) throws IOException {
+        return client.index(indexRequest, RequestOptions.DEFAULT);
+    }
+
     /**
      * schedules content for indexing.
      * @param resourceName
@@ -1258,6 +1507,14 @@ public abstract class BaseElasticSearchIndexBuilder implements ElasticSearchInde
         } else {
             into.append(" idle. ");
         }
+        long requests = bulkRequests.get();
+        if (requests > 0) {
+            into.append("Sent " + indexedDocs.get() + " docs (" + failedDocs.get() + " failed) in " + requests
+                    + " bulk requests averaging " + (bulkBytes.get() / requests / 1024) + " KB and "
+                    + (bulkTime.get() / requests) + " ms. ");
+            into.append("Content extraction took " + TimeUnit.NANOSECONDS.toMillis(extractionTime.get()) + " ms, "
+                    + (indexedDocs.get() * 1000L / Math.max(1, contentQueueTime.get())) + " docs/s overall. ");
+        }
         // These stats may not be available to the High Level Client until ES 7.5
         // into.append("Index Size: " + roundTwoDecimals(status.getStoreSize().getGbFrac()) + " GB" +
         //         " Refresh Time: " + status.getRefreshStats().getTotalTimeInMillis() + "ms" +
@@ -1563,6 +1820,26 @@ public abstract class BaseElasticSearchIndexBuilder implements ElasticSearchInde
         this.bulkRequestSize = bulkRequestSize;
     }
 
+    public void setBulkRequestBytes(long bulkRequestBytes) {
+        this.bulkRequestBytes = bulkRequestBytes;
+    }
+
+    public void setConcurrentBulkRequests(int concurrentBulkRequests) {
+        this.concurrentBulkRequests = concurrentBulkRequests;
+    }
+
+    public void setBulkRequestRetries(int bulkRequestRetries) {
+        this.bulkRequestRetries = bulkRequestRetries;
+    }
+
+    public void setBulkRequestRetryDelay(long bulkRequestRetryDelay) {
+        this.bulkRequestRetryDelay = bulkRequestRetryDelay;
+    }
+
+    public void setContentIndexThreads(int contentIndexThreads) {
+        this.contentIndexThreads = contentIndexThreads;
+    }
+
     public void setSecurityService(SecurityService securityService) {
         this.securityService = securityService;
     }
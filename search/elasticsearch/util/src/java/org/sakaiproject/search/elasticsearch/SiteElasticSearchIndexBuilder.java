@@ -34,11 +34,12 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
-import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkProcessor;
 import org.elasticsearch.action.delete.DeleteRequest;
 import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.search.SearchRequest;
@@ -238,43 +239,41 @@ public class SiteElasticSearchIndexBuilder extends BaseElasticSearchIndexBuilder
             deleteAllDocumentForSite(siteId);
 
             long start = System.currentTimeMillis();
-            int numberOfDocs = 0;
+            AtomicInteger numberOfDocs = new AtomicInteger();
 
-            BulkRequest bulkRequest = new BulkRequest();
+            BulkProcessor bulkProcessor = newBulkProcessor(new AtomicInteger());
+            List<Runnable> tasks = new ArrayList<>();
 
             for (final EntityContentProducer ecp : producers) {
-            	Iterator<String> i = ecp.getSiteContentIterator(siteId);
+                Iterator<String> i = ecp.getSiteContentIterator(siteId);
 
                 while ( i != null && i.hasNext() ) {
-
-                    if (bulkRequest.numberOfActions() < bulkRequestSize) {
-                        String reference = i.next();
-
+                    String reference = i.next();
+                    tasks.add(() -> {
                         if (StringUtils.isNotBlank(ecp.getContent(reference))) {
                             //updating was causing issues without a _source, so doing delete and re-add
                             try {
                                 deleteDocument(ecp.getId(reference), ecp.getSiteId(reference));
-                                bulkRequest.add(prepareIndex(reference, ecp, false));
-                                numberOfDocs++;
+                                bulkProcessor.add(prepareIndex(reference, ecp, false));
+                                numberOfDocs.incrementAndGet();
                             } catch (Exception e) {
                                 getLog().error(e.getMessage(), e);
                             }
                         }
+                    });
 
-                    } else {
-                        executeBulkRequest(bulkRequest);
-                        bulkRequest = new BulkRequest();
+                    if (tasks.size() >= contentIndexBatchSize) {
+                        runContentIndexTasks(tasks);
+                        tasks = new ArrayList<>();
                     }
                 }
-
-                // execute any remaining bulks requests not executed yet
-                if (bulkRequest.numberOfActions() > 0) {
-                    executeBulkRequest(bulkRequest);
-                }
-
             }
 
-            getLog().info("Queued " + numberOfDocs + " docs for indexing from site: " + siteId + " in " + (System.currentTimeMillis() - start) + " ms");
+            // extract any remaining content and wait for the bulk requests to be sent
+            runContentIndexTasks(tasks);
+            awaitBulkProcessor(bulkProcessor);
+
+            getLog().info("Queued " + numberOfDocs.get() + " docs for indexing from site: " + siteId + " in " + (System.currentTimeMillis() - start) + " ms");
 
         } catch (Exception e) {
             getLog().error("An exception occurred while rebuilding the index of '" + siteId + "'", e);
@@ -0,0 +1,1299 @@
+/**
+ * Copyright (c) 2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.search.lucene;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.en.EnglishAnalyzer;
+import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexNotFoundException;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.index.SegmentCommitInfo;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.queryparser.simple.SimpleQueryParser;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.ControlledRealTimeReopenThread;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherFactory;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TermInSetQuery;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.QueryBuilder;
+import org.sakaiproject.authz.api.SecurityAdvisor;
+import org.sakaiproject.authz.api.SecurityService;
+import org.sakaiproject.component.api.ServerConfigurationService;
+import org.sakaiproject.entity.api.Entity;
+import org.sakaiproject.event.api.Event;
+import org.sakaiproject.event.api.EventTrackingService;
+import org.sakaiproject.event.api.Notification;
+import org.sakaiproject.event.api.NotificationService;
+import org.sakaiproject.exception.IdUnusedException;
+import org.sakaiproject.search.api.EntityContentProducer;
+import org.sakaiproject.search.api.EntityContentProducerEvents;
+import org.sakaiproject.search.api.SearchResult;
+import org.sakaiproject.search.api.SearchService;
+import org.sakaiproject.search.api.SearchStatus;
+import org.sakaiproject.search.api.SiteSearchIndexBuilder;
+import org.sakaiproject.search.api.TermFrequency;
+import org.sakaiproject.search.model.SearchBuilderItem;
+import org.sakaiproject.site.api.Site;
+import org.sakaiproject.site.api.SiteService;
+import org.sakaiproject.user.api.User;
+import org.sakaiproject.user.api.UserDirectoryService;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * <p>Index builder keeping its index in an embedded, on-disk Lucene index instead of elasticsearch, for single
+ * nodes (small installs, test servers and CI) that shouldn't need to run a search cluster. The index lives under
+ * sakai home and is only updated by this node, so it shouldn't be used on a cluster.</p>
+ *
+ * <p>It works like the elasticsearch site index builder: content producers register with it, events add a
+ * placeholder doc for the entity and a background task digests the content of placeholder docs in batches, on a
+ * small pool of threads. Searches use near-real-time readers that are reopened at most {@link #maxStaleSec}
+ * seconds after a change, or straight away by {@link #refreshIndex()}.</p>
+ */
+@Slf4j
+public class LuceneSearchIndexBuilder implements SiteSearchIndexBuilder {
+
+    protected static final String SEARCH_TOOL_ID = "sakai.search";
+    protected static final String FIELD_ID = "id";
+
+    protected static final String[] RESULT_FIELDS = {
+            FIELD_ID,
+            SearchService.FIELD_REFERENCE,
+            SearchService.FIELD_SITEID,
+            SearchService.FIELD_TITLE,
+            SearchService.FIELD_URL,
+            SearchService.FIELD_TYPE,
+            SearchService.FIELD_TOOL
+    };
+
+    /**
+     * Content isn't stored, but its term vectors are so {@link #getTerms(String)} can list the terms of a doc.
+     */
+    protected static final FieldType CONTENTS_TYPE = new FieldType(TextField.TYPE_NOT_STORED);
+    static {
+        CONTENTS_TYPE.setStoreTermVectors(true);
+        CONTENTS_TYPE.freeze();
+    }
+
+    protected final static SecurityAdvisor allowAllAdvisor =
+            (userId, function, reference) -> SecurityAdvisor.SecurityAdvice.ALLOWED;
+
+    protected SecurityService securityService;
+    protected ServerConfigurationService serverConfigurationService;
+    protected EventTrackingService eventTrackingService;
+    protected SiteService siteService;
+    protected UserDirectoryService userDirectoryService;
+
+    protected String name;
+
+    protected String indexName;
+
+    /**
+     * directory holding the index, defaults to lucene/{indexName} in sakai home
+     */
+    protected String location;
+
+    /**
+     * Number of queued docs to digest at a time, defaults to 500.
+     */
+    protected int contentIndexBatchSize = 500;
+
+    /**
+     * Number of threads digesting content, defaults to 4.
+     */
+    protected int contentIndexThreads = 4;
+
+    /**
+     * How long changes can take to show up in searches, in seconds (defaults to 5).
+     */
+    protected double maxStaleSec = 5.0;
+
+    /**
+     * Size of the in memory buffer for added docs before they are flushed to a new segment, in MB (defaults to 32).
+     */
+    protected double ramBufferSizeMB = 32.0;
+
+    /**
+     * set to false if you want to index all content, not just sites that have the search tool placed
+     */
+    protected boolean onlyIndexSearchToolSites = true;
+
+    /**
+     * set to false to include user site content in index
+     */
+    protected boolean excludeUserSites = true;
+
+    /**
+     * parsed list of sites never indexed, see {@link #setIgnoredSites(String)}
+     */
+    protected List<String> ignoredSitesList = new ArrayList<>(Arrays.asList("~admin", "!admin", "PortfolioAdmin"));
+
+    protected boolean useSuggestions = true;
+
+    protected int maxNumberOfSuggestions = 10;
+
+    /**
+     * delay before the content queue is first processed and the period between runs, in seconds
+     */
+    protected int delay = 180;
+    protected int period = 60;
+
+    /**
+     * digest content as soon as it is added, for tests. DO NOT enable this in production.
+     */
+    protected boolean testMode = false;
+
+    protected Set<String> triggerFunctions = new HashSet<>();
+
+    protected final Set<EntityContentProducer> producers = ConcurrentHashMap.newKeySet();
+
+    protected Consumer<LuceneSearchIndexBuilder> eventRegistrar;
+
+    protected Analyzer analyzer;
+    protected Directory directory;
+    protected IndexWriter indexWriter;
+    protected SearcherManager searcherManager;
+    protected ControlledRealTimeReopenThread<IndexSearcher> reopenThread;
+    protected Timer backgroundScheduler;
+    protected ExecutorService contentIndexExecutor;
+
+    protected long startTime;
+    protected long lastLoad;
+
+    /**
+     * throughput since startup, see {@link #getStatus(StringBuilder)}
+     */
+    protected final AtomicLong indexedDocs = new AtomicLong();
+    protected final AtomicLong indexTime = new AtomicLong();
+    protected final AtomicLong searches = new AtomicLong();
+    protected final AtomicLong searchTime = new AtomicLong();
+
+    public boolean isEnabled() {
+        return serverConfigurationService.getBoolean("search.enable", false);
+    }
+
+    /**
+     * Opens the index and starts the background tasks.
+     *
+     * @param eventRegistrar called with this builder when the events it wants to hear about change
+     */
+    public void initialize(Consumer<LuceneSearchIndexBuilder> eventRegistrar) {
+        if (!isEnabled()) {
+            log.debug("Search is not enabled. Skipping initialization of index builder [{}]. Set search.enable=true to change that.", name);
+            return;
+        }
+
+        if (testMode) {
+            log.warn("IN TEST MODE for index builder [{}]. DO NOT enable this in production !!!", name);
+        }
+
+        if (StringUtils.isBlank(location)) {
+            location = serverConfigurationService.getSakaiHomePath() + "/lucene/" + indexName;
+        }
+        log.info("Initializing Lucene index builder [{}] with its index in [{}]", name, location);
+
+        try {
+            analyzer = newAnalyzer();
+            directory = FSDirectory.open(Paths.get(location));
+            IndexWriterConfig config = new IndexWriterConfig(analyzer)
+                    .setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND)
+                    .setRAMBufferSizeMB(ramBufferSizeMB);
+            indexWriter = new IndexWriter(directory, config);
+            searcherManager = new SearcherManager(indexWriter, new SearcherFactory());
+        } catch (IOException ioe) {
+            throw new IllegalStateException("Could not open the index for index builder [" + name + "] in " + location, ioe);
+        }
+
+        reopenThread = new ControlledRealTimeReopenThread<>(indexWriter, searcherManager, maxStaleSec, 0.025);
+        reopenThread.setName("[lucene reopen " + name + "]");
+        reopenThread.setDaemon(true);
+        reopenThread.start();
+
+        int threads = Math.max(1, contentIndexThreads);
+        AtomicInteger threadCount = new AtomicInteger();
+        contentIndexExecutor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(threads * 2),
+                r -> {
+                    Thread thread = new Thread(r, "[lucene content extractor " + name + "-" + threadCount.getAndIncrement() + "]");
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+
+        backgroundScheduler = new Timer("[lucene index builder " + name + "]", true);
+        backgroundScheduler.schedule(new ContentQueueTask(), delay * 1000L, period * 1000L);
+
+        this.eventRegistrar = eventRegistrar;
+        eventRegistrar.accept(this);
+    }
+
+    protected Analyzer newAnalyzer() {
+        // stem the content like the elasticsearch snowball analyzer, everything else is just tokenized
+        Map<String, Analyzer> fieldAnalyzers = new HashMap<>();
+        fieldAnalyzers.put(SearchService.FIELD_CONTENTS, new EnglishAnalyzer());
+        return new PerFieldAnalyzerWrapper(new StandardAnalyzer(), fieldAnalyzers);
+    }
+
+    @Override
+    public void destroy() {
+        if (backgroundScheduler != null) {
+            backgroundScheduler.cancel();
+            backgroundScheduler = null;
+        }
+        if (contentIndexExecutor != null) {
+            contentIndexExecutor.shutdownNow();
+            contentIndexExecutor = null;
+        }
+        try {
+            if (reopenThread != null) {
+                reopenThread.close();
+            }
+            if (searcherManager != null) {
+                searcherManager.close();
+            }
+            if (indexWriter != null) {
+                indexWriter.close();
+            }
+            if (directory != null) {
+                directory.close();
+            }
+        } catch (IOException ioe) {
+            log.warn("Error closing the index for index builder [{}], {}", name, ioe.toString());
+        }
+        reopenThread = null;
+        searcherManager = null;
+        indexWriter = null;
+        directory = null;
+        eventRegistrar = null;
+    }
+
+    protected class ContentQueueTask extends TimerTask {
+        @Override
+        public void run() {
+            try {
+                // If there are a lot of docs queued up this could take awhile we don't want
+                // to eat up all the CPU cycles.
+                Thread.currentThread().setPriority(Thread.NORM_PRIORITY - 1);
+                processContentQueue();
+                // placeholder docs added by events are only made durable here
+                commit();
+            } catch (Throwable t) {
+                log.error("Problem processing the content queue in index builder [{}]", name, t);
+            }
+        }
+    }
+
+    /**
+     * Digests the content of docs waiting in the index, {@link #contentIndexBatchSize} at a time on the content index
+     * workers, until none are left or a batch has docs that failed, which are left for the next run.
+     */
+    protected void processContentQueue() {
+        startTime = System.currentTimeMillis();
+        int processed = 0;
+
+        while (true) {
+            List<String> references = findContentQueue(contentIndexBatchSize);
+            if (references.isEmpty()) {
+                break;
+            }
+            log.debug("{} pending docs being indexed by index builder [{}]", references.size(), name);
+
+            AtomicInteger failures = new AtomicInteger();
+            List<Runnable> tasks = new ArrayList<>(references.size());
+            for (String reference : references) {
+                tasks.add(() -> {
+                    EntityContentProducer ecp = newEntityContentProducer(reference);
+                    try {
+                        if (ecp == null) {
+                            // nothing can produce this doc any more
+                            indexWriter.deleteDocuments(new Term(SearchService.FIELD_REFERENCE, reference));
+                        } else {
+                            indexDocument(reference, ecp, true);
+                        }
+                    } catch (Exception e) {
+                        failures.incrementAndGet();
+                        log.error("Failed to process content queue entry [{}] in index builder [{}]", reference, name, e);
+                    }
+                });
+            }
+            runContentIndexTasks(tasks);
+            processed += references.size();
+
+            commit();
+            refreshIndex();
+            if (failures.get() > 0 || references.size() < contentIndexBatchSize) {
+                break;
+            }
+        }
+
+        lastLoad = System.currentTimeMillis();
+        if (processed > 0) {
+            log.info("Finished indexing {} docs in {} ms ({} docs/s) for index builder {}", processed, lastLoad - startTime,
+                    processed * 1000L / Math.max(1, lastLoad - startTime), name);
+        }
+    }
+
+    /**
+     * Runs the tasks on the content index workers, with the security advisor in place, and waits for them all to finish.
+     */
+    protected void runContentIndexTasks(List<Runnable> tasks) {
+        List<Future<?>> futures = new ArrayList<>(tasks.size());
+        for (Runnable task : tasks) {
+            Runnable advised = () -> {
+                enableAzgSecurityAdvisor();
+                try {
+                    task.run();
+                } finally {
+                    disableAzgSecurityAdvisor();
+                }
+            };
+            if (contentIndexExecutor == null) {
+                advised.run();
+            } else {
+                futures.add(contentIndexExecutor.submit(advised));
+            }
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                log.error("Content indexing task failed in index builder [{}]", name, e.getCause());
+            }
+        }
+    }
+
+    protected List<String> findContentQueue(int size) {
+        return searchReferences(new TermQuery(new Term(SearchService.FIELD_INDEXED, Boolean.FALSE.toString())), size);
+    }
+
+    protected List<String> searchReferences(Query query, int size) {
+        IndexSearcher searcher = null;
+        try {
+            searcher = searcherManager.acquire();
+            TopDocs topDocs = searcher.search(query, Math.max(1, size));
+            List<String> references = new ArrayList<>(topDocs.scoreDocs.length);
+            for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+                references.add(searcher.doc(scoreDoc.doc, Collections.singleton(SearchService.FIELD_REFERENCE))
+                        .get(SearchService.FIELD_REFERENCE));
+            }
+            return references;
+        } catch (IOException ioe) {
+            log.error("Problem searching index builder [{}], {}", name, ioe.toString());
+            return Collections.emptyList();
+        } finally {
+            release(searcher);
+        }
+    }
+
+    /**
+     * Adds or replaces the doc for an entity.
+     *
+     * @param includeContent digest the content now, otherwise a placeholder is added for the content queue
+     * @return false if the entity has no content so its doc was removed instead
+     */
+    protected boolean indexDocument(String reference, EntityContentProducer ecp, boolean includeContent) throws IOException {
+        long start = System.nanoTime();
+        String id = ecp.getId(reference);
+        Document doc = new Document();
+        doc.add(new StringField(FIELD_ID, id, Field.Store.YES));
+        doc.add(new StringField(SearchService.FIELD_REFERENCE, reference, Field.Store.YES));
+        addStringField(doc, SearchService.FIELD_SITEID, ecp.getSiteId(reference));
+        addStringField(doc, SearchService.FIELD_TOOL, ecp.getTool());
+        addStringField(doc, SearchService.FIELD_TYPE, ecp.getType(reference));
+        addStringField(doc, SearchService.FIELD_CONTAINER, ecp.getContainer(reference));
+        String title = ecp.getTitle(reference);
+        if (title != null) {
+            doc.add(new TextField(SearchService.FIELD_TITLE, title, Field.Store.YES));
+        }
+        String url = ecp.getUrl(reference, Entity.UrlType.PORTAL);
+        if (url != null) {
+            doc.add(new StoredField(SearchService.FIELD_URL, url));
+        }
+        for (Map.Entry<String, Collection<String>> property : extractCustomProperties(reference, ecp).entrySet()) {
+            for (String value : property.getValue()) {
+                if (value != null) {
+                    doc.add(new TextField(property.getKey(), value, Field.Store.NO));
+                }
+            }
+        }
+
+        boolean indexed = includeContent || testMode;
+        if (indexed) {
+            String content = ecp.getContent(reference);
+            // some of the ecp impls produce content with nothing but whitespace, its waste of time to index those
+            if (StringUtils.isBlank(content)) {
+                indexWriter.deleteDocuments(new Term(FIELD_ID, id));
+                return false;
+            }
+            doc.add(new Field(SearchService.FIELD_CONTENTS, content, CONTENTS_TYPE));
+        }
+        doc.add(new StringField(SearchService.FIELD_INDEXED, Boolean.toString(indexed), Field.Store.NO));
+
+        indexWriter.updateDocument(new Term(FIELD_ID, id), doc);
+        if (indexed) {
+            indexedDocs.incrementAndGet();
+            indexTime.addAndGet(System.nanoTime() - start);
+        }
+        return true;
+    }
+
+    protected void addStringField(Document doc, String field, String value) {
+        if (value != null) {
+            doc.add(new StringField(field, value, Field.Store.YES));
+        }
+    }
+
+    protected Map<String, Collection<String>> extractCustomProperties(String reference, EntityContentProducer ecp) {
+        Map<String, ?> m = ecp.getCustomProperties(reference);
+        if (m == null) {
+            return Collections.emptyMap();
+        }
+
+        Map<String, Collection<String>> properties = new HashMap<>(m.size());
+        for (Map.Entry<String, ?> property : m.entrySet()) {
+            Object value = property.getValue();
+            if (value instanceof String) {
+                properties.put(property.getKey(), Collections.singleton((String) value));
+            } else if (value instanceof String[]) {
+                properties.put(property.getKey(), Arrays.asList((String[]) value));
+            } else if (value instanceof Collection) {
+                properties.put(property.getKey(), (Collection<String>) value);
+            } else if (value != null) {
+                log.warn("Couldn't find what the value for '{}' was. It has been ignored. {}", property.getKey(), value.getClass());
+            }
+        }
+        return properties;
+    }
+
+    public void deleteDocument(String id) {
+        try {
+            indexWriter.deleteDocuments(new Term(FIELD_ID, id));
+        } catch (IOException ioe) {
+            log.error("Problem deleting doc [{}] in index builder [{}], {}", id, name, ioe.toString());
+        }
+    }
+
+    protected void deleteAllDocumentsForSite(String siteId) {
+        log.debug("removing all documents from search index for siteId: {}", siteId);
+        try {
+            indexWriter.deleteDocuments(new Term(SearchService.FIELD_SITEID, siteId));
+        } catch (IOException ioe) {
+            log.error("Problem deleting the docs for site [{}] in index builder [{}], {}", siteId, name, ioe.toString());
+        }
+    }
+
+    protected void commit() {
+        try {
+            if (indexWriter.hasUncommittedChanges()) {
+                indexWriter.commit();
+            }
+        } catch (IOException ioe) {
+            log.error("Problem committing the index for index builder [{}], {}", name, ioe.toString());
+        }
+    }
+
+    @Override
+    public void addResource(Notification notification, Event event) {
+        log.debug("Add resource {}::{} in index builder {}", notification, event, name);
+
+        if (!isEnabled() || indexWriter == null) {
+            return;
+        }
+
+        // almost all events not validating here are uninteresting, content producers historically registered
+        // their events with the search service rather than the index builder they use
+        EntityContentProducer ecp = newEntityContentProducer(event);
+        if (ecp == null) {
+            log.debug("Skipping index for event {} in index builder [{}], no content producer matches it", event, name);
+            return;
+        }
+
+        String reference = StringUtils.defaultString(event.getResource());
+        String id = ecp.getId(reference);
+        if (reference.length() > 255 || StringUtils.isEmpty(id)) {
+            log.debug("Skipping index for event {} in index builder [{}], it has no usable reference", event, name);
+            return;
+        }
+
+        Integer action = ecp.getAction(event);
+        try {
+            if (SearchBuilderItem.ACTION_ADD.equals(action)) {
+                if (!isSiteIndexable(ecp.getSiteId(reference))) {
+                    log.debug("Skipping index for event {} in index builder [{}], its site isn't indexed", event, name);
+                    return;
+                }
+                indexDocument(reference, ecp, false);
+            } else if (SearchBuilderItem.ACTION_DELETE.equals(action)) {
+                deleteDocument(id);
+            }
+        } catch (Exception e) {
+            log.error("Problem updating content indexing in index builder [{}] for entity: {}", name, reference, e);
+        }
+    }
+
+    protected boolean isSiteIndexable(String siteId) {
+        if (!onlyIndexSearchToolSites) {
+            return true;
+        }
+        try {
+            return siteService.getSite(siteId).getToolForCommonId(SEARCH_TOOL_ID) != null;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * Check if a site is considered as indexable based on the current server configuration, see
+     * {@link #setOnlyIndexSearchToolSites(boolean)}, {@link #setExcludeUserSites(boolean)} and
+     * {@link #setIgnoredSites(String)}.
+     */
+    protected boolean isSiteIndexable(Site site) {
+        return !(siteService.isSpecialSite(site.getId()) ||
+                (onlyIndexSearchToolSites && site.getToolForCommonId(SEARCH_TOOL_ID) == null) ||
+                (excludeUserSites && siteService.isUserSite(site.getId())) ||
+                (ignoredSitesList.contains(site.getId())));
+    }
+
+    /**
+     * Replaces the docs of the site with placeholders for everything its content producers have, the content is
+     * digested by the content queue.
+     */
+    protected void rebuildSiteIndex(String siteId) {
+        log.info("Rebuilding the index for '{}'", siteId);
+        long start = System.currentTimeMillis();
+        int numberOfDocs = 0;
+
+        enableAzgSecurityAdvisor();
+        try {
+            deleteAllDocumentsForSite(siteId);
+            for (EntityContentProducer ecp : producers) {
+                Iterator<String> i = ecp.getSiteContentIterator(siteId);
+                while (i != null && i.hasNext()) {
+                    String reference = i.next();
+                    try {
+                        indexDocument(reference, ecp, false);
+                        numberOfDocs++;
+                    } catch (Exception e) {
+                        log.error("Problem queuing {} for indexing in index builder [{}]", reference, name, e);
+                    }
+                }
+            }
+            commit();
+        } finally {
+            disableAzgSecurityAdvisor();
+        }
+
+        log.info("Queued {} docs for indexing from site: {} in {} ms", numberOfDocs, siteId, System.currentTimeMillis() - start);
+    }
+
+    @Override
+    public void rebuildIndex(String siteId) {
+        if (testMode) {
+            rebuildSiteIndex(siteId);
+            return;
+        }
+        backgroundScheduler.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                rebuildSiteIndex(siteId);
+            }
+        }, 0);
+    }
+
+    @Override
+    public void rebuildIndex() {
+        try {
+            indexWriter.deleteAll();
+        } catch (IOException ioe) {
+            log.error("Problem clearing the index for index builder [{}], {}", name, ioe.toString());
+            return;
+        }
+
+        Runnable rebuild = () -> siteService.getSites(SiteService.SelectionType.ANY, null, null, null, SiteService.SortType.NONE, null)
+                .stream()
+                .filter(this::isSiteIndexable)
+                .forEach(s -> rebuildSiteIndex(s.getId()));
+        if (testMode) {
+            rebuild.run();
+            return;
+        }
+        backgroundScheduler.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                rebuild.run();
+            }
+        }, 0);
+    }
+
+    /**
+     * Makes every change so far visible to searches.
+     */
+    @Override
+    public void refreshIndex() {
+        try {
+            searcherManager.maybeRefreshBlocking();
+        } catch (IOException ioe) {
+            log.error("IO Error refreshing index for index builder [{}], {}", name, ioe.toString());
+        }
+    }
+
+    /**
+     * Puts the docs the index already has for the site back on the content queue, it does not add any new docs.
+     * If you want to reload all site content you need to do a {@link #rebuildIndex(String)}.
+     */
+    @Override
+    public void refreshIndex(String siteId) {
+        log.info("Refreshing the index for '{}'", siteId);
+
+        try {
+            if (!isSiteIndexable(siteService.getSite(siteId))) {
+                log.debug("ignoring request to refreshIndex for site: {} as its not indexable", siteId);
+                return;
+            }
+        } catch (IdUnusedException e) {
+            log.error("site with siteId={} does not exist can't refresh its index", siteId);
+            return;
+        }
+
+        for (String reference : searchReferences(new TermQuery(new Term(SearchService.FIELD_SITEID, siteId)), Integer.MAX_VALUE - 1)) {
+            EntityContentProducer ecp = newEntityContentProducer(reference);
+            if (ecp == null || ecp.getSiteId(reference) == null) {
+                log.warn("Couldn't either find an entityContentProducer or the resource itself for '{}'", reference);
+                continue;
+            }
+            try {
+                indexDocument(reference, ecp, false);
+            } catch (IOException ioe) {
+                log.error("Problem queuing {} for indexing in index builder [{}], {}", reference, name, ioe.toString());
+            }
+        }
+    }
+
+    /**
+     * Searches the title and contents of the docs.
+     *
+     * @param searchTerms simple query syntax, or type:terms to search the contents of one type of entity. Null
+     *                    matches everything.
+     * @param references  only these entities, if not empty
+     * @param siteIds     only these sites, if not empty
+     */
+    public LuceneSearchList search(String searchTerms, List<String> references, List<String> siteIds, int start, int end) {
+        LuceneSearchList hits = searchIndex(searchTerms, references, siteIds, start, end);
+        List<SearchResult> results = new ArrayList<>(hits.size());
+        for (SearchResult hit : hits) {
+            results.add(filter((LuceneSearchResult) hit));
+        }
+        return new LuceneSearchList(results, hits.getFullSize(), hits.getStart());
+    }
+
+    /**
+     * Like {@link #search(String, List, List, int, int)}, but the hits the current user can't read are left in.
+     */
+    public LuceneSearchList searchIndex(String searchTerms, List<String> references, List<String> siteIds, int start, int end) {
+        Query query = buildSearchQuery(searchTerms, references, siteIds);
+        if (query == null) {
+            return LuceneSearchList.empty();
+        }
+
+        long startNanos = System.nanoTime();
+        IndexSearcher searcher = null;
+        try {
+            searcher = searcherManager.acquire();
+            TopDocs topDocs = searcher.search(query, Math.max(1, end));
+            Set<String> fieldsToLoad = new HashSet<>(Arrays.asList(RESULT_FIELDS));
+            List<SearchResult> results = new ArrayList<>();
+            for (int i = start; i < Math.min(end, topDocs.scoreDocs.length); i++) {
+                ScoreDoc scoreDoc = topDocs.scoreDocs[i];
+                Map<String, String[]> fields = new LinkedHashMap<>();
+                for (IndexableField field : searcher.doc(scoreDoc.doc, fieldsToLoad)) {
+                    fields.merge(field.name(), new String[]{field.stringValue()}, (a, b) -> {
+                        String[] merged = Arrays.copyOf(a, a.length + b.length);
+                        System.arraycopy(b, 0, merged, a.length, b.length);
+                        return merged;
+                    });
+                }
+                LuceneSearchResult result = new LuceneSearchResult(fields, scoreDoc.score, this, searchTerms);
+                result.setIndex(i);
+                results.add(result);
+            }
+
+            eventTrackingService.post(
+                    eventTrackingService.newEvent(
+                            SearchService.EVENT_SEARCH,
+                            SearchService.EVENT_SEARCH_REF + query.toString(),
+                            true,
+                            NotificationService.PREF_IMMEDIATE));
+            return new LuceneSearchList(results, (int) Math.min(Integer.MAX_VALUE, topDocs.totalHits), start);
+        } catch (IOException ioe) {
+            log.debug("Error for search request from index builder [{}], {}", name, ioe.toString());
+            return LuceneSearchList.empty();
+        } finally {
+            release(searcher);
+            searches.incrementAndGet();
+            searchTime.addAndGet(System.nanoTime() - startNanos);
+        }
+    }
+
+    protected Query buildSearchQuery(String searchTerms, List<String> references, List<String> siteIds) {
+        BooleanQuery.Builder query = new BooleanQuery.Builder();
+
+        if (searchTerms == null) {
+            query.add(new MatchAllDocsQuery(), BooleanClause.Occur.MUST);
+        } else if (searchTerms.contains(":")) {
+            String[] termWithType = searchTerms.split(":", 2);
+            // little fragile but seems like most providers follow this convention, there isn't a nice way to get the type
+            // without a handle to a reference.
+            query.add(new TermQuery(new Term(SearchService.FIELD_TYPE, "sakai:" + termWithType[0])), BooleanClause.Occur.MUST);
+            Query contents = new QueryBuilder(analyzer).createBooleanQuery(SearchService.FIELD_CONTENTS, termWithType[1]);
+            if (contents == null) {
+                return null;
+            }
+            query.add(contents, BooleanClause.Occur.MUST);
+        } else {
+            Map<String, Float> weights = new HashMap<>();
+            weights.put(SearchService.FIELD_TITLE, 2.0f);
+            weights.put(SearchService.FIELD_CONTENTS, 1.0f);
+            Query terms = new SimpleQueryParser(analyzer, weights).parse(searchTerms);
+            if (terms == null) {
+                return null;
+            }
+            query.add(terms, BooleanClause.Occur.MUST);
+        }
+
+        if (references != null && !references.isEmpty()) {
+            query.add(termsQuery(SearchService.FIELD_REFERENCE, references), BooleanClause.Occur.FILTER);
+        }
+        if (siteIds != null && !siteIds.isEmpty()) {
+            query.add(termsQuery(SearchService.FIELD_SITEID, siteIds), BooleanClause.Occur.FILTER);
+        }
+        return query.build();
+    }
+
+    protected Query termsQuery(String field, Collection<String> values) {
+        return new TermInSetQuery(field, values.stream().map(BytesRef::new).collect(Collectors.toList()));
+    }
+
+    /**
+     * Replaces results the current user can't read with a censored result.
+     */
+    protected SearchResult filter(LuceneSearchResult result) {
+        String reference = result.getReference();
+        EntityContentProducer ecp = newEntityContentProducer(reference);
+        if (ecp == null || !ecp.canRead(reference)) {
+            return LuceneSearchResult.censored(result.getIndex());
+        }
+        return result;
+    }
+
+    /**
+     * Titles starting with the words of the search string, in the current site or all of the user's sites.
+     */
+    public String[] searchSuggestions(String searchString, String currentSite, boolean allMySites) {
+        if (!useSuggestions || StringUtils.isBlank(searchString)) {
+            return new String[0];
+        }
+
+        BooleanQuery.Builder query = new BooleanQuery.Builder();
+        try {
+            Set<String> words = LuceneSearchResult.analyze(analyzer, SearchService.FIELD_TITLE, searchString);
+            if (words.isEmpty()) {
+                return new String[0];
+            }
+            for (String word : words) {
+                query.add(new PrefixQuery(new Term(SearchService.FIELD_TITLE, word)), BooleanClause.Occur.MUST);
+            }
+        } catch (IOException ioe) {
+            log.error("Could not analyze search suggestion [{}] in index builder [{}], {}", searchString, name, ioe.toString());
+            return new String[0];
+        }
+
+        List<String> sites;
+        if (allMySites || currentSite == null) {
+            sites = getAllUsersSites();
+        } else {
+            sites = Collections.singletonList(currentSite);
+        }
+        query.add(termsQuery(SearchService.FIELD_SITEID, sites), BooleanClause.Occur.FILTER);
+
+        IndexSearcher searcher = null;
+        try {
+            searcher = searcherManager.acquire();
+            TopDocs topDocs = searcher.search(query.build(), maxNumberOfSuggestions);
+            List<String> suggestions = new ArrayList<>(topDocs.scoreDocs.length);
+            for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+                suggestions.add(searcher.doc(scoreDoc.doc, Collections.singleton(SearchService.FIELD_TITLE)).get(SearchService.FIELD_TITLE));
+            }
+            return suggestions.toArray(new String[0]);
+        } catch (IOException ioe) {
+            log.error("Search suggestions from index builder [{}] failed, {}", name, ioe.toString());
+            return new String[0];
+        } finally {
+            release(searcher);
+        }
+    }
+
+    /**
+     * Get all the sites the current user has access to.
+     */
+    protected List<String> getAllUsersSites() {
+        User user = userDirectoryService.getCurrentUser();
+        List<String> siteIds = siteService.getSites(SiteService.SelectionType.ACCESS, null, null, null, null, null)
+                .stream().map(Site::getId).collect(Collectors.toList());
+        siteIds.add(siteService.getUserSiteId(user == null ? "" : user.getId()));
+        return siteIds;
+    }
+
+    /**
+     * The terms of the content of a doc, most frequent first.
+     *
+     * @param docId the number of the doc in the current reader
+     */
+    public TermFrequency getTerms(int docId) throws IOException {
+        if (searcherManager == null) {
+            return termFrequency(null);
+        }
+        IndexSearcher searcher = searcherManager.acquire();
+        try {
+            IndexReader reader = searcher.getIndexReader();
+            if (docId < 0 || docId >= reader.maxDoc()) {
+                return termFrequency(null);
+            }
+            return termFrequency(reader.getTermVector(docId, SearchService.FIELD_CONTENTS));
+        } finally {
+            release(searcher);
+        }
+    }
+
+    /**
+     * The terms of the content of the doc with this id, most frequent first.
+     */
+    public TermFrequency getTerms(String id) throws IOException {
+        if (searcherManager == null || StringUtils.isEmpty(id)) {
+            return termFrequency(null);
+        }
+        IndexSearcher searcher = searcherManager.acquire();
+        try {
+            TopDocs topDocs = searcher.search(new TermQuery(new Term(FIELD_ID, id)), 1);
+            if (topDocs.scoreDocs.length == 0) {
+                return termFrequency(null);
+            }
+            return termFrequency(searcher.getIndexReader().getTermVector(topDocs.scoreDocs[0].doc, SearchService.FIELD_CONTENTS));
+        } finally {
+            release(searcher);
+        }
+    }
+
+    protected static TermFrequency termFrequency(Terms termVector) throws IOException {
+        Map<String, Integer> frequencies = new HashMap<>();
+        if (termVector != null) {
+            TermsEnum termsEnum = termVector.iterator();
+            for (BytesRef term = termsEnum.next(); term != null; term = termsEnum.next()) {
+                // within a term vector the total frequency is the frequency in the doc
+                frequencies.put(term.utf8ToString(), (int) termsEnum.totalTermFreq());
+            }
+        }
+        List<Map.Entry<String, Integer>> sorted = new ArrayList<>(frequencies.entrySet());
+        sorted.sort(Map.Entry.<String, Integer>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()));
+        String[] terms = sorted.stream().map(Map.Entry::getKey).toArray(String[]::new);
+        int[] counts = sorted.stream().mapToInt(Map.Entry::getValue).toArray();
+        return new TermFrequency() {
+            public String[] getTerms() {
+                return terms;
+            }
+
+            public int[] getFrequencies() {
+                return counts;
+            }
+        };
+    }
+
+    /**
+     * The segments of the last commit of the index, as name, size and last update rows for the search admin tool.
+     */
+    public List<Object[]> getSegmentInfo() {
+        if (directory == null) {
+            return Collections.emptyList();
+        }
+        List<Object[]> segments = new ArrayList<>();
+        try {
+            for (SegmentCommitInfo segment : SegmentInfos.readLatestCommit(directory)) {
+                long lastModified = 0;
+                for (String file : segment.files()) {
+                    lastModified = Math.max(lastModified, Files.getLastModifiedTime(Paths.get(location, file)).toMillis());
+                }
+                segments.add(new Object[]{name + "/" + segment.info.name,
+                        String.format("%.1f KB", segment.sizeInBytes() / 1024.0), new Date(lastModified)});
+            }
+        } catch (IndexNotFoundException infe) {
+            log.debug("Nothing has been committed to the index of index builder [{}] yet", name);
+        } catch (IOException ioe) {
+            log.warn("Could not read the segments of the index of index builder [{}], {}", name, ioe.toString());
+        }
+        return segments;
+    }
+
+    protected void release(IndexSearcher searcher) {
+        if (searcher != null) {
+            try {
+                searcherManager.release(searcher);
+            } catch (IOException ioe) {
+                log.warn("Could not release searcher in index builder [{}], {}", name, ioe.toString());
+            }
+        }
+    }
+
+    protected int count(Query query) {
+        IndexSearcher searcher = null;
+        try {
+            searcher = searcherManager.acquire();
+            return searcher.count(query);
+        } catch (IOException ioe) {
+            log.error("Problem counting docs for index builder [{}], {}", name, ioe.toString());
+            return 0;
+        } finally {
+            release(searcher);
+        }
+    }
+
+    @Override
+    public int getPendingDocuments() {
+        if (searcherManager == null) {
+            return 0;
+        }
+        return count(new TermQuery(new Term(SearchService.FIELD_INDEXED, Boolean.FALSE.toString())));
+    }
+
+    public long getNDocs() {
+        if (searcherManager == null) {
+            return 0;
+        }
+        return count(new TermQuery(new Term(SearchService.FIELD_INDEXED, Boolean.TRUE.toString())));
+    }
+
+    @Override
+    public boolean isBuildQueueEmpty() {
+        return getPendingDocuments() == 0;
+    }
+
+    public StringBuilder getStatus(StringBuilder into) {
+        long pendingDocs = getPendingDocuments();
+
+        into.append("Index builder: ").append(name);
+        if (pendingDocs != 0) {
+            into.append(" active. " + pendingDocs + " pending items in queue. ");
+        } else {
+            into.append(" idle. ");
+        }
+        if (indexedDocs.get() > 0) {
+            into.append("Indexed " + indexedDocs.get() + " docs averaging "
+                    + TimeUnit.NANOSECONDS.toMicros(indexTime.get() / indexedDocs.get()) + " us. ");
+        }
+        if (searches.get() > 0) {
+            into.append("Ran " + searches.get() + " searches averaging "
+                    + TimeUnit.NANOSECONDS.toMicros(searchTime.get() / searches.get()) + " us. ");
+        }
+        return into;
+    }
+
+    public SearchStatus getSearchStatus() {
+        final String lastLoadStr = new Date(lastLoad).toString();
+        final String loadTimeStr = String.valueOf((double) (0.001 * lastLoad));
+        final String pdocs = String.valueOf(getPendingDocuments());
+        final String ndocs = String.valueOf(getNDocs());
+
+        return new SearchStatus() {
+            public String getLastLoad() {
+                return lastLoadStr;
+            }
+
+            public String getLoadTime() {
+                return loadTimeStr;
+            }
+
+            public String getCurrentWorker() {
+                return serverConfigurationService.getServerId();
+            }
+
+            public String getCurrentWorkerETC() {
+                return serverConfigurationService.getServerId();
+            }
+
+            public List getWorkerNodes() {
+                return Collections.emptyList();
+            }
+
+            public String getNDocuments() {
+                return ndocs;
+            }
+
+            public String getPDocuments() {
+                return pdocs;
+            }
+        };
+    }
+
+    /**
+     * Find a {@link EntityContentProducer} capable of handling the given entity reference, or null if no
+     * such producer has been registered.
+     */
+    @Override
+    public EntityContentProducer newEntityContentProducer(String ref) {
+        return matchEntityContentProducer(p -> p.matches(ref)).orElse(null);
+    }
+
+    /**
+     * Find a {@link EntityContentProducer} capable of handling the given {@code Event}, or null if no
+     * such producer has been registered.
+     */
+    @Override
+    public EntityContentProducer newEntityContentProducer(Event event) {
+        return matchEntityContentProducer(p -> p.matches(event)).orElse(null);
+    }
+
+    protected Optional<EntityContentProducer> matchEntityContentProducer(Predicate<EntityContentProducer> matcher) {
+        return producers.stream().filter(matcher).findFirst();
+    }
+
+    @Override
+    public List<EntityContentProducer> getContentProducers() {
+        return new ArrayList<>(producers);
+    }
+
+    @Override
+    public void registerEntityContentProducer(EntityContentProducer ecp) {
+        log.debug("register {}", ecp);
+        producers.add(ecp);
+        if (eventRegistrar != null) {
+            eventRegistrar.accept(this);
+        }
+    }
+
+    public Set<String> getContentFunctions() {
+        return producers.stream()
+                .filter(ecp -> ecp instanceof EntityContentProducerEvents)
+                .flatMap(ecp -> ((EntityContentProducerEvents) ecp).getTriggerFunctions().stream())
+                .collect(Collectors.toSet());
+    }
+
+    public String getEventResourceFilter() {
+        return "/";
+    }
+
+    /**
+     * Establish a security advisor to allow the "embedded" work to occur with no need for additional security permissions.
+     */
+    protected void enableAzgSecurityAdvisor() {
+        securityService.pushAdvisor(allowAllAdvisor);
+    }
+
+    /**
+     * Disable the security advisor.
+     */
+    protected void disableAzgSecurityAdvisor() {
+        SecurityAdvisor popped = securityService.popAdvisor(allowAllAdvisor);
+        if (!allowAllAdvisor.equals(popped)) {
+            if (popped == null) {
+                log.debug("Someone has removed our advisor.");
+            } else {
+                log.debug("Removed someone elses advisor, adding it back.");
+                securityService.pushAdvisor(popped);
+            }
+        }
+    }
+
+    public Analyzer getAnalyzer() {
+        return analyzer;
+    }
+
+    @Override
+    public List<SearchBuilderItem> getAllSearchItems() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public List<SearchBuilderItem> getGlobalMasterSearchItems() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public List<SearchBuilderItem> getSiteMasterSearchItems() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public boolean isOnlyIndexSearchToolSites() {
+        return onlyIndexSearchToolSites;
+    }
+
+    @Override
+    public boolean isExcludeUserSites() {
+        return excludeUserSites;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public void setIndexName(String indexName) {
+        this.indexName = indexName;
+    }
+
+    public void setLocation(String location) {
+        this.location = location;
+    }
+
+    public void setContentIndexBatchSize(int contentIndexBatchSize) {
+        this.contentIndexBatchSize = contentIndexBatchSize;
+    }
+
+    public void setContentIndexThreads(int contentIndexThreads) {
+        this.contentIndexThreads = contentIndexThreads;
+    }
+
+    public void setMaxStaleSec(double maxStaleSec) {
+        this.maxStaleSec = maxStaleSec;
+    }
+
+    public void setRamBufferSizeMB(double ramBufferSizeMB) {
+        this.ramBufferSizeMB = ramBufferSizeMB;
+    }
+
+    public void setOnlyIndexSearchToolSites(boolean onlyIndexSearchToolSites) {
+        this.onlyIndexSearchToolSites = onlyIndexSearchToolSites;
+    }
+
+    public void setExcludeUserSites(boolean excludeUserSites) {
+        this.excludeUserSites = excludeUserSites;
+    }
+
+    /**
+     * comma separated list of sites to always ignore when indexing. Defaults to ~admin, !admin, PortfolioAdmin
+     */
+    public void setIgnoredSites(String ignoredSites) {
+        this.ignoredSitesList = Arrays.asList(ignoredSites.split(","));
+    }
+
+    public void setUseSuggestions(boolean useSuggestions) {
+        this.useSuggestions = useSuggestions;
+    }
+
+    public void setMaxNumberOfSuggestions(int maxNumberOfSuggestions) {
+        this.maxNumberOfSuggestions = maxNumberOfSuggestions;
+    }
+
+    public void setDelay(int delay) {
+        this.delay = delay;
+    }
+
+    public void setPeriod(int period) {
+        this.period = period;
+    }
+
+    public void setTestMode(boolean testMode) {
+        this.testMode = testMode;
+    }
+
+    public void setTriggerFunctions(Collection<String> triggerFunctions) {
+        this.triggerFunctions = new HashSet<>(triggerFunctions);
+    }
+
+    public Set<String> getTriggerFunctions() {
+        return triggerFunctions;
+    }
+
+    public void setSecurityService(SecurityService securityService) {
+        this.securityService = securityService;
+    }
+
+    public void setServerConfigurationService(ServerConfigurationService serverConfigurationService) {
+        this.serverConfigurationService = serverConfigurationService;
+    }
+
+    public void setEventTrackingService(EventTrackingService eventTrackingService) {
+        this.eventTrackingService = eventTrackingService;
+    }
+
+    public void setSiteService(SiteService siteService) {
+        this.siteService = siteService;
+    }
+
+    public void setUserDirectoryService(UserDirectoryService userDirectoryService) {
+        this.userDirectoryService = userDirectoryService;
+    }
+}
@@ -0,0 +1,69 @@
+/**
+ * Copyright (c) 2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.search.lucene;
+
+import java.util.AbstractList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.sakaiproject.search.api.SearchList;
+import org.sakaiproject.search.api.SearchResult;
+
+/**
+ * One page of results from a {@link LuceneSearchIndexBuilder} search.
+ */
+public class LuceneSearchList extends AbstractList<SearchResult> implements SearchList {
+
+    private final List<SearchResult> results;
+    private final int fullSize;
+    private final int start;
+
+    public LuceneSearchList(List<SearchResult> results, int fullSize, int start) {
+        this.results = Collections.unmodifiableList(results);
+        this.fullSize = fullSize;
+        this.start = start;
+    }
+
+    public static LuceneSearchList empty() {
+        return new LuceneSearchList(Collections.emptyList(), 0, 0);
+    }
+
+    @Override
+    public SearchResult get(int index) {
+        return results.get(index);
+    }
+
+    @Override
+    public int size() {
+        return results.size();
+    }
+
+    @Override
+    public Iterator<SearchResult> iterator(int startAt) {
+        return results.listIterator(Math.min(startAt, results.size()));
+    }
+
+    @Override
+    public int getFullSize() {
+        return fullSize;
+    }
+
+    @Override
+    public int getStart() {
+        return start;
+    }
+}
@@ -0,0 +1,274 @@
+/**
+ * Copyright (c) 2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.search.lucene;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.text.StringEscapeUtils;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.sakaiproject.search.api.EntityContentProducer;
+import org.sakaiproject.search.api.PortalUrlEnabledProducer;
+import org.sakaiproject.search.api.SearchResult;
+import org.sakaiproject.search.api.SearchService;
+import org.sakaiproject.search.api.TermFrequency;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A hit from a {@link LuceneSearchIndexBuilder} index, or a censored placeholder for a hit the current user can't read.
+ */
+@Slf4j
+public class LuceneSearchResult implements SearchResult {
+
+    private static final int MAX_FRAGMENTS = 5;
+    private static final int FRAGMENT_SIZE = 100;
+
+    private final Map<String, String[]> fields;
+    private final float score;
+    private final LuceneSearchIndexBuilder searchIndexBuilder;
+    private final String searchTerms;
+    private final boolean censored;
+    private int index;
+    private String newUrl;
+
+    public LuceneSearchResult(Map<String, String[]> fields, float score, LuceneSearchIndexBuilder searchIndexBuilder, String searchTerms) {
+        this(fields, score, searchIndexBuilder, searchTerms, false);
+    }
+
+    private LuceneSearchResult(Map<String, String[]> fields, float score, LuceneSearchIndexBuilder searchIndexBuilder, String searchTerms, boolean censored) {
+        this.fields = fields;
+        this.score = score;
+        this.searchIndexBuilder = searchIndexBuilder;
+        this.searchTerms = searchTerms;
+        this.censored = censored;
+    }
+
+    public static LuceneSearchResult censored(int index) {
+        LuceneSearchResult result = new LuceneSearchResult(Collections.emptyMap(), 0, null, null, true);
+        result.setIndex(index);
+        return result;
+    }
+
+    @Override
+    public float getScore() {
+        return score;
+    }
+
+    @Override
+    public String getId() {
+        return getField(LuceneSearchIndexBuilder.FIELD_ID);
+    }
+
+    @Override
+    public String[] getFieldNames() {
+        return fields.keySet().toArray(new String[0]);
+    }
+
+    @Override
+    public String[] getValues(String field) {
+        String[] values = fields.get(field);
+        return values == null ? new String[0] : values;
+    }
+
+    @Override
+    public Map<String, String[]> getValueMap() {
+        return new HashMap<>(fields);
+    }
+
+    @Override
+    public String getUrl() {
+        if (newUrl == null) {
+            return getField(SearchService.FIELD_URL);
+        }
+        return newUrl;
+    }
+
+    @Override
+    public String getTitle() {
+        if (censored) {
+            return Messages.getString("censored.title");
+        }
+        return getField(SearchService.FIELD_TITLE);
+    }
+
+    /**
+     * The best few fragments of the content, with the search terms in bold. The content isn't stored in the index,
+     * so like the elasticsearch results it is fetched from the content producer again.
+     */
+    @Override
+    public String getSearchResult() {
+        String reference = getReference();
+        if (censored || StringUtils.isEmpty(reference) || StringUtils.isBlank(searchTerms)) {
+            return "";
+        }
+
+        EntityContentProducer ecp = searchIndexBuilder.newEntityContentProducer(reference);
+        String text = ecp == null ? null : ecp.getContent(reference);
+        if (StringUtils.isEmpty(text)) {
+            return "";
+        }
+
+        try {
+            return highlight(searchIndexBuilder.getAnalyzer(), text, searchTerms);
+        } catch (IOException e) {
+            return e.getMessage();
+        }
+    }
+
+    static String highlight(Analyzer analyzer, String text, String searchTerms) throws IOException {
+        Set<String> terms = analyze(analyzer, SearchService.FIELD_CONTENTS, searchTerms);
+        StringBuilder sb = new StringBuilder();
+        int fragments = 0;
+        int fragmentEnd = -1;
+        int written = 0;
+        boolean full = false;
+
+        try (TokenStream tokenStream = analyzer.tokenStream(SearchService.FIELD_CONTENTS, text)) {
+            CharTermAttribute term = tokenStream.addAttribute(CharTermAttribute.class);
+            OffsetAttribute offset = tokenStream.addAttribute(OffsetAttribute.class);
+            tokenStream.reset();
+            while (!full && tokenStream.incrementToken()) {
+                if (!terms.contains(term.toString())) {
+                    continue;
+                }
+                int start = offset.startOffset();
+                int end = offset.endOffset();
+                if (fragmentEnd < 0 || start - FRAGMENT_SIZE / 2 > fragmentEnd) {
+                    // too far from the last match, finish that fragment and start a new one around this match
+                    if (fragmentEnd >= 0) {
+                        sb.append(StringEscapeUtils.escapeHtml4(text.substring(written, fragmentEnd)));
+                        if (fragments == MAX_FRAGMENTS) {
+                            fragmentEnd = -1;
+                            full = true;
+                            continue;
+                        }
+                        sb.append(" ... ");
+                    }
+                    fragments++;
+                    written = Math.max(0, start - FRAGMENT_SIZE / 2);
+                }
+                sb.append(StringEscapeUtils.escapeHtml4(text.substring(written, start)))
+                        .append("<b>").append(StringEscapeUtils.escapeHtml4(text.substring(start, end))).append("</b>");
+                written = end;
+                fragmentEnd = Math.min(text.length(), end + FRAGMENT_SIZE / 2);
+            }
+            tokenStream.end();
+        }
+        if (fragmentEnd >= 0) {
+            sb.append(StringEscapeUtils.escapeHtml4(text.substring(written, fragmentEnd)));
+        }
+        return sb.toString();
+    }
+
+    static Set<String> analyze(Analyzer analyzer, String field, String text) throws IOException {
+        Set<String> terms = new HashSet<>();
+        try (TokenStream tokenStream = analyzer.tokenStream(field, text)) {
+            CharTermAttribute term = tokenStream.addAttribute(CharTermAttribute.class);
+            tokenStream.reset();
+            while (tokenStream.incrementToken()) {
+                terms.add(term.toString());
+            }
+            tokenStream.end();
+        }
+        return terms;
+    }
+
+    @Override
+    public String getReference() {
+        return getField(SearchService.FIELD_REFERENCE);
+    }
+
+    @Override
+    public TermFrequency getTerms() throws IOException {
+        if (censored) {
+            return LuceneSearchIndexBuilder.termFrequency(null);
+        }
+        return searchIndexBuilder.getTerms(getId());
+    }
+
+    @Override
+    public String getTool() {
+        return getField(SearchService.FIELD_TOOL);
+    }
+
+    @Override
+    public boolean isCensored() {
+        return censored;
+    }
+
+    @Override
+    public String getSiteId() {
+        return getField(SearchService.FIELD_SITEID);
+    }
+
+    protected String getField(String field) {
+        String[] values = fields.get(field);
+        return values == null || values.length == 0 ? "" : values[0];
+    }
+
+    @Override
+    public void toXMLString(StringBuilder sb) {
+        sb.append("<result");
+        sb.append(" index=\"").append(getIndex()).append("\" ");
+        sb.append(" score=\"").append(getScore()).append("\" ");
+        sb.append(" sid=\"").append(StringEscapeUtils.escapeXml11(getId())).append("\" ");
+        sb.append(" site=\"").append(StringEscapeUtils.escapeXml11(getSiteId())).append("\" ");
+        sb.append(" reference=\"").append(StringEscapeUtils.escapeXml11(getReference())).append("\" ");
+        sb.append(" title=\"").append(Base64.getEncoder().encodeToString(getTitle().getBytes(StandardCharsets.UTF_8))).append("\" ");
+        sb.append(" tool=\"").append(StringEscapeUtils.escapeXml11(getTool())).append("\" ");
+        sb.append(" url=\"").append(StringEscapeUtils.escapeXml11(getUrl())).append("\" />");
+    }
+
+    @Override
+    public void setUrl(String newUrl) {
+        this.newUrl = newUrl;
+    }
+
+    @Override
+    public boolean hasPortalUrl() {
+        if (censored) {
+            return false;
+        }
+        EntityContentProducer sep = searchIndexBuilder.newEntityContentProducer(getReference());
+        return sep != null && PortalUrlEnabledProducer.class.isAssignableFrom(sep.getClass());
+    }
+
+    @Override
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    @Override
+    public String toString() {
+        return "LuceneSearchResult[" + getReference() + ", " + Arrays.toString(getValues(SearchService.FIELD_SITEID)) + "]";
+    }
+}
@@ -0,0 +1,502 @@
+/**
+ * Copyright (c) 2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.search.lucene;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.text.StringEscapeUtils;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.ShardSearchFailure;
+import org.elasticsearch.common.document.DocumentField;
+import org.elasticsearch.common.text.Text;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchHits;
+import org.elasticsearch.search.aggregations.InternalAggregations;
+import org.elasticsearch.search.internal.InternalSearchResponse;
+import org.sakaiproject.component.api.ServerConfigurationService;
+import org.sakaiproject.event.api.NotificationEdit;
+import org.sakaiproject.event.api.NotificationService;
+import org.sakaiproject.search.api.InvalidSearchQueryException;
+import org.sakaiproject.search.api.SearchList;
+import org.sakaiproject.search.api.SearchResult;
+import org.sakaiproject.search.api.SearchService;
+import org.sakaiproject.search.api.SearchStatus;
+import org.sakaiproject.search.api.TermFrequency;
+import org.sakaiproject.search.model.SearchBuilderItem;
+import org.sakaiproject.tool.api.Session;
+import org.sakaiproject.tool.api.SessionManager;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * <p>Search service backed by embedded Lucene indexes on local disk, see {@link LuceneSearchIndexBuilder}. It is a
+ * drop in replacement for the elasticsearch service on nodes that shouldn't run a search cluster, content
+ * producers register and their events are delivered exactly like they are with elasticsearch.</p>
+ *
+ * <p>{@link #searchResponse} gives the hits as an elasticsearch response, but without the aggregations the question
+ * search of samigo needs, so the service won't start when that is turned on.</p>
+ */
+@Slf4j
+public class LuceneSearchService implements SearchService {
+
+    /**
+     * turns on the samigo question search, which reads elasticsearch aggregations from {@link #searchResponse}
+     */
+    static final String SAMIGO_QUESTION_SEARCH = "samigo.question.show.showSearchQuestion";
+    private static final String SEARCH_HIT_TYPE = "_doc";
+
+    /* injected dependencies */
+    private List<String> triggerFunctions = new ArrayList<>();
+    private List<LuceneSearchIndexBuilder> indexBuilderList = new ArrayList<>();
+    private NotificationService notificationService;
+    private ServerConfigurationService serverConfigurationService;
+    private SessionManager sessionManager;
+
+    /**
+     * used in searchXML() to check the requests, remote searches are refused without it
+     */
+    private String sharedKey = null;
+
+    /* internal caches */
+    private final Map<String, LuceneSearchIndexBuilder> indexBuilders = new ConcurrentHashMap<>();
+    private final Map<String, NotificationEdit> notifications = new ConcurrentHashMap<>();
+    private final Set<String> globalContentFunctions = ConcurrentHashMap.newKeySet();
+
+    public void init() {
+        if (!isEnabled()) {
+            log.info("Lucene search is not enabled. Set search.enable=true to change that.");
+            return;
+        }
+        if (serverConfigurationService.getBoolean(SAMIGO_QUESTION_SEARCH, false)) {
+            throw new IllegalStateException("Lucene search can't aggregate the results of the samigo question search, "
+                    + "deploy elasticsearch instead or set " + SAMIGO_QUESTION_SEARCH + "=false");
+        }
+        indexBuilderList.forEach(this::registerIndexBuilder);
+    }
+
+    public void registerIndexBuilder(LuceneSearchIndexBuilder indexBuilder) {
+        String indexBuilderName = indexBuilder.getName();
+        synchronized (indexBuilders) {
+            if (indexBuilders.containsKey(indexBuilderName)) {
+                log.error("Skipping duplicate registration request from index builder [{}]", indexBuilderName);
+                return;
+            }
+            try {
+                indexBuilder.initialize(this::updateEventsFor);
+                indexBuilders.put(indexBuilderName, indexBuilder);
+            } catch (Exception e) {
+                log.error("Failed to initialize index builder [{}]", indexBuilderName, e);
+            }
+        }
+    }
+
+    /**
+     * Keeps the functions of the notification delivering events to the index builder up to date, builders call this
+     * whenever content producers register with them.
+     */
+    protected void updateEventsFor(LuceneSearchIndexBuilder indexBuilder) {
+        synchronized (indexBuilders) {
+            NotificationEdit notification = notifications.get(indexBuilder.getName());
+            if (notification == null) {
+                log.debug("Register a notification to trigger indexation on new elements by index builder [{}]", indexBuilder.getName());
+                notification = notificationService.addTransientNotification();
+                notification.setResourceFilter(indexBuilder.getEventResourceFilter());
+                for (String function : triggerFunctions) {
+                    registerNoDuplicates(function, notification);
+                }
+                registerNoDuplicates(SearchService.EVENT_TRIGGER_SEARCH, notification);
+                for (String function : globalContentFunctions) {
+                    registerNoDuplicates(function, notification);
+                }
+                notification.setAction(new SearchNotificationAction(indexBuilder));
+                notifications.put(indexBuilder.getName(), notification);
+            }
+
+            for (String function : indexBuilder.getTriggerFunctions()) {
+                registerNoDuplicates(function, notification);
+            }
+            for (String function : indexBuilder.getContentFunctions()) {
+                registerNoDuplicates(function, notification);
+            }
+        }
+    }
+
+    private void registerNoDuplicates(String function, NotificationEdit notification) {
+        if (!notification.containsFunction(function)) {
+            notification.addFunction(function);
+        }
+    }
+
+    @Override
+    public void registerFunction(String function) {
+        log.info("Register {} as a trigger for the search service", function);
+
+        if (!isEnabled()) {
+            log.debug("Lucene search is not enabled. Set search.enable=true to change that.");
+            return;
+        }
+
+        synchronized (indexBuilders) {
+            globalContentFunctions.add(function);
+            notifications.values().forEach(n -> registerNoDuplicates(function, n));
+        }
+    }
+
+    @Override
+    public SearchList search(String searchTerms, List<String> siteIds, int searchStart, int searchEnd) throws InvalidSearchQueryException {
+        return search(searchTerms, siteIds, searchStart, searchEnd, (String) null);
+    }
+
+    @Override
+    public SearchList search(String searchTerms, List<String> siteIds, int start, int end, String filterName, String sorterName) throws InvalidSearchQueryException {
+        return search(searchTerms, siteIds, start, end);
+    }
+
+    @Override
+    public SearchList search(String searchTerms, List<String> siteIds, int searchStart, int searchEnd, String indexBuilderName) throws InvalidSearchQueryException {
+        LuceneSearchIndexBuilder indexBuilder = indexBuilderByNameOrDefault(indexBuilderName);
+        if (indexBuilder == null) {
+            return LuceneSearchList.empty();
+        }
+        return indexBuilder.search(searchTerms, null, siteIds, searchStart, searchEnd);
+    }
+
+    @Override
+    public SearchList search(String searchTerms, List<String> siteIds, int searchStart, int searchEnd, String indexBuilderName, Map<String, String> additionalSearchInformation) throws InvalidSearchQueryException {
+        return search(searchTerms, siteIds, searchStart, searchEnd, indexBuilderName);
+    }
+
+    @Override
+    public SearchResponse searchResponse(String searchTerms, List<String> siteIds, int searchStart, int searchEnd, String indexBuilderName, Map<String, String> additionalSearchInformation) {
+        long start = System.currentTimeMillis();
+        LuceneSearchIndexBuilder indexBuilder = indexBuilderByNameOrDefault(indexBuilderName);
+        LuceneSearchList results = indexBuilder == null ? LuceneSearchList.empty()
+                : indexBuilder.searchIndex(searchTerms, null, siteIds, searchStart, searchEnd);
+
+        SearchHit[] hits = new SearchHit[results.size()];
+        float maxScore = 0;
+        for (int i = 0; i < hits.length; i++) {
+            SearchResult result = results.get(i);
+            Map<String, DocumentField> fields = new HashMap<>();
+            for (String field : result.getFieldNames()) {
+                fields.put(field, new DocumentField(field, Arrays.asList((Object[]) result.getValues(field))));
+            }
+            hits[i] = new SearchHit(result.getIndex(), result.getId(), new Text(SEARCH_HIT_TYPE), fields);
+            hits[i].score(result.getScore());
+            maxScore = Math.max(maxScore, result.getScore());
+        }
+
+        InternalSearchResponse response = new InternalSearchResponse(new SearchHits(hits, results.getFullSize(), maxScore),
+                InternalAggregations.EMPTY, null, null, false, null, 1);
+        return new SearchResponse(response, null, 1, 1, 0, System.currentTimeMillis() - start,
+                ShardSearchFailure.EMPTY_ARRAY, SearchResponse.Clusters.EMPTY);
+    }
+
+    protected LuceneSearchIndexBuilder indexBuilderByNameOrDefault(String indexBuilderName) {
+        if (StringUtils.isEmpty(indexBuilderName) || !indexBuilders.containsKey(indexBuilderName)) {
+            return indexBuilders.get(LuceneSearchIndexBuilder.DEFAULT_INDEX_BUILDER_NAME);
+        }
+        return indexBuilders.get(indexBuilderName);
+    }
+
+    /**
+     * Searches on behalf of a remote server, the requests are checked against the {@link #sharedKey}.
+     */
+    @Override
+    public String searchXML(Map parameterMap) {
+        String userid = requestParameter(parameterMap, REST_USERID);
+        String searchTerms = requestParameter(parameterMap, REST_TERMS);
+        String checksum = requestParameter(parameterMap, REST_CHECKSUM);
+        String contexts = requestParameter(parameterMap, REST_CONTEXTS);
+        String ss = requestParameter(parameterMap, REST_START);
+        String se = requestParameter(parameterMap, REST_END);
+        try {
+            if (StringUtils.isEmpty(sharedKey)) {
+                throw new IllegalStateException("Remote searches need a shared key");
+            }
+            if (userid == null || searchTerms == null || checksum == null || contexts == null || ss == null || se == null) {
+                throw new IllegalArgumentException("Invalid Request");
+            }
+            if (!digestCheck(userid, searchTerms).equals(checksum)) {
+                throw new IllegalArgumentException("Security Checksum is not valid");
+            }
+
+            Session session = sessionManager.startSession();
+            session.setUserId(userid);
+            sessionManager.setCurrentSession(session);
+            try {
+                SearchList sl = search(searchTerms, Arrays.asList(contexts.split(";")), Integer.parseInt(ss), Integer.parseInt(se));
+                StringBuilder sb = new StringBuilder("<?xml version=\"1.0\"?>");
+                sb.append("<results ");
+                sb.append(" fullsize=\"").append(sl.getFullSize()).append("\" ");
+                sb.append(" start=\"").append(sl.getStart()).append("\" ");
+                sb.append(" size=\"").append(sl.size()).append("\" ");
+                sb.append(" >");
+                for (SearchResult sr : sl) {
+                    sr.toXMLString(sb);
+                }
+                sb.append("</results>");
+                return sb.toString();
+            } finally {
+                sessionManager.setCurrentSession(null);
+                session.invalidate();
+            }
+        } catch (Exception ex) {
+            log.error("Search Service XML response failed, {}", ex.toString());
+            StringBuilder sb = new StringBuilder("<?xml version=\"1.0\"?>");
+            sb.append("<fault>");
+            sb.append("<request>");
+            sb.append("<![CDATA[");
+            sb.append(" userid = ").append(StringEscapeUtils.escapeXml11(userid)).append("\n");
+            sb.append(" searchTerms = ").append(StringEscapeUtils.escapeXml11(searchTerms)).append("\n");
+            sb.append(" checksum = ").append(StringEscapeUtils.escapeXml11(checksum)).append("\n");
+            sb.append(" contexts = ").append(StringEscapeUtils.escapeXml11(contexts)).append("\n");
+            sb.append(" ss = ").append(StringEscapeUtils.escapeXml11(ss)).append("\n");
+            sb.append(" se = ").append(StringEscapeUtils.escapeXml11(se)).append("\n");
+            sb.append("]]>");
+            sb.append("</request>");
+            sb.append("<error>");
+            sb.append("<![CDATA[");
+            sb.append(ex.getMessage());
+            sb.append("]]>");
+            sb.append("</error>");
+            sb.append("</fault>");
+            return sb.toString();
+        }
+    }
+
+    private static String requestParameter(Map parameterMap, String name) {
+        String[] values = (String[]) parameterMap.get(name);
+        return values == null || values.length != 1 ? null : values[0];
+    }
+
+    private String digestCheck(String userid, String searchTerms) throws GeneralSecurityException {
+        MessageDigest sha1 = MessageDigest.getInstance("SHA1");
+        byte[] digest = sha1.digest((sharedKey + userid + searchTerms).getBytes(StandardCharsets.UTF_8));
+        char[] chars = new char[digest.length * 2];
+        for (int i = 0; i < digest.length; i++) {
+            int hi = (digest[i] & 0xF0) >> 4;
+            int lo = digest[i] & 0x0F;
+            chars[2 * i] = (char) (hi < 10 ? ('0' + hi) : ('A' + hi - 10));
+            chars[2 * i + 1] = (char) (lo < 10 ? ('0' + lo) : ('A' + lo - 10));
+        }
+        return new String(chars);
+    }
+
+    @Override
+    public void reload() {
+    }
+
+    @Override
+    public void refreshInstance() {
+        forEachRegisteredIndexBuilder(LuceneSearchIndexBuilder::refreshIndex);
+    }
+
+    @Override
+    public void refreshIndex(String indexBuilderName) {
+        log.info("Refresh Index for Index Builder Name={}", indexBuilderName);
+        LuceneSearchIndexBuilder indexBuilder = indexBuilders.get(indexBuilderName);
+        if (indexBuilder != null) {
+            indexBuilder.refreshIndex();
+        }
+    }
+
+    @Override
+    public void rebuildInstance() {
+        forEachRegisteredIndexBuilder(LuceneSearchIndexBuilder::rebuildIndex);
+    }
+
+    @Override
+    public void rebuildIndex(String indexBuilderName) {
+        log.info("Rebuild Index Builder Name={}", indexBuilderName);
+        LuceneSearchIndexBuilder indexBuilder = indexBuilders.get(indexBuilderName);
+        if (indexBuilder != null) {
+            indexBuilder.rebuildIndex();
+        }
+    }
+
+    @Override
+    public void refreshSite(String currentSiteId) {
+        forEachRegisteredIndexBuilder(i -> i.refreshIndex(currentSiteId));
+    }
+
+    @Override
+    public void rebuildSite(String currentSiteId) {
+        forEachRegisteredIndexBuilder(i -> i.rebuildIndex(currentSiteId));
+    }
+
+    @Override
+    public String getStatus() {
+        final StringBuilder sb = new StringBuilder();
+        forEachRegisteredIndexBuilder(i -> i.getStatus(sb).append("\n\n"));
+        return sb.toString();
+    }
+
+    @Override
+    public long getNDocs() {
+        return indexBuilders.values().stream().mapToLong(LuceneSearchIndexBuilder::getNDocs).sum();
+    }
+
+    @Override
+    public int getPendingDocs() {
+        return indexBuilders.values().stream().mapToInt(LuceneSearchIndexBuilder::getPendingDocuments).sum();
+    }
+
+    @Override
+    public List<SearchBuilderItem> getAllSearchItems() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public List<SearchBuilderItem> getSiteMasterSearchItems() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public List<SearchBuilderItem> getGlobalMasterSearchItems() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public List<SearchStatus> getSearchStatus() {
+        return indexBuilders.values().stream().map(LuceneSearchIndexBuilder::getSearchStatus).collect(Collectors.toList());
+    }
+
+    protected void forEachRegisteredIndexBuilder(Consumer<LuceneSearchIndexBuilder> consumer) {
+        indexBuilders.values().forEach(consumer);
+    }
+
+    @Override
+    public boolean removeWorkerLock() {
+        return true;
+    }
+
+    @Override
+    public List<Object[]> getSegmentInfo() {
+        List<Object[]> segments = new ArrayList<>();
+        forEachRegisteredIndexBuilder(i -> segments.addAll(i.getSegmentInfo()));
+        return segments;
+    }
+
+    @Override
+    public void forceReload() {
+    }
+
+    @Override
+    public TermFrequency getTerms(int documentId) throws IOException {
+        LuceneSearchIndexBuilder indexBuilder = indexBuilderByNameOrDefault(null);
+        return indexBuilder == null ? LuceneSearchIndexBuilder.termFrequency(null) : indexBuilder.getTerms(documentId);
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return serverConfigurationService.getBoolean("search.enable", false);
+    }
+
+    @Override
+    public String getDigestStoragePath() {
+        return null;
+    }
+
+    @Override
+    public String getSearchSuggestion(String searchString) {
+        String[] suggestions = getSearchSuggestions(searchString, null, true);
+        for (String suggestion : suggestions) {
+            if (!searchString.equalsIgnoreCase(suggestion)) {
+                return suggestion;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String[] getSearchSuggestions(String searchString, String currentSite, boolean allMySites) {
+        return getSearchSuggestions(searchString, currentSite, allMySites, null);
+    }
+
+    @Override
+    public String[] getSearchSuggestions(String searchString, String currentSite, boolean allMySites, String indexBuilderName) {
+        LuceneSearchIndexBuilder indexBuilder = indexBuilderByNameOrDefault(indexBuilderName);
+        return indexBuilder == null ? new String[0] : indexBuilder.searchSuggestions(searchString, currentSite, allMySites);
+    }
+
+    @Override
+    public boolean isSearchServer() {
+        return true;
+    }
+
+    @Override
+    public Set<String> getIndexBuilderNames() {
+        return indexBuilders.keySet();
+    }
+
+    public void destroy() {
+        forEachRegisteredIndexBuilder(LuceneSearchIndexBuilder::destroy);
+        indexBuilders.clear();
+    }
+
+    @Override
+    public void enableDiagnostics() {
+    }
+
+    @Override
+    public void disableDiagnostics() {
+    }
+
+    @Override
+    public boolean hasDiagnostics() {
+        return false;
+    }
+
+    public void setTriggerFunctions(List<String> triggerFunctions) {
+        // other code assumes this field is always non-null
+        this.triggerFunctions = triggerFunctions == null ? new ArrayList<>() : triggerFunctions;
+    }
+
+    public void setIndexBuilders(List<LuceneSearchIndexBuilder> indexBuilderList) {
+        this.indexBuilderList = indexBuilderList;
+    }
+
+    public void setNotificationService(NotificationService notificationService) {
+        this.notificationService = notificationService;
+    }
+
+    public void setServerConfigurationService(ServerConfigurationService serverConfigurationService) {
+        this.serverConfigurationService = serverConfigurationService;
+    }
+
+    public void setSessionManager(SessionManager sessionManager) {
+        this.sessionManager = sessionManager;
+    }
+
+    public void setSharedKey(String sharedKey) {
+        this.sharedKey = sharedKey;
+    }
+}
@@ -0,0 +1,54 @@
+/**
+ * Copyright (c) 2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.search.lucene;
+
+import org.sakaiproject.event.api.Event;
+import org.sakaiproject.event.api.Notification;
+import org.sakaiproject.event.api.NotificationAction;
+import org.w3c.dom.Element;
+
+/**
+ * Hands the events of a transient notification to a {@link LuceneSearchIndexBuilder}.
+ */
+public class SearchNotificationAction implements NotificationAction {
+    private LuceneSearchIndexBuilder searchIndexBuilder;
+
+    public SearchNotificationAction(LuceneSearchIndexBuilder searchIndexBuilder) {
+        this.searchIndexBuilder = searchIndexBuilder;
+    }
+
+    @Override
+    public void set(Element element) {
+    }
+
+    @Override
+    public void set(NotificationAction notificationAction) {
+    }
+
+    @Override
+    public NotificationAction getClone() {
+        return new SearchNotificationAction(searchIndexBuilder);
+    }
+
+    @Override
+    public void toXml(Element element) {
+    }
+
+    @Override
+    public void notify(Notification notification, Event event) {
+        searchIndexBuilder.addResource(notification, event);
+    }
+}
@@ -0,0 +1,496 @@
+/**
+ * Copyright (c) 2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.search.lucene;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.search.SearchHit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.sakaiproject.authz.api.SecurityService;
+import org.sakaiproject.component.api.ServerConfigurationService;
+import org.sakaiproject.event.api.Event;
+import org.sakaiproject.event.api.EventTrackingService;
+import org.sakaiproject.event.api.Notification;
+import org.sakaiproject.event.api.NotificationEdit;
+import org.sakaiproject.event.api.NotificationService;
+import org.sakaiproject.search.api.EntityContentProducer;
+import org.sakaiproject.search.api.SearchList;
+import org.sakaiproject.search.api.SearchResult;
+import org.sakaiproject.search.api.SearchService;
+import org.sakaiproject.search.api.TermFrequency;
+import org.sakaiproject.search.model.SearchBuilderItem;
+import org.sakaiproject.site.api.Site;
+import org.sakaiproject.site.api.SiteService;
+import org.sakaiproject.tool.api.Session;
+import org.sakaiproject.tool.api.SessionManager;
+import org.sakaiproject.user.api.UserDirectoryService;
+
+/**
+ * The scenarios of the elasticsearch tests, run against the embedded Lucene index.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class LuceneSearchServiceTest {
+
+    static final String[] WORDS = {"lorem", "ipsum", "dolor", "sit", "amet", "consectetur", "adipiscing", "elit", "sed",
+            "do", "eiusmod", "tempor", "incididunt", "ut", "labore", "et", "dolore", "magna", "aliqua", "enim", "minim",
+            "veniam", "quis", "nostrud", "exercitation", "ullamco", "laboris", "nisi", "aliquip", "commodo"};
+
+    LuceneSearchService searchService;
+    LuceneSearchIndexBuilder indexBuilder;
+
+    @Mock ServerConfigurationService serverConfigurationService;
+    @Mock EventTrackingService eventTrackingService;
+    @Mock UserDirectoryService userDirectoryService;
+    @Mock NotificationService notificationService;
+    @Mock NotificationEdit notificationEdit;
+    @Mock SiteService siteService;
+    @Mock SecurityService securityService;
+    @Mock Notification notification;
+    @Mock Event event;
+    @Mock EntityContentProducer entityContentProducer;
+    @Mock Site site;
+    @Mock SessionManager sessionManager;
+    @Mock Session session;
+
+    final Map<String, String> resources = new LinkedHashMap<>();
+    final List<Event> events = new ArrayList<>();
+    final List<String> siteIds = new ArrayList<>();
+    final Random random = new Random(42);
+    final String siteId = UUID.randomUUID().toString();
+    final String resourceName = "Jane Doe key keyboard";
+    Path sakaiHome;
+
+    @Before
+    public void setUp() throws Exception {
+        sakaiHome = Files.createTempDirectory("lucene");
+        createTestResources();
+
+        lenient().when(site.getId()).thenReturn(siteId);
+        lenient().when(siteService.getSite(siteId)).thenReturn(site);
+        lenient().when(siteService.getSites(SiteService.SelectionType.ANY, null, null, null, SiteService.SortType.NONE, null))
+                .thenReturn(Arrays.asList(site));
+        when(serverConfigurationService.getBoolean("search.enable", false)).thenReturn(true);
+        when(serverConfigurationService.getSakaiHomePath()).thenReturn(sakaiHome.toString());
+        when(notificationService.addTransientNotification()).thenReturn(notificationEdit);
+        siteIds.add(siteId);
+
+        indexBuilder = new LuceneSearchIndexBuilder();
+        indexBuilder.setName(LuceneSearchIndexBuilder.DEFAULT_INDEX_BUILDER_NAME);
+        indexBuilder.setIndexName(LuceneSearchIndexBuilder.DEFAULT_INDEX_NAME);
+        indexBuilder.setTestMode(true);
+        indexBuilder.setOnlyIndexSearchToolSites(false);
+        indexBuilder.setExcludeUserSites(false);
+        indexBuilder.setIgnoredSites("!admin,~admin");
+        indexBuilder.setDelay(200);
+        indexBuilder.setPeriod(10);
+        indexBuilder.setContentIndexBatchSize(50);
+        indexBuilder.setSecurityService(securityService);
+        indexBuilder.setSiteService(siteService);
+        indexBuilder.setServerConfigurationService(serverConfigurationService);
+        indexBuilder.setEventTrackingService(eventTrackingService);
+        indexBuilder.setUserDirectoryService(userDirectoryService);
+
+        searchService = new LuceneSearchService();
+        searchService.setServerConfigurationService(serverConfigurationService);
+        searchService.setNotificationService(notificationService);
+        searchService.setSessionManager(sessionManager);
+        searchService.setIndexBuilders(Arrays.asList(indexBuilder));
+        searchService.init();
+
+        indexBuilder.registerEntityContentProducer(entityContentProducer);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        searchService.destroy();
+        try (Stream<Path> files = Files.walk(sakaiHome)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    void createTestResources() {
+        String content = "asdf organ organize organizations " + generateContent();
+        resources.put(resourceName, content);
+        lenient().when(event.getResource()).thenReturn(resourceName);
+        lenient().when(entityContentProducer.matches(event)).thenReturn(true);
+        lenient().when(entityContentProducer.matches(resourceName)).thenReturn(true);
+        lenient().when(entityContentProducer.getSiteId(resourceName)).thenReturn(siteId);
+        lenient().when(entityContentProducer.getAction(event)).thenReturn(SearchBuilderItem.ACTION_ADD);
+        lenient().when(entityContentProducer.getContent(resourceName)).thenReturn(content);
+        lenient().when(entityContentProducer.getType(resourceName)).thenReturn("sakai:content");
+        lenient().when(entityContentProducer.getId(resourceName)).thenReturn(resourceName);
+        lenient().when(entityContentProducer.getTitle(resourceName)).thenReturn(resourceName);
+        lenient().when(entityContentProducer.canRead(anyString())).thenReturn(true);
+        events.add(event);
+
+        for (int i = 0; i < 105; i++) {
+            String name = "resource " + i;
+            String resourceContent = generateContent();
+            resources.put(name, resourceContent);
+            Event newEvent = mock(Event.class);
+            events.add(newEvent);
+            lenient().when(newEvent.getResource()).thenReturn(name);
+            lenient().when(entityContentProducer.matches(newEvent)).thenReturn(true);
+            lenient().when(entityContentProducer.matches(name)).thenReturn(true);
+            lenient().when(entityContentProducer.getSiteId(name)).thenReturn(UUID.randomUUID().toString());
+            lenient().when(entityContentProducer.getAction(newEvent)).thenReturn(SearchBuilderItem.ACTION_ADD);
+            lenient().when(entityContentProducer.getContent(name)).thenReturn(resourceContent);
+            lenient().when(entityContentProducer.getType(name)).thenReturn("sakai:content");
+            lenient().when(entityContentProducer.getId(name)).thenReturn(name);
+        }
+
+        lenient().when(entityContentProducer.getSiteContentIterator(siteId)).thenAnswer(i -> resources.keySet().iterator());
+    }
+
+    String generateContent() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            sb.append(WORDS[random.nextInt(WORDS.length)]).append(i % 12 == 11 ? ". " : " ");
+        }
+        return sb.toString();
+    }
+
+    void addResources() {
+        events.forEach(e -> indexBuilder.addResource(notification, e));
+    }
+
+    @Test
+    public void testAddingResourceWithNoContent() {
+        when(event.getResource()).thenReturn("resource_with_no_content");
+        when(entityContentProducer.getId("resource_with_no_content")).thenReturn("resource_with_no_content");
+
+        indexBuilder.addResource(notification, event);
+        indexBuilder.refreshIndex();
+
+        assertEquals(0, searchService.getNDocs());
+    }
+
+    @Test
+    public void testAddResource() {
+        addResources();
+        indexBuilder.refreshIndex();
+        assertEquals(106, searchService.getNDocs());
+    }
+
+    @Test
+    public void testGetSearchSuggestions() {
+        indexBuilder.addResource(notification, event);
+        indexBuilder.refreshIndex();
+
+        assertTrue(Arrays.asList(searchService.getSearchSuggestions("key", siteId, false)).contains(resourceName));
+        assertTrue(Arrays.asList(searchService.getSearchSuggestions("keyboard", siteId, false)).contains(resourceName));
+        assertEquals(0, searchService.getSearchSuggestions("key", "another site", false).length);
+    }
+
+    @Test
+    public void testDeleteDocument() throws Exception {
+        indexBuilder.addResource(notification, event);
+        indexBuilder.refreshIndex();
+        assertEquals(1, searchService.getNDocs());
+
+        when(entityContentProducer.getAction(event)).thenReturn(SearchBuilderItem.ACTION_DELETE);
+        indexBuilder.addResource(notification, event);
+        indexBuilder.refreshIndex();
+        assertEquals(0, searchService.getNDocs());
+        assertEquals(0, searchService.search("asdf", siteIds, 0, 10).size());
+    }
+
+    @Test
+    public void testDeleteAllDocumentsForSite() throws Exception {
+        addResources();
+        indexBuilder.deleteAllDocumentsForSite(siteId);
+        indexBuilder.refreshIndex();
+
+        assertEquals(0, searchService.search("asdf", siteIds, 0, 10).size());
+        assertEquals(105, searchService.getNDocs());
+        assertEquals(0, searchService.getPendingDocs());
+    }
+
+    @Test
+    public void testSearch() throws Exception {
+        addResources();
+        indexBuilder.refreshIndex();
+
+        SearchList list = searchService.search("asdf", siteIds, 0, 10);
+        assertNotEquals(0, list.size());
+        SearchResult result = list.get(0);
+        assertNotNull(result);
+        assertEquals(resourceName, result.getReference());
+        assertTrue(result.getSearchResult().contains("<b>asdf</b>"));
+
+        // stemmed like the content
+        assertEquals(resourceName, searchService.search("organization", siteIds, 0, 10).get(0).getReference());
+
+        // Searching the title of the file should also return results
+        list = searchService.search("keyboard", siteIds, 0, 10);
+        assertNotEquals(0, list.size());
+        assertEquals(resourceName, list.get(0).getReference());
+
+        // type prefixed searches only look at that type
+        assertEquals(1, searchService.search("content:asdf", siteIds, 0, 10).size());
+        assertEquals(0, searchService.search("assignment:asdf", siteIds, 0, 10).size());
+    }
+
+    @Test
+    public void testSearchPaging() throws Exception {
+        addResources();
+        indexBuilder.refreshIndex();
+
+        SearchList all = searchService.search("lorem", null, 0, 200);
+        assertEquals(all.getFullSize(), all.size());
+
+        SearchList page = searchService.search("lorem", null, 10, 20);
+        assertEquals(10, page.getStart());
+        assertEquals(10, page.size());
+        assertEquals(all.getFullSize(), page.getFullSize());
+        assertEquals(all.get(10).getId(), page.get(0).getId());
+        assertEquals(10, page.get(0).getIndex());
+    }
+
+    @Test
+    public void testCensoredResults() throws Exception {
+        when(entityContentProducer.canRead(resourceName)).thenReturn(false);
+        addResources();
+        indexBuilder.refreshIndex();
+
+        SearchList list = searchService.search("asdf", siteIds, 0, 10);
+        assertEquals(1, list.size());
+        assertTrue(list.get(0).isCensored());
+    }
+
+    @Test
+    public void testRebuildSiteIndex() {
+        addResources();
+        indexBuilder.rebuildIndex(siteId);
+        indexBuilder.setContentIndexBatchSize(200);
+        indexBuilder.refreshIndex();
+        indexBuilder.processContentQueue();
+
+        assertEquals(106, searchService.getNDocs());
+    }
+
+    @Test
+    public void testRefreshSite() {
+        indexBuilder.setContentIndexBatchSize(200);
+        addResources();
+        indexBuilder.refreshIndex();
+        indexBuilder.processContentQueue();
+        assertEquals(106, searchService.getNDocs());
+
+        searchService.refreshSite(siteId);
+        indexBuilder.refreshIndex();
+
+        assertEquals(0, indexBuilder.getPendingDocuments());
+        assertEquals(106, searchService.getNDocs());
+    }
+
+    @Test
+    public void testRefresh() {
+        addResources();
+
+        searchService.refreshInstance();
+        assertEquals(106, searchService.getNDocs());
+    }
+
+    @Test
+    public void testContentQueue() {
+        indexBuilder.setTestMode(false);
+        indexBuilder.setContentIndexBatchSize(20);
+        addResources();
+        indexBuilder.refreshIndex();
+        assertEquals(106, indexBuilder.getPendingDocuments());
+        assertEquals(0, searchService.getNDocs());
+
+        indexBuilder.processContentQueue();
+
+        assertEquals(0, indexBuilder.getPendingDocuments());
+        assertEquals(106, searchService.getNDocs());
+    }
+
+    @Test
+    public void testRebuild() {
+        indexBuilder.setContentIndexBatchSize(200);
+        indexBuilder.addResource(notification, event);
+
+        // add in a resource with no content
+        String noContent = "billy bob";
+        resources.put(noContent, null);
+        Event newEvent = mock(Event.class);
+        when(newEvent.getResource()).thenReturn(noContent);
+        when(entityContentProducer.matches(newEvent)).thenReturn(true);
+        when(entityContentProducer.getSiteId(noContent)).thenReturn(siteId);
+        when(entityContentProducer.getAction(newEvent)).thenReturn(SearchBuilderItem.ACTION_ADD);
+        when(entityContentProducer.getId(noContent)).thenReturn(noContent);
+        events.add(newEvent);
+
+        addResources();
+
+        searchService.rebuildInstance();
+        indexBuilder.refreshIndex();
+        indexBuilder.processContentQueue();
+
+        verify(entityContentProducer, atLeast(106)).getContent(any(String.class));
+        assertEquals(0, indexBuilder.getPendingDocuments());
+        assertEquals(106, searchService.getNDocs());
+        assertFalse(searchService.getStatus().isEmpty());
+    }
+
+    @Test
+    public void testSearchResponse() {
+        addResources();
+        indexBuilder.refreshIndex();
+
+        SearchResponse response = searchService.searchResponse("asdf", siteIds, 0, 10, null, null);
+        assertEquals(1, response.getHits().getTotalHits());
+        SearchHit hit = response.getHits().getAt(0);
+        assertEquals(resourceName, hit.getId());
+        assertEquals(resourceName, hit.field(SearchService.FIELD_REFERENCE).getValue());
+        assertEquals(siteId, hit.field(SearchService.FIELD_SITEID).getValue());
+        assertTrue(hit.getScore() > 0);
+        assertEquals(0, response.getFailedShards());
+
+        response = searchService.searchResponse("lorem", null, 0, 10, null, null);
+        assertEquals(10, response.getHits().getHits().length);
+        assertTrue(response.getHits().getTotalHits() > 10);
+    }
+
+    @Test
+    public void testStartupRefusedWithQuestionSearch() {
+        when(serverConfigurationService.getBoolean(LuceneSearchService.SAMIGO_QUESTION_SEARCH, false)).thenReturn(true);
+        LuceneSearchService questionSearch = new LuceneSearchService();
+        questionSearch.setServerConfigurationService(serverConfigurationService);
+        try {
+            questionSearch.init();
+            fail("The question search of samigo needs elasticsearch");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains(LuceneSearchService.SAMIGO_QUESTION_SEARCH));
+        }
+    }
+
+    @Test
+    public void testSearchXML() throws Exception {
+        when(sessionManager.startSession()).thenReturn(session);
+        searchService.setSharedKey("secret");
+        indexBuilder.addResource(notification, event);
+        indexBuilder.refreshIndex();
+
+        String xml = searchService.searchXML(xmlRequest("jdoe", "asdf", checksum("secret", "jdoe", "asdf")));
+        assertTrue(xml, xml.contains("<results  fullsize=\"1\"  start=\"0\"  size=\"1\"  >"));
+        assertTrue(xml, xml.contains("reference=\"" + resourceName + "\""));
+        verify(session).setUserId("jdoe");
+        verify(sessionManager).setCurrentSession(session);
+        verify(sessionManager).setCurrentSession(null);
+        verify(session).invalidate();
+
+        xml = searchService.searchXML(xmlRequest("jdoe", "asdf", checksum("other", "jdoe", "asdf")));
+        assertTrue(xml, xml.contains("<fault>"));
+        assertTrue(xml, xml.contains("Security Checksum is not valid"));
+    }
+
+    @Test
+    public void testSearchXMLWithoutSharedKey() throws Exception {
+        String xml = searchService.searchXML(xmlRequest("jdoe", "asdf", checksum("", "jdoe", "asdf")));
+        assertTrue(xml, xml.contains("<fault>"));
+        verify(sessionManager, never()).startSession();
+    }
+
+    @Test
+    public void testGetTerms() throws Exception {
+        indexBuilder.addResource(notification, event);
+        indexBuilder.refreshIndex();
+
+        TermFrequency terms = searchService.search("asdf", siteIds, 0, 10).get(0).getTerms();
+        List<String> words = Arrays.asList(terms.getTerms());
+        assertTrue(words.contains("asdf"));
+        assertTrue(words.contains("organ"));
+        assertEquals(words.size(), terms.getFrequencies().length);
+        for (int i = 1; i < words.size(); i++) {
+            assertTrue(terms.getFrequencies()[i - 1] >= terms.getFrequencies()[i]);
+        }
+
+        assertEquals(words, Arrays.asList(searchService.getTerms(0).getTerms()));
+        assertEquals(0, searchService.getTerms(1).getTerms().length);
+    }
+
+    @Test
+    public void testGetSegmentInfo() {
+        assertTrue(searchService.getSegmentInfo().isEmpty());
+
+        addResources();
+        indexBuilder.refreshIndex();
+        indexBuilder.commit();
+
+        List<Object[]> segments = searchService.getSegmentInfo();
+        assertFalse(segments.isEmpty());
+        for (Object[] segment : segments) {
+            assertTrue(((String) segment[0]).startsWith(LuceneSearchIndexBuilder.DEFAULT_INDEX_BUILDER_NAME + "/"));
+            assertTrue(((String) segment[1]).endsWith(" KB"));
+            assertNotNull(segment[2]);
+        }
+    }
+
+    Map<String, String[]> xmlRequest(String userid, String searchTerms, String checksum) {
+        Map<String, String[]> parameters = new HashMap<>();
+        parameters.put(SearchService.REST_USERID, new String[]{userid});
+        parameters.put(SearchService.REST_TERMS, new String[]{searchTerms});
+        parameters.put(SearchService.REST_CHECKSUM, new String[]{checksum});
+        parameters.put(SearchService.REST_CONTEXTS, new String[]{siteId});
+        parameters.put(SearchService.REST_START, new String[]{"0"});
+        parameters.put(SearchService.REST_END, new String[]{"10"});
+        return parameters;
+    }
+
+    static String checksum(String sharedKey, String userid, String searchTerms) throws Exception {
+        byte[] digest = MessageDigest.getInstance("SHA1").digest((sharedKey + userid + searchTerms).getBytes(StandardCharsets.UTF_8));
+        return String.format("%040X", new BigInteger(1, digest));
+    }
+}
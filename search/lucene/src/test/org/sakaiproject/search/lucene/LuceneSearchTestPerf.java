@@ -0,0 +1,156 @@
+/**
+ * Copyright (c) 2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.search.lucene;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+import org.sakaiproject.authz.api.SecurityService;
+import org.sakaiproject.component.api.ServerConfigurationService;
+import org.sakaiproject.event.api.EventTrackingService;
+import org.sakaiproject.event.api.NotificationEdit;
+import org.sakaiproject.event.api.NotificationService;
+import org.sakaiproject.search.api.EntityContentProducer;
+import org.sakaiproject.site.api.Site;
+import org.sakaiproject.site.api.SiteService;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Indexes a synthetic site through the content queue and then times searches against it, the same work the
+ * elasticsearch tests do against an embedded node. The number of docs can be changed with the
+ * <code>search.perf.docs</code> system property (default 20000) and the number of searches with
+ * <code>search.perf.searches</code> (default 2000).
+ */
+@Slf4j
+public class LuceneSearchTestPerf {
+
+    private static final int DOCS = Integer.getInteger("search.perf.docs", 20000);
+    private static final int SEARCHES = Integer.getInteger("search.perf.searches", 2000);
+    private static final String SITE_ID = "perf-site";
+    private static final String[] WORDS = {"lorem", "ipsum", "dolor", "sit", "amet", "consectetur", "adipiscing",
+            "elit", "sed", "eiusmod", "tempor", "incididunt", "labore", "dolore", "magna", "aliqua", "minim", "veniam",
+            "quis", "nostrud", "exercitation", "ullamco", "laboris", "nisi", "aliquip", "commodo", "consequat", "duis",
+            "aute", "irure", "reprehenderit", "voluptate", "velit", "esse", "cillum", "fugiat", "nulla", "pariatur"};
+
+    @Test
+    public void testIndexAndSearch() throws Exception {
+        Path sakaiHome = Files.createTempDirectory("lucene-perf");
+        List<String> references = IntStream.range(0, DOCS).mapToObj(i -> "/content/group/" + SITE_ID + "/doc" + i).collect(Collectors.toList());
+
+        ServerConfigurationService serverConfigurationService = mock(ServerConfigurationService.class);
+        when(serverConfigurationService.getBoolean("search.enable", false)).thenReturn(true);
+        when(serverConfigurationService.getSakaiHomePath()).thenReturn(sakaiHome.toString());
+        NotificationService notificationService = mock(NotificationService.class);
+        when(notificationService.addTransientNotification()).thenReturn(mock(NotificationEdit.class));
+        Site site = mock(Site.class);
+        when(site.getId()).thenReturn(SITE_ID);
+        SiteService siteService = mock(SiteService.class);
+        when(siteService.getSites(SiteService.SelectionType.ANY, null, null, null, SiteService.SortType.NONE, null))
+                .thenReturn(Collections.singletonList(site));
+
+        EntityContentProducer ecp = mock(EntityContentProducer.class);
+        when(ecp.matches(anyString())).thenReturn(true);
+        when(ecp.canRead(anyString())).thenReturn(true);
+        when(ecp.getId(anyString())).thenAnswer(i -> i.getArgument(0));
+        when(ecp.getTitle(anyString())).thenAnswer(i -> "Document " + i.getArgument(0));
+        when(ecp.getSiteId(anyString())).thenReturn(SITE_ID);
+        when(ecp.getType(anyString())).thenReturn("sakai:content");
+        when(ecp.getContent(anyString())).thenAnswer(i -> content(i.getArgument(0)));
+        when(ecp.getSiteContentIterator(SITE_ID)).thenAnswer(i -> references.iterator());
+
+        LuceneSearchIndexBuilder indexBuilder = new LuceneSearchIndexBuilder();
+        indexBuilder.setName(LuceneSearchIndexBuilder.DEFAULT_INDEX_BUILDER_NAME);
+        indexBuilder.setIndexName(LuceneSearchIndexBuilder.DEFAULT_INDEX_NAME);
+        indexBuilder.setOnlyIndexSearchToolSites(false);
+        indexBuilder.setDelay(Integer.MAX_VALUE / 1000);
+        indexBuilder.setSecurityService(mock(SecurityService.class));
+        indexBuilder.setSiteService(siteService);
+        indexBuilder.setServerConfigurationService(serverConfigurationService);
+        indexBuilder.setEventTrackingService(mock(EventTrackingService.class));
+
+        LuceneSearchService searchService = new LuceneSearchService();
+        searchService.setServerConfigurationService(serverConfigurationService);
+        searchService.setNotificationService(notificationService);
+        searchService.setIndexBuilders(Collections.singletonList(indexBuilder));
+        searchService.init();
+        indexBuilder.registerEntityContentProducer(ecp);
+
+        try {
+            long start = System.currentTimeMillis();
+            searchService.rebuildSite(SITE_ID);
+            while (indexBuilder.getPendingDocuments() < DOCS) {
+                Thread.sleep(100);
+                searchService.refreshInstance();
+            }
+            log.info("Queued {} docs in {}ms", DOCS, System.currentTimeMillis() - start);
+
+            start = System.currentTimeMillis();
+            indexBuilder.processContentQueue();
+            long indexTime = System.currentTimeMillis() - start;
+            log.info("Indexed {} docs in {}ms, {} docs/s", DOCS, indexTime, DOCS * 1000L / Math.max(1, indexTime));
+            assertEquals(DOCS, searchService.getNDocs());
+
+            Random random = new Random(7);
+            List<Long> latencies = new ArrayList<>(SEARCHES);
+            int hits = 0;
+            for (int i = 0; i < SEARCHES; i++) {
+                String terms = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)];
+                long searchStart = System.nanoTime();
+                hits += searchService.search(terms, Arrays.asList(SITE_ID), 0, 10).size();
+                latencies.add(System.nanoTime() - searchStart);
+            }
+            Collections.sort(latencies);
+            log.info("Ran {} searches, mean {}us, median {}us, p95 {}us, p99 {}us", SEARCHES,
+                    latencies.stream().mapToLong(Long::longValue).sum() / SEARCHES / 1000,
+                    latencies.get(SEARCHES / 2) / 1000,
+                    latencies.get(SEARCHES * 95 / 100) / 1000,
+                    latencies.get(SEARCHES * 99 / 100) / 1000);
+            log.info(searchService.getStatus());
+            assertTrue(hits > 0);
+        } finally {
+            searchService.destroy();
+            try (Stream<Path> files = Files.walk(sakaiHome)) {
+                files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    private static String content(String reference) {
+        Random random = new Random(reference.hashCode());
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 400; i++) {
+            sb.append(WORDS[random.nextInt(WORDS.length)]).append(i % 15 == 14 ? ". " : " ");
+        }
+        return sb.toString();
+    }
+}
@@ -135,6 +135,25 @@ public interface StatsUpdateManager {
 	public Date getEventDateFromLatestJobRun() throws Exception;
 	
 	
+	// -----------------------------------------------------------------------
+	// --- Rollup methods ----------------------------------------------------
+	// -----------------------------------------------------------------------
+	/**
+	 * Build the weekly and monthly event and resource rollups of the next periods that haven't
+	 * been rolled up yet, as long as they end on or before completeBefore.
+	 * @param completeBefore Day before which all events have been collected
+	 * @param maxPeriods Maximum number of periods to build
+	 * @return The number of periods built, 0 if the rollups are up to date
+	 */
+	public int updateRollups(Date completeBefore, int maxPeriods);
+	
+	/**
+	 * Discard the rollups of every period that ends after the given date, so they get
+	 * rebuilt from the daily stats (e.g. after past events were collected for a site).
+	 */
+	public void invalidateRollups(Date from);
+	
+	
 	// -----------------------------------------------------------------------
 	// --- Metrics methods ---------------------------------------------------
 	// -----------------------------------------------------------------------
@@ -33,4 +33,19 @@ public interface StatsUpdateManagerMXBean {
     double getNumberOfEventsGeneratedPerSec();
 
     long getAverageTimeInEventProcessingPerEvent();
+
+    /** Number of events waiting to be consolidated. */
+    int getQueueSize();
+
+    /** Number of workers consolidating events. */
+    int getCollectThreadWorkers();
+
+    /** Rate at which the last batch of queued events was consolidated. */
+    double getEventsConsolidatedPerSec();
+
+    /** Time taken by the last write of consolidated events to the db, in ms. */
+    long getLastFlushTime();
+
+    /** Average time taken to write consolidated events to the db since reset, in ms. */
+    long getAverageFlushTime();
 }
@@ -0,0 +1,53 @@
+/**
+ * Copyright (c) 2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.sitestats.impl;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Weekly or monthly total of SST_EVENTS rows for a site/user/event, kept so that
+ * reports over long date ranges don't have to scan the daily table.
+ * @see EventStatImpl
+ */
+@Data
+@NoArgsConstructor
+public class EventStatRollupImpl implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private long id;
+    /** Rollup granularity code ('W' or 'M') */
+    private String period;
+    private String siteId;
+    private String userId;
+    private String eventId;
+    /** First day of the period */
+    private Date date;
+    private long count;
+
+    public EventStatRollupImpl(String period, Date date, String siteId, String userId, String eventId, long count) {
+        this.period = period;
+        this.date = date;
+        this.siteId = siteId;
+        this.userId = userId;
+        this.eventId = eventId;
+        this.count = count;
+    }
+}
@@ -0,0 +1,54 @@
+/**
+ * Copyright (c) 2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.sitestats.impl;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Weekly or monthly total of SST_RESOURCES rows for a site/user/resource/action.
+ * @see ResourceStatImpl
+ */
+@Data
+@NoArgsConstructor
+public class ResourceStatRollupImpl implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private long id;
+    /** Rollup granularity code ('W' or 'M') */
+    private String period;
+    private String siteId;
+    private String userId;
+    private String resourceRef;
+    private String resourceAction;
+    /** First day of the period */
+    private Date date;
+    private long count;
+
+    public ResourceStatRollupImpl(String period, Date date, String siteId, String userId, String resourceRef, String resourceAction, long count) {
+        this.period = period;
+        this.date = date;
+        this.siteId = siteId;
+        this.userId = userId;
+        this.resourceRef = resourceRef;
+        this.resourceAction = resourceAction;
+        this.count = count;
+    }
+}
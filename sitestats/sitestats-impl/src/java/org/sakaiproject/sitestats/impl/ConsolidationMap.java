@@ -0,0 +1,87 @@
+/**
+ * Copyright (c) 2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.sitestats.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Holds consolidated stats in memory until they are written to the db. Any number of threads may consolidate into it
+ * while another drains it: each key is updated atomically within its own bin of a ConcurrentHashMap, so stats for
+ * different sites don't contend, and entries are drained by removing them one at a time, so an update racing with a
+ * drain either makes it into the drained entry or starts a new one for the next drain.
+ *
+ * @param <K> the consolidation key
+ * @param <V> the consolidated stat
+ */
+public class ConsolidationMap<K, V> {
+
+	private final ConcurrentHashMap<K, V> map = new ConcurrentHashMap<>();
+
+	/**
+	 * Update the stat for a key, creating it first if there is none.
+	 * Both functions are called while the key is locked, so they must be quick and must not touch this map.
+	 */
+	public void update(K key, Function<K, V> create, Consumer<V> update) {
+		map.compute(key, (k, v) -> {
+			if(v == null) {
+				v = create.apply(k);
+			}
+			update.accept(v);
+			return v;
+		});
+	}
+
+	public V get(K key) {
+		return map.get(key);
+	}
+
+	public int size() {
+		return map.size();
+	}
+
+	public boolean isEmpty() {
+		return map.isEmpty();
+	}
+
+	/**
+	 * Remove all the stats consolidated so far.
+	 * @return the stats removed, by key
+	 */
+	public Map<K, V> drainMap() {
+		Map<K, V> drained = new HashMap<>();
+		for(K key : map.keySet()) {
+			V value = map.remove(key);
+			if(value != null) {
+				drained.put(key, value);
+			}
+		}
+		return drained;
+	}
+
+	/**
+	 * Remove all the stats consolidated so far.
+	 * @return the stats removed
+	 */
+	public List<V> drain() {
+		return new ArrayList<>(drainMap().values());
+	}
+}
@@ -98,9 +98,11 @@ public class SiteStatsPersistenceConfig {
         return new String[] {
                 "org/sakaiproject/sitestats/impl/hbm/PrefsImpl.hbm.xml",
                 "org/sakaiproject/sitestats/impl/hbm/EventStatImpl.hbm.xml",
+                "org/sakaiproject/sitestats/impl/hbm/EventStatRollupImpl.hbm.xml",
                 "org/sakaiproject/sitestats/impl/hbm/DetailedEventImpl.hbm.xml",
                 "org/sakaiproject/sitestats/impl/hbm/LessonBuilderStatImpl.hbm.xml",
                 "org/sakaiproject/sitestats/impl/hbm/ResourceStatImpl.hbm.xml",
+                "org/sakaiproject/sitestats/impl/hbm/ResourceStatRollupImpl.hbm.xml",
                 "org/sakaiproject/sitestats/impl/hbm/SiteVisitsImpl.hbm.xml",
                 "org/sakaiproject/sitestats/impl/hbm/SiteActivityImpl.hbm.xml",
                 "org/sakaiproject/sitestats/impl/hbm/SitePresenceImpl.hbm.xml",
@@ -51,6 +51,7 @@ public class StatsAggregateJobImpl implements StatefulJob {
 	private long				startEventId		= -1;
 	private long 				lastEventIdInTable	= -1;
 	private String				sakaiEventTimeZone	= "";
+	private int					maxRollupPeriodsPerRun	= 50;
 
 	private String				driverClassName		= null;
 	private String				url					= null;
@@ -150,6 +151,13 @@ public class StatsAggregateJobImpl implements StatefulJob {
 		
 		log.info("Starting job: " + jobName);
 		
+		// events are already collected as they happen, only the rollups need maintaining
+		if(statsUpdateManager.isCollectThreadEnabled()){
+			log.info("Summary: " + updateRollups(getCollectedBefore(System.currentTimeMillis())));
+			log.info("Finishing job: " + jobName);
+			return;
+		}
+		
 		// check for SAKAI_EVENT.CONTEXT column
 		try{
 			checkForContextColumn();
@@ -192,6 +200,16 @@ public class StatsAggregateJobImpl implements StatefulJob {
 			log.error("Summary: job run failed", e);
 		}
 
+		// roll up the days before the last event processed
+		try{
+			Date lastEventDate = statsUpdateManager.getEventDateFromLatestJobRun();
+			if(lastEventDate != null){
+				log.info("Summary: " + updateRollups(StatsRollupPlanner.Granularity.DAY.periodStart(lastEventDate)));
+			}
+		}catch(Exception e){
+			log.error("Summary: rollup update failed", e);
+		}
+
 		// finish		
 		log.info("Finishing job: " + jobName);
 	}
@@ -399,6 +417,30 @@ public class StatsAggregateJobImpl implements StatefulJob {
 		return processedCounter + " events processed (ids: "+firstEventIdProcessed+" - "+lastProcessedEventIdWithSuccess+") in "+processingTime+"s (only events associated with a session are processed)";
 	}
 
+	/**
+	 * The day before which the collect thread has written all events. Events wait in its buffer for up to
+	 * one update interval before the thread writes them, and writing takes time too, so a day counts only once
+	 * two intervals have passed since it ended.
+	 */
+	public Date getCollectedBefore(long now) {
+		long buffered = Math.max(0, statsUpdateManager.getCollectThreadUpdateInterval());
+		return StatsRollupPlanner.Granularity.DAY.periodStart(new Date(now - 2 * buffered));
+	}
+
+	/** Build pending rollup periods, one per transaction, up to maxRollupPeriodsPerRun. */
+	private String updateRollups(Date completeBefore) {
+		long start = System.currentTimeMillis();
+		int built = 0;
+		try{
+			while(built < maxRollupPeriodsPerRun && statsUpdateManager.updateRollups(completeBefore, 1) > 0) {
+				built++;
+			}
+		}catch(Exception e){
+			log.error("Unable to update rollups", e);
+		}
+		return built + " rollup periods built before "+completeBefore+" in "+(System.currentTimeMillis() - start)/1000+"s";
+	}
+
 	private long getEventIdLowerLimit() {
 		long start = getStartEventId();
 		long nextEventId = jobRun.getStartEventId();
@@ -468,6 +510,8 @@ public class StatsAggregateJobImpl implements StatefulJob {
 				log.error(returnMessage);
 				throw new Exception(returnMessage);
 			}
+			// rollups of these days no longer match the daily stats
+			statsUpdateManager.invalidateRollups(initialDate);
 			
 		}catch(SQLException e){
 			log.error("Unable to collect past site events", e);
@@ -654,6 +698,14 @@ public class StatsAggregateJobImpl implements StatefulJob {
 		sakaiEventTimeZone = timeZone;
 	}
 
+	public int getMaxRollupPeriodsPerRun() {
+		return maxRollupPeriodsPerRun;
+	}
+
+	public void setMaxRollupPeriodsPerRun(int maxRollupPeriodsPerRun) {
+		this.maxRollupPeriodsPerRun = maxRollupPeriodsPerRun;
+	}
+
 	public String getDriverClassName() {
 		return driverClassName;
 	}
@@ -24,7 +24,10 @@ import java.lang.reflect.Method;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -33,11 +36,13 @@ import java.util.Map;
 import java.util.Observable;
 import java.util.Observer;
 import java.util.Set;
+import java.util.function.Consumer;
 
 import org.apache.commons.digester.Digester;
 import org.apache.commons.lang3.BooleanUtils;
 import org.apache.commons.text.StringEscapeUtils;
 import org.hibernate.Criteria;
+import org.hibernate.Session;
 import org.hibernate.criterion.Expression;
 import org.hibernate.criterion.Restrictions;
 import org.hibernate.query.Query;
@@ -124,6 +129,7 @@ public class StatsManagerImpl extends HibernateDaoSupport implements StatsManage
 	@Getter @Setter private boolean	enableReportExport		= true;
 	@Getter @Setter private boolean	sortUsersByDisplayName	= false;
 	@Getter @Setter private boolean	displayDetailedEvents	= false;
+	@Getter @Setter private boolean	useRollups				= false;
 
 	/** Controller fields */
 	@Getter @Setter private boolean	showAnonymousAccessEvents = true;
@@ -1122,59 +1128,40 @@ public class StatsManagerImpl extends HibernateDaoSupport implements StatsManage
 				Q_TYPE_EVENT, totalsBy, siteId, 
 				events, anonymousEvents, showAnonymousAccessEvents, null, null, 
 				iDate, fDate, userIds, inverseUserSelection, sortBy, sortAscending);
-		final String hql = sqlBuilder.getHQL();
 		final Map<Integer,Integer> columnMap = sqlBuilder.getHQLColumnMap();
 		
 		// DO IT!
 		HibernateCallback<List<Stat>> hcb = session -> {
-            Query q = session.createQuery(hql);
-            if(siteId != null) {
-                q.setParameter("siteid", siteId);
-            }
-            if(events != null) {
-                if(events.isEmpty()) {
-                    events.add("");
+            List<Object[]> records = listStatRows(session, sqlBuilder, iDate, fDate, page, maxResults, q -> {
+                if(siteId != null) {
+                    q.setParameter("siteid", siteId);
                 }
-                q.setParameterList("events", events);
-            }
-            if(userIds != null && !userIds.isEmpty()) {
-                if(userIds.size() <= 1000) {
-                    q.setParameterList("users", userIds);
-                }else{
-                    int nUsers = userIds.size();
-                    int blockId = 0, startIndex = 0;
-                    int blocks = (int) (nUsers / 1000);
-                    blocks = (blocks*1000 == nUsers) ? blocks : blocks+1;
-                    for(int i=0; i<blocks-1; i++) {
-                        q.setParameterList("users"+blockId, userIds.subList(startIndex, startIndex+1000));
-                        blockId++;
-                        startIndex += 1000;
+                if(events != null) {
+                    if(events.isEmpty()) {
+                        events.add("");
                     }
-                    q.setParameterList("users"+blockId, userIds.subList(startIndex, nUsers));
+                    q.setParameterList("events", events);
                 }
-            }
-            if(iDate != null)
-                q.setParameter("idate", iDate, DateType.INSTANCE);
-            if(fDate != null){
-                // adjust final date
-                Calendar c = Calendar.getInstance();
-                c.setTime(fDate);
-                c.add(Calendar.DAY_OF_YEAR, 1);
-                Date fDate2 = c.getTime();
-                q.setParameter("fdate", fDate2, DateType.INSTANCE);
-            }
-            if(columnMap.containsKey(StatsSqlBuilder.C_USER) && anonymousEvents != null && anonymousEvents.size() > 0) {
-                q.setParameterList("anonymousEvents", anonymousEvents);
-            }
-            if(page != null){
-                q.setFirstResult(page.getFirst() - 1);
-                q.setMaxResults(page.getLast() - page.getFirst() + 1);
-            }
-            if(maxResults > 0) {
-                q.setMaxResults(maxResults);
-            }
-            log.debug("getEventStats(): {}", q.getQueryString());
-            List<Object[]> records = q.list();
+                if(userIds != null && !userIds.isEmpty()) {
+                    if(userIds.size() <= 1000) {
+                        q.setParameterList("users", userIds);
+                    }else{
+                        int nUsers = userIds.size();
+                        int blockId = 0, startIndex = 0;
+                        int blocks = (int) (nUsers / 1000);
+                        blocks = (blocks*1000 == nUsers) ? blocks : blocks+1;
+                        for(int i=0; i<blocks-1; i++) {
+                            q.setParameterList("users"+blockId, userIds.subList(startIndex, startIndex+1000));
+                            blockId++;
+                            startIndex += 1000;
+                        }
+                        q.setParameterList("users"+blockId, userIds.subList(startIndex, nUsers));
+                    }
+                }
+                if(columnMap.containsKey(StatsSqlBuilder.C_USER) && anonymousEvents != null && anonymousEvents.size() > 0) {
+                    q.setParameterList("anonymousEvents", anonymousEvents);
+                }
+            }, "getEventStats");
             List<Stat> results = new ArrayList<>();
             Set<String> siteUserIds = null;
             if(inverseUserSelection)
@@ -1345,49 +1332,37 @@ public class StatsManagerImpl extends HibernateDaoSupport implements StatsManage
 				Q_TYPE_EVENT, totalsBy,
 				siteId, events, anonymousEvents, showAnonymousAccessEvents, null, null, 
 				iDate, fDate, userIds, inverseUserSelection, null, true);
-		final String hql = sqlBuilder.getHQL();
 		final Map<Integer,Integer> columnMap = sqlBuilder.getHQLColumnMap();
 
 		// DO IT!
 		HibernateCallback<Integer> hcb = session -> {
-            Query q = session.createQuery(hql);
-            if(siteId != null){
-                q.setParameter("siteid", siteId);
-            }
-            if(events != null && !events.isEmpty()){
-                q.setParameterList("events", events);
-            }
-            if(userIds != null && !userIds.isEmpty()) {
-                if(userIds.size() <= 1000) {
-                    q.setParameterList("users", userIds);
-                }else{
-                    int nUsers = userIds.size();
-                    int blockId = 0, startIndex = 0;
-                    int blocks = (int) (nUsers / 1000);
-                    blocks = (blocks*1000 == nUsers) ? blocks : blocks+1;
-                    for(int i=0; i<blocks-1; i++) {
-                        q.setParameterList("users"+blockId, userIds.subList(startIndex, startIndex+1000));
-                        blockId++;
-                        startIndex += 1000;
+            Integer rowCount = listStatRows(session, sqlBuilder, iDate, fDate, null, 0, q -> {
+                if(siteId != null){
+                    q.setParameter("siteid", siteId);
+                }
+                if(events != null && !events.isEmpty()){
+                    q.setParameterList("events", events);
+                }
+                if(userIds != null && !userIds.isEmpty()) {
+                    if(userIds.size() <= 1000) {
+                        q.setParameterList("users", userIds);
+                    }else{
+                        int nUsers = userIds.size();
+                        int blockId = 0, startIndex = 0;
+                        int blocks = (int) (nUsers / 1000);
+                        blocks = (blocks*1000 == nUsers) ? blocks : blocks+1;
+                        for(int i=0; i<blocks-1; i++) {
+                            q.setParameterList("users"+blockId, userIds.subList(startIndex, startIndex+1000));
+                            blockId++;
+                            startIndex += 1000;
+                        }
+                        q.setParameterList("users"+blockId, userIds.subList(startIndex, nUsers));
                     }
-                    q.setParameterList("users"+blockId, userIds.subList(startIndex, nUsers));
                 }
-            }
-            if(iDate != null)
-                q.setParameter("idate", iDate, DateType.INSTANCE);
-            if(fDate != null){
-                // adjust final date
-                Calendar c = Calendar.getInstance();
-                c.setTime(fDate);
-                c.add(Calendar.DAY_OF_YEAR, 1);
-                Date fDate2 = c.getTime();
-                q.setParameter("fdate", fDate2, DateType.INSTANCE);
-            }
-            if(columnMap.containsKey(StatsSqlBuilder.C_USER) && anonymousEvents != null && anonymousEvents.size() > 0){
-                q.setParameterList("anonymousEvents", anonymousEvents);
-            }
-            log.debug("getEventStatsRowCount(): " + q.getQueryString());
-            Integer rowCount = q.list().size();
+                if(columnMap.containsKey(StatsSqlBuilder.C_USER) && anonymousEvents != null && anonymousEvents.size() > 0){
+                    q.setParameterList("anonymousEvents", anonymousEvents);
+                }
+            }, "getEventStatsRowCount").size();
             if(!inverseUserSelection){
                 return rowCount;
             }else{
@@ -1678,68 +1653,49 @@ public class StatsManagerImpl extends HibernateDaoSupport implements StatsManage
 				Q_TYPE_RESOURCE, totalsBy, 
 				siteId, (Set<String>)null, null, showAnonymousAccessEvents, resourceAction, resourceIds, 
 				iDate, fDate, userIds, inverseUserSelection, sortBy, sortAscending);
-		final String hql = sqlBuilder.getHQL();
 		final Map<Integer,Integer> columnMap = sqlBuilder.getHQLColumnMap();
 
 		HibernateCallback<List<Stat>> hcb = session -> {
-            Query q = session.createQuery(hql);
-            if(siteId != null){
-                q.setParameter("siteid", siteId);
-            }
-            if(userIds != null && !userIds.isEmpty()) {
-                if(userIds.size() <= 1000) {
-                    q.setParameterList("users", userIds);
-                }else{
-                    int nUsers = userIds.size();
-                    int blockId = 0, startIndex = 0;
-                    int blocks = (int) (nUsers / 1000);
-                    blocks = (blocks*1000 == nUsers) ? blocks : blocks+1;
-                    for(int i=0; i<blocks-1; i++) {
-                        q.setParameterList("users"+blockId, userIds.subList(startIndex, startIndex+1000));
-                        blockId++;
-                        startIndex += 1000;
-                    }
-                    q.setParameterList("users"+blockId, userIds.subList(startIndex, nUsers));
+            List<Object[]> records = listStatRows(session, sqlBuilder, iDate, fDate, page, maxResults, q -> {
+                if(siteId != null){
+                    q.setParameter("siteid", siteId);
                 }
-            }
-            if(resourceAction != null)
-                q.setParameter("action", resourceAction);
-            if(resourceIds != null && !resourceIds.isEmpty()) {
-                List<String> simpleResourceIds = new ArrayList<String>();
-                List<String> wildcardResourceIds = new ArrayList<String>();
-                for(String rId : resourceIds) {
-                    if(rId.endsWith("/")) {
-                        wildcardResourceIds.add(rId + "%");
+                if(userIds != null && !userIds.isEmpty()) {
+                    if(userIds.size() <= 1000) {
+                        q.setParameterList("users", userIds);
                     }else{
-                        simpleResourceIds.add(rId);
+                        int nUsers = userIds.size();
+                        int blockId = 0, startIndex = 0;
+                        int blocks = (int) (nUsers / 1000);
+                        blocks = (blocks*1000 == nUsers) ? blocks : blocks+1;
+                        for(int i=0; i<blocks-1; i++) {
+                            q.setParameterList("users"+blockId, userIds.subList(startIndex, startIndex+1000));
+                            blockId++;
+                            startIndex += 1000;
+                        }
+                        q.setParameterList("users"+blockId, userIds.subList(startIndex, nUsers));
                     }
                 }
-                if(simpleResourceIds.size() > 0) {
-                    q.setParameterList("resources", resourceIds);
-                }
-                for(int i=0; i<wildcardResourceIds.size(); i++) {
-                    q.setParameter("resource"+i, wildcardResourceIds.get(i));
+                if(resourceAction != null)
+                    q.setParameter("action", resourceAction);
+                if(resourceIds != null && !resourceIds.isEmpty()) {
+                    List<String> simpleResourceIds = new ArrayList<String>();
+                    List<String> wildcardResourceIds = new ArrayList<String>();
+                    for(String rId : resourceIds) {
+                        if(rId.endsWith("/")) {
+                            wildcardResourceIds.add(rId + "%");
+                        }else{
+                            simpleResourceIds.add(rId);
+                        }
+                    }
+                    if(simpleResourceIds.size() > 0) {
+                        q.setParameterList("resources", resourceIds);
+                    }
+                    for(int i=0; i<wildcardResourceIds.size(); i++) {
+                        q.setParameter("resource"+i, wildcardResourceIds.get(i));
+                    }
                 }
-            }
-            if(iDate != null)
-                q.setParameter("idate", iDate, DateType.INSTANCE);
-            if(fDate != null){
-                // adjust final date
-                Calendar c = Calendar.getInstance();
-                c.setTime(fDate);
-                c.add(Calendar.DAY_OF_YEAR, 1);
-                Date fDate2 = c.getTime();
-                q.setParameter("fdate", fDate2, DateType.INSTANCE);
-            }
-            if(page != null){
-                q.setFirstResult(page.getFirst() - 1);
-                q.setMaxResults(page.getLast() - page.getFirst() + 1);
-            }
-            if(maxResults > 0) {
-                q.setMaxResults(maxResults);
-            }
-            log.debug("getResourceStats(): " + q.getQueryString());
-            List<Object[]> records = q.list();
+            }, "getResourceStats");
             List<Stat> results = new ArrayList<>();
             Set<String> siteUserIds = null;
             if(inverseUserSelection){
@@ -2028,45 +1984,33 @@ if (log.isDebugEnabled()) {
 				Q_TYPE_RESOURCE, totalsBy, 
 				siteId, (Set<String>)null, null, showAnonymousAccessEvents, resourceAction, resourceIds, 
 				iDate, fDate, userIds, inverseUserSelection, null, true);
-		final String hql = sqlBuilder.getHQL();
 
 		HibernateCallback<Integer> hcb = session -> {
-            Query q = session.createQuery(hql);
-            if(siteId != null){
-                q.setParameter("siteid", siteId);
-            }
-            if(userIds != null && !userIds.isEmpty()) {
-                if(userIds.size() <= 1000) {
-                    q.setParameterList("users", userIds);
-                }else{
-                    int nUsers = userIds.size();
-                    int blockId = 0, startIndex = 0;
-                    int blocks = (int) (nUsers / 1000);
-                    blocks = (blocks*1000 == nUsers) ? blocks : blocks+1;
-                    for(int i=0; i<blocks-1; i++) {
-                        q.setParameterList("users"+blockId, userIds.subList(startIndex, startIndex+1000));
-                        blockId++;
-                        startIndex += 1000;
+            Integer rowCount = listStatRows(session, sqlBuilder, iDate, fDate, null, 0, q -> {
+                if(siteId != null){
+                    q.setParameter("siteid", siteId);
+                }
+                if(userIds != null && !userIds.isEmpty()) {
+                    if(userIds.size() <= 1000) {
+                        q.setParameterList("users", userIds);
+                    }else{
+                        int nUsers = userIds.size();
+                        int blockId = 0, startIndex = 0;
+                        int blocks = (int) (nUsers / 1000);
+                        blocks = (blocks*1000 == nUsers) ? blocks : blocks+1;
+                        for(int i=0; i<blocks-1; i++) {
+                            q.setParameterList("users"+blockId, userIds.subList(startIndex, startIndex+1000));
+                            blockId++;
+                            startIndex += 1000;
+                        }
+                        q.setParameterList("users"+blockId, userIds.subList(startIndex, nUsers));
                     }
-                    q.setParameterList("users"+blockId, userIds.subList(startIndex, nUsers));
                 }
-            }
-            if(resourceAction != null)
-                q.setParameter("action", resourceAction);
-            if(resourceIds != null && !resourceIds.isEmpty())
-                q.setParameterList("resources", resourceIds);
-            if(iDate != null)
-                q.setParameter("idate", iDate, DateType.INSTANCE);
-            if(fDate != null){
-                // adjust final date
-                Calendar c = Calendar.getInstance();
-                c.setTime(fDate);
-                c.add(Calendar.DAY_OF_YEAR, 1);
-                Date fDate2 = c.getTime();
-                q.setParameter("fdate", fDate2, DateType.INSTANCE);
-            }
-            log.debug("getEventStatsRowCount(): " + q.getQueryString());
-            Integer rowCount = q.list().size();
+                if(resourceAction != null)
+                    q.setParameter("action", resourceAction);
+                if(resourceIds != null && !resourceIds.isEmpty())
+                    q.setParameterList("resources", resourceIds);
+            }, "getResourceStatsRowCount").size();
             if(!inverseUserSelection){
                 return rowCount;
             }else{
@@ -2092,34 +2036,15 @@ if (log.isDebugEnabled()) {
 				Q_TYPE_VISITSTOTALS, totalsBy, siteId, 
 				(Set<String>)null, null, showAnonymousAccessEvents, null, null, 
 				iDate, fDate, null, false, sortBy, sortAscending);
-		final String hql = sqlBuilder.getHQL();
 		final Map<Integer,Integer> columnMap = sqlBuilder.getHQLColumnMap();
 		
 		// DO IT!
 		HibernateCallback<List<Stat>> hcb = session -> {
-            Query q = session.createQuery(hql);
-            if(siteId != null) {
-                q.setParameter("siteid", siteId);
-            }
-            if(iDate != null)
-                q.setParameter("idate", iDate, DateType.INSTANCE);
-            if(fDate != null){
-                // adjust final date
-                Calendar c = Calendar.getInstance();
-                c.setTime(fDate);
-                c.add(Calendar.DAY_OF_YEAR, 1);
-                Date fDate2 = c.getTime();
-                q.setParameter("fdate", fDate2, DateType.INSTANCE);
-            }
-            if(page != null){
-                q.setFirstResult(page.getFirst() - 1);
-                q.setMaxResults(page.getLast() - page.getFirst() + 1);
-            }
-            if(maxResults > 0) {
-                q.setMaxResults(maxResults);
-            }
-            log.debug("getVisitsTotalsStats(): " + q.getQueryString());
-            List<Object[]> records = q.list();
+            List<Object[]> records = listStatRows(session, sqlBuilder, iDate, fDate, page, maxResults, q -> {
+                if(siteId != null) {
+                    q.setParameter("siteid", siteId);
+                }
+            }, "getVisitsTotalsStats");
             List<Stat> results = new ArrayList<>();
             if(records.size() > 0){
                 Calendar cal = Calendar.getInstance();
@@ -2321,6 +2246,89 @@ if (log.isDebugEnabled()) {
         };
 		return getHibernateTemplate().execute(hcb);
 	}
+
+	/**
+	 * Run a statistics query over [iDate, fDate]. When rollups can answer part of the range,
+	 * the query is run once per segment of the plan and the rows are merged and sorted here.
+	 * Paged queries always read the daily table so the database does the paging.
+	 * @param binder binds the query parameters other than the dates
+	 */
+	private List<Object[]> listStatRows(Session session, StatsSqlBuilder sqlBuilder, Date iDate, Date fDate,
+			PagingPosition page, int maxResults, Consumer<Query> binder, String caller) {
+		boolean paged = page != null || maxResults > 0;
+		List<StatsRollupPlanner.Segment> segments = planStatSegments(session, sqlBuilder, iDate, fDate, paged);
+		if(segments.size() == 1) {
+			Query q = createStatSegmentQuery(session, sqlBuilder, segments.get(0), binder);
+			if(page != null){
+				q.setFirstResult(page.getFirst() - 1);
+				q.setMaxResults(page.getLast() - page.getFirst() + 1);
+			}
+			if(maxResults > 0) {
+				q.setMaxResults(maxResults);
+			}
+			log.debug("{}(): {}", caller, q.getQueryString());
+			return q.list();
+		}
+		List<List<Object[]>> segmentRows = new ArrayList<>();
+		for(StatsRollupPlanner.Segment segment : segments) {
+			Query q = createStatSegmentQuery(session, sqlBuilder, segment, binder);
+			log.debug("{}(): {} {}", caller, segment, q.getQueryString());
+			segmentRows.add(q.list());
+		}
+		List<Object[]> rows = StatsRollupPlanner.merge(segmentRows, sqlBuilder.getMeasureColumns());
+		StatsRollupPlanner.sort(rows, sqlBuilder.getSortColumn(), sqlBuilder.sortAscending);
+		return rows;
+	}
+
+	private List<StatsRollupPlanner.Segment> planStatSegments(Session session, StatsSqlBuilder sqlBuilder, Date iDate, Date fDate, boolean paged) {
+		// adjust final date
+		Date to = null;
+		if(fDate != null){
+			Calendar c = Calendar.getInstance();
+			c.setTime(fDate);
+			c.add(Calendar.DAY_OF_YEAR, 1);
+			to = c.getTime();
+		}
+		String rollupEntity = sqlBuilder.getRollupEntity();
+		Set<StatsRollupPlanner.Granularity> granularities = EnumSet.noneOf(StatsRollupPlanner.Granularity.class);
+		// a group's total can span several segments, so a page of it can only be cut once they are all merged
+		if(useRollups && rollupEntity != null && !paged) {
+			granularities = StatsRollupPlanner.getRollupGranularities(sqlBuilder.queryType, sqlBuilder.totalsBy, sqlBuilder.inverseUserSelection);
+		}
+		if(granularities.isEmpty()) {
+			return Collections.singletonList(new StatsRollupPlanner.Segment(StatsRollupPlanner.Granularity.DAY, iDate, to));
+		}
+		Map<StatsRollupPlanner.Granularity, Date> rolledUpTo = new EnumMap<>(StatsRollupPlanner.Granularity.class);
+		for(StatsRollupPlanner.Granularity granularity : granularities) {
+			// a site's last rolled up period can only be older than the overall one, which only means more daily rows are read
+			Query q = session.createQuery("select max(s.date) from " + rollupEntity + " s where "
+					+ (sqlBuilder.siteId != null ? "s.siteId = :siteId and " : "") + "s.period = :period")
+					.setParameter("period", granularity.getCode());
+			if(sqlBuilder.siteId != null) {
+				q.setParameter("siteId", sqlBuilder.siteId);
+			}
+			Date lastPeriod = (Date) q.uniqueResult();
+			if(lastPeriod != null) {
+				rolledUpTo.put(granularity, granularity.nextPeriod(lastPeriod));
+			}
+		}
+		return StatsRollupPlanner.plan(iDate, to, granularities, rolledUpTo);
+	}
+
+	private Query createStatSegmentQuery(Session session, StatsSqlBuilder sqlBuilder, StatsRollupPlanner.Segment segment, Consumer<Query> binder) {
+		Query q = session.createQuery(sqlBuilder.getHQL(segment));
+		binder.accept(q);
+		if(segment.getFrom() != null) {
+			q.setParameter("idate", segment.getFrom(), DateType.INSTANCE);
+		}
+		if(segment.getTo() != null) {
+			q.setParameter("fdate", segment.getTo(), DateType.INSTANCE);
+		}
+		if(segment.getGranularity() != StatsRollupPlanner.Granularity.DAY) {
+			q.setParameter("period", segment.getGranularity().getCode());
+		}
+		return q;
+	}
 	
 	
 	// ################################################################
@@ -2362,6 +2370,7 @@ if (log.isDebugEnabled()) {
 		private boolean					inverseUserSelection;
 		private String					sortBy;
 		private boolean					sortAscending;	
+		private StatsRollupPlanner.Segment	segment;
 		
 		public StatsSqlBuilder(
 				final String dbVendor,
@@ -2437,6 +2446,12 @@ if (log.isDebugEnabled()) {
 		}
 		
 		public String getHQL() {
+			return getHQL(null);
+		}
+
+		/** HQL reading the given segment of the date range, from a rollup table if it's a week or month segment. */
+		public String getHQL(StatsRollupPlanner.Segment segment) {
+			this.segment = segment;
 			StringBuilder hql = new StringBuilder();
 			hql.append(getSelectClause());
 			hql.append(getFromClause());
@@ -2449,6 +2464,61 @@ if (log.isDebugEnabled()) {
 		public Map<Integer, Integer> getHQLColumnMap() {
 			return columnMap;
 		}
+
+		/** Rollup entity holding weekly/monthly totals of this query's daily entity, if there is one. */
+		public String getRollupEntity() {
+			String from = getDailyFromClause();
+			if(from.contains("EventStatImpl")) {
+				return "EventStatRollupImpl";
+			}else if(from.contains("ResourceStatImpl")) {
+				return "ResourceStatRollupImpl";
+			}
+			return null;
+		}
+
+		/** Result columns holding sums or counts, the ones to add up when merging rows of several segments. */
+		public List<Integer> getMeasureColumns() {
+			List<Integer> measures = new ArrayList<Integer>();
+			for(Integer c : new Integer[] {C_TOTAL, C_VISITS, C_UNIQUEVISITS, C_DURATION}) {
+				if(columnMap.containsKey(c)) {
+					measures.add(columnMap.get(c));
+				}
+			}
+			return measures;
+		}
+
+		/** Result column matching the 'order by' clause, for sorting merged rows. */
+		public Integer getSortColumn() {
+			if(sortBy == null) {
+				return null;
+			}
+			Integer column = null;
+			if(sortBy.equals(T_SITE) && totalsBy.contains(T_SITE)) {
+				column = C_SITE;
+			}
+			if(sortBy.equals(T_USER) && totalsBy.contains(T_USER)) {
+				column = C_USER;
+			}
+			if((sortBy.equals(T_EVENT) || sortBy.equals(T_TOOL)) && (totalsBy.contains(T_EVENT) || totalsBy.contains(T_TOOL))) {
+				column = columnMap.containsKey(C_EVENT) ? C_EVENT : C_TOOL;
+			}
+			if(sortBy.equals(T_RESOURCE) && totalsBy.contains(T_RESOURCE)) {
+				column = C_RESOURCE;
+			}
+			if(sortBy.equals(T_RESOURCE_ACTION) && totalsBy.contains(T_RESOURCE_ACTION)) {
+				column = C_RESOURCE_ACTION;
+			}
+			if(sortBy.equals(T_TOTAL)) {
+				column = C_TOTAL;
+			}
+			if(sortBy.equals(T_VISITS)) {
+				column = C_VISITS;
+			}
+			if(sortBy.equals(T_UNIQUEVISITS)) {
+				column = C_UNIQUEVISITS;
+			}
+			return column != null ? columnMap.get(column) : null;
+		}
 		
 		private String getSelectClause() {
 			StringBuilder _hql = new StringBuilder();
@@ -2581,6 +2651,14 @@ if (log.isDebugEnabled()) {
 		}
 		
 		private String getFromClause() {
+			String from = getDailyFromClause();
+			if(segment != null && segment.getGranularity() != StatsRollupPlanner.Granularity.DAY) {
+				from = from.replace("EventStatImpl", "EventStatRollupImpl").replace("ResourceStatImpl", "ResourceStatRollupImpl");
+			}
+			return from;
+		}
+
+		private String getDailyFromClause() {
 			if(queryType == Q_TYPE_EVENT) {
 				return "from EventStatImpl as s ";
 			}else if(queryType == Q_TYPE_RESOURCE){
@@ -2666,12 +2744,15 @@ if (log.isDebugEnabled()) {
 					whereFields.add("s.userId=''");
 				}
 			}
-			if(iDate != null) {
+			if(segment != null ? segment.getFrom() != null : iDate != null) {
 				whereFields.add("s.date >= :idate");
 			}
-			if(fDate != null) {
+			if(segment != null ? segment.getTo() != null : fDate != null) {
 				whereFields.add("s.date < :fdate");
 			}
+			if(segment != null && segment.getGranularity() != StatsRollupPlanner.Granularity.DAY) {
+				whereFields.add("s.period = :period");
+			}
 			if((queryType == Q_TYPE_EVENT || queryType == Q_TYPE_RESOURCE || queryType == Q_TYPE_PRESENCE || queryType == Q_TYPE_LESSON)
 				&& !showAnonymousAccessEvents) {
 				whereFields.add("s.userId != '?'");
@@ -0,0 +1,218 @@
+/**
+ * Copyright (c) 2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.sitestats.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.sakaiproject.sitestats.api.StatsManager;
+
+import lombok.Value;
+
+/**
+ * Decides which parts of a report date range can be read from the weekly and monthly
+ * rollup tables (SST_EVENTS_ROLLUP, SST_RESOURCES_ROLLUP) and which must still come from
+ * the daily tables, and merges the per segment results back into one result set.
+ * <p>
+ * A range is split into at most five segments: the complete months it contains, the complete
+ * weeks either side of those, and the remaining days at each end. Rollups only hold complete
+ * periods, so a segment is only planned on a rollup up to the point it has been built.
+ */
+public final class StatsRollupPlanner {
+
+	public enum Granularity {
+		DAY(null),
+		WEEK("W"),
+		MONTH("M");
+
+		/** Value of the PERIOD column in the rollup tables */
+		private final String code;
+
+		Granularity(String code) {
+			this.code = code;
+		}
+
+		public String getCode() {
+			return code;
+		}
+
+		/** The first day of the period that contains the given date. Weeks start on Monday. */
+		public Date periodStart(Date date) {
+			Calendar c = Calendar.getInstance();
+			c.setTime(date);
+			c.set(Calendar.HOUR_OF_DAY, 0);
+			c.set(Calendar.MINUTE, 0);
+			c.set(Calendar.SECOND, 0);
+			c.set(Calendar.MILLISECOND, 0);
+			if(this == WEEK) {
+				c.add(Calendar.DAY_OF_YEAR, -((c.get(Calendar.DAY_OF_WEEK) + 5) % 7));
+			}else if(this == MONTH) {
+				c.set(Calendar.DAY_OF_MONTH, 1);
+			}
+			return c.getTime();
+		}
+
+		/** The first day of the period following the one starting at periodStart. */
+		public Date nextPeriod(Date periodStart) {
+			Calendar c = Calendar.getInstance();
+			c.setTime(periodStart);
+			if(this == DAY) {
+				c.add(Calendar.DAY_OF_YEAR, 1);
+			}else if(this == WEEK) {
+				c.add(Calendar.DAY_OF_YEAR, 7);
+			}else{
+				c.add(Calendar.MONTH, 1);
+			}
+			return c.getTime();
+		}
+
+		/** The first period boundary at or after the given date. */
+		public Date periodCeiling(Date date) {
+			Date start = periodStart(date);
+			return start.equals(date) ? start : nextPeriod(start);
+		}
+	}
+
+	/** A date range [from, to) read at a single granularity; a null bound is open. */
+	@Value
+	public static class Segment {
+		Granularity granularity;
+		Date from;
+		Date to;
+	}
+
+	private StatsRollupPlanner() {
+	}
+
+	/**
+	 * Which rollups can answer a query without changing its result.
+	 * Daily or last date grouping needs the daily rows. Weeks cross month boundaries so they
+	 * can't be used when grouping by month or year. Distinct user counts can't be added up across
+	 * segments, so those are only served by grouping by month, where a month always comes from a single segment.
+	 */
+	public static Set<Granularity> getRollupGranularities(int queryType, List<String> totalsBy, boolean inverseUserSelection) {
+		if(inverseUserSelection || totalsBy == null
+				|| totalsBy.contains(StatsManager.T_DATE) || totalsBy.contains(StatsManager.T_LASTDATE)) {
+			return EnumSet.noneOf(Granularity.class);
+		}
+		boolean byMonth = totalsBy.contains(StatsManager.T_DATEMONTH);
+		boolean byCalendar = byMonth || totalsBy.contains(StatsManager.T_DATEYEAR);
+		boolean distinctUsers;
+		if(queryType == StatsManager.Q_TYPE_EVENT) {
+			distinctUsers = totalsBy.contains(StatsManager.T_VISITS) || totalsBy.contains(StatsManager.T_UNIQUEVISITS);
+		}else if(queryType == StatsManager.Q_TYPE_RESOURCE) {
+			distinctUsers = false;
+		}else if(queryType == StatsManager.Q_TYPE_VISITSTOTALS && byCalendar) {
+			// visits by month or year are counted from SST_EVENTS
+			distinctUsers = true;
+		}else{
+			return EnumSet.noneOf(Granularity.class);
+		}
+		if(distinctUsers) {
+			return byMonth ? EnumSet.of(Granularity.MONTH) : EnumSet.noneOf(Granularity.class);
+		}
+		return byCalendar ? EnumSet.of(Granularity.MONTH) : EnumSet.of(Granularity.WEEK, Granularity.MONTH);
+	}
+
+	/**
+	 * Split [from, to) into segments, using the coarsest usable rollup for as much of the range as possible.
+	 * @param from first day, inclusive (null for no lower bound)
+	 * @param to last day, exclusive (null for no upper bound)
+	 * @param granularities the rollups usable for this query
+	 * @param rolledUpTo for each rollup, the end (exclusive) of the last period it holds
+	 */
+	public static List<Segment> plan(Date from, Date to, Set<Granularity> granularities, Map<Granularity, Date> rolledUpTo) {
+		List<Granularity> levels = new ArrayList<>();
+		for(Granularity g : Arrays.asList(Granularity.MONTH, Granularity.WEEK)) {
+			if(granularities.contains(g) && rolledUpTo.get(g) != null) {
+				levels.add(g);
+			}
+		}
+		List<Segment> segments = new ArrayList<>();
+		plan(from == null ? null : Granularity.DAY.periodStart(from),
+				to == null ? null : Granularity.DAY.periodStart(to),
+				levels, rolledUpTo, segments);
+		return segments;
+	}
+
+	private static void plan(Date from, Date to, List<Granularity> levels, Map<Granularity, Date> rolledUpTo, List<Segment> segments) {
+		for(int i = 0; i < levels.size(); i++) {
+			Granularity g = levels.get(i);
+			Date limit = rolledUpTo.get(g);
+			Date bodyFrom = from == null ? null : g.periodCeiling(from);
+			Date bodyTo = g.periodStart(to == null || to.after(limit) ? limit : to);
+			if(bodyFrom != null && !bodyFrom.before(bodyTo)) {
+				continue;
+			}
+			List<Granularity> finer = levels.subList(i + 1, levels.size());
+			if(from != null && from.before(bodyFrom)) {
+				plan(from, bodyFrom, finer, rolledUpTo, segments);
+			}
+			segments.add(new Segment(g, bodyFrom, bodyTo));
+			if(to == null || bodyTo.before(to)) {
+				plan(bodyTo, to, finer, rolledUpTo, segments);
+			}
+			return;
+		}
+		segments.add(new Segment(Granularity.DAY, from, to));
+	}
+
+	/**
+	 * Merge the rows returned for each segment, adding up the measure columns of rows
+	 * that share the same values in all other columns.
+	 */
+	public static List<Object[]> merge(List<List<Object[]>> segmentRows, Collection<Integer> measureColumns) {
+		Map<List<Object>, Object[]> merged = new LinkedHashMap<>();
+		for(List<Object[]> rows : segmentRows) {
+			for(Object[] row : rows) {
+				Object[] key = row.clone();
+				for(Integer ix : measureColumns) {
+					key[ix] = null;
+				}
+				Object[] existing = merged.putIfAbsent(Arrays.asList(key), row);
+				if(existing != null) {
+					for(Integer ix : measureColumns) {
+						existing[ix] = toLong(existing[ix]) + toLong(row[ix]);
+					}
+				}
+			}
+		}
+		return new ArrayList<>(merged.values());
+	}
+
+	/** Sort merged rows on a single column, as the query's order by clause would have. */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public static void sort(List<Object[]> rows, Integer column, boolean ascending) {
+		if(column == null) {
+			return;
+		}
+		Comparator<Object[]> comparator = Comparator.comparing(row -> (Comparable) row[column], Comparator.nullsFirst(Comparator.naturalOrder()));
+		rows.sort(ascending ? comparator : comparator.reversed());
+	}
+
+	private static long toLong(Object value) {
+		return value == null ? 0 : ((Number) value).longValue();
+	}
+}
@@ -24,17 +24,30 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Observable;
 import java.util.Observer;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.commons.lang3.StringUtils;
 import org.hibernate.Criteria;
+import org.hibernate.FlushMode;
 import org.hibernate.HibernateException;
 import org.hibernate.Session;
 import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Restrictions;
 import org.hibernate.query.Query;
+import org.hibernate.type.DateType;
 import org.hibernate.type.StringType;
 import org.sakaiproject.alias.api.AliasService;
 import org.sakaiproject.component.cover.ComponentManager;
@@ -84,6 +97,8 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 	/** Spring bean members */
 	@Getter private boolean				collectThreadEnabled				= true;
 	@Getter @Setter public long			collectThreadUpdateInterval			= 4000L;
+	@Getter @Setter private int			collectThreadWorkers				= 1;
+	@Getter @Setter private int			flushBatchSize						= 100;
 	@Getter @Setter private boolean		collectAdminEvents					= false;
 	@Getter @Setter private boolean		collectEventsForSiteWithToolOnly	= true;
 	@Getter @Setter private boolean		collectDetailedEvents				= false;
@@ -99,32 +114,40 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 	@Setter private EventTrackingService	eventTrackingService;
 
 	/** Collect Thread and Semaphore */
-	private List<Event>	collectThreadQueue		= new ArrayList<>();
-	private Object		collectThreadSemaphore	= new Object();
-	private boolean		collectThreadRunning	= false;
+	private List<Queue<Event>>	collectThreadQueues		= Collections.singletonList(new ConcurrentLinkedQueue<>());
+	private AtomicInteger		collectThreadQueueSize	= new AtomicInteger();
+	private Object				collectThreadSemaphore	= new Object();
+	private volatile boolean	collectThreadRunning	= false;
+	private ExecutorService		collectThreadExecutor;
 
 	/** Collect thread queue maps */
-	private Map<String, EventStat>					eventStatMap			= Collections.synchronizedMap(new HashMap<>());
-	private Map<String, ResourceStat>				resourceStatMap			= Collections.synchronizedMap(new HashMap<>());
-	private Map<String, LessonBuilderStat>			lessonBuilderStatMap	= Collections.synchronizedMap(new HashMap<>());
-	private Map<String, SiteActivity>				activityMap				= Collections.synchronizedMap(new HashMap<>());
-	private Map<String, SiteVisits>					visitsMap				= Collections.synchronizedMap(new HashMap<>());
-	private Map<String, SitePresenceConsolidation>	presencesMap			= Collections.synchronizedMap(new HashMap<>());
-	private Map<UniqueVisitsKey, Integer>			uniqueVisitsMap			= Collections.synchronizedMap(new HashMap<>());
-	private Map<String, ServerStat>					serverStatMap			= Collections.synchronizedMap(new HashMap<>());
-	private Map<String, UserStat>					userStatMap				= Collections.synchronizedMap(new HashMap<>());
-
-	private Map<String, String>	lessonPageCreateEventMap	= new HashMap<>();
-	private List<DetailedEvent>	detailedEvents				= Collections.synchronizedList(new ArrayList<>());
+	private ConsolidationMap<String, EventStat>			eventStatMap			= new ConsolidationMap<>();
+	private ConsolidationMap<String, ResourceStat>		resourceStatMap			= new ConsolidationMap<>();
+	private ConsolidationMap<String, LessonBuilderStat>	lessonBuilderStatMap	= new ConsolidationMap<>();
+	private ConsolidationMap<String, SiteActivity>		activityMap				= new ConsolidationMap<>();
+	private ConsolidationMap<String, ServerStat>		serverStatMap			= new ConsolidationMap<>();
+	private ConsolidationMap<String, UserStat>			userStatMap				= new ConsolidationMap<>();
+
+	/** Visits and presences are consolidated together, guarded by lock */
+	private Map<String, SiteVisits>					visitsMap				= new HashMap<>();
+	private Map<String, SitePresenceConsolidation>	presencesMap			= new HashMap<>();
+	private Map<UniqueVisitsKey, Integer>			uniqueVisitsMap			= new HashMap<>();
+
+	private Map<String, String>	lessonPageCreateEventMap	= new ConcurrentHashMap<>();
+	private Queue<DetailedEvent>	detailedEvents				= new ConcurrentLinkedQueue<>();
 
 	private boolean				initialized	= false;
 	private final ReentrantLock	lock		= new ReentrantLock();
 
 	/** Metrics */
-	private boolean			isIdle						= true;
-	@Getter private long	totalEventsProcessed		= 0;
-	@Getter private long	totalTimeInEventProcessing	= 0;
-	@Getter private long	resetTime					= System.currentTimeMillis();
+	private volatile boolean	isIdle						= true;
+	private LongAdder			totalEventsProcessed		= new LongAdder();
+	private LongAdder			totalTimeInEventProcessing	= new LongAdder();
+	@Getter private long		resetTime					= System.currentTimeMillis();
+	@Getter private volatile double	eventsConsolidatedPerSec	= 0;
+	@Getter private volatile long	lastFlushTime				= 0;
+	private LongAdder			totalFlushes				= new LongAdder();
+	private LongAdder			totalTimeInFlushes			= new LongAdder();
 
 	// ################################################################
 	// Spring related methods
@@ -156,11 +179,27 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 			buff.append(", db update interval: ");
 			buff.append(collectThreadUpdateInterval);
 			buff.append(" ms");
+			buff.append(", consolidation workers: ");
+			buff.append(collectThreadWorkers);
 		}
 		buff.append(", collect administrator events: ").append(collectAdminEvents);
 		buff.append(", collect events only for sites with SiteStats: ").append(collectEventsForSiteWithToolOnly);
 		buff.append(", collect detailed events: ").append(collectDetailedEvents);
 		logger.info(buff.toString());
+
+		if(collectThreadWorkers > 1) {
+			List<Queue<Event>> queues = new ArrayList<>(collectThreadWorkers);
+			for(int i = 0; i < collectThreadWorkers; i++) {
+				queues.add(new ConcurrentLinkedQueue<>());
+			}
+			collectThreadQueues = queues;
+			AtomicInteger worker = new AtomicInteger();
+			collectThreadExecutor = Executors.newFixedThreadPool(collectThreadWorkers, r -> {
+				Thread t = new Thread(r, "org.sakaiproject.sitestats.impl.StatsUpdateManagerImpl.worker-" + worker.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			});
+		}
 		
 		initialized = true;
 		setCollectThreadEnabled(collectThreadEnabled);
@@ -174,6 +213,9 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 			// stop update thread
 			stopUpdateThread();
 		}
+		if(collectThreadExecutor != null) {
+			collectThreadExecutor.shutdown();
+		}
 	}
 
 	
@@ -200,7 +242,7 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 			//log.debug("Time spent pre-processing 1 event: " + (endTime-startTime) + " ms");
 			boolean success = doUpdateConsolidatedEvents();
 			isIdle = true;
-			totalTimeInEventProcessing += (System.currentTimeMillis() - startTime);
+			totalTimeInEventProcessing.add(System.currentTimeMillis() - startTime);
 			return success;
 		}
 		return true;
@@ -237,7 +279,7 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 				//log.debug("Time spent pre-processing " + eventCount + " event(s): " + (endTime-startTime) + " ms");
 				boolean success = doUpdateConsolidatedEvents();
 				isIdle = true;
-				totalTimeInEventProcessing += (System.currentTimeMillis() - startTime);
+				totalTimeInEventProcessing.add(System.currentTimeMillis() - startTime);
 				return success;
 			}
 		}
@@ -310,11 +352,122 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 	}
 	
 	
+	// ################################################################
+	// Rollup related methods
+	// ################################################################
+	/* (non-Javadoc)
+	 * @see org.sakaiproject.sitestats.api.StatsUpdateManager#updateRollups(java.util.Date, int)
+	 */
+	public int updateRollups(final Date completeBefore, final int maxPeriods) {
+		return getHibernateTemplate().execute(session -> {
+			int built = 0;
+			for(StatsRollupPlanner.Granularity granularity : new StatsRollupPlanner.Granularity[] {StatsRollupPlanner.Granularity.MONTH, StatsRollupPlanner.Granularity.WEEK}) {
+				while(built < maxPeriods) {
+					Date start = getNextRollupPeriod(session, granularity);
+					if(start == null || granularity.nextPeriod(start).after(completeBefore)) {
+						break;
+					}
+					buildRollup(session, granularity, start);
+					built++;
+				}
+			}
+			return built;
+		});
+	}
+
+	/* (non-Javadoc)
+	 * @see org.sakaiproject.sitestats.api.StatsUpdateManager#invalidateRollups(java.util.Date)
+	 */
+	public void invalidateRollups(final Date from) {
+		getHibernateTemplate().execute(session -> {
+			for(StatsRollupPlanner.Granularity granularity : new StatsRollupPlanner.Granularity[] {StatsRollupPlanner.Granularity.MONTH, StatsRollupPlanner.Granularity.WEEK}) {
+				for(String entity : new String[] {"EventStatRollupImpl", "ResourceStatRollupImpl"}) {
+					session.createQuery("delete from " + entity + " s where s.period = :period and s.date >= :date")
+							.setParameter("period", granularity.getCode())
+							.setParameter("date", granularity.periodStart(from), DateType.INSTANCE)
+							.executeUpdate();
+				}
+			}
+			return null;
+		});
+	}
+
+	/**
+	 * The period following the last one rolled up, skipping periods without any stats,
+	 * or the period of the oldest stats if nothing has been rolled up yet.
+	 */
+	private Date getNextRollupPeriod(Session session, StatsRollupPlanner.Granularity granularity) {
+		Date lastPeriod = (Date) session.createQuery("select max(s.date) from EventStatRollupImpl s where s.period = :period")
+				.setParameter("period", granularity.getCode())
+				.uniqueResult();
+		Query q = session.createQuery("select min(s.date) from EventStatImpl s" + (lastPeriod != null ? " where s.date >= :date" : ""));
+		if(lastPeriod != null) {
+			q.setParameter("date", granularity.nextPeriod(lastPeriod), DateType.INSTANCE);
+		}
+		Date firstDay = (Date) q.uniqueResult();
+		return firstDay != null ? granularity.periodStart(firstDay) : null;
+	}
+
+	/** (Re)build the event and resource rollups of the period starting at the given date, one site at a time. */
+	private void buildRollup(Session session, StatsRollupPlanner.Granularity granularity, Date start) {
+		Date end = granularity.nextPeriod(start);
+		String period = granularity.getCode();
+		long opStart = System.currentTimeMillis();
+		session.setJdbcBatchSize(flushBatchSize);
+		for(String entity : new String[] {"EventStatRollupImpl", "ResourceStatRollupImpl"}) {
+			session.createQuery("delete from " + entity + " s where s.period = :period and s.date = :date")
+					.setParameter("period", period)
+					.setParameter("date", start, DateType.INSTANCE)
+					.executeUpdate();
+		}
+
+		long rows = 0;
+		List<String> siteIds = session.createQuery("select distinct s.siteId from EventStatImpl s where s.date >= :start and s.date < :end", String.class)
+				.setParameter("start", start, DateType.INSTANCE)
+				.setParameter("end", end, DateType.INSTANCE)
+				.list();
+		for(String siteId : siteIds) {
+			List<Object[]> totals = session.createQuery("select s.userId, s.eventId, sum(s.count) from EventStatImpl s "
+						+ "where s.siteId = :siteId and s.date >= :start and s.date < :end group by s.userId, s.eventId", Object[].class)
+					.setParameter("siteId", siteId)
+					.setParameter("start", start, DateType.INSTANCE)
+					.setParameter("end", end, DateType.INSTANCE)
+					.list();
+			for(Object[] t : totals) {
+				session.save(new EventStatRollupImpl(period, start, siteId, (String) t[0], (String) t[1], ((Number) t[2]).longValue()));
+			}
+			rows += totals.size();
+			session.flush();
+			session.clear();
+		}
+
+		siteIds = session.createQuery("select distinct s.siteId from ResourceStatImpl s where s.date >= :start and s.date < :end", String.class)
+				.setParameter("start", start, DateType.INSTANCE)
+				.setParameter("end", end, DateType.INSTANCE)
+				.list();
+		for(String siteId : siteIds) {
+			List<Object[]> totals = session.createQuery("select s.userId, s.resourceRef, s.resourceAction, sum(s.count) from ResourceStatImpl s "
+						+ "where s.siteId = :siteId and s.date >= :start and s.date < :end group by s.userId, s.resourceRef, s.resourceAction", Object[].class)
+					.setParameter("siteId", siteId)
+					.setParameter("start", start, DateType.INSTANCE)
+					.setParameter("end", end, DateType.INSTANCE)
+					.list();
+			for(Object[] t : totals) {
+				session.save(new ResourceStatRollupImpl(period, start, siteId, (String) t[0], (String) t[1], (String) t[2], ((Number) t[3]).longValue()));
+			}
+			rows += totals.size();
+			session.flush();
+			session.clear();
+		}
+		log.debug("Built {} rollup of {}: {} rows in {} ms", granularity, start, rows, System.currentTimeMillis() - opStart);
+	}
+	
+	
 	// ################################################################
 	// Metrics related methods
 	// ################################################################	
 	public int getQueueSize() {
-		return collectThreadQueue.size();
+		return collectThreadQueueSize.get();
 	}
 	
 	public boolean isIdle() {
@@ -322,11 +475,29 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 	}
 	
 	public void resetMetrics() {
-		totalEventsProcessed = 0;
-		totalTimeInEventProcessing = 0;
+		totalEventsProcessed.reset();
+		totalTimeInEventProcessing.reset();
+		totalFlushes.reset();
+		totalTimeInFlushes.reset();
 		resetTime = System.currentTimeMillis();
 	}
 
+	@Override
+	public long getTotalEventsProcessed() {
+		return totalEventsProcessed.sum();
+	}
+
+	@Override
+	public long getTotalTimeInEventProcessing() {
+		return totalTimeInEventProcessing.sum();
+	}
+
+	@Override
+	public long getAverageFlushTime() {
+		long flushes = totalFlushes.sum();
+		return flushes > 0 ? totalTimeInFlushes.sum() / flushes : 0;
+	}
+
 	@Override
 	public long getTotalTimeElapsedSinceReset() {
 		return System.currentTimeMillis() - resetTime;
@@ -334,6 +505,8 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 	
 	@Override
 	public double getNumberOfEventsProcessedPerSec() {
+		long totalEventsProcessed = getTotalEventsProcessed();
+		long totalTimeInEventProcessing = getTotalTimeInEventProcessing();
 		if(totalTimeInEventProcessing > 0) {
 			return Util.round((double)totalEventsProcessed / ((double)totalTimeInEventProcessing/1000), 3);
 		}else{
@@ -345,16 +518,17 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 	public double getNumberOfEventsGeneratedPerSec() {
 		double ellapsed = (double) getTotalTimeElapsedSinceReset();
 		if(ellapsed > 0) {
-			return Util.round((double)totalEventsProcessed / (ellapsed/1000), 3);
+			return Util.round((double)getTotalEventsProcessed() / (ellapsed/1000), 3);
 		}else{
-			return Util.round((double)totalEventsProcessed / 0.001, 3); // => will assume 1ms instead of 0ms
+			return Util.round((double)getTotalEventsProcessed() / 0.001, 3); // => will assume 1ms instead of 0ms
 		}
 	}
 	
 	@Override
 	public long getAverageTimeInEventProcessingPerEvent() {
+		long totalEventsProcessed = getTotalEventsProcessed();
 		if(totalEventsProcessed > 0) {
-			return totalTimeInEventProcessing / totalEventsProcessed;
+			return getTotalTimeInEventProcessing() / totalEventsProcessed;
 		}else{
 			return 0;
 		}
@@ -372,6 +546,8 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 			sb.append("\t\tNumber of events genereated in Sakai per sec: ").append(getNumberOfEventsGeneratedPerSec()).append("\n");
 			sb.append("\t\tAverage time spent in event processing per event: ").append(getAverageTimeInEventProcessingPerEvent()).append(" ms\n");
 			sb.append("\t\tEvent queue size: ").append(getQueueSize()).append("\n");
+			sb.append("\t\tEvents consolidated per sec (last run): ").append(getEventsConsolidatedPerSec()).append("\n");
+			sb.append("\t\tDb flush time (last/average): ").append(getLastFlushTime()).append(" / ").append(getAverageFlushTime()).append(" ms\n");
 			sb.append("\t\tIdle: ").append(isIdle());
 		}else{
 			sb.append("#Events processed: ").append(getTotalEventsProcessed()).append(", ");
@@ -380,6 +556,8 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 			sb.append("#Events processed/sec: ").append(getNumberOfEventsProcessedPerSec()).append(", ");
 			sb.append("Avg. Time/event: ").append(getAverageTimeInEventProcessingPerEvent()).append(" ms, ");
 			sb.append("Event queue size: ").append(getQueueSize()).append(", ");
+			sb.append("Events consolidated/sec: ").append(getEventsConsolidatedPerSec()).append(", ");
+			sb.append("Db flush time: ").append(getLastFlushTime()).append(" ms, ");
 			sb.append("Idle: ").append(isIdle());
 		}
 		return sb.toString();
@@ -391,12 +569,15 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 	// ################################################################	
 	/** Method called whenever an new event is generated from EventTrackingService: do not call this method! */
 	public void update(Observable obs, Object o) {
-		// At the moment this isn't threadsafe, but as sakai event handling is single threaded this shoudn't be a problem,
-		// but it's not a formal contract.
+		// Events may be posted from any thread. Each site's events always go to the same queue so that its
+		// presence begin and end events are consolidated in order, whichever worker drains the queue.
 		if(o instanceof Event){
 			Event e = (Event) o;
 			Event eventWithPreciseDate = buildEvent(getToday(), e.getEvent(), e.getResource(), e.getContext(), e.getUserId(), e.getSessionId());
-			collectThreadQueue.add(eventWithPreciseDate);
+			String shardKey = e.getContext() != null ? e.getContext() : e.getResource();
+			List<Queue<Event>> queues = collectThreadQueues;
+			queues.get(Math.floorMod(Objects.hashCode(shardKey), queues.size())).add(eventWithPreciseDate);
+			collectThreadQueueSize.incrementAndGet();
 		}
 	}
 	
@@ -408,18 +589,14 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 				// do update job
 				isIdle = false;
 				long startTime = System.currentTimeMillis();
-				int eventCount = collectThreadQueue.size();
-				if(eventCount > 0) {
-					//long startTime2 = System.currentTimeMillis();
-					while(collectThreadQueue.size() > 0){
-						preProcessEvent(collectThreadQueue.remove(0));
-					}
-					//long endTime2 = System.currentTimeMillis();
-					//log.debug("Time spent pre-processing " + eventCount + " event(s): " + (endTime2-startTime2) + " ms");
+				if(getQueueSize() > 0) {
+					int eventCount = consolidateQueuedEvents();
+					long consolidationTime = System.currentTimeMillis() - startTime;
+					eventsConsolidatedPerSec = Util.round((double) eventCount / ((double) Math.max(consolidationTime, 1) / 1000), 3);
 				}
 				transactionTemplate.execute(status -> doUpdateConsolidatedEvents());
 				isIdle = true;
-				totalTimeInEventProcessing += (System.currentTimeMillis() - startTime);
+				totalTimeInEventProcessing.add(System.currentTimeMillis() - startTime);
 
 				// sleep if no work to do
 				if(!collectThreadRunning) break;
@@ -443,6 +620,47 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 		}
 	}
 
+	/**
+	 * Consolidate the events queued so far, each queue on its own worker.
+	 * @return the number of events consolidated
+	 */
+	private int consolidateQueuedEvents() {
+		List<Queue<Event>> queues = collectThreadQueues;
+		if(collectThreadExecutor == null) {
+			int eventCount = 0;
+			for(Queue<Event> queue : queues) {
+				eventCount += consolidateQueuedEvents(queue);
+			}
+			return eventCount;
+		}
+		List<Callable<Integer>> tasks = new ArrayList<>(queues.size());
+		for(Queue<Event> queue : queues) {
+			tasks.add(() -> consolidateQueuedEvents(queue));
+		}
+		int eventCount = 0;
+		try{
+			for(Future<Integer> result : collectThreadExecutor.invokeAll(tasks)) {
+				eventCount += result.get();
+			}
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+		}catch(ExecutionException e){
+			log.warn("Failed to consolidate statistics events", e.getCause());
+		}
+		return eventCount;
+	}
+
+	private int consolidateQueuedEvents(Queue<Event> queue) {
+		int eventCount = 0;
+		Event event;
+		while((event = queue.poll()) != null){
+			collectThreadQueueSize.decrementAndGet();
+			preProcessEvent(event);
+			eventCount++;
+		}
+		return eventCount;
+	}
+
 	/** Start the update thread */
 	private void startUpdateThread(){
 		collectThreadRunning = true;
@@ -468,7 +686,7 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 			return;
 		}
 
-		totalEventsProcessed++;
+		totalEventsProcessed.increment();
 		String userId = event.getUserId();
 		Event e = fixMalFormedEvents(event);
 		if (e == null) {
@@ -577,18 +795,14 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 
 			// add to eventStatMap
 			String key = userId+siteId+eventId+date;
-			synchronized(eventStatMap){
-				EventStat e1 = eventStatMap.get(key);
-				if(e1 == null){
-					e1 = new EventStatImpl();
-					e1.setUserId(userId);
-					e1.setSiteId(siteId);
-					e1.setEventId(eventId);
-					e1.setDate(date);
-				}
-				e1.setCount(e1.getCount() + 1);
-				eventStatMap.put(key, e1);
-			}
+			eventStatMap.update(key, k -> {
+				EventStat e1 = new EventStatImpl();
+				e1.setUserId(userId);
+				e1.setSiteId(siteId);
+				e1.setEventId(eventId);
+				e1.setDate(date);
+				return e1;
+			}, e1 -> e1.setCount(e1.getCount() + 1));
 
 			if (collectDetailedEvents) {
 				DetailedEvent de = new DetailedEventImpl();
@@ -603,42 +817,35 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 			if(!StatsManager.SITEVISIT_EVENTID.equals(eventId)){
 				// add to activityMap
 				String key2 = siteId+date+eventId;
-				synchronized(activityMap){
-					SiteActivity e2 = activityMap.get(key2);
-					if(e2 == null){
-						e2 = new SiteActivityImpl();
-						e2.setSiteId(siteId);
-						e2.setDate(date);
-						e2.setEventId(eventId);
-					}
-					e2.setCount(e2.getCount() + 1);
-					activityMap.put(key2, e2);
-				}
+				activityMap.update(key2, k -> {
+					SiteActivity e2 = new SiteActivityImpl();
+					e2.setSiteId(siteId);
+					e2.setDate(date);
+					e2.setEventId(eventId);
+					return e2;
+				}, e2 -> e2.setCount(e2.getCount() + 1));
 			}
 		}	
 
 		if(eventId.startsWith(StatsManager.RESOURCE_EVENTID_PREFIX)){
 			// add to resourceStatMap
-			String resourceAction = null;
+			String action = null;
 			try{
-				resourceAction = eventId.split("\\.")[1];
+				action = eventId.split("\\.")[1];
 			}catch(ArrayIndexOutOfBoundsException ex){
-				resourceAction = eventId;
+				action = eventId;
 			}
+			String resourceAction = action;
 			String key = userId+siteId+resourceRef+resourceAction+date;
-			synchronized(resourceStatMap){
-				ResourceStat e1 = resourceStatMap.get(key);
-				if(e1 == null){
-					e1 = new ResourceStatImpl();
-					e1.setUserId(userId);
-					e1.setSiteId(siteId);
-					e1.setResourceRef(resourceRef);
-					e1.setResourceAction(resourceAction);
-					e1.setDate(date);
-				}
-				e1.setCount(e1.getCount() + 1);
-				resourceStatMap.put(key, e1);
-			}
+			resourceStatMap.update(key, k -> {
+				ResourceStat e1 = new ResourceStatImpl();
+				e1.setUserId(userId);
+				e1.setSiteId(siteId);
+				e1.setResourceRef(resourceRef);
+				e1.setResourceAction(resourceAction);
+				e1.setDate(date);
+				return e1;
+			}, e1 -> e1.setCount(e1.getCount() + 1));
 		} else if (eventId.startsWith(StatsManager.LESSONS_EVENTID_PREFIX)) {
 			String[] resourceParts = resourceRef.split("/");
 			if (resourceParts.length > 3) {
@@ -783,20 +990,16 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 
 	private void addToLessonBuilderStatMap(String key, String userId, String siteId, String pageRef, long pageId, String action, Date date) {
 
-		synchronized (lessonBuilderStatMap) {
-			LessonBuilderStat e1 = lessonBuilderStatMap.get(key);
-			if (e1 == null) {
-				e1 = new LessonBuilderStatImpl();
-				e1.setUserId(userId);
-				e1.setSiteId(siteId);
-				e1.setPageRef(pageRef);
-				e1.setPageId(pageId);
-				e1.setPageAction(action);
-				e1.setDate(date);
-			}
-			e1.setCount(e1.getCount() + 1);
-			lessonBuilderStatMap.put(key, e1);
-		}
+		lessonBuilderStatMap.update(key, k -> {
+			LessonBuilderStat e1 = new LessonBuilderStatImpl();
+			e1.setUserId(userId);
+			e1.setSiteId(siteId);
+			e1.setPageRef(pageRef);
+			e1.setPageId(pageId);
+			e1.setPageAction(action);
+			e1.setDate(date);
+			return e1;
+		}, e1 -> e1.setCount(e1.getCount() + 1));
 	}
 
 	protected boolean isRegisteredEvent(String eventId) {
@@ -810,16 +1013,12 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 				
 		// add to serverStatMap
 		String key = eventId+date;
-		synchronized(serverStatMap){
-			ServerStat s = serverStatMap.get(key);
-			if(s == null){
-				s = new ServerStatImpl();
-				s.setEventId(eventId);
-				s.setDate(date);
-			}
-			s.setCount(s.getCount() + 1);
-			serverStatMap.put(key, s);
-		}
+		serverStatMap.update(key, k -> {
+			ServerStat s = new ServerStatImpl();
+			s.setEventId(eventId);
+			s.setDate(date);
+			return s;
+		}, s -> s.setCount(s.getCount() + 1));
 		
 	}
 	
@@ -830,16 +1029,12 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 				
 		// add to userStatMap
 		String key = userId+date;
-		synchronized(userStatMap){
-			UserStat s = userStatMap.get(key);
-			if(s == null){
-				s = new UserStatImpl();
-				s.setUserId(userId);
-				s.setDate(date);
-			}
-			s.setCount(s.getCount() + 1);
-			userStatMap.put(key, s);
-		}
+		userStatMap.update(key, k -> {
+			UserStat s = new UserStatImpl();
+			s.setUserId(userId);
+			s.setDate(date);
+			return s;
+		}, s -> s.setCount(s.getCount() + 1));
 		
 	}
 	
@@ -850,119 +1045,104 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 	@SuppressWarnings("unchecked")
 	private synchronized boolean doUpdateConsolidatedEvents() {
 		long startTime = System.currentTimeMillis();
-		if(eventStatMap.size() > 0 || resourceStatMap.size() > 0
-				|| activityMap.size() > 0 || uniqueVisitsMap.size() > 0 
-				|| visitsMap.size() > 0 || presencesMap.size() > 0
-				|| serverStatMap.size() > 0 || userStatMap.size() > 0 || detailedEvents.size() > 0) {
+		if(!eventStatMap.isEmpty() || !resourceStatMap.isEmpty() || !lessonBuilderStatMap.isEmpty()
+				|| !activityMap.isEmpty() || !uniqueVisitsMap.isEmpty()
+				|| !visitsMap.isEmpty() || !presencesMap.isEmpty()
+				|| !serverStatMap.isEmpty() || !userStatMap.isEmpty() || !detailedEvents.isEmpty()) {
 
 		    try {
 				getHibernateTemplate().execute(session -> {
+                    // The counters are looked up by distinct keys, so nothing needs flushing before each lookup
+                    // and their inserts and updates go to the db in JDBC batches.
+                    session.setJdbcBatchSize(flushBatchSize);
+                    session.setHibernateFlushMode(FlushMode.COMMIT);
+
                     // do: EventStat
-                    if(eventStatMap.size() > 0) {
-                        Collection<EventStat> tmp1 = null;
-                        synchronized(eventStatMap){
-                            tmp1 = eventStatMap.values();
-                            eventStatMap = Collections.synchronizedMap(new HashMap<String, EventStat>());
-                        }
-                        doUpdateEventStatObjects(session, tmp1);
+                    if(!eventStatMap.isEmpty()) {
+                        doUpdateEventStatObjects(session, eventStatMap.drain());
                     }
 
                     // do: DetailedEvents
-                    if (detailedEvents.size() > 0) {
-                        List<DetailedEvent> detailedEventsCopy;
-                        synchronized(detailedEvents) {
-                            detailedEventsCopy = detailedEvents;
-                            detailedEvents = Collections.synchronizedList(new ArrayList<>());
+                    if (!detailedEvents.isEmpty()) {
+                        List<DetailedEvent> detailedEventsCopy = new ArrayList<>();
+                        DetailedEvent de;
+                        while ((de = detailedEvents.poll()) != null) {
+                            detailedEventsCopy.add(de);
                         }
                         doSaveDetailedEvents(session, detailedEventsCopy);
                     }
 
                     // do: ResourceStat
-                    if(resourceStatMap.size() > 0) {
-                        Collection<ResourceStat> tmp2 = null;
-                        synchronized(resourceStatMap){
-                            tmp2 = resourceStatMap.values();
-                            resourceStatMap = Collections.synchronizedMap(new HashMap<String, ResourceStat>());
-                        }
-                        doUpdateResourceStatObjects(session, tmp2);
+                    if(!resourceStatMap.isEmpty()) {
+                        doUpdateResourceStatObjects(session, resourceStatMap.drain());
                     }
 
                     // do: Lessons ResourceStat
-                    if (lessonBuilderStatMap.size() > 0) {
-                        Collection<LessonBuilderStat> tmp3 = null;
-                        synchronized (lessonBuilderStatMap) {
-                            tmp3 = lessonBuilderStatMap.values();
-                            lessonBuilderStatMap = Collections.synchronizedMap(new HashMap<String, LessonBuilderStat>());
-                        }
-                        doUpdateLessonBuilderStatObjects(session, tmp3);
+                    if (!lessonBuilderStatMap.isEmpty()) {
+                        doUpdateLessonBuilderStatObjects(session, lessonBuilderStatMap.drain());
                     }
 
                     // do: SiteActivity
-                    if(activityMap.size() > 0) {
-                        Collection<SiteActivity> tmp3 = null;
-                        synchronized(activityMap){
-                            tmp3 = activityMap.values();
-                            activityMap = Collections.synchronizedMap(new HashMap<String, SiteActivity>());
-                        }
-                        doUpdateSiteActivityObjects(session, tmp3);
+                    if(!activityMap.isEmpty()) {
+                        doUpdateSiteActivityObjects(session, activityMap.drain());
+                    }
+
+                    // do: ServerStats
+                    if(!serverStatMap.isEmpty()) {
+                        doUpdateServerStatObjects(session, serverStatMap.drain());
+                    }
+
+                    // do: UserStats
+                    if(!userStatMap.isEmpty()) {
+                        doUpdateUserStatObjects(session, userStatMap.drain());
+                    }
+
+                    // unique visits are counted from the event stats just written, and presence totals may be
+                    // looked up more than once, so from here on every lookup sees what went before it
+                    session.flush();
+                    session.setHibernateFlushMode(FlushMode.AUTO);
+
+                    // visits and presences are consolidated together, so they are drained together
+                    Map<UniqueVisitsKey, Integer> tmp4;
+                    Collection<SiteVisits> tmp5;
+                    Collection<SitePresenceConsolidation> tmp6;
+                    lock.lock();
+                    try{
+                        tmp4 = uniqueVisitsMap;
+                        tmp5 = visitsMap.values();
+                        tmp6 = presencesMap.values();
+                        uniqueVisitsMap = new HashMap<>();
+                        visitsMap = new HashMap<>();
+                        presencesMap = new HashMap<>();
+                    }finally{
+                        lock.unlock();
                     }
 
                     // do: SiteVisits
-                    if(uniqueVisitsMap.size() > 0 || visitsMap.size() > 0) {
+                    if(tmp4.size() > 0 || tmp5.size() > 0) {
                         // determine unique visits for event related sites
-                        Map<UniqueVisitsKey, Integer> tmp4;
-                        synchronized(uniqueVisitsMap){
-                            tmp4 = uniqueVisitsMap;
-                            uniqueVisitsMap = Collections.synchronizedMap(new HashMap<UniqueVisitsKey, Integer>());
-                        }
                         tmp4 = doGetSiteUniqueVisits(session, tmp4);
 
                         // do: SiteVisits
-                        if(visitsMap.size() > 0) {
-                            Collection<SiteVisits> tmp5 = null;
-                            synchronized(visitsMap){
-                                tmp5 = visitsMap.values();
-                                visitsMap = Collections.synchronizedMap(new HashMap<String, SiteVisits>());
-                            }
+                        if(tmp5.size() > 0) {
                             doUpdateSiteVisitsObjects(session, tmp5, tmp4);
                         }
                     }
 
                     // do: SitePresences
-                    if(presencesMap.size() > 0) {
-                        Collection<SitePresenceConsolidation> tmp6 = null;
-                        synchronized(presencesMap){
-                            tmp6 = presencesMap.values();
-                            presencesMap = Collections.synchronizedMap(new HashMap<String, SitePresenceConsolidation>());
-                        }
+                    if(tmp6.size() > 0) {
                         doUpdateSitePresencesObjects(session, tmp6);
                     }
-
-                    // do: ServerStats
-                    if(serverStatMap.size() > 0) {
-                        Collection<ServerStat> tmp7 = null;
-                        synchronized(serverStatMap){
-                            tmp7 = serverStatMap.values();
-                            serverStatMap = Collections.synchronizedMap(new HashMap<String, ServerStat>());
-                        }
-                        doUpdateServerStatObjects(session, tmp7);
-                    }
-
-                    // do: UserStats
-                    if(userStatMap.size() > 0) {
-                        Collection<UserStat> tmp8 = null;
-                        synchronized(userStatMap){
-                            tmp8 = userStatMap.values();
-                            userStatMap = Collections.synchronizedMap(new HashMap<String, UserStat>());
-                        }
-                        doUpdateUserStatObjects(session, tmp8);
-                    }
+                    session.flush();
                     return null;
             	});
 			} catch(DataAccessException dae) {
 				return false;
 			}
 			long endTime = System.currentTimeMillis();
+			lastFlushTime = endTime - startTime;
+			totalFlushes.increment();
+			totalTimeInFlushes.add(lastFlushTime);
 			log.debug("Time spent in doUpdateConsolidatedEvents(): " + (endTime-startTime) + " ms");
 		}
 		return true;
@@ -1477,7 +1657,7 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 	// ################################################################
 	// Utility methods
 	// ################################################################	
-	private synchronized boolean isValidEvent(Event e) {
+	private boolean isValidEvent(Event e) {
 		if(e.getEvent().startsWith(StatsManager.RESOURCE_EVENTID_PREFIX)){
 			String ref = e.getResource();	
 			if(ref.trim().equals("")) return false;			
@@ -0,0 +1,78 @@
+/**
+ * Copyright (c) 2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.sitestats.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+import org.sakaiproject.sitestats.impl.ConsolidationMap;
+
+public class ConsolidationMapTest {
+
+	@Test
+	public void testUpdateAndDrain() {
+		ConsolidationMap<String, long[]> map = new ConsolidationMap<>();
+		map.update("site1", k -> new long[1], c -> c[0]++);
+		map.update("site1", k -> new long[1], c -> c[0]++);
+		map.update("site2", k -> new long[1], c -> c[0]++);
+		assertEquals(2, map.size());
+		assertEquals(2L, map.get("site1")[0]);
+
+		Map<String, long[]> drained = map.drainMap();
+		assertEquals(2, drained.size());
+		assertEquals(1L, drained.get("site2")[0]);
+		assertTrue(map.isEmpty());
+		assertTrue(map.drain().isEmpty());
+	}
+
+	@Test
+	public void testNoUpdatesLostWhileDraining() throws InterruptedException {
+		final int threads = 8;
+		final int updates = 100000;
+		ConsolidationMap<String, long[]> map = new ConsolidationMap<>();
+		CountDownLatch done = new CountDownLatch(threads);
+		List<Thread> workers = new ArrayList<>();
+		for(int t = 0; t < threads; t++) {
+			workers.add(new Thread(() -> {
+				for(int i = 0; i < updates; i++) {
+					map.update("site" + (i % 16), k -> new long[1], c -> c[0]++);
+				}
+				done.countDown();
+			}));
+		}
+		workers.forEach(Thread::start);
+
+		// drain continuously while the workers consolidate, as the update thread does
+		long total = 0;
+		boolean finished = false;
+		while(!finished) {
+			finished = done.getCount() == 0;
+			for(long[] c : map.drain()) {
+				total += c[0];
+			}
+		}
+		for(long[] c : map.drain()) {
+			total += c[0];
+		}
+		assertEquals((long) threads * updates, total);
+	}
+}
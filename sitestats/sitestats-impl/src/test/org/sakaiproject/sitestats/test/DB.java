@@ -26,8 +26,10 @@ import javax.persistence.criteria.Root;
 
 import org.sakaiproject.sitestats.impl.DetailedEventImpl;
 import org.sakaiproject.sitestats.impl.EventStatImpl;
+import org.sakaiproject.sitestats.impl.EventStatRollupImpl;
 import org.sakaiproject.sitestats.impl.LessonBuilderStatImpl;
 import org.sakaiproject.sitestats.impl.ResourceStatImpl;
+import org.sakaiproject.sitestats.impl.ResourceStatRollupImpl;
 import org.sakaiproject.sitestats.impl.ServerStatImpl;
 import org.sakaiproject.sitestats.impl.SiteActivityImpl;
 import org.sakaiproject.sitestats.impl.SitePresenceImpl;
@@ -93,6 +95,8 @@ public class DB extends HibernateDaoSupport {
                 session.createCriteria(SiteActivityImpl.class).list().forEach(session::delete);
                 session.createCriteria(EventStatImpl.class).list().forEach(session::delete);
                 session.createCriteria(ResourceStatImpl.class).list().forEach(session::delete);
+                session.createCriteria(EventStatRollupImpl.class).list().forEach(session::delete);
+                session.createCriteria(ResourceStatRollupImpl.class).list().forEach(session::delete);
                 session.createCriteria(SitePresenceImpl.class).list().forEach(session::delete);
                 session.createCriteria(SitePresenceTotalImpl.class).list().forEach(session::delete);
                 session.createCriteria(DetailedEventImpl.class).list().forEach(session::delete);
@@ -0,0 +1,58 @@
+/**
+ * Copyright (c) 2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.sitestats.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Calendar;
+import java.util.Date;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.sakaiproject.sitestats.api.StatsUpdateManager;
+import org.sakaiproject.sitestats.impl.StatsAggregateJobImpl;
+
+public class StatsAggregateJobTest {
+
+	private StatsAggregateJobImpl job;
+
+	@Before
+	public void setUp() {
+		StatsUpdateManager statsUpdateManager = mock(StatsUpdateManager.class);
+		when(statsUpdateManager.getCollectThreadUpdateInterval()).thenReturn(4000L);
+		job = new StatsAggregateJobImpl();
+		job.setStatsUpdateManager(statsUpdateManager);
+	}
+
+	private static Date date(int year, int month, int day) {
+		Calendar c = Calendar.getInstance();
+		c.clear();
+		c.set(year, month - 1, day);
+		return c.getTime();
+	}
+
+	@Test
+	public void testCollectedBeforeWaitsForBufferedEvents() {
+		Date midnight = date(2021, 3, 1);
+		// events of the last day of february may still be in the collect thread buffer
+		assertEquals(date(2021, 2, 28), job.getCollectedBefore(midnight.getTime() + 2000));
+		assertEquals(date(2021, 2, 28), job.getCollectedBefore(midnight.getTime() + 7999));
+		assertEquals(midnight, job.getCollectedBefore(midnight.getTime() + 8000));
+		assertEquals(midnight, job.getCollectedBefore(midnight.getTime() + 12 * 3600 * 1000));
+	}
+}
@@ -0,0 +1,140 @@
+/**
+ * Copyright (c) 2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.sitestats.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+import org.sakaiproject.sitestats.api.StatsManager;
+import org.sakaiproject.sitestats.impl.StatsRollupPlanner;
+import org.sakaiproject.sitestats.impl.StatsRollupPlanner.Granularity;
+import org.sakaiproject.sitestats.impl.StatsRollupPlanner.Segment;
+
+public class StatsRollupPlannerTest {
+
+	private static Date date(int year, int month, int day) {
+		Calendar c = Calendar.getInstance();
+		c.clear();
+		c.set(year, month - 1, day);
+		return c.getTime();
+	}
+
+	@Test
+	public void testPeriodStart() {
+		// 2021-03-17 was a Wednesday
+		Date d = date(2021, 3, 17);
+		assertEquals(date(2021, 3, 15), Granularity.WEEK.periodStart(d));
+		assertEquals(date(2021, 3, 1), Granularity.MONTH.periodStart(d));
+		assertEquals(date(2021, 3, 15), Granularity.WEEK.periodStart(date(2021, 3, 21)));
+		assertEquals(date(2021, 3, 22), Granularity.WEEK.periodCeiling(d));
+		assertEquals(date(2021, 3, 22), Granularity.WEEK.periodCeiling(date(2021, 3, 22)));
+		assertEquals(date(2021, 4, 1), Granularity.MONTH.nextPeriod(date(2021, 3, 1)));
+	}
+
+	@Test
+	public void testGranularities() {
+		List<String> byUserEvent = Arrays.asList(StatsManager.T_USER, StatsManager.T_EVENT);
+		assertEquals(EnumSet.of(Granularity.WEEK, Granularity.MONTH),
+				StatsRollupPlanner.getRollupGranularities(StatsManager.Q_TYPE_EVENT, byUserEvent, false));
+		assertTrue(StatsRollupPlanner.getRollupGranularities(StatsManager.Q_TYPE_EVENT, byUserEvent, true).isEmpty());
+		assertTrue(StatsRollupPlanner.getRollupGranularities(StatsManager.Q_TYPE_EVENT,
+				Arrays.asList(StatsManager.T_USER, StatsManager.T_DATE), false).isEmpty());
+		assertEquals(EnumSet.of(Granularity.MONTH), StatsRollupPlanner.getRollupGranularities(StatsManager.Q_TYPE_RESOURCE,
+				Arrays.asList(StatsManager.T_RESOURCE, StatsManager.T_DATEYEAR), false));
+		// distinct users can only be counted per month
+		assertTrue(StatsRollupPlanner.getRollupGranularities(StatsManager.Q_TYPE_EVENT,
+				Arrays.asList(StatsManager.T_VISITS, StatsManager.T_DATEYEAR), false).isEmpty());
+		assertEquals(EnumSet.of(Granularity.MONTH), StatsRollupPlanner.getRollupGranularities(StatsManager.Q_TYPE_VISITSTOTALS,
+				Arrays.asList(StatsManager.T_VISITS, StatsManager.T_DATEMONTH), false));
+		assertTrue(StatsRollupPlanner.getRollupGranularities(StatsManager.Q_TYPE_ACTIVITYTOTALS,
+				Arrays.asList(StatsManager.T_DATEMONTH), false).isEmpty());
+	}
+
+	@Test
+	public void testPlanSplitsRange() {
+		Map<Granularity, Date> rolledUpTo = new EnumMap<>(Granularity.class);
+		rolledUpTo.put(Granularity.WEEK, date(2021, 6, 14));
+		rolledUpTo.put(Granularity.MONTH, date(2021, 6, 1));
+		Set<Granularity> all = EnumSet.of(Granularity.WEEK, Granularity.MONTH);
+
+		// Wed 2021-01-13 up to (not including) Fri 2021-06-18
+		List<Segment> segments = StatsRollupPlanner.plan(date(2021, 1, 13), date(2021, 6, 18), all, rolledUpTo);
+		assertEquals(Arrays.asList(
+				new Segment(Granularity.DAY, date(2021, 1, 13), date(2021, 1, 18)),
+				new Segment(Granularity.WEEK, date(2021, 1, 18), date(2021, 2, 1)),
+				new Segment(Granularity.MONTH, date(2021, 2, 1), date(2021, 6, 1)),
+				new Segment(Granularity.DAY, date(2021, 6, 1), date(2021, 6, 7)),
+				new Segment(Granularity.WEEK, date(2021, 6, 7), date(2021, 6, 14)),
+				new Segment(Granularity.DAY, date(2021, 6, 14), date(2021, 6, 18))), segments);
+	}
+
+	@Test
+	public void testPlanWithoutRollups() {
+		Date from = date(2021, 1, 13);
+		Date to = date(2021, 6, 11);
+		List<Segment> segments = StatsRollupPlanner.plan(from, to, EnumSet.of(Granularity.WEEK, Granularity.MONTH),
+				new EnumMap<>(Granularity.class));
+		assertEquals(Collections.singletonList(new Segment(Granularity.DAY, from, to)), segments);
+
+		// a range shorter than a week stays on the daily table
+		Map<Granularity, Date> rolledUpTo = new EnumMap<>(Granularity.class);
+		rolledUpTo.put(Granularity.WEEK, date(2021, 6, 7));
+		segments = StatsRollupPlanner.plan(date(2021, 3, 16), date(2021, 3, 20), EnumSet.of(Granularity.WEEK), rolledUpTo);
+		assertEquals(1, segments.size());
+		assertEquals(Granularity.DAY, segments.get(0).getGranularity());
+	}
+
+	@Test
+	public void testPlanOpenRange() {
+		Map<Granularity, Date> rolledUpTo = new EnumMap<>(Granularity.class);
+		rolledUpTo.put(Granularity.MONTH, date(2021, 6, 1));
+		List<Segment> segments = StatsRollupPlanner.plan(null, null, EnumSet.of(Granularity.MONTH), rolledUpTo);
+		assertEquals(2, segments.size());
+		assertEquals(new Segment(Granularity.MONTH, null, date(2021, 6, 1)), segments.get(0));
+		assertEquals(new Segment(Granularity.DAY, date(2021, 6, 1), null), segments.get(1));
+	}
+
+	@Test
+	public void testMergeSort() {
+		List<Object[]> month = new ArrayList<>();
+		month.add(new Object[] { "site", "user1", "ev.read", 10L });
+		month.add(new Object[] { "site", "user2", "ev.read", 3L });
+		List<Object[]> day = new ArrayList<>();
+		day.add(new Object[] { "site", "user2", "ev.read", 9L });
+		day.add(new Object[] { "site", "user3", "ev.new", null });
+
+		List<Object[]> merged = StatsRollupPlanner.merge(Arrays.asList(month, day), Collections.singleton(3));
+		assertEquals(3, merged.size());
+		assertEquals(12L, merged.get(1)[3]);
+
+		StatsRollupPlanner.sort(merged, 3, false);
+		assertEquals("user2", merged.get(0)[1]);
+		assertNull(merged.get(2)[3]);
+	}
+}
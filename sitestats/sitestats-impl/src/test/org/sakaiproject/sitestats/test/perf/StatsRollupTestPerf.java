@@ -0,0 +1,166 @@
+/**
+ * Copyright (c) 2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.sitestats.test.perf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Random;
+
+import javax.annotation.Resource;
+
+import org.hibernate.SessionFactory;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.sakaiproject.sitestats.api.EventStat;
+import org.sakaiproject.sitestats.api.Stat;
+import org.sakaiproject.sitestats.api.StatsManager;
+import org.sakaiproject.sitestats.api.StatsUpdateManager;
+import org.sakaiproject.sitestats.impl.StatsManagerImpl;
+import org.sakaiproject.sitestats.test.SiteStatsTestConfiguration;
+import org.springframework.aop.framework.Advised;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.AbstractTransactionalJUnit4SpringContextTests;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.transaction.annotation.Transactional;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Compares the time taken to answer event reports from SST_EVENTS with the time taken when the
+ * weekly and monthly rollups are used, on a synthetic data set. The number of rows loaded
+ * can be changed with the <code>sitestats.perf.rows</code> system property (default 2 million).
+ * To run against a real database configure the connection in <code>hibernate.properties</code>.
+ */
+@ContextConfiguration(classes = {SiteStatsTestConfiguration.class})
+@RunWith(SpringJUnit4ClassRunner.class)
+@Slf4j
+@Transactional(transactionManager = "org.sakaiproject.sitestats.SiteStatsTransactionManager")
+public class StatsRollupTestPerf extends AbstractTransactionalJUnit4SpringContextTests {
+
+	private static final int ROWS = Integer.getInteger("sitestats.perf.rows", 2000000);
+	private static final int SITES = 20;
+	private static final int USERS = 500;
+	private static final int EVENTS = 30;
+	private static final int DAYS = 365;
+	private static final int RUNS = 5;
+	private static final String SITE_ID = "site-0";
+
+	@Resource(name = "org.sakaiproject.springframework.orm.hibernate.GlobalSessionFactory")
+	private SessionFactory sessionFactory;
+	@Resource(name = "org.sakaiproject.sitestats.api.StatsManager")
+	private StatsManager statsManager;
+	@Resource(name = "org.sakaiproject.sitestats.api.StatsUpdateManager")
+	private StatsUpdateManager statsUpdateManager;
+
+	@Test
+	public void testReportsFromRollups() throws Exception {
+		Calendar c = Calendar.getInstance();
+		c.set(Calendar.HOUR_OF_DAY, 0);
+		c.set(Calendar.MINUTE, 0);
+		c.set(Calendar.SECOND, 0);
+		c.set(Calendar.MILLISECOND, 0);
+		java.util.Date today = c.getTime();
+		c.add(Calendar.DAY_OF_YEAR, -DAYS);
+		java.util.Date first = c.getTime();
+
+		long start = System.currentTimeMillis();
+		loadEvents(first);
+		log.info("Loaded {} rows in {}ms", ROWS, System.currentTimeMillis() - start);
+
+		start = System.currentTimeMillis();
+		int periods = statsUpdateManager.updateRollups(today, Integer.MAX_VALUE);
+		log.info("Built {} rollup periods in {}ms", periods, System.currentTimeMillis() - start);
+		assertTrue(periods > 0);
+
+		StatsManagerImpl smi = (StatsManagerImpl) ((Advised) statsManager).getTargetSource().getTarget();
+		// a full term: starts and ends midweek so all three granularities are used
+		c.setTime(today);
+		c.add(Calendar.DAY_OF_YEAR, -3);
+		java.util.Date fDate = c.getTime();
+		c.add(Calendar.DAY_OF_YEAR, -250);
+		java.util.Date iDate = c.getTime();
+		for(List<String> totalsBy : Arrays.asList(
+				Arrays.asList(StatsManager.T_USER, StatsManager.T_EVENT),
+				Arrays.asList(StatsManager.T_EVENT),
+				Arrays.asList(StatsManager.T_EVENT, StatsManager.T_DATEMONTH))) {
+			List<Stat> daily = null;
+			List<Stat> rolledUp = null;
+			long dailyTime = Long.MAX_VALUE;
+			long rollupTime = Long.MAX_VALUE;
+			// best of several runs, alternating so both see the same cache state
+			for(int run = 0; run < RUNS; run++) {
+				smi.setUseRollups(false);
+				start = System.currentTimeMillis();
+				daily = statsManager.getEventStats(SITE_ID, null, iDate, fDate, null, false, null, totalsBy, StatsManager.T_TOTAL, false, 0);
+				dailyTime = Math.min(dailyTime, System.currentTimeMillis() - start);
+
+				smi.setUseRollups(true);
+				start = System.currentTimeMillis();
+				rolledUp = statsManager.getEventStats(SITE_ID, null, iDate, fDate, null, false, null, totalsBy, StatsManager.T_TOTAL, false, 0);
+				rollupTime = Math.min(rollupTime, System.currentTimeMillis() - start);
+			}
+
+			log.info("Totals by {}: {} rows, daily {}ms, rollups {}ms (best of {})", totalsBy, daily.size(), dailyTime, rollupTime, RUNS);
+			assertEquals(toStrings(daily), toStrings(rolledUp));
+		}
+	}
+
+	private void loadEvents(java.util.Date first) {
+		Random random = new Random(42);
+		Calendar c = Calendar.getInstance();
+		sessionFactory.getCurrentSession().doWork(connection -> {
+			try(PreparedStatement ps = connection.prepareStatement(
+					"INSERT INTO SST_EVENTS (USER_ID, SITE_ID, EVENT_ID, EVENT_DATE, EVENT_COUNT) VALUES (?, ?, ?, ?, ?)")) {
+				for(int i = 0; i < ROWS; i++) {
+					c.setTime(first);
+					c.add(Calendar.DAY_OF_YEAR, random.nextInt(DAYS));
+					ps.setString(1, "user-" + random.nextInt(USERS));
+					ps.setString(2, "site-" + random.nextInt(SITES));
+					ps.setString(3, "event." + random.nextInt(EVENTS));
+					ps.setDate(4, new Date(c.getTimeInMillis()));
+					ps.setLong(5, 1 + random.nextInt(10));
+					ps.addBatch();
+					if(i % 10000 == 9999) {
+						ps.executeBatch();
+					}
+				}
+				if(ROWS % 10000 != 0) {
+					ps.executeBatch();
+				}
+			}
+		});
+	}
+
+	private List<String> toStrings(List<Stat> stats) {
+		// month totals carry the current time of day, so only compare the day
+		SimpleDateFormat day = new SimpleDateFormat("yyyy-MM-dd");
+		List<String> strings = new ArrayList<>();
+		for(Stat s : stats) {
+			EventStat e = (EventStat) s;
+			strings.add(e.getUserId() + "|" + e.getEventId() + "|" + (e.getDate() != null ? day.format(e.getDate()) : null) + "|" + e.getCount());
+		}
+		strings.sort(null);
+		return strings;
+	}
+}